@@ -1,6 +1,7 @@
 #include <cstdio>
 #include <cstring>
 #include <cstdlib>
+#include <pthread.h>
 
 #include "bwase.h"
 #include "bwa_gateway.h"
@@ -26,16 +27,28 @@ BWA::BWA(const char* ann_filename,
   bwt_restore_sa(forward_sa_filename, bwts[0]);
   bwts[1] = bwt_restore_bwt(reverse_bwt_filename);
   bwt_restore_sa(reverse_sa_filename, bwts[1]);
+  index_references = new int(1);
   load_default_options();
 
-  // Always reinitialize the random seed whenever a new set of files are loaded.
-  initialize_random_seed();
-
   // initialize the bwase subsystem
   bwase_initialize();
 }
 
+BWA::BWA(const BWA& shared)
+{
+  bns = shared.bns;
+  reference = shared.reference;
+  bwts[0] = shared.bwts[0];
+  bwts[1] = shared.bwts[1];
+  options = shared.options;
+  index_references = shared.index_references;
+  (*index_references)++;
+}
+
 BWA::~BWA() {
+  if(--(*index_references) > 0)
+    return;
+  delete index_references;
   delete[] reference;
   bns_destroy(bns);
   bwt_destroy(bwts[0]);
@@ -55,14 +68,14 @@ void BWA::find_paths(const char* bases, const unsigned read_length, bwt_aln1_t*&
   num_paths = sequence->n_aln;
 
   // Call aln2seq to initialize the type of match present.
-  bwa_aln2seq(sequence->n_aln,sequence->aln,sequence);
+  pick_best_path(sequence,NULL,bases,read_length);
   best_path_count = sequence->c1;
   second_best_path_count = sequence->c2;
 
   bwa_free_read_seq(1,sequence);
 }
 
-Alignment* BWA::generate_single_alignment(const char* bases, const unsigned read_length) {
+Alignment* BWA::generate_single_alignment(const char* name, const char* bases, const unsigned read_length) {
   bwa_seq_t* sequence = create_sequence(bases,read_length);
 
   // Calculate paths.
@@ -78,7 +91,7 @@ Alignment* BWA::generate_single_alignment(const char* bases, const unsigned read
   copy_bases_into_sequence(sequence,bases,read_length);
 
   // Pick best alignment and propagate its information into the sequence.
-  bwa_aln2seq(sequence->n_aln,sequence->aln,sequence);
+  pick_best_path(sequence,name,bases,read_length);
 
   // Generate the best alignment from the sequence.
   Alignment* alignment = new Alignment;
@@ -104,7 +117,7 @@ void BWA::generate_alignments_from_paths(const char* bases,
   sequence->n_aln = num_paths;
 
   // (Ab)use bwa_aln2seq to propagate values stored in the path out into the sequence itself.
-  bwa_aln2seq(sequence->n_aln,sequence->aln,sequence);
+  pick_best_path(sequence,NULL,bases,read_length);
 
   // But overwrite key parts of the sequence in case the user passed back only a smaller subset
   // of the paths.
@@ -211,9 +224,32 @@ void BWA::load_default_options()
   options.trim_qual = 0;
 }
 
-void BWA::initialize_random_seed()
+// bwa_aln2seq breaks ties between equally good paths with drand48(), whose state is global to the process.
+static pthread_mutex_t random_state_lock = PTHREAD_MUTEX_INITIALIZER;
+
+void BWA::pick_best_path(bwa_seq_t* sequence, const char* name, const char* bases, const unsigned read_length)
 {
-  srand48(bns->seed);  
+  // Seed the draws for each read from the index seed, the read's name and its bases, so that a read placed in a
+  // repeat lands in the same place however many aligners share the index and whichever order they reach it in,
+  // while duplicate reads with different names still spread across the copies of the repeat.  name may be NULL.
+  uint64_t seed = 14695981039346656037ULL ^ (uint64_t)bns->seed;
+  for(const char* c = name; c != NULL && *c != '\0'; c++) {
+    seed ^= (unsigned char)*c;
+    seed *= 1099511628211ULL;
+  }
+  for(unsigned i = 0; i < read_length; i++) {
+    seed ^= (unsigned char)bases[i];
+    seed *= 1099511628211ULL;
+  }
+  unsigned short random_state[3];
+  random_state[0] = (unsigned short)seed;
+  random_state[1] = (unsigned short)(seed >> 16);
+  random_state[2] = (unsigned short)(seed >> 32);
+
+  pthread_mutex_lock(&random_state_lock);
+  seed48(random_state);
+  bwa_aln2seq(sequence->n_aln,sequence->aln,sequence);
+  pthread_mutex_unlock(&random_state_lock);
 }
 
 void BWA::set_max_edit_distance(float edit_distance) { 
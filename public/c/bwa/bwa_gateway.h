@@ -36,8 +36,11 @@ class BWA {
   bwt_t* bwts[2];
   gap_opt_t options;
 
+  // Number of aligners sharing the index above.  The last one destroyed frees it.
+  int* index_references;
+
   void load_default_options();
-  void initialize_random_seed();
+  void pick_best_path(bwa_seq_t* sequence, const char* name, const char* bases, const unsigned read_length);
   bwa_seq_t* create_sequence(const char* bases, const unsigned read_length);
   void copy_bases_into_sequence(bwa_seq_t* sequence, const char* bases, const unsigned read_length);
   Alignment generate_final_alignment_from_sequence(bwa_seq_t* sequence);
@@ -50,6 +53,9 @@ class BWA {
       const char* forward_sa_filename, 
       const char* reverse_bwt_filename, 
       const char* reverse_sa_filename);
+  // Share the index already loaded by another aligner, with a copy of its options.  Aligners sharing an index
+  // may align concurrently, but must be created and destroyed from one thread.
+  BWA(const BWA& shared);
   ~BWA();
 
   // Parameterize the aligner.
@@ -64,7 +70,8 @@ class BWA {
   void set_max_entries_in_queue(int max_entries);
 
   // Perform the alignment
-  Alignment* generate_single_alignment(const char* bases, 
+  Alignment* generate_single_alignment(const char* name, 
+                                       const char* bases, 
                                        const unsigned read_length);
   void find_paths(const char* bases, 
                   const unsigned read_length, 
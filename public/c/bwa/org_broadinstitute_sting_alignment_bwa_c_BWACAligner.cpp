@@ -80,6 +80,16 @@ JNIEXPORT jlong JNICALL Java_org_broadinstitute_sting_alignment_bwa_c_BWACAligne
   return (jlong)bwa;
 }
 
+JNIEXPORT jlong JNICALL Java_org_broadinstitute_sting_alignment_bwa_c_BWACAligner_createShared(JNIEnv* env, jobject instance, jlong java_bwa, jobject configuration)
+{
+  BWA* bwa = new BWA(*(BWA*)java_bwa);
+
+  Java_org_broadinstitute_sting_alignment_bwa_c_BWACAligner_updateConfiguration(env,instance,(jlong)bwa,configuration);
+  if(env->ExceptionCheck()) return 0L;
+
+  return (jlong)bwa;
+}
+
 JNIEXPORT void JNICALL Java_org_broadinstitute_sting_alignment_bwa_c_BWACAligner_destroy(JNIEnv* env, jobject instance, jlong java_bwa) 
 {
   BWA* bwa = (BWA*)java_bwa;
@@ -254,24 +264,86 @@ JNIEXPORT jobjectArray JNICALL Java_org_broadinstitute_sting_alignment_bwa_c_BWA
   return env->ExceptionCheck() ? NULL : java_alignments;
 }
 
-JNIEXPORT jobject JNICALL Java_org_broadinstitute_sting_alignment_bwa_c_BWACAligner_getBestAlignment(JNIEnv *env, jobject instance, jlong java_bwa, jbyteArray java_bases) {
+JNIEXPORT jobject JNICALL Java_org_broadinstitute_sting_alignment_bwa_c_BWACAligner_getBestAlignment(JNIEnv *env, jobject instance, jlong java_bwa, jstring java_name, jbyteArray java_bases) {
   BWA* bwa = (BWA*)java_bwa;
 
   const jsize read_length = env->GetArrayLength(java_bases);
   if(env->ExceptionCheck()) return NULL;
 
+  const char* read_name = (java_name != NULL) ? env->GetStringUTFChars(java_name,JNI_FALSE) : NULL;
+  if(java_name != NULL && read_name == NULL) return NULL;
+
   jbyte *read_bases = env->GetByteArrayElements(java_bases,JNI_FALSE); 
-  if(read_bases == NULL) return NULL;
+  if(read_bases == NULL) {
+    if(read_name != NULL) env->ReleaseStringUTFChars(java_name,read_name);
+    return NULL;
+  }
 
-  Alignment* best_alignment = bwa->generate_single_alignment((const char*)read_bases,read_length);
+  Alignment* best_alignment = bwa->generate_single_alignment(read_name,(const char*)read_bases,read_length);
   jobject java_best_alignment = (best_alignment != NULL) ? convert_to_java_alignment(env,read_bases,read_length,*best_alignment) : NULL;
   delete best_alignment;
 
   env->ReleaseByteArrayElements(java_bases,read_bases,JNI_FALSE); 
+  if(read_name != NULL) env->ReleaseStringUTFChars(java_name,read_name);
 
   return java_best_alignment;
 }
 
+JNIEXPORT jobjectArray JNICALL Java_org_broadinstitute_sting_alignment_bwa_c_BWACAligner_getBestAlignments(JNIEnv *env, jobject instance, jlong java_bwa, jobjectArray java_names, jobjectArray java_reads) {
+  BWA* bwa = (BWA*)java_bwa;
+
+  const jsize num_reads = env->GetArrayLength(java_reads);
+  if(env->ExceptionCheck()) return NULL;
+
+  jobjectArray java_best_alignments = env->NewObjectArray(num_reads, env->FindClass("org/broadinstitute/sting/alignment/Alignment"), NULL);
+  if(java_best_alignments == NULL) return NULL;
+
+  for(jsize read_idx = 0; read_idx < num_reads; read_idx++) {
+    jbyteArray java_bases = (jbyteArray)env->GetObjectArrayElement(java_reads,read_idx);
+    if(java_bases == NULL) return NULL;
+
+    const jsize read_length = env->GetArrayLength(java_bases);
+    if(env->ExceptionCheck()) return NULL;
+
+    jstring java_name = (jstring)env->GetObjectArrayElement(java_names,read_idx);
+    if(env->ExceptionCheck()) return NULL;
+
+    const char* read_name = (java_name != NULL) ? env->GetStringUTFChars(java_name,JNI_FALSE) : NULL;
+    if(java_name != NULL && read_name == NULL) return NULL;
+
+    jbyte *read_bases = env->GetByteArrayElements(java_bases,JNI_FALSE);
+    if(read_bases == NULL) {
+      if(read_name != NULL) env->ReleaseStringUTFChars(java_name,read_name);
+      return NULL;
+    }
+
+    Alignment* best_alignment = bwa->generate_single_alignment(read_name,(const char*)read_bases,read_length);
+    if(read_name != NULL) env->ReleaseStringUTFChars(java_name,read_name);
+    if(best_alignment != NULL) {
+      jobject java_best_alignment = convert_to_java_alignment(env,read_bases,read_length,*best_alignment);
+      delete best_alignment;
+      if(java_best_alignment == NULL) {
+        env->ReleaseByteArrayElements(java_bases,read_bases,JNI_FALSE);
+        return NULL;
+      }
+
+      env->SetObjectArrayElement(java_best_alignments,read_idx,java_best_alignment);
+      if(env->ExceptionCheck()) {
+        env->ReleaseByteArrayElements(java_bases,read_bases,JNI_FALSE);
+        return NULL;
+      }
+      env->DeleteLocalRef(java_best_alignment);
+    }
+
+    env->ReleaseByteArrayElements(java_bases,read_bases,JNI_FALSE);
+    // Thousands of reads may be aligned per call, more than the local reference table is guaranteed to hold.
+    env->DeleteLocalRef(java_bases);
+    if(java_name != NULL) env->DeleteLocalRef(java_name);
+  }
+
+  return java_best_alignments;
+}
+
 static jobject convert_to_java_alignment(JNIEnv *env, const jbyte* read_bases, const jsize read_length, const Alignment& alignment) {
   unsigned cigar_length;
   if(alignment.type == BWA_TYPE_NO_MATCH) cigar_length = 0;
@@ -15,6 +15,14 @@ extern "C" {
 JNIEXPORT jlong JNICALL Java_org_broadinstitute_sting_alignment_bwa_c_BWACAligner_create
   (JNIEnv *, jobject, jobject, jobject);
 
+/*
+ * Class:     org_broadinstitute_sting_alignment_bwa_c_BWACAligner
+ * Method:    createShared
+ * Signature: (JLorg/broadinstitute/sting/alignment/bwa/BWAConfiguration;)J
+ */
+JNIEXPORT jlong JNICALL Java_org_broadinstitute_sting_alignment_bwa_c_BWACAligner_createShared
+  (JNIEnv *, jobject, jlong, jobject);
+
 /*
  * Class:     org_broadinstitute_sting_alignment_bwa_c_BWACAligner
  * Method:    updateConfiguration
@@ -50,10 +58,18 @@ JNIEXPORT jobjectArray JNICALL Java_org_broadinstitute_sting_alignment_bwa_c_BWA
 /*
  * Class:     org_broadinstitute_sting_alignment_bwa_c_BWACAligner
  * Method:    getBestAlignment
- * Signature: (J[B)Lorg/broadinstitute/sting/alignment/Alignment;
+ * Signature: (JLjava/lang/String;[B)Lorg/broadinstitute/sting/alignment/Alignment;
  */
 JNIEXPORT jobject JNICALL Java_org_broadinstitute_sting_alignment_bwa_c_BWACAligner_getBestAlignment
-  (JNIEnv *, jobject, jlong, jbyteArray);
+  (JNIEnv *, jobject, jlong, jstring, jbyteArray);
+
+/*
+ * Class:     org_broadinstitute_sting_alignment_bwa_c_BWACAligner
+ * Method:    getBestAlignments
+ * Signature: (J[Ljava/lang/String;[[B)[Lorg/broadinstitute/sting/alignment/Alignment;
+ */
+JNIEXPORT jobjectArray JNICALL Java_org_broadinstitute_sting_alignment_bwa_c_BWACAligner_getBestAlignments
+  (JNIEnv *, jobject, jlong, jobjectArray, jobjectArray);
 
 #ifdef __cplusplus
 }
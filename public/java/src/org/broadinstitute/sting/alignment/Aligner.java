@@ -3,6 +3,8 @@ package org.broadinstitute.sting.alignment;
 import net.sf.samtools.SAMFileHeader;
 import net.sf.samtools.SAMRecord;
 
+import java.util.List;
+
 /**
  * Create perfect alignments from the read to the genome represented by the given BWT / suffix array. 
  *
@@ -30,6 +32,15 @@ public interface Aligner {
      */
     public SAMRecord align(final SAMRecord read, final SAMFileHeader header);
 
+    /**
+     * Align a batch of reads to the reference, as align() does one read, crossing into the aligner once for the
+     * whole batch.
+     * @param reads Reads to align.
+     * @param header Optional header to drop in place.
+     * @return The aligned reads, in the order given.
+     */
+    public List<SAMRecord> alignAll(final List<SAMRecord> reads, final SAMFileHeader header);
+
     /**
      * Get a iterator of alignments, batched by mapping quality.
      * @param bases List of bases.
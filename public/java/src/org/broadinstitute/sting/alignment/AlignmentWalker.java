@@ -39,9 +39,16 @@ import org.broadinstitute.sting.gatk.io.StingSAMFileWriter;
 import org.broadinstitute.sting.gatk.refdata.ReadMetaDataTracker;
 import org.broadinstitute.sting.gatk.walkers.ReadWalker;
 import org.broadinstitute.sting.gatk.walkers.WalkerName;
+import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
+import org.broadinstitute.sting.utils.exceptions.UserException;
 import org.broadinstitute.sting.utils.sam.GATKSAMRecord;
+import org.broadinstitute.sting.utils.threading.DaemonThreadFactory;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.*;
 
 /**
  * Aligns reads to a given reference using Heng Li's BWA aligner, presenting the resulting alignments in SAM or BAM format.
@@ -57,6 +64,19 @@ public class AlignmentWalker extends ReadWalker<Integer,Integer> {
                                                                      "to the reference specified via the -R argument.",required=false)
     private File targetReferenceFile = null;
 
+    /**
+     * Reads are handed to the aligner in batches of this many.  Each batch crosses into BWA/C once.
+     */
+    @Argument(fullName="alignmentBatchSize", shortName="alignBatchSize", required=false, doc="Number of reads aligned per call into the aligner")
+    protected int ALIGNMENT_BATCH_SIZE = 1000;
+
+    /**
+     * Batches of reads are aligned concurrently by this many aligners, all sharing one copy of the index, and written
+     * out in the order they were read.
+     */
+    @Argument(fullName="alignmentThreads", shortName="alignThreads", required=false, doc="Number of threads used to align batches of reads concurrently")
+    protected int ALIGNMENT_THREADS = 1;
+
     @Output
     private StingSAMFileWriter out = null;
 
@@ -70,6 +90,25 @@ public class AlignmentWalker extends ReadWalker<Integer,Integer> {
      */
     private SAMFileHeader header;
 
+    /**
+     * Reads waiting to be aligned as a batch.
+     */
+    private List<SAMRecord> batch = new ArrayList<SAMRecord>();
+
+    /**
+     * When aligning with multiple threads: the workers, the aligners not in use by any of them, and the batches
+     * waiting to be written, in input order.
+     */
+    private ExecutorService alignmentPool = null;
+    private final List<BWACAligner> aligners = new ArrayList<BWACAligner>();
+    private BlockingQueue<BWACAligner> idleAligners = null;
+    private final LinkedList<Future<List<SAMRecord>>> pendingBatches = new LinkedList<Future<List<SAMRecord>>>();
+
+    /**
+     * How many batches per thread may be queued up before we wait for the oldest one to finish.
+     */
+    private static final int MAX_PENDING_BATCHES_PER_THREAD = 4;
+
     /**
      * Create an aligner object.  The aligner object will load and hold the BWT until close() is called.
      */    
@@ -81,6 +120,18 @@ public class AlignmentWalker extends ReadWalker<Integer,Integer> {
         BWAConfiguration configuration = new BWAConfiguration();
         aligner = new BWACAligner(bwtFiles,configuration);
 
+        if(ALIGNMENT_BATCH_SIZE < 1)
+            throw new UserException.BadArgumentValue("alignmentBatchSize", "must be at least 1");
+        if(ALIGNMENT_THREADS < 1)
+            throw new UserException.BadArgumentValue("alignmentThreads", "must be at least 1");
+        if(ALIGNMENT_THREADS > 1) {
+            aligners.add(aligner);
+            for(int i = 1; i < ALIGNMENT_THREADS; i++)
+                aligners.add(new BWACAligner(aligner));
+            idleAligners = new ArrayBlockingQueue<BWACAligner>(ALIGNMENT_THREADS,false,aligners);
+            alignmentPool = Executors.newFixedThreadPool(ALIGNMENT_THREADS,new DaemonThreadFactory("Align"));
+        }
+
         // Take the header of the SAM file, tweak it by adding in the reference dictionary and specifying that the target file is unsorted.
         header = getToolkit().getSAMFileHeader().clone();
         SAMSequenceDictionary referenceDictionary =
@@ -100,11 +151,73 @@ public class AlignmentWalker extends ReadWalker<Integer,Integer> {
      */
     @Override
     public Integer map(ReferenceContext ref, GATKSAMRecord read, ReadMetaDataTracker metaDataTracker) {
-        SAMRecord alignedRead = aligner.align(read,header);
-        out.addAlignment(alignedRead);
+        batch.add(read);
+        if(batch.size() >= ALIGNMENT_BATCH_SIZE)
+            alignBatch();
         return 1;
     }
 
+    /**
+     * Aligns the current batch of reads, writing them out straight away if aligning on this thread, or else once
+     * they and every batch before them have been aligned.
+     */
+    private void alignBatch() {
+        if(batch.isEmpty())
+            return;
+        final List<SAMRecord> reads = batch;
+        batch = new ArrayList<SAMRecord>(ALIGNMENT_BATCH_SIZE);
+
+        if(alignmentPool == null) {
+            writeAlignments(aligner.alignAll(reads,header));
+            return;
+        }
+
+        pendingBatches.add(alignmentPool.submit(new Callable<List<SAMRecord>>() {
+            public List<SAMRecord> call() throws InterruptedException {
+                BWACAligner batchAligner = idleAligners.take();
+                try {
+                    return batchAligner.alignAll(reads,header);
+                }
+                finally {
+                    idleAligners.put(batchAligner);
+                }
+            }
+        }));
+        emitPendingBatches(false);
+    }
+
+    /**
+     * Writes out the aligned batches, oldest first, for as long as they are ready (or we have too many of them).
+     * @param all If true, wait for and write out all of the pending batches.
+     */
+    private void emitPendingBatches(boolean all) {
+        while(!pendingBatches.isEmpty()) {
+            final Future<List<SAMRecord>> alignedBatch = pendingBatches.getFirst();
+            if(!all && !alignedBatch.isDone() && pendingBatches.size() <= MAX_PENDING_BATCHES_PER_THREAD * ALIGNMENT_THREADS)
+                return;
+
+            pendingBatches.removeFirst();
+            try {
+                writeAlignments(alignedBatch.get());
+            }
+            catch(InterruptedException e) {
+                closeAligners();
+                throw new ReviewedStingException("Interrupted while waiting for a batch of reads to be aligned", e);
+            }
+            catch(ExecutionException e) {
+                closeAligners();
+                if(e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException)e.getCause();
+                throw new ReviewedStingException("Alignment failed", e.getCause());
+            }
+        }
+    }
+
+    private void writeAlignments(List<SAMRecord> alignedReads) {
+        for(SAMRecord alignedRead: alignedReads)
+            out.addAlignment(alignedRead);
+    }
+
     /**
      * Initial value for reduce.  In this case, alignments will be counted.
      * @return 0, indicating no alignments yet found.
@@ -129,8 +242,39 @@ public class AlignmentWalker extends ReadWalker<Integer,Integer> {
      */    
     @Override
     public void onTraversalDone(Integer result) {
-        aligner.close();
+        try {
+            alignBatch();
+            if(alignmentPool != null)
+                emitPendingBatches(true);
+        }
+        finally {
+            closeAligners();
+        }
         super.onTraversalDone(result);
     }
 
+    /**
+     * Stops the workers, cancelling any batches not yet started, and closes the aligners.  Does nothing if they are
+     * closed already.
+     */
+    private void closeAligners() {
+        if(aligner == null)
+            return;
+        if(alignmentPool != null) {
+            alignmentPool.shutdownNow();
+            try {
+                // A batch already handed to BWA/C can't be interrupted, and its aligner mustn't be closed under it.
+                alignmentPool.awaitTermination(Long.MAX_VALUE,TimeUnit.MILLISECONDS);
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            for(BWACAligner sharedAligner: aligners.subList(1,aligners.size()))
+                sharedAligner.close();
+        }
+        aligner.close();
+        aligner = null;
+    }
+
 }
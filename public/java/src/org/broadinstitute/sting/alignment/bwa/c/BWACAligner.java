@@ -8,8 +8,10 @@ import org.broadinstitute.sting.alignment.bwa.BWAConfiguration;
 import org.broadinstitute.sting.alignment.bwa.BWTFiles;
 import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * An aligner using the BWA/C implementation.
@@ -54,6 +56,19 @@ public class BWACAligner extends BWAAligner {
         bwtFiles.close();
     }
 
+    /**
+     * Create an aligner sharing the index already loaded by another, so that several threads can align against one
+     * copy of the index, each with its own aligner.  The index is freed once every aligner sharing it is closed.
+     * Aligners sharing an index must be created and closed from one thread.
+     * @param aligner Aligner whose index and configuration to share.
+     */
+    public BWACAligner(BWACAligner aligner) {
+        super(aligner.bwtFiles,aligner.configuration);
+        if(aligner.thunkPointer == 0)
+            throw new ReviewedStingException("BWA/C attempting to share the index of an uninitialized aligner.");
+        thunkPointer = createShared(aligner.thunkPointer,configuration);
+    }
+
     /**
      * Update the configuration passed to the BWA aligner.
      * @param configuration New configuration to set.
@@ -84,7 +99,7 @@ public class BWACAligner extends BWAAligner {
     public Alignment getBestAlignment(final byte[] bases) {
         if(thunkPointer == 0)
             throw new ReviewedStingException("BWA/C getBestAlignment attempted, but BWA/C is not properly initialized.");
-        return getBestAlignment(thunkPointer,bases);
+        return getBestAlignment(thunkPointer,null,bases);
     }
 
     /**
@@ -97,7 +112,36 @@ public class BWACAligner extends BWAAligner {
     public SAMRecord align(final SAMRecord read, final SAMFileHeader newHeader) {
         if(bwtFiles.autogenerated)
             throw new UnsupportedOperationException("Cannot create target alignment; source contig was generated ad-hoc and is not reliable");
-        return Alignment.convertToRead(getBestAlignment(read.getReadBases()),read,newHeader);   
+        if(thunkPointer == 0)
+            throw new ReviewedStingException("BWA/C align attempted, but BWA/C is not properly initialized.");
+        return Alignment.convertToRead(getBestAlignment(thunkPointer,read.getReadName(),read.getReadBases()),read,newHeader);   
+    }
+
+    /**
+     * Align a batch of reads to the reference, each to one of its best alignments, with a single call into BWA/C.
+     * @param reads Reads to align.
+     * @param newHeader New header to apply to this SAM file.  Can be null, but if so, read headers must be valid.
+     * @return Reads with injected alignment data, in the order given.
+     */
+    @Override
+    public List<SAMRecord> alignAll(final List<SAMRecord> reads, final SAMFileHeader newHeader) {
+        if(bwtFiles.autogenerated)
+            throw new UnsupportedOperationException("Cannot create target alignment; source contig was generated ad-hoc and is not reliable");
+        if(thunkPointer == 0)
+            throw new ReviewedStingException("BWA/C alignAll attempted, but BWA/C is not properly initialized.");
+
+        String[] names = new String[reads.size()];
+        byte[][] bases = new byte[reads.size()][];
+        for(int i = 0; i < bases.length; i++) {
+            names[i] = reads.get(i).getReadName();
+            bases[i] = reads.get(i).getReadBases();
+        }
+        Alignment[] alignments = getBestAlignments(thunkPointer,names,bases);
+
+        List<SAMRecord> alignedReads = new ArrayList<SAMRecord>(alignments.length);
+        for(int i = 0; i < alignments.length; i++)
+            alignedReads.add(Alignment.convertToRead(alignments[i],reads.get(i),newHeader));
+        return alignedReads;
     }
 
     /**
@@ -206,6 +250,14 @@ public class BWACAligner extends BWAAligner {
      */
     protected native long create(BWTFiles files, BWAConfiguration configuration);
 
+    /**
+     * Create a pointer to a BWA/C thunk sharing the index of another.
+     * @param thunkPointer Pointer to the thunk whose index to share.
+     * @param configuration Configuration of the aligner.
+     * @return Pointer to the BWA/C thunk.
+     */
+    protected native long createShared(long thunkPointer, BWAConfiguration configuration);
+
     /**
      * Update the configuration passed to the BWA aligner.  For internal use only.
      * @param thunkPointer pointer to BWA object.
@@ -252,8 +304,18 @@ public class BWACAligner extends BWAAligner {
     /**
      * Gets the best alignment from BWA/C, randomly selected from all best-aligned reads.
      * @param thunkPointer Pointer to BWA thunk.
+     * @param name name of the read, mixed into the choice among best alignments.  Can be null.
      * @param bases bases to align.
      * @return The best alignment from BWA/C.
      */
-    protected native Alignment getBestAlignment(long thunkPointer, byte[] bases);
+    protected native Alignment getBestAlignment(long thunkPointer, String name, byte[] bases);
+
+    /**
+     * Gets the best alignment of each of a batch of reads from BWA/C, randomly selected from all best-aligned reads.
+     * @param thunkPointer Pointer to BWA thunk.
+     * @param names name of each read, mixed into the choice among its best alignments.  Entries can be null.
+     * @param bases bases of each read to align.
+     * @return The best alignment of each read, or null where a read has none.
+     */
+    protected native Alignment[] getBestAlignments(long thunkPointer, String[] names, byte[][] bases);
 }
@@ -78,10 +78,10 @@ public class BWAJavaAligner extends BWAAligner {
 
     public BWAJavaAligner( File forwardBWTFile, File reverseBWTFile, File forwardSuffixArrayFile, File reverseSuffixArrayFile ) {
         super(null,null);
-        forwardBWT = new BWTReader(forwardBWTFile).read();
-        reverseBWT = new BWTReader(reverseBWTFile).read();
-        forwardSuffixArray = new SuffixArrayReader(forwardSuffixArrayFile,forwardBWT).read();
-        reverseSuffixArray = new SuffixArrayReader(reverseSuffixArrayFile,reverseBWT).read();
+        forwardBWT = new BWTReader(forwardBWTFile).map();
+        reverseBWT = new BWTReader(reverseBWTFile).map();
+        forwardSuffixArray = new SuffixArrayReader(forwardSuffixArrayFile,forwardBWT).map();
+        reverseSuffixArray = new SuffixArrayReader(reverseSuffixArrayFile,reverseBWT).map();
     }
 
     /**
@@ -115,6 +115,14 @@ public class BWAJavaAligner extends BWAAligner {
      */
     public SAMRecord align(final SAMRecord read, final SAMFileHeader header) { throw new UnsupportedOperationException("BWAJavaAligner does not yet support the standard Aligner interface."); }
 
+    /**
+     * Align a batch of reads to the reference.
+     * @param reads Reads to align.
+     * @param header Optional header to drop in place.
+     * @return The aligned reads, in the order given.
+     */
+    public List<SAMRecord> alignAll(final List<SAMRecord> reads, final SAMFileHeader header) { throw new UnsupportedOperationException("BWAJavaAligner does not yet support the standard Aligner interface."); }
+
     /**
      * Get a iterator of alignments, batched by mapping quality.
      * @param bases List of bases.
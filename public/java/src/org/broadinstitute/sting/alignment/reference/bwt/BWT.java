@@ -31,6 +31,20 @@ public class BWT {
      */
     protected final SequenceBlock[] sequenceBlocks;
 
+    /**
+     * Cumulative counts, indexed by packed base, so that the hot path of the search doesn't go through a map.
+     */
+    private final long[] cumulativeCounts = new long[PackUtils.ALPHABET_SIZE];
+
+    /**
+     * Creates a new BWT with the given inverse SA and counts, whose sequence is held by a subclass.
+     * @param inverseSA0 Inverse SA entry for the first element.  Will be missing from the BWT sequence.
+     * @param counts Cumulative count of bases, in A,C,G,T order.
+     */
+    protected BWT( long inverseSA0, Counts counts ) {
+        this(inverseSA0,counts,(SequenceBlock[])null);
+    }
+
     /**
      * Creates a new BWT with the given inverse SA, counts, and sequence (in ASCII).
      * @param inverseSA0 Inverse SA entry for the first element.  Will be missing from the BWT sequence.
@@ -41,6 +55,9 @@ public class BWT {
         this.inverseSA0 = inverseSA0;
         this.counts = counts;
         this.sequenceBlocks = sequenceBlocks;
+
+        for(byte base: Bases.instance)
+            cumulativeCounts[PackUtils.packBase(base)] = counts.getCumulative(base);
     }
 
     /**
@@ -70,7 +87,7 @@ public class BWT {
      * @return Total counts for all bases lexicographically smaller than this base.
      */
     public long counts(byte base) {
-        return counts.getCumulative(base);
+        return cumulativeCounts[PackUtils.packBase(base)];
     }
 
     /**
@@ -131,6 +148,14 @@ public class BWT {
         return block.sequence[position];
     }
 
+    /**
+     * The sequence blocks of this BWT, as they appear on disk.
+     * @return The sequence blocks.
+     */
+    protected SequenceBlock[] getSequenceBlocks() {
+        return sequenceBlocks != null ? sequenceBlocks : generateSequenceBlocks(getSequence());
+    }
+
     private SequenceBlock getSequenceBlock(long index) {
         // If the index is above the SA-1[0], remap it to the appropriate coordinate space.
         if(index > inverseSA0) index--;
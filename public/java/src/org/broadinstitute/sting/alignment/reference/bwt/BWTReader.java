@@ -75,6 +75,15 @@ public class BWTReader {
         return new BWT(inverseSA0, new Counts(count,true), sequenceBlocks);
     }
 
+    /**
+     * Map the BWT into memory rather than reading it onto the heap, which is what a whole genome needs.
+     * Occurrence queries then read the file directly.
+     * @return The BWT stored in the input file.
+     */
+    public BWT map() {
+        return new MappedBWT(new MappedIndexFile(inputStream.getChannel()));
+    }
+
     /**
      * Close the input stream.
      */
@@ -44,7 +44,7 @@ public class BWTWriter {
             intPackedOutputStream.write(bwt.inverseSA0);
             intPackedOutputStream.write(bwt.counts.toArray(true));
 
-            for( SequenceBlock block: bwt.sequenceBlocks ) {
+            for( SequenceBlock block: bwt.getSequenceBlocks() ) {
                 intPackedOutputStream.write(block.occurrences.toArray(false));
                 basePackedOutputStream.write(block.sequence);
             }
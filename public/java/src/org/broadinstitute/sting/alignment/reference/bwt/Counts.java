@@ -142,7 +142,7 @@ public class Counts implements Cloneable {
      * @return Total bases represented.
      */
     public long getTotal() {
-        int accumulator = 0;
+        long accumulator = 0;
         for(byte base: Bases.instance) {
             accumulator += get(base);    
         }
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2012, The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.broadinstitute.sting.alignment.reference.bwt;
+
+import org.broadinstitute.sting.alignment.reference.packing.PackUtils;
+import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
+
+/**
+ * A BWT answering queries straight from a memory-mapped .bwt file, so that the BWT of a whole genome needn't be read
+ * onto the heap.
+ *
+ * On disk each block of SEQUENCE_BLOCK_SIZE bases is preceded by the occurrences of each base before the block, so
+ * the occurrence checkpoints are interleaved with the bases they count.  An occurrence query reads the checkpoint and
+ * then counts the matching bases in the packed words of the block sixteen at a time, with a population count, rather
+ * than unpacking them.
+ */
+public class MappedBWT extends BWT {
+    /**
+     * Bases packed into each 32-bit word, the first in the most significant bits.
+     */
+    private static final int BASES_PER_WORD = 32/PackUtils.BITS_PER_BASE;
+
+    /**
+     * Size of the header: the inverse SA and the cumulative counts.
+     */
+    private static final long HEADER_SIZE = 4*(1+PackUtils.ALPHABET_SIZE);
+
+    /**
+     * Size of an occurrence checkpoint.
+     */
+    private static final long CHECKPOINT_SIZE = 4*PackUtils.ALPHABET_SIZE;
+
+    /**
+     * Size of a block: its occurrence checkpoint followed by its packed bases.
+     */
+    private static final long BLOCK_SIZE = CHECKPOINT_SIZE + 4*(SEQUENCE_BLOCK_SIZE/BASES_PER_WORD);
+
+    /**
+     * Mask picking out the low bit of every packed base in a word.
+     */
+    private static final int LOW_BITS = 0x55555555;
+
+    /**
+     * The mapped .bwt file.
+     */
+    private final MappedIndexFile file;
+
+    /**
+     * Creates a BWT from the given mapped .bwt file.
+     * @param file The mapped file.
+     */
+    public MappedBWT(MappedIndexFile file) {
+        super(file.getUnsignedInt(0),readCounts(file));
+        this.file = file;
+
+        long blocks = PackUtils.numberOfPartitions(length(),SEQUENCE_BLOCK_SIZE);
+        if(file.length() < HEADER_SIZE + blocks*BLOCK_SIZE - 4*((blocks*SEQUENCE_BLOCK_SIZE-length())/BASES_PER_WORD))
+            throw new ReviewedStingException("BWT file is truncated");
+    }
+
+    private static Counts readCounts(MappedIndexFile file) {
+        long[] count = new long[PackUtils.ALPHABET_SIZE];
+        for(int i = 0; i < count.length; i++)
+            count[i] = file.getUnsignedInt(4*(i+1));
+        return new Counts(count,true);
+    }
+
+    /**
+     * Get the total counts of bases lexicographically smaller than the given base, for Ferragina and Manzini's search.
+     * @param base The base.
+     * @param index The position to search within the BWT.
+     * @return Total counts for all bases lexicographically smaller than this base.
+     */
+    @Override
+    public long occurrences(byte base,long index) {
+        // If the index is above the SA-1[0], remap it to the appropriate coordinate space.
+        if(index > inverseSA0) index--;
+        long blockStart = HEADER_SIZE + (index/SEQUENCE_BLOCK_SIZE)*BLOCK_SIZE;
+        int basesToCount = (int)(index%SEQUENCE_BLOCK_SIZE) + 1;
+
+        int pack = PackUtils.packBase(base);
+        long accumulator = file.getUnsignedInt(blockStart + 4*pack);
+
+        // Bases matching the given one leave both of their bits clear once xor'ed with a word full of that base.
+        int pattern = pack*LOW_BITS;
+        long wordOffset = blockStart + CHECKPOINT_SIZE;
+        for(; basesToCount >= BASES_PER_WORD; basesToCount -= BASES_PER_WORD, wordOffset += 4)
+            accumulator += countMatches(file.getInt(wordOffset)^pattern,-1);
+        if(basesToCount > 0)
+            accumulator += countMatches(file.getInt(wordOffset)^pattern,-1 << (32-basesToCount*PackUtils.BITS_PER_BASE));
+
+        return accumulator;
+    }
+
+    /**
+     * Counts the packed bases of a word which are zero.
+     * @param word The word.
+     * @param mask Mask selecting the bases to count.
+     * @return The number of zero bases.
+     */
+    private static int countMatches(int word, int mask) {
+        return Integer.bitCount(~(word | (word >>> 1)) & LOW_BITS & mask);
+    }
+
+    /**
+     * Extract the full sequence from the mapped file.
+     * @return The full BWT string as a byte array.
+     */
+    @Override
+    public byte[] getSequence() {
+        byte[] sequence = new byte[(int)length()];
+        for(int i = 0; i < sequence.length; i++)
+            sequence[i] = getBaseAt(i);
+        return sequence;
+    }
+
+    /**
+     * Gets the base at a given position in the BWT.
+     * @param index The index to use.
+     * @return The base at that location.
+     */
+    @Override
+    protected byte getBase(long index) {
+        if(index == inverseSA0)
+            throw new ReviewedStingException(String.format("Base at index %d does not have a text representation",index));
+        // If the index is above the SA-1[0], remap it to the appropriate coordinate space.
+        return getBaseAt(index > inverseSA0 ? index-1 : index);
+    }
+
+    /**
+     * Gets the base at a given position of the sequence stored on disk, which is missing the '$'.
+     * @param position The position in the stored sequence.
+     * @return The base at that position.
+     */
+    private byte getBaseAt(long position) {
+        long blockStart = HEADER_SIZE + (position/SEQUENCE_BLOCK_SIZE)*BLOCK_SIZE;
+        int positionInBlock = (int)(position%SEQUENCE_BLOCK_SIZE);
+        int word = file.getInt(blockStart + CHECKPOINT_SIZE + 4*(positionInBlock/BASES_PER_WORD));
+        int shift = (BASES_PER_WORD - positionInBlock%BASES_PER_WORD - 1)*PackUtils.BITS_PER_BASE;
+        return PackUtils.unpackBase((byte)((word >>> shift) & 0x3));
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2012, The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.broadinstitute.sting.alignment.reference.bwt;
+
+import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * A little-endian index file mapped into memory rather than read onto the heap.
+ *
+ * A single mapping can't cover more than 2GB, so the file is mapped in chunks.  The chunks are a multiple of four bytes
+ * long, so none of the 32-bit words of the file, which all start at multiples of four, straddles two chunks.
+ */
+class MappedIndexFile {
+    /**
+     * Size of each mapped chunk of the file.
+     */
+    private static final long CHUNK_SIZE = 1L << 30;
+
+    /**
+     * The chunks of the file, in order.
+     */
+    private final ByteBuffer[] chunks;
+
+    /**
+     * Length of the file in bytes.
+     */
+    private final long length;
+
+    /**
+     * Map the given file into memory.  The mappings stay valid once the channel is closed.
+     * @param channel Channel of the file to map.
+     */
+    public MappedIndexFile(FileChannel channel) {
+        try {
+            length = channel.size();
+            chunks = new ByteBuffer[(int)((length+CHUNK_SIZE-1)/CHUNK_SIZE)];
+            for(int i = 0; i < chunks.length; i++) {
+                long start = i*CHUNK_SIZE;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY,start,Math.min(CHUNK_SIZE,length-start)).order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+        catch( IOException ex ) {
+            throw new ReviewedStingException("Unable to map input file", ex);
+        }
+    }
+
+    /**
+     * Length of the file.
+     * @return Length of the file in bytes.
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * Gets the 32-bit word at the given offset.  Doesn't move the position of any buffer, so can be called from
+     * several threads at once.
+     * @param offset Offset of the word in the file, a multiple of four.
+     * @return The word.
+     */
+    public int getInt(long offset) {
+        return chunks[(int)(offset/CHUNK_SIZE)].getInt((int)(offset%CHUNK_SIZE));
+    }
+
+    /**
+     * Gets the unsigned 32-bit word at the given offset.
+     * @param offset Offset of the word in the file, a multiple of four.
+     * @return The word.
+     */
+    public long getUnsignedInt(long offset) {
+        return getInt(offset) & 0xFFFFFFFFL;
+    }
+}
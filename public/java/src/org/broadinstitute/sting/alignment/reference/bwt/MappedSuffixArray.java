@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2012, The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.broadinstitute.sting.alignment.reference.bwt;
+
+import org.broadinstitute.sting.alignment.reference.packing.PackUtils;
+import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
+
+/**
+ * A suffix array whose stored entries are read straight from a memory-mapped .sa file rather than from the heap.
+ * Entries between those stored are calculated from the BWT, as for any suffix array stored at an interval.
+ */
+public class MappedSuffixArray extends SuffixArray {
+    /**
+     * Size of the header: the inverse SA, the cumulative counts and the interval.
+     */
+    private static final long HEADER_SIZE = 4*(2+PackUtils.ALPHABET_SIZE);
+
+    /**
+     * The mapped .sa file.
+     */
+    private final MappedIndexFile file;
+
+    /**
+     * Number of entries stored in the file.
+     */
+    private final long storedLength;
+
+    /**
+     * Creates a suffix array from the given mapped .sa file.
+     * @param file The mapped file.
+     * @param bwt BWT used to calculate the entries which aren't stored.
+     */
+    public MappedSuffixArray(MappedIndexFile file, BWT bwt) {
+        super(file.getUnsignedInt(0),readOccurrences(file),null,(int)file.getUnsignedInt(HEADER_SIZE-4),bwt);
+        this.file = file;
+
+        // Every interval'th of the entries 0 to the length of the sequence, inclusive, is stored.
+        storedLength = (occurrences.getTotal()+sequenceInterval)/sequenceInterval;
+        if(file.length() < HEADER_SIZE + 4*storedLength)
+            throw new ReviewedStingException("Suffix array file is truncated");
+    }
+
+    private static Counts readOccurrences(MappedIndexFile file) {
+        long[] occurrences = new long[PackUtils.ALPHABET_SIZE];
+        for(int i = 0; i < occurrences.length; i++)
+            occurrences[i] = file.getUnsignedInt(4*(i+1));
+        return new Counts(occurrences,true);
+    }
+
+    /**
+     * Get one of the entries of the suffix array actually stored.
+     * @param storedIndex Index among the stored entries.
+     * @return The stored entry.
+     */
+    @Override
+    protected long getStoredValue(long storedIndex) {
+        return file.getUnsignedInt(HEADER_SIZE + 4*storedIndex);
+    }
+
+    /**
+     * Gets the number of entries of the suffix array actually stored.
+     * @return The number of entries stored in the file.
+     */
+    @Override
+    protected long getStoredLength() {
+        return storedLength;
+    }
+}
@@ -1,11 +1,7 @@
 package org.broadinstitute.sting.alignment.reference.bwt;
 
-import net.sf.samtools.util.StringUtil;
 import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
 
-import java.util.Comparator;
-import java.util.TreeSet;
-
 /**
  * An in-memory representation of a suffix array.
  *
@@ -83,7 +79,24 @@ public class SuffixArray {
             }
             iterations++;
         }
-        return (sequence[(int)(index/sequenceInterval)]+iterations) % length();
+        return (getStoredValue(index/sequenceInterval)+iterations) % length();
+    }
+
+    /**
+     * Get one of the entries of the suffix array actually stored.
+     * @param storedIndex Index among the stored entries.
+     * @return The stored entry.
+     */
+    protected long getStoredValue(long storedIndex) {
+        return sequence[(int)storedIndex];
+    }
+
+    /**
+     * Gets the number of entries of the suffix array actually stored.
+     * @return The number of stored entries.
+     */
+    protected long getStoredLength() {
+        return sequence.length;
     }
 
     /**
@@ -92,27 +105,17 @@ public class SuffixArray {
      * @return a constructed suffix array.
      */
     public static SuffixArray createFromReferenceSequence(byte[] sequence) {
-        // The builder for the suffix array.  Use an integer in this case because
-        // Java arrays can only hold an integer.
-        TreeSet<Integer> suffixArrayBuilder = new TreeSet<Integer>(new SuffixArrayComparator(sequence));
-
         Counts occurrences = new Counts();
         for( byte base: sequence )
             occurrences.increment(base);
 
-        // Build out the suffix array using a custom comparator.
-        for( int i = 0; i <= sequence.length; i++ )
-            suffixArrayBuilder.add(i);
-
-        // Copy the suffix array into an array.
-        long[] suffixArray = new long[suffixArrayBuilder.size()];
-        int i = 0;
-        for( Integer element: suffixArrayBuilder )
-            suffixArray[i++] = element;
+        int[] suffixArrayBuilder = SuffixArrayBuilder.build(sequence);
 
-        // Find the first element in the inverse suffix array.
+        // Copy the suffix array into an array, finding the first element in the inverse suffix array as we go.
+        long[] suffixArray = new long[suffixArrayBuilder.length];
         long inverseSA0 = -1;
-        for(i = 0; i < suffixArray.length; i++) {
+        for( int i = 0; i < suffixArray.length; i++ ) {
+            suffixArray[i] = suffixArrayBuilder[i];
             if(suffixArray[i] == 0)
                 inverseSA0 = i;
         }
@@ -120,39 +123,5 @@ public class SuffixArray {
             throw new ReviewedStingException("Unable to find first inverse SA entry in generated suffix array.");
 
         return new SuffixArray(inverseSA0,occurrences,suffixArray);
-    }    
-
-    /**
-     * Compares two suffix arrays of the given sequence.  Will return whichever string appears
-     * first in lexicographic order.
-     */
-    private static class SuffixArrayComparator implements Comparator<Integer> {
-        /**
-         * The data source for all suffix arrays.
-         */
-        private final String sequence;
-
-        /**
-         * Create a new comparator.
-         * @param sequence Reference sequence to use as basis for comparison.
-         */
-        public SuffixArrayComparator( byte[] sequence ) {
-            // Processing the suffix array tends to be easier as a string.
-            this.sequence = StringUtil.bytesToString(sequence);
-        }
-
-        /**
-         * Compare the two given suffix arrays.  Criteria for comparison is the lexicographic order of
-         * the two substrings sequence[lhs:], sequence[rhs:].
-         * @param lhs Left-hand side of comparison.
-         * @param rhs Right-hand side of comparison.
-         * @return How the suffix arrays represented by lhs, rhs compare.
-         */
-        public int compare( Integer lhs, Integer rhs ) {
-            String lhsSuffixArray = sequence.substring(lhs);
-            String rhsSuffixArray = sequence.substring(rhs);
-            return lhsSuffixArray.compareTo(rhsSuffixArray);
-        }
     }
-
 }
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2012, The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.broadinstitute.sting.alignment.reference.bwt;
+
+import java.util.Arrays;
+
+/**
+ * Builds suffix arrays in linear time by induced sorting (SA-IS; Nong, Zhang and Chan, 2009), working on primitive
+ * arrays throughout.
+ *
+ * The suffixes of the string are classified as S-type, if smaller than the suffix following them, or L-type.  Sorting
+ * the leftmost S-type suffixes of each run (the LMS suffixes) is enough to induce the order of all the others, and the
+ * LMS suffixes are themselves sorted by recursing on a string of names of their LMS substrings, at most half as long.
+ */
+final class SuffixArrayBuilder {
+    private SuffixArrayBuilder() {}
+
+    /**
+     * Builds the suffix array of the given sequence, including the empty suffix, which sorts first.
+     * @param sequence The sequence, compared byte by byte as unsigned values.
+     * @return The start of each suffix of the sequence, in lexicographic order.
+     */
+    public static int[] build(byte[] sequence) {
+        // Shift the alphabet up by one to make room for a unique, smallest sentinel standing in for the empty suffix.
+        int n = sequence.length+1;
+        int[] s = new int[n];
+        for(int i = 0; i < sequence.length; i++)
+            s[i] = (sequence[i] & 0xFF) + 1;
+        s[n-1] = 0;
+
+        int[] sa = new int[n];
+        build(s,0,sa,n,257);
+        return sa;
+    }
+
+    /**
+     * Builds the suffix array of s[offset,offset+n), which ends with a unique sentinel 0 and otherwise holds values in
+     * [1,alphabetSize).  The string may live in the tail of sa itself, as it does when recursing.
+     * @param s Array holding the string.
+     * @param offset Start of the string in s.
+     * @param sa Array into whose first n entries the suffix array is written.
+     * @param n Length of the string.
+     * @param alphabetSize One more than the largest value in the string.
+     */
+    private static void build(int[] s, int offset, int[] sa, int n, int alphabetSize) {
+        if(n == 1) {
+            sa[0] = 0;
+            return;
+        }
+
+        // Classify each suffix as S-type (true) or L-type.
+        boolean[] sType = new boolean[n];
+        sType[n-1] = true;
+        for(int i = n-2; i >= 0; i--)
+            sType[i] = s[offset+i] < s[offset+i+1] || (s[offset+i] == s[offset+i+1] && sType[i+1]);
+
+        // Sort the LMS substrings by placing the LMS suffixes at the ends of their buckets and inducing the rest.
+        int[] buckets = new int[alphabetSize];
+        getBucketEnds(s,offset,n,buckets);
+        Arrays.fill(sa,0,n,-1);
+        for(int i = 1; i < n; i++)
+            if(isLMS(sType,i)) sa[--buckets[s[offset+i]]] = i;
+        induce(s,offset,sa,n,sType,buckets);
+
+        // Gather the sorted LMS substrings at the front of sa.
+        int n1 = 0;
+        for(int i = 0; i < n; i++)
+            if(isLMS(sType,sa[i])) sa[n1++] = sa[i];
+
+        // Name each LMS substring by its rank, equal substrings sharing a name.  No two LMS positions are adjacent,
+        // so the name of the substring at position p can be kept at n1+p/2 without collisions.
+        Arrays.fill(sa,n1,n,-1);
+        int names = 0;
+        int previous = -1;
+        for(int i = 0; i < n1; i++) {
+            int position = sa[i];
+            if(previous < 0 || !equalLMSSubstrings(s,offset,sType,position,previous)) {
+                names++;
+                previous = position;
+            }
+            sa[n1+position/2] = names-1;
+        }
+        // Pack the names into the tail of sa, in the order of their positions in the string.
+        for(int i = n-1, j = n-1; i >= n1; i--)
+            if(sa[i] >= 0) sa[j--] = sa[i];
+
+        // Sort the LMS suffixes, recursing if any two of their substrings share a name.
+        int reducedOffset = n-n1;
+        if(names < n1)
+            build(sa,reducedOffset,sa,n1,names);
+        else {
+            for(int i = 0; i < n1; i++)
+                sa[sa[reducedOffset+i]] = i;
+        }
+
+        // Map the sorted reduced suffixes back to their positions in the string, and induce the full order from them.
+        for(int i = 1, j = reducedOffset; i < n; i++)
+            if(isLMS(sType,i)) sa[j++] = i;
+        for(int i = 0; i < n1; i++)
+            sa[i] = sa[reducedOffset+sa[i]];
+        Arrays.fill(sa,n1,n,-1);
+        getBucketEnds(s,offset,n,buckets);
+        for(int i = n1-1; i >= 0; i--) {
+            int position = sa[i];
+            sa[i] = -1;
+            sa[--buckets[s[offset+position]]] = position;
+        }
+        induce(s,offset,sa,n,sType,buckets);
+    }
+
+    /**
+     * Induces the order of the L-type suffixes from the LMS suffixes in sa, and then of the S-type suffixes from the
+     * L-type suffixes.
+     */
+    private static void induce(int[] s, int offset, int[] sa, int n, boolean[] sType, int[] buckets) {
+        getBucketStarts(s,offset,n,buckets);
+        for(int i = 0; i < n; i++) {
+            int j = sa[i]-1;
+            if(j >= 0 && !sType[j]) sa[buckets[s[offset+j]]++] = j;
+        }
+        getBucketEnds(s,offset,n,buckets);
+        for(int i = n-1; i >= 0; i--) {
+            int j = sa[i]-1;
+            if(j >= 0 && sType[j]) sa[--buckets[s[offset+j]]] = j;
+        }
+    }
+
+    private static boolean isLMS(boolean[] sType, int i) {
+        return i > 0 && sType[i] && !sType[i-1];
+    }
+
+    /**
+     * Whether the LMS substrings starting at the given positions, up to and including the next LMS position, are
+     * equal in both their values and their types.
+     */
+    private static boolean equalLMSSubstrings(int[] s, int offset, boolean[] sType, int a, int b) {
+        // The sentinel is unique, so the comparison stops before running off the end of the string.
+        for(int d = 0; ; d++) {
+            if(s[offset+a+d] != s[offset+b+d] || sType[a+d] != sType[b+d])
+                return false;
+            if(d > 0 && (isLMS(sType,a+d) || isLMS(sType,b+d)))
+                return true;
+        }
+    }
+
+    private static void getBucketStarts(int[] s, int offset, int n, int[] buckets) {
+        countValues(s,offset,n,buckets);
+        int sum = 0;
+        for(int i = 0; i < buckets.length; i++) {
+            int count = buckets[i];
+            buckets[i] = sum;
+            sum += count;
+        }
+    }
+
+    private static void getBucketEnds(int[] s, int offset, int n, int[] buckets) {
+        countValues(s,offset,n,buckets);
+        int sum = 0;
+        for(int i = 0; i < buckets.length; i++) {
+            sum += buckets[i];
+            buckets[i] = sum;
+        }
+    }
+
+    private static void countValues(int[] s, int offset, int n, int[] buckets) {
+        Arrays.fill(buckets,0);
+        for(int i = 0; i < n; i++)
+            buckets[s[offset+i]]++;
+    }
+}
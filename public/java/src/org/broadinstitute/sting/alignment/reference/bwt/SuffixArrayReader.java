@@ -60,7 +60,7 @@ public class SuffixArrayReader {
             uintPackedInputStream.read(occurrences);
             // Throw away the suffix array size in bytes and use the occurrences table directly.
             suffixArrayInterval = (int)uintPackedInputStream.read();
-            suffixArray = new long[(int)((occurrences[occurrences.length-1]+suffixArrayInterval-1)/suffixArrayInterval)];
+            suffixArray = new long[(int)((occurrences[occurrences.length-1]+suffixArrayInterval)/suffixArrayInterval)];
             uintPackedInputStream.read(suffixArray);
         }
         catch( IOException ex ) {
@@ -71,6 +71,15 @@ public class SuffixArrayReader {
     }
 
 
+    /**
+     * Map the suffix array into memory rather than reading it onto the heap, which is what a whole genome needs.
+     * Stored entries are then read from the file directly.
+     * @return The suffix array stored in the input file.
+     */
+    public SuffixArray map() {
+        return new MappedSuffixArray(new MappedIndexFile(inputStream.getChannel()),bwt);
+    }
+
     /**
      * Close the input stream.
      */
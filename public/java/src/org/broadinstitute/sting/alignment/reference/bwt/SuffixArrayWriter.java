@@ -42,10 +42,12 @@ public class SuffixArrayWriter {
             uintPackedOutputStream.write(suffixArray.inverseSA0);
             uintPackedOutputStream.write(suffixArray.occurrences.toArray(true));
             // How frequently the suffix array entry is placed.
-            uintPackedOutputStream.write(1);
+            uintPackedOutputStream.write(suffixArray.sequenceInterval);
             // Length of the suffix array.
             uintPackedOutputStream.write(suffixArray.length()-1);
-            uintPackedOutputStream.write(suffixArray.sequence,1,suffixArray.sequence.length-1);
+            // The remaining stored entries, which a mapped suffix array reads from its file rather than the heap.
+            for(long i = 1; i < suffixArray.getStoredLength(); i++)
+                uintPackedOutputStream.write(suffixArray.getStoredValue(i));
         }
         catch( IOException ex ) {
             throw new ReviewedStingException("Unable to read BWT from input stream.", ex);
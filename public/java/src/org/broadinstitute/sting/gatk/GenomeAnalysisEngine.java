@@ -35,6 +35,7 @@ import org.broadinstitute.sting.gatk.arguments.IonArgumentCollection;
 import org.broadinstitute.sting.gatk.arguments.ValidationExclusion;
 import org.broadinstitute.sting.gatk.datasources.reads.*;
 import org.broadinstitute.sting.gatk.datasources.reference.ReferenceDataSource;
+import org.broadinstitute.sting.gatk.datasources.rmd.RODFeatureCache;
 import org.broadinstitute.sting.gatk.datasources.rmd.ReferenceOrderedDataSource;
 import org.broadinstitute.sting.gatk.resourcemanagement.ThreadAllocation;
 import org.broadinstitute.sting.gatk.samples.SampleDB;
@@ -460,18 +461,21 @@ public class GenomeAnalysisEngine {
             if(walker instanceof LocusWalker) {
                 if (readsDataSource.getSortOrder() != SAMFileHeader.SortOrder.coordinate)
                     throw new UserException.MissortedBAM(SAMFileHeader.SortOrder.coordinate, "Locus walkers can only traverse coordinate-sorted data.  Please resort your input BAM file(s) or set the Sort Order tag in the header appropriately.");
+                // deep shards are split only to keep the threads of a parallel traversal busy
+                final long maxShardSize = threadAllocation.getNumCPUThreads() > 1 ? LocusShardBalancer.DEFAULT_MAX_SHARD_SIZE : Long.MAX_VALUE;
                 if(intervals == null)
-                    return readsDataSource.createShardIteratorOverMappedReads(referenceDataSource.getReference().getSequenceDictionary(),new LocusShardBalancer());
+                    return readsDataSource.createShardIteratorOverMappedReads(referenceDataSource.getReference().getSequenceDictionary(),new LocusShardBalancer(maxShardSize));
                 else
-                    return readsDataSource.createShardIteratorOverIntervals(intervals,new LocusShardBalancer());
+                    return readsDataSource.createShardIteratorOverIntervals(intervals,new LocusShardBalancer(maxShardSize));
             } 
             else if(walker instanceof ActiveRegionWalker) {
                 if (readsDataSource.getSortOrder() != SAMFileHeader.SortOrder.coordinate)
                     throw new UserException.MissortedBAM(SAMFileHeader.SortOrder.coordinate, "Active region walkers can only traverse coordinate-sorted data.  Please resort your input BAM file(s) or set the Sort Order tag in the header appropriately.");
+                // active regions are found within a shard, so deep shards mustn't be split under them
                 if(intervals == null)
-                    return readsDataSource.createShardIteratorOverMappedReads(referenceDataSource.getReference().getSequenceDictionary(),new LocusShardBalancer());
+                    return readsDataSource.createShardIteratorOverMappedReads(referenceDataSource.getReference().getSequenceDictionary(),new LocusShardBalancer(Long.MAX_VALUE));
                 else
-                    return readsDataSource.createShardIteratorOverIntervals(((ActiveRegionWalker)walker).extendIntervals(intervals, this.genomeLocParser, this.getReferenceDataSource().getReference()), new LocusShardBalancer());
+                    return readsDataSource.createShardIteratorOverIntervals(((ActiveRegionWalker)walker).extendIntervals(intervals, this.genomeLocParser, this.getReferenceDataSource().getReference()), new LocusShardBalancer(Long.MAX_VALUE));
             } 
             else if(walker instanceof ReadWalker || walker instanceof ReadPairWalker || walker instanceof DuplicateWalker) {
                 // Apply special validation to read pair walkers.
@@ -821,6 +825,11 @@ public class GenomeAnalysisEngine {
                                                                             GenomeLocParser genomeLocParser,
                                                                             ValidationExclusion.TYPE validationExclusionType) {
         RMDTrackBuilder builder = new RMDTrackBuilder(sequenceDictionary,genomeLocParser,validationExclusionType);
+        builder.setIndexingThreads(argCollection.numberOfThreads);
+
+        // decoded features are shared by all shards and threads of this engine, unless the cache has been turned off;
+        // the features hold GenomeLocs of this engine's parser, so they mustn't outlive it
+        RODFeatureCache featureCache = argCollection.rodCacheSize > 0 ? new RODFeatureCache(argCollection.rodCacheSize) : null;
 
         List<ReferenceOrderedDataSource> dataSources = new ArrayList<ReferenceOrderedDataSource>();
         for (RMDTriplet fileDescriptor : referenceMetaDataFiles)
@@ -828,7 +837,8 @@ public class GenomeAnalysisEngine {
                                                            builder,
                                                            sequenceDictionary,
                                                            genomeLocParser,
-                                                           flashbackData()));
+                                                           flashbackData(),
+                                                           featureCache));
 
         // validation: check to make sure everything the walker needs is present, and that all sequence dictionaries match.
         validateSourcesAgainstReference(readsDataSource, referenceDataSource.getReference(), dataSources, builder);
@@ -177,6 +177,9 @@ public class GATKArgumentCollection {
     @Argument(fullName = "performanceLog", shortName="PF", doc="If provided, a GATK runtime performance log will be written to this file", required = false)
     public File performanceLog = null;
 
+    @Argument(fullName = "hotPathMetricsLog", shortName="HPM", doc="If provided, the time, throughput and allocation of each hot path of the engine and walkers will be measured and periodically written to this file", required = false)
+    public File hotPathMetricsLog = null;
+
     /**
      * Gets the default downsampling method, returned if the user didn't specify any downsampling
      * method.
@@ -225,6 +228,9 @@ public class GATKArgumentCollection {
     @Argument(fullName = "num_bam_file_handles", shortName = "bfh", doc="The total number of BAM file handles to keep open simultaneously", required=false)
     public Integer numberOfBAMFileHandles = null;
 
+    @Argument(fullName = "rod_cache_size", shortName = "rodCache", doc="The number of decoded reference-ordered data features to keep in memory, shared by all threads; 0 turns the cache off", required=false)
+    public int rodCacheSize = 100000;
+
     @Input(fullName = "read_group_black_list", shortName="rgbl", doc="Filters out read groups matching <TAG>:<STRING> or a .txt file containing the filter strings one per line.", required = false)
     public List<String> readGroupBlackList = null;
 
@@ -405,6 +411,9 @@ public class GATKArgumentCollection {
                 (other.numberOfBAMFileHandles != null && !other.numberOfBAMFileHandles.equals(this.numberOfBAMFileHandles))) {
             return false;
         }
+        if (other.rodCacheSize != this.rodCacheSize) {
+            return false;
+        }
         if (other.intervalMerging != this.intervalMerging) {
             return false;
         }
@@ -423,6 +432,10 @@ public class GATKArgumentCollection {
                 (other.performanceLog != null && !other.performanceLog.equals(this.performanceLog)))
             return false;
 
+        if ((other.hotPathMetricsLog == null && this.hotPathMetricsLog != null) ||
+                (other.hotPathMetricsLog != null && !other.hotPathMetricsLog.equals(this.hotPathMetricsLog)))
+            return false;
+
         if (allowIntervalsWithUnindexedBAM != other.allowIntervalsWithUnindexedBAM)
             return false;
 
@@ -26,6 +26,7 @@ package org.broadinstitute.sting.gatk.datasources.reads;
 
 import org.broad.tribble.util.BlockCompressedStreamConstants;
 import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
+import org.broadinstitute.sting.utils.instrumentation.HotPathMetrics;
 
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -163,9 +164,16 @@ class BlockLoader implements Runnable {
         ByteBuffer.wrap(compressedContent).put(bgzfBlock);
 
         // Decompress the buffer.
-        final Inflater inflater = new Inflater(true);
-        inflater.setInput(compressedContent);
-        int bytesUncompressed = inflater.inflate(uncompressedContent);
+        int bytesUncompressed;
+        HotPathMetrics.begin(HotPathMetrics.Stage.BGZF_INFLATE);
+        try {
+            final Inflater inflater = new Inflater(true);
+            inflater.setInput(compressedContent);
+            bytesUncompressed = inflater.inflate(uncompressedContent);
+        }
+        finally {
+            HotPathMetrics.end(HotPathMetrics.Stage.BGZF_INFLATE, 1);
+        }
         if(bytesUncompressed != uncompressedBufferSize)
             throw new ReviewedStingException("Error decompressing block");
 
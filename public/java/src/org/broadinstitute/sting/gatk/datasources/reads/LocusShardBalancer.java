@@ -24,27 +24,79 @@
 
 package org.broadinstitute.sting.gatk.datasources.reads;
 
-import java.util.Iterator;
+import net.sf.samtools.Bin;
+import net.sf.samtools.GATKBAMFileSpan;
+import net.sf.samtools.SAMFileSpan;
+import org.broadinstitute.sting.utils.GenomeLoc;
+import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
+
+import java.util.*;
 
 /**
  * Batch granular file pointers into potentially larger shards.
+ *
+ * The work in a shard is estimated from the size of its file spans, which come from the sizes of the index bins
+ * overlapping its intervals, trimmed by the linear index.  Deep targeted data puts most of the reads behind a few
+ * short intervals, so a shard estimated to hold more than maxShardSize is split into pieces over about equal numbers
+ * of loci, in order, so that the threads of a parallel traversal aren't left waiting on it.  The file spans of each
+ * piece are those of the whole shard trimmed, through the index, to the bins overlapping the piece's loci, so reads
+ * overlapping the boundary between two pieces are seen by both, while each locus belongs to just one of them.
  */
 public class LocusShardBalancer extends ShardBalancer {
+    /**
+     * The estimated size, in uncompressed bytes, above which a shard is split.
+     */
+    public static final long DEFAULT_MAX_SHARD_SIZE = 4L * 1024 * 1024;
+
+    /**
+     * Pieces of a split shard span at least this many loci, as each piece reads all the reads of the shard.
+     */
+    public static final int MIN_LOCI_PER_SHARD = 50;
+
+    private final long maxShardSize;
+
+    /**
+     * The index data of each reader for the contig of the last shard piece trimmed.
+     */
+    private final Map<SAMReaderID,GATKBAMIndexData> indexData = new HashMap<SAMReaderID,GATKBAMIndexData>();
+
+    public LocusShardBalancer() {
+        this(DEFAULT_MAX_SHARD_SIZE);
+    }
+
+    /**
+     * @param maxShardSize The estimated size, in uncompressed bytes, above which a shard is split; Long.MAX_VALUE
+     *                     for shards that are never split.
+     */
+    public LocusShardBalancer(final long maxShardSize) {
+        if(maxShardSize <= 0)
+            throw new ReviewedStingException("Maximum shard size must be positive, not " + maxShardSize);
+        this.maxShardSize = maxShardSize;
+    }
+
     /**
      * Convert iterators of file pointers into balanced iterators of shards.
      * @return An iterator over balanced shards.
      */
     public Iterator<Shard> iterator() {
         return new Iterator<Shard>() {
+            /**
+             * The pieces of the last shard split still to be returned.
+             */
+            private final Queue<Shard> pieces = new LinkedList<Shard>();
+
             public boolean hasNext() {
-                return filePointers.hasNext();
+                return !pieces.isEmpty() || filePointers.hasNext();
             }
 
             public Shard next() {
-                FilePointer current = filePointers.next();
-                while(filePointers.hasNext() && current.minus(filePointers.peek()) == 0)
-                    current = current.combine(parser,filePointers.next());
-                return new LocusShard(parser,readsDataSource,current.getLocations(),current.fileSpans);
+                if(pieces.isEmpty()) {
+                    FilePointer current = filePointers.next();
+                    while(filePointers.hasNext() && current.minus(filePointers.peek()) == 0)
+                        current = current.combine(parser,filePointers.next());
+                    split(current,pieces);
+                }
+                return pieces.remove();
             }
 
             public void remove() {
@@ -52,4 +104,91 @@ public class LocusShardBalancer extends ShardBalancer {
             }
         };
     }
+
+    /**
+     * Split the given file pointer into shards over about equal numbers of loci, as many as it takes to bring each
+     * shard to within the maximum shard size, or into a single shard if it is small enough already.
+     * @param filePointer The file pointer to split.
+     * @param shards Destination for the shards, in order.
+     */
+    private void split(final FilePointer filePointer, final Queue<Shard> shards) {
+        final long size = filePointer.size();
+        long numLoci = 0;
+        if(!filePointer.isRegionUnmapped && size > maxShardSize) {
+            for(GenomeLoc location: filePointer.getLocations())
+                numLoci += location.size();
+        }
+
+        final long numPieces = Math.min((size - 1) / maxShardSize + 1, numLoci / MIN_LOCI_PER_SHARD);
+        if(numPieces <= 1) {
+            shards.add(new LocusShard(parser,readsDataSource,filePointer.getLocations(),filePointer.fileSpans));
+            return;
+        }
+
+        final long lociPerPiece = (numLoci + numPieces - 1) / numPieces;
+        List<GenomeLoc> piece = new ArrayList<GenomeLoc>();
+        long lociInPiece = 0;
+        for(GenomeLoc location: filePointer.getLocations()) {
+            GenomeLoc remaining = location;
+            while(remaining != null) {
+                final long room = lociPerPiece - lociInPiece;
+                if(remaining.size() <= room) {
+                    piece.add(remaining);
+                    lociInPiece += remaining.size();
+                    remaining = null;
+                }
+                else {
+                    GenomeLoc[] splitLocations = remaining.split(remaining.getStart() + (int)room);
+                    piece.add(splitLocations[0]);
+                    lociInPiece += room;
+                    remaining = splitLocations[1];
+                }
+
+                if(lociInPiece == lociPerPiece) {
+                    shards.add(new LocusShard(parser,readsDataSource,piece,getFileSpansOverlapping(piece,filePointer.fileSpans)));
+                    piece = new ArrayList<GenomeLoc>();
+                    lociInPiece = 0;
+                }
+            }
+        }
+        if(!piece.isEmpty())
+            shards.add(new LocusShard(parser,readsDataSource,piece,getFileSpansOverlapping(piece,filePointer.fileSpans)));
+    }
+
+    /**
+     * Trim the file spans of a shard to the parts that the index shows may hold reads overlapping the given loci.
+     * Without an index, the file spans are left whole.
+     * @param locations Loci of a piece of the shard.
+     * @param fileSpans File spans of the whole shard.
+     * @return File spans of the piece.
+     */
+    private Map<SAMReaderID,SAMFileSpan> getFileSpansOverlapping(final List<GenomeLoc> locations, final Map<SAMReaderID,SAMFileSpan> fileSpans) {
+        if(readsDataSource == null || !readsDataSource.hasIndex())
+            return fileSpans;
+
+        final int lowestLevel = GATKBAMIndex.getNumIndexLevels()-1;
+        Map<SAMReaderID,SAMFileSpan> trimmedFileSpans = new TreeMap<SAMReaderID,SAMFileSpan>();
+        for(Map.Entry<SAMReaderID,SAMFileSpan> fileSpan: fileSpans.entrySet()) {
+            final SAMReaderID reader = fileSpan.getKey();
+            final GATKBAMIndex index = readsDataSource.getIndex(reader);
+            final int binWidth = index.getMaxAddressibleGenomicLocation()/index.getLevelSize(lowestLevel);
+
+            // Every read overlapping a locus is in the span of the lowest level bin holding that locus.
+            GATKBAMFileSpan overlappingSpan = new GATKBAMFileSpan();
+            for(GenomeLoc location: locations) {
+                final int referenceSequence = readsDataSource.getHeader().getSequence(location.getContig()).getSequenceIndex();
+                GATKBAMIndexData contigIndexData = indexData.get(reader);
+                if(contigIndexData == null || contigIndexData.getReferenceSequence() != referenceSequence) {
+                    contigIndexData = index.readReferenceSequence(referenceSequence);
+                    indexData.put(reader,contigIndexData);
+                }
+                for(int binInLevel = (location.getStart()-1)/binWidth; binInLevel <= (location.getStop()-1)/binWidth; binInLevel++) {
+                    final Bin bin = new Bin(referenceSequence,GATKBAMIndex.getFirstBinInLevel(lowestLevel)+binInLevel);
+                    overlappingSpan = overlappingSpan.union(contigIndexData.getSpanOverlapping(bin));
+                }
+            }
+            trimmedFileSpans.put(reader,new GATKBAMFileSpan(fileSpan.getValue()).intersection(overlappingSpan));
+        }
+        return trimmedFileSpans;
+    }
 }
@@ -0,0 +1,275 @@
+package org.broadinstitute.sting.gatk.datasources.rmd;
+
+import net.sf.samtools.SAMSequenceDictionary;
+import net.sf.samtools.SAMSequenceRecord;
+import net.sf.samtools.util.CloseableIterator;
+import org.broadinstitute.sting.gatk.refdata.tracks.RMDTrack;
+import org.broadinstitute.sting.gatk.refdata.utils.GATKFeature;
+import org.broadinstitute.sting.utils.GenomeLoc;
+import org.broadinstitute.sting.utils.GenomeLocParser;
+import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * A size-bounded cache of the decoded features of indexed reference-ordered data, shared by every shard and thread of
+ * one GenomeAnalysisEngine
+ *
+ * <p>
+ * Each contig of each track is split into blocks of BLOCK_SIZE bases, and the features overlapping a block are decoded
+ * once, by whichever query first needs them, and then handed to every query over that block until the block is
+ * evicted.  Queries of overlapping shards, or of threads working on neighbouring regions, share the same decoded
+ * features rather than each seeking and decoding them again.  Blocks are evicted least recently used first, once the
+ * cache holds more than its maximum number of features.
+ * </p>
+ *
+ * <p>
+ * The features themselves are shared between threads, so they mustn't be changed by those using them.
+ * </p>
+ */
+public class RODFeatureCache {
+    public static final int BLOCK_SIZE = 16384;
+
+    private final LinkedHashMap<BlockKey, Block> blocks = new LinkedHashMap<BlockKey, Block>(16, 0.75f, true);
+    private int maxFeatures;
+    private long nFeatures = 0;
+
+    // statistics, for the log
+    private long nBlockQueries = 0;
+    private long nBlocksDecoded = 0;
+
+    public RODFeatureCache(int maxFeatures) {
+        this.maxFeatures = maxFeatures;
+    }
+
+    public synchronized void setMaxFeatures(int maxFeatures) {
+        this.maxFeatures = maxFeatures;
+        evict();
+    }
+
+    public synchronized long getNFeatures() {
+        return nFeatures;
+    }
+
+    public synchronized long getNBlockQueries() {
+        return nBlockQueries;
+    }
+
+    public synchronized long getNBlocksDecoded() {
+        return nBlocksDecoded;
+    }
+
+    /**
+     * Returns the features of a track overlapping an interval, from the cache where possible
+     *
+     * @param track the track, used to decode the blocks that aren't cached; it must not be in use by anyone else
+     * @param referenceDictionary the reference's sequence dictionary
+     * @param genomeLocParser the parser to create the locations of the blocks with
+     * @param interval the interval
+     * @return the features overlapping the interval, in the order the track would give them
+     */
+    public CloseableIterator<GATKFeature> query(RMDTrack track, SAMSequenceDictionary referenceDictionary, GenomeLocParser genomeLocParser, GenomeLoc interval) {
+        return new CachedFeatureIterator(new TrackKey(track), track, referenceDictionary, genomeLocParser, interval);
+    }
+
+    /**
+     * @return the features overlapping the block, decoding them if they aren't in the cache
+     */
+    private List<GATKFeature> getBlock(TrackKey trackKey, RMDTrack track, GenomeLoc blockLoc, int blockIndex) {
+        final BlockKey key = new BlockKey(trackKey, blockLoc.getContig(), blockIndex);
+        Block block;
+        synchronized ( this ) {
+            nBlockQueries++;
+            block = blocks.get(key);
+            if ( block == null ) {
+                block = new Block();
+                blocks.put(key, block);
+            }
+        }
+
+        final List<GATKFeature> features = block.load(track, blockLoc);
+        synchronized ( this ) {
+            if ( block.loaded && ! block.counted && blocks.get(key) == block ) {
+                // only count the features of blocks that are still in the cache
+                block.counted = true;
+                nFeatures += features.size();
+                nBlocksDecoded++;
+                evict();
+            }
+        }
+        return features;
+    }
+
+    private void evict() {
+        final Iterator<Block> it = blocks.values().iterator();
+        while ( nFeatures > maxFeatures && it.hasNext() ) {
+            final Block block = it.next();
+            if ( block.counted )
+                nFeatures -= block.features.size();
+            it.remove();
+        }
+    }
+
+    /**
+     * The features overlapping one block of a track, decoded by the first query that needs them
+     */
+    private static class Block {
+        private List<GATKFeature> features = null;
+        private boolean loaded = false;
+        private boolean counted = false;
+
+        synchronized List<GATKFeature> load(RMDTrack track, GenomeLoc blockLoc) {
+            if ( ! loaded ) {
+                final List<GATKFeature> decoded = new ArrayList<GATKFeature>();
+                try {
+                    final CloseableIterator<GATKFeature> it = track.query(blockLoc);
+                    while ( it.hasNext() )
+                        decoded.add(it.next());
+                    it.close();
+                } catch (IOException e) {
+                    throw new ReviewedStingException("Unable to query rod named " + track.getName() + " at " + blockLoc, e);
+                }
+                features = Collections.unmodifiableList(decoded);
+                loaded = true;
+            }
+            return features;
+        }
+    }
+
+    /**
+     * Identifies a track by its binding and the contents of its file, so that a file rewritten by an earlier run in
+     * the same process isn't mistaken for the same data
+     */
+    private static class TrackKey {
+        private final String name;
+        private final Class type;
+        private final String path;
+        private final long length;
+        private final long lastModified;
+
+        TrackKey(RMDTrack track) {
+            final File file = track.getFile();
+            name = track.getName();
+            type = track.getType();
+            path = file.getAbsolutePath();
+            length = file.length();
+            lastModified = file.lastModified();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if ( ! (o instanceof TrackKey) )
+                return false;
+            final TrackKey other = (TrackKey)o;
+            return name.equals(other.name) && type.equals(other.type) && path.equals(other.path) && length == other.length && lastModified == other.lastModified;
+        }
+
+        @Override
+        public int hashCode() {
+            return (name.hashCode() * 31 + path.hashCode()) * 31 + (int)(lastModified ^ (lastModified >>> 32));
+        }
+    }
+
+    private static class BlockKey {
+        private final TrackKey track;
+        private final String contig;
+        private final int blockIndex;
+
+        BlockKey(TrackKey track, String contig, int blockIndex) {
+            this.track = track;
+            this.contig = contig;
+            this.blockIndex = blockIndex;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if ( ! (o instanceof BlockKey) )
+                return false;
+            final BlockKey other = (BlockKey)o;
+            return blockIndex == other.blockIndex && contig.equals(other.contig) && track.equals(other.track);
+        }
+
+        @Override
+        public int hashCode() {
+            return (track.hashCode() * 31 + contig.hashCode()) * 31 + blockIndex;
+        }
+    }
+
+    /**
+     * Walks the features overlapping an interval, block by block.  A feature overlapping more than one block is given
+     * only with the first block of the interval it overlaps, so the features come out once each, in order of start.
+     */
+    private class CachedFeatureIterator implements CloseableIterator<GATKFeature> {
+        private final TrackKey trackKey;
+        private final RMDTrack track;
+        private final GenomeLocParser genomeLocParser;
+        private final GenomeLoc interval;
+        private final int contigLength;
+        private final int lastBlock;
+
+        private int blockIndex;
+        private boolean firstBlock = true;
+        private List<GATKFeature> features = Collections.emptyList();
+        private int offset = 0;
+        private GATKFeature next = null;
+
+        CachedFeatureIterator(TrackKey trackKey, RMDTrack track, SAMSequenceDictionary referenceDictionary, GenomeLocParser genomeLocParser, GenomeLoc interval) {
+            this.trackKey = trackKey;
+            this.track = track;
+            this.genomeLocParser = genomeLocParser;
+            this.interval = interval;
+
+            final SAMSequenceRecord contig = referenceDictionary.getSequence(interval.getContig());
+            contigLength = contig != null ? contig.getSequenceLength() : interval.getStop();
+            blockIndex = (interval.getStart() - 1) / BLOCK_SIZE;
+            lastBlock = (Math.min(interval.getStop(), contigLength) - 1) / BLOCK_SIZE;
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+            while ( next == null ) {
+                if ( offset == features.size() ) {
+                    if ( blockIndex > lastBlock )
+                        return;
+                    final int blockStart = blockIndex * BLOCK_SIZE + 1;
+                    final GenomeLoc blockLoc = genomeLocParser.createGenomeLoc(interval.getContig(), blockStart, Math.min(blockStart + BLOCK_SIZE - 1, contigLength));
+                    features = getBlock(trackKey, track, blockLoc, blockIndex);
+                    offset = 0;
+                    firstBlock = blockStart <= interval.getStart();
+                    blockIndex++;
+                    continue;
+                }
+
+                final GATKFeature feature = features.get(offset++);
+                final int blockStart = (blockIndex - 1) * BLOCK_SIZE + 1;
+                final boolean inInterval = feature.getStart() <= interval.getStop() && feature.getEnd() >= interval.getStart();
+                // features starting before this block were already given with the block before it
+                if ( inInterval && (firstBlock || feature.getStart() >= blockStart) )
+                    next = feature;
+            }
+        }
+
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        public GATKFeature next() {
+            if ( next == null )
+                throw new NoSuchElementException("No more features in " + interval);
+            final GATKFeature feature = next;
+            advance();
+            return feature;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("Cannot remove features from the ROD cache");
+        }
+
+        public void close() {
+            // the blocks stay in the cache
+        }
+    }
+}
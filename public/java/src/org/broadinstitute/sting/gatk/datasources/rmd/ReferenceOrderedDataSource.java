@@ -25,10 +25,12 @@
 package org.broadinstitute.sting.gatk.datasources.rmd;
 
 import net.sf.samtools.SAMSequenceDictionary;
+import net.sf.samtools.util.CloseableIterator;
 import org.broadinstitute.sting.commandline.Tags;
 import org.broadinstitute.sting.gatk.refdata.SeekableRODIterator;
 import org.broadinstitute.sting.gatk.refdata.tracks.RMDTrack;
 import org.broadinstitute.sting.gatk.refdata.tracks.RMDTrackBuilder;
+import org.broadinstitute.sting.gatk.refdata.utils.GATKFeature;
 import org.broadinstitute.sting.gatk.refdata.utils.LocationAwareSeekableRODIterator;
 import org.broadinstitute.sting.gatk.refdata.utils.RMDTriplet;
 import org.broadinstitute.sting.utils.GenomeLoc;
@@ -77,6 +79,19 @@ public class ReferenceOrderedDataSource {
                                       SAMSequenceDictionary referenceSequenceDictionary,
                                       GenomeLocParser genomeLocParser,
                                       boolean flashbackData ) {
+        this(fileDescriptor,builder,referenceSequenceDictionary,genomeLocParser,flashbackData,null);
+    }
+
+    /**
+     * Create a new reference-ordered data source, whose queries are served from the given feature cache.
+     * @param featureCache the cache of decoded features, or null to query the track directly.
+     */
+    public ReferenceOrderedDataSource(RMDTriplet fileDescriptor,
+                                      RMDTrackBuilder builder,
+                                      SAMSequenceDictionary referenceSequenceDictionary,
+                                      GenomeLocParser genomeLocParser,
+                                      boolean flashbackData,
+                                      RODFeatureCache featureCache ) {
         this.fileDescriptor = fileDescriptor;
         this.builder = builder;
 
@@ -85,7 +100,8 @@ public class ReferenceOrderedDataSource {
             iteratorPool = new ReferenceOrderedQueryDataPool(fileDescriptor,
                                                              builder,
                                                              referenceSequenceDictionary,
-                                                             genomeLocParser);
+                                                             genomeLocParser,
+                                                             featureCache);
             this.header = ((ReferenceOrderedQueryDataPool)iteratorPool).getHeader();
             this.sequenceDictionary = ((ReferenceOrderedQueryDataPool)iteratorPool).getSequenceDictionary();
         }
@@ -196,10 +212,20 @@ class ReferenceOrderedQueryDataPool extends ResourcePool<RMDTrack,LocationAwareS
      */
     private final SAMSequenceDictionary sequenceDictionary;
 
+    /**
+     * The cache of decoded features to serve queries from, or null if queries go straight to the track.
+     */
+    private final RODFeatureCache featureCache;
+
     public ReferenceOrderedQueryDataPool(RMDTriplet fileDescriptor, RMDTrackBuilder builder, SAMSequenceDictionary referenceSequenceDictionary, GenomeLocParser genomeLocParser) {
+        this(fileDescriptor,builder,referenceSequenceDictionary,genomeLocParser,null);
+    }
+
+    public ReferenceOrderedQueryDataPool(RMDTriplet fileDescriptor, RMDTrackBuilder builder, SAMSequenceDictionary referenceSequenceDictionary, GenomeLocParser genomeLocParser, RODFeatureCache featureCache) {
         super(referenceSequenceDictionary,genomeLocParser);
         this.fileDescriptor = fileDescriptor;
         this.builder = builder;
+        this.featureCache = featureCache;
 
         // prepopulate one RMDTrack
         RMDTrack track = builder.createInstanceOfTrack(fileDescriptor);
@@ -235,7 +261,10 @@ class ReferenceOrderedQueryDataPool extends ResourcePool<RMDTrack,LocationAwareS
         try {
             if (position instanceof MappedStreamSegment) {
                 GenomeLoc pos = ((MappedStreamSegment) position).locus;
-                return new SeekableRODIterator(header,sequenceDictionary,referenceSequenceDictionary,genomeLocParser,track.query(pos));
+                CloseableIterator<GATKFeature> features = featureCache != null ?
+                        featureCache.query(track,referenceSequenceDictionary,genomeLocParser,pos) :
+                        track.query(pos);
+                return new SeekableRODIterator(header,sequenceDictionary,referenceSequenceDictionary,genomeLocParser,features);
             } else {
                 return new SeekableRODIterator(header,sequenceDictionary,referenceSequenceDictionary,genomeLocParser,track.getIterator());
             }
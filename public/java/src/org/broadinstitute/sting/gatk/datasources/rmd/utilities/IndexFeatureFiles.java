@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2011, The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.broadinstitute.sting.gatk.datasources.rmd.utilities;
+
+import org.apache.log4j.Logger;
+import org.broadinstitute.sting.commandline.Argument;
+import org.broadinstitute.sting.commandline.CommandLineProgram;
+import org.broadinstitute.sting.commandline.Input;
+import org.broadinstitute.sting.gatk.refdata.tracks.FeatureManager;
+import org.broadinstitute.sting.gatk.refdata.tracks.RMDTrackBuilder;
+import org.broadinstitute.sting.utils.GenomeLocParser;
+import org.broadinstitute.sting.utils.exceptions.UserException;
+import org.broadinstitute.sting.utils.fasta.CachingIndexedFastaSequenceFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes the Tribble index of each of the given feature files, so that the first GATK run using them doesn't have to.
+ *
+ * Meant to be run in the background as soon as a large VCF (or other plain-text feature file) has been produced.
+ * Files whose index is already up to date are left alone; block-compressed files are indexed with tabix, not Tribble,
+ * and are skipped.
+ */
+public class IndexFeatureFiles extends CommandLineProgram {
+    private static Logger logger = Logger.getLogger(IndexFeatureFiles.class);
+
+    @Input(fullName = "reference_sequence", shortName = "R", doc = "Reference sequence file, whose dictionary is written into the indices", required = true)
+    public File referenceFile = null;
+
+    @Input(fullName = "input", shortName = "I", doc = "Feature file(s) to index", required = true)
+    public List<File> inputFiles = new ArrayList<File>();
+
+    @Argument(fullName = "type", shortName = "type", doc = "Type of the feature files (e.g. VCF); detected from each file if not given", required = false)
+    public String type = null;
+
+    @Argument(fullName = "num_threads", shortName = "nt", doc = "Number of threads with which to index each file", required = false)
+    public int numThreads = Runtime.getRuntime().availableProcessors();
+
+    @Override
+    public int execute() throws IOException {
+        CachingIndexedFastaSequenceFile refReader = new CachingIndexedFastaSequenceFile(referenceFile);
+        GenomeLocParser genomeLocParser = new GenomeLocParser(refReader);
+        RMDTrackBuilder builder = new RMDTrackBuilder(refReader.getSequenceDictionary(), genomeLocParser, null);
+        builder.setIndexingThreads(numThreads);
+        FeatureManager featureManager = builder.getFeatureManager();
+
+        for(File inputFile: inputFiles) {
+            if(!inputFile.canRead())
+                throw new UserException.CouldNotReadInputFile(inputFile);
+            if(inputFile.getName().endsWith(".gz")) {
+                logger.warn("Skipping " + inputFile + ": block-compressed files are indexed with tabix");
+                continue;
+            }
+
+            FeatureManager.FeatureDescriptor descriptor = type != null ? featureManager.getByName(type) : featureManager.getByFiletype(inputFile);
+            if(descriptor == null)
+                throw new UserException.CouldNotReadInputFile(inputFile, "its feature type couldn't be determined; available types are " + featureManager.userFriendlyListOfAvailableFeatures());
+
+            long startTime = System.currentTimeMillis();
+            builder.loadIndex(inputFile, featureManager.createCodec(descriptor, inputFile.getName(), genomeLocParser));
+            logger.info(String.format("Indexed %s in %.1f seconds", inputFile, (System.currentTimeMillis() - startTime) / 1000.0));
+        }
+
+        return 0;
+    }
+
+    /**
+     * Required main method implementation.
+     * @param argv Command-line argument text.
+     * @throws Exception on error.
+     */
+    public static void main(String[] argv) throws Exception {
+        int returnCode = 0;
+        try {
+            IndexFeatureFiles instance = new IndexFeatureFiles();
+            start(instance, argv);
+            returnCode = 0;
+        }
+        catch(Exception ex) {
+            returnCode = 1;
+            ex.printStackTrace();
+            throw ex;
+        }
+        finally {
+            System.exit(returnCode);
+        }
+    }
+}
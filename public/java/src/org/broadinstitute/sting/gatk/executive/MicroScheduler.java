@@ -39,6 +39,7 @@ import org.broadinstitute.sting.gatk.traversals.*;
 import org.broadinstitute.sting.gatk.walkers.*;
 import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
 import org.broadinstitute.sting.utils.exceptions.UserException;
+import org.broadinstitute.sting.utils.instrumentation.HotPathMetrics;
 
 import javax.management.JMException;
 import javax.management.MBeanServer;
@@ -148,6 +149,7 @@ public abstract class MicroScheduler implements MicroSchedulerMBean {
         catch (JMException ex) {
             throw new ReviewedStingException("Unable to register microscheduler with JMX", ex);
         }
+        HotPathMetrics.registerWithJMX();
     }
 
     /**
@@ -32,14 +32,15 @@ import net.sf.samtools.CigarOperator;
 import net.sf.samtools.SAMRecord;
 import org.apache.log4j.Logger;
 import org.broadinstitute.sting.gatk.DownsampleType;
+import org.broadinstitute.sting.gatk.GenomeAnalysisEngine;
 import org.broadinstitute.sting.gatk.DownsamplingMethod;
 import org.broadinstitute.sting.gatk.ReadProperties;
 import org.broadinstitute.sting.gatk.contexts.AlignmentContext;
 import org.broadinstitute.sting.utils.GenomeLoc;
 import org.broadinstitute.sting.utils.GenomeLocParser;
-import org.broadinstitute.sting.utils.MathUtils;
 import org.broadinstitute.sting.utils.ReservoirDownsampler;
 import org.broadinstitute.sting.utils.exceptions.UserException;
+import org.broadinstitute.sting.utils.instrumentation.HotPathMetrics;
 import org.broadinstitute.sting.utils.pileup.ExtendedEventPileupElement;
 import org.broadinstitute.sting.utils.pileup.PileupElement;
 import org.broadinstitute.sting.utils.pileup.ReadBackedExtendedEventPileupImpl;
@@ -58,6 +59,11 @@ public class LocusIteratorByState extends LocusIterator {
      */
     private static Logger logger = Logger.getLogger(LocusIteratorByState.class);
 
+    /**
+     * when downsampling, reads are first pruned from the alignment starts with more reads than this
+     */
+    static final int MAX_READS_AT_ALIGNMENT_START = 500;
+
     // -----------------------------------------------------------------------------------------------------------------
     //
     // member fields
@@ -72,7 +78,7 @@ public class LocusIteratorByState extends LocusIterator {
     private final ArrayList<String> samples;
     private final ReadStateManager readStates;
 
-    static private class SAMRecordState {
+    static class SAMRecordState {
         SAMRecord read;
         int readOffset = -1;                    // how far are we offset from the start of the read bases?
         int genomeOffset = -1;                  // how far are we offset from the alignment start on the genome?
@@ -365,145 +371,153 @@ public class LocusIteratorByState extends LocusIterator {
      * nextAlignmentContext MUST BE null in order for this method to advance to the next entry.
      */
     private void lazyLoadNextAlignmentContext() {
-        while (nextAlignmentContext == null && readStates.hasNext()) {
-            // this call will set hasExtendedEvents to true if it picks up a read with indel right before the current position on the ref:
-            readStates.collectPendingReads();
-
-            int size = 0;
-            int nDeletions = 0;
-            int nInsertions = 0;
-            int nMQ0Reads = 0;
-
-
-            // if extended events are requested, and if previous traversal step brought us over an indel in
-            // at least one read, we emit extended pileup (making sure that it is associated with the previous base,
-            // i.e. the one right *before* the indel) and do NOT shift the current position on the ref.
-            // In this case, the subsequent call to next() will emit the normal pileup at the current base
-            // and shift the position.
-            if (readInfo.generateExtendedEvents() && hasExtendedEvents) {
-                Map<String, ReadBackedExtendedEventPileupImpl> fullExtendedEventPileup = new HashMap<String, ReadBackedExtendedEventPileupImpl>();
-
-                // get current location on the reference and decrement it by 1: the indels we just stepped over
-                // are associated with the *previous* reference base
-                GenomeLoc loc = genomeLocParser.incPos(getLocation(), -1);
-
-                boolean hasBeenSampled = false;
-                for (final String sample : samples) {
-                    Iterator<SAMRecordState> iterator = readStates.iterator(sample);
-                    List<ExtendedEventPileupElement> indelPile = new ArrayList<ExtendedEventPileupElement>(readStates.size(sample));
-                    hasBeenSampled |= loc.getStart() <= readStates.getDownsamplingExtent(sample);
-
-                    size = 0;
-                    nDeletions = 0;
-                    nInsertions = 0;
-                    nMQ0Reads = 0;
-                    int maxDeletionLength = 0;
-
-                    while (iterator.hasNext()) {
-                        final SAMRecordState state = iterator.next();
-                        final GATKSAMRecord read = (GATKSAMRecord) state.getRead();   // the actual read
-                        final CigarOperator op = state.getCurrentCigarOperator();     // current cigar operator
-                        final int readOffset = state.getReadOffset();                 // the base offset on this read
-                        final int eventStartOffset = state.getReadEventStartOffset(); // this will be -1 if base is not a deletion, or if base is the first deletion in the event. Otherwise, it will give the last base before the deletion began.
-                        final int eventLength = state.getEventLength();
-
-                        if (op == CigarOperator.N)                                    // N's are never added to any pileup
-                                continue;
+        if (nextAlignmentContext != null)
+            return;
+
+        HotPathMetrics.begin(HotPathMetrics.Stage.LOCUS_ITERATION);
+        try {
+            while (nextAlignmentContext == null && readStates.hasNext()) {
+                // this call will set hasExtendedEvents to true if it picks up a read with indel right before the current position on the ref:
+                readStates.collectPendingReads();
+
+                int size = 0;
+                int nDeletions = 0;
+                int nInsertions = 0;
+                int nMQ0Reads = 0;
+
+
+                // if extended events are requested, and if previous traversal step brought us over an indel in
+                // at least one read, we emit extended pileup (making sure that it is associated with the previous base,
+                // i.e. the one right *before* the indel) and do NOT shift the current position on the ref.
+                // In this case, the subsequent call to next() will emit the normal pileup at the current base
+                // and shift the position.
+                if (readInfo.generateExtendedEvents() && hasExtendedEvents) {
+                    Map<String, ReadBackedExtendedEventPileupImpl> fullExtendedEventPileup = new HashMap<String, ReadBackedExtendedEventPileupImpl>();
+
+                    // get current location on the reference and decrement it by 1: the indels we just stepped over
+                    // are associated with the *previous* reference base
+                    GenomeLoc loc = genomeLocParser.incPos(getLocation(), -1);
+
+                    boolean hasBeenSampled = false;
+                    for (final String sample : samples) {
+                        Iterator<SAMRecordState> iterator = readStates.iterator(sample);
+                        List<ExtendedEventPileupElement> indelPile = new ArrayList<ExtendedEventPileupElement>(readStates.size(sample));
+                        hasBeenSampled |= loc.getStart() <= readStates.getDownsamplingExtent(sample);
+
+                        size = 0;
+                        nDeletions = 0;
+                        nInsertions = 0;
+                        nMQ0Reads = 0;
+                        int maxDeletionLength = 0;
+
+                        while (iterator.hasNext()) {
+                            final SAMRecordState state = iterator.next();
+                            final GATKSAMRecord read = (GATKSAMRecord) state.getRead();   // the actual read
+                            final CigarOperator op = state.getCurrentCigarOperator();     // current cigar operator
+                            final int readOffset = state.getReadOffset();                 // the base offset on this read
+                            final int eventStartOffset = state.getReadEventStartOffset(); // this will be -1 if base is not a deletion, or if base is the first deletion in the event. Otherwise, it will give the last base before the deletion began.
+                            final int eventLength = state.getEventLength();
+
+                            if (op == CigarOperator.N)                                    // N's are never added to any pileup
+                                    continue;
+
+                            if (state.hadIndel()) {                                       // this read has an indel associated with the previous position on the ref
+                                size++;
+                                ExtendedEventPileupElement pileupElement;
+                                if (state.getEventBases() == null) {                      // Deletion event
+                                    nDeletions++;
+                                    maxDeletionLength = Math.max(maxDeletionLength, state.getEventLength());
+                                    pileupElement = new ExtendedEventPileupElement(read, eventStartOffset, eventLength);
+                                }
+                                else {                                                    // Insertion event
+                                    nInsertions++;
+                                    pileupElement = new ExtendedEventPileupElement(read, eventStartOffset, eventLength, state.getEventBases());
+                                }
+                                if (read.getMappingQuality() == 0)
+                                    nMQ0Reads++;
 
-                        if (state.hadIndel()) {                                       // this read has an indel associated with the previous position on the ref
-                            size++;
-                            ExtendedEventPileupElement pileupElement;
-                            if (state.getEventBases() == null) {                      // Deletion event
-                                nDeletions++;
-                                maxDeletionLength = Math.max(maxDeletionLength, state.getEventLength());
-                                pileupElement = new ExtendedEventPileupElement(read, eventStartOffset, eventLength);
+                                indelPile.add(pileupElement);
                             }
-                            else {                                                    // Insertion event
-                                nInsertions++;
-                                pileupElement = new ExtendedEventPileupElement(read, eventStartOffset, eventLength, state.getEventBases());
-                            }
-                            if (read.getMappingQuality() == 0)
-                                nMQ0Reads++;
 
-                            indelPile.add(pileupElement);
-                        }
-
-                        // this read has no indel so add it to the pileup as a NOEVENT:
-                        //   a deletion that didn't start here (therefore, not an extended event)
-                        //   we add (mis)matches as no events.
-                        else if (op != CigarOperator.D || readInfo.includeReadsWithDeletionAtLoci()) {
-                            size++;
-                            indelPile.add(new ExtendedEventPileupElement((GATKSAMRecord) state.getRead(), readOffset));
-                            if (read.getMappingQuality() == 0)
-                                nMQ0Reads++;
-                        }
-                    }
-
-                    if (indelPile.size() != 0)
-                        fullExtendedEventPileup.put(sample, new ReadBackedExtendedEventPileupImpl(loc, indelPile, size, maxDeletionLength, nInsertions, nDeletions, nMQ0Reads));
-                }
-                hasExtendedEvents = false;                                            // we are done with extended events prior to current ref base
-                nextAlignmentContext = new AlignmentContext(loc, new ReadBackedExtendedEventPileupImpl(loc, fullExtendedEventPileup), hasBeenSampled);
-            }
-            else {                                                                    // this is a regular event pileup (not extended)
-                GenomeLoc location = getLocation();
-                Map<String, ReadBackedPileupImpl> fullPileup = new HashMap<String, ReadBackedPileupImpl>();
-                boolean hasBeenSampled = false;
-                for (final String sample : samples) {
-                    Iterator<SAMRecordState> iterator = readStates.iterator(sample);
-                    List<PileupElement> pile = new ArrayList<PileupElement>(readStates.size(sample));
-                    hasBeenSampled |= location.getStart() <= readStates.getDownsamplingExtent(sample);
-
-                    size = 0;                                                         // number of elements in this sample's pileup
-                    nDeletions = 0;                                                   // number of deletions in this sample's pileup
-                    nMQ0Reads = 0;                                                    // number of MQ0 reads in this sample's pileup (warning: current implementation includes N bases that are MQ0)
-
-                    while (iterator.hasNext()) {
-                        final SAMRecordState state = iterator.next();                 // state object with the read/offset information
-                        final GATKSAMRecord read = (GATKSAMRecord) state.getRead();   // the actual read
-                        final CigarOperator op = state.getCurrentCigarOperator();     // current cigar operator
-                        final CigarElement nextElement = state.peekForwardOnGenome();     // next cigar element
-                        final CigarOperator nextOp = nextElement.getOperator();
-                        final int readOffset = state.getReadOffset();                 // the base offset on this read
-
-                        int nextElementLength = nextElement.getLength();
-
-                        if (op == CigarOperator.N)                                    // N's are never added to any pileup
-                            continue;
-
-                        if (op == CigarOperator.D) {
-                            if (readInfo.includeReadsWithDeletionAtLoci()) {          // only add deletions to the pileup if we are authorized to do so
-                                pile.add(new PileupElement(read, readOffset, true, nextOp == CigarOperator.D, nextOp == CigarOperator.I, nextOp == CigarOperator.S || (state.getGenomeOffset() == 0 && read.getSoftStart() != read.getAlignmentStart()),
-                                        null,nextOp == CigarOperator.D? nextElementLength:-1));
+                            // this read has no indel so add it to the pileup as a NOEVENT:
+                            //   a deletion that didn't start here (therefore, not an extended event)
+                            //   we add (mis)matches as no events.
+                            else if (op != CigarOperator.D || readInfo.includeReadsWithDeletionAtLoci()) {
                                 size++;
-                                nDeletions++;
+                                indelPile.add(new ExtendedEventPileupElement((GATKSAMRecord) state.getRead(), readOffset));
                                 if (read.getMappingQuality() == 0)
                                     nMQ0Reads++;
                             }
                         }
-                        else {
-                            if (!filterBaseInRead(read, location.getStart())) {
-                                String insertedBaseString = null;
-                                if (nextOp == CigarOperator.I) {
-                                    insertedBaseString = new String(Arrays.copyOfRange(read.getReadBases(), readOffset + 1, readOffset + 1 + nextElement.getLength()));
+
+                        if (indelPile.size() != 0)
+                            fullExtendedEventPileup.put(sample, new ReadBackedExtendedEventPileupImpl(loc, indelPile, size, maxDeletionLength, nInsertions, nDeletions, nMQ0Reads));
+                    }
+                    hasExtendedEvents = false;                                            // we are done with extended events prior to current ref base
+                    nextAlignmentContext = new AlignmentContext(loc, new ReadBackedExtendedEventPileupImpl(loc, fullExtendedEventPileup), hasBeenSampled);
+                }
+                else {                                                                    // this is a regular event pileup (not extended)
+                    GenomeLoc location = getLocation();
+                    Map<String, ReadBackedPileupImpl> fullPileup = new HashMap<String, ReadBackedPileupImpl>();
+                    boolean hasBeenSampled = false;
+                    for (final String sample : samples) {
+                        Iterator<SAMRecordState> iterator = readStates.iterator(sample);
+                        List<PileupElement> pile = new ArrayList<PileupElement>(readStates.size(sample));
+                        hasBeenSampled |= location.getStart() <= readStates.getDownsamplingExtent(sample);
+
+                        size = 0;                                                         // number of elements in this sample's pileup
+                        nDeletions = 0;                                                   // number of deletions in this sample's pileup
+                        nMQ0Reads = 0;                                                    // number of MQ0 reads in this sample's pileup (warning: current implementation includes N bases that are MQ0)
+
+                        while (iterator.hasNext()) {
+                            final SAMRecordState state = iterator.next();                 // state object with the read/offset information
+                            final GATKSAMRecord read = (GATKSAMRecord) state.getRead();   // the actual read
+                            final CigarOperator op = state.getCurrentCigarOperator();     // current cigar operator
+                            final CigarElement nextElement = state.peekForwardOnGenome();     // next cigar element
+                            final CigarOperator nextOp = nextElement.getOperator();
+                            final int readOffset = state.getReadOffset();                 // the base offset on this read
+
+                            int nextElementLength = nextElement.getLength();
+
+                            if (op == CigarOperator.N)                                    // N's are never added to any pileup
+                                continue;
+
+                            if (op == CigarOperator.D) {
+                                if (readInfo.includeReadsWithDeletionAtLoci()) {          // only add deletions to the pileup if we are authorized to do so
+                                    pile.add(new PileupElement(read, readOffset, true, nextOp == CigarOperator.D, nextOp == CigarOperator.I, nextOp == CigarOperator.S || (state.getGenomeOffset() == 0 && read.getSoftStart() != read.getAlignmentStart()),
+                                            null,nextOp == CigarOperator.D? nextElementLength:-1));
+                                    size++;
+                                    nDeletions++;
+                                    if (read.getMappingQuality() == 0)
+                                        nMQ0Reads++;
+                                }
+                            }
+                            else {
+                                if (!filterBaseInRead(read, location.getStart())) {
+                                    String insertedBaseString = null;
+                                    if (nextOp == CigarOperator.I) {
+                                        insertedBaseString = new String(Arrays.copyOfRange(read.getReadBases(), readOffset + 1, readOffset + 1 + nextElement.getLength()));
+                                    }
+                                    pile.add(new PileupElement(read, readOffset, false, nextOp == CigarOperator.D, nextOp == CigarOperator.I, nextOp == CigarOperator.S || (state.getGenomeOffset() == 0 && read.getSoftStart() != read.getAlignmentStart()),
+                                            insertedBaseString,nextElementLength));
+                                    size++;
+                                    if (read.getMappingQuality() == 0)
+                                        nMQ0Reads++;
                                 }
-                                pile.add(new PileupElement(read, readOffset, false, nextOp == CigarOperator.D, nextOp == CigarOperator.I, nextOp == CigarOperator.S || (state.getGenomeOffset() == 0 && read.getSoftStart() != read.getAlignmentStart()),
-                                        insertedBaseString,nextElementLength));
-                                size++;
-                                if (read.getMappingQuality() == 0)
-                                    nMQ0Reads++;
                             }
                         }
+
+                        if (pile.size() != 0)                                             // if this pileup added at least one base, add it to the full pileup
+                            fullPileup.put(sample, new ReadBackedPileupImpl(location, pile, size, nDeletions, nMQ0Reads));
                     }
 
-                    if (pile.size() != 0)                                             // if this pileup added at least one base, add it to the full pileup
-                        fullPileup.put(sample, new ReadBackedPileupImpl(location, pile, size, nDeletions, nMQ0Reads));
+                    updateReadStates();                                                   // critical - must be called after we get the current state offsets and location
+                    if (!fullPileup.isEmpty())                                            // if we got reads with non-D/N over the current position, we are done
+                        nextAlignmentContext = new AlignmentContext(location, new ReadBackedPileupImpl(location, fullPileup), hasBeenSampled);
                 }
-
-                updateReadStates();                                                   // critical - must be called after we get the current state offsets and location
-                if (!fullPileup.isEmpty())                                            // if we got reads with non-D/N over the current position, we are done
-                    nextAlignmentContext = new AlignmentContext(location, new ReadBackedPileupImpl(location, fullPileup), hasBeenSampled);
             }
+        } finally {
+            HotPathMetrics.end(HotPathMetrics.Stage.LOCUS_ITERATION, nextAlignmentContext == null ? 0 : 1);
         }
     }
 
@@ -551,7 +565,7 @@ public class LocusIteratorByState extends LocusIterator {
         throw new UnsupportedOperationException("Can not remove records from a SAM file via an iterator!");
     }
 
-    private class ReadStateManager {
+    class ReadStateManager {
         private final PeekableIterator<SAMRecord> iterator;
         private final DownsamplingMethod downsamplingMethod;
         private final SamplePartitioner samplePartitioner;
@@ -678,7 +692,7 @@ public class LocusIteratorByState extends LocusIterator {
             for (final String sample : samples) {
                 ReadSelector aggregator = samplePartitioner.getSelectedReads(sample);
 
-                Collection<SAMRecord> newReads = new ArrayList<SAMRecord>(aggregator.getSelectedReads());
+                Collection<SAMRecord> newReads = aggregator.getSelectedReads();
 
                 PerSampleReadStateManager statesBySample = readStatesBySample.get(sample);
                 int numReads = statesBySample.size();
@@ -689,41 +703,7 @@ public class LocusIteratorByState extends LocusIterator {
                     addReadsToSample(statesBySample, newReads, readLimit);
                     statesBySample.specifyNewDownsamplingExtent(downsamplingExtent);
                 } else {
-                    int[] counts = statesBySample.getCountsPerAlignmentStart();
-                    int[] updatedCounts = new int[counts.length];
-                    System.arraycopy(counts, 0, updatedCounts, 0, counts.length);
-
-                    boolean readPruned = true;
-                    while (numReads + newReads.size() > targetCoverage && readPruned) {
-                        readPruned = false;
-                        for (int alignmentStart = updatedCounts.length - 1; numReads + newReads.size() > targetCoverage && alignmentStart >= 0; alignmentStart--) {
-                            if (updatedCounts[alignmentStart] > 500) {
-                                updatedCounts[alignmentStart]--;
-                                numReads--;
-                                readPruned = true;
-                            }
-                        }
-                    }
-
-                    if (numReads == targetCoverage) {
-                        updatedCounts[0]--;
-                        numReads--;
-                    }
-
-                    BitSet toPurge = new BitSet(readStates.size());
-                    int readOffset = 0;
-
-                    for (int i = 0; i < updatedCounts.length; i++) {
-                        int n = counts[i];
-                        int k = updatedCounts[i];
-
-                        for (Integer purgedElement : MathUtils.sampleIndicesWithoutReplacement(n, n - k))
-                            toPurge.set(readOffset + purgedElement);
-
-                        readOffset += counts[i];
-                    }
-                    downsamplingExtent = Math.max(downsamplingExtent, statesBySample.purge(toPurge));
-
+                    numReads = statesBySample.purgeToFit(newReads.size(), targetCoverage);
                     addReadsToSample(statesBySample, newReads, targetCoverage - numReads);
                     statesBySample.specifyNewDownsamplingExtent(downsamplingExtent);
                 }
@@ -739,46 +719,90 @@ public class LocusIteratorByState extends LocusIterator {
          * @param maxReads   Maximum number of reads to add.
          */
         private void addReadsToSample(final PerSampleReadStateManager readStates, final Collection<SAMRecord> reads, final long maxReads) {
-            if (reads.isEmpty())
-                return;
-
-            Collection<SAMRecordState> newReadStates = new LinkedList<SAMRecordState>();
             int readCount = 0;
             for (SAMRecord read : reads) {
-                if (readCount < maxReads) {
-                    SAMRecordState state = new SAMRecordState(read, readInfo.generateExtendedEvents());
-                    state.stepForwardOnGenome();
-                    newReadStates.add(state);
-                    // TODO: What if we downsample the extended events away?
-                    if (state.hadIndel())
-                        hasExtendedEvents = true;
-                    readCount++;
-                }
+                if (readCount >= maxReads)
+                    break;
+                SAMRecordState state = new SAMRecordState(read, readInfo.generateExtendedEvents());
+                state.stepForwardOnGenome();
+                readStates.add(state, readCount == 0);
+                // TODO: What if we downsample the extended events away?
+                if (state.hadIndel())
+                    hasExtendedEvents = true;
+                readCount++;
             }
-            readStates.addStatesAtNextAlignmentStart(newReadStates);
         }
 
-        private class PerSampleReadStateManager implements Iterable<SAMRecordState> {
-            private final Queue<SAMRecordState> readStates = new LinkedList<SAMRecordState>();
-            private final Deque<Counter> readStateCounter = new LinkedList<Counter>();
+        /**
+         * The read states of one sample, in the order of their alignment starts.
+         *
+         * The states are kept in a circular array, and the number of states at each alignment start in another, so
+         * that the downsampler can evict a state in constant time rather than rebuilding its counts, and the arrays
+         * only grow until they hold the target coverage.  A state purged from anywhere but the first alignment start
+         * leaves an empty slot behind; the next pass of an iterator moves the states down over the empty slots and
+         * over the states removed through it.
+         */
+        class PerSampleReadStateManager implements Iterable<SAMRecordState> {
+            private SAMRecordState[] states = new SAMRecordState[64];
+            private int firstState = 0;
+            private int numSlots = 0;       // slots in use from firstState on, some of which may be empty
+            private int size = 0;           // read states in those slots
+
+            private int[] slotsPerAlignmentStart = new int[64];
+            private int firstAlignmentStart = 0;
+            private int numAlignmentStarts = 0;
+            private int numCrowdedAlignmentStarts = 0;  // alignment starts with more than MAX_READS_AT_ALIGNMENT_START slots
+            private int[] toPurge = new int[64];
+
+            private Pass pass = null;       // the pass of an iterator still under way, if any
+            private Pass finishedPass = null;   // a pass that has reached the end, whose last state may still be removed
             private int downsamplingExtent = 0;
 
-            public void addStatesAtNextAlignmentStart(Collection<SAMRecordState> states) {
-                readStates.addAll(states);
-                readStateCounter.add(new Counter(states.size()));
-                totalReadStates += states.size();
+            /**
+             * Adds a read state after all the others.
+             *
+             * @param state               the read state.
+             * @param atNextAlignmentStart whether the state starts a new alignment start, or joins the last one.
+             */
+            public void add(final SAMRecordState state, final boolean atNextAlignmentStart) {
+                finishPass();
+                if (numSlots == states.length) {
+                    SAMRecordState[] grown = new SAMRecordState[2 * states.length];
+                    for (int i = 0; i < numSlots; i++)
+                        grown[i] = states[slot(i)];
+                    states = grown;
+                    firstState = 0;
+                }
+                states[slot(numSlots++)] = state;
+                size++;
+                totalReadStates++;
+
+                if (atNextAlignmentStart || numAlignmentStarts == 0) {
+                    if (numAlignmentStarts == slotsPerAlignmentStart.length) {
+                        int[] grown = new int[2 * slotsPerAlignmentStart.length];
+                        for (int i = 0; i < numAlignmentStarts; i++)
+                            grown[i] = slotsPerAlignmentStart[alignmentStart(i)];
+                        slotsPerAlignmentStart = grown;
+                        firstAlignmentStart = 0;
+                        toPurge = new int[grown.length];
+                    }
+                    slotsPerAlignmentStart[alignmentStart(numAlignmentStarts++)] = 0;
+                }
+                final int last = alignmentStart(numAlignmentStarts - 1);
+                setSlotsAtAlignmentStart(last, slotsPerAlignmentStart[last] + 1);
             }
 
             public boolean isEmpty() {
-                return readStates.isEmpty();
+                return size == 0;
             }
 
             public SAMRecordState peek() {
-                return readStates.peek();
+                finishPass();
+                return size == 0 ? null : states[firstState];
             }
 
             public int size() {
-                return readStates.size();
+                return size;
             }
 
             public void specifyNewDownsamplingExtent(int downsamplingExtent) {
@@ -789,105 +813,223 @@ public class LocusIteratorByState extends LocusIterator {
                 return downsamplingExtent;
             }
 
-            public int[] getCountsPerAlignmentStart() {
-                int[] counts = new int[readStateCounter.size()];
-                int index = 0;
-                for (Counter counter : readStateCounter)
-                    counts[index++] = counter.getCount();
-                return counts;
+            public Iterator<SAMRecordState> iterator() {
+                finishPass();
+                pass = new Pass();
+                return pass;
             }
 
-            public Iterator<SAMRecordState> iterator() {
-                return new Iterator<SAMRecordState>() {
-                    private Iterator<SAMRecordState> wrappedIterator = readStates.iterator();
+            /**
+             * Purges read states at random to make room for the given number of new reads, as many as it takes to
+             * bring the states to within the target coverage from the alignment starts with more than
+             * MAX_READS_AT_ALIGNMENT_START states, last first, and then one more from the first alignment start if
+             * the states are still at the target coverage.  Only the states purged are drawn, so when nothing has to
+             * be purged from the crowded alignment starts this costs a single draw.
+             *
+             * @param numNewReads    the number of reads about to be added.
+             * @param targetCoverage the coverage to downsample to.
+             * @return the number of read states left.
+             */
+            public int purgeToFit(final int numNewReads, final int targetCoverage) {
+                finishPass();
+                if (size != numSlots) {
+                    // move the states down over the empty slots, so each alignment start is a run of states
+                    iterator();
+                    finishPass();
+                }
 
-                    public boolean hasNext() {
-                        return wrappedIterator.hasNext();
+                final boolean crowded = numCrowdedAlignmentStarts > 0;
+                int numReads = size;
+                int purgedExtent = 0;
+
+                if (crowded) {
+                    Arrays.fill(toPurge, 0, numAlignmentStarts, 0);
+                    boolean readPruned = true;
+                    while (numReads + numNewReads > targetCoverage && readPruned) {
+                        readPruned = false;
+                        for (int i = numAlignmentStarts - 1; numReads + numNewReads > targetCoverage && i >= 0; i--) {
+                            if (slotsPerAlignmentStart[alignmentStart(i)] - toPurge[i] > MAX_READS_AT_ALIGNMENT_START) {
+                                toPurge[i]++;
+                                numReads--;
+                                readPruned = true;
+                            }
+                        }
                     }
 
-                    public SAMRecordState next() {
-                        return wrappedIterator.next();
+                    // the first alignment start is left for last, as purging from it moves the others down
+                    int start = numSlots;
+                    for (int i = numAlignmentStarts - 1; i > 0; i--) {
+                        start -= slotsPerAlignmentStart[alignmentStart(i)];
+                        if (toPurge[i] > 0)
+                            purgedExtent = Math.max(purgedExtent, purgeAt(start, slotsPerAlignmentStart[alignmentStart(i)], toPurge[i]));
                     }
+                }
 
-                    public void remove() {
-                        wrappedIterator.remove();
-                        Counter counter = readStateCounter.peek();
-                        counter.decrement();
-                        if (counter.getCount() == 0)
-                            readStateCounter.remove();
+                int toPurgeFromFirst = crowded ? toPurge[0] : 0;
+                if (numReads == targetCoverage && numAlignmentStarts > 0) {
+                    toPurgeFromFirst++;
+                    numReads--;
+                }
+                if (toPurgeFromFirst > 0) {
+                    purgedExtent = Math.max(purgedExtent, purgeAt(0, slotsPerAlignmentStart[firstAlignmentStart], toPurgeFromFirst));
+                    firstState = slot(toPurgeFromFirst);
+                    numSlots -= toPurgeFromFirst;
+                    setSlotsAtAlignmentStart(firstAlignmentStart, slotsPerAlignmentStart[firstAlignmentStart] - toPurgeFromFirst);
+                    if (slotsPerAlignmentStart[firstAlignmentStart] == 0) {
+                        firstAlignmentStart = alignmentStart(1);
+                        numAlignmentStarts--;
                     }
-                };
+                }
+
+                specifyNewDownsamplingExtent(purgedExtent);
+                return numReads;
             }
 
             /**
-             * Purge the given elements from the bitset.  If an element in the bitset is true, purge
-             * the corresponding read state.
+             * Purges states drawn at random, by a partial shuffle, from a run of states at one alignment start.  The
+             * purged states are left as empty slots at the start of the run.
              *
-             * @param elements bits from the set to purge.
-             * @return the extent of the final downsampled read.
+             * @param start     the slot the run starts at.
+             * @param length    the length of the run.
+             * @param numPurged the number of states to purge.
+             * @return the extent of the purged states.
              */
-            public int purge(final BitSet elements) {
-                int downsamplingExtent = 0;
+            private int purgeAt(final int start, final int length, final int numPurged) {
+                final Random random = GenomeAnalysisEngine.getRandomGenerator();
+                int purgedExtent = 0;
+                for (int i = 0; i < numPurged; i++) {
+                    final int victim = slot(start + i + random.nextInt(length - i));
+                    final int target = slot(start + i);
+                    purgedExtent = Math.max(purgedExtent, states[victim].getRead().getAlignmentEnd());
+                    states[victim] = states[target];
+                    states[target] = null;
+                }
+                size -= numPurged;
+                totalReadStates -= numPurged;
+                return purgedExtent;
+            }
 
-                if (elements.isEmpty() || readStates.isEmpty()) return downsamplingExtent;
+            private int slot(final int i) {
+                return (firstState + i) & (states.length - 1);
+            }
 
-                Iterator<SAMRecordState> readStateIterator = readStates.iterator();
+            private int alignmentStart(final int i) {
+                return (firstAlignmentStart + i) & (slotsPerAlignmentStart.length - 1);
+            }
 
-                Iterator<Counter> counterIterator = readStateCounter.iterator();
-                Counter currentCounter = counterIterator.next();
+            private void setSlotsAtAlignmentStart(final int alignmentStart, final int slots) {
+                final boolean wasCrowded = slotsPerAlignmentStart[alignmentStart] > MAX_READS_AT_ALIGNMENT_START;
+                final boolean isCrowded = slots > MAX_READS_AT_ALIGNMENT_START;
+                if (isCrowded && !wasCrowded)
+                    numCrowdedAlignmentStarts++;
+                else if (wasCrowded && !isCrowded)
+                    numCrowdedAlignmentStarts--;
+                slotsPerAlignmentStart[alignmentStart] = slots;
+            }
 
-                int readIndex = 0;
-                long alignmentStartCounter = currentCounter.getCount();
+            private void finishPass() {
+                if (pass != null) {
+                    final Pass unfinished = pass;
+                    while (unfinished.hasNext())
+                        unfinished.next();
+                }
+                if (finishedPass != null) {
+                    finishedPass.canRemove = false;
+                    finishedPass = null;
+                }
+            }
 
-                int toPurge = elements.nextSetBit(0);
-                int removedCount = 0;
+            /**
+             * Iterates over the read states, moving each one it returns down over the empty slots and the states
+             * removed before it, and counting the states kept at each alignment start.  The arrays are consistent
+             * again once the pass reaches the end, which finishPass() sees to if the iterator is abandoned.  The state
+             * returned last may be removed until next() is called again, or until the states are changed or iterated
+             * over by anything else.
+             */
+            private class Pass implements Iterator<SAMRecordState> {
+                private int next = 0;                   // slot of the next state to look at
+                private int kept = 0;                   // states kept so far, in slots [0, kept)
+                private boolean canRemove = false;
+                private boolean advancePending = false;
 
-                while (readStateIterator.hasNext() && toPurge >= 0) {
-                    SAMRecordState state = readStateIterator.next();
-                    downsamplingExtent = Math.max(downsamplingExtent, state.getRead().getAlignmentEnd());
+                private int alignmentStartsSeen = 0;
+                private int slotsLeftAtAlignmentStart = numAlignmentStarts > 0 ? slotsPerAlignmentStart[firstAlignmentStart] : 0;
+                private int alignmentStartsKept = 0;
+                private int keptAtAlignmentStart = 0;
 
-                    if (readIndex == toPurge) {
-                        readStateIterator.remove();
-                        currentCounter.decrement();
-                        if (currentCounter.getCount() == 0)
-                            counterIterator.remove();
-                        removedCount++;
-                        toPurge = elements.nextSetBit(toPurge + 1);
+                public boolean hasNext() {
+                    settle();
+                    while (next < numSlots && states[slot(next)] == null)
+                        advance();
+                    if (next < numSlots)
+                        return true;
+                    if (pass == this) {
+                        numSlots = kept;
+                        numAlignmentStarts = alignmentStartsKept;
+                        pass = null;
+                        finishedPass = this;
                     }
+                    return false;
+                }
 
-                    readIndex++;
-                    alignmentStartCounter--;
-                    if (alignmentStartCounter == 0 && counterIterator.hasNext()) {
-                        currentCounter = counterIterator.next();
-                        alignmentStartCounter = currentCounter.getCount();
+                public SAMRecordState next() {
+                    if (!hasNext())
+                        throw new NoSuchElementException();
+                    final SAMRecordState state = states[slot(next)];
+                    states[slot(next)] = null;
+                    states[slot(kept++)] = state;
+                    keptAtAlignmentStart++;
+                    canRemove = true;
+                    advancePending = true;
+                    return state;
+                }
+
+                public void remove() {
+                    if (!canRemove)
+                        throw new IllegalStateException("next() has not been called, or remove() already has");
+                    states[slot(--kept)] = null;
+                    if (keptAtAlignmentStart > 0) {
+                        keptAtAlignmentStart--;
+                    } else {
+                        // hasNext() has moved on, closing the alignment start of the state
+                        final int closed = alignmentStart(alignmentStartsKept - 1);
+                        setSlotsAtAlignmentStart(closed, slotsPerAlignmentStart[closed] - 1);
+                        if (slotsPerAlignmentStart[closed] == 0)
+                            alignmentStartsKept--;
+                    }
+                    size--;
+                    canRemove = false;
+                    if (finishedPass == this) {
+                        numSlots = kept;
+                        numAlignmentStarts = alignmentStartsKept;
                     }
                 }
 
-                totalReadStates -= removedCount;
+                // the state returned last is only moved past once we are asked for the next one
+                private void settle() {
+                    if (advancePending) {
+                        advancePending = false;
+                        advance();
+                    }
+                }
 
-                return downsamplingExtent;
+                private void advance() {
+                    next++;
+                    slotsLeftAtAlignmentStart--;
+                    while (slotsLeftAtAlignmentStart == 0 && alignmentStartsSeen < numAlignmentStarts) {
+                        final int seen = alignmentStart(alignmentStartsSeen++);
+                        final int slots = slotsPerAlignmentStart[seen];
+                        setSlotsAtAlignmentStart(seen, 0);
+                        if (keptAtAlignmentStart > 0)
+                            setSlotsAtAlignmentStart(alignmentStart(alignmentStartsKept++), keptAtAlignmentStart);
+                        keptAtAlignmentStart = 0;
+                        if (alignmentStartsSeen < numAlignmentStarts)
+                            slotsLeftAtAlignmentStart = slotsPerAlignmentStart[alignmentStart(alignmentStartsSeen)];
+                    }
+                }
             }
         }
     }
-
-    /**
-     * Note: assuming that, whenever we downsample, we downsample to an integer capacity.
-     */
-    static private class Counter {
-        private int count;
-
-        public Counter(int count) {
-            this.count = count;
-        }
-
-        public int getCount() {
-            return count;
-        }
-
-        public void decrement() {
-            count--;
-        }
-    }
 }
 
 /**
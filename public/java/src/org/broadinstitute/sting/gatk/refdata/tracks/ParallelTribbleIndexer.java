@@ -0,0 +1,301 @@
+/*
+ * Copyright (c) 2011, The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.broadinstitute.sting.gatk.refdata.tracks;
+
+import org.apache.log4j.Logger;
+import org.broad.tribble.Feature;
+import org.broad.tribble.FeatureCodec;
+import org.broad.tribble.index.DynamicIndexCreator;
+import org.broad.tribble.index.Index;
+import org.broad.tribble.index.IndexCreator;
+import org.broad.tribble.index.IndexFactory;
+import org.broad.tribble.readers.AsciiLineReader;
+import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
+import org.broadinstitute.sting.utils.exceptions.UserException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.LinkedList;
+import java.util.concurrent.*;
+
+/**
+ * Creates the Tribble index of a plain-text feature file with several threads
+ *
+ * <p>
+ * The file after the header is split into chunks at line boundaries, and each chunk is scanned by its own thread,
+ * which finds the location of each line with the codec's decodeLoc.  The locations are then handed to Tribble's own
+ * index creator in file order, along with the file positions Tribble itself would have recorded, so the index is
+ * exactly the one IndexFactory would have made, linear or interval tree as the balance approach chooses.  Only a few
+ * chunks are held in memory at a time, however big the file.
+ * </p>
+ *
+ * <p>
+ * Small files, and files whose header is itself a feature, are indexed by IndexFactory on the calling thread.
+ * </p>
+ */
+public class ParallelTribbleIndexer {
+    private final static Logger logger = Logger.getLogger(ParallelTribbleIndexer.class);
+
+    public final static int DEFAULT_CHUNK_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Makes a new codec for each thread, as codecs keep the state of the header they've read
+     */
+    public interface CodecFactory {
+        public FeatureCodec createCodec();
+    }
+
+    private final File inputFile;
+    private final CodecFactory codecFactory;
+    private final int nThreads;
+    private final int chunkSize;
+
+    public ParallelTribbleIndexer(File inputFile, CodecFactory codecFactory, int nThreads) {
+        this(inputFile, codecFactory, nThreads, DEFAULT_CHUNK_SIZE);
+    }
+
+    protected ParallelTribbleIndexer(File inputFile, CodecFactory codecFactory, int nThreads, int chunkSize) {
+        this.inputFile = inputFile;
+        this.codecFactory = codecFactory;
+        this.nThreads = nThreads;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @param approach what the index should be balanced for
+     * @return the index of the file
+     */
+    public Index createIndex(IndexFactory.IndexBalanceApproach approach) {
+        final long fileLength = inputFile.length();
+        if ( nThreads <= 1 || fileLength < 2L * chunkSize )
+            return IndexFactory.createIndex(inputFile, codecFactory.createCodec(), approach);
+
+        // every thread gets a codec which has read the header, as decoding may depend on it
+        final BlockingQueue<FeatureCodec> codecs = new LinkedBlockingQueue<FeatureCodec>();
+        long headerEnd = -1;
+        for ( int i = 0; i < nThreads; i++ ) {
+            final FeatureCodec codec = codecFactory.createCodec();
+            final AsciiLineReader reader = openReader();
+            final Object header = codec.readHeader(reader);
+            headerEnd = reader.getPosition();
+            reader.close();
+            if ( header instanceof Feature )
+                return IndexFactory.createIndex(inputFile, codecFactory.createCodec(), approach);
+            codecs.add(codec);
+        }
+
+        logger.info(String.format("Creating Tribble index for file %s with %d threads", inputFile, nThreads));
+        final IndexCreator creator = new DynamicIndexCreator(approach);
+        creator.initialize(inputFile, creator.defaultBinSize());
+
+        final ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+        try {
+            final LinkedList<Future<Chunk>> pending = new LinkedList<Future<Chunk>>();
+            final RandomAccessFile file = new RandomAccessFile(inputFile, "r");
+            long position = headerEnd;
+            long chunkStart = headerEnd;
+            try {
+                while ( chunkStart < fileLength || ! pending.isEmpty() ) {
+                    // keep a couple of chunks per thread in flight, so memory is bounded whatever the size of the file
+                    while ( chunkStart < fileLength && pending.size() < 2 * nThreads ) {
+                        final long chunkEnd = findLineStart(file, Math.min(chunkStart + chunkSize, fileLength), fileLength);
+                        pending.add(executor.submit(new ChunkScanner(chunkStart, chunkEnd, codecs)));
+                        chunkStart = chunkEnd;
+                    }
+
+                    final Chunk chunk = pending.removeFirst().get();
+                    for ( int i = 0; i < chunk.size; i++ ) {
+                        // Tribble positions each feature just past the feature before it
+                        creator.addFeature(new Location(chunk.contigs[i], chunk.starts[i], chunk.stops[i]), position);
+                        position = chunk.lineEnds[i];
+                    }
+                }
+            } finally {
+                file.close();
+            }
+        } catch (IOException e) {
+            throw new UserException.CouldNotReadInputFile(inputFile, "unable to create Tribble index", e);
+        } catch (InterruptedException e) {
+            throw new ReviewedStingException("Interrupted while creating Tribble index for " + inputFile, e);
+        } catch (ExecutionException e) {
+            if ( e.getCause() instanceof RuntimeException )
+                throw (RuntimeException)e.getCause();
+            throw new ReviewedStingException("Unable to create Tribble index for " + inputFile, e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return creator.finalizeIndex(fileLength);
+    }
+
+    private AsciiLineReader openReader() {
+        try {
+            return new AsciiLineReader(new FileInputStream(inputFile));
+        } catch (IOException e) {
+            throw new UserException.CouldNotReadInputFile(inputFile, e);
+        }
+    }
+
+    /**
+     * @return the position of the first line starting at or after position, treating \n, \r and \r\n as line ends
+     *         just as AsciiLineReader does
+     */
+    private static long findLineStart(RandomAccessFile file, long position, long fileLength) throws IOException {
+        if ( position >= fileLength )
+            return fileLength;
+
+        file.seek(position - 1);
+        final byte[] buffer = new byte[64 * 1024];
+        long offset = position - 1;
+        boolean afterCR = false;
+        while ( true ) {
+            final int n = file.read(buffer);
+            if ( n <= 0 )
+                return fileLength;
+            for ( int i = 0; i < n; i++, offset++ ) {
+                final byte b = buffer[i];
+                if ( afterCR )
+                    return b == '\n' ? offset + 1 : offset;
+                if ( b == '\n' )
+                    return offset + 1;
+                afterCR = b == '\r';
+            }
+        }
+    }
+
+    /**
+     * The locations of the features in a chunk, and the position just past the line of each
+     */
+    private static class Chunk {
+        String[] contigs = new String[1024];
+        int[] starts = new int[1024];
+        int[] stops = new int[1024];
+        long[] lineEnds = new long[1024];
+        int size = 0;
+
+        void add(Feature feature, long lineEnd) {
+            if ( size == starts.length ) {
+                final int capacity = size * 2;
+                final String[] newContigs = new String[capacity];
+                System.arraycopy(contigs, 0, newContigs, 0, size);
+                contigs = newContigs;
+                final int[] newStarts = new int[capacity];
+                System.arraycopy(starts, 0, newStarts, 0, size);
+                starts = newStarts;
+                final int[] newStops = new int[capacity];
+                System.arraycopy(stops, 0, newStops, 0, size);
+                stops = newStops;
+                final long[] newLineEnds = new long[capacity];
+                System.arraycopy(lineEnds, 0, newLineEnds, 0, size);
+                lineEnds = newLineEnds;
+            }
+
+            // share the contig name across the features of the chunk
+            final String contig = feature.getChr();
+            contigs[size] = size > 0 && contigs[size - 1].equals(contig) ? contigs[size - 1] : contig;
+            starts[size] = feature.getStart();
+            stops[size] = feature.getEnd();
+            lineEnds[size] = lineEnd;
+            size++;
+        }
+    }
+
+    /**
+     * Scans the lines of one chunk of the file with decodeLoc
+     */
+    private class ChunkScanner implements Callable<Chunk> {
+        private final long chunkStart;
+        private final long chunkEnd;
+        private final BlockingQueue<FeatureCodec> codecs;
+
+        ChunkScanner(long chunkStart, long chunkEnd, BlockingQueue<FeatureCodec> codecs) {
+            this.chunkStart = chunkStart;
+            this.chunkEnd = chunkEnd;
+            this.codecs = codecs;
+        }
+
+        public Chunk call() throws Exception {
+            final byte[] bytes = new byte[(int)(chunkEnd - chunkStart)];
+            final RandomAccessFile file = new RandomAccessFile(inputFile, "r");
+            try {
+                file.seek(chunkStart);
+                file.readFully(bytes);
+            } finally {
+                file.close();
+            }
+
+            final FeatureCodec codec = codecs.take();
+            try {
+                final Chunk chunk = new Chunk();
+                char[] lineBuffer = new char[1024];
+                int lineStart = 0;
+                while ( lineStart < bytes.length ) {
+                    int lineEnd = lineStart;
+                    while ( lineEnd < bytes.length && bytes[lineEnd] != '\n' && bytes[lineEnd] != '\r' )
+                        lineEnd++;
+                    int next = lineEnd;
+                    if ( next < bytes.length )
+                        next += bytes[next] == '\r' && next + 1 < bytes.length && bytes[next + 1] == '\n' ? 2 : 1;
+
+                    // bytes are read as chars one for one, as AsciiLineReader reads them
+                    final int length = lineEnd - lineStart;
+                    if ( lineBuffer.length < length )
+                        lineBuffer = new char[length * 2];
+                    for ( int i = 0; i < length; i++ )
+                        lineBuffer[i] = (char)(bytes[lineStart + i] & 0xff);
+
+                    final Feature feature = codec.decodeLoc(new String(lineBuffer, 0, length));
+                    if ( feature != null )
+                        chunk.add(feature, chunkStart + next);
+                    lineStart = next;
+                }
+                return chunk;
+            } finally {
+                codecs.put(codec);
+            }
+        }
+    }
+
+    /**
+     * The location of a feature, all the index creator needs of it
+     */
+    private static class Location implements Feature {
+        private final String contig;
+        private final int start;
+        private final int stop;
+
+        Location(String contig, int start, int stop) {
+            this.contig = contig;
+            this.start = start;
+            this.stop = stop;
+        }
+
+        public String getChr() { return contig; }
+        public int getStart() { return start; }
+        public int getEnd() { return stop; }
+    }
+}
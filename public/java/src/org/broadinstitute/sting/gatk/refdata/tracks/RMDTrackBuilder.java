@@ -28,6 +28,7 @@ import net.sf.samtools.SAMSequenceDictionary;
 import org.apache.log4j.Logger;
 import org.broad.tribble.FeatureCodec;
 import org.broad.tribble.FeatureSource;
+import org.broad.tribble.NameAwareCodec;
 import org.broad.tribble.Tribble;
 import org.broad.tribble.TribbleException;
 import org.broad.tribble.index.Index;
@@ -45,6 +46,8 @@ import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
 import org.broadinstitute.sting.utils.exceptions.UserException;
 import org.broadinstitute.sting.utils.file.FSLockWithShared;
 import org.broadinstitute.sting.utils.file.FileSystemInabilityToLockException;
+import org.broadinstitute.sting.utils.gcf.GCFCodec;
+import org.broadinstitute.sting.utils.gcf.GCFFeatureSource;
 import org.broadinstitute.sting.utils.instrumentation.Sizeof;
 
 import java.io.File;
@@ -84,6 +87,11 @@ public class RMDTrackBuilder { // extends PluginManager<FeatureCodec> {
 
     FeatureManager featureManager;
 
+    /**
+     * The number of threads with which to create missing Tribble indices.
+     */
+    private int indexingThreads = 1;
+
     /**
      * Construct an RMDTrackerBuilder, allowing the user to define tracks to build after-the-fact.  This is generally
      * used when walkers want to directly manage the ROD system for whatever reason.  Before using this constructor,
@@ -105,6 +113,15 @@ public class RMDTrackBuilder { // extends PluginManager<FeatureCodec> {
         return featureManager;
     }
 
+    /**
+     * Set the number of threads with which to create missing Tribble indices.  By default indices are created with a
+     * single thread; the engine uses the number of threads the user allocated to the run (-nt).
+     * @param indexingThreads the number of threads
+     */
+    public void setIndexingThreads(int indexingThreads) {
+        this.indexingThreads = indexingThreads;
+    }
+
     /**
      * create a RMDTrack of the specified type
      *
@@ -215,7 +232,9 @@ public class RMDTrackBuilder { // extends PluginManager<FeatureCodec> {
                     sequenceDictionary = IndexDictionaryUtils.getSequenceDictionaryFromProperties(index);
                 }
 
-                if ( MEASURE_TRIBBLE_QUERY_PERFORMANCE )
+                if ( descriptor.getCodecClass() == GCFCodec.class )
+                    featureSource = new GCFFeatureSource(inputFile, index, (GCFCodec)createCodec(descriptor, name));
+                else if ( MEASURE_TRIBBLE_QUERY_PERFORMANCE )
                     featureSource = new PerformanceLoggingFeatureSource(inputFile.getAbsolutePath(), index, createCodec(descriptor, name));
                 else
                     featureSource = new BasicFeatureSource(inputFile.getAbsolutePath(), index, createCodec(descriptor, name));
@@ -227,6 +246,9 @@ public class RMDTrackBuilder { // extends PluginManager<FeatureCodec> {
                 throw new UserException.CouldNotCreateOutputFile(inputFile, "unable to write Tribble index", e);
             }
         }
+        else if ( descriptor.getCodecClass() == GCFCodec.class ) {
+            throw new UserException.CouldNotReadInputFile(inputFile, "GCF files can only be read from regular files, not streams");
+        }
         else {
             featureSource = BasicFeatureSource.getFeatureSource(inputFile.getAbsolutePath(),createCodec(descriptor, name),false);
         }
@@ -355,10 +377,24 @@ public class RMDTrackBuilder { // extends PluginManager<FeatureCodec> {
      * @return a LinearIndex, given the file location
      * @throws IOException when unable to create the index in memory
      */
-    private Index createIndexInMemory(File inputFile, FeatureCodec codec) {
+    private Index createIndexInMemory(File inputFile, final FeatureCodec codec) {
         // this can take a while, let them know what we're doing
         logger.info("Creating Tribble index in memory for file " + inputFile);
-        Index idx = IndexFactory.createIndex(inputFile, codec, IndexFactory.IndexBalanceApproach.FOR_SEEK_TIME);
+        Index idx;
+        final FeatureManager.FeatureDescriptor descriptor = featureManager.getByCodec(codec.getClass());
+        if ( codec instanceof GCFCodec ) // GCF is binary, so Tribble's line-oriented indexer can't read it
+            idx = GCFCodec.createIndex(inputFile);
+        else if ( descriptor == null ) // we can't make more codecs like this one, so index with it alone
+            idx = IndexFactory.createIndex(inputFile, codec, IndexFactory.IndexBalanceApproach.FOR_SEEK_TIME);
+        else {
+            final String name = codec instanceof NameAwareCodec ? ((NameAwareCodec)codec).getName() : null;
+            ParallelTribbleIndexer indexer = new ParallelTribbleIndexer(inputFile, new ParallelTribbleIndexer.CodecFactory() {
+                public FeatureCodec createCodec() {
+                    return RMDTrackBuilder.this.createCodec(descriptor, name);
+                }
+            }, indexingThreads);
+            idx = indexer.createIndex(IndexFactory.IndexBalanceApproach.FOR_SEEK_TIME);
+        }
         validateAndUpdateIndexSequenceDictionary(inputFile, idx, dict);
         return idx;
     }
@@ -5,6 +5,7 @@ import org.broadinstitute.sting.utils.exceptions.StingException;
 import org.broadinstitute.sting.utils.text.TextFormattingUtils;
 
 import java.io.*;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.TreeMap;
@@ -31,7 +32,7 @@ public class GATKReport {
     }
 
     /**
-     * Create a new GATKReport with the contents of a GATKReport on disk.
+     * Create a new GATKReport with the contents of a GATKReport on disk, in either the text or the binary format.
      * @param file  the file to load
      */
     public GATKReport(File file) {
@@ -43,6 +44,11 @@ public class GATKReport {
      * @param file  the file to load
      */
     private void loadReport(File file) {
+        if (GATKReportBinaryFormat.isBinaryReport(file)) {
+            GATKReportBinaryFormat.read(file, this);
+            return;
+        }
+
         try {
             BufferedReader reader = new BufferedReader(new FileReader(file));
 
@@ -172,6 +178,30 @@ public class GATKReport {
         }
     }
 
+    /**
+     * Write all tables contained within this container to an OutputStream in the binary GATKReport format, which
+     * is much smaller and faster to load than the text format.  Loading a GATKReport from a file reads either format.
+     *
+     * @param out  the OutputStream to which the tables should be written
+     */
+    public void printBinary(OutputStream out) {
+        List<GATKReportTable> nonEmptyTables = new ArrayList<GATKReportTable>();
+        for (GATKReportTable table : tables.values()) {
+            if (table.getNumRows() > 0) {
+                nonEmptyTables.add(table);
+            }
+        }
+        GATKReportBinaryFormat.write(nonEmptyTables, out);
+    }
+
+    /**
+     * @param file  a file
+     * @return  true if the file is a GATKReport in the binary format
+     */
+    public static boolean isBinaryReport(File file) {
+        return GATKReportBinaryFormat.isBinaryReport(file);
+    }
+
     public Collection<GATKReportTable> getTables() {
         return tables.values();
     }
@@ -0,0 +1,283 @@
+package org.broadinstitute.sting.gatk.report;
+
+import org.broadinstitute.sting.utils.exceptions.StingException;
+import org.broadinstitute.sting.utils.exceptions.UserException;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Reads and writes GATK reports in a compact binary form, in which each column is stored as one block of values
+ *
+ * A binary report starts with BINARY_HEADER, followed by the number of tables and then each table:
+ *
+ *   name, description, version, primary key name, whether the primary key is displayed, whether the table is sorted
+ *   the number of rows, and the primary key of each row
+ *   for unsorted tables, the number of rows written and the row written at each line
+ *   the number of columns, and for each column:
+ *     name, whether it's displayed, format, default value
+ *     the rows that have been initialized, and the rows that have been given a value
+ *     the value of each row
+ *
+ * Values are written as a type code followed by the values of every row, as big-endian ints, longs or doubles, or as
+ * a dictionary of distinct strings followed by the number of the string in each row.  Values of other types are written
+ * as strings, just as they are in text reports.  Strings are written as their length in bytes, or -1 for null,
+ * followed by their UTF-8 encoding.
+ *
+ * Binary reports are loaded by memory-mapping them: the blocks of ints, longs, doubles and string numbers are read
+ * straight out of the file as they're needed, rather than parsed into objects.
+ */
+class GATKReportBinaryFormat {
+    public static final String BINARY_HEADER = "##:GATKReport.binary.v1\n";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private GATKReportBinaryFormat() {}
+
+    /**
+     * @param file  a file
+     * @return  true if the file starts with the binary report header
+     */
+    public static boolean isBinaryReport(File file) {
+        final byte[] header = BINARY_HEADER.getBytes(UTF8);
+        final byte[] buffer = new byte[header.length];
+        try {
+            final DataInputStream in = new DataInputStream(new FileInputStream(file));
+            try {
+                in.readFully(buffer);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            // too short to be a binary report, or unreadable, which loading it as text will report
+            return false;
+        }
+        return new String(buffer, UTF8).equals(BINARY_HEADER);
+    }
+
+    /**
+     * Write the tables of a report
+     *
+     * @param tables  the tables
+     * @param stream  the stream to which the tables should be written
+     */
+    public static void write(List<GATKReportTable> tables, OutputStream stream) {
+        try {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+            out.write(BINARY_HEADER.getBytes(UTF8));
+            out.writeInt(tables.size());
+            for (GATKReportTable table : tables) {
+                writeTable(table, out);
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new StingException("Cannot write GATKReport: " + e);
+        }
+    }
+
+    private static void writeTable(GATKReportTable table, DataOutputStream out) throws IOException {
+        writeString(out, table.getTableName());
+        writeString(out, table.getTableDescription());
+        writeString(out, table.getVersion().versionString);
+        writeString(out, table.getPrimaryKeyName());
+        out.writeBoolean(table.isPrimaryKeyDisplayed());
+        out.writeBoolean(table.isSortedByPrimaryKey());
+
+        final List<Object> primaryKeys = table.getPrimaryKeysByRow();
+        final int nRows = primaryKeys.size();
+        out.writeInt(nRows);
+        final GATKReportColumn keys = new GATKReportColumn(table.getPrimaryKeyName(), null, true, null);
+        for (int row = 0; row < nRows; row++) {
+            keys.set(row, primaryKeys.get(row));
+        }
+        writeValues(out, keys.getValues(), nRows);
+
+        if (!table.isSortedByPrimaryKey()) {
+            final List<Integer> rowOrder = table.getWrittenRows();
+            out.writeInt(rowOrder.size());
+            for (int row : rowOrder) {
+                out.writeInt(row);
+            }
+        }
+
+        out.writeInt(table.getColumns().size());
+        for (GATKReportColumn column : table.getColumns()) {
+            writeString(out, column.getColumnName());
+            out.writeBoolean(column.isDisplayable());
+            writeString(out, column.getFormat());
+            writeValue(out, column.getDefaultValue());
+            writeBits(out, column.getInitialized(), nRows);
+            writeBits(out, column.getAssigned(), nRows);
+            writeValues(out, column.getValues(), nRows);
+        }
+    }
+
+    /**
+     * Load the tables of a binary report into a report
+     *
+     * @param file  the binary report
+     * @param report  the report to which its tables should be added
+     */
+    public static void read(File file, GATKReport report) {
+        final ByteBuffer buffer;
+        try {
+            final FileInputStream stream = new FileInputStream(file);
+            try {
+                final FileChannel channel = stream.getChannel();
+                if (channel.size() > Integer.MAX_VALUE) {
+                    throw new UserException.CouldNotReadInputFile(file, "binary GATKReports larger than 2Gb cannot be loaded");
+                }
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } finally {
+                stream.close();
+            }
+        } catch (IOException e) {
+            throw new StingException("Cannot read GATKReport: " + e);
+        }
+
+        try {
+            buffer.position(BINARY_HEADER.getBytes(UTF8).length);
+            final int nTables = buffer.getInt();
+            for (int i = 0; i < nTables; i++) {
+                readTable(buffer, report);
+            }
+        } catch (RuntimeException e) {
+            if (e instanceof StingException) {
+                throw e;
+            }
+            throw new UserException.MalformedFile(file, "Cannot read binary GATKReport", e);
+        }
+    }
+
+    private static void readTable(ByteBuffer buffer, GATKReport report) {
+        final String tableName = readString(buffer);
+        final String tableDescription = readString(buffer);
+        final String versionString = readString(buffer);
+        final String primaryKeyName = readString(buffer);
+        final boolean primaryKeyDisplay = buffer.get() != 0;
+        final boolean sortByPrimaryKey = buffer.get() != 0;
+
+        report.addTable(tableName, tableDescription, sortByPrimaryKey);
+        final GATKReportTable table = report.getTable(tableName);
+        table.setVersion(GATKReportVersion.fromHeader("##:GATKReport." + versionString + " "));
+        table.addPrimaryKey(primaryKeyName, primaryKeyDisplay);
+
+        final int nRows = buffer.getInt();
+        final GATKReportColumn.Values keys = readValues(buffer, nRows);
+        final List<Object> primaryKeys = new ArrayList<Object>(nRows);
+        for (int row = 0; row < nRows; row++) {
+            primaryKeys.add(keys.get(row));
+        }
+
+        List<Integer> rowOrder = null;
+        if (!sortByPrimaryKey) {
+            final int nWritten = buffer.getInt();
+            rowOrder = new ArrayList<Integer>(nWritten);
+            for (int i = 0; i < nWritten; i++) {
+                rowOrder.add(buffer.getInt());
+            }
+        }
+        table.setRows(primaryKeys, rowOrder);
+
+        final int nColumns = buffer.getInt();
+        for (int i = 0; i < nColumns; i++) {
+            final String columnName = readString(buffer);
+            final boolean display = buffer.get() != 0;
+            final String format = readString(buffer);
+            final Object defaultValue = readValue(buffer);
+            final BitSet initialized = readBits(buffer);
+            final BitSet assigned = readBits(buffer);
+            final GATKReportColumn.Values values = readValues(buffer, nRows);
+            table.addColumn(new GATKReportColumn(columnName, defaultValue, display, format, initialized, assigned, values));
+        }
+    }
+
+    private static void writeValues(DataOutputStream out, GATKReportColumn.Values values, int nRows) throws IOException {
+        if (values == null) {
+            out.writeByte(GATKReportColumn.TYPE_NULL);
+        } else {
+            out.writeByte(values.getType());
+            values.write(out, nRows);
+        }
+    }
+
+    private static GATKReportColumn.Values readValues(ByteBuffer buffer, int nRows) {
+        return GATKReportColumn.mapValues(buffer.get(), buffer, nRows);
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        final byte type = value == null ? GATKReportColumn.TYPE_NULL : GATKReportColumn.getType(value);
+        if (value != null && type == GATKReportColumn.TYPE_NULL) {
+            // values of other types are written as strings
+            out.writeByte(GATKReportColumn.TYPE_STRING);
+            writeString(out, value.toString());
+            return;
+        }
+
+        out.writeByte(type);
+        switch (type) {
+            case GATKReportColumn.TYPE_INT: out.writeInt((Integer) value); break;
+            case GATKReportColumn.TYPE_LONG: out.writeLong((Long) value); break;
+            case GATKReportColumn.TYPE_DOUBLE: out.writeDouble((Double) value); break;
+            case GATKReportColumn.TYPE_STRING: writeString(out, (String) value); break;
+            default: break;
+        }
+    }
+
+    private static Object readValue(ByteBuffer buffer) {
+        switch (buffer.get()) {
+            case GATKReportColumn.TYPE_INT: return buffer.getInt();
+            case GATKReportColumn.TYPE_LONG: return buffer.getLong();
+            case GATKReportColumn.TYPE_DOUBLE: return buffer.getDouble();
+            case GATKReportColumn.TYPE_STRING: return readString(buffer);
+            default: return null;
+        }
+    }
+
+    private static void writeBits(DataOutputStream out, BitSet bits, int nBits) throws IOException {
+        final byte[] bytes = new byte[(nBits + 7) / 8];
+        for (int i = bits.nextSetBit(0); i >= 0 && i < nBits; i = bits.nextSetBit(i + 1)) {
+            bytes[i / 8] |= 1 << (i % 8);
+        }
+        out.writeInt(nBits);
+        out.write(bytes);
+    }
+
+    private static BitSet readBits(ByteBuffer buffer) {
+        final int nBits = buffer.getInt();
+        final BitSet bits = new BitSet(nBits);
+        final byte[] bytes = new byte[(nBits + 7) / 8];
+        buffer.get(bytes);
+        for (int i = 0; i < nBits; i++) {
+            if ((bytes[i / 8] & (1 << (i % 8))) != 0) {
+                bits.set(i);
+            }
+        }
+        return bits;
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            final byte[] bytes = value.getBytes(UTF8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    static String readString(ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        if (length == -1) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF8);
+    }
+}
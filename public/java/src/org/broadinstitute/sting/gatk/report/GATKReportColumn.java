@@ -2,17 +2,40 @@ package org.broadinstitute.sting.gatk.report;
 
 import org.apache.commons.lang.math.NumberUtils;
 
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
 import java.util.*;
 
 /**
  * Holds values for a column in a GATK report table
+ *
+ * The values are kept by row number, in arrays of the type of the values put in the column: ints, longs, doubles, or
+ * strings encoded as numbers in a dictionary.  Columns with values of any other type, or of more than one type, keep
+ * them in an array of objects.  Columns loaded from a binary report read their values straight out of the file until
+ * they're changed.
  */
-public class GATKReportColumn extends TreeMap<Object, Object> {
+public class GATKReportColumn {
+    // the type codes of values in binary reports
+    static final byte TYPE_NULL = 0;
+    static final byte TYPE_INT = 1;
+    static final byte TYPE_LONG = 2;
+    static final byte TYPE_DOUBLE = 3;
+    static final byte TYPE_STRING = 4;
+
     final private String columnName;
     final private Object defaultValue;
     final private String format;
     final private boolean display;
 
+    /** the rows that are part of the column, and the rows that have been given a value */
+    private final BitSet initialized;
+    private final BitSet assigned;
+    private Values values = null;
+
     /**
      * Construct the column object, specifying the column name, default value, and whether or not the column should be displayed
      *
@@ -22,46 +45,79 @@ public class GATKReportColumn extends TreeMap<Object, Object> {
      * @param format format string
      */
     public GATKReportColumn(String columnName, Object defaultValue, boolean display, String format) {
+        this(columnName, defaultValue, display, format, new BitSet(), new BitSet(), null);
+    }
+
+    GATKReportColumn(String columnName, Object defaultValue, boolean display, String format, BitSet initialized, BitSet assigned, Values values) {
         this.columnName = columnName;
         this.defaultValue = defaultValue;
         this.display = display;
         this.format = format == null ? null : (format.equals("") ? null : format);
+        this.initialized = initialized;
+        this.assigned = assigned;
+        this.values = values;
     }
 
-
     /**
-     * Initialize an element in the column with a default value
+     * Initialize an element in the column with the default value
      *
-     * @param primaryKey  the primary key position in the column that should be set
+     * @param row  the row that should be initialized
      */
-    public void initialize(Object primaryKey) {
-        this.put(primaryKey, defaultValue);
+    public void initialize(int row) {
+        initialized.set(row);
     }
 
     /**
-     * Return an object from the column, but if it doesn't exist, return the default value.  This is useful when writing
+     * @param row  the row
+     * @return  true if the element in the row has been initialized
+     */
+    public boolean isInitialized(int row) {
+        return initialized.get(row);
+    }
+
+    /**
+     * Return an object from the column, but if it hasn't been set, return the default value.  This is useful when writing
      * tables, as the table gets written properly without having to waste storage for the unset elements (usually the zero
      * values) in the table.
      *
-     * @param primaryKey  the primary key position in the column that should be retrieved
-     * @return  the value at the specified position in the column, or the default value if the element is not set
+     * @param row  the row that should be retrieved
+     * @return  the value in the row, or the default value if the element is not set
      */
-    private Object getWithoutSideEffects(Object primaryKey) {
-        if (!this.containsKey(primaryKey)) {
-            return defaultValue;
+    public Object get(int row) {
+        return assigned.get(row) ? values.get(row) : defaultValue;
+    }
+
+    /**
+     * Set the value of an element in the column
+     *
+     * @param row  the row
+     * @param value  the value to set
+     */
+    public void set(int row, Object value) {
+        if ( values == null ) {
+            // a null can't be kept in a primitive array, so a column whose first value is null keeps objects
+            values = newValues(getType(value));
+        } else if ( ! values.accepts(value) ) {
+            // the column holds values of more than one type
+            final Values objects = new ObjectValues();
+            for ( int i = assigned.nextSetBit(0); i >= 0; i = assigned.nextSetBit(i + 1) )
+                objects.set(i, values.get(i));
+            values = objects;
         }
 
-        return this.get(primaryKey);
+        values.set(row, value);
+        initialized.set(row);
+        assigned.set(row);
     }
 
     /**
      * Return an object from the column, but if it doesn't exist, return the default value.
      *
-     * @param primaryKey  the primary key position in the column that should be retrieved
-     * @return  the string value at the specified position in the column, or the default value if the element is not set
+     * @param row  the row that should be retrieved
+     * @return  the string value in the row, or the default value if the element is not set
      */
-    public String getStringValue(Object primaryKey) {
-        return formatValue(getWithoutSideEffects(primaryKey));
+    public String getStringValue(int row) {
+        return formatValue(get(row));
     }
 
     /**
@@ -82,7 +138,8 @@ public class GATKReportColumn extends TreeMap<Object, Object> {
         int maxWidth = columnName.length();
         GATKReportColumnFormat.Alignment alignment = GATKReportColumnFormat.Alignment.RIGHT;
 
-        for (Object obj : this.values()) {
+        for (int row = initialized.nextSetBit(0); row >= 0; row = initialized.nextSetBit(row + 1)) {
+            Object obj = get(row);
             if (obj != null) {
                 String formatted = formatValue(obj);
 
@@ -143,4 +200,302 @@ public class GATKReportColumn extends TreeMap<Object, Object> {
     public String getColumnName() {
         return columnName;
     }
+
+    Object getDefaultValue() {
+        return defaultValue;
+    }
+
+    String getFormat() {
+        return format;
+    }
+
+    BitSet getInitialized() {
+        return initialized;
+    }
+
+    BitSet getAssigned() {
+        return assigned;
+    }
+
+    Values getValues() {
+        return values;
+    }
+
+    /**
+     * @param value a value
+     * @return the type code of the values the value can be kept with
+     */
+    static byte getType(Object value) {
+        if ( value instanceof Integer )
+            return TYPE_INT;
+        if ( value instanceof Long )
+            return TYPE_LONG;
+        if ( value instanceof Double )
+            return TYPE_DOUBLE;
+        if ( value instanceof String )
+            return TYPE_STRING;
+        return TYPE_NULL;
+    }
+
+    private static Values newValues(byte type) {
+        switch ( type ) {
+            case TYPE_INT: return new IntValues(null);
+            case TYPE_LONG: return new LongValues(null);
+            case TYPE_DOUBLE: return new DoubleValues(null);
+            case TYPE_STRING: return new StringValues(new ArrayList<String>(), null);
+            default: return new ObjectValues();
+        }
+    }
+
+    /**
+     * The values of a column, by row
+     */
+    abstract static class Values {
+        /**
+         * @return the type code of the values as they're written to binary reports
+         */
+        abstract byte getType();
+
+        abstract boolean accepts(Object value);
+
+        abstract Object get(int row);
+
+        abstract void set(int row, Object value);
+
+        /**
+         * Writes the values of the first nRows rows, with the values that aren't set left as zero
+         */
+        abstract void write(DataOutputStream out, int nRows) throws IOException;
+
+        protected static int grow(int length, int row) {
+            return Math.max(row + 1, Math.max(16, length * 2));
+        }
+    }
+
+    static class IntValues extends Values {
+        private IntBuffer mapped;
+        private int[] values = new int[0];
+
+        IntValues(IntBuffer mapped) {
+            this.mapped = mapped;
+        }
+
+        byte getType() { return TYPE_INT; }
+
+        boolean accepts(Object value) { return value instanceof Integer; }
+
+        Object get(int row) {
+            if ( mapped != null )
+                return mapped.get(row);
+            return row < values.length ? values[row] : 0;
+        }
+
+        void set(int row, Object value) {
+            if ( mapped != null ) {
+                values = new int[mapped.capacity()];
+                mapped.get(values);
+                mapped = null;
+            }
+            if ( row >= values.length )
+                values = Arrays.copyOf(values, grow(values.length, row));
+            values[row] = (Integer)value;
+        }
+
+        void write(DataOutputStream out, int nRows) throws IOException {
+            for ( int row = 0; row < nRows; row++ )
+                out.writeInt((Integer)get(row));
+        }
+    }
+
+    static class LongValues extends Values {
+        private LongBuffer mapped;
+        private long[] values = new long[0];
+
+        LongValues(LongBuffer mapped) {
+            this.mapped = mapped;
+        }
+
+        byte getType() { return TYPE_LONG; }
+
+        boolean accepts(Object value) { return value instanceof Long; }
+
+        Object get(int row) {
+            if ( mapped != null )
+                return mapped.get(row);
+            return row < values.length ? values[row] : 0L;
+        }
+
+        void set(int row, Object value) {
+            if ( mapped != null ) {
+                values = new long[mapped.capacity()];
+                mapped.get(values);
+                mapped = null;
+            }
+            if ( row >= values.length )
+                values = Arrays.copyOf(values, grow(values.length, row));
+            values[row] = (Long)value;
+        }
+
+        void write(DataOutputStream out, int nRows) throws IOException {
+            for ( int row = 0; row < nRows; row++ )
+                out.writeLong((Long)get(row));
+        }
+    }
+
+    static class DoubleValues extends Values {
+        private DoubleBuffer mapped;
+        private double[] values = new double[0];
+
+        DoubleValues(DoubleBuffer mapped) {
+            this.mapped = mapped;
+        }
+
+        byte getType() { return TYPE_DOUBLE; }
+
+        boolean accepts(Object value) { return value instanceof Double; }
+
+        Object get(int row) {
+            if ( mapped != null )
+                return mapped.get(row);
+            return row < values.length ? values[row] : 0.0;
+        }
+
+        void set(int row, Object value) {
+            if ( mapped != null ) {
+                values = new double[mapped.capacity()];
+                mapped.get(values);
+                mapped = null;
+            }
+            if ( row >= values.length )
+                values = Arrays.copyOf(values, grow(values.length, row));
+            values[row] = (Double)value;
+        }
+
+        void write(DataOutputStream out, int nRows) throws IOException {
+            for ( int row = 0; row < nRows; row++ )
+                out.writeDouble((Double)get(row));
+        }
+    }
+
+    /**
+     * Strings, kept as their numbers in a dictionary of the distinct strings of the column, or -1 for null
+     */
+    static class StringValues extends Values {
+        private final List<String> dictionary;
+        private final Map<String, Integer> codes = new HashMap<String, Integer>();
+        private IntBuffer mapped;
+        private int[] values = new int[0];
+
+        StringValues(List<String> dictionary, IntBuffer mapped) {
+            this.dictionary = dictionary;
+            this.mapped = mapped;
+            for ( int code = 0; code < dictionary.size(); code++ )
+                codes.put(dictionary.get(code), code);
+        }
+
+        byte getType() { return TYPE_STRING; }
+
+        boolean accepts(Object value) { return value == null || value instanceof String; }
+
+        Object get(int row) {
+            final int code = mapped != null ? mapped.get(row) : (row < values.length ? values[row] : -1);
+            return code == -1 ? null : dictionary.get(code);
+        }
+
+        void set(int row, Object value) {
+            if ( mapped != null ) {
+                values = new int[mapped.capacity()];
+                mapped.get(values);
+                mapped = null;
+            }
+            if ( row >= values.length ) {
+                final int length = values.length;
+                values = Arrays.copyOf(values, grow(values.length, row));
+                Arrays.fill(values, length, values.length, -1);
+            }
+
+            int code = -1;
+            if ( value != null ) {
+                Integer existing = codes.get(value);
+                if ( existing == null ) {
+                    existing = dictionary.size();
+                    dictionary.add((String)value);
+                    codes.put((String)value, existing);
+                }
+                code = existing;
+            }
+            values[row] = code;
+        }
+
+        void write(DataOutputStream out, int nRows) throws IOException {
+            out.writeInt(dictionary.size());
+            for ( String value : dictionary )
+                GATKReportBinaryFormat.writeString(out, value);
+            for ( int row = 0; row < nRows; row++ )
+                out.writeInt(mapped != null ? mapped.get(row) : (row < values.length ? values[row] : -1));
+        }
+    }
+
+    /**
+     * Values of any type.  They're written to binary reports as strings, just as they are to text reports.
+     */
+    static class ObjectValues extends Values {
+        private Object[] values = new Object[0];
+
+        byte getType() { return TYPE_STRING; }
+
+        boolean accepts(Object value) { return true; }
+
+        Object get(int row) {
+            return row < values.length ? values[row] : null;
+        }
+
+        void set(int row, Object value) {
+            if ( row >= values.length )
+                values = Arrays.copyOf(values, grow(values.length, row));
+            values[row] = value;
+        }
+
+        void write(DataOutputStream out, int nRows) throws IOException {
+            final StringValues strings = new StringValues(new ArrayList<String>(), null);
+            for ( int row = 0; row < nRows; row++ )
+                strings.set(row, values.length > row && values[row] != null ? values[row].toString() : null);
+            strings.write(out, nRows);
+        }
+    }
+
+    /**
+     * @param type the type code of the values
+     * @param buffer the binary report, positioned at the values of the column
+     * @param nRows the number of rows
+     * @return the values, read from the buffer as they're needed; the buffer is left positioned after them
+     */
+    static Values mapValues(byte type, ByteBuffer buffer, int nRows) {
+        final Values values;
+        switch ( type ) {
+            case TYPE_INT:
+                values = new IntValues(((ByteBuffer)buffer.slice().limit(nRows * 4)).asIntBuffer());
+                buffer.position(buffer.position() + nRows * 4);
+                break;
+            case TYPE_LONG:
+                values = new LongValues(((ByteBuffer)buffer.slice().limit(nRows * 8)).asLongBuffer());
+                buffer.position(buffer.position() + nRows * 8);
+                break;
+            case TYPE_DOUBLE:
+                values = new DoubleValues(((ByteBuffer)buffer.slice().limit(nRows * 8)).asDoubleBuffer());
+                buffer.position(buffer.position() + nRows * 8);
+                break;
+            case TYPE_STRING:
+                final int dictionarySize = buffer.getInt();
+                final List<String> dictionary = new ArrayList<String>(dictionarySize);
+                for ( int i = 0; i < dictionarySize; i++ )
+                    dictionary.add(GATKReportBinaryFormat.readString(buffer));
+                values = new StringValues(dictionary, ((ByteBuffer)buffer.slice().limit(nRows * 4)).asIntBuffer());
+                buffer.position(buffer.position() + nRows * 4);
+                break;
+            default:
+                values = null;
+        }
+        return values;
+    }
 }
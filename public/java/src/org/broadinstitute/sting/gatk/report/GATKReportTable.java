@@ -64,14 +64,13 @@ import java.util.regex.Pattern;
  * Implementation:
  *
  * The implementation of this table has two components:
- *   1. A TreeSet<Object> that stores all the values ever specified for the primary key.  Any get() operation that
- *      refers to an element where the primary key object does not exist will result in its implicit creation.  I
- *      haven't yet decided if this is a good idea...
+ *   1. A map from each value ever specified for the primary key to its row number, in the order they were first
+ *      specified, and the order of the rows sorted by primary key, which is worked out again when rows have been added.
+ *      Any get() operation that refers to an element where the primary key object does not exist will result in its
+ *      implicit creation.  I haven't yet decided if this is a good idea...
  *
- *   2. A HashMap<String, GATKReportColumn> that stores a mapping from column name to column contents.  Each
- *      GATKReportColumn is effectively a map (in fact, GATKReportColumn extends TreeMap<Object, Object>) between
- *      primary key and the column value.  This means that, given N columns, the primary key information is stored
- *      N+1 times.  This is obviously wasteful and can likely be handled much more elegantly in future implementations.
+ *   2. A LinkedHashMap<String, GATKReportColumn> that stores a mapping from column name to column contents.  Each
+ *      GATKReportColumn keeps its values by row number, in an array of the type of its values.
  *
  * ------------------------------
  * Element and column operations:
@@ -100,10 +99,16 @@ public class GATKReportTable {
     private GATKReportVersion version = LATEST_REPORT_VERSION;
 
     private String primaryKeyName;
-    private Collection<Object> primaryKeyColumn;
     private boolean primaryKeyDisplay;
     private boolean sortByPrimaryKey = true;
 
+    /** the primary key of each row, and the row of each primary key */
+    private List<Object> primaryKeys;
+    private Map<Object, Integer> rowsByPrimaryKey;
+
+    /** the rows in the order they're written, or null if rows have been added since it was worked out */
+    private List<Integer> rowOrder;
+
     private GATKReportColumns columns;
 
     /**
@@ -188,10 +193,62 @@ public class GATKReportTable {
 
         this.primaryKeyName = primaryKeyName;
 
-        primaryKeyColumn = sortByPrimaryKey ? new TreeSet<Object>() : new LinkedList<Object>();
+        primaryKeys = new ArrayList<Object>();
+        rowsByPrimaryKey = new HashMap<Object, Integer>();
+        rowOrder = new ArrayList<Integer>();
         primaryKeyDisplay = display;
     }
 
+    /**
+     * @return the rows in the order they're written: sorted by primary key if the table is sorted, and otherwise in
+     * the order they were accessed in, every time they were accessed
+     */
+    private List<Integer> getRowOrder() {
+        if (rowOrder == null) {
+            Integer[] rows = new Integer[primaryKeys.size()];
+            for (int row = 0; row < rows.length; row++) {
+                rows[row] = row;
+            }
+
+            Arrays.sort(rows, new Comparator<Integer>() {
+                @SuppressWarnings("unchecked")
+                public int compare(Integer row1, Integer row2) {
+                    return ((Comparable<Object>) primaryKeys.get(row1)).compareTo(primaryKeys.get(row2));
+                }
+            });
+
+            rowOrder = Arrays.asList(rows);
+        }
+
+        return rowOrder;
+    }
+
+    /**
+     * @param primaryKey  the primary key value
+     * @return  the row of the primary key, added to the table if it isn't there yet
+     */
+    private int getRow(Object primaryKey) {
+        Integer row = rowsByPrimaryKey.get(primaryKey);
+        if (row == null) {
+            if (sortByPrimaryKey && !(primaryKey instanceof Comparable)) {
+                throw new ClassCastException(primaryKey.getClass().getName() + " cannot be cast to java.lang.Comparable");
+            }
+
+            row = primaryKeys.size();
+            primaryKeys.add(primaryKey);
+            rowsByPrimaryKey.put(primaryKey, row);
+            if (sortByPrimaryKey) {
+                rowOrder = null;
+            }
+        }
+
+        if (!sortByPrimaryKey) {
+            rowOrder.add(row);
+        }
+
+        return row;
+    }
+
     /**
      * Returns the first primary key matching the dotted column values.
      * Ex: dbsnp.eval.called.all.novel.all
@@ -232,13 +289,16 @@ public class GATKReportTable {
      * @return The first primary key matching the column values.
      */
     private Object findPrimaryKey(Object[] columnValues) {
-        for (Object primaryKey : primaryKeyColumn) {
+        for (int row : getRowOrder()) {
             boolean matching = true;
             for (int i = 0; matching && i < columnValues.length; i++) {
-                matching = ObjectUtils.equals(columnValues[i], get(primaryKey, i+1));
+                // values loaded from binary reports are matched by how they're written, as they are in text reports
+                GATKReportColumn column = columns.getByIndex(i+1);
+                Object value = column.isInitialized(row) ? column.get(row) : null;
+                matching = ObjectUtils.equals(columnValues[i], value) || (value != null && columnValues[i] instanceof String && columnValues[i].equals(column.getStringValue(row)));
             }
             if (matching)
-                return primaryKey;
+                return primaryKeys.get(row);
         }
         return null;
     }
@@ -279,25 +339,29 @@ public class GATKReportTable {
      *
      * @param primaryKey  the primary key value
      * @param columnName  the name of the column
+     * @return  the row of the element
      */
-    private void verifyEntry(Object primaryKey, String columnName) {
-        if (!columns.containsKey(columnName)) {
+    private int verifyEntry(Object primaryKey, String columnName) {
+        GATKReportColumn column = columns.get(columnName);
+        if (column == null) {
             throw new ReviewedStingException("Attempted to access column '" + columnName + "' that does not exist in table '" + tableName + "'.");
         }
 
-        primaryKeyColumn.add(primaryKey);
-
-        if (!columns.get(columnName).containsKey(primaryKey)) {
-            columns.get(columnName).initialize(primaryKey);
-        }
+        int row = getRow(primaryKey);
+        column.initialize(row);
+        return row;
     }
 
     public boolean containsKey(Object primaryKey) {
-        return primaryKeyColumn.contains(primaryKey);
+        return rowsByPrimaryKey.containsKey(primaryKey);
     }
 
     public Collection<Object> getPrimaryKeys() {
-        return Collections.unmodifiableCollection(primaryKeyColumn);
+        List<Object> keys = new ArrayList<Object>(getNumRows());
+        for (int row : getRowOrder()) {
+            keys.add(primaryKeys.get(row));
+        }
+        return Collections.unmodifiableCollection(keys);
     }
 
     /**
@@ -308,9 +372,9 @@ public class GATKReportTable {
      * @param value  the value to set
      */
     public void set(Object primaryKey, String columnName, Object value) {
-        verifyEntry(primaryKey, columnName);
+        int row = verifyEntry(primaryKey, columnName);
 
-        columns.get(columnName).put(primaryKey, value);
+        columns.get(columnName).set(row, value);
     }
 
     /**
@@ -321,20 +385,27 @@ public class GATKReportTable {
      * @return  the value stored at the specified position in the table
      */
     public Object get(Object primaryKey, String columnName) {
-        verifyEntry(primaryKey, columnName);
+        int row = verifyEntry(primaryKey, columnName);
         
-        return columns.get(columnName).get(primaryKey);
+        return columns.get(columnName).get(row);
     }
 
     /**
-     * Get a value from the given position in the table
+     * Get a value from the given position in the table, without adding the row or initializing the element as get() does
      *
      * @param primaryKey  the primary key value
-     * @param columnIndex the index of the column
-     * @return  the value stored at the specified position in the table
+     * @param columnName  the name of the column
+     * @return  the value stored at the specified position in the table, the default value of the column if it hasn't
+     *          been set, or null if the table has no row with the primary key
      */
-    private Object get(Object primaryKey, int columnIndex) {
-        return columns.getByIndex(columnIndex).get(primaryKey);
+    public Object lookup(Object primaryKey, String columnName) {
+        GATKReportColumn column = columns.get(columnName);
+        if (column == null) {
+            throw new ReviewedStingException("Attempted to access column '" + columnName + "' that does not exist in table '" + tableName + "'.");
+        }
+
+        Integer row = rowsByPrimaryKey.get(primaryKey);
+        return row == null ? null : column.get(row);
     }
 
     /**
@@ -523,7 +594,7 @@ public class GATKReportTable {
      * @param addend  the column that shall be the addend
      */
     public void addColumns(String columnToSet, String augend, String addend) {
-        for (Object primaryKey : primaryKeyColumn) {
+        for (Object primaryKey : getPrimaryKeys()) {
             Number firstColumnValue = (Number) get(primaryKey, augend);
             Number secondColumnValue = (Number) get(primaryKey, addend);
 
@@ -541,7 +612,7 @@ public class GATKReportTable {
      * @param subtrahend  the column that shall be the subtrahend (the b in a - b)
      */
     public void subtractColumns(String columnToSet, String minuend, String subtrahend) {
-        for (Object primaryKey : primaryKeyColumn) {
+        for (Object primaryKey : getPrimaryKeys()) {
             Number firstColumnValue = (Number) get(primaryKey, minuend);
             Number secondColumnValue = (Number) get(primaryKey, subtrahend);
 
@@ -559,7 +630,7 @@ public class GATKReportTable {
      * @param multiplicand  the column that shall be the multiplicand
      */
     public void multiplyColumns(String columnToSet, String multiplier, String multiplicand) {
-        for (Object primaryKey : primaryKeyColumn) {
+        for (Object primaryKey : getPrimaryKeys()) {
             Number firstColumnValue = (Number) get(primaryKey, multiplier);
             Number secondColumnValue = (Number) get(primaryKey, multiplicand);
 
@@ -577,7 +648,7 @@ public class GATKReportTable {
      * @param denominatorColumn  the column that shall be the denominator
      */
     public void divideColumns(String columnToSet, String numeratorColumn, String denominatorColumn) {
-        for (Object primaryKey : primaryKeyColumn) {
+        for (Object primaryKey : getPrimaryKeys()) {
             Number firstColumnValue = (Number) get(primaryKey, numeratorColumn);
             Number secondColumnValue = (Number) get(primaryKey, denominatorColumn);
 
@@ -594,7 +665,7 @@ public class GATKReportTable {
     public int getPrimaryKeyColumnWidth() {
         int maxWidth = primaryKeyName.length();
 
-        for (Object primaryKey : primaryKeyColumn) {
+        for (Object primaryKey : primaryKeys) {
             int width = primaryKey.toString().length();
 
             if (width > maxWidth) {
@@ -640,17 +711,17 @@ public class GATKReportTable {
         out.printf("%n");
 
         // Emit the table body
-        for (Object primaryKey : primaryKeyColumn) {
+        for (int row : getRowOrder()) {
             needsPadding = false;
             if (primaryKeyDisplay) {
-                out.printf(primaryKeyFormat, primaryKey);
+                out.printf(primaryKeyFormat, primaryKeys.get(row));
                 needsPadding = true;
             }
 
             for (String columnName : columns.keySet()) {
                 if (columns.get(columnName).isDisplayable()) {
                     if (needsPadding) { out.printf("  "); }
-                    String value = columns.get(columnName).getStringValue(primaryKey);
+                    String value = columns.get(columnName).getStringValue(row);
                     out.printf(columnFormats.get(columnName).getValueFormat(), value);
 
                     needsPadding = true;
@@ -665,7 +736,7 @@ public class GATKReportTable {
     }
 
     public int getNumRows() {
-        return primaryKeyColumn.size();
+        return getRowOrder().size();
     }
 
     public String getTableName() {
@@ -679,4 +750,54 @@ public class GATKReportTable {
     public GATKReportColumns getColumns() {
         return columns;
     }
+
+    String getPrimaryKeyName() {
+        return primaryKeyName;
+    }
+
+    boolean isPrimaryKeyDisplayed() {
+        return primaryKeyDisplay;
+    }
+
+    boolean isSortedByPrimaryKey() {
+        return sortByPrimaryKey;
+    }
+
+    /**
+     * @return  the primary key of each row, by row number
+     */
+    List<Object> getPrimaryKeysByRow() {
+        return Collections.unmodifiableList(primaryKeys);
+    }
+
+    /**
+     * @return  the rows in the order they're written
+     */
+    List<Integer> getWrittenRows() {
+        return Collections.unmodifiableList(getRowOrder());
+    }
+
+    /**
+     * Replace the rows of the table, eg. with those of a table being loaded
+     *
+     * @param primaryKeys  the primary key of each row, by row number
+     * @param rowOrder  the rows in the order they're written, or null if the table is sorted
+     */
+    void setRows(List<Object> primaryKeys, List<Integer> rowOrder) {
+        this.primaryKeys = new ArrayList<Object>(primaryKeys);
+        rowsByPrimaryKey = new HashMap<Object, Integer>();
+        for (int row = 0; row < primaryKeys.size(); row++) {
+            rowsByPrimaryKey.put(primaryKeys.get(row), row);
+        }
+        this.rowOrder = sortByPrimaryKey ? null : new ArrayList<Integer>(rowOrder);
+    }
+
+    /**
+     * Add a column, with whatever values it already has, to the table
+     *
+     * @param column  the column
+     */
+    void addColumn(GATKReportColumn column) {
+        columns.put(column.getColumnName(), column);
+    }
 }
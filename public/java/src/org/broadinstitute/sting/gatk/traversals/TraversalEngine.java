@@ -33,6 +33,7 @@ import org.broadinstitute.sting.gatk.walkers.Walker;
 import org.broadinstitute.sting.utils.*;
 import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
 import org.broadinstitute.sting.utils.exceptions.UserException;
+import org.broadinstitute.sting.utils.instrumentation.HotPathMetrics;
 
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -135,6 +136,10 @@ public abstract class TraversalEngine<M,T,WalkerType extends Walker<M,T>,Provide
     private long lastPerformanceLogPrintTime = -1;                   // When was the last time we printed to the performance log?
     private final long PERFORMANCE_LOG_PRINT_FREQUENCY = PROGRESS_PRINT_FREQUENCY;  // in milliseconds
 
+    // for hot path metrics log
+    private PrintStream hotPathMetricsLog = null;
+    private long lastHotPathMetricsLogPrintTime = -1;               // When was the last time we printed to the hot path metrics log?
+
     /** Size, in bp, of the area we are processing.  Updated once in the system in initial for performance reasons */
     long targetSize = -1;
     GenomeLocSortedSet targetIntervals = null;
@@ -190,6 +195,16 @@ public abstract class TraversalEngine<M,T,WalkerType extends Walker<M,T>,Provide
             }
         }
 
+        if ( engine.getArguments() != null && engine.getArguments().hotPathMetricsLog != null ) {
+            try {
+                hotPathMetricsLog = new PrintStream(new FileOutputStream(engine.getArguments().hotPathMetricsLog));
+            } catch (FileNotFoundException e) {
+                throw new UserException.CouldNotCreateOutputFile(engine.getArguments().hotPathMetricsLog, e);
+            }
+            hotPathMetricsLog.println(Utils.join("\t", HotPathMetrics.getColumnNames()));
+            HotPathMetrics.getInstance().setEnabled(true);
+        }
+
         // if we don't have any intervals defined, create intervals from the reference itself
         if ( this.engine.getIntervals() == null )
             targetIntervals = GenomeLocSortedSet.createSetFromSequenceDictionary(engine.getReferenceDataSource().getReference().getSequenceDictionary());
@@ -266,6 +281,11 @@ public abstract class TraversalEngine<M,T,WalkerType extends Walker<M,T>,Provide
         }
 
         final long curTime = timer.currentTime();
+        if ( hotPathMetricsLog != null && maxElapsedIntervalForPrinting(curTime, lastHotPathMetricsLogPrintTime, PERFORMANCE_LOG_PRINT_FREQUENCY) ) {
+            lastHotPathMetricsLogPrintTime = curTime;
+            HotPathMetrics.getInstance().printRows(hotPathMetricsLog, timer.getElapsedTime());
+        }
+
         boolean printProgress = mustPrint || maxElapsedIntervalForPrinting(curTime, lastProgressPrintTime, PROGRESS_PRINT_FREQUENCY);
         boolean printLog = performanceLog != null && maxElapsedIntervalForPrinting(curTime, lastPerformanceLogPrintTime, PERFORMANCE_LOG_PRINT_FREQUENCY);
 
@@ -380,6 +400,10 @@ public abstract class TraversalEngine<M,T,WalkerType extends Walker<M,T>,Provide
         }
 
         if ( performanceLog != null ) performanceLog.close();
+        if ( hotPathMetricsLog != null ) {
+            HotPathMetrics.getInstance().printRows(hotPathMetricsLog, elapsed);
+            hotPathMetricsLog.close();
+        }
     }
 
     /**
@@ -1,9 +1,11 @@
 package org.broadinstitute.sting.gatk.walkers.annotator;
 
 import org.broadinstitute.sting.gatk.walkers.genotyper.IndelGenotypeLikelihoodsCalculationModel;
+import org.broadinstitute.sting.utils.IntegerMannWhitneyU;
 import org.broadinstitute.sting.utils.codecs.vcf.VCFHeaderLineType;
 import org.broadinstitute.sting.utils.codecs.vcf.VCFInfoHeaderLine;
 import org.broadinstitute.sting.utils.pileup.PileupElement;
+import org.broadinstitute.sting.utils.pileup.PileupStatistics;
 import org.broadinstitute.sting.utils.pileup.ReadBackedPileup;
 import org.broadinstitute.sting.utils.variantcontext.Allele;
 
@@ -22,13 +24,13 @@ public class BaseQualityRankSumTest extends RankSumTest {
 
     public List<VCFInfoHeaderLine> getDescriptions() { return Arrays.asList(new VCFInfoHeaderLine("BaseQRankSum", 1, VCFHeaderLineType.Float, "Z-score from Wilcoxon rank sum test of Alt Vs. Ref base qualities")); }
 
-    protected void fillQualsFromPileup(byte ref, List<Byte> alts, ReadBackedPileup pileup, List<Double> refQuals, List<Double> altQuals) {
-        for ( final PileupElement p : pileup ) {
-            if( isUsableBase(p) ) {
-                if ( p.getBase() == ref )
-                    refQuals.add((double)p.getQual());
-                else if ( alts.contains(p.getBase()) )
-                    altQuals.add((double)p.getQual());
+    protected void fillQualsFromPileup(byte ref, byte[] alts, PileupStatistics pileup, IntegerMannWhitneyU mannWhitneyU) {
+        for ( int i = 0; i < pileup.size(); i++ ) {
+            if( isUsableBase(pileup, i) ) {
+                if ( pileup.getBase(i) == ref )
+                    mannWhitneyU.add(pileup.getQual(i), REF);
+                else if ( isAltAllele(pileup.getBase(i), alts) )
+                    mannWhitneyU.add(pileup.getQual(i), ALT);
             }
         }
 
@@ -10,9 +10,8 @@ import org.broadinstitute.sting.utils.codecs.vcf.VCFFormatHeaderLine;
 import org.broadinstitute.sting.utils.codecs.vcf.VCFHeaderLineCount;
 import org.broadinstitute.sting.utils.codecs.vcf.VCFHeaderLineType;
 import org.broadinstitute.sting.utils.pileup.ExtendedEventPileupElement;
-import org.broadinstitute.sting.utils.pileup.PileupElement;
+import org.broadinstitute.sting.utils.pileup.PileupStatistics;
 import org.broadinstitute.sting.utils.pileup.ReadBackedExtendedEventPileup;
-import org.broadinstitute.sting.utils.pileup.ReadBackedPileup;
 import org.broadinstitute.sting.utils.variantcontext.Allele;
 import org.broadinstitute.sting.utils.variantcontext.Genotype;
 import org.broadinstitute.sting.utils.variantcontext.VariantContext;
@@ -49,42 +48,43 @@ public class DepthPerAlleleBySample extends GenotypeAnnotation implements Standa
     private static String DEL = "DEL"; // constant, for speed: no need to create a key string for deletion allele every time
 
     public Map<String, Object> annotate(RefMetaDataTracker tracker, AnnotatorCompatibleWalker walker, ReferenceContext ref, AlignmentContext stratifiedContext, VariantContext vc, Genotype g) {
+        return annotate(tracker, walker, ref, stratifiedContext, vc, g, stratifiedContext == null ? null : new PileupStatistics(stratifiedContext.getPileup()));
+    }
+
+    public Map<String, Object> annotate(RefMetaDataTracker tracker, AnnotatorCompatibleWalker walker, ReferenceContext ref, AlignmentContext stratifiedContext, VariantContext vc, Genotype g, PileupStatistics statistics) {
         if ( g == null || !g.isCalled() )
             return null;
 
         if ( vc.isSNP() )
-            return annotateSNP(stratifiedContext, vc);
+            return annotateSNP(stratifiedContext, statistics, vc);
         if ( vc.isIndel() )
             return annotateIndel(stratifiedContext, vc);
 
         return null;
     }
 
-    private Map<String,Object> annotateSNP(AlignmentContext stratifiedContext, VariantContext vc) {
+    private Map<String,Object> annotateSNP(AlignmentContext stratifiedContext, PileupStatistics pileup, VariantContext vc) {
 
         if ( ! stratifiedContext.hasBasePileup() ) return null;
 
-        HashMap<Byte, Integer> alleleCounts = new HashMap<Byte, Integer>();
-        for ( Allele allele : vc.getAlleles() )
-            alleleCounts.put(allele.getBases()[0], 0);
-
-        ReadBackedPileup pileup = stratifiedContext.getBasePileup();
-        for ( PileupElement p : pileup ) {
-            if ( alleleCounts.containsKey(p.getBase()) )
-                alleleCounts.put(p.getBase(), alleleCounts.get(p.getBase())+1);
-        }
-
-        // we need to add counts in the correct order
-        Integer[] counts = new Integer[alleleCounts.size()];
-        counts[0] = alleleCounts.get(vc.getReference().getBases()[0]);
+        // the alleles are single distinct bases, so their counts come straight from the per-base strand counts
+        final int[][] baseCounts = pileup.getBaseCountsByStrand();
+        final List<Allele> alleles = vc.getAlleles();
+        Integer[] counts = new Integer[alleles.size()];
+        counts[0] = getBaseCount(baseCounts, vc.getReference());
         for (int i = 0; i < vc.getAlternateAlleles().size(); i++)
-            counts[i+1] = alleleCounts.get(vc.getAlternateAllele(i).getBases()[0]);
+            counts[i+1] = getBaseCount(baseCounts, vc.getAlternateAllele(i));
 
         Map<String, Object> map = new HashMap<String, Object>();
         map.put(getKeyNames().get(0), counts);
         return map;
     }
 
+    private static int getBaseCount(int[][] baseCounts, Allele allele) {
+        final int[] strandCounts = baseCounts[allele.getBases()[0] & 0xff];
+        return strandCounts[PileupStatistics.FORWARD] + strandCounts[PileupStatistics.REVERSE];
+    }
+
     private Map<String,Object> annotateIndel(AlignmentContext stratifiedContext, VariantContext vc) {
 
         if ( ! stratifiedContext.hasExtendedEventPileup() ) {
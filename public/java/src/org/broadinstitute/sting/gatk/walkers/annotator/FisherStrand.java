@@ -36,6 +36,7 @@ import org.broadinstitute.sting.utils.QualityUtils;
 import org.broadinstitute.sting.utils.codecs.vcf.VCFHeaderLineType;
 import org.broadinstitute.sting.utils.codecs.vcf.VCFInfoHeaderLine;
 import org.broadinstitute.sting.utils.pileup.PileupElement;
+import org.broadinstitute.sting.utils.pileup.PileupStatistics;
 import org.broadinstitute.sting.utils.pileup.ReadBackedPileup;
 import org.broadinstitute.sting.utils.variantcontext.Allele;
 import org.broadinstitute.sting.utils.variantcontext.VariantContext;
@@ -54,13 +55,17 @@ public class FisherStrand extends InfoFieldAnnotation implements StandardAnnotat
     private static final double MIN_PVALUE = 1E-320;
 
     public Map<String, Object> annotate(RefMetaDataTracker tracker, AnnotatorCompatibleWalker walker, ReferenceContext ref, Map<String, AlignmentContext> stratifiedContexts, VariantContext vc) {
+        return annotate(tracker, walker, ref, stratifiedContexts, vc, new SitePileupStatistics(stratifiedContexts));
+    }
+
+    public Map<String, Object> annotate(RefMetaDataTracker tracker, AnnotatorCompatibleWalker walker, ReferenceContext ref, Map<String, AlignmentContext> stratifiedContexts, VariantContext vc, SitePileupStatistics statistics) {
         if ( !vc.isVariant() )
             return null;
 
         int[][] table;
 
         if ( vc.isSNP() )
-            table = getSNPContingencyTable(stratifiedContexts, vc.getReference(), vc.getAltAlleleWithHighestAlleleCount());
+            table = getSNPContingencyTable(stratifiedContexts.keySet(), statistics, vc.getReference(), vc.getAltAlleleWithHighestAlleleCount());
         else if ( vc.isIndel() || vc.isMixed() ) {
             table = getIndelContingencyTable(stratifiedContexts);
             if (table == null)
@@ -200,25 +205,26 @@ public class FisherStrand extends InfoFieldAnnotation implements StandardAnnotat
      *   allele2   #       #
      * @return a 2x2 contingency table
      */
-    private static int[][] getSNPContingencyTable(Map<String, AlignmentContext> stratifiedContexts, Allele ref, Allele alt) {
+    private static int[][] getSNPContingencyTable(Set<String> samples, SitePileupStatistics statistics, Allele ref, Allele alt) {
         int[][] table = new int[2][2];
+        final byte refBase = ref.getBases()[0];
+        final byte altBase = alt.getBases()[0];
 
-        for ( Map.Entry<String, AlignmentContext> sample : stratifiedContexts.entrySet() ) {
-            for (PileupElement p : sample.getValue().getBasePileup()) {
-                if ( p.isDeletion() || p.getRead().isReducedRead() ) // ignore deletions and reduced reads
+        for ( String sample : samples ) {
+            final PileupStatistics pileup = statistics.getStatistics(sample);
+            for ( int i = 0; i < pileup.size(); i++ ) {
+                if ( pileup.isDeletion(i) || pileup.isReducedRead(i) ) // ignore deletions and reduced reads
                     continue;
 
-                if ( p.getRead().getMappingQuality() < 20 || p.getQual() < 20 )
+                if ( pileup.getMappingQual(i) < 20 || pileup.getQual(i) < 20 )
                     continue; // todo -- fixme, should take filtered context!
 
-                Allele base = Allele.create(p.getBase(), false);
-                boolean isFW = !p.getRead().getReadNegativeStrandFlag();
-
-                boolean matchesRef = ref.equals(base, true);
-                boolean matchesAlt = alt.equals(base, true);
+                final byte base = pileup.getBase(i);
+                boolean matchesRef = base == refBase;
+                boolean matchesAlt = base == altBase;
                 if ( matchesRef || matchesAlt ) {
                     int row = matchesRef ? 0 : 1;
-                    int column = isFW ? 0 : 1;
+                    int column = pileup.isNegativeStrand(i) ? 1 : 0;
 
                     table[row][column]++;
                 }
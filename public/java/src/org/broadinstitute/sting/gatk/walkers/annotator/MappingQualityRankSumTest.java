@@ -1,10 +1,12 @@
 package org.broadinstitute.sting.gatk.walkers.annotator;
 
 import org.broadinstitute.sting.gatk.walkers.genotyper.IndelGenotypeLikelihoodsCalculationModel;
+import org.broadinstitute.sting.utils.IntegerMannWhitneyU;
 import org.broadinstitute.sting.utils.QualityUtils;
 import org.broadinstitute.sting.utils.codecs.vcf.VCFHeaderLineType;
 import org.broadinstitute.sting.utils.codecs.vcf.VCFInfoHeaderLine;
 import org.broadinstitute.sting.utils.pileup.PileupElement;
+import org.broadinstitute.sting.utils.pileup.PileupStatistics;
 import org.broadinstitute.sting.utils.pileup.ReadBackedPileup;
 import org.broadinstitute.sting.utils.variantcontext.Allele;
 
@@ -24,13 +26,13 @@ public class MappingQualityRankSumTest extends RankSumTest {
 
     public List<VCFInfoHeaderLine> getDescriptions() { return Arrays.asList(new VCFInfoHeaderLine("MQRankSum", 1, VCFHeaderLineType.Float, "Z-score From Wilcoxon rank sum test of Alt vs. Ref read mapping qualities")); }
 
-    protected void fillQualsFromPileup(byte ref, List<Byte> alts, ReadBackedPileup pileup, List<Double> refQuals, List<Double> altQuals) {
-        for ( final PileupElement p : pileup ) {
-            if ( isUsableBase(p) ) {
-                if ( p.getBase() == ref ) {
-                    refQuals.add((double)p.getMappingQual());
-                } else if ( alts.contains(p.getBase()) ) {
-                    altQuals.add((double)p.getMappingQual());
+    protected void fillQualsFromPileup(byte ref, byte[] alts, PileupStatistics pileup, IntegerMannWhitneyU mannWhitneyU) {
+        for ( int i = 0; i < pileup.size(); i++ ) {
+            if ( isUsableBase(pileup, i) ) {
+                if ( pileup.getBase(i) == ref ) {
+                    mannWhitneyU.add(pileup.getMappingQual(i), REF);
+                } else if ( isAltAllele(pileup.getBase(i), alts) ) {
+                    mannWhitneyU.add(pileup.getMappingQual(i), ALT);
                 }
             }
         }
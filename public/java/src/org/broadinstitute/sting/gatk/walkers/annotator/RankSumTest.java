@@ -7,10 +7,12 @@ import org.broadinstitute.sting.gatk.walkers.annotator.interfaces.AnnotatorCompa
 import org.broadinstitute.sting.gatk.walkers.annotator.interfaces.InfoFieldAnnotation;
 import org.broadinstitute.sting.gatk.walkers.annotator.interfaces.StandardAnnotation;
 import org.broadinstitute.sting.gatk.walkers.genotyper.IndelGenotypeLikelihoodsCalculationModel;
+import org.broadinstitute.sting.utils.IntegerMannWhitneyU;
 import org.broadinstitute.sting.utils.MannWhitneyU;
 import org.broadinstitute.sting.utils.QualityUtils;
 import org.broadinstitute.sting.utils.collections.Pair;
 import org.broadinstitute.sting.utils.pileup.PileupElement;
+import org.broadinstitute.sting.utils.pileup.PileupStatistics;
 import org.broadinstitute.sting.utils.pileup.ReadBackedPileup;
 import org.broadinstitute.sting.utils.variantcontext.Allele;
 import org.broadinstitute.sting.utils.variantcontext.Genotype;
@@ -30,7 +32,15 @@ public abstract class RankSumTest extends InfoFieldAnnotation implements Standar
     static final double INDEL_LIKELIHOOD_THRESH = 0.1;
     static final boolean DEBUG = false;
 
+    // we test that the alt values (set 1) are lower than the ref values (set 2)
+    protected static final MannWhitneyU.USet ALT = MannWhitneyU.USet.SET1;
+    protected static final MannWhitneyU.USet REF = MannWhitneyU.USet.SET2;
+
     public Map<String, Object> annotate(RefMetaDataTracker tracker, AnnotatorCompatibleWalker walker, ReferenceContext ref, Map<String, AlignmentContext> stratifiedContexts, VariantContext vc) {
+        return annotate(tracker, walker, ref, stratifiedContexts, vc, new SitePileupStatistics(stratifiedContexts));
+    }
+
+    public Map<String, Object> annotate(RefMetaDataTracker tracker, AnnotatorCompatibleWalker walker, ReferenceContext ref, Map<String, AlignmentContext> stratifiedContexts, VariantContext vc, SitePileupStatistics statistics) {
         if (stratifiedContexts.size() == 0)
             return null;
 
@@ -39,22 +49,26 @@ public abstract class RankSumTest extends InfoFieldAnnotation implements Standar
             return null;
 
 
-        final ArrayList<Double> refQuals = new ArrayList<Double>();
-        final ArrayList<Double> altQuals = new ArrayList<Double>();
+        final Pair<Double, Double> testResults;
 
         if ( vc.isSNP() ) {
-            final List<Byte> altAlleles = new ArrayList<Byte>();
-            for ( final Allele a : vc.getAlternateAlleles() )
-                altAlleles.add(a.getBases()[0]);
+            final IntegerMannWhitneyU mannWhitneyU = new IntegerMannWhitneyU();
+            final List<Allele> alternateAlleles = vc.getAlternateAlleles();
+            final byte[] altAlleles = new byte[alternateAlleles.size()];
+            for ( int i = 0; i < altAlleles.length; i++ )
+                altAlleles[i] = alternateAlleles.get(i).getBases()[0];
 
             for ( final Genotype genotype : genotypes.iterateInSampleNameOrder() ) {
-                final AlignmentContext context = stratifiedContexts.get(genotype.getSampleName());
-                if ( context == null )
+                final PileupStatistics pileup = statistics.getStatistics(genotype.getSampleName());
+                if ( pileup == null )
                     continue;
 
-                fillQualsFromPileup(ref.getBase(), altAlleles, context.getBasePileup(), refQuals, altQuals);
+                fillQualsFromPileup(ref.getBase(), altAlleles, pileup, mannWhitneyU);
             }
+            testResults = runTest(mannWhitneyU);
         } else if ( vc.isIndel() || vc.isMixed() ) {
+            final ArrayList<Double> refQuals = new ArrayList<Double>();
+            final ArrayList<Double> altQuals = new ArrayList<Double>();
 
             for (final Genotype genotype : genotypes.iterateInSampleNameOrder()) {
                 final AlignmentContext context = stratifiedContexts.get(genotype.getSampleName());
@@ -77,47 +91,79 @@ public abstract class RankSumTest extends InfoFieldAnnotation implements Standar
 
                 fillIndelQualsFromPileup(pileup, refQuals, altQuals);
             }
+            testResults = runTest(refQuals, altQuals);
         } else
             return null;
 
-        final MannWhitneyU mannWhitneyU = new MannWhitneyU();
-        for (final Double qual : altQuals) {
-            mannWhitneyU.add(qual, MannWhitneyU.USet.SET1);
-        }
-        for (final Double qual : refQuals) {
-            mannWhitneyU.add(qual, MannWhitneyU.USet.SET2);
-        }
+        final Map<String, Object> map = new HashMap<String, Object>();
+        if (!Double.isNaN(testResults.first))
+            map.put(getKeyNames().get(0), String.format("%.3f", testResults.first));
+        return map;
+
+    }
 
+    private Pair<Double, Double> runTest(final IntegerMannWhitneyU mannWhitneyU) {
         if (DEBUG) {
             System.out.format("%s, REF QUALS:", this.getClass().getName());
-            for (final Double qual : refQuals)
-                System.out.format("%4.1f ", qual);
+            for (final int qual : mannWhitneyU.getObservations(REF))
+                System.out.format("%d ", qual);
             System.out.println();
             System.out.format("%s, ALT QUALS:", this.getClass().getName());
-            for (final Double qual : altQuals)
-                System.out.format("%4.1f ", qual);
+            for (final int qual : mannWhitneyU.getObservations(ALT))
+                System.out.format("%d ", qual);
             System.out.println();
 
         }
         // we are testing that set1 (the alt bases) have lower quality scores than set2 (the ref bases)
-        final Pair<Double, Double> testResults = mannWhitneyU.runOneSidedTest(MannWhitneyU.USet.SET1);
+        return mannWhitneyU.runOneSidedTest(ALT);
+    }
 
-        final Map<String, Object> map = new HashMap<String, Object>();
-        if (!Double.isNaN(testResults.first))
-            map.put(getKeyNames().get(0), String.format("%.3f", testResults.first));
-        return map;
+    /**
+     * Runs the test on the values of an indel site.  Mapping qualities and read positions are whole numbers, and are
+     * ranked by IntegerMannWhitneyU like those of a SNP; the phred-scaled indel likelihoods of BaseQRankSum aren't, and
+     * would tie if rounded, so they're ranked as they are by MannWhitneyU.
+     */
+    private Pair<Double, Double> runTest(final List<Double> refQuals, final List<Double> altQuals) {
+        if (isIntegral(refQuals) && isIntegral(altQuals)) {
+            final IntegerMannWhitneyU mannWhitneyU = new IntegerMannWhitneyU();
+            for (final double qual : refQuals)
+                mannWhitneyU.add((int) qual, REF);
+            for (final double qual : altQuals)
+                mannWhitneyU.add((int) qual, ALT);
+            return runTest(mannWhitneyU);
+        }
+
+        final MannWhitneyU mannWhitneyU = new MannWhitneyU();
+        for (final Double qual : altQuals)
+            mannWhitneyU.add(qual, ALT);
+        for (final Double qual : refQuals)
+            mannWhitneyU.add(qual, REF);
+        return mannWhitneyU.runOneSidedTest(ALT);
+    }
 
+    private static boolean isIntegral(final List<Double> values) {
+        for (final double value : values)
+            if (value != Math.rint(value) || Math.abs(value) > Integer.MAX_VALUE)
+                return false;
+        return true;
     }
 
-    protected abstract void fillQualsFromPileup(byte ref, List<Byte> alts, ReadBackedPileup pileup, List<Double> refQuals, List<Double> altQuals);
+    protected abstract void fillQualsFromPileup(byte ref, byte[] alts, PileupStatistics pileup, IntegerMannWhitneyU mannWhitneyU);
 
     protected abstract void fillIndelQualsFromPileup(ReadBackedPileup pileup, List<Double> refQuals, List<Double> altQuals);
 
-    protected static boolean isUsableBase(final PileupElement p) {
-        return !(p.isInsertionAtBeginningOfRead() ||
-                 p.isDeletion() ||
-                 p.getMappingQual() == 0 ||
-                 p.getMappingQual() == QualityUtils.MAPPING_QUALITY_UNAVAILABLE ||
-                 ((int) p.getQual()) < QualityUtils.MIN_USABLE_Q_SCORE); // need the unBAQed quality score here
+    protected static boolean isUsableBase(final PileupStatistics pileup, final int i) {
+        return !(pileup.isInsertionAtBeginningOfRead(i) ||
+                 pileup.isDeletion(i) ||
+                 pileup.getMappingQual(i) == 0 ||
+                 pileup.getMappingQual(i) == QualityUtils.MAPPING_QUALITY_UNAVAILABLE ||
+                 ((int) pileup.getQual(i)) < QualityUtils.MIN_USABLE_Q_SCORE); // need the unBAQed quality score here
+    }
+
+    protected static boolean isAltAllele(final byte base, final byte[] alts) {
+        for ( final byte alt : alts )
+            if ( base == alt )
+                return true;
+        return false;
     }
-}
\ No newline at end of file
+}
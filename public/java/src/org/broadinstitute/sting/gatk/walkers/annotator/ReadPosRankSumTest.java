@@ -6,9 +6,11 @@ import net.sf.samtools.CigarOperator;
 import net.sf.samtools.SAMRecord;
 import org.broadinstitute.sting.gatk.walkers.genotyper.IndelGenotypeLikelihoodsCalculationModel;
 import org.broadinstitute.sting.gatk.walkers.indels.PairHMMIndelErrorModel;
+import org.broadinstitute.sting.utils.IntegerMannWhitneyU;
 import org.broadinstitute.sting.utils.codecs.vcf.VCFHeaderLineType;
 import org.broadinstitute.sting.utils.codecs.vcf.VCFInfoHeaderLine;
 import org.broadinstitute.sting.utils.pileup.PileupElement;
+import org.broadinstitute.sting.utils.pileup.PileupStatistics;
 import org.broadinstitute.sting.utils.pileup.ReadBackedPileup;
 import org.broadinstitute.sting.utils.sam.AlignmentUtils;
 import org.broadinstitute.sting.utils.variantcontext.Allele;
@@ -32,19 +34,21 @@ public class ReadPosRankSumTest extends RankSumTest {
         return Arrays.asList(new VCFInfoHeaderLine("ReadPosRankSum", 1, VCFHeaderLineType.Float, "Z-score from Wilcoxon rank sum test of Alt vs. Ref read position bias"));
     }
 
-    protected void fillQualsFromPileup(byte ref, List<Byte> alts, ReadBackedPileup pileup, List<Double> refQuals, List<Double> altQuals) {
-        for (final PileupElement p : pileup) {
-            if (isUsableBase(p)) {
+    protected void fillQualsFromPileup(byte ref, byte[] alts, PileupStatistics pileup, IntegerMannWhitneyU mannWhitneyU) {
+        for (int i = 0; i < pileup.size(); i++) {
+            if (isUsableBase(pileup, i)) {
+                final byte base = pileup.getBase(i);
+                final boolean isRef = base == ref;
+                if (!isRef && !isAltAllele(base, alts))
+                    continue;
+
+                final PileupElement p = pileup.getElement(i);
                 int readPos = AlignmentUtils.calcAlignmentByteArrayOffset(p.getRead().getCigar(), p, 0, 0);
                 final int numAlignedBases = AlignmentUtils.getNumAlignedBases(p.getRead());
                 if (readPos > numAlignedBases / 2)
                     readPos = numAlignedBases - (readPos + 1);
 
-
-                if ( p.getBase() == ref )
-                    refQuals.add((double) readPos);
-                else if ( alts.contains(p.getBase()) )
-                    altQuals.add((double) readPos);
+                mannWhitneyU.add(readPos, isRef ? REF : ALT);
             }
         }
     }
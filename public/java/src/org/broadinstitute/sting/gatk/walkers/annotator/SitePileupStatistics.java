@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2012, The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.broadinstitute.sting.gatk.walkers.annotator;
+
+import org.broadinstitute.sting.gatk.contexts.AlignmentContext;
+import org.broadinstitute.sting.utils.pileup.PileupStatistics;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The PileupStatistics of each sample at a site, worked out the first time any annotation asks for them and then
+ * shared by all the annotations of the site.
+ */
+public class SitePileupStatistics {
+    private final Map<String, AlignmentContext> stratifiedContexts;
+    private final Map<String, PileupStatistics> statistics = new HashMap<String, PileupStatistics>();
+
+    public SitePileupStatistics(final Map<String, AlignmentContext> stratifiedContexts) {
+        this.stratifiedContexts = stratifiedContexts;
+    }
+
+    /**
+     * @param sample the sample
+     * @return the statistics of the sample's pileup, its extended event pileup if it has one, or null if the sample
+     *         has no context at the site
+     */
+    public PileupStatistics getStatistics(final String sample) {
+        PileupStatistics sampleStatistics = statistics.get(sample);
+        if (sampleStatistics == null) {
+            final AlignmentContext context = stratifiedContexts.get(sample);
+            if (context == null)
+                return null;
+            sampleStatistics = new PileupStatistics(context.hasExtendedEventPileup() ? context.getExtendedEventPileup() : context.getBasePileup());
+            statistics.put(sample, sampleStatistics);
+        }
+        return sampleStatistics;
+    }
+}
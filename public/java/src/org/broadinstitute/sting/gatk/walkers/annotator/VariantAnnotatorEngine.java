@@ -33,6 +33,7 @@ import org.broadinstitute.sting.gatk.refdata.RefMetaDataTracker;
 import org.broadinstitute.sting.gatk.walkers.annotator.interfaces.*;
 import org.broadinstitute.sting.utils.codecs.vcf.*;
 import org.broadinstitute.sting.utils.exceptions.UserException;
+import org.broadinstitute.sting.utils.instrumentation.HotPathMetrics;
 import org.broadinstitute.sting.utils.variantcontext.Genotype;
 import org.broadinstitute.sting.utils.variantcontext.GenotypesContext;
 import org.broadinstitute.sting.utils.variantcontext.VariantContext;
@@ -170,26 +171,34 @@ public class VariantAnnotatorEngine {
     }
 
     public VariantContext annotateContext(RefMetaDataTracker tracker, ReferenceContext ref, Map<String, AlignmentContext> stratifiedContexts, VariantContext vc) {
-        Map<String, Object> infoAnnotations = new LinkedHashMap<String, Object>(vc.getAttributes());
+        HotPathMetrics.begin(HotPathMetrics.Stage.ANNOTATION);
+        try {
+            Map<String, Object> infoAnnotations = new LinkedHashMap<String, Object>(vc.getAttributes());
 
-        // annotate db occurrences
-        vc = annotateDBs(tracker, ref, vc, infoAnnotations);
+            // annotate db occurrences
+            vc = annotateDBs(tracker, ref, vc, infoAnnotations);
 
-        // annotate expressions where available
-        annotateExpressions(tracker, ref, infoAnnotations);
+            // annotate expressions where available
+            annotateExpressions(tracker, ref, infoAnnotations);
 
-        // go through all the requested info annotationTypes
-        for ( InfoFieldAnnotation annotationType : requestedInfoAnnotations ) {
-            Map<String, Object> annotationsFromCurrentType = annotationType.annotate(tracker, walker, ref, stratifiedContexts, vc);
-            if ( annotationsFromCurrentType != null )
-                infoAnnotations.putAll(annotationsFromCurrentType);
-        }
+            // the annotations all read the same pileups, so read each one just once for all of them
+            final SitePileupStatistics statistics = new SitePileupStatistics(stratifiedContexts);
+
+            // go through all the requested info annotationTypes
+            for ( InfoFieldAnnotation annotationType : requestedInfoAnnotations ) {
+                Map<String, Object> annotationsFromCurrentType = annotationType.annotate(tracker, walker, ref, stratifiedContexts, vc, statistics);
+                if ( annotationsFromCurrentType != null )
+                    infoAnnotations.putAll(annotationsFromCurrentType);
+            }
 
-        // generate a new annotated VC
-        VariantContextBuilder builder = new VariantContextBuilder(vc).attributes(infoAnnotations);
+            // generate a new annotated VC
+            VariantContextBuilder builder = new VariantContextBuilder(vc).attributes(infoAnnotations);
 
-        // annotate genotypes, creating another new VC in the process
-        return builder.genotypes(annotateGenotypes(tracker, ref, stratifiedContexts, vc)).make();
+            // annotate genotypes, creating another new VC in the process
+            return builder.genotypes(annotateGenotypes(tracker, ref, stratifiedContexts, vc, statistics)).make();
+        } finally {
+            HotPathMetrics.end(HotPathMetrics.Stage.ANNOTATION, 1);
+        }
     }
 
     private VariantContext annotateDBs(RefMetaDataTracker tracker, ReferenceContext ref, VariantContext vc, Map<String, Object> infoAnnotations) {
@@ -241,7 +250,7 @@ public class VariantAnnotatorEngine {
         }
     }
 
-    private GenotypesContext annotateGenotypes(RefMetaDataTracker tracker, ReferenceContext ref, Map<String, AlignmentContext> stratifiedContexts, VariantContext vc) {
+    private GenotypesContext annotateGenotypes(RefMetaDataTracker tracker, ReferenceContext ref, Map<String, AlignmentContext> stratifiedContexts, VariantContext vc, SitePileupStatistics statistics) {
         if ( requestedGenotypeAnnotations.size() == 0 )
             return vc.getGenotypes();
 
@@ -255,7 +264,7 @@ public class VariantAnnotatorEngine {
 
             Map<String, Object> genotypeAnnotations = new HashMap<String, Object>(genotype.getAttributes());
             for ( GenotypeAnnotation annotation : requestedGenotypeAnnotations ) {
-                Map<String, Object> result = annotation.annotate(tracker, walker, ref, context, vc, genotype);
+                Map<String, Object> result = annotation.annotate(tracker, walker, ref, context, vc, genotype, statistics.getStatistics(genotype.getSampleName()));
                 if ( result != null )
                     genotypeAnnotations.putAll(result);
             }
@@ -4,6 +4,7 @@ import org.broadinstitute.sting.gatk.contexts.AlignmentContext;
 import org.broadinstitute.sting.gatk.contexts.ReferenceContext;
 import org.broadinstitute.sting.gatk.refdata.RefMetaDataTracker;
 import org.broadinstitute.sting.utils.codecs.vcf.VCFFormatHeaderLine;
+import org.broadinstitute.sting.utils.pileup.PileupStatistics;
 import org.broadinstitute.sting.utils.variantcontext.Genotype;
 import org.broadinstitute.sting.utils.variantcontext.VariantContext;
 
@@ -16,6 +17,13 @@ public abstract class GenotypeAnnotation extends VariantAnnotatorAnnotation {
     public abstract Map<String, Object> annotate(RefMetaDataTracker tracker, AnnotatorCompatibleWalker walker,
                                                  ReferenceContext ref, AlignmentContext stratifiedContext, VariantContext vc, Genotype g);
 
+    // as above, for annotations which can read the pileup from the statistics shared by all annotations of the site
+    public Map<String, Object> annotate(RefMetaDataTracker tracker, AnnotatorCompatibleWalker walker,
+                                        ReferenceContext ref, AlignmentContext stratifiedContext, VariantContext vc, Genotype g,
+                                        PileupStatistics statistics) {
+        return annotate(tracker, walker, ref, stratifiedContext, vc, g);
+    }
+
     // return the descriptions used for the VCF FORMAT meta field
     public abstract List<VCFFormatHeaderLine> getDescriptions();
 
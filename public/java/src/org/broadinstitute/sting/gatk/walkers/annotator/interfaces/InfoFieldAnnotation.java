@@ -3,6 +3,7 @@ package org.broadinstitute.sting.gatk.walkers.annotator.interfaces;
 import org.broadinstitute.sting.gatk.contexts.AlignmentContext;
 import org.broadinstitute.sting.gatk.contexts.ReferenceContext;
 import org.broadinstitute.sting.gatk.refdata.RefMetaDataTracker;
+import org.broadinstitute.sting.gatk.walkers.annotator.SitePileupStatistics;
 import org.broadinstitute.sting.utils.codecs.vcf.VCFInfoHeaderLine;
 import org.broadinstitute.sting.utils.variantcontext.VariantContext;
 
@@ -14,6 +15,13 @@ public abstract class InfoFieldAnnotation extends VariantAnnotatorAnnotation {
     public abstract Map<String, Object> annotate(RefMetaDataTracker tracker, AnnotatorCompatibleWalker walker,
                                                  ReferenceContext ref, Map<String, AlignmentContext> stratifiedContexts, VariantContext vc);
 
+    // as above, for annotations which can read the pileups from the statistics shared by all annotations of the site
+    public Map<String, Object> annotate(RefMetaDataTracker tracker, AnnotatorCompatibleWalker walker,
+                                        ReferenceContext ref, Map<String, AlignmentContext> stratifiedContexts, VariantContext vc,
+                                        SitePileupStatistics statistics) {
+        return annotate(tracker, walker, ref, stratifiedContexts, vc);
+    }
+
     // return the descriptions used for the VCF INFO meta field
     public abstract List<VCFInfoHeaderLine> getDescriptions();
 }
\ No newline at end of file
@@ -283,13 +283,9 @@ public class CallableLociWalker extends LocusWalker<CallableLociWalker.CallableB
 
     @Override
     public CallableBaseState map(RefMetaDataTracker tracker, ReferenceContext ref, AlignmentContext context) {
-        CalledState state;
-
-        if ( BaseUtils.isNBase(ref.getBase()) ) {
-            state = CalledState.REF_N;
-        } else {
-            // count up the depths of all and QC+ bases
-            int rawDepth = 0, QCDepth = 0, lowMAPQDepth = 0;
+        // count up the depths of all and QC+ bases
+        int rawDepth = 0, QCDepth = 0, lowMAPQDepth = 0;
+        if ( ! BaseUtils.isNBase(ref.getBase()) ) {
             for (PileupElement e : context.getBasePileup()) {
                 rawDepth++;
 
@@ -300,22 +296,32 @@ public class CallableLociWalker extends LocusWalker<CallableLociWalker.CallableB
                     QCDepth++;
                 }
             }
-
-            //System.out.printf("%s rawdepth = %d QCDepth = %d lowMAPQ = %d%n", context.getLocation(), rawDepth, QCDepth, lowMAPQDepth);
-            if ( rawDepth == 0 ) {
-                state = CalledState.NO_COVERAGE;
-            } else if ( rawDepth >= minDepthLowMAPQ && MathUtils.ratio( lowMAPQDepth, rawDepth ) >= maxLowMAPQFraction ) {
-                state = CalledState.POOR_MAPPING_QUALITY;
-            } else if ( QCDepth < minDepth ) {
-                state = CalledState.LOW_COVERAGE;
-            } else if ( rawDepth >= maxDepth && maxDepth != -1 ) {
-                state = CalledState.EXCESSIVE_COVERAGE;
-            } else {
-                state = CalledState.CALLABLE;
-            }
         }
 
-        return new CallableBaseState(getToolkit().getGenomeLocParser(),context.getLocation(), state);
+        return new CallableBaseState(getToolkit().getGenomeLocParser(),context.getLocation(), getState(ref.getBase(), rawDepth, QCDepth, lowMAPQDepth));
+    }
+
+    /**
+     * @param refBase      the reference base at the locus
+     * @param rawDepth     the number of bases and deletions at the locus
+     * @param QCDepth      the number of them that pass the mapping and base quality filters
+     * @param lowMAPQDepth the number of them on reads with MAPQ <= maxLowMAPQ
+     * @return the callable state of the locus
+     */
+    CalledState getState(byte refBase, int rawDepth, int QCDepth, int lowMAPQDepth) {
+        if ( BaseUtils.isNBase(refBase) ) {
+            return CalledState.REF_N;
+        } else if ( rawDepth == 0 ) {
+            return CalledState.NO_COVERAGE;
+        } else if ( rawDepth >= minDepthLowMAPQ && MathUtils.ratio( lowMAPQDepth, rawDepth ) >= maxLowMAPQFraction ) {
+            return CalledState.POOR_MAPPING_QUALITY;
+        } else if ( QCDepth < minDepth ) {
+            return CalledState.LOW_COVERAGE;
+        } else if ( rawDepth >= maxDepth && maxDepth != -1 ) {
+            return CalledState.EXCESSIVE_COVERAGE;
+        } else {
+            return CalledState.CALLABLE;
+        }
     }
 
     @Override
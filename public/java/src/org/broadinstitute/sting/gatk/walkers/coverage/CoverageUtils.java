@@ -126,7 +126,7 @@ public class CoverageUtils {
         }
     }
 
-    private static SAMReadGroupRecord getReadGroup(SAMRecord r) {
+    static SAMReadGroupRecord getReadGroup(SAMRecord r) {
         SAMReadGroupRecord rg = r.getReadGroup();
         if ( rg == null ) {
             String msg = "Read "+r.getReadName()+" lacks read group information; Please associate all reads with read groups";
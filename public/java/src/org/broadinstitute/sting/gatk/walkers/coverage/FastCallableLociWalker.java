@@ -0,0 +1,122 @@
+package org.broadinstitute.sting.gatk.walkers.coverage;
+
+import org.broadinstitute.sting.commandline.Advanced;
+import org.broadinstitute.sting.commandline.Argument;
+import org.broadinstitute.sting.commandline.Output;
+import org.broadinstitute.sting.utils.GenomeLocParser;
+import org.broadinstitute.sting.utils.sam.GATKSAMRecord;
+
+import java.io.File;
+import java.io.PrintStream;
+
+/**
+ * CallableLoci, computed from the reads in a single pass over them rather than from a pileup at each locus
+ *
+ * <p>
+ * Produces the same BED (or per base) and summary outputs as CallableLoci, from the same arguments, but keeps the raw,
+ * QC+ and low MAPQ depths of each locus by adding each read to them once, block by block, rather than by building a
+ * pileup at every locus.  Unlike CallableLoci, the reads aren't downsampled, so loci deeper than the downsampling
+ * coverage may be called EXCESSIVE_COVERAGE or POOR_MAPPING_QUALITY where CallableLoci would not.
+ * </p>
+ *
+ * <h2>Examples</h2>
+ * <pre>
+ *     -T FastCallableLoci \
+ *     -I my.bam \
+ *     -summary my.summary \
+ *     -o my.bed
+ * </pre>
+ */
+public class FastCallableLociWalker extends ReadCoverageWalker {
+    private final static int RAW_TRACK = 0;
+    private final static int QC_TRACK = 1;
+    private final static int LOW_MAPQ_TRACK = 2;
+
+    private final static int[] RAW_TRACKS = { RAW_TRACK };
+    private final static int[] QC_TRACKS = { QC_TRACK };
+    private final static int[] LOW_MAPQ_TRACKS = { LOW_MAPQ_TRACK };
+
+    @Output
+    PrintStream out;
+
+    @Output(fullName = "summary", shortName = "summary", doc = "Name of file for output summary", required = true)
+    File summaryFile;
+
+    @Argument(fullName = "maxLowMAPQ", shortName = "mlmq", doc = "Maximum value for MAPQ to be considered a problematic mapped read.", required = false)
+    byte maxLowMAPQ = 1;
+
+    @Argument(fullName = "minMappingQuality", shortName = "mmq", doc = "Minimum mapping quality of reads to count towards depth.", required = false)
+    byte minMappingQuality = 10;
+
+    @Argument(fullName = "minBaseQuality", shortName = "mbq", doc = "Minimum quality of bases to count towards depth.", required = false)
+    byte minBaseQuality = 20;
+
+    @Advanced
+    @Argument(fullName = "minDepth", shortName = "minDepth", doc = "Minimum QC+ read depth before a locus is considered callable", required = false)
+    int minDepth = 4;
+
+    @Argument(fullName = "maxDepth", shortName = "maxDepth", doc = "Maximum read depth before a locus is considered poorly mapped", required = false)
+    int maxDepth = -1;
+
+    @Advanced
+    @Argument(fullName = "minDepthForLowMAPQ", shortName = "mdflmq", doc = "Minimum read depth before a locus is considered a potential candidate for poorly mapped", required = false)
+    int minDepthLowMAPQ = 10;
+
+    @Argument(fullName = "maxFractionOfReadsWithLowMAPQ", shortName = "frlmq", doc = "If the fraction of reads at a base with low mapping quality exceeds this value, the site may be poorly mapped", required = false)
+    double maxLowMAPQFraction = 0.1;
+
+    @Advanced
+    @Argument(fullName = "format", shortName = "format", doc = "Output format", required = false)
+    CallableLociWalker.OutputFormat outputFormat;
+
+    // CallableLoci itself calls the state of each locus and writes all of the output
+    private final CallableLociWalker caller = new CallableLociWalker();
+    private CallableLociWalker.Integrator integrator;
+    private GenomeLocParser genomeLocParser;
+
+    @Override
+    public void initialize() {
+        caller.setToolkit(getToolkit());
+        caller.out = out;
+        caller.summaryFile = summaryFile;
+        caller.maxLowMAPQ = maxLowMAPQ;
+        caller.minMappingQuality = minMappingQuality;
+        caller.minBaseQuality = minBaseQuality;
+        caller.minDepth = minDepth;
+        caller.maxDepth = maxDepth;
+        caller.minDepthLowMAPQ = minDepthLowMAPQ;
+        caller.maxLowMAPQFraction = maxLowMAPQFraction;
+        caller.outputFormat = outputFormat;
+        caller.initialize();
+
+        integrator = caller.reduceInit();
+        genomeLocParser = getToolkit().getGenomeLocParser();
+        super.initialize();
+    }
+
+    @Override
+    protected int getNTracks() {
+        return 3;
+    }
+
+    @Override
+    protected void addRead(ReadCoverageAccumulator coverage, GATKSAMRecord read) {
+        // CallableLoci counts deletions in all of its depths, whatever their quality
+        coverage.addRead(read, RAW_TRACKS, 0, Byte.MAX_VALUE, true);
+        if ( read.getMappingQuality() >= minMappingQuality )
+            coverage.addRead(read, QC_TRACKS, minBaseQuality, Byte.MAX_VALUE, true);
+        if ( read.getMappingQuality() <= maxLowMAPQ )
+            coverage.addRead(read, LOW_MAPQ_TRACKS, 0, Byte.MAX_VALUE, true);
+    }
+
+    @Override
+    protected void processLocus(String contig, int position, int[] depths) {
+        final CallableLociWalker.CalledState state = caller.getState(getReferenceBase(position), depths[RAW_TRACK], depths[QC_TRACK], depths[LOW_MAPQ_TRACK]);
+        integrator = caller.reduce(new CallableLociWalker.CallableBaseState(genomeLocParser, genomeLocParser.createGenomeLoc(contig, position), state), integrator);
+    }
+
+    @Override
+    protected void onCoverageDone() {
+        caller.onTraversalDone(integrator);
+    }
+}
@@ -0,0 +1,222 @@
+package org.broadinstitute.sting.gatk.walkers.coverage;
+
+import net.sf.samtools.SAMReadGroupRecord;
+import org.broadinstitute.sting.commandline.Advanced;
+import org.broadinstitute.sting.commandline.Argument;
+import org.broadinstitute.sting.commandline.Output;
+import org.broadinstitute.sting.gatk.walkers.Multiplex;
+import org.broadinstitute.sting.utils.BaseUtils;
+import org.broadinstitute.sting.utils.GenomeLoc;
+import org.broadinstitute.sting.utils.collections.Pair;
+import org.broadinstitute.sting.utils.sam.GATKSAMRecord;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.*;
+
+/**
+ * DepthOfCoverage, computed from the reads in a single pass over them rather than from a pileup at each locus
+ *
+ * <p>
+ * Produces the same per-locus, per-interval, per-gene and summary outputs as DepthOfCoverage, from the same arguments,
+ * but adds each read to the depths of the loci it covers once, block by block, rather than building a pileup at every
+ * locus.  Only the depth of each sample (or read group, library, etc) is known this way, so the base counts of
+ * DepthOfCoverage's -baseCounts aren't available.
+ * </p>
+ *
+ * <h2>Examples</h2>
+ * <pre>
+ * java -Xmx2g -jar GenomeAnalysisTK.jar \
+ *   -R ref.fasta \
+ *   -T FastDepthOfCoverage \
+ *   -o file_name_base \
+ *   -I input_bams.list
+ *   [-geneList refSeq.sorted.txt] \
+ *   [-pt readgroup] \
+ *   [-ct 4 -ct 6 -ct 10] \
+ *   [-L my_capture_genes.interval_list]
+ * </pre>
+ */
+public class FastDepthOfCoverageWalker extends ReadCoverageWalker {
+    @Output
+    @Multiplex(value=DoCOutputMultiplexer.class,arguments={"partitionTypes","refSeqGeneList","omitDepthOutput","omitIntervals","omitSampleSummary","omitLocusTable"})
+    Map<DoCOutputType,PrintStream> out;
+
+    @Argument(fullName = "minMappingQuality", shortName = "mmq", doc = "Minimum mapping quality of reads to count towards depth. Defaults to -1.", required = false)
+    int minMappingQuality = -1;
+    @Argument(fullName = "maxMappingQuality", doc = "Maximum mapping quality of reads to count towards depth. Defaults to 2^31-1 (Integer.MAX_VALUE).", required = false)
+    int maxMappingQuality = Integer.MAX_VALUE;
+
+    @Argument(fullName = "minBaseQuality", shortName = "mbq", doc = "Minimum quality of bases to count towards depth. Defaults to -1.", required = false)
+    byte minBaseQuality = -1;
+    @Argument(fullName = "maxBaseQuality", doc = "Maximum quality of bases to count towards depth. Defaults to 127 (Byte.MAX_VALUE).", required = false)
+    byte maxBaseQuality = Byte.MAX_VALUE;
+
+    @Argument(fullName = "omitLocusTable", shortName = "omitLocusTable", doc = "Will not calculate the per-sample per-depth counts of loci, which should result in speedup", required = false)
+    boolean omitLocusTable = false;
+
+    @Argument(fullName = "omitIntervalStatistics", shortName = "omitIntervals", doc = "Will omit the per-interval statistics section, which should result in speedup", required = false)
+    boolean omitIntervals = false;
+
+    @Argument(fullName = "omitDepthOutputAtEachBase", shortName = "omitBaseOutput", doc = "Will omit the output of the depth of coverage at each base, which should result in speedup", required = false)
+    boolean omitDepthOutput = false;
+
+    @Argument(fullName = "calculateCoverageOverGenes", shortName = "geneList", doc = "Calculate the coverage statistics over this list of genes. Currently accepts RefSeq.", required = false)
+    File refSeqGeneList = null;
+
+    @Argument(fullName = "outputFormat", doc = "the format of the output file (e.g. csv, table, rtable); defaults to r-readable table", required = false)
+    String outputFormat = "rtable";
+
+    @Advanced
+    @Argument(fullName = "includeRefNSites", doc = "If provided, sites with reference N bases but with coverage from neighboring reads will be included in DoC calculations.", required = false)
+    boolean includeRefNBases = false;
+
+    @Advanced
+    @Argument(fullName = "start", doc = "Starting (left endpoint) for granular binning", required = false)
+    int start = 1;
+    @Advanced
+    @Argument(fullName = "stop", doc = "Ending (right endpoint) for granular binning", required = false)
+    int stop = 500;
+    @Advanced
+    @Argument(fullName = "nBins", doc = "Number of bins to use for granular binning", required = false)
+    int nBins = 499;
+
+    @Argument(fullName = "omitPerSampleStats", shortName = "omitSampleSummary", doc = "Omits the summary files per-sample. These statistics are still calculated, so this argument will not improve runtime.", required = false)
+    boolean omitSampleSummary = false;
+
+    @Argument(fullName = "partitionType", shortName = "pt", doc = "Partition type for depth of coverage. Defaults to sample. Can be any combination of sample, readgroup, library.", required = false)
+    Set<DoCOutputType.Partition> partitionTypes = EnumSet.of(DoCOutputType.Partition.sample);
+
+    @Advanced
+    @Argument(fullName = "includeDeletions", shortName = "dels", doc = "Include information on deletions", required = false)
+    boolean includeDeletions = false;
+
+    @Advanced
+    @Argument(fullName = "ignoreDeletionSites", doc = "Ignore sites consisting only of deletions", required = false)
+    boolean ignoreDeletionSites = false;
+
+    @Advanced
+    @Argument(fullName = "summaryCoverageThreshold", shortName = "ct", doc = "for summary file outputs, report the % of bases coverd to >= this number. Defaults to 15; can take multiple arguments.", required = false)
+    int[] coverageThresholds = {15};
+
+    // DepthOfCoverage itself tabulates the depths and writes all of the output
+    private final DepthOfCoverageWalker report = new DepthOfCoverageWalker();
+
+    // the coverage track of each partition of each read group
+    private final Map<SAMReadGroupRecord, int[]> tracksByReadGroup = new HashMap<SAMReadGroupRecord, int[]>();
+
+    // the identifier of each track, and the counts by identifier by partition that are reported at each locus
+    private final List<Pair<DoCOutputType.Partition, String>> trackIDs = new ArrayList<Pair<DoCOutputType.Partition, String>>();
+    private final Map<DoCOutputType.Partition, Map<String, int[]>> countsByIDByType = new HashMap<DoCOutputType.Partition, Map<String, int[]>>();
+    private int[][] countsByTrack;
+
+    // the tabulated depths of the current interval, or of everything if they aren't reported by interval
+    private CoveragePartitioner partitioner = null;
+    private List<Pair<GenomeLoc, CoveragePartitioner>> partitionersByInterval = null;
+
+    @Override
+    public void initialize() {
+        report.setToolkit(getToolkit());
+        report.out = out;
+        report.minMappingQuality = minMappingQuality;
+        report.maxMappingQuality = maxMappingQuality;
+        report.minBaseQuality = minBaseQuality;
+        report.maxBaseQuality = maxBaseQuality;
+        report.omitLocusTable = omitLocusTable;
+        report.omitIntervals = omitIntervals;
+        report.omitDepthOutput = omitDepthOutput;
+        report.refSeqGeneList = refSeqGeneList;
+        report.outputFormat = outputFormat;
+        report.includeRefNBases = includeRefNBases;
+        report.start = start;
+        report.stop = stop;
+        report.nBins = nBins;
+        report.omitSampleSummary = omitSampleSummary;
+        report.partitionTypes = partitionTypes;
+        report.includeDeletions = includeDeletions;
+        report.ignoreDeletionSites = ignoreDeletionSites;
+        report.coverageThresholds = coverageThresholds;
+        report.initialize();
+
+        // one coverage track for each identifier of each partition
+        for ( DoCOutputType.Partition type : partitionTypes ) {
+            countsByIDByType.put(type, new HashMap<String, int[]>());
+            for ( SAMReadGroupRecord readGroup : getToolkit().getSAMFileHeader().getReadGroups() ) {
+                final String id = CoverageUtils.getTypeID(readGroup, type);
+                if ( ! countsByIDByType.get(type).containsKey(id) ) {
+                    countsByIDByType.get(type).put(id, new int[6]);
+                    trackIDs.add(new Pair<DoCOutputType.Partition, String>(type, id));
+                }
+            }
+        }
+
+        countsByTrack = new int[trackIDs.size()][];
+        for ( int track = 0; track < trackIDs.size(); track++ )
+            countsByTrack[track] = countsByIDByType.get(trackIDs.get(track).first).get(trackIDs.get(track).second);
+
+        if ( report.isReduceByInterval() && getToolkit().getIntervals() != null )
+            partitionersByInterval = new ArrayList<Pair<GenomeLoc, CoveragePartitioner>>();
+        else
+            partitioner = report.reduceInit();
+
+        super.initialize();
+    }
+
+    @Override
+    protected int getNTracks() {
+        return trackIDs.size();
+    }
+
+    @Override
+    protected void addRead(ReadCoverageAccumulator coverage, GATKSAMRecord read) {
+        if ( read.getMappingQuality() < minMappingQuality || read.getMappingQuality() > maxMappingQuality )
+            return;
+
+        final SAMReadGroupRecord readGroup = CoverageUtils.getReadGroup(read);
+        int[] tracks = tracksByReadGroup.get(readGroup);
+        if ( tracks == null ) {
+            tracks = new int[partitionTypes.size()];
+            int i = 0;
+            for ( DoCOutputType.Partition type : partitionTypes )
+                tracks[i++] = trackIDs.indexOf(new Pair<DoCOutputType.Partition, String>(type, CoverageUtils.getTypeID(readGroup, type)));
+            tracksByReadGroup.put(readGroup, tracks);
+        }
+
+        // deletions are only counted when DepthOfCoverage would put them in its pileups
+        coverage.addRead(read, tracks, minBaseQuality, maxBaseQuality, report.includeReadsWithDeletionAtLoci());
+    }
+
+    @Override
+    protected void startInterval(GenomeLoc interval) {
+        if ( partitionersByInterval != null )
+            partitioner = report.reduceInit();
+    }
+
+    @Override
+    protected void endInterval(GenomeLoc interval) {
+        if ( partitionersByInterval != null )
+            partitionersByInterval.add(new Pair<GenomeLoc, CoveragePartitioner>(interval, partitioner));
+    }
+
+    @Override
+    protected void processLocus(String contig, int position, int[] depths) {
+        if ( ! includeRefNBases && ! BaseUtils.isRegularBase(getReferenceBase(position)) )
+            return;
+
+        if ( ! omitDepthOutput )
+            report.getCorrectStream(null, DoCOutputType.Aggregation.locus, DoCOutputType.FileType.summary).printf("%s:%d", contig, position);
+
+        // the depths are reported as counts of A, which are all that DepthOfCoverage adds up
+        for ( int track = 0; track < depths.length; track++ )
+            countsByTrack[track][BaseUtils.simpleBaseToBaseIndex((byte)'A')] = depths[track];
+        partitioner = report.reduce(countsByIDByType, partitioner);
+    }
+
+    @Override
+    protected void onCoverageDone() {
+        if ( partitionersByInterval != null )
+            report.onTraversalDone(partitionersByInterval);
+        else
+            report.onTraversalDone(partitioner);
+    }
+}
@@ -0,0 +1,214 @@
+package org.broadinstitute.sting.gatk.walkers.coverage;
+
+import net.sf.samtools.CigarElement;
+import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
+import org.broadinstitute.sting.utils.sam.GATKSAMRecord;
+import org.broadinstitute.sting.utils.sam.ReadUtils;
+
+import java.util.Arrays;
+
+/**
+ * Depth of coverage computed straight from the reads of a contig, rather than from a pileup at each locus
+ *
+ * <p>
+ * Each read adds one to the depth of its coverage tracks at the start of each run of its aligned bases that pass the
+ * base quality filter, and takes one away just past the end of it, in a difference array over the loci that reads
+ * may still cover.  A read therefore costs one update per CIGAR block (or per run of good bases within a block)
+ * rather than one per base.  The depths of the loci are then read out in order, with next(), once no read that
+ * is still to come can cover them -- that is, when reads are added in coordinate order, once a read starting after
+ * them has been added.
+ * </p>
+ *
+ * <p>
+ * Bases are counted just as LocusIteratorByState puts them in pileups: deletions are counted only if asked for,
+ * without any base quality filter, reference skips aren't counted at all, and neither are bases inside the adaptor.
+ * </p>
+ */
+public class ReadCoverageAccumulator {
+    private final static int INITIAL_CAPACITY = 1024;
+
+    private final int nTracks;
+
+    /** the depths of each track at the last locus read out */
+    private final int[] depths;
+
+    /** diffs[track][offset + i] is the change in the depth of track from position + i - 1 to position + i */
+    private int[][] diffs;
+    private int offset = 0;
+
+    /** the next locus to be read out */
+    private int position;
+
+    /** one past the last locus any read added so far covers, where the last of the differences lies */
+    private int end;
+
+    /**
+     * @param nTracks  the number of coverage tracks to keep
+     * @param position the first locus of the contig to be read out
+     */
+    public ReadCoverageAccumulator(final int nTracks, final int position) {
+        this.nTracks = nTracks;
+        depths = new int[nTracks];
+        diffs = new int[nTracks][INITIAL_CAPACITY];
+        reset(position);
+    }
+
+    /**
+     * Forgets all of the reads added so far, to start again from position, eg. at the start of a new contig
+     *
+     * @param position the first locus to be read out
+     */
+    public void reset(final int position) {
+        for ( int track = 0; track < nTracks; track++ ) {
+            Arrays.fill(diffs[track], 0);
+            depths[track] = 0;
+        }
+        offset = 0;
+        this.position = end = position;
+    }
+
+    /**
+     * @return the next locus to be read out
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    /**
+     * Reads out the depths of each track at getPosition(), and moves on to the next locus
+     *
+     * @return the depths of each track, in an array that is reused by the next call
+     */
+    public int[] next() {
+        if ( position <= end ) {
+            for ( int track = 0; track < nTracks; track++ ) {
+                depths[track] += diffs[track][offset];
+                diffs[track][offset] = 0;
+            }
+            offset++;
+        } else {
+            // all of the differences have been read out, and no read covers this locus or any after it
+            offset = 0;
+        }
+        position++;
+        return depths;
+    }
+
+    /**
+     * Moves on to the locus position without reading out the depths of the loci before it
+     *
+     * @param position the next locus to be read out
+     */
+    public void skipTo(final int position) {
+        if ( position > end ) {
+            while ( this.position <= end )
+                next();
+            this.position = position;
+            offset = 0;
+        } else {
+            while ( this.position < position )
+                next();
+        }
+    }
+
+    /**
+     * Adds the coverage of a read to some of the tracks
+     *
+     * @param read             the read, which mustn't start before getPosition()
+     * @param tracks           the tracks to add its coverage to
+     * @param minBaseQuality   the lowest base quality to count
+     * @param maxBaseQuality   the highest base quality to count
+     * @param includeDeletions should deletions in the read be counted?
+     */
+    public void addRead(final GATKSAMRecord read, final int[] tracks, final int minBaseQuality, final int maxBaseQuality, final boolean includeDeletions) {
+        if ( read.getAlignmentStart() < position )
+            throw new ReviewedStingException("BUG: read " + read.getReadName() + " starts at " + read.getAlignmentStart() + ", before the coverage already read out up to " + position);
+
+        final byte[] quals = read.getBaseQualities();
+        final boolean filterQuals = minBaseQuality > 0 || maxBaseQuality < Byte.MAX_VALUE;
+        int readOffset = 0;
+        int refPosition = read.getAlignmentStart();
+
+        for ( final CigarElement element : read.getCigar().getCigarElements() ) {
+            final int length = element.getLength();
+            switch ( element.getOperator() ) {
+                case M:
+                case EQ:
+                case X:
+                    // the adaptor lies to one side of a boundary, so it's in the block only if one of its ends is
+                    final boolean inAdaptor = ReadUtils.isBaseInsideAdaptor(read, refPosition) || ReadUtils.isBaseInsideAdaptor(read, refPosition + length - 1);
+                    if ( ! filterQuals && ! inAdaptor ) {
+                        // the whole block counts
+                        addRun(tracks, refPosition, refPosition + length);
+                    } else {
+                        int runStart = -1;
+                        for ( int i = 0; i < length; i++ ) {
+                            final byte qual = quals[readOffset + i];
+                            final boolean counts = qual >= minBaseQuality && qual <= maxBaseQuality && ! (inAdaptor && ReadUtils.isBaseInsideAdaptor(read, refPosition + i));
+                            if ( counts && runStart == -1 ) {
+                                runStart = refPosition + i;
+                            } else if ( ! counts && runStart != -1 ) {
+                                addRun(tracks, runStart, refPosition + i);
+                                runStart = -1;
+                            }
+                        }
+                        if ( runStart != -1 )
+                            addRun(tracks, runStart, refPosition + length);
+                    }
+                    readOffset += length;
+                    refPosition += length;
+                    break;
+                case D:
+                    if ( includeDeletions )
+                        addRun(tracks, refPosition, refPosition + length);
+                    refPosition += length;
+                    break;
+                case N:
+                    refPosition += length;
+                    break;
+                case I:
+                case S:
+                    readOffset += length;
+                    break;
+                default: // hard clips and pads don't consume anything
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Adds one to the depth of each of tracks over [start, stop)
+     */
+    private void addRun(final int[] tracks, final int start, final int stop) {
+        ensureCapacity(stop);
+        for ( final int track : tracks ) {
+            diffs[track][offset + start - position]++;
+            diffs[track][offset + stop - position]--;
+        }
+        end = Math.max(end, stop);
+    }
+
+    /**
+     * Makes sure the difference arrays reach the locus stop
+     */
+    private void ensureCapacity(final int stop) {
+        final int needed = stop - position + 1;
+        if ( offset + needed <= diffs[0].length )
+            return;
+
+        // move the differences not yet read out to the start of the arrays, growing them if that isn't enough
+        final int pending = end >= position ? end - position + 1 : 0;
+        final int length = needed <= diffs[0].length ? diffs[0].length : Integer.highestOneBit(needed) << 1;
+        for ( int track = 0; track < nTracks; track++ ) {
+            if ( length == diffs[track].length ) {
+                System.arraycopy(diffs[track], offset, diffs[track], 0, pending);
+                Arrays.fill(diffs[track], pending, length, 0);
+            } else {
+                final int[] newDiffs = new int[length];
+                System.arraycopy(diffs[track], offset, newDiffs, 0, pending);
+                diffs[track] = newDiffs;
+            }
+        }
+        offset = 0;
+    }
+}
@@ -0,0 +1,196 @@
+package org.broadinstitute.sting.gatk.walkers.coverage;
+
+import net.sf.picard.reference.IndexedFastaSequenceFile;
+import net.sf.samtools.SAMSequenceRecord;
+import org.broadinstitute.sting.gatk.contexts.ReferenceContext;
+import org.broadinstitute.sting.gatk.filters.DuplicateReadFilter;
+import org.broadinstitute.sting.gatk.filters.FailsVendorQualityCheckFilter;
+import org.broadinstitute.sting.gatk.filters.NotPrimaryAlignmentFilter;
+import org.broadinstitute.sting.gatk.filters.UnmappedReadFilter;
+import org.broadinstitute.sting.gatk.refdata.ReadMetaDataTracker;
+import org.broadinstitute.sting.gatk.walkers.ReadFilters;
+import org.broadinstitute.sting.gatk.walkers.ReadWalker;
+import org.broadinstitute.sting.utils.GenomeLoc;
+import org.broadinstitute.sting.utils.exceptions.UserException;
+import org.broadinstitute.sting.utils.sam.GATKSAMRecord;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A walker that computes the depth of coverage at every locus of the intervals from the reads, in a single pass over them
+ *
+ * <p>
+ * Locus walkers see the coverage of each locus through a pileup, built from the state of every read over it.  Walkers
+ * that only need the depth at each locus can instead add each read once, as it comes, to a ReadCoverageAccumulator,
+ * and read out the depths of the loci behind it.  This walker visits every locus of the intervals (or of the genome,
+ * if there aren't any) in order, covered or not, just as a locus walker by reference would, and hands the depths of
+ * each to processLocus().
+ * </p>
+ *
+ * <p>
+ * The reads must be coordinate sorted, and are filtered just as they are for locus walkers.
+ * </p>
+ */
+@ReadFilters({UnmappedReadFilter.class,NotPrimaryAlignmentFilter.class,DuplicateReadFilter.class,FailsVendorQualityCheckFilter.class})
+public abstract class ReadCoverageWalker extends ReadWalker<Integer, Integer> {
+    private final static int REFERENCE_CHUNK_SIZE = 10000;
+
+    private ReadCoverageAccumulator coverage = null;
+    private IndexedFastaSequenceFile reference = null;
+
+    // the intervals still to be visited, and the one being visited now
+    private Iterator<GenomeLoc> intervals = null;
+    private GenomeLoc interval = null;
+
+    // the contig whose loci are being visited
+    private int contigIndex = -1;
+    private String contig = null;
+
+    // the bases of the current contig from referenceStart on
+    private byte[] referenceBases = null;
+    private int referenceStart = 0;
+
+    /**
+     * @return the number of coverage tracks to keep
+     */
+    protected abstract int getNTracks();
+
+    /**
+     * Adds the coverage of a read to the tracks it counts towards
+     *
+     * @param coverage the coverage of the current contig
+     * @param read     the read
+     */
+    protected abstract void addRead(ReadCoverageAccumulator coverage, GATKSAMRecord read);
+
+    /**
+     * Called for each locus of the intervals, in order
+     *
+     * @param contig   the contig of the locus
+     * @param position the position of the locus
+     * @param depths   the depth of each track at the locus
+     */
+    protected abstract void processLocus(String contig, int position, int[] depths);
+
+    /**
+     * Called once all of the loci have been processed
+     */
+    protected abstract void onCoverageDone();
+
+    /**
+     * Called before the first locus of each interval
+     */
+    protected void startInterval(GenomeLoc interval) {}
+
+    /**
+     * Called after the last locus of each interval
+     */
+    protected void endInterval(GenomeLoc interval) {}
+
+    @Override
+    public boolean requiresOrderedReads() { return true; }
+
+    @Override
+    public void initialize() {
+        List<GenomeLoc> locs;
+        if ( getToolkit().getIntervals() != null ) {
+            locs = getToolkit().getIntervals().toList();
+        } else {
+            locs = new ArrayList<GenomeLoc>();
+            for ( SAMSequenceRecord record : getMasterSequenceDictionary().getSequences() )
+                locs.add(getToolkit().getGenomeLocParser().createGenomeLoc(record.getSequenceName(), 1, record.getSequenceLength()));
+        }
+
+        intervals = locs.iterator();
+        reference = getToolkit().getReferenceDataSource().getReference();
+        coverage = new ReadCoverageAccumulator(getNTracks(), 1);
+    }
+
+    @Override
+    public Integer map(ReferenceContext ref, GATKSAMRecord read, ReadMetaDataTracker metaDataTracker) {
+        // every locus before the start of the read has seen all of its reads
+        if ( read.getReferenceIndex() != contigIndex ) {
+            if ( read.getReferenceIndex() < contigIndex )
+                throw new UserException.MalformedBAM(read, "Reads must be coordinate sorted, but read " + read.getReadName() + " comes after reads on a later contig");
+            processLociBefore(read.getReferenceIndex(), 1);
+            contigIndex = read.getReferenceIndex();
+            contig = read.getReferenceName();
+            referenceBases = null;
+            coverage.reset(1);
+        } else if ( read.getAlignmentStart() < coverage.getPosition() ) {
+            throw new UserException.MalformedBAM(read, "Reads must be coordinate sorted, but read " + read.getReadName() + " comes after reads starting later");
+        }
+        processLociBefore(contigIndex, read.getAlignmentStart());
+
+        addRead(coverage, read);
+        return 1;
+    }
+
+    @Override
+    public Integer reduceInit() { return 0; }
+
+    @Override
+    public Integer reduce(Integer value, Integer sum) { return value + sum; }
+
+    @Override
+    public void onTraversalDone(Integer result) {
+        processLociBefore(Integer.MAX_VALUE, 1);
+        onCoverageDone();
+    }
+
+    /**
+     * Processes every locus of the intervals before the given position
+     *
+     * @param stopContigIndex the index of the contig of the position
+     * @param stop            the position on that contig
+     */
+    private void processLociBefore(final int stopContigIndex, final int stop) {
+        while ( true ) {
+            if ( interval == null ) {
+                if ( ! intervals.hasNext() )
+                    return;
+                interval = intervals.next();
+                startInterval(interval);
+            }
+
+            if ( interval.getContigIndex() > stopContigIndex || (interval.getContigIndex() == stopContigIndex && interval.getStart() >= stop) )
+                return;
+
+            if ( interval.getContigIndex() != contigIndex ) {
+                // no read on this contig has been seen, so none of its loci are covered
+                contigIndex = interval.getContigIndex();
+                contig = interval.getContig();
+                referenceBases = null;
+                coverage.reset(1);
+            }
+
+            final int lastLocus = interval.getContigIndex() == stopContigIndex ? Math.min(interval.getStop(), stop - 1) : interval.getStop();
+            coverage.skipTo(Math.max(interval.getStart(), coverage.getPosition()));
+            while ( coverage.getPosition() <= lastLocus ) {
+                final int position = coverage.getPosition();
+                processLocus(contig, position, coverage.next());
+            }
+
+            if ( lastLocus < interval.getStop() )
+                return;
+
+            endInterval(interval);
+            interval = null;
+        }
+    }
+
+    /**
+     * @param position a position on the contig whose loci are being processed
+     * @return the reference base there
+     */
+    protected byte getReferenceBase(final int position) {
+        if ( referenceBases == null || position < referenceStart || position >= referenceStart + referenceBases.length ) {
+            final int contigLength = getMasterSequenceDictionary().getSequence(contig).getSequenceLength();
+            referenceStart = position;
+            referenceBases = reference.getSubsequenceAt(contig, position, Math.min(position + REFERENCE_CHUNK_SIZE - 1, contigLength)).getBases();
+        }
+        return referenceBases[position - referenceStart];
+    }
+}
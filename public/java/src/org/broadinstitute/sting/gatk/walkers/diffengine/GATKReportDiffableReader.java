@@ -72,9 +72,9 @@ public class GATKReportDiffableReader implements DiffableReader {
             columnRoot.add("Displayable", column.isDisplayable());
 
             int n = 1;
-            for ( Object elt : column.values() ) {
+            for ( Object primaryKey : table.getPrimaryKeys() ) {
                 String name = column.getColumnName() + n++;
-                columnRoot.add(name, elt.toString());
+                columnRoot.add(name, String.valueOf(table.lookup(primaryKey, column.getColumnName())));
             }
 
             tableRoot.add(columnRoot);
@@ -90,7 +90,7 @@ public class GATKReportDiffableReader implements DiffableReader {
             char[] buff = new char[HEADER.length()];
             new FileReader(file).read(buff, 0, HEADER.length());
             String firstLine = new String(buff);
-            return firstLine.startsWith(HEADER);
+            return firstLine.startsWith(HEADER) || GATKReport.isBinaryReport(file);
         } catch ( IOException e ) {
             return false;
         }
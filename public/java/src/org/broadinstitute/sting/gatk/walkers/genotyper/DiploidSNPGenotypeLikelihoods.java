@@ -35,6 +35,8 @@ import org.broadinstitute.sting.utils.pileup.PileupElement;
 import org.broadinstitute.sting.utils.pileup.ReadBackedPileup;
 
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static java.lang.Math.log10;
 import static java.lang.Math.pow;
@@ -74,7 +76,6 @@ public class DiploidSNPGenotypeLikelihoods implements Cloneable {
     public final static double DEFAULT_PCR_ERROR_RATE = 1e-4;
 
     protected final static int FIXED_PLOIDY = 2;
-    protected final static int MAX_PLOIDY = FIXED_PLOIDY + 1;
     protected final static double ploidyAdjustment = log10(FIXED_PLOIDY);
     protected final static double log10_3 = log10(3.0);
 
@@ -88,9 +89,8 @@ public class DiploidSNPGenotypeLikelihoods implements Cloneable {
 
     protected DiploidSNPGenotypePriors priors = null;
 
-    // TODO: don't calculate this each time through
-    protected double log10_PCR_error_3;
-    protected double log10_1_minus_PCR_error;
+    // the shared, immutable per-observation likelihoods for our PCR error rate
+    protected double[] likelihoodTable;
 
     /**
      * Create a new GenotypeLikelhoods object with flat priors for each diploid genotype
@@ -98,8 +98,7 @@ public class DiploidSNPGenotypeLikelihoods implements Cloneable {
      */
     public DiploidSNPGenotypeLikelihoods() {
         this.priors = new DiploidSNPGenotypePriors();
-        log10_PCR_error_3 = log10(DEFAULT_PCR_ERROR_RATE) - log10_3;
-        log10_1_minus_PCR_error = log10(1.0 - DEFAULT_PCR_ERROR_RATE);
+        likelihoodTable = getLikelihoodTable(DEFAULT_PCR_ERROR_RATE);
         setToZero();
     }
 
@@ -111,8 +110,7 @@ public class DiploidSNPGenotypeLikelihoods implements Cloneable {
      */
     public DiploidSNPGenotypeLikelihoods(DiploidSNPGenotypePriors priors, double PCR_error_rate) {
         this.priors = priors;
-        log10_PCR_error_3 = log10(PCR_error_rate) - log10_3;
-        log10_1_minus_PCR_error = log10(1.0 - PCR_error_rate);
+        likelihoodTable = getLikelihoodTable(PCR_error_rate);
         setToZero();
     }
 
@@ -326,28 +324,14 @@ public class DiploidSNPGenotypeLikelihoods implements Cloneable {
     private int add(byte obsBase1, byte qual1, byte obsBase2, byte qual2, int nObs) {
         // TODO-- Right now we assume that there are at most 2 reads per fragment.  This assumption is fine
         // TODO--   given the current state of next-gen sequencing, but may need to be fixed in the future.
-        // TODO--   However, when that happens, we'll need to be a lot smarter about the caching we do here.
-
-        // Just look up the cached result if it's available, or compute and store it
-        DiploidSNPGenotypeLikelihoods gl;
-        if ( ! inCache(obsBase1, qual1, obsBase2, qual2, FIXED_PLOIDY) ) {
-            gl = calculateCachedGenotypeLikelihoods(obsBase1, qual1, obsBase2, qual2, FIXED_PLOIDY);
-        } else {
-            gl = getCachedGenotypeLikelihoods(obsBase1, qual1, obsBase2, qual2, FIXED_PLOIDY);
-        }
+        // TODO--   However, when that happens, we'll need to be a lot smarter about the table we use here.
+        final int offset = likelihoodTableOffset(obsBase1, qual1, obsBase2, qual2);
 
         // for bad bases, there are no likelihoods
-        if ( gl == null )
+        if ( offset < 0 )
             return 0;
 
-        double[] likelihoods = gl.getLikelihoods();
-
-        for ( DiploidGenotype g : DiploidGenotype.values() ) {
-            double likelihood = likelihoods[g.ordinal()];
-            log10Likelihoods[g.ordinal()] += likelihood * nObs;
-            log10Posteriors[g.ordinal()] += likelihood * nObs;
-        }
-
+        addLikelihoods(likelihoodTable, offset, nObs, log10Likelihoods, log10Posteriors);
         return 1;
     }
 
@@ -355,101 +339,142 @@ public class DiploidSNPGenotypeLikelihoods implements Cloneable {
         return add(obsBase1, qual1, obsBase2, qual2, 1);
     }
 
+    /**
+     * Accumulates nObs copies of the per-genotype log10 likelihoods stored at offset in table into the caller-owned
+     * likelihood and posterior arrays, both indexed by DiploidGenotype.ordinal() values
+     *
+     * @param table             a likelihood table from getLikelihoodTable()
+     * @param offset            the offset of the observation in table, from likelihoodTableOffset()
+     * @param nObs              the number of times this observation was seen
+     * @param log10Likelihoods  the likelihoods to update
+     * @param log10Posteriors   the posteriors to update
+     */
+    public static void addLikelihoods(final double[] table, final int offset, final int nObs, final double[] log10Likelihoods, final double[] log10Posteriors) {
+        for ( int i = 0; i < N_GENOTYPES; i++ ) {
+            final double likelihood = table[offset + i] * nObs;
+            log10Likelihoods[i] += likelihood;
+            log10Posteriors[i] += likelihood;
+        }
+    }
+
     // -------------------------------------------------------------------------------------
     //
-    // Dealing with the cache routines
+    // Dealing with the likelihood table
     //
     // -------------------------------------------------------------------------------------
 
-    static DiploidSNPGenotypeLikelihoods[][][][][] CACHE = new DiploidSNPGenotypeLikelihoods[BaseUtils.BASES.length][QualityUtils.MAX_QUAL_SCORE+1][BaseUtils.BASES.length+1][QualityUtils.MAX_QUAL_SCORE+1][MAX_PLOIDY];
-
-    protected boolean inCache(byte observedBase1, byte qualityScore1, byte observedBase2, byte qualityScore2, int ploidy) {
-        return getCache(CACHE, observedBase1, qualityScore1, observedBase2, qualityScore2, ploidy) != null;
-    }
+    private final static int N_GENOTYPES = DiploidGenotype.values().length;
+    private final static int N_QUALS = QualityUtils.MAX_QUAL_SCORE + 1;
 
-    protected DiploidSNPGenotypeLikelihoods getCachedGenotypeLikelihoods(byte observedBase1, byte qualityScore1, byte observedBase2, byte qualityScore2, int ploidy) {
-        DiploidSNPGenotypeLikelihoods gl = getCache(CACHE, observedBase1, qualityScore1, observedBase2, qualityScore2, ploidy);
-        if ( gl == null )
-            throw new RuntimeException(String.format("BUG: trying to fetch an unset cached genotype likelihood at base1=%c, qual1=%d, base2=%c, qual2=%d, ploidy=%d",
-                    observedBase1, qualityScore1, observedBase2, qualityScore2, ploidy));
-        return gl;
-    }
+    // the second observation is either absent (slot 0) or one of the base / qual combinations
+    private final static int N_SECOND_OBSERVATIONS = 1 + BaseUtils.BASES.length * N_QUALS;
+    private final static int LIKELIHOOD_TABLE_SIZE = BaseUtils.BASES.length * N_QUALS * N_SECOND_OBSERVATIONS * N_GENOTYPES;
 
-    protected DiploidSNPGenotypeLikelihoods calculateCachedGenotypeLikelihoods(byte observedBase1, byte qualityScore1, byte observedBase2, byte qualityScore2, int ploidy) {
-        DiploidSNPGenotypeLikelihoods gl = calculateGenotypeLikelihoods(observedBase1, qualityScore1, observedBase2, qualityScore2);
-        setCache(CACHE, observedBase1, qualityScore1, observedBase2, qualityScore2, ploidy, gl);
-        return gl;
+    // the table for the default PCR error rate is built when the holder is first used, not when this class is loaded
+    private static class DefaultLikelihoodTable {
+        private final static double[] TABLE = computeLikelihoodTable(DEFAULT_PCR_ERROR_RATE);
     }
 
-    protected void setCache( DiploidSNPGenotypeLikelihoods[][][][][] cache,
-                             byte observedBase1, byte qualityScore1, byte observedBase2, byte qualityScore2, int ploidy,
-                             DiploidSNPGenotypeLikelihoods val ) {
-        int i = BaseUtils.simpleBaseToBaseIndex(observedBase1);
-        int j = qualityScore1;
-        int k = qualityScore2 != 0 ? BaseUtils.simpleBaseToBaseIndex(observedBase2) : BaseUtils.BASES.length;
-        int l = qualityScore2;
-        int m = ploidy;
+    // tables for other rates are computed once on demand
+    private final static ConcurrentMap<Double, double[]> likelihoodTablesByPCRErrorRate = new ConcurrentHashMap<Double, double[]>();
 
-        cache[i][j][k][l][m] = val;
+    /**
+     * Returns the immutable table of per-genotype log10 likelihoods for every fragment observation given the
+     * PCR error rate.  The table must not be modified by the caller.
+     *
+     * @param PCR_error_rate  the PCR error rate
+     * @return a shared likelihood table
+     */
+    public static double[] getLikelihoodTable(final double PCR_error_rate) {
+        if ( PCR_error_rate == DEFAULT_PCR_ERROR_RATE )
+            return DefaultLikelihoodTable.TABLE;
+
+        double[] table = likelihoodTablesByPCRErrorRate.get(PCR_error_rate);
+        if ( table == null ) {
+            // a concurrent computation of the same table is harmless, as both results are identical
+            likelihoodTablesByPCRErrorRate.putIfAbsent(PCR_error_rate, computeLikelihoodTable(PCR_error_rate));
+            table = likelihoodTablesByPCRErrorRate.get(PCR_error_rate);
+        }
+        return table;
     }
 
-    protected DiploidSNPGenotypeLikelihoods getCache(DiploidSNPGenotypeLikelihoods[][][][][] cache,
-                                            byte observedBase1, byte qualityScore1, byte observedBase2, byte qualityScore2, int ploidy) {
-        int i = BaseUtils.simpleBaseToBaseIndex(observedBase1);
-        int j = qualityScore1;
-        int k = qualityScore2 != 0 ? BaseUtils.simpleBaseToBaseIndex(observedBase2) : BaseUtils.BASES.length;
-        int l = qualityScore2;
-        int m = ploidy;
-        return cache[i][j][k][l][m];
+    /**
+     * Returns the offset into a likelihood table of the per-genotype likelihoods for the given fragment observation
+     *
+     * @param observedBase1  the base observed on the 1st read of the fragment
+     * @param qualityScore1  the qual of the base on the 1st read of the fragment; must be > 0
+     * @param observedBase2  the base observed on the 2nd read of the fragment
+     * @param qualityScore2  the qual of the base on the 2nd read of the fragment, or zero if NA
+     * @return the offset, or -1 if the first base is not a regular base
+     */
+    public static int likelihoodTableOffset(final byte observedBase1, final byte qualityScore1, final byte observedBase2, final byte qualityScore2) {
+        final int baseIndex1 = BaseUtils.simpleBaseToBaseIndex(observedBase1);
+        if ( baseIndex1 == -1 )
+            return -1;
+
+        final int baseIndex2 = BaseUtils.simpleBaseToBaseIndex(observedBase2);
+        final int secondObservation = qualityScore2 == 0 || baseIndex2 == -1 ? 0 : 1 + baseIndex2 * N_QUALS + capQual(qualityScore2);
+        return ((baseIndex1 * N_QUALS + capQual(qualityScore1)) * N_SECOND_OBSERVATIONS + secondObservation) * N_GENOTYPES;
     }
 
-    protected DiploidSNPGenotypeLikelihoods calculateGenotypeLikelihoods(byte observedBase1, byte qualityScore1, byte observedBase2, byte qualityScore2) {
-        double[] log10FourBaseLikelihoods = computeLog10Likelihoods(observedBase1, qualityScore1, observedBase2, qualityScore2);
-
-        try {
+    /**
+     * The table only has rows up to MAX_QUAL_SCORE, so higher quals (including those wrapped negative as bytes) are
+     * capped there rather than indexing into the row of the next base
+     */
+    private static int capQual(final byte qual) {
+        return Math.min(qual & 0xff, QualityUtils.MAX_QUAL_SCORE);
+    }
 
-            DiploidSNPGenotypeLikelihoods gl = (DiploidSNPGenotypeLikelihoods)this.clone();
-            gl.setToZero();
+    private static double[] computeLikelihoodTable(final double PCR_error_rate) {
+        final double log10_PCR_error_3 = log10(PCR_error_rate) - log10_3;
+        final double log10_1_minus_PCR_error = log10(1.0 - PCR_error_rate);
+        final double[] table = new double[LIKELIHOOD_TABLE_SIZE];
 
-            // we need to adjust for ploidy.  We take the raw p(obs | chrom) / ploidy, which is -log10(ploidy) in log space
-            for ( DiploidGenotype g : DiploidGenotype.values() ) {
+        for ( byte observedBase1 : BaseUtils.BASES ) {
+            for ( int qual1 = 1; qual1 < N_QUALS; qual1++ ) {
+                // the absent second observation
+                fillLikelihoodTable(table, observedBase1, (byte)qual1, (byte)0, (byte)0, log10_PCR_error_3, log10_1_minus_PCR_error);
 
-                // todo assumes ploidy is 2 -- should be generalized.  Obviously the below code can be turned into a loop
-                double p_base = 0.0;
-                p_base += pow(10, log10FourBaseLikelihoods[BaseUtils.simpleBaseToBaseIndex(g.base1)] - ploidyAdjustment);
-                p_base += pow(10, log10FourBaseLikelihoods[BaseUtils.simpleBaseToBaseIndex(g.base2)] - ploidyAdjustment);
-                double likelihood = log10(p_base);
-
-                gl.log10Likelihoods[g.ordinal()] += likelihood;
-                gl.log10Posteriors[g.ordinal()] += likelihood;
+                for ( byte observedBase2 : BaseUtils.BASES ) {
+                    for ( int qual2 = 1; qual2 < N_QUALS; qual2++ )
+                        fillLikelihoodTable(table, observedBase1, (byte)qual1, observedBase2, (byte)qual2, log10_PCR_error_3, log10_1_minus_PCR_error);
+                }
             }
+        }
 
-            if ( VERBOSE ) {
-                for ( DiploidGenotype g : DiploidGenotype.values() ) { System.out.printf("%s\t", g); }
-                System.out.println();
-                for ( DiploidGenotype g : DiploidGenotype.values() ) { System.out.printf("%.2f\t", gl.log10Likelihoods[g.ordinal()]); }
-                System.out.println();
-            }
+        return table;
+    }
 
-            return gl;
+    private static void fillLikelihoodTable(final double[] table, final byte observedBase1, final byte qualityScore1, final byte observedBase2, final byte qualityScore2,
+                                            final double log10_PCR_error_3, final double log10_1_minus_PCR_error) {
+        final double[] log10FourBaseLikelihoods = computeLog10Likelihoods(observedBase1, qualityScore1, observedBase2, qualityScore2, log10_PCR_error_3, log10_1_minus_PCR_error);
+        final int offset = likelihoodTableOffset(observedBase1, qualityScore1, observedBase2, qualityScore2);
 
-         } catch ( CloneNotSupportedException e ) {
-             throw new RuntimeException(e);
-         }
+        // we need to adjust for ploidy.  We take the raw p(obs | chrom) / ploidy, which is -log10(ploidy) in log space
+        for ( DiploidGenotype g : DiploidGenotype.values() ) {
+
+            // todo assumes ploidy is 2 -- should be generalized.  Obviously the below code can be turned into a loop
+            double p_base = 0.0;
+            p_base += pow(10, log10FourBaseLikelihoods[BaseUtils.simpleBaseToBaseIndex(g.base1)] - ploidyAdjustment);
+            p_base += pow(10, log10FourBaseLikelihoods[BaseUtils.simpleBaseToBaseIndex(g.base2)] - ploidyAdjustment);
+            table[offset + g.ordinal()] = log10(p_base);
+        }
     }
 
     /**
-     * Updates likelihoods and posteriors to reflect an additional observation of observedBase with
-     * qualityScore.
+     * Computes the log10 likelihood of an observation given each of the four possible true bases.
      *
      * @param observedBase1  the base observed on the 1st read of the fragment
      * @param qualityScore1  the qual of the base on the 1st read of the fragment, or zero if NA
      * @param observedBase2  the base observed on the 2nd read of the fragment
      * @param qualityScore2  the qual of the base on the 2nd read of the fragment, or zero if NA
-     * @return likelihoods for this observation or null if the base was not considered good enough to add to the likelihoods (Q0 or 'N', for example)
+     * @param log10_PCR_error_3        log10 of the PCR error rate divided by 3
+     * @param log10_1_minus_PCR_error  log10 of one minus the PCR error rate
+     * @return likelihoods for this observation, indexed by base index
      */
-    protected double[] computeLog10Likelihoods(byte observedBase1, byte qualityScore1, byte observedBase2, byte qualityScore2) {
-        double[] log10FourBaseLikelihoods = baseZeros.clone();
+    protected static double[] computeLog10Likelihoods(byte observedBase1, byte qualityScore1, byte observedBase2, byte qualityScore2,
+                                                      double log10_PCR_error_3, double log10_1_minus_PCR_error) {
+        double[] log10FourBaseLikelihoods = new double[BaseUtils.BASES.length];
 
         for ( byte trueBase : BaseUtils.BASES ) {
             double likelihood = 0.0;
@@ -463,11 +488,6 @@ public class DiploidSNPGenotypeLikelihoods implements Cloneable {
                     log10FragmentLikelihood += log10PofObservingBaseGivenChromosome(observedBase2, fragmentBase, qualityScore2);
                 }
 
-                //if ( VERBOSE ) {
-                //    System.out.printf("  L(%c | b=%s, Q=%d) = %f / %f%n",
-                //            observedBase, trueBase, qualityScore, pow(10,likelihood) * 100, likelihood);
-                //}
-
                 likelihood += pow(10, log10FragmentLikelihood);
             }
 
@@ -484,13 +504,12 @@ public class DiploidSNPGenotypeLikelihoods implements Cloneable {
      * @param qual         base quality
      * @return log10 likelihood
      */
-    protected double log10PofObservingBaseGivenChromosome(byte observedBase, byte chromBase, byte qual) {
+    protected static double log10PofObservingBaseGivenChromosome(byte observedBase, byte chromBase, byte qual) {
 
         double logP;
 
         if ( observedBase == chromBase ) {
             // the base is consistent with the chromosome -- it's 1 - e
-            //logP = oneMinusData[qual];
             double e = pow(10, (qual / -10.0));
             logP = log10(1.0 - e);
         } else {
@@ -498,7 +517,6 @@ public class DiploidSNPGenotypeLikelihoods implements Cloneable {
             logP = qual / -10.0 + (-log10_3);
         }
 
-        //System.out.printf("%c %c %d => %f%n", observedBase, chromBase, qual, logP);
         return logP;
     }
 
@@ -597,14 +615,10 @@ public class DiploidSNPGenotypeLikelihoods implements Cloneable {
     // Constant static data
     //
     private final static double[] genotypeZeros = new double[DiploidGenotype.values().length];
-    private final static double[] baseZeros = new double[BaseUtils.BASES.length];
 
     static {
         for ( DiploidGenotype g : DiploidGenotype.values() ) {
             genotypeZeros[g.ordinal()] = 0.0;
         }
-        for ( byte base : BaseUtils.BASES ) {
-            baseZeros[BaseUtils.simpleBaseToBaseIndex(base)] = 0.0;
-        }
     }
 }
@@ -11,6 +11,7 @@ import org.broadinstitute.sting.utils.SampleUtils;
 import org.broadinstitute.sting.utils.codecs.vcf.StandardVCFWriter;
 import org.broadinstitute.sting.utils.codecs.vcf.VCFHeader;
 import org.broadinstitute.sting.utils.collections.Pair;
+import org.broadinstitute.sting.utils.instrumentation.HotPathMetrics;
 import org.broadinstitute.sting.utils.pileup.PileupElement;
 import org.broadinstitute.sting.utils.pileup.ReadBackedExtendedEventPileup;
 import org.broadinstitute.sting.utils.pileup.ReadBackedPileup;
@@ -125,6 +126,7 @@ public class IonUnifiedGenotyperEngine extends UnifiedGenotyperEngine {
     public void callBayesianScorer(Map<String, AlignmentContext> stratifiedContexts, VariantContext vc, VariantCallContext vcc, ReferenceContext refContext) {
         //BayesianScorer scorer = new BayesianScorer(flowAlignContextPileupStrm, numThreads);
         //BayesianScorer debug = null;
+        HotPathMetrics.begin(HotPathMetrics.Stage.BAYESIAN_SCORER);
         try {
             BayesianScorer bayesianScorer = bayesianScorerFactory.createBayesianScorer();
             bayesianScorer.addVariantContext(stratifiedContexts, vc, vcc, refContext);
@@ -136,6 +138,8 @@ public class IonUnifiedGenotyperEngine extends UnifiedGenotyperEngine {
         } catch (Throwable ex) {
             System.out.println("Error in scorer.\n");
             ex.printStackTrace();
+        } finally {
+            HotPathMetrics.end(HotPathMetrics.Stage.BAYESIAN_SCORER, 1);
         }
     }
 
@@ -38,6 +38,7 @@ import org.broadinstitute.sting.utils.*;
 import org.broadinstitute.sting.utils.baq.BAQ;
 import org.broadinstitute.sting.utils.codecs.vcf.VCFConstants;
 import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
+import org.broadinstitute.sting.utils.instrumentation.HotPathMetrics;
 import org.broadinstitute.sting.utils.pileup.PileupElement;
 import org.broadinstitute.sting.utils.pileup.ReadBackedExtendedEventPileup;
 import org.broadinstitute.sting.utils.pileup.ReadBackedPileup;
@@ -219,7 +220,12 @@ public class UnifiedGenotyperEngine {
             glcm.set(getGenotypeLikelihoodsCalculationObject(logger, UAC));
         }
 
-        return glcm.get().get(model).getLikelihoods(tracker, refContext, stratifiedContexts, type, getGenotypePriors(model), alternateAllelesToUse, useBAQedPileup && BAQEnabledOnCMDLine, genomeLocParser);
+        HotPathMetrics.begin(HotPathMetrics.Stage.GENOTYPE_LIKELIHOODS);
+        try {
+            return glcm.get().get(model).getLikelihoods(tracker, refContext, stratifiedContexts, type, getGenotypePriors(model), alternateAllelesToUse, useBAQedPileup && BAQEnabledOnCMDLine, genomeLocParser);
+        } finally {
+            HotPathMetrics.end(HotPathMetrics.Stage.GENOTYPE_LIKELIHOODS, 1);
+        }
     }
 
     protected VariantCallContext generateEmptyContext(RefMetaDataTracker tracker, ReferenceContext ref, Map<String, AlignmentContext> stratifiedContexts, AlignmentContext rawContext) {
@@ -282,7 +288,7 @@ public class UnifiedGenotyperEngine {
         // 'zero' out the AFs (so that we don't have to worry if not all samples have reads at this position)
         clearAFarray(AFresult.log10AlleleFrequencyLikelihoods);
         clearAFarray(AFresult.log10AlleleFrequencyPosteriors);
-        List<Allele> allelesUsedInGenotyping = afcm.get().getLog10PNonRef(vc, getAlleleFrequencyPriors(model), AFresult);
+        List<Allele> allelesUsedInGenotyping = calculateAlleleFrequencies(vc, model, AFresult);
 
         // is the most likely frequency conformation AC=0 for all alternate alleles?
         boolean bestGuessIsRef = true;
@@ -383,7 +389,7 @@ public class UnifiedGenotyperEngine {
             VariantContext vcForward = calculateLikelihoods(tracker, refContext, stratifiedContexts, AlignmentContextUtils.ReadOrientation.FORWARD, alternateAllelesToUse, false, model);
             clearAFarray(AFresult.log10AlleleFrequencyLikelihoods);
             clearAFarray(AFresult.log10AlleleFrequencyPosteriors);
-            afcm.get().getLog10PNonRef(vcForward, getAlleleFrequencyPriors(model), AFresult);
+            calculateAlleleFrequencies(vcForward, model, AFresult);
             //double[] normalizedLog10Posteriors = MathUtils.normalizeFromLog10(AFresult.log10AlleleFrequencyPosteriors, true);
             double forwardLog10PofNull = AFresult.log10PosteriorOfAFzero;
             double forwardLog10PofF = MathUtils.log10sumLog10(AFresult.log10AlleleFrequencyPosteriors[0], 0);
@@ -393,7 +399,7 @@ public class UnifiedGenotyperEngine {
             VariantContext vcReverse = calculateLikelihoods(tracker, refContext, stratifiedContexts, AlignmentContextUtils.ReadOrientation.REVERSE, alternateAllelesToUse, false, model);
             clearAFarray(AFresult.log10AlleleFrequencyLikelihoods);
             clearAFarray(AFresult.log10AlleleFrequencyPosteriors);
-            afcm.get().getLog10PNonRef(vcReverse, getAlleleFrequencyPriors(model), AFresult);
+            calculateAlleleFrequencies(vcReverse, model, AFresult);
             //normalizedLog10Posteriors = MathUtils.normalizeFromLog10(AFresult.log10AlleleFrequencyPosteriors, true);
             double reverseLog10PofNull = AFresult.log10PosteriorOfAFzero;
             double reverseLog10PofF = MathUtils.log10sumLog10(AFresult.log10AlleleFrequencyPosteriors[0], 0);
@@ -656,6 +662,16 @@ public class UnifiedGenotyperEngine {
         }
     }
 
+    // runs the allele frequency model of this thread over the given context, filling in AFresult
+    private List<Allele> calculateAlleleFrequencies( final VariantContext vc, final GenotypeLikelihoodsCalculationModel.Model model, final AlleleFrequencyCalculationResult AFresult ) {
+        HotPathMetrics.begin(HotPathMetrics.Stage.ALLELE_FREQUENCY);
+        try {
+            return afcm.get().getLog10PNonRef(vc, getAlleleFrequencyPriors(model), AFresult);
+        } finally {
+            HotPathMetrics.end(HotPathMetrics.Stage.ALLELE_FREQUENCY, 1);
+        }
+    }
+
     protected double[][] getAlleleFrequencyPriors( final GenotypeLikelihoodsCalculationModel.Model model ) {
         switch( model ) {
             case SNP:
@@ -52,6 +52,7 @@ import org.broadinstitute.sting.utils.sam.NWaySAMFileWriter;
 import org.broadinstitute.sting.utils.sam.ReadUtils;
 import org.broadinstitute.sting.utils.text.TextFormattingUtils;
 import org.broadinstitute.sting.utils.text.XReadLines;
+import org.broadinstitute.sting.utils.threading.DaemonThreadFactory;
 import org.broadinstitute.sting.utils.variantcontext.VariantContext;
 
 import java.io.File;
@@ -59,6 +60,8 @@ import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Performs local realignment of reads based on misalignments due to the presence of indels.
@@ -243,6 +246,15 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
 
     // DEBUGGING OPTIONS FOLLOW
 
+    /**
+     * Target intervals are independent of each other, so the search for the best consensus in each of them can be run
+     * concurrently.  Reads are still handed to the output writer in the same order and with the same alignments as with a
+     * single thread, so the output BAM is identical.  Cannot be used with the USE_SW consensus model, which draws random
+     * reads from the GATK-wide random generator.
+     */
+    @Argument(fullName="realignmentThreads", shortName="realignThreads", required=false, doc="Number of threads used to realign independent target intervals concurrently")
+    protected int REALIGNMENT_THREADS = 1;
+
     @Hidden
     @Argument(fullName="check_early",shortName="check_early",required=false,doc="Do early check of reads against existing consensuses")
     protected boolean CHECKEARLY = false;
@@ -281,8 +293,8 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
     private boolean sawReadInCurrentInterval = false;
 
     // the reads and known indels that fall into the current interval
-    private final ReadBin readsToClean = new ReadBin();
-    private final ArrayList<GATKSAMRecord> readsNotToClean = new ArrayList<GATKSAMRecord>();
+    private ReadBin readsToClean = new ReadBin();
+    private ArrayList<GATKSAMRecord> readsNotToClean = new ArrayList<GATKSAMRecord>();
     private final ArrayList<VariantContext> knownIndelsToTry = new ArrayList<VariantContext>();
     private final HashSet<Object> indelRodsSeen = new HashSet<Object>();
     private final HashSet<GATKSAMRecord> readsActuallyCleaned = new HashSet<GATKSAMRecord>();
@@ -308,11 +320,20 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
 
     //###protected Map<SAMReaderID, ConstrainedMateFixingManager> nwayWriters = null;
 
+    // when realigning with multiple threads: the workers and the intervals / reads waiting to be emitted, in input order
+    private ExecutorService realignmentPool = null;
+    private final LinkedList<PendingOutput> pendingOutputs = new LinkedList<PendingOutput>();
+    private int pendingRealignments = 0;
+
+    // how many realignments per thread may be queued up before we wait for the oldest one to finish
+    private static final int MAX_PENDING_REALIGNMENTS_PER_THREAD = 4;
+
 
     // debug info for lazy SW evaluation:
-    private long exactMatchesFound = 0; // how many reads exactly matched a consensus we already had
-    private long SWalignmentRuns = 0; // how many times (=for how many reads) we ran SW alignment
-    private long SWalignmentSuccess = 0; // how many SW alignments were "successful" (i.e. found a workable indel and resulted in non-null consensus)
+    // (counted by the realignment workers when realigning with multiple threads)
+    private final AtomicLong exactMatchesFound = new AtomicLong(); // how many reads exactly matched a consensus we already had
+    private final AtomicLong SWalignmentRuns = new AtomicLong(); // how many times (=for how many reads) we ran SW alignment
+    private final AtomicLong SWalignmentSuccess = new AtomicLong(); // how many SW alignments were "successful" (i.e. found a workable indel and resulted in non-null consensus)
 
     private Map<String,String> loadFileNameMap(String mapFile) {
         Map<String,String> fname_map = new HashMap<String,String>();
@@ -355,6 +376,10 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
             throw new RuntimeException("LOD threshold cannot be a negative number");
         if ( MISMATCH_THRESHOLD <= 0.0 || MISMATCH_THRESHOLD > 1.0 )
             throw new RuntimeException("Entropy threshold must be a fraction between 0 and 1");
+        if ( REALIGNMENT_THREADS < 1 )
+            throw new UserException.BadArgumentValue("realignmentThreads", "must be at least 1");
+        if ( REALIGNMENT_THREADS > 1 && consensusModel == ConsensusDeterminationModel.USE_SW )
+            throw new UserException.BadArgumentValue("realignmentThreads", "multi-threaded realignment is not supported with the USE_SW consensus model");
 
         try {
             referenceReader = new CachingIndexedFastaSequenceFile(getToolkit().getArguments().referenceFile);
@@ -386,6 +411,9 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
         }
         manager = new ConstrainedMateFixingManager(writerToUse, getToolkit().getGenomeLocParser(), MAX_ISIZE_FOR_MOVEMENT, MAX_POS_MOVE_ALLOWED, MAX_RECORDS_IN_MEMORY);
 
+        if ( REALIGNMENT_THREADS > 1 )
+            realignmentPool = Executors.newFixedThreadPool(REALIGNMENT_THREADS, new DaemonThreadFactory("IndelRealigner"));
+
         if ( OUT_INDELS != null ) {
             try {
                 indelOutput = new FileWriter(new File(OUT_INDELS));
@@ -449,7 +477,15 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
     }
 
     private void emit(final SAMRecord read) {
+        // reads can only be written once everything before them has been
+        if ( !pendingOutputs.isEmpty() ) {
+            queueForEmission(new PendingOutput(read));
+            return;
+        }
+        writeRead(read);
+    }
 
+    private void writeRead(final SAMRecord read) {
         // check to see whether the read was modified by looking at the temporary tag
         boolean wasModified = readsActuallyCleaned.contains(read);
 
@@ -461,6 +497,16 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
     }
 
     private void emitReadLists() {
+        if ( realignmentPool != null ) {
+            queueForEmission(new PendingOutput(readsToClean, readsNotToClean, null));
+            readsToClean = new ReadBin();
+            readsNotToClean = new ArrayList<GATKSAMRecord>();
+        } else {
+            emitReadLists(readsToClean, readsNotToClean);
+        }
+    }
+
+    private void emitReadLists(final ReadBin readsToClean, final ArrayList<GATKSAMRecord> readsNotToClean) {
         // pre-merge lists to sort them in preparation for constrained SAMFileWriter
         readsNotToClean.addAll(readsToClean.getReads());
         ReadUtils.sortReadsByCoordinate(readsNotToClean);
@@ -470,6 +516,87 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
         readsActuallyCleaned.clear();
     }
 
+    /**
+     * Realigns the reads in the current interval (if the mate fixing manager allows it) and emits them along with the
+     * other reads of the interval.  With multiple threads, the realignment is handed to the worker pool and both steps
+     * happen later, in input order.
+     */
+    private void cleanAndEmitReadLists() {
+        if ( realignmentPool == null ) {
+            if ( readsToClean.size() > 0 ) {
+                GenomeLoc earliestPossibleMove = getToolkit().getGenomeLocParser().createGenomeLoc(readsToClean.getReads().get(0));
+                if ( manager.canMoveReads(earliestPossibleMove) )
+                    clean(readsToClean);
+            }
+            emitReadLists();
+            return;
+        }
+
+        Future<RealignmentResult> realignment = null;
+        if ( readsToClean.size() > 0 ) {
+            final ReadBin bin = readsToClean;
+            final List<VariantContext> knownIndels = new ArrayList<VariantContext>(knownIndelsToTry);
+            final GenomeLoc interval = currentInterval;
+
+            // the reference reader is not thread-safe, so fetch the bases now
+            bin.getReference(referenceReader);
+            realignment = realignmentPool.submit(new Callable<RealignmentResult>() {
+                public RealignmentResult call() {
+                    return realign(bin, knownIndels, interval);
+                }
+            });
+            pendingRealignments++;
+        }
+
+        queueForEmission(new PendingOutput(readsToClean, readsNotToClean, realignment));
+        readsToClean = new ReadBin();
+        readsNotToClean = new ArrayList<GATKSAMRecord>();
+    }
+
+    private void queueForEmission(final PendingOutput output) {
+        pendingOutputs.add(output);
+        emitPendingOutputs(false);
+    }
+
+    /**
+     * Emits the pending outputs, oldest first, for as long as they are ready (or we have too many of them)
+     *
+     * @param all  if true, wait for and emit all of the pending outputs
+     */
+    private void emitPendingOutputs(final boolean all) {
+        while ( !pendingOutputs.isEmpty() ) {
+            final PendingOutput output = pendingOutputs.getFirst();
+            final boolean tooManyPending = pendingRealignments > MAX_PENDING_REALIGNMENTS_PER_THREAD * REALIGNMENT_THREADS ||
+                    pendingOutputs.size() > MAX_RECORDS_IN_MEMORY;
+            if ( !all && !tooManyPending && !output.isDone() )
+                return;
+
+            pendingOutputs.removeFirst();
+            if ( output.read != null ) {
+                writeRead(output.read);
+                continue;
+            }
+
+            if ( output.realignment != null ) {
+                pendingRealignments--;
+                final RealignmentResult result;
+                try {
+                    result = output.getRealignment();
+                } catch (RuntimeException e) {
+                    // the traversal is over, so don't leave the other realignments running
+                    realignmentPool.shutdownNow();
+                    throw e;
+                }
+
+                // this is the same decision the single-threaded realigner makes, against the same state of the manager
+                GenomeLoc earliestPossibleMove = getToolkit().getGenomeLocParser().createGenomeLoc(output.readsToClean.getReads().get(0));
+                if ( manager.canMoveReads(earliestPossibleMove) )
+                    applyRealignment(result);
+            }
+            emitReadLists(output.readsToClean, output.readsNotToClean);
+        }
+    }
+
     public Integer map(ReferenceContext ref, GATKSAMRecord read, ReadMetaDataTracker metaDataTracker) {
         if ( currentInterval == null ) {
             emit(read);
@@ -537,15 +664,9 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
     }
 
     private void cleanAndCallMap(ReferenceContext ref, GATKSAMRecord read, ReadMetaDataTracker metaDataTracker, GenomeLoc readLoc) {
-        if ( readsToClean.size() > 0 ) {
-            GenomeLoc earliestPossibleMove = getToolkit().getGenomeLocParser().createGenomeLoc(readsToClean.getReads().get(0));
-            if ( manager.canMoveReads(earliestPossibleMove) )
-                clean(readsToClean);
-        }
+        cleanAndEmitReadLists();
         knownIndelsToTry.clear();
         indelRodsSeen.clear();
-
-        emitReadLists();
         try {
             do {
                 currentInterval = intervals.hasNext() ? intervals.next() : null;
@@ -569,18 +690,20 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
     }
 
     public void onTraversalDone(Integer result) {
-        if ( readsToClean.size() > 0 ) {
-            GenomeLoc earliestPossibleMove = getToolkit().getGenomeLocParser().createGenomeLoc(readsToClean.getReads().get(0));
-            if ( manager.canMoveReads(earliestPossibleMove) )
-                clean(readsToClean);
-            emitReadLists();
-        } else if ( readsNotToClean.size() > 0 ) {
-            emitReadLists();                            
-        }
+        if ( readsToClean.size() > 0 || readsNotToClean.size() > 0 )
+            cleanAndEmitReadLists();
 
         knownIndelsToTry.clear();
         indelRodsSeen.clear();
 
+        if ( realignmentPool != null ) {
+            try {
+                emitPendingOutputs(true);
+            } finally {
+                realignmentPool.shutdown();
+            }
+        }
+
         if ( OUT_INDELS != null ) {
             try {
                 indelOutput.close();
@@ -607,6 +730,9 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
         if ( N_WAY_OUT != null ) writerToUse.close();
 
         if ( CHECKEARLY ) {
+            final long SWalignmentRuns = this.SWalignmentRuns.get();
+            final long SWalignmentSuccess = this.SWalignmentSuccess.get();
+            final long exactMatchesFound = this.exactMatchesFound.get();
             logger.info("SW alignments runs: "+SWalignmentRuns);
             logger.info("SW alignments successfull: "+SWalignmentSuccess + " ("+SWalignmentSuccess/SWalignmentRuns+"% of SW runs)");
             logger.info("SW alignments skipped (perfect match): "+exactMatchesFound);
@@ -656,10 +782,23 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
     }
 
     private void clean(ReadBin readsToClean) {
+        applyRealignment(realign(readsToClean, knownIndelsToTry, currentInterval));
+    }
+
+    /**
+     * Finds the best alternate consensus for the reads in the bin and computes (but does not apply) their new alignments.
+     * Doesn't touch any of the walker's output state, so it can be run concurrently on independent bins.
+     *
+     * @param readsToClean  the reads of the interval
+     * @param knownIndels   the known indels overlapping the interval
+     * @param interval      the target interval
+     * @return the realignment to apply, or null if there are no reads
+     */
+    private RealignmentResult realign(final ReadBin readsToClean, final List<VariantContext> knownIndels, final GenomeLoc interval) {
 
         final List<GATKSAMRecord> reads = readsToClean.getReads();
         if ( reads.size() == 0 )
-            return;
+            return null;
 
         byte[] reference = readsToClean.getReference(referenceReader);
         int leftmostIndex = readsToClean.getLocation().getStart();
@@ -670,7 +809,7 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
         final Set<Consensus> altConsenses = new LinkedHashSet<Consensus>();               // list of alt consenses
 
         // if there are any known indels for this region, get them and create alternate consenses
-        generateAlternateConsensesFromKnownIndels(altConsenses, leftmostIndex, reference);
+        generateAlternateConsensesFromKnownIndels(knownIndels, altConsenses, leftmostIndex, reference);
 
         // decide which reads potentially need to be cleaned;
         // if there are reads with a single indel in them, add that indel to the list of alternate consenses
@@ -743,18 +882,55 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
         // 2) beats the LOD threshold for the sum of quality score mismatches of the raw version of the reads,
         // 3) didn't just move around the mismatching columns (i.e. it actually reduces entropy), 
         // then clean!
-        final double improvement = (bestConsensus == null ? -1 : ((double)(totalRawMismatchSum - bestConsensus.mismatchSum))/10.0);
-        if ( improvement >= LOD_THRESHOLD ) {
+        final RealignmentResult result = new RealignmentResult(interval, reads, altReads, reference, leftmostIndex, totalRawMismatchSum, bestConsensus);
+        if ( result.improvement >= LOD_THRESHOLD ) {
 
             bestConsensus.cigar = AlignmentUtils.leftAlignIndel(bestConsensus.cigar, reference, bestConsensus.str, bestConsensus.positionOnReference, bestConsensus.positionOnReference);
 
            // start cleaning the appropriate reads
             for ( Pair<Integer, Integer> indexPair : bestConsensus.readIndexes ) {
                 AlignedRead aRead = altReads.get(indexPair.first);
-                if ( !updateRead(bestConsensus.cigar, bestConsensus.positionOnReference, indexPair.second, aRead, leftmostIndex) )
-                    return;
+                if ( !updateRead(bestConsensus.cigar, bestConsensus.positionOnReference, indexPair.second, aRead, leftmostIndex) ) {
+                    result.aborted = true;
+                    return result;
+                }
             }
-            if ( consensusModel != ConsensusDeterminationModel.KNOWNS_ONLY && !alternateReducesEntropy(altReads, reference, leftmostIndex) ) {
+            result.reducesEntropy = consensusModel == ConsensusDeterminationModel.KNOWNS_ONLY || alternateReducesEntropy(altReads, reference, leftmostIndex, result.snps);
+        }
+
+        return result;
+    }
+
+    /**
+     * Writes out the results of the realignment and applies the new alignments to the reads
+     *
+     * @param result  the realignment, as computed by realign(); may be null
+     */
+    private void applyRealignment(final RealignmentResult result) {
+        if ( result == null || result.aborted )
+            return;
+
+        final List<GATKSAMRecord> reads = result.reads;
+        final List<AlignedRead> altReads = result.altReads;
+        final Consensus bestConsensus = result.bestConsensus;
+        final long totalRawMismatchSum = result.totalRawMismatchSum;
+        final double improvement = result.improvement;
+        final GenomeLoc currentInterval = result.interval;
+        byte[] reference = result.reference;
+        int leftmostIndex = result.leftmostIndex;
+
+        if ( improvement >= LOD_THRESHOLD ) {
+
+            if ( result.reducesEntropy && snpsOutput != null && result.snps.length() > 0 ) {
+                try {
+                    snpsOutput.write(result.snps.toString());
+                    snpsOutput.flush();
+                } catch (Exception e) {
+                    throw new UserException.CouldNotCreateOutputFile("snpsOutput", "Failed to write SNPs output file", e);
+                }
+            }
+
+            if ( !result.reducesEntropy ) {
                 if ( statsOutput != null ) {
                     try {
                         statsOutput.write(currentInterval.toString());
@@ -864,8 +1040,8 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
         }
     }
 
-    private void generateAlternateConsensesFromKnownIndels(final Set<Consensus> altConsensesToPopulate, final int leftmostIndex, final byte[] reference) {
-        for ( VariantContext knownIndel : knownIndelsToTry ) {
+    private void generateAlternateConsensesFromKnownIndels(final List<VariantContext> knownIndels, final Set<Consensus> altConsensesToPopulate, final int leftmostIndex, final byte[] reference) {
+        for ( VariantContext knownIndel : knownIndels ) {
             if ( knownIndel == null || !knownIndel.isIndel() || knownIndel.isComplexIndel() )
                 continue;
             byte[] indelStr = knownIndel.isSimpleInsertion() ? knownIndel.getAlternateAllele(0).getBases() : Utils.dupBytes((byte)'-', knownIndel.getReference().length());
@@ -975,15 +1151,15 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
               Pair<Integer, Integer> altAlignment = findBestOffset(known.str, read, leftmostIndex);
               // the mismatch score is the min of its alignment vs. the reference and vs. the alternate
               int myScore = altAlignment.second;
-              if ( myScore == 0 ) {exactMatchesFound++; return; }// read matches perfectly to a known alt consensus - no need to run SW, we already know the answer
+              if ( myScore == 0 ) {exactMatchesFound.incrementAndGet(); return; }// read matches perfectly to a known alt consensus - no need to run SW, we already know the answer
          }
          // do a pairwise alignment against the reference
-         SWalignmentRuns++;
+         SWalignmentRuns.incrementAndGet();
          SWPairwiseAlignment swConsensus = new SWPairwiseAlignment(reference, read.getReadBases(), SW_MATCH, SW_MISMATCH, SW_GAP, SW_GAP_EXTEND);
          Consensus c = createAlternateConsensus(swConsensus.getAlignmentStart2wrt1(), swConsensus.getCigar(), reference, read.getReadBases());
          if ( c != null ) {
              altConsensesToPopulate.add(c);
-             SWalignmentSuccess++;
+             SWalignmentSuccess.incrementAndGet();
          }
     }
 
@@ -1238,7 +1414,7 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
         return true;
     }
 
-    private boolean alternateReducesEntropy(final List<AlignedRead> reads, final byte[] reference, final int leftmostIndex) {
+    private boolean alternateReducesEntropy(final List<AlignedRead> reads, final byte[] reference, final int leftmostIndex, final StringBuilder sb) {
         final int[] originalMismatchBases = new int[reference.length];
         final int[] cleanedMismatchBases = new int[reference.length];
         final int[] totalOriginalBases = new int[reference.length];
@@ -1299,7 +1475,6 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
         }
 
         int originalMismatchColumns = 0, cleanedMismatchColumns = 0;
-        StringBuilder sb = new StringBuilder();
         for ( int i=0; i < reference.length; i++ ) {
             if ( cleanedMismatchBases[i] == originalMismatchBases[i] )
                 continue;
@@ -1328,16 +1503,7 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
 
         //logger.debug("Original mismatch columns = " + originalMismatchColumns + "; cleaned mismatch columns = " + cleanedMismatchColumns);
 
-        final boolean reduces = (originalMismatchColumns == 0 || cleanedMismatchColumns < originalMismatchColumns);
-        if ( reduces && snpsOutput != null ) {
-            try {
-                snpsOutput.write(sb.toString());
-                snpsOutput.flush();
-            } catch (Exception e) {
-                throw new UserException.CouldNotCreateOutputFile("snpsOutput", "Failed to write SNPs output file", e);
-            }
-        }
-        return reduces;
+        return (originalMismatchColumns == 0 || cleanedMismatchColumns < originalMismatchColumns);
     }
 
     protected static Cigar unclipCigar(Cigar cigar) {
@@ -1539,6 +1705,80 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
         }
     }
 
+    /**
+     * The outcome of realigning the reads of one target interval, waiting to be written out and applied to the reads
+     */
+    private static class RealignmentResult {
+        public final GenomeLoc interval;
+        public final List<GATKSAMRecord> reads;
+        public final List<AlignedRead> altReads;
+        public final byte[] reference;
+        public final int leftmostIndex;
+        public final long totalRawMismatchSum;
+        public final Consensus bestConsensus;
+        public final double improvement;
+
+        // the SNPs output for this interval
+        public final StringBuilder snps = new StringBuilder();
+
+        // set if one of the reads could not be updated, in which case nothing is cleaned or written out
+        public boolean aborted = false;
+        public boolean reducesEntropy = false;
+
+        public RealignmentResult(GenomeLoc interval, List<GATKSAMRecord> reads, List<AlignedRead> altReads, byte[] reference,
+                                 int leftmostIndex, long totalRawMismatchSum, Consensus bestConsensus) {
+            this.interval = interval;
+            this.reads = reads;
+            this.altReads = altReads;
+            this.reference = reference;
+            this.leftmostIndex = leftmostIndex;
+            this.totalRawMismatchSum = totalRawMismatchSum;
+            this.bestConsensus = bestConsensus;
+            this.improvement = (bestConsensus == null ? -1 : ((double)(totalRawMismatchSum - bestConsensus.mismatchSum))/10.0);
+        }
+    }
+
+    /**
+     * Either a single read or the reads of a target interval (with their realignment, if one was started),
+     * waiting for everything before them to be emitted
+     */
+    private static class PendingOutput {
+        public final SAMRecord read;
+        public final ReadBin readsToClean;
+        public final ArrayList<GATKSAMRecord> readsNotToClean;
+        public final Future<RealignmentResult> realignment;
+
+        public PendingOutput(SAMRecord read) {
+            this.read = read;
+            this.readsToClean = null;
+            this.readsNotToClean = null;
+            this.realignment = null;
+        }
+
+        public PendingOutput(ReadBin readsToClean, ArrayList<GATKSAMRecord> readsNotToClean, Future<RealignmentResult> realignment) {
+            this.read = null;
+            this.readsToClean = readsToClean;
+            this.readsNotToClean = readsNotToClean;
+            this.realignment = realignment;
+        }
+
+        public boolean isDone() {
+            return realignment == null || realignment.isDone();
+        }
+
+        public RealignmentResult getRealignment() {
+            try {
+                return realignment.get();
+            } catch (InterruptedException e) {
+                throw new ReviewedStingException("Interrupted while waiting for a realignment", e);
+            } catch (ExecutionException e) {
+                if ( e.getCause() instanceof RuntimeException )
+                    throw (RuntimeException)e.getCause();
+                throw new ReviewedStingException("Realignment failed", e.getCause());
+            }
+        }
+    }
+
     private static class Consensus {
         public final byte[] str;
         public final ArrayList<Pair<Integer, Integer>> readIndexes;
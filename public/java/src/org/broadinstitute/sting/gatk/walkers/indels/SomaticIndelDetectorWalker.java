@@ -55,6 +55,7 @@ import org.broadinstitute.sting.utils.codecs.refseq.Transcript;
 import org.broadinstitute.sting.utils.codecs.vcf.*;
 import org.broadinstitute.sting.utils.collections.CircularArray;
 import org.broadinstitute.sting.utils.collections.PrimitivePair;
+import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
 import org.broadinstitute.sting.utils.exceptions.StingException;
 import org.broadinstitute.sting.utils.exceptions.UserException;
 import org.broadinstitute.sting.utils.interval.IntervalMergingRule;
@@ -62,10 +63,16 @@ import org.broadinstitute.sting.utils.interval.IntervalUtils;
 import org.broadinstitute.sting.utils.interval.OverlappingIntervalIterator;
 import org.broadinstitute.sting.utils.sam.AlignmentUtils;
 import org.broadinstitute.sting.utils.sam.GATKSAMRecord;
+import org.broadinstitute.sting.utils.threading.DaemonThreadFactory;
 import org.broadinstitute.sting.utils.variantcontext.*;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 /**
@@ -228,6 +235,8 @@ public class SomaticIndelDetectorWalker extends ReadWalker<Integer,Integer> {
             "if window is too small",required=false) int WINDOW_SIZE = 200;
     @Argument(fullName="maxNumberOfReads",shortName="mnr",doc="Maximum number of reads to cache in the window; if number of reads exceeds this number,"+
                 " the window will be skipped and no calls will be made from it",required=false) int MAX_READ_NUMBER = 10000;
+    @Argument(fullName="callingThreads", shortName="callingThreads", doc="Number of threads used to collect the statistics of the "+
+                "candidate indel sites in a window concurrently; calls are still emitted in order",required=false) int CALLING_THREADS = 1;
 
 
 
@@ -255,6 +264,8 @@ public class SomaticIndelDetectorWalker extends ReadWalker<Integer,Integer> {
     private Writer bedWriter = null;
     private Writer verboseWriter = null;
 
+    private ExecutorService callingPool = null; // when calling with several threads: the workers collecting the statistics of candidate sites
+
 
 	private static String annGenomic = "GENOMIC\t";
 	private static String annIntron = "INTRON";
@@ -344,6 +355,8 @@ public class SomaticIndelDetectorWalker extends ReadWalker<Integer,Integer> {
 	public void initialize() {
 
         call_somatic =  (call_unpaired ? false : true);
+        if ( CALLING_THREADS < 1 ) throw new UserException.BadArgumentValue("callingThreads", "must be at least 1");
+        if ( CALLING_THREADS > 1 ) callingPool = Executors.newFixedThreadPool(CALLING_THREADS, new DaemonThreadFactory("SomaticIndelDetector"));
 		normal_context = new WindowContext(0,WINDOW_SIZE);
         normalSamples = new HashSet<String>();
 
@@ -357,6 +370,7 @@ public class SomaticIndelDetectorWalker extends ReadWalker<Integer,Integer> {
 			RMDTrackBuilder builder = new RMDTrackBuilder(getToolkit().getReferenceDataSource().getReference().getSequenceDictionary(),
                                                           getToolkit().getGenomeLocParser(),
                                                           getToolkit().getArguments().unsafe);
+            builder.setIndexingThreads(getToolkit().getArguments().numberOfThreads);
             RMDTrack refseq = builder.createInstanceOfTrack(RefSeqCodec.class,new File(RefseqFileName));
 
             refseqIterator = new SeekableRODIterator(refseq.getHeader(),
@@ -709,6 +723,8 @@ public class SomaticIndelDetectorWalker extends ReadWalker<Integer,Integer> {
             }
             long move_to = adjustedPosition;
 
+            Map<Integer,Future<IndelPrecall[]>> precalls = startPrecalls(normal_context.getStart(), Math.min(adjustedPosition,normal_context.getStop()+1));
+
             for ( int pos = normal_context.getStart() ; pos < Math.min(adjustedPosition,normal_context.getStop()+1) ; pos++ ) {
 
                 boolean genotype = false;
@@ -739,7 +755,8 @@ public class SomaticIndelDetectorWalker extends ReadWalker<Integer,Integer> {
 
                 if ( normal_context.indelsAt(pos).size() == 0 && ! genotype ) continue;
 
-                IndelPrecall normalCall = new IndelPrecall(normal_context,pos,NQS_WIDTH);
+                IndelPrecall[] calls = getPrecalls(precalls, pos);
+                IndelPrecall normalCall = ( calls != null ? calls[0] : new IndelPrecall(normal_context,pos,NQS_WIDTH) );
                 JexlContext jc = new MapContext();
                 normalCall.fillContext(jc,singleMetricsCassette);
                 boolean discard_event = false;
@@ -773,6 +790,7 @@ public class SomaticIndelDetectorWalker extends ReadWalker<Integer,Integer> {
                     move_to = adjustPosition(left);
                     if ( move_to == -1 ) {
                         // failed to find appropriate shift position, the data are probably to messy anyway so we drop them altogether
+                        finishPrecalls(precalls);
                         normal_context.shift((int)(adjustedPosition-normal_context.getStart()));
                         return;
                     }
@@ -801,6 +819,7 @@ public class SomaticIndelDetectorWalker extends ReadWalker<Integer,Integer> {
             }
 
             if ( DEBUG ) System.out.println("DEBUG>> Actual shift to " + move_to + " ("+adjustedPosition+")");
+            finishPrecalls(precalls);
             normal_context.shift((int)(move_to - normal_context.getStart() ) );
     }
 
@@ -878,6 +897,8 @@ public class SomaticIndelDetectorWalker extends ReadWalker<Integer,Integer> {
 
         if ( DEBUG ) System.out.println("DEBUG>> Emitting in somatic mode up to "+position+" force shift="+force+" current window="+tumor_context.getStart()+"-"+tumor_context.getStop());
 
+        Map<Integer,Future<IndelPrecall[]>> precalls = startPrecalls(tumor_context.getStart(), Math.min(adjustedPosition,tumor_context.getStop()+1));
+
         for ( int pos = tumor_context.getStart() ; pos < Math.min(adjustedPosition,tumor_context.getStop()+1) ; pos++ ) {
 
             boolean genotype = false;
@@ -909,8 +930,9 @@ public class SomaticIndelDetectorWalker extends ReadWalker<Integer,Integer> {
 
             if ( DEBUG && genotype ) System.out.println("DEBUG>> Genotyping requested at "+pos);
 
-            IndelPrecall tumorCall = new IndelPrecall(tumor_context,pos,NQS_WIDTH);
-            IndelPrecall normalCall = new IndelPrecall(normal_context,pos,NQS_WIDTH);
+            IndelPrecall[] calls = getPrecalls(precalls, pos);
+            IndelPrecall tumorCall = ( calls != null ? calls[1] : new IndelPrecall(tumor_context,pos,NQS_WIDTH) );
+            IndelPrecall normalCall = ( calls != null ? calls[0] : new IndelPrecall(normal_context,pos,NQS_WIDTH) );
 
             JexlContext jc = new MapContext();
             tumorCall.fillContext(jc,tumorMetricsCassette);
@@ -955,6 +977,7 @@ public class SomaticIndelDetectorWalker extends ReadWalker<Integer,Integer> {
                 move_to = adjustPosition(left);
                 if ( move_to == -1 ) {
                     // failed to find appropriate shift position, the data are probably to messy anyway so we drop them altogether
+                    finishPrecalls(precalls);
                     normal_context.shift((int)(adjustedPosition-normal_context.getStart()));
                     tumor_context.shift((int)(adjustedPosition-tumor_context.getStart()));
                     return;
@@ -986,10 +1009,65 @@ public class SomaticIndelDetectorWalker extends ReadWalker<Integer,Integer> {
         }
 
         if ( DEBUG ) System.out.println("DEBUG>> Actual shift to " + move_to + " ("+adjustedPosition+")");
+        finishPrecalls(precalls);
         tumor_context.shift((int)(move_to - tumor_context.getStart() ) );
         normal_context.shift((int)(move_to - normal_context.getStart() ) );
     }
 
+    /** When calling with several threads, starts collecting the statistics of every site in [from,to) (that is not genotyped yet)
+     * with indel observations: in the tumor window for somatic calls, or in the normal window otherwise. Sites are still
+     * emitted one by one and in order, each taking its statistics from here (or computing them on the spot if they were not
+     * requested); the windows must not be changed until finishPrecalls() has been called.
+     *
+     * @param from first position to look at
+     * @param to position after the last one to look at
+     * @return the normal (and tumor) calls being made, by position; null when calling with a single thread
+     */
+    private Map<Integer,Future<IndelPrecall[]>> startPrecalls(int from, long to) {
+        if ( callingPool == null ) return null;
+
+        Map<Integer,Future<IndelPrecall[]>> precalls = new HashMap<Integer,Future<IndelPrecall[]>>();
+        for ( int pos = Math.max(from, (int)lastGenotypedPosition+1) ; pos < to ; pos++ ) {
+            if ( ( call_somatic ? tumor_context : normal_context ).indelsAt(pos).size() == 0 ) continue;
+
+            final int p = pos;
+            precalls.put(pos, callingPool.submit(new Callable<IndelPrecall[]>() {
+                public IndelPrecall[] call() {
+                    if ( ! call_somatic ) return new IndelPrecall[] { new IndelPrecall(normal_context,p,NQS_WIDTH) };
+                    return new IndelPrecall[] { new IndelPrecall(normal_context,p,NQS_WIDTH), new IndelPrecall(tumor_context,p,NQS_WIDTH) };
+                }
+            }));
+        }
+        return precalls;
+    }
+
+    /** Returns the calls started at the position by startPrecalls(), waiting for them if need be, or null if there are none */
+    private IndelPrecall[] getPrecalls(Map<Integer,Future<IndelPrecall[]>> precalls, int pos) {
+        if ( precalls == null ) return null;
+        Future<IndelPrecall[]> calls = precalls.remove(pos);
+        if ( calls == null ) return null;
+
+        try {
+            return calls.get();
+        } catch (InterruptedException e) {
+            callingPool.shutdownNow();
+            throw new ReviewedStingException("Interrupted while waiting for the statistics of an indel site", e);
+        } catch (ExecutionException e) {
+            callingPool.shutdownNow();
+            if ( e.getCause() instanceof RuntimeException )
+                throw (RuntimeException)e.getCause();
+            throw new ReviewedStingException("Failed to collect the statistics of an indel site", e.getCause());
+        }
+    }
+
+    /** Waits for the calls started by startPrecalls() that were not used (the sites are past the point we could emit to),
+     * so that the windows can be shifted. Those sites will be looked at again once we have more coverage.
+     */
+    private void finishPrecalls(Map<Integer,Future<IndelPrecall[]>> precalls) {
+        if ( precalls == null ) return;
+        for ( int pos : new ArrayList<Integer>(precalls.keySet()) ) getPrecalls(precalls, pos);
+    }
+
     private String makeFullRecord(IndelPrecall normalCall, IndelPrecall tumorCall) {
         StringBuilder fullRecord = new StringBuilder();
         if ( tumorCall.getVariant() != null || normalCall.getVariant() == null) {
@@ -1267,8 +1345,12 @@ public class SomaticIndelDetectorWalker extends ReadWalker<Integer,Integer> {
         if ( DEBUG ) {
             System.out.println("DEBUG>> Emitting last window at "+normal_context.getStart()+"-"+normal_context.getStop());
         }
-        if ( call_somatic ) emit_somatic(1000000000, true);
-        else emit(1000000000,true); // emit everything we might have left
+        try {
+            if ( call_somatic ) emit_somatic(1000000000, true);
+            else emit(1000000000,true); // emit everything we might have left
+        } finally {
+            if ( callingPool != null ) callingPool.shutdown();
+        }
 
         if ( metricsWriter != null ) {
             metricsWriter.println(String.format("Normal calls made     %d", normalCallsMade));
@@ -1306,18 +1388,20 @@ public class SomaticIndelDetectorWalker extends ReadWalker<Integer,Integer> {
             public static enum Type { I, D};
             private String bases;
             private Type type;
-            private ArrayList<Integer> fromStartOffsets = null;
-            private ArrayList<Integer> fromEndOffsets = null;
+            private int[] fromStartOffsets = null;
+            private int[] fromEndOffsets = null;
+            private int numOffsets = 0;
 
-            private Set<ExpandedSAMRecord> reads = new HashSet<ExpandedSAMRecord>(); // keep track of reads that have this indel
+            private int count = 0; // number of reads that have this indel (the reads themselves keep track of their indels)
+            private String firstReadName = null;
             private Set<String> samples = new HashSet<String>();   // which samples had the indel described by this object
 
             public IndelVariant(ExpandedSAMRecord read , Type type, String bases) {
                 this.type = type;
                 this.bases = bases.toUpperCase();
                 addObservation(read);
-                fromStartOffsets = new ArrayList<Integer>();
-                fromEndOffsets = new ArrayList<Integer>();
+                fromStartOffsets = new int[4];
+                fromEndOffsets = new int[4];
             }
 
             /** Adds another observation for the current indel. It is assumed that the read being registered
@@ -1326,7 +1410,7 @@ public class SomaticIndelDetectorWalker extends ReadWalker<Integer,Integer> {
              * @param read
              */
             public void addObservation(ExpandedSAMRecord read) {
-                if ( reads.contains(read) ) {
+                if ( read.hasVariant(this) ) {
                     //TODO fix CleanedReadInjector and reinstate exception here: duplicate records may signal a problem with the bam
                     // seeing the same read again can mean only one thing: the input bam file is corrupted and contains
                     // duplicate records. We KNOW that this may happen for the time being due to bug in CleanedReadInjector
@@ -1335,7 +1419,9 @@ public class SomaticIndelDetectorWalker extends ReadWalker<Integer,Integer> {
                     //throw new StingException("Attempting to add indel observation that was already registered");
                     return;
                 }
-                reads.add(read);
+                read.addVariant(this);
+                count++;
+                if ( firstReadName == null ) firstReadName = read.getSAMRecord().getReadName();
                 String sample = null;
                 if ( read.getSAMRecord().getReadGroup() != null ) sample = read.getSAMRecord().getReadGroup().getSample();
                 if ( sample != null ) samples.add(sample);
@@ -1358,12 +1444,18 @@ public class SomaticIndelDetectorWalker extends ReadWalker<Integer,Integer> {
             }
 
             public void addReadPositions(int fromStart, int fromEnd) {
-                fromStartOffsets.add(fromStart);
-                fromEndOffsets.add(fromEnd);
+                if ( numOffsets == fromStartOffsets.length ) {
+                    fromStartOffsets = Arrays.copyOf(fromStartOffsets, 2*numOffsets);
+                    fromEndOffsets = Arrays.copyOf(fromEndOffsets, 2*numOffsets);
+                }
+                fromStartOffsets[numOffsets] = fromStart;
+                fromEndOffsets[numOffsets] = fromEnd;
+                numOffsets++;
             }
 
-            public List<Integer> getOffsetsFromStart() { return fromStartOffsets ; }
-            public List<Integer> getOffsetsFromEnd() { return fromEndOffsets; }
+            /** Returns a copy of the offsets of the indel from the starts of the reads, so that it can be sorted */
+            public int[] getOffsetsFromStart() { return Arrays.copyOf(fromStartOffsets, numOffsets) ; }
+            public int[] getOffsetsFromEnd() { return Arrays.copyOf(fromEndOffsets, numOffsets); }
 
             public String getSamples() {
                 StringBuffer sb = new StringBuffer();
@@ -1376,9 +1468,9 @@ public class SomaticIndelDetectorWalker extends ReadWalker<Integer,Integer> {
                 return sb.toString();
             }
 
-            public Set<ExpandedSAMRecord> getReadSet() { return reads; }
+            public String getFirstReadName() { return firstReadName; }
 
-            public int getCount() { return reads.size(); }
+            public int getCount() { return count; }
 
             public String getBases() { return bases; }
 
@@ -1468,27 +1560,24 @@ public class SomaticIndelDetectorWalker extends ReadWalker<Integer,Integer> {
             long left = Math.max( pos-nqs, context.getStart() );
             long right = Math.min(pos+nqs-1, context.getStop());
 //if ( pos == 3534096 ) System.out.println("pos="+pos +" total reads: "+context.getReads().size());
-            Iterator<ExpandedSAMRecord> read_iter = context.getReads().iterator();
+            for ( ExpandedSAMRecord rec : context.getReads() ) {
+                SAMRecord read = rec.getSAMRecord();
 
+                if( read.getAlignmentStart() > pos ) break; // reads are kept in the order of their starts, so none of the rest overlaps pos either
+                if( read.getAlignmentEnd() < pos ) continue;
 
-            while ( read_iter.hasNext() ) {
-                ExpandedSAMRecord rec = read_iter.next();
-                SAMRecord read = rec.getSAMRecord();
                 byte[] flags = rec.getExpandedMMFlags();
                 byte[] quals = rec.getExpandedQuals();
                 int mm = rec.getMMCount();
 
-
-                if( read.getAlignmentStart() > pos || read.getAlignmentEnd() < pos ) continue;
-
                 long local_right = right; // end of nqs window for this particular read. May need to be advanced further right
                                           // if read has a deletion. The gap in the middle of nqs window will be skipped
                                           // automatically since flags/quals are set to -1 there
 
                 boolean read_has_a_variant = false;
-                boolean read_has_consensus = ( consensus_indel!= null && consensus_indel.getReadSet().contains(rec) );
+                boolean read_has_consensus = ( consensus_indel!= null && rec.hasVariant(consensus_indel) );
                 for ( IndelVariant v : variants ) {
-                    if ( v.getReadSet().contains(rec) ) {
+                    if ( rec.hasVariant(v) ) {
                         read_has_a_variant = true;
                         local_right += v.lengthOnRef();
                         break;
@@ -1554,10 +1643,12 @@ public class SomaticIndelDetectorWalker extends ReadWalker<Integer,Integer> {
 
             // compute median/mad for offsets from the read starts/ends
             if ( consensus_indel != null ) {
-                from_start_median = median(consensus_indel.getOffsetsFromStart()) ;
-                from_start_mad = mad(consensus_indel.getOffsetsFromStart(),from_start_median);
-                from_end_median = median(consensus_indel.getOffsetsFromEnd()) ;
-                from_end_mad = mad(consensus_indel.getOffsetsFromEnd(),from_end_median);   
+                int[] from_start = consensus_indel.getOffsetsFromStart();
+                int[] from_end = consensus_indel.getOffsetsFromEnd();
+                from_start_median = median(from_start) ;
+                from_start_mad = mad(from_start,from_start_median);
+                from_end_median = median(from_end) ;
+                from_end_mad = mad(from_end,from_end_median);
             }
         }
 
@@ -1566,14 +1657,6 @@ public class SomaticIndelDetectorWalker extends ReadWalker<Integer,Integer> {
          * @param l
          * @return
          */
-        private int median(List<Integer> l) {
-            Collections.sort(l);
-            int k = l.size()/2;
-            return ( l.size() % 2 == 0 ?
-                  (l.get(k-1).intValue()+l.get(k).intValue())/2 :
-                   l.get(k).intValue());
-        }
-
         private int median(int[] l) {
             Arrays.sort(l);
             int k = l.length/2;
@@ -1582,10 +1665,10 @@ public class SomaticIndelDetectorWalker extends ReadWalker<Integer,Integer> {
                    l[k]);
         }
 
-        private int mad(List<Integer> l, int med) {
-            int [] diff = new int[l.size()];
-            for ( int i = 0; i < l.size(); i++ ) {
-                   diff[i] = Math.abs(l.get(i).intValue() - med);
+        private int mad(int[] l, int med) {
+            int [] diff = new int[l.length];
+            for ( int i = 0; i < l.length; i++ ) {
+                   diff[i] = Math.abs(l[i] - med);
             }
             return median(diff);
         }
@@ -1845,9 +1928,11 @@ public class SomaticIndelDetectorWalker extends ReadWalker<Integer,Integer> {
     }
 
     class WindowContext implements IndelListener {
-            private Set<ExpandedSAMRecord> reads;
+            private List<ExpandedSAMRecord> reads; // in the order of their alignment starts
             private int start=0; // where the window starts on the ref, 1-based
             private CircularArray< List< IndelVariant > > indels;
+            private CircularArray.Int coverage; // number of reads spanning each position of the window
+            private CircularArray.Int insertionCoverage; // number of reads ending with an insertion right before each position
 
             private List<IndelVariant> emptyIndelList = new ArrayList<IndelVariant>();
 
@@ -1855,8 +1940,9 @@ public class SomaticIndelDetectorWalker extends ReadWalker<Integer,Integer> {
             public WindowContext(int start, int length) {
                 this.start = start;
                 indels = new CircularArray< List<IndelVariant> >(length);
-//                reads = new LinkedList<SAMRecord>();
-                reads = new HashSet<ExpandedSAMRecord>();
+                coverage = new CircularArray.Int(length);
+                insertionCoverage = new CircularArray.Int(length);
+                reads = new ArrayList<ExpandedSAMRecord>();
             }
 
             /** Returns 1-based reference start position of the interval this object keeps context for.
@@ -1878,6 +1964,8 @@ public class SomaticIndelDetectorWalker extends ReadWalker<Integer,Integer> {
                 start = 0;
                 reads.clear();
                 indels.clear();
+                coverage.clear();
+                insertionCoverage.clear();
             }
 
         /**
@@ -1894,7 +1982,7 @@ public class SomaticIndelDetectorWalker extends ReadWalker<Integer,Integer> {
                 return false;               
             }
 
-            public Set<ExpandedSAMRecord> getReads() { return reads; }
+            public List<ExpandedSAMRecord> getReads() { return reads; }
 
             /** Returns the number of reads spanning over the specified reference position                                                                                                       
              * (regardless of whether they have a base or indel at that specific location).
@@ -1917,18 +2005,9 @@ public class SomaticIndelDetectorWalker extends ReadWalker<Integer,Integer> {
              * @param refPos position on the reference; must be within the bounds of the window
              */
             public int coverageAt(final long refPos, boolean countForIndels) {
-                int cov = 0;
-                for ( ExpandedSAMRecord read : reads ) {
-                    if ( read.getSAMRecord().getAlignmentStart() > refPos || read.getSAMRecord().getAlignmentEnd() < refPos ) {
-                        if ( countForIndels && read.getSAMRecord().getAlignmentEnd() == refPos - 1) {
-                            Cigar c = read.getSAMRecord().getCigar();
-                            if ( c.getCigarElement(c.numCigarElements()-1).getOperator() == CigarOperator.I ) cov++;
-                        }
-                        continue;
-                    }
-                    cov++;
-                } 
-                return cov;
+                final int i = (int)( refPos - start );
+                if ( i < 0 || i >= coverage.length() ) return 0;
+                return coverage.get(i) + ( countForIndels ? insertionCoverage.get(i) : 0 );
             }
 
 
@@ -1940,24 +2019,25 @@ public class SomaticIndelDetectorWalker extends ReadWalker<Integer,Integer> {
                 start += offset;
 
                 indels.shiftData(offset);
+                coverage.shiftData(offset);
+                insertionCoverage.shiftData(offset);
+                insertionCoverage.set(0, 0); // counted only reads ending right before the new start, and those are dropped below
                 if ( indels.get(0) != null && indels.get(0).size() != 0 ) {
                     IndelVariant indel =  indels.get(0).get(0);
 
                     System.out.println("WARNING: Indel(s) at first position in the window ("+refName+":"+start+"): currently not supported: "+
-                    (indel.getType()==IndelVariant.Type.I?"+":"-")+indel.getBases()+"; read: "+indel.getReadSet().iterator().next().getSAMRecord().getReadName()+"; site ignored");
+                    (indel.getType()==IndelVariant.Type.I?"+":"-")+indel.getBases()+"; read: "+indel.getFirstReadName()+"; site ignored");
                     indels.get(0).clear();
 //                    throw new StingException("Indel found at the first position ("+start+") after a shift was performed: currently not supported: "+
 //                    (indel.getType()==IndelVariant.Type.I?"+":"-")+indel.getBases()+"; reads: "+indel.getReadSet().iterator().next().getSAMRecord().getReadName());
                 }
                 
-                Iterator<ExpandedSAMRecord> read_iter = reads.iterator();
-
-                while ( read_iter.hasNext() ) {
-                    ExpandedSAMRecord r = read_iter.next();
-                    if ( r.getSAMRecord().getAlignmentEnd() < start ) { // discard reads and associated data that went out of scope
-                        read_iter.remove();
-                    }
+                int numKept = 0;
+                for ( ExpandedSAMRecord r : reads ) {
+                    if ( r.getSAMRecord().getAlignmentEnd() < start ) continue; // discard reads and associated data that went out of scope
+                    reads.set(numKept++, r);
                 }
+                reads.subList(numKept, reads.size()).clear();
             }
 
             public void add(SAMRecord read, byte [] ref) {
@@ -1966,8 +2046,13 @@ public class SomaticIndelDetectorWalker extends ReadWalker<Integer,Integer> {
 
                 ExpandedSAMRecord er = new ExpandedSAMRecord(read,ref,read.getAlignmentStart()-start,this);
                 //TODO duplicate records may actually indicate a problem with input bam file; throw an exception when the bug in CleanedReadInjector is fixed
-                if ( reads.contains(er)) return; // ignore duplicate records
                 reads.add(er);
+
+                final int last = Math.min(read.getAlignmentEnd()-start, coverage.length()-1);
+                for ( int i = read.getAlignmentStart()-start ; i <= last ; i++ ) coverage.increment(i, 1);
+                Cigar c = read.getCigar();
+                if ( c.getCigarElement(c.numCigarElements()-1).getOperator() == CigarOperator.I && last+1 < coverage.length() )
+                    insertionCoverage.increment(last+1, 1);
             }
 
             public void addObservation(int pos, IndelVariant.Type type, String bases, int fromStart, int fromEnd, ExpandedSAMRecord rec) {
@@ -2020,6 +2105,8 @@ public class SomaticIndelDetectorWalker extends ReadWalker<Integer,Integer> {
         private byte[] mismatch_flags;
         private byte[] expanded_quals;
         private int mms;
+        private IndelVariant[] variants = null; // the indels observed in this read
+        private int numVariants = 0;
 
         public ExpandedSAMRecord(SAMRecord r, byte [] ref, long offset, IndelListener l) {
 
@@ -2127,6 +2214,20 @@ public class SomaticIndelDetectorWalker extends ReadWalker<Integer,Integer> {
 
         public int getMMCount() { return mms; }
 
+        public void addVariant(IndelVariant v) {
+            if ( variants == null ) variants = new IndelVariant[2];
+            else if ( numVariants == variants.length ) variants = Arrays.copyOf(variants, 2*numVariants);
+            variants[numVariants++] = v;
+        }
+
+        /** Returns true if the indel (this very object, not just an equal one) was observed in this read */
+        public boolean hasVariant(IndelVariant v) {
+            for ( int i = 0 ; i < numVariants ; i++ ) {
+                if ( variants[i] == v ) return true;
+            }
+            return false;
+        }
+
         public boolean equals(Object o) {
             if ( this == o ) return true;
             if ( read == null ) return false;
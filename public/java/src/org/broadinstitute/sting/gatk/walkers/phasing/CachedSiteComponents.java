@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2012, The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.broadinstitute.sting.gatk.walkers.phasing;
+
+import java.util.Arrays;
+
+/*
+ * A union-find of one sample's cached sites, in which two sites are connected if some read has bases at both of them.
+ * It persists from site to site: each site is numbered and added as it enters the cache, and is unioned only with the
+ * last cached site of each of its reads [by read ID]; sites are evicted, oldest first, as they leave the cache.
+ *
+ * A union cannot be undone, so an evicted site stays in its component [and may still join cached sites together] until
+ * the evicted sites fill half of the storage, when the cached sites are re-unioned from the links they recorded.  The
+ * components are therefore never finer than those of the cached sites alone, and two cached sites that are NOT connected
+ * here are not connected by the reads of any window drawn from the cache.
+ */
+class CachedSiteComponents {
+    private int[] lastSiteOfRead = new int[0]; // for each read ID, the last site added with a base from that read [or -1]
+
+    private int firstSite = 0; // the number of the site stored at index 0 below
+    private int firstCachedSite = 0; // the sites numbered below this have been evicted
+    private int numSites = 0;
+
+    private int[] parents = new int[16]; // by index [= site number - firstSite]
+    private byte[] ranks = new byte[16];
+    private int[][] links = new int[16][]; // for each site, the numbers of the earlier sites it was unioned with
+    private int[] numLinks = new int[16];
+
+    // Adds the site with these reads [whose IDs are all below maxReadId], and returns its number
+    public int addSite(ReadBasesAtPosition readBases, int maxReadId) {
+        if (numSites == parents.length) {
+            if (2 * (firstCachedSite - firstSite) >= numSites)
+                compact();
+            else
+                grow();
+        }
+        if (lastSiteOfRead.length < maxReadId) {
+            int oldLength = lastSiteOfRead.length;
+            lastSiteOfRead = Arrays.copyOf(lastSiteOfRead, Math.max(maxReadId, 2 * oldLength));
+            Arrays.fill(lastSiteOfRead, oldLength, lastSiteOfRead.length, -1);
+        }
+
+        int index = numSites++;
+        int site = firstSite + index;
+        parents[index] = index;
+        ranks[index] = 0;
+        numLinks[index] = 0;
+        if (links[index] == null)
+            links[index] = new int[4];
+
+        for (int i = 0; i < readBases.size(); i++) {
+            int id = readBases.getReadId(i);
+            int lastSite = lastSiteOfRead[id];
+            lastSiteOfRead[id] = site;
+
+            // An ID last seen at an evicted site may since have been handed to another read:
+            if (lastSite < firstCachedSite || lastSite == site || isLinked(index, lastSite))
+                continue;
+
+            if (numLinks[index] == links[index].length)
+                links[index] = Arrays.copyOf(links[index], 2 * numLinks[index]);
+            links[index][numLinks[index]++] = lastSite;
+            union(index, lastSite - firstSite);
+        }
+
+        return site;
+    }
+
+    // Evicts all sites up to and including this one
+    public void evictThrough(int site) {
+        firstCachedSite = Math.max(firstCachedSite, site + 1);
+    }
+
+    public boolean inSameComponent(int site1, int site2) {
+        return find(site1 - firstSite) == find(site2 - firstSite);
+    }
+
+    private boolean isLinked(int index, int site) {
+        for (int i = 0; i < numLinks[index]; i++) {
+            if (links[index][i] == site)
+                return true;
+        }
+        return false;
+    }
+
+    private int find(int index) {
+        while (parents[index] != index) {
+            parents[index] = parents[parents[index]]; // path halving
+            index = parents[index];
+        }
+        return index;
+    }
+
+    private void union(int index1, int index2) {
+        int root1 = find(index1);
+        int root2 = find(index2);
+        if (root1 == root2)
+            return;
+
+        if (ranks[root1] > ranks[root2]) {
+            parents[root2] = root1;
+        }
+        else {
+            parents[root1] = root2;
+            if (ranks[root1] == ranks[root2])
+                ranks[root2]++;
+        }
+    }
+
+    private void grow() {
+        int length = 2 * parents.length;
+        parents = Arrays.copyOf(parents, length);
+        ranks = Arrays.copyOf(ranks, length);
+        links = Arrays.copyOf(links, length);
+        numLinks = Arrays.copyOf(numLinks, length);
+    }
+
+    // Drops the evicted sites, and re-unions the cached ones from their links to other cached sites
+    private void compact() {
+        int numEvicted = firstCachedSite - firstSite;
+        numSites -= numEvicted;
+        firstSite = firstCachedSite;
+
+        for (int index = 0; index < numSites; index++) {
+            int[] siteLinks = links[index + numEvicted];
+            links[index + numEvicted] = links[index];
+            links[index] = siteLinks;
+
+            int numSiteLinks = numLinks[index + numEvicted];
+            numLinks[index] = 0;
+            for (int i = 0; i < numSiteLinks; i++) {
+                if (siteLinks[i] >= firstSite)
+                    siteLinks[numLinks[index]++] = siteLinks[i];
+            }
+            parents[index] = index;
+            ranks[index] = 0;
+        }
+
+        for (int index = 0; index < numSites; index++) {
+            for (int i = 0; i < numLinks[index]; i++)
+                union(index, links[index][i] - firstSite);
+        }
+    }
+}
@@ -55,7 +55,8 @@ class DisjointSet {
     }
 
     public boolean inSameSet(int x, int y) {
-        return (x == y || nodes[x].parent == nodes[y].parent || findSet(x) == findSet(y));
+        // [Two roots both have null parents, so only a shared non-null parent shows the same set]
+        return (x == y || (nodes[x].parent != null && nodes[x].parent == nodes[y].parent) || findSet(x) == findSet(y));
     }
 
     public Set<Integer> inSameSetAs(int x, Collection<Integer> testSet) {
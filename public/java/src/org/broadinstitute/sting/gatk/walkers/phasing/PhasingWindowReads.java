@@ -0,0 +1,286 @@
+/*
+ * Copyright (c) 2012, The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.broadinstitute.sting.gatk.walkers.phasing;
+
+import org.apache.log4j.Logger;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/*
+ * The reads with bases in a phasing window while the window is narrowed down: their IDs, and the (increasing) indices of
+ * the window sites they have bases at.  The reads are numbered 0, 1, ... [their slots] in the order they are first seen.
+ * One instance is reused for every window, so that its arrays are only grown, and never reallocated, from site to site.
+ */
+class PhasingWindowReads {
+    private static final boolean DEBUG = false;
+
+    private ReadIdRegistry registry;
+    private Logger logger;
+    private int[] readSlots = new int[0]; // for each read ID, its slot while the sites are collected [or -1]
+
+    private int numReads = 0;
+    private int[] windowReadIds = new int[16];
+    private int[][] readSites = new int[16][];
+    private int[] numReadSites = new int[16];
+    private byte[] lastReadBases = new byte[16];
+
+    public PhasingWindowReads(ReadIdRegistry registry, Logger logger) {
+        this.registry = registry;
+        this.logger = logger;
+    }
+
+    // Starts collecting the sites of the reads in a new window, whose read IDs are all below maxReadId
+    public void startWindow(int maxReadId) {
+        if (readSlots.length < maxReadId) {
+            int oldLength = readSlots.length;
+            readSlots = Arrays.copyOf(readSlots, Math.max(maxReadId, 2 * oldLength));
+            Arrays.fill(readSlots, oldLength, readSlots.length, -1);
+        }
+        numReads = 0;
+    }
+
+    // ASSUMES that the sites are added in increasing order of siteIndex [from startWindow() to endWindow()]
+    public void addReadBase(int id, int siteIndex, byte base) {
+        int slot = readSlots[id];
+        if (slot < 0) {
+            slot = addRead(id);
+        }
+        else if (readSites[slot][numReadSites[slot] - 1] == siteIndex) { // the read already has a base at siteIndex
+            lastReadBases[slot] = base;
+            return;
+        }
+
+        if (numReadSites[slot] == readSites[slot].length)
+            readSites[slot] = Arrays.copyOf(readSites[slot], 2 * numReadSites[slot]);
+        readSites[slot][numReadSites[slot]++] = siteIndex;
+        lastReadBases[slot] = base;
+    }
+
+    // Whether the read already has a base at siteIndex [valid from startWindow() to endWindow()]
+    public boolean hasBaseAt(int id, int siteIndex) {
+        int slot = readSlots[id];
+        return slot >= 0 && readSites[slot][numReadSites[slot] - 1] == siteIndex;
+    }
+
+    // The last base added for the read [valid from startWindow() to endWindow()]
+    public byte getLastBase(int id) {
+        return lastReadBases[readSlots[id]];
+    }
+
+    public void endWindow() {
+        for (int slot = 0; slot < numReads; slot++)
+            readSlots[windowReadIds[slot]] = -1;
+    }
+
+    public int getNumReads() {
+        return numReads;
+    }
+
+    private int addRead(int id) {
+        if (numReads == windowReadIds.length) {
+            windowReadIds = Arrays.copyOf(windowReadIds, 2 * numReads);
+            readSites = Arrays.copyOf(readSites, 2 * numReads);
+            numReadSites = Arrays.copyOf(numReadSites, 2 * numReads);
+            lastReadBases = Arrays.copyOf(lastReadBases, 2 * numReads);
+        }
+        int slot = numReads++;
+        windowReadIds[slot] = id;
+        if (readSites[slot] == null)
+            readSites[slot] = new int[4];
+        numReadSites[slot] = 0;
+        readSlots[id] = slot;
+        return slot;
+    }
+
+    public BitSet removeExtraneousReads(int numHetSites, int phasingSiteIndex) {
+        /* Every read links EACH pair of sites for which it contains bases.  Each such edge is packed, together with the read that contributes it,
+           into a long [edge in the upper half, read in the lower half], so that sorting them groups together all reads contributing the same edge.
+         */
+        int numEdges = 0;
+        for (int slot = 0; slot < numReads; slot++)
+            numEdges += numReadSites[slot] * (numReadSites[slot] - 1) / 2;
+
+        long[] edgeReads = new long[numEdges];
+        boolean[] siteHasEdges = new boolean[numHetSites];
+        DisjointSet readGraphCC = new DisjointSet(numHetSites);
+        int edgeIndex = 0;
+        for (int slot = 0; slot < numReads; slot++) {
+            int[] siteInds = readSites[slot];
+            // Connect each pair of sites in the read:
+            for (int i = 0; i < numReadSites[slot]; i++) {
+                for (int j = i + 1; j < numReadSites[slot]; j++) {
+                    if (DEBUG) logger.debug("Read = " + registry.getName(windowReadIds[slot]) + " is adding edge: (" + siteInds[i] + ", " + siteInds[j] + ")");
+                    edgeReads[edgeIndex++] = ((long) (siteInds[i] * numHetSites + siteInds[j]) << 32) | slot;
+                    readGraphCC.setUnion(siteInds[i], siteInds[j]);
+                    siteHasEdges[siteInds[i]] = true;
+                    siteHasEdges[siteInds[j]] = true;
+                }
+            }
+        }
+        Arrays.sort(edgeReads);
+        BitSet keepReads = new BitSet();
+
+        /* Check which Reads are involved in acyclic paths from (phasingSiteIndex - 1) to (phasingSiteIndex):
+
+           In detail:
+           Every Read links EACH pair of sites for which it contains bases.  Then, each such edge is added to a "site connectivity graph".
+           A read provides non-trivial bias toward the final haplotype decision if it participates in a path from prev ---> cur.  This is tested by
+           considering each edge that the read contributes.  For edge e=(v1,v2), if there exists a path from prev ---> v1 [that doesn't include v2] and
+           cur ---> v2 [that doesn't include v1], then there is a path from prev ---> cur that uses e, hence making the read significant.
+           By excluding each vertex's edges and then calculating connected components, we are able to make the determination, for example,
+           if a path exists from prev ---> v1 that excludes v2.
+
+           Furthermore, if the path DOES use other edges that exist solely due to the read, then that's fine, since adding in the read will give those edges as well.
+           And, if the path uses edges from other reads, then keeping all other reads that contribute those edges
+           [which will happen since those edges are also in paths from prev ---> cur] is sufficient for this path to exist.
+
+           NOTE:
+           If we would use NON-UNIFORM priors for the various haplotypes consistent with a margnialized haplotype, then this calculation would not be correct, since the equivalence of:
+           1. The read affects the final marginal haplotype posterior probability (for general mapping and base quality values).
+           2. The read has edges involved in a path from prev ---> cur.
+           DEPENDS STRONGLY on the fact that all haplotypes have the same EXACT prior.
+
+           This is due to the following:
+           [We denote:
+           R = set of all reads
+           r = a single read
+           "AA + CC" = AA on top chromosome, CC on bottom chromosome]
+
+           Note that since there are only two haplotype possibilities:
+           P(AA + CC | R) + P(AC + CA | R) = 1
+
+           Now, if we assume that all haplotypes consistent with AA + CC have the same prior probability [P(AA + CC | R)], then:
+           P(AA + CC | R)
+           = P(AAAA + CCCC | R) + ... + P(AACC + CCAA | R)
+           = [P(AAAA + CCCC , R) + ... + P(AACC + CCAA , R)] / P(R)
+           \propto P(AAAA + CCCC , R) + ... + P(AACC + CCAA , R)
+           = P(R | AAAA + CCCC)*P(AAAA + CCCC) + ... + P(R | AACC + CCAA)*P(AACC + CCAA)
+           = P(AA + CC | R) * [P(R | AAAA + CCCC) + ... + P(R | AACC + CCAA)]
+           
+           Since we assume independence between reads given a particular haplotype [P(R | AAAA + CCCC) = \prod_r P(r | AAAA + CCCC)],
+           a new read r affects P(AA + CC | R) by multiplying each of the terms in the sum by, e.g., P(r | AAAA + CCCC).
+           Therefore, if these values do not affect the ratio of:
+           (I) [P(R | AAAA + CCCC) + ... + P(R | AACC + CCAA)] / [P(R | ACAA + CACC) + ... + P(R | ACCC + CAAA)]
+           then they do not affect the value of:
+           (II) P(AA + CC | R) / P(AC + CA | R)   [which uniquely defines their values, since they sum to 1]
+
+           And, the P(r | AAAA + CCCC), ..., P(r | ACCC + CAAA) do not affect ratio (I) iff r's edges do not take part in a path from prev to cur in combination with the other reads in R.
+         */
+        int prev = phasingSiteIndex - 1;
+        int cur = phasingSiteIndex;
+
+        if (!readGraphCC.inSameSet(prev, cur)) { // There is NO path between cur and prev
+            if (DEBUG)
+                logger.debug("NO READ PATH between PHASE site [" + cur + "] and UPSTREAM site [" + prev + "]");
+            numReads = 0;
+            return keepReads;
+        }
+
+        // The distinct edges of the graph:
+        int[] edges = new int[numEdges];
+        int numDistinctEdges = 0;
+        for (int i = 0; i < numEdges; i++) {
+            int e = (int) (edgeReads[i] >>> 32);
+            if (numDistinctEdges == 0 || edges[numDistinctEdges - 1] != e)
+                edges[numDistinctEdges++] = e;
+        }
+
+        /* Check the connected components of prev and cur when removing each individual vertex's edges:
+           [Total run-time: for each vertex, calculate connected components after removing it's edges: O(V * E)]
+         */
+        DisjointSet[] ccAfterRemove = new DisjointSet[numHetSites];
+        for (int site = 0; site < numHetSites; site++) {
+            if (!siteHasEdges[site])
+                continue;
+            if (DEBUG) logger.debug("Calculating CC after removing edges of site: " + site);
+
+            // Run-time for efficiently calculating connected components using DisjointSet: O(E)
+            ccAfterRemove[site] = new DisjointSet(numHetSites);
+            for (int i = 0; i < numDistinctEdges; i++) {
+                int v1 = edges[i] / numHetSites;
+                int v2 = edges[i] % numHetSites;
+                if (v1 != site && v2 != site)
+                    ccAfterRemove[site].setUnion(v1, v2);
+            }
+        }
+
+        int i = 0;
+        while (i < numEdges) {
+            int e = (int) (edgeReads[i] >>> 32);
+            int v1 = e / numHetSites;
+            int v2 = e % numHetSites;
+            if (DEBUG) logger.debug("Testing the path-connectivity of Edge: (" + v1 + ", " + v2 + ")");
+
+            /* Edge e={v1,v2} contributes a path between prev and cur for testRead iff:
+               testRead[v1] != null, testRead[v2] != null, and there is a path from prev ---> v1 -> v2 ---> cur  [or vice versa].
+               Note that the path from prev ---> v1 will NOT contain v2, since we removed all of v2's edges,
+               and the path from v2 ---> cur will NOT contain v1.
+             */
+            boolean prevTo2and1ToCur = ccAfterRemove[v1].inSameSet(prev, v2) && ccAfterRemove[v2].inSameSet(cur, v1);
+            boolean prevTo1and2ToCur = ccAfterRemove[v2].inSameSet(prev, v1) && ccAfterRemove[v1].inSameSet(cur, v2);
+
+            for (; i < numEdges && (int) (edgeReads[i] >>> 32) == e; i++) {
+                if (prevTo2and1ToCur || prevTo1and2ToCur) {
+                    int id = windowReadIds[(int) edgeReads[i]];
+                    keepReads.set(id);
+
+                    if (DEBUG && logger.isDebugEnabled()) {
+                        if (prevTo2and1ToCur)
+                            logger.debug("Keep read " + registry.getName(id) + " due to path: " + prev + " ---> " + v2 + " -> " + v1 + " ---> " + cur);
+                        else
+                            logger.debug("Keep read " + registry.getName(id) + " due to path: " + prev + " ---> " + v1 + " -> " + v2 + " ---> " + cur);
+                    }
+                }
+            }
+        }
+
+        // Retain only the reads that contain an edge in a path connecting prev and cur:
+        int numKept = 0;
+        for (int slot = 0; slot < numReads; slot++) {
+            if (!keepReads.get(windowReadIds[slot])) {
+                if (DEBUG) logger.debug("Removing extraneous read: " + registry.getName(windowReadIds[slot]));
+                continue;
+            }
+            int[] sites = readSites[numKept];
+            windowReadIds[numKept] = windowReadIds[slot];
+            readSites[numKept] = readSites[slot];
+            readSites[slot] = sites;
+            numReadSites[numKept] = numReadSites[slot];
+            numKept++;
+        }
+        numReads = numKept;
+
+        return keepReads;
+    }
+
+    public boolean[] getSitesWithReads(int numHetSites) {
+        boolean[] sitesWithReads = new boolean[numHetSites];
+        for (int slot = 0; slot < numReads; slot++) {
+            for (int i = 0; i < numReadSites[slot]; i++)
+                sitesWithReads[readSites[slot][i]] = true;
+        }
+        return sitesWithReads;
+    }
+}
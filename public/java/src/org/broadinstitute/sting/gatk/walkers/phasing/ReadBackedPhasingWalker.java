@@ -129,6 +129,10 @@ public class ReadBackedPhasingWalker extends RodWalker<PhasingStatsAndOutput, Ph
     private LinkedList<VariantAndReads> unphasedSiteQueue = null;
     private CloneableIteratorLinkedList<UnfinishedVariantAndReads> partiallyPhasedSites = null; // the phased VCs to be emitted, and the alignment bases at these positions
 
+    private ReadIdRegistry readIdRegistry = null; // the IDs of the reads at the sites in unphasedSiteQueue and partiallyPhasedSites
+    private Map<String, CachedSiteComponents> sampleSiteComponents = null; // for each sample, which of the sites in unphasedSiteQueue and partiallyPhasedSites its reads connect
+    private PhasingWindowReads windowReads = null; // the reads of the PhasingWindow being built
+
     private static PreciseNonNegativeDouble ZERO = new PreciseNonNegativeDouble(0.0);
 
     public static final String PQ_KEY = "PQ";
@@ -165,6 +169,9 @@ public class ReadBackedPhasingWalker extends RodWalker<PhasingStatsAndOutput, Ph
 
         unphasedSiteQueue = new LinkedList<VariantAndReads>();
         partiallyPhasedSites = new CloneableIteratorLinkedList<UnfinishedVariantAndReads>();
+        readIdRegistry = new ReadIdRegistry();
+        sampleSiteComponents = new HashMap<String, CachedSiteComponents>();
+        windowReads = new PhasingWindowReads(readIdRegistry, logger);
 
         initializeVcfWriter();
 
@@ -333,6 +340,10 @@ public class ReadBackedPhasingWalker extends RodWalker<PhasingStatsAndOutput, Ph
             }
             UnfinishedVariantAndReads uvr = partiallyPhasedSites.remove();
             vcList.add(uvr.unfinishedVariant.toVariantContext());
+            for (Map.Entry<String, ReadBasesAtPosition> sampleReads : uvr.sampleReadBases.entrySet()) {
+                sampleSiteComponents.get(sampleReads.getKey()).evictThrough(sampleReads.getValue().getSiteIndex());
+                sampleReads.getValue().release(readIdRegistry);
+            }
         }
 
         return vcList;
@@ -526,29 +537,42 @@ public class ReadBackedPhasingWalker extends RodWalker<PhasingStatsAndOutput, Ph
                 }
             }
 
-            // First, assemble the "sub-reads" from the COMPLETE WINDOW-BASED SET of heterozygous positions for this sample:
-            buildReadsAtHetSites(listHetGenotypes, sample, grbPhase.loc);
+            GenotypeAndReadBases grbPrev = listHetGenotypes.get(phasingSiteIndex - 1);
+            if (outputMultipleBaseCountsWriter == null && !mayBeConnected(sample, grbPrev.readBases, grbPhase.readBases)) {
+                /* No read path joins the previous and current sites even among ALL the cached sites, so none joins them in the window,
+                   and narrowing the window would only remove every read and every other site:
+                 */
+                if (DEBUG)
+                    logger.debug("NO READ PATH between PHASE site [" + grbPhase.loc + "] and UPSTREAM site [" + grbPrev.loc + "] in the cache");
+                listHetGenotypes = new LinkedList<GenotypeAndReadBases>(Arrays.asList(grbPrev, grbPhase));
+                phasingSiteIndex = 1;
+                readsAtHetSites = new HashMap<String, PhasingRead>();
+            }
+            else {
+                // First, assemble the "sub-reads" from the COMPLETE WINDOW-BASED SET of heterozygous positions for this sample:
+                buildReadSites(listHetGenotypes, sample, grbPhase.loc, null);
+
+                // Remove extraneous reads (those that do not "connect" the two core phasing sites):
+                BitSet onlyKeepReads = windowReads.removeExtraneousReads(listHetGenotypes.size(), phasingSiteIndex);
 
-            // Remove extraneous reads (those that do not "connect" the two core phasing sites):
-            Set<String> onlyKeepReads = removeExtraneousReads(listHetGenotypes.size());
+                // Dynamically modify the window to only include sites which have a non-empty set of reads:
+                listHetGenotypes = removeExtraneousSites(listHetGenotypes);
 
-            // Dynamically modify the window to only include sites which have a non-empty set of reads:
-            listHetGenotypes = removeExtraneousSites(listHetGenotypes);
+                // In any case, must still trim the window size to be "feasible"
+                // [**NOTE**: May want to do this to try maximize the preservation of paths from (phasingSiteIndex - 1) to phasingSiteIndex]:
+                if (listHetGenotypes.size() > maxPhaseSites) {
+                    listHetGenotypes = trimWindow(listHetGenotypes, sample, phaseLocus);
 
-            // In any case, must still trim the window size to be "feasible"
-            // [**NOTE**: May want to do this to try maximize the preservation of paths from (phasingSiteIndex - 1) to phasingSiteIndex]:
-            if (listHetGenotypes.size() > maxPhaseSites) {
-                listHetGenotypes = trimWindow(listHetGenotypes, sample, phaseLocus);
+                    // Can now remove any extra reads (and then sites):
+                    buildReadSites(listHetGenotypes, null, null, onlyKeepReads);
+                    onlyKeepReads = windowReads.removeExtraneousReads(listHetGenotypes.size(), phasingSiteIndex);
+                    listHetGenotypes = removeExtraneousSites(listHetGenotypes);
+                }
 
-                // Can now remove any extra reads (and then sites):
+                // Lastly, assemble the "sub-reads" from the FINAL SET of heterozygous positions for this sample:
                 buildReadsAtHetSites(listHetGenotypes, onlyKeepReads);
-                onlyKeepReads = removeExtraneousReads(listHetGenotypes.size());
-                listHetGenotypes = removeExtraneousSites(listHetGenotypes);
             }
 
-            // Lastly, assemble the "sub-reads" from the FINAL SET of heterozygous positions for this sample:
-            buildReadsAtHetSites(listHetGenotypes, onlyKeepReads);
-
             // Copy to a fixed-size array:
             if (DEBUG)
                 logger.debug("FINAL phasing window of " + listHetGenotypes.size() + " sites:\n" + toStringGRL(listHetGenotypes));
@@ -558,38 +582,26 @@ public class ReadBackedPhasingWalker extends RodWalker<PhasingStatsAndOutput, Ph
                 hetGenotypes[index++] = copyGrb.genotype;
         }
 
-        private void buildReadsAtHetSites(List<GenotypeAndReadBases> listHetGenotypes, String sample, GenomeLoc phasingLoc) {
-            buildReadsAtHetSites(listHetGenotypes, sample, phasingLoc, null);
-        }
-
-        private void buildReadsAtHetSites(List<GenotypeAndReadBases> listHetGenotypes, Set<String> onlyKeepReads) {
-            buildReadsAtHetSites(listHetGenotypes, null, null, onlyKeepReads);
-        }
-
-        private void buildReadsAtHetSites(List<GenotypeAndReadBases> listHetGenotypes, String sample, GenomeLoc phasingLoc, Set<String> onlyKeepReads) {
+        private void buildReadsAtHetSites(List<GenotypeAndReadBases> listHetGenotypes, BitSet onlyKeepReads) {
             readsAtHetSites = new HashMap<String, PhasingRead>();
 
             int index = 0;
             for (GenotypeAndReadBases grb : listHetGenotypes) {
                 ReadBasesAtPosition readBases = grb.readBases;
                 if (readBases != null) {
-                    for (ReadBase rb : readBases) {
-                        String readName = rb.readName;
-                        if (onlyKeepReads != null && !onlyKeepReads.contains(readName)) // if onlyKeepReads exists, ignore reads not in onlyKeepReads
+                    for (int i = 0; i < readBases.size(); i++) {
+                        if (!onlyKeepReads.get(readBases.getReadId(i))) // ignore reads not in onlyKeepReads
                             continue;
 
+                        String readName = readIdRegistry.getName(readBases.getReadId(i));
                         PhasingRead rd = readsAtHetSites.get(readName);
                         if (rd == null) {
-                            rd = new PhasingRead(listHetGenotypes.size(), rb.mappingQual);
+                            rd = new PhasingRead(listHetGenotypes.size(), readBases.getMappingQual(i));
                             readsAtHetSites.put(readName, rd);
                         }
-                        else if (outputMultipleBaseCountsWriter != null && rd.getBase(index) != null // rd already has a base at index
-                                && sample != null && phasingLoc != null) {
-                            outputMultipleBaseCountsWriter.setMultipleBases(new SampleReadLocus(sample, readName, grb.loc), phasingLoc, rd.getBase(index), rb.base);
-                        }
 
-                        // Arbitrarily updates to the last base observed for this sample and read (rb.base):
-                        rd.updateBaseAndQuality(index, rb.base, rb.baseQual);
+                        // Arbitrarily updates to the last base observed for this sample and read:
+                        rd.updateBaseAndQuality(index, readBases.getBase(i), readBases.getBaseQual(i));
                     }
                 }
                 index++;
@@ -606,210 +618,47 @@ public class ReadBackedPhasingWalker extends RodWalker<PhasingStatsAndOutput, Ph
             }
         }
 
-        private class EdgeToReads {
-            private TreeMap<PhasingGraphEdge, List<String>> edgeReads;
-
-            public EdgeToReads() {
-                this.edgeReads = new TreeMap<PhasingGraphEdge, List<String>>(); // implemented GraphEdge.compareTo()
-            }
-
-            public void addRead(PhasingGraphEdge e, String readName) {
-                List<String> reads = edgeReads.get(e);
-                if (reads == null) {
-                    reads = new LinkedList<String>();
-                    edgeReads.put(e, reads);
-                }
-                reads.add(readName);
-            }
-
-            public List<String> getReads(PhasingGraphEdge e) {
-                return edgeReads.get(e);
-            }
-        }
-
-        private class IntegerSet implements Iterable<Integer> {
-            private Set<Integer> list;
-
-            public IntegerSet(Set<Integer> list) {
-                this.list = list;
-            }
-
-            public boolean contains(int i) {
-                return list.contains(i);
-            }
-
-            public Iterator<Integer> iterator() {
-                return list.iterator();
-            }
-
-            public String toString() {
-                StringBuilder sb = new StringBuilder();
-                for (int i : this) {
-                    sb.append(i + ", ");
-                }
-                return sb.toString();
-            }
-        }
-
-        public Set<String> removeExtraneousReads(int numHetSites) {
-            PhasingGraph readGraph = new PhasingGraph(numHetSites);
-            EdgeToReads edgeToReads = new EdgeToReads();
-            Set<Integer> sitesWithEdges = new TreeSet<Integer>();
+        // Records, for each read (by ID) with bases in the window, the indices of the sites it has bases at:
+        private void buildReadSites(List<GenotypeAndReadBases> listHetGenotypes, String sample, GenomeLoc phasingLoc, BitSet onlyKeepReads) {
+            windowReads.startWindow(readIdRegistry.getMaxId());
 
-            for (Map.Entry<String, PhasingRead> nameToReads : readsAtHetSites.entrySet()) {
-                String rdName = nameToReads.getKey();
-                PhasingRead rd = nameToReads.getValue();
-
-                int[] siteInds = rd.getNonNullIndices();
-                // Connect each pair of non-null sites in rd:
-                for (int i = 0; i < siteInds.length; i++) {
-                    for (int j = i + 1; j < siteInds.length; j++) {
-                        PhasingGraphEdge e = new PhasingGraphEdge(siteInds[i], siteInds[j]);
-                        if (DEBUG) logger.debug("Read = " + rdName + " is adding edge: " + e);
-                        readGraph.addEdge(e);
-
-                        edgeToReads.addRead(e, rdName);
+            int index = 0;
+            for (GenotypeAndReadBases grb : listHetGenotypes) {
+                ReadBasesAtPosition readBases = grb.readBases;
+                if (readBases != null) {
+                    for (int i = 0; i < readBases.size(); i++) {
+                        int id = readBases.getReadId(i);
+                        if (onlyKeepReads != null && !onlyKeepReads.get(id)) // if onlyKeepReads exists, ignore reads not in onlyKeepReads
+                            continue;
 
-                        sitesWithEdges.add(e.getV1());
-                        sitesWithEdges.add(e.getV2());
+                        if (outputMultipleBaseCountsWriter != null && sample != null && phasingLoc != null && windowReads.hasBaseAt(id, index)) // the read already has a base at index
+                            outputMultipleBaseCountsWriter.setMultipleBases(new SampleReadLocus(sample, readIdRegistry.getName(id), grb.loc), phasingLoc, windowReads.getLastBase(id), readBases.getBase(i));
+                        windowReads.addReadBase(id, index, readBases.getBase(i));
                     }
                 }
-            }
-            if (DEBUG) logger.debug("Read graph:\n" + readGraph);
-            Set<String> keepReads = new HashSet<String>();
-
-            /* Check which Reads are involved in acyclic paths from (phasingSiteIndex - 1) to (phasingSiteIndex):
-
-               In detail:
-               Every Read links EACH pair of sites for which it contains bases.  Then, each such edge is added to a "site connectivity graph".
-               A read provides non-trivial bias toward the final haplotype decision if it participates in a path from prev ---> cur.  This is tested by
-               considering each edge that the read contributes.  For edge e=(v1,v2), if there exists a path from prev ---> v1 [that doesn't include v2] and
-               cur ---> v2 [that doesn't include v1], then there is a path from prev ---> cur that uses e, hence making the read significant.
-               By excluding each vertex's edges and then calculating connected components, we are able to make the determination, for example,
-               if a path exists from prev ---> v1 that excludes v2.
-
-               Furthermore, if the path DOES use other edges that exist solely due to the read, then that's fine, since adding in the read will give those edges as well.
-               And, if the path uses edges from other reads, then keeping all other reads that contribute those edges
-               [which will happen since those edges are also in paths from prev ---> cur] is sufficient for this path to exist.
-
-               NOTE:
-               If we would use NON-UNIFORM priors for the various haplotypes consistent with a margnialized haplotype, then this calculation would not be correct, since the equivalence of:
-               1. The read affects the final marginal haplotype posterior probability (for general mapping and base quality values).
-               2. The read has edges involved in a path from prev ---> cur.
-               DEPENDS STRONGLY on the fact that all haplotypes have the same EXACT prior.
-
-               This is due to the following:
-               [We denote:
-               R = set of all reads
-               r = a single read
-               "AA + CC" = AA on top chromosome, CC on bottom chromosome]
-
-               Note that since there are only two haplotype possibilities:
-               P(AA + CC | R) + P(AC + CA | R) = 1
-
-               Now, if we assume that all haplotypes consistent with AA + CC have the same prior probability [P(AA + CC | R)], then:
-               P(AA + CC | R)
-               = P(AAAA + CCCC | R) + ... + P(AACC + CCAA | R)
-               = [P(AAAA + CCCC , R) + ... + P(AACC + CCAA , R)] / P(R)
-               \propto P(AAAA + CCCC , R) + ... + P(AACC + CCAA , R)
-               = P(R | AAAA + CCCC)*P(AAAA + CCCC) + ... + P(R | AACC + CCAA)*P(AACC + CCAA)
-               = P(AA + CC | R) * [P(R | AAAA + CCCC) + ... + P(R | AACC + CCAA)]
-               
-               Since we assume independence between reads given a particular haplotype [P(R | AAAA + CCCC) = \prod_r P(r | AAAA + CCCC)],
-               a new read r affects P(AA + CC | R) by multiplying each of the terms in the sum by, e.g., P(r | AAAA + CCCC).
-               Therefore, if these values do not affect the ratio of:
-               (I) [P(R | AAAA + CCCC) + ... + P(R | AACC + CCAA)] / [P(R | ACAA + CACC) + ... + P(R | ACCC + CAAA)]
-               then they do not affect the value of:
-               (II) P(AA + CC | R) / P(AC + CA | R)   [which uniquely defines their values, since they sum to 1]
-
-               And, the P(r | AAAA + CCCC), ..., P(r | ACCC + CAAA) do not affect ratio (I) iff r's edges do not take part in a path from prev to cur in combination with the other reads in R.
-             */
-            int prev = phasingSiteIndex - 1;
-            int cur = phasingSiteIndex;
-
-            if (!readGraph.getConnectedComponents().inSameSet(prev, cur)) { // There is NO path between cur and prev
-                if (DEBUG)
-                    logger.debug("NO READ PATH between PHASE site [" + cur + "] and UPSTREAM site [" + prev + "]");
-                readsAtHetSites.clear();
-                return keepReads;
-            }
-
-            /* Check the connected components of prev and cur when removing each individual vertex's edges:
-               [Total run-time: for each vertex, calculate connected components after removing it's edges: O(V * E)]
-             */
-            IntegerSet[] removedSiteSameCCAsPrev = new IntegerSet[numHetSites];
-            IntegerSet[] removedSiteSameCCAsCur = new IntegerSet[numHetSites];
-            for (int i : sitesWithEdges) {
-                if (DEBUG) logger.debug("Calculating CC after removing edges of site: " + i);
-
-                // Remove all edges incident to i and see which positions have paths to prev and cur:
-                Collection<PhasingGraphEdge> removedEdges = readGraph.removeAllIncidentEdges(i);
-
-                // Run-time for efficiently calculating connected components using DisjointSet: O(E)
-                DisjointSet ccAfterRemove = readGraph.getConnectedComponents();
-                removedSiteSameCCAsPrev[i] = new IntegerSet(ccAfterRemove.inSameSetAs(prev, sitesWithEdges));
-                removedSiteSameCCAsCur[i] = new IntegerSet(ccAfterRemove.inSameSetAs(cur, sitesWithEdges));
-
-                if (DEBUG) logger.debug("Same CC as previous [" + prev + "]: " + removedSiteSameCCAsPrev[i]);
-                if (DEBUG) logger.debug("Same CC as current  [" + cur + "]: " + removedSiteSameCCAsCur[i]);
-
-                // Add the removed edges back in:
-                readGraph.addEdges(removedEdges);
+                index++;
             }
 
-            for (PhasingGraphEdge e : readGraph) {
-                if (DEBUG) logger.debug("Testing the path-connectivity of Edge: " + e);
-
-                /* Edge e={v1,v2} contributes a path between prev and cur for testRead iff:
-                   testRead[v1] != null, testRead[v2] != null, and there is a path from prev ---> v1 -> v2 ---> cur  [or vice versa].
-                   Note that the path from prev ---> v1 will NOT contain v2, since we removed all of v2's edges,
-                   and the path from v2 ---> cur will NOT contain v1.
-                 */
-                boolean prevTo2and1ToCur = removedSiteSameCCAsPrev[e.getV1()].contains(e.getV2()) && removedSiteSameCCAsCur[e.getV2()].contains(e.getV1());
-                boolean prevTo1and2ToCur = removedSiteSameCCAsPrev[e.getV2()].contains(e.getV1()) && removedSiteSameCCAsCur[e.getV1()].contains(e.getV2());
-
-                if (prevTo2and1ToCur || prevTo1and2ToCur) {
-                    for (String readName : edgeToReads.getReads(e)) {
-                        keepReads.add(readName);
-
-                        if (DEBUG && logger.isDebugEnabled()) {
-                            if (prevTo2and1ToCur)
-                                logger.debug("Keep read " + readName + " due to path: " + prev + " ---> " + e.getV2() + " -> " + e.getV1() + " ---> " + cur);
-                            else
-                                logger.debug("Keep read " + readName + " due to path: " + prev + " ---> " + e.getV1() + " -> " + e.getV2() + " ---> " + cur);
-                        }
-                    }
-                }
-            }
+            windowReads.endWindow();
+        }
 
-            // Retain only the reads that contain an edge in a path connecting prev and cur:
-            Iterator<Map.Entry<String, PhasingRead>> readIt = readsAtHetSites.entrySet().iterator();
-            while (readIt.hasNext()) {
-                Map.Entry<String, PhasingRead> nameToReads = readIt.next();
-                String rdName = nameToReads.getKey();
-                if (!keepReads.contains(rdName)) {
-                    readIt.remove();
-                    if (DEBUG) logger.debug("Removing extraneous read: " + rdName);
-                }
-            }
+        // Whether any reads may connect the two sites [of this sample], as judged from all the sites in the cache:
+        private boolean mayBeConnected(String sample, ReadBasesAtPosition readBases1, ReadBasesAtPosition readBases2) {
+            if (readBases1 == null || readBases2 == null)
+                return false;
 
-            return keepReads;
+            return sampleSiteComponents.get(sample).inSameComponent(readBases1.getSiteIndex(), readBases2.getSiteIndex());
         }
 
         private List<GenotypeAndReadBases> removeExtraneousSites(List<GenotypeAndReadBases> listHetGenotypes) {
-            Set<Integer> sitesWithReads = new HashSet<Integer>();
-            for (Map.Entry<String, PhasingRead> nameToReads : readsAtHetSites.entrySet()) {
-                PhasingRead rd = nameToReads.getValue();
-                for (int i : rd.getNonNullIndices())
-                    sitesWithReads.add(i);
-            }
+            boolean[] sitesWithReads = windowReads.getSitesWithReads(listHetGenotypes.size());
 
             // Remove all sites that have no read bases:
             List<GenotypeAndReadBases> keepHetSites = new LinkedList<GenotypeAndReadBases>();
             int index = 0;
             int numPrecedingRemoved = 0;
             for (GenotypeAndReadBases grb : listHetGenotypes) {
-                boolean keepSite = sitesWithReads.contains(index);
+                boolean keepSite = sitesWithReads[index];
                 if (DEBUG && logger.isDebugEnabled() && !keepSite)
                     logger.debug("Removing read-less site " + grb.loc);
 
@@ -1094,9 +943,16 @@ public class ReadBackedPhasingWalker extends RodWalker<PhasingStatsAndOutput, Ph
                             ReadBasesAtPosition readBases = new ReadBasesAtPosition();
                             for (PileupElement p : samplePileup) {
                                 if (!p.isDeletion()) // IGNORE deletions for now
-                                    readBases.putReadBase(p);
+                                    readBases.putReadBase(p, readIdRegistry);
                             }
                             sampleReadBases.put(sample, readBases);
+
+                            CachedSiteComponents siteComponents = sampleSiteComponents.get(sample);
+                            if (siteComponents == null) {
+                                siteComponents = new CachedSiteComponents();
+                                sampleSiteComponents.put(sample, siteComponents);
+                            }
+                            readBases.setSiteIndex(siteComponents.addSite(readBases, readIdRegistry.getMaxId()));
                         }
                     }
                 }
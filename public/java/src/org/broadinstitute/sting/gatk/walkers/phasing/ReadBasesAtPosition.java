@@ -25,27 +25,72 @@ package org.broadinstitute.sting.gatk.walkers.phasing;
 
 import org.broadinstitute.sting.utils.pileup.PileupElement;
 
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.Arrays;
 
-class ReadBasesAtPosition implements Iterable<ReadBase> {
-    // list of: <read name, base>
-    private LinkedList<ReadBase> bases;
+// The reads at a site, by read ID, with their bases and qualities, in the order they appear in the pileup
+class ReadBasesAtPosition {
+    private int[] readIds = new int[8];
+    private byte[] bases = new byte[8];
+    private int[] mappingQuals = new int[8];
+    private byte[] baseQuals = new byte[8];
+    private int size = 0;
+    private int siteIndex = -1; // the number of the site among its sample's sites [see CachedSiteComponents]
 
-    public ReadBasesAtPosition() {
-        this.bases = new LinkedList<ReadBase>();
+    public void putReadBase(PileupElement pue, ReadIdRegistry registry) {
+        putReadBase(registry.acquire(pue.getRead().getReadName()), pue.getBase(), pue.getMappingQual(), pue.getQual());
     }
 
-    public void putReadBase(PileupElement pue) {
-        ReadBase rb = new ReadBase(pue.getRead().getReadName(), pue.getBase(), pue.getMappingQual(), pue.getQual());
-        bases.add(rb);
+    // ASSUMES that readId has already been acquired from the registry that will release it
+    public void putReadBase(int readId, byte base, int mappingQual, byte baseQual) {
+        if (size == readIds.length) {
+            readIds = Arrays.copyOf(readIds, 2 * size);
+            bases = Arrays.copyOf(bases, 2 * size);
+            mappingQuals = Arrays.copyOf(mappingQuals, 2 * size);
+            baseQuals = Arrays.copyOf(baseQuals, 2 * size);
+        }
+        readIds[size] = readId;
+        bases[size] = base;
+        mappingQuals[size] = mappingQual;
+        baseQuals[size] = baseQual;
+        size++;
     }
 
-    public Iterator<ReadBase> iterator() {
-        return bases.iterator();
+    // Hands the read IDs back to the registry once the site leaves the cache
+    public void release(ReadIdRegistry registry) {
+        for (int i = 0; i < size; i++)
+            registry.release(readIds[i]);
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getReadId(int i) {
+        return readIds[i];
+    }
+
+    public byte getBase(int i) {
+        return bases[i];
+    }
+
+    public int getMappingQual(int i) {
+        return mappingQuals[i];
+    }
+
+    public byte getBaseQual(int i) {
+        return baseQuals[i];
+    }
+
+    public int getSiteIndex() {
+        return siteIndex;
+    }
+
+    public void setSiteIndex(int siteIndex) {
+        this.siteIndex = siteIndex;
     }
 
     public boolean isEmpty() {
-        return bases.isEmpty();
+        return size == 0;
     }
 }
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2012, The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.broadinstitute.sting.gatk.walkers.phasing;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * Gives each read cached for phasing an integer ID, so that reads can be matched up across sites without hashing their
+ * names.  IDs are counted out as each site records its reads and handed back as each site is evicted from the cache, so
+ * an ID is freed (and reused) once no cached site holds its read; the IDs in use therefore stay within the reads of
+ * the cacheWindow.
+ */
+class ReadIdRegistry {
+    private Map<String, Integer> ids = new HashMap<String, Integer>();
+    private String[] names = new String[1024];
+    private int[] references = new int[1024];
+    private int[] freeIds = new int[1024];
+    private int numFreeIds = 0;
+    private int numIds = 0;
+
+    public int acquire(String readName) {
+        Integer id = ids.get(readName);
+        if (id == null) {
+            id = numFreeIds > 0 ? freeIds[--numFreeIds] : newId();
+            ids.put(readName, id);
+            names[id] = readName;
+        }
+        references[id]++;
+        return id;
+    }
+
+    public void release(int id) {
+        if (--references[id] > 0)
+            return;
+
+        ids.remove(names[id]);
+        names[id] = null;
+        if (numFreeIds == freeIds.length)
+            freeIds = Arrays.copyOf(freeIds, 2 * numFreeIds);
+        freeIds[numFreeIds++] = id;
+    }
+
+    public String getName(int id) {
+        return names[id];
+    }
+
+    // All IDs in use are below this
+    public int getMaxId() {
+        return numIds;
+    }
+
+    private int newId() {
+        if (numIds == names.length) {
+            names = Arrays.copyOf(names, 2 * numIds);
+            references = Arrays.copyOf(references, 2 * numIds);
+        }
+        return numIds++;
+    }
+}
@@ -203,6 +203,18 @@ public class CountCovariatesWalker extends LocusWalker<CountCovariatesWalker.Cou
     /////////////////////////////
     private final RecalDataManager dataManager = new RecalDataManager(); // Holds the data HashMap, mostly used by TableRecalibrationWalker to create collapsed data hashmaps
     private final ArrayList<Covariate> requestedCovariates = new ArrayList<Covariate>(); // A list to hold the covariate objects that were requested
+    private boolean packCovariates = false; // Count the data in packed tables in place of the data hashmap if all the requested covariates can be packed
+    private final List<PackedRecalTable> packedTables = new ArrayList<PackedRecalTable>(); // The packed table of each thread, all added to the data hashmap when done
+    private final ThreadLocal<PackedRecalTable> packedTable = new ThreadLocal<PackedRecalTable>() {
+        @Override
+        protected PackedRecalTable initialValue() {
+            final PackedRecalTable table = new PackedRecalTable(requestedCovariates);
+            synchronized (packedTables) {
+                packedTables.add(table);
+            }
+            return table;
+        }
+    };
     private static final double DBSNP_VS_NOVEL_MISMATCH_RATE = 2.0;      // rate at which dbSNP sites (on an individual level) mismatch relative to novel sites (determined by looking at NA12878)
     private static int DBSNP_VALIDATION_CHECK_FREQUENCY = 1000000;       // how often to validate dbsnp mismatch rate (in terms of loci seen)
 
@@ -336,6 +348,11 @@ public class CountCovariatesWalker extends LocusWalker<CountCovariatesWalker.Cou
             logger.info("\t" + cov.getClass().getSimpleName());
             cov.initialize(RAC); // Initialize any covariate member variables using the shared argument collection
         }
+
+        if (PackedRecalTable.canPack(requestedCovariates)) {
+            logger.info("Counting with packed covariate keys");
+            packCovariates = true;
+        }
     }
 
     //---------------------------------------------------------------------------------------------------------------
@@ -378,7 +395,8 @@ public class CountCovariatesWalker extends LocusWalker<CountCovariatesWalker.Cou
                     }
 
                     RecalDataManager.parseColorSpace(gatkRead);
-                    gatkRead.setTemporaryAttribute(COVARS_ATTRIBUTE, RecalDataManager.computeCovariates(gatkRead, requestedCovariates));
+                    final long[] packedKeys = packCovariates ? packedTable.get().computeKeys(gatkRead) : null;
+                    gatkRead.setTemporaryAttribute(COVARS_ATTRIBUTE, packedKeys != null ? packedKeys : RecalDataManager.computeCovariates(gatkRead, requestedCovariates));
                 }
 
                 // Skip this position if base quality is zero
@@ -455,7 +473,17 @@ public class CountCovariatesWalker extends LocusWalker<CountCovariatesWalker.Cou
      * @param refBase  The reference base at this locus
      */
     private void updateDataFromRead(CountedData counter, final GATKSAMRecord gatkRead, final int offset, final byte refBase) {
-        final Object[][] covars = (Comparable[][]) gatkRead.getTemporaryAttribute(COVARS_ATTRIBUTE);
+        final Object covarsAttribute = gatkRead.getTemporaryAttribute(COVARS_ATTRIBUTE);
+        if (covarsAttribute instanceof long[]) {
+            final long[] keys = (long[]) covarsAttribute;
+            if (packedTable.get().increment(keys[offset], gatkRead.getReadBases()[offset], refBase))
+                counter.novelCountsMM++;
+            counter.countedBases++;
+            counter.novelCountsBases++;
+            return;
+        }
+
+        final Object[][] covars = (Comparable[][]) covarsAttribute;
         final Object[] key = covars[offset];
 
         // Using the list of covariate values as a key, pick out the RecalDatum from the data HashMap
@@ -539,6 +567,9 @@ public class CountCovariatesWalker extends LocusWalker<CountCovariatesWalker.Cou
         if (sum.countedBases == 0L) {
             throw new UserException.BadInput("Could not find any usable data in the input BAM file(s).");
         }
+        for (PackedRecalTable table : packedTables) {
+            table.addTo(dataManager.data);
+        }
         outputToCSV(sum, RECAL_FILE);
         logger.info("...done!");
     }
@@ -54,3 +54,15 @@ interface RequiredCovariate extends Covariate {}
 interface StandardCovariate extends Covariate {}
 
 interface ExperimentalCovariate extends Covariate {}
+
+/**
+ * A covariate whose values are numbered 0 to numberOfKeys() - 1, so that the values of all the covariates of a base
+ * can be packed into a single long and counted without building a key object per base.
+ */
+interface PackedCovariate extends Covariate {
+    public int numberOfKeys(); // Exclusive upper bound on the keys; only valid after initialize()
+
+    public void getKeys(GATKSAMRecord read, int[] keys); // As getValues, but filling in the keys of the values
+
+    public Comparable keyToValue(int key); // The value a key stands for, as getValues would have returned it
+}
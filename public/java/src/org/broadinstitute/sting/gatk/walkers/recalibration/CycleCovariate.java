@@ -46,10 +46,13 @@ import java.util.EnumSet;
  * For SOLiD the cycle is a more complicated mixture of ligation cycle and primer round
  */
 
-public class CycleCovariate implements StandardCovariate {
+public class CycleCovariate implements StandardCovariate, PackedCovariate {
     private final static EnumSet<NGSPlatform> DISCRETE_CYCLE_PLATFORMS = EnumSet.of(NGSPlatform.ILLUMINA, NGSPlatform.SOLID, NGSPlatform.PACBIO, NGSPlatform.COMPLETE_GENOMICS);
     private final static EnumSet<NGSPlatform> FLOW_CYCLE_PLATFORMS = EnumSet.of(NGSPlatform.LS454, NGSPlatform.ION_TORRENT);
 
+    // Cycles run from -MAX_CYCLE to MAX_CYCLE in the packed keys; the bases of longer reads are counted through their values
+    private final static int MAX_CYCLE = 1 << 15;
+
     // Initialize any member variables using the command-line arguments passed to the walkers
     @Override
     public void initialize(final RecalibrationArgumentCollection RAC) {
@@ -67,6 +70,32 @@ public class CycleCovariate implements StandardCovariate {
     // Used to pick out the covariate's value from attributes of the read
     @Override
     public void getValues(final GATKSAMRecord read, final Comparable[] comparable) {
+        final int[] cycles = new int[read.getReadLength()];
+        getCycles(read, cycles);
+        for (int i = 0; i < cycles.length; i++) {
+            comparable[i] = cycles[i];
+        }
+    }
+
+    @Override
+    public int numberOfKeys() {
+        return 2 * MAX_CYCLE + 1;
+    }
+
+    @Override
+    public void getKeys(final GATKSAMRecord read, final int[] keys) {
+        getCycles(read, keys);
+        for (int i = 0; i < read.getReadLength(); i++) {
+            keys[i] += MAX_CYCLE;
+        }
+    }
+
+    @Override
+    public Comparable keyToValue(final int key) {
+        return key - MAX_CYCLE;
+    }
+
+    private void getCycles(final GATKSAMRecord read, final int[] cycles) {
 
         //-----------------------------
         // Illumina, Solid, PacBio, and Complete Genomics
@@ -110,7 +139,7 @@ public class CycleCovariate implements StandardCovariate {
 
             int cycle = init;
             for (int i = 0; i < read.getReadLength(); i++) {
-                comparable[i] = cycle;
+                cycles[i] = cycle;
                 cycle += increment;
             }
         }
@@ -139,19 +168,19 @@ public class CycleCovariate implements StandardCovariate {
                 int iii = 0;
                 while (iii < readLength) {
                     while (iii < readLength && bases[iii] == (byte) 'T') {
-                        comparable[iii] = cycle;
+                        cycles[iii] = cycle;
                         iii++;
                     }
                     while (iii < readLength && bases[iii] == (byte) 'A') {
-                        comparable[iii] = cycle;
+                        cycles[iii] = cycle;
                         iii++;
                     }
                     while (iii < readLength && bases[iii] == (byte) 'C') {
-                        comparable[iii] = cycle;
+                        cycles[iii] = cycle;
                         iii++;
                     }
                     while (iii < readLength && bases[iii] == (byte) 'G') {
-                        comparable[iii] = cycle;
+                        cycles[iii] = cycle;
                         iii++;
                     }
                     if (iii < readLength) {
@@ -161,7 +190,7 @@ public class CycleCovariate implements StandardCovariate {
                             cycle++;
                     }
                     if (iii < readLength && !BaseUtils.isRegularBase(bases[iii])) {
-                        comparable[iii] = cycle;
+                        cycles[iii] = cycle;
                         iii++;
                     }
 
@@ -171,19 +200,19 @@ public class CycleCovariate implements StandardCovariate {
                 int iii = readLength - 1;
                 while (iii >= 0) {
                     while (iii >= 0 && bases[iii] == (byte) 'T') {
-                        comparable[iii] = cycle;
+                        cycles[iii] = cycle;
                         iii--;
                     }
                     while (iii >= 0 && bases[iii] == (byte) 'A') {
-                        comparable[iii] = cycle;
+                        cycles[iii] = cycle;
                         iii--;
                     }
                     while (iii >= 0 && bases[iii] == (byte) 'C') {
-                        comparable[iii] = cycle;
+                        cycles[iii] = cycle;
                         iii--;
                     }
                     while (iii >= 0 && bases[iii] == (byte) 'G') {
-                        comparable[iii] = cycle;
+                        cycles[iii] = cycle;
                         iii--;
                     }
                     if (iii >= 0) {
@@ -193,7 +222,7 @@ public class CycleCovariate implements StandardCovariate {
                             cycle++;
                     }
                     if (iii >= 0 && !BaseUtils.isRegularBase(bases[iii])) {
-                        comparable[iii] = cycle;
+                        cycles[iii] = cycle;
                         iii--;
                     }
                 }
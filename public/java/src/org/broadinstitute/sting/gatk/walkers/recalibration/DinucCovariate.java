@@ -41,12 +41,17 @@ import java.util.HashMap;
  * This assumption is made to speed up the code.
  */
 
-public class DinucCovariate implements StandardCovariate {
+public class DinucCovariate implements StandardCovariate, PackedCovariate {
 
     private static final byte NO_CALL = (byte) 'N';
     private static final Dinuc NO_DINUC = new Dinuc(NO_CALL, NO_CALL);
 
+    private static final int NO_DINUC_KEY = 16;
+    private static final int MISSING_DINUC_KEY = 17; // A regular base followed by one that isn't has no entry in dinucHashMap
+
     private HashMap<Integer, Dinuc> dinucHashMap;
+    private Dinuc[] dinucsByKey;
+    private byte[] keysByBases; // The key of each pair of bases, indexed by the previous base and then the base
 
     // Initialize any member variables using the command-line arguments passed to the walkers
     @Override
@@ -60,6 +65,38 @@ public class DinucCovariate implements StandardCovariate {
         }
         // Add the "no dinuc" entry too
         dinucHashMap.put(Dinuc.hashBytes(NO_CALL, NO_CALL), NO_DINUC);
+
+        // The keys stand for exactly the Dinucs getValues would look up in dinucHashMap, including the null ones
+        dinucsByKey = new Dinuc[MISSING_DINUC_KEY + 1];
+        int key = 0;
+        for (byte byte1 : BASES) {
+            for (byte byte2 : BASES) {
+                dinucsByKey[key++] = dinucHashMap.get(Dinuc.hashBytes(byte1, byte2));
+            }
+        }
+        dinucsByKey[NO_DINUC_KEY] = NO_DINUC;
+        keysByBases = new byte[256 * 256];
+        for (int prevBase = 0; prevBase < 256; prevBase++) {
+            for (int base = 0; base < 256; base++) {
+                final byte dinucKey;
+                if (BaseUtils.isRegularBase((byte) prevBase)) {
+                    dinucKey = keyOf(dinucHashMap.get(Dinuc.hashBytes((byte) prevBase, (byte) base)));
+                }
+                else {
+                    dinucKey = NO_DINUC_KEY;
+                }
+                keysByBases[(prevBase << 8) | base] = dinucKey;
+            }
+        }
+    }
+
+    private byte keyOf(final Dinuc dinuc) {
+        for (int key = 0; key < MISSING_DINUC_KEY; key++) {
+            if (dinucsByKey[key] == dinuc) {
+                return (byte) key;
+            }
+        }
+        return MISSING_DINUC_KEY;
     }
 
     /**
@@ -102,6 +139,38 @@ public class DinucCovariate implements StandardCovariate {
         }
     }
 
+    @Override
+    public int numberOfKeys() {
+        return MISSING_DINUC_KEY + 1;
+    }
+
+    @Override
+    public void getKeys(final GATKSAMRecord read, final int[] keys) {
+        final byte[] keysByBasesRef = this.keysByBases;
+        final int readLength = read.getReadLength();
+        final boolean negativeStrand = read.getReadNegativeStrandFlag();
+        byte[] bases = read.getReadBases();
+        if (negativeStrand) {
+            bases = BaseUtils.simpleReverseComplement(bases); //this is NOT in-place
+        }
+        keys[0] = NO_DINUC_KEY; // No dinuc at the beginning of the read
+        for (int offset = 1; offset < readLength; offset++) {
+            keys[offset] = keysByBasesRef[((bases[offset - 1] & 0xff) << 8) | (bases[offset] & 0xff)];
+        }
+        if (negativeStrand) {
+            for (int l = 0, r = readLength - 1; l < r; l++, r--) {
+                final int temp = keys[l];
+                keys[l] = keys[r];
+                keys[r] = temp;
+            }
+        }
+    }
+
+    @Override
+    public Comparable keyToValue(final int key) {
+        return dinucsByKey[key];
+    }
+
     // Used to get the covariate's value from input csv file in TableRecalibrationWalker
     @Override
     public final Comparable getValue(final String str) {
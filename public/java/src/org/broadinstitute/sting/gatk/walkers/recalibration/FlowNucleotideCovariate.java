@@ -0,0 +1,77 @@
+package org.broadinstitute.sting.gatk.walkers.recalibration;
+
+import org.broadinstitute.sting.utils.sam.GATKSAMRecord;
+
+/*
+ * Copyright (c) 2011 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+/**
+ * The Flow Nucleotide covariate.
+ * For flow space reads (Ion Torrent) this is the nucleotide flowed when the base was called, that is the base in the
+ * order it was sequenced, so bases of reads on the negative strand are complemented.  Reads without a flow order, and
+ * bases which can't be placed in a flow, have nucleotide N.
+ */
+
+public class FlowNucleotideCovariate implements ExperimentalCovariate, PackedCovariate {
+
+    private static final String[] VALUES = { "A", "C", "G", "T", "N" };
+
+    // Initialize any member variables using the command-line arguments passed to the walkers
+    @Override
+    public void initialize(final RecalibrationArgumentCollection RAC) {
+    }
+
+    @Override
+    public int numberOfKeys() {
+        return VALUES.length;
+    }
+
+    @Override
+    public void getKeys(final GATKSAMRecord read, final int[] keys) {
+        final ReadFlows flows = ReadFlows.getFlows(read);
+        for (int i = 0; i < read.getReadLength(); i++) {
+            keys[i] = flows.getNucleotide(i);
+        }
+    }
+
+    @Override
+    public Comparable keyToValue(final int key) {
+        return VALUES[key];
+    }
+
+    @Override
+    public void getValues(final GATKSAMRecord read, final Comparable[] comparable) {
+        final ReadFlows flows = ReadFlows.getFlows(read);
+        for (int i = 0; i < read.getReadLength(); i++) {
+            comparable[i] = VALUES[flows.getNucleotide(i)];
+        }
+    }
+
+    // Used to get the covariate's value from input csv file in TableRecalibrationWalker
+    @Override
+    public final Comparable getValue(final String str) {
+        return str;
+    }
+}
@@ -1,6 +1,5 @@
 package org.broadinstitute.sting.gatk.walkers.recalibration;
 
-import net.sf.samtools.SAMRecord;
 import org.broadinstitute.sting.utils.recalibration.BaseRecalibration;
 import org.broadinstitute.sting.utils.sam.GATKSAMRecord;
 
@@ -40,7 +39,7 @@ import org.broadinstitute.sting.utils.sam.GATKSAMRecord;
  * 001001230001234567800
  */
 
-public class HomopolymerCovariate implements ExperimentalCovariate {
+public class HomopolymerCovariate implements ExperimentalCovariate, PackedCovariate {
 
     private int numBack;
 
@@ -50,54 +49,43 @@ public class HomopolymerCovariate implements ExperimentalCovariate {
         numBack = RAC.HOMOPOLYMER_NBACK;
     }
 
-    // Used to pick out the covariate's value from attributes of the read
-    private Comparable getValue(final SAMRecord read, final int offset) {
-
-        // This block of code is for if you don't want to only count consecutive bases
-        // ATTGCCCCGTAAAAAAAAATA
-        // 001001231211234567819
-        /*
-        int numAgree = 0; // The number of bases that agree with you in the previous numBack bases of the read
-        int startPos = 0;
-        int stopPos = 0;
-        byte[] bases = read.getReadBases();
-        byte thisBase = bases[offset];
-        if( !read.getReadNegativeStrandFlag() ) { // Forward direction
-            startPos = Math.max(offset - numBack, 0);
-            stopPos = Math.max(offset - 1, 0);
-        } else { // Negative direction
-            startPos = Math.min(offset + 2, bases.length);
-            stopPos = Math.min(offset + numBack + 1, bases.length);
-        }
-
-        for( int iii = startPos; iii < stopPos; iii++ ) {
-            if( bases[iii] == thisBase ) { numAgree++; }
-        }
-        */
+    @Override
+    public int numberOfKeys() {
+        return numBack + 1;
+    }
 
-        int numAgree = 0; // The number of consecutive bases that agree with you in the previous numBack bases of the read
+    @Override
+    public void getKeys(final GATKSAMRecord read, final int[] keys) {
+        // Carry the number of consecutive agreeing bases along each run rather than recounting it for every base
         final byte[] bases = read.getReadBases();
-        int iii = offset;
+        final int length = read.getReadLength();
         if (!read.getReadNegativeStrandFlag()) { // Forward direction
-            while (iii <= bases.length - 2 && bases[iii] == bases[iii + 1] && numAgree < numBack) {
-                numAgree++;
-                iii++;
+            int numAgree = 0;
+            for (int iii = length - 1; iii >= 0; iii--) {
+                numAgree = (iii <= length - 2 && bases[iii] == bases[iii + 1]) ? numAgree + 1 : 0;
+                keys[iii] = Math.min(numAgree, numBack);
             }
         }
         else { // Negative direction
-            while (iii >= 1 && bases[iii] == bases[iii - 1] && numAgree < numBack) {
-                numAgree++;
-                iii--;
+            int numAgree = 0;
+            for (int iii = 0; iii < length; iii++) {
+                numAgree = (iii >= 1 && bases[iii] == bases[iii - 1]) ? numAgree + 1 : 0;
+                keys[iii] = Math.min(numAgree, numBack);
             }
         }
+    }
 
-        return numAgree;
+    @Override
+    public Comparable keyToValue(final int key) {
+        return key;
     }
 
     @Override
     public void getValues(final GATKSAMRecord read, final Comparable[] comparable) {
-        for (int iii = 0; iii < read.getReadLength(); iii++) {
-            comparable[iii] = getValue(read, iii); // BUGBUG: this can be optimized
+        final int[] keys = new int[read.getReadLength()];
+        getKeys(read, keys);
+        for (int iii = 0; iii < keys.length; iii++) {
+            comparable[iii] = keys[iii];
         }
     }
 
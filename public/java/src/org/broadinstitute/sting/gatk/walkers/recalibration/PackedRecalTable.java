@@ -0,0 +1,161 @@
+package org.broadinstitute.sting.gatk.walkers.recalibration;
+
+import org.broadinstitute.sting.utils.BaseUtils;
+import org.broadinstitute.sting.utils.collections.LongIndexMap;
+import org.broadinstitute.sting.utils.collections.NestedHashMap;
+import org.broadinstitute.sting.utils.sam.GATKSAMRecord;
+
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Copyright (c) 2011 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+/**
+ * The counts of CountCovariatesWalker when every requested covariate is a PackedCovariate.
+ *
+ * The keys of the covariates of a base are packed into a single long, in as many bits as each covariate needs, and the
+ * observations and mismatches of each packed key are counted in primitive arrays indexed through a LongIndexMap.  This
+ * spares the key array per base and the lookup through a map per covariate of the NestedHashMap, which dominate the
+ * time spent counting.  The counts are unpacked into the usual NestedHashMap of RecalDatumOptimized when done.
+ *
+ * A table isn't thread safe: each thread counts into a table of its own, all laid out alike from the same covariates,
+ * so that the keys computed by any of them can be counted in any other.
+ */
+final class PackedRecalTable {
+    private static final int MAX_KEY_BITS = 63;
+
+    private final PackedCovariate[] covariates;
+    private final int[] numberOfKeys;
+    private final int[] shifts;
+
+    private final LongIndexMap keys = new LongIndexMap(1024);
+    private long[] observations = new long[1024];
+    private long[] mismatches = new long[1024];
+
+    /**
+     * @param requestedCovariates the initialized covariates, all of which must be packed
+     */
+    public PackedRecalTable(final List<Covariate> requestedCovariates) {
+        covariates = new PackedCovariate[requestedCovariates.size()];
+        numberOfKeys = new int[covariates.length];
+        shifts = new int[covariates.length];
+        int shift = 0;
+        for (int i = 0; i < covariates.length; i++) {
+            covariates[i] = (PackedCovariate) requestedCovariates.get(i);
+            numberOfKeys[i] = covariates[i].numberOfKeys();
+            shifts[i] = shift;
+            shift += bitsFor(covariates[i]);
+        }
+    }
+
+    /**
+     * @param requestedCovariates the initialized covariates
+     * @return true if the keys of all the covariates are small enough to be packed together
+     */
+    public static boolean canPack(final List<Covariate> requestedCovariates) {
+        int bits = 0;
+        for (Covariate covariate : requestedCovariates) {
+            if (!(covariate instanceof PackedCovariate))
+                return false;
+            bits += bitsFor((PackedCovariate) covariate);
+        }
+        return bits <= MAX_KEY_BITS;
+    }
+
+    private static int bitsFor(final PackedCovariate covariate) {
+        return 32 - Integer.numberOfLeadingZeros(Math.max(covariate.numberOfKeys() - 1, 1));
+    }
+
+    /**
+     * Computes the packed key of every base of the read
+     *
+     * @param read the read
+     * @return the packed keys, indexed by offset into the read, or null if the key of a covariate is out of its range
+     *         (a cycle past the longest read the cycle covariate packs, say), in which case the read must be counted
+     *         through the covariates' values instead
+     */
+    public long[] computeKeys(final GATKSAMRecord read) {
+        final int readLength = read.getReadLength();
+        final long[] packed = new long[readLength];
+        final int[] covariateKeys = new int[readLength];
+        for (int i = 0; i < covariates.length; i++) {
+            covariates[i].getKeys(read, covariateKeys);
+            for (int j = 0; j < readLength; j++) {
+                final int key = covariateKeys[j];
+                if (key < 0 || key >= numberOfKeys[i])
+                    return null;
+                packed[j] |= ((long) key) << shifts[i];
+            }
+        }
+        return packed;
+    }
+
+    /**
+     * Counts an observation of a base
+     *
+     * @param key     the packed key of the base
+     * @param base    the base
+     * @param refBase the reference base
+     * @return true if the base is a mismatch
+     */
+    public boolean increment(final long key, final byte base, final byte refBase) {
+        final boolean mismatch = BaseUtils.simpleBaseToBaseIndex(base) != BaseUtils.simpleBaseToBaseIndex(refBase);
+        final int index = keys.add(key);
+        if (index == observations.length) {
+            observations = Arrays.copyOf(observations, 2 * index);
+            mismatches = Arrays.copyOf(mismatches, 2 * index);
+        }
+        observations[index]++;
+        if (mismatch)
+            mismatches[index]++;
+        return mismatch;
+    }
+
+    /**
+     * @return the number of distinct keys counted
+     */
+    public int size() {
+        return keys.size();
+    }
+
+    /**
+     * Adds the counts to the data of a RecalDataManager, with the keys unpacked into the covariates' values
+     *
+     * @param data the nested hash map of covariate values to RecalDatumOptimized
+     */
+    public void addTo(final NestedHashMap data) {
+        final Object[] values = new Object[covariates.length];
+        for (int index = 0; index < keys.size(); index++) {
+            final long key = keys.getKey(index);
+            for (int i = 0; i < covariates.length; i++) {
+                final long mask = (i + 1 < covariates.length ? 1L << shifts[i + 1] : 1L << MAX_KEY_BITS) - 1;
+                values[i] = covariates[i].keyToValue((int) ((key & mask) >>> shifts[i]));
+            }
+            final RecalDatumOptimized datum = (RecalDatumOptimized) data.put(new RecalDatumOptimized(), true, values);
+            datum.increment(observations[index], mismatches[index]);
+        }
+    }
+}
@@ -38,7 +38,7 @@ import java.util.Arrays;
  * The Reported Quality Score covariate.
  */
 
-public class QualityScoreCovariate implements RequiredCovariate {
+public class QualityScoreCovariate implements RequiredCovariate, PackedCovariate {
 
     // Initialize any member variables using the command-line arguments passed to the walkers
     @Override
@@ -53,6 +53,24 @@ public class QualityScoreCovariate implements RequiredCovariate {
         }
     }
 
+    @Override
+    public int numberOfKeys() {
+        return 256;
+    }
+
+    @Override
+    public void getKeys(final GATKSAMRecord read, final int[] keys) {
+        byte[] baseQualities = read.getBaseQualities();
+        for (int i = 0; i < read.getReadLength(); i++) {
+            keys[i] = baseQualities[i] & 0xff;
+        }
+    }
+
+    @Override
+    public Comparable keyToValue(final int key) {
+        return key;
+    }
+
     // Used to get the covariate's value from input csv file in TableRecalibrationWalker
     @Override
     public final Comparable getValue(final String str) {
@@ -0,0 +1,188 @@
+package org.broadinstitute.sting.gatk.walkers.recalibration;
+
+import org.broadinstitute.sting.utils.sam.GATKSAMReadGroupRecord;
+import org.broadinstitute.sting.utils.sam.GATKSAMRecord;
+import org.iontorrent.sam2flowgram.util.SamToFlowgramAlignUtil;
+
+import java.util.Arrays;
+
+/*
+ * Copyright (c) 2011 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+/**
+ * The flow in which each base of a flow space (Ion Torrent) read was called, worked out once per read and shared by
+ * the flow covariates.
+ *
+ * The bases are walked in the order they were sequenced (reverse complemented for reads on the negative strand),
+ * through the flow order of the read group (FO), starting at the flow of the first template base (ZF) or, without it,
+ * after the key sequence of the read group (KS).  The homopolymer length of a base is the number of bases called in its
+ * flow, read off the flow signal (FZ) when the read has one and counted in the read bases otherwise.  All the values
+ * are indexed by offset into the read as stored, like any other covariate.
+ *
+ * Bases which can't be placed in a flow, including every base of a read whose read group has no flow order, are left
+ * in flow zero with homopolymer length zero and no nucleotide.
+ */
+final class ReadFlows {
+    private static final String FLOWS_ATTRIBUTE = "FLOWS"; // used to store the flows as a temporary attribute inside GATKSAMRecord
+
+    public static final byte NO_NUCLEOTIDE = 4; // the nucleotide of N and other bases which can't be placed in a flow
+
+    private final int[] flowIndices;
+    private final int[] homopolymerLengths;
+    private final byte[] nucleotides;
+
+    private ReadFlows(final int length) {
+        flowIndices = new int[length];
+        homopolymerLengths = new int[length];
+        nucleotides = new byte[length];
+        Arrays.fill(nucleotides, NO_NUCLEOTIDE);
+    }
+
+    /**
+     * @param read the read
+     * @return the flows of the read, computed on first use
+     */
+    public static ReadFlows getFlows(final GATKSAMRecord read) {
+        ReadFlows flows = (ReadFlows) read.getTemporaryAttribute(FLOWS_ATTRIBUTE);
+        if (flows == null) {
+            flows = computeFlows(read);
+            read.setTemporaryAttribute(FLOWS_ATTRIBUTE, flows);
+        }
+        return flows;
+    }
+
+    /**
+     * @param offset offset into the read
+     * @return the zero-based flow in which the base was called, counting the flows of the key
+     */
+    public int getFlowIndex(final int offset) {
+        return flowIndices[offset];
+    }
+
+    /**
+     * @param offset offset into the read
+     * @return the number of bases called in the base's flow
+     */
+    public int getHomopolymerLength(final int offset) {
+        return homopolymerLengths[offset];
+    }
+
+    /**
+     * @param offset offset into the read
+     * @return the nucleotide flowed when the base was called, 0-3 for ACGT, or NO_NUCLEOTIDE
+     */
+    public byte getNucleotide(final int offset) {
+        return nucleotides[offset];
+    }
+
+    private static ReadFlows computeFlows(final GATKSAMRecord read) {
+        final byte[] bases = read.getReadBases();
+        final int length = bases.length;
+        final ReadFlows flows = new ReadFlows(length);
+
+        final GATKSAMReadGroupRecord readGroup = read.getReadGroup();
+        final String flowOrderString = readGroup == null ? null : (String) readGroup.getAttribute("FO");
+        if (flowOrderString == null || flowOrderString.length() == 0)
+            return flows;
+
+        final byte[] flowOrder = SamToFlowgramAlignUtil.basesToInt(flowOrderString);
+        final boolean[] flowed = new boolean[NO_NUCLEOTIDE + 1];
+        for (byte nucleotide : flowOrder)
+            flowed[nucleotide] = true;
+        flowed[NO_NUCLEOTIDE] = false;
+        final int[] signals = SamToFlowgramAlignUtil.getFlowSignals(read);
+        final boolean negativeStrand = read.getReadNegativeStrandFlag();
+
+        // the last flow of the key may also call the first bases of the template, and its signal counts both
+        final String key = (String) readGroup.getAttribute("KS");
+        final int keyFlow = lastKeyFlow(flowOrder, flowed, key);
+        int keyBasesInFlow = 0;
+        while (keyFlow >= 0 && keyBasesInFlow < key.length() && key.charAt(key.length() - 1 - keyBasesInFlow) == key.charAt(key.length() - 1))
+            keyBasesInFlow++;
+
+        int flow = SamToFlowgramAlignUtil.getFlowSignalsStart(read);
+        if (flow < 0)
+            flow = Math.max(keyFlow, 0);
+
+        int i = 0;
+        while (i < length) {
+            final byte nucleotide = nucleotideAt(bases, i, negativeStrand);
+
+            // the run of this nucleotide, all of which was called in a single flow
+            int runEnd = i + 1;
+            while (runEnd < length && nucleotideAt(bases, runEnd, negativeStrand) == nucleotide)
+                runEnd++;
+
+            if (nucleotide == NO_NUCLEOTIDE) {
+                i = runEnd;
+                continue;
+            }
+            if (!flowed[nucleotide])
+                return flows; // a nucleotide that's never flowed
+
+            while (flowOrder[flow % flowOrder.length] != nucleotide)
+                flow++;
+            int homopolymerLength = runEnd - i;
+            if (signals != null && flow < signals.length)
+                homopolymerLength = Math.max(1, SamToFlowgramAlignUtil.getBaseCallFromFlowSignal(signals[flow]) - (flow == keyFlow ? keyBasesInFlow : 0));
+
+            for (int j = i; j < runEnd; j++) {
+                final int offset = negativeStrand ? length - 1 - j : j;
+                flows.flowIndices[offset] = flow;
+                flows.homopolymerLengths[offset] = homopolymerLength;
+                flows.nucleotides[offset] = nucleotide;
+            }
+            i = runEnd;
+        }
+
+        return flows;
+    }
+
+    /**
+     * @return the nucleotide of the i-th base sequenced
+     */
+    private static byte nucleotideAt(final byte[] bases, final int i, final boolean negativeStrand) {
+        final byte nucleotide = negativeStrand ? SamToFlowgramAlignUtil.NTINT2COMP[SamToFlowgramAlignUtil.NT2INT[bases[bases.length - 1 - i] & 0xff]] : SamToFlowgramAlignUtil.NT2INT[bases[i] & 0xff];
+        return nucleotide > 3 ? NO_NUCLEOTIDE : nucleotide;
+    }
+
+    /**
+     * @return the flow of the last base of the key, in which the first template base is called if it's the same
+     *         nucleotide, or -1 if there's no key
+     */
+    private static int lastKeyFlow(final byte[] flowOrder, final boolean[] flowed, final String key) {
+        if (key == null || key.length() == 0)
+            return -1;
+        int flow = 0;
+        for (int i = 0; i < key.length(); i++) {
+            final byte nucleotide = SamToFlowgramAlignUtil.NT2INT[key.charAt(i) & 0xff];
+            if (!flowed[nucleotide])
+                return -1;
+            while (flowOrder[flow % flowOrder.length] != nucleotide)
+                flow++;
+        }
+        return flow;
+    }
+}
@@ -1,8 +1,11 @@
 package org.broadinstitute.sting.gatk.walkers.recalibration;
 
+import org.broadinstitute.sting.utils.exceptions.UserException;
 import org.broadinstitute.sting.utils.recalibration.BaseRecalibration;
 import org.broadinstitute.sting.utils.sam.GATKSAMRecord;
 
+import java.util.*;
+
 /*
  * Copyright (c) 2009 The Broad Institute
  *
@@ -36,7 +39,12 @@ import org.broadinstitute.sting.utils.sam.GATKSAMRecord;
  * The Read Group covariate.
  */
 
-public class ReadGroupCovariate implements RequiredCovariate {
+public class ReadGroupCovariate implements RequiredCovariate, PackedCovariate {
+
+    public static final int MAX_READ_GROUPS = 1 << 16;
+
+    private final Map<String, Integer> readGroupKeys = new HashMap<String, Integer>(); // Keys are handed out as read groups are seen
+    private final List<String> readGroupIds = new ArrayList<String>();
 
     // Initialize any member variables using the command-line arguments passed to the walkers
     @Override
@@ -51,6 +59,33 @@ public class ReadGroupCovariate implements RequiredCovariate {
         }
     }
 
+    @Override
+    public int numberOfKeys() {
+        return MAX_READ_GROUPS;
+    }
+
+    @Override
+    public void getKeys(final GATKSAMRecord read, final int[] keys) {
+        Arrays.fill(keys, 0, read.getReadLength(), keyOf(read.getReadGroup().getReadGroupId()));
+    }
+
+    @Override
+    public synchronized Comparable keyToValue(final int key) {
+        return readGroupIds.get(key);
+    }
+
+    private synchronized int keyOf(final String readGroupId) {
+        Integer key = readGroupKeys.get(readGroupId);
+        if (key == null) {
+            if (readGroupIds.size() == MAX_READ_GROUPS)
+                throw new UserException.BadInput("More than " + MAX_READ_GROUPS + " read groups to recalibrate together");
+            key = readGroupIds.size();
+            readGroupKeys.put(readGroupId, key);
+            readGroupIds.add(readGroupId);
+        }
+        return key;
+    }
+
     // Used to get the covariate's value from input csv file in TableRecalibrationWalker
     @Override
     public final Comparable getValue(final String str) {
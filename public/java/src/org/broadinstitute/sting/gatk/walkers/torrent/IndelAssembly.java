@@ -12,16 +12,20 @@ package org.broadinstitute.sting.gatk.walkers.torrent;
 import net.sf.picard.reference.IndexedFastaSequenceFile;
 import net.sf.samtools.Cigar;
 import net.sf.samtools.CigarOperator;
+import org.broadinstitute.sting.commandline.Argument;
 import org.broadinstitute.sting.commandline.Output;
 import org.broadinstitute.sting.gatk.contexts.ReferenceContext;
 import org.broadinstitute.sting.gatk.datasources.reference.ReferenceDataSource;
 import org.broadinstitute.sting.gatk.refdata.ReadMetaDataTracker;
 import org.broadinstitute.sting.gatk.walkers.ReadWalker;
+import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
+import org.broadinstitute.sting.utils.exceptions.UserException;
 import org.broadinstitute.sting.utils.sam.GATKSAMRecord;
+import org.broadinstitute.sting.utils.threading.DaemonThreadFactory;
 
 import java.io.PrintStream;
-import java.util.Hashtable;
-import java.util.Vector;
+import java.util.*;
+import java.util.concurrent.*;
 
 
 public class IndelAssembly extends ReadWalker<Integer, Integer> {
@@ -29,6 +33,9 @@ public class IndelAssembly extends ReadWalker<Integer, Integer> {
     @Output
     public PrintStream out;
 
+    @Argument(fullName="assemblyThreads", shortName="assemblyThreads", required=false, doc="Number of threads used to assemble independent candidate regions concurrently")
+    protected int ASSEMBLY_THREADS = 1;
+
     private int WINDOW_SIZE = 1000;
     private int WINDOW_PREFIX = 300;
     private int MIN_NUM_SOFTREADS = 10;
@@ -36,17 +43,32 @@ public class IndelAssembly extends ReadWalker<Integer, Integer> {
     private int MIN_ASSEMBLY_WINDOW = 20;              // max indel length is MIN_ASSEMBLY_WINDOW - ANCHOR_LEN 
     private int KMER_LEN = 11;                         // fixed for now
     private int SHORT_SUFFIX_MATCH = 4;
-    private int [] softwindow = new int[WINDOW_SIZE];  // implement as list later
-    private int [] covwindow = new int[WINDOW_SIZE];   // implement as recursive list
+    private int [] softwindow = new int[WINDOW_SIZE];  // circular, position curLeft is at windowHead
+    private int [] covwindow = new int[WINDOW_SIZE];
+    private int windowHead = 0;
     private int curLeft = 0;
     private String curChrom = "";
     private int softStart = 0;
     private int softLen = 0;
     private int softCov = 0;
     private int preSoftCov = 0;
-    private Vector<GATKSAMRecord> ReadsBuffer = new Vector<GATKSAMRecord>();
+    private ArrayDeque<GATKSAMRecord> ReadsBuffer = new ArrayDeque<GATKSAMRecord>();
     private IndexedFastaSequenceFile ancestralAlignments = null;
 
+    // when assembling with multiple threads: the workers and the output of the regions, in the order they were found
+    private ExecutorService assemblyPool = null;
+    private final LinkedList<Future<List<String>>> pendingRegions = new LinkedList<Future<List<String>>>();
+
+    // how many regions per thread may be queued up before we wait for the oldest one to finish
+    private static final int MAX_PENDING_REGIONS_PER_THREAD = 4;
+
+    @Override
+    public void initialize() {
+        if ( ASSEMBLY_THREADS < 1 )
+            throw new UserException.BadArgumentValue("assemblyThreads", "must be at least 1");
+        if ( ASSEMBLY_THREADS > 1 )
+            assemblyPool = Executors.newFixedThreadPool(ASSEMBLY_THREADS, new DaemonThreadFactory("IndelAssembly"));
+    }
 
     @Override
     public Integer map(ReferenceContext ref, GATKSAMRecord read, ReadMetaDataTracker metaDataTracker) {
@@ -66,7 +88,7 @@ public class IndelAssembly extends ReadWalker<Integer, Integer> {
             softLen = 0;
             preSoftCov = 0;
             softCov = 0;
-            for(int i=0;i<WINDOW_SIZE;i++) {softwindow[i]=0; covwindow[i]=0;}
+            ClearWindow();
         }
 
         if(read.getSoftEnd() >= curLeft + WINDOW_SIZE)
@@ -80,12 +102,13 @@ public class IndelAssembly extends ReadWalker<Integer, Integer> {
 
             if(delta>=WINDOW_SIZE)   {
                 curLeft = read.getSoftStart()>WINDOW_PREFIX?(read.getSoftStart() - WINDOW_PREFIX):0;
-                for(int i=0;i<WINDOW_SIZE;i++) {softwindow[i]=0; covwindow[i]=0;}
+                ClearWindow();
             }
             else
             {
-                for(int i=0;i<WINDOW_SIZE-delta;i++) {softwindow[i]=softwindow[i+delta]; covwindow[i]=covwindow[i+delta];}
-                for(int i=WINDOW_SIZE-delta;i<WINDOW_SIZE;i++) {softwindow[i]=0; covwindow[i]=0;}
+                // the positions sliding out of the window become the new positions at its end
+                for(int i=0;i<delta;i++) {softwindow[WindowSlot(i)]=0; covwindow[WindowSlot(i)]=0;}
+                windowHead = WindowSlot(delta);
                 curLeft += delta;
             }
 
@@ -108,240 +131,291 @@ public class IndelAssembly extends ReadWalker<Integer, Integer> {
         return null;  //To change body of implemented methods use File | Settings | File Templates.
     }
 
+    @Override
+    public void onTraversalDone(Integer result) {
+        if ( assemblyPool != null ) {
+            try {
+                EmitPendingRegions(true);
+            } finally {
+                assemblyPool.shutdown();
+            }
+        }
+    }
+
+    private int WindowSlot(int i)
+    {
+        int slot = windowHead + i;
+        return slot >= WINDOW_SIZE ? slot - WINDOW_SIZE : slot;
+    }
+
+    private void ClearWindow()
+    {
+        Arrays.fill(softwindow, 0);
+        Arrays.fill(covwindow, 0);
+        windowHead = 0;
+    }
+
     private void DetectCandidateRegions( int i)
     {
-            if(softwindow[i] > MIN_NUM_SOFTREADS && (covwindow[i]==0 || softwindow[i] > covwindow[i]*MIN_RATIO_SOFT))
+            final int soft = softwindow[WindowSlot(i)];
+            final int cov = covwindow[WindowSlot(i)];
+            if(soft > MIN_NUM_SOFTREADS && (cov==0 || soft > cov*MIN_RATIO_SOFT))
             {
                 softLen++;
-                softCov+=softwindow[i];
+                softCov+=soft;
             }
             else
             {
                 if(softLen>MIN_ASSEMBLY_WINDOW)
                 {
-                    if(softCov/softLen > MIN_RATIO_SOFT*Math.max(preSoftCov, covwindow[i])) SegmentAssembly();
+                    if(softCov/softLen > MIN_RATIO_SOFT*Math.max(preSoftCov, cov)) SegmentAssembly();
                 }
                 softStart = curLeft + i;
                 softLen = 0;
                 softCov = 0;
-                preSoftCov = covwindow[i];
+                preSoftCov = cov;
             }
 
     }
 
-    private class TKmer{
-        int Freq;
-        int PosInReference;
-     public TKmer()
-     {
-         Freq = 0;
-         PosInReference = -1;
-     }
-    }
+    /**
+     * A candidate region, with the reads and reference it is assembled from, which can be assembled independently of
+     * the others
+     */
+    class CandidateRegion implements Callable<List<String>> {
+        private final String curChrom;
+        private final int softStart;
+        private final int softLen;
+        private final int softCov;
+        private final int genStart;
+        private final int genStop;
+        private final String reference;
+        private final GATKSAMRecord[] reads;
+        private final List<String> output = new ArrayList<String>();
+
+        public CandidateRegion(int genStart, int genStop, String reference)
+        {
+            this(IndelAssembly.this.curChrom, IndelAssembly.this.softStart, IndelAssembly.this.softLen, IndelAssembly.this.softCov,
+                 genStart, genStop, reference, ReadsBuffer.toArray(new GATKSAMRecord[ReadsBuffer.size()]));
+        }
 
-    private void BuildKMerSpectrum(Hashtable<String, TKmer> spectrum)
-    {
-        for(int i=0;i<ReadsBuffer.size();i++)
+        CandidateRegion(String curChrom, int softStart, int softLen, int softCov, int genStart, int genStop, String reference, GATKSAMRecord[] reads)
         {
-            final GATKSAMRecord read = ReadsBuffer.get(i);
-            int startOffset = read.getSoftStart() - softStart;
-            int readOffset = 0;
-            Cigar cigar = read.getCigar();
-                                                              
-            for(int j=0;j<cigar.numCigarElements();j++)
-            {
-                CigarOperator cgo = cigar.getCigarElement(j).getOperator();
-                int cgl = cigar.getCigarElement(j).getLength();
+            this.curChrom = curChrom;
+            this.softStart = softStart;
+            this.softLen = softLen;
+            this.softCov = softCov;
+            this.genStart = genStart;
+            this.genStop = genStop;
+            this.reference = reference;
+            this.reads = reads;
+        }
 
-                if(cgo == CigarOperator.SOFT_CLIP)
+        public List<String> call()
+        {
+            KmerSpectrum spectrum = new KmerSpectrum(KMER_LEN);
+
+            BuildKMerSpectrum(spectrum);
+            DetectIndel(genStart, genStop, reference, spectrum);
+            return output;
+        }
+
+        private void BuildKMerSpectrum(KmerSpectrum spectrum)
+        {
+            for(int i=0;i<reads.length;i++)
+            {
+                final GATKSAMRecord read = reads[i];
+                int startOffset = read.getSoftStart() - softStart;
+                int readOffset = 0;
+                Cigar cigar = read.getCigar();
+                                                              
+                for(int j=0;j<cigar.numCigarElements();j++)
                 {
-                    if(startOffset + readOffset + cgl > 0 && startOffset + readOffset < softLen)
+                    CigarOperator cgo = cigar.getCigarElement(j).getOperator();
+                    int cgl = cigar.getCigarElement(j).getLength();
+
+                    if(cgo == CigarOperator.SOFT_CLIP)
                     {
-                      int startPos = (startOffset + readOffset >= 0)?(readOffset - KMER_LEN):(-startOffset -  KMER_LEN);
-                      int  stopPos = readOffset + cgl + KMER_LEN + 1;
-                      final String softAln = read.getReadString();  
-                      final String novelSeq = softAln.substring(startPos<0?0:startPos, stopPos>softAln.length()?softAln.length():stopPos);
-                        
-                     for(int x = 0; x <= novelSeq.length() - KMER_LEN; x++)
-                      {
-                         final String kmer = novelSeq.substring(x,x+KMER_LEN);
-                         if(spectrum.containsKey(kmer)) spectrum.get(kmer).Freq++;
-                         else spectrum.put(novelSeq.substring(x,x+KMER_LEN),new TKmer());
-                      }
+                        if(startOffset + readOffset + cgl > 0 && startOffset + readOffset < softLen)
+                        {
+                          int startPos = (startOffset + readOffset >= 0)?(readOffset - KMER_LEN):(-startOffset -  KMER_LEN);
+                          int  stopPos = readOffset + cgl + KMER_LEN + 1;
+                          final byte[] softAln = read.getReadBases();
+                          spectrum.addSequence(softAln, startPos<0?0:startPos, stopPos>softAln.length?softAln.length:stopPos);
+                        }
+                               readOffset+=cgl;
                     }
-                           readOffset+=cgl;
+                    else if(cgo != CigarOperator.DELETION && cgo != CigarOperator.HARD_CLIP) readOffset+=cgl;
                 }
-                else if(cgo != CigarOperator.DELETION && cgo != CigarOperator.HARD_CLIP) readOffset+=cgl;
-            }
         
+            }
         }
-    }
 
-    private void PrintVCF(String contig, int pos, String ref, String var, 
-                          int varLen, int type, int qual, int totCounts, int refCounts, int varCounts)
-    {
-        if(qual==30 && type%2==1) qual=5;
-        else
-        if(varCounts<50) qual=7;
-        else
-        if(qual==30 && varLen<15) qual=9;
+        private void PrintVCF(String contig, int pos, String ref, String var, 
+                              int varLen, int type, int qual, int totCounts, int refCounts, int varCounts)
+        {
+            if(qual==30 && type%2==1) qual=5;
+            else
+            if(varCounts<50) qual=7;
+            else
+            if(qual==30 && varLen<15) qual=9;
 
-        if(totCounts<=0) totCounts = 1;
-        if(refCounts<=0) refCounts = 0;
-        float varfq = totCounts<=varCounts? (float) 1.0 :((float)varCounts)/((float)totCounts);
-        float reffq = totCounts<=refCounts? (float) 1.0 :((float)refCounts)/((float)totCounts);
+            if(totCounts<=0) totCounts = 1;
+            if(refCounts<=0) refCounts = 0;
+            float varfq = totCounts<=varCounts? (float) 1.0 :((float)varCounts)/((float)totCounts);
+            float reffq = totCounts<=refCounts? (float) 1.0 :((float)refCounts)/((float)totCounts);
         
-        String genotype = reffq > 0.2 ? "0/1" : "1/1";
+            String genotype = reffq > 0.2 ? "0/1" : "1/1";
         
-        out.println(contig                + "\t" +
-                    Integer.toString(pos) + "\t" +
-                    "."                   + "\t" +
-                    ref                   + "\t" +
-                    var                   + "\t" +
-                    Integer.toString(qual*100)+ "\t" +
-                    "."                   + "\t" +
-                    "Bayesian_Score=" + Integer.toString(qual)+";"+
-                    "Variant-freq=" + Float.toString(varfq)+   ";"+
-                    "Num-spanning-ref-reads=" + Integer.toString(refCounts)+ ";"+
-                    "Num-variant-reads=" + Integer.toString(varCounts)+ ";"+
-                    "Variant-length=" + Integer.toString(varLen) + "\t" +
-                    "GT:AD:DP:FA:GQ:MQ0:PL\t"+
-                    genotype + ":" + Integer.toString(refCounts) + "," + Integer.toString(varCounts) + ":" +
-                    Integer.toString(totCounts) + ":" + Float.toString(varfq) + ":99:0:" + Integer.toString(qual*100));
-    }
-
-    private void getPath(String anchorKMer, int anchorFreq, Hashtable<String, TKmer> spectrum, int genStart, final String reference)
-    {
-      double cutFreq = 0.2*softCov/softLen;
-      int startPos = spectrum.get(anchorKMer).PosInReference + KMER_LEN;
-      String varSeq = "";
-      String nextKmer = anchorKMer;
-      int firstKMerFreq = 0;
-      int lastKMerFreq = 0;
-
-      while(varSeq.length()<WINDOW_PREFIX)
-      {
-      nextKmer = nextKmer.substring(1);
-
-        String tmp = nextKmer + "A";
-        int a = spectrum.containsKey(tmp)?spectrum.get(tmp).Freq:0;
-
-        tmp = nextKmer + "C";
-        int c = spectrum.containsKey(tmp)?spectrum.get(tmp).Freq:0;
-
-        tmp = nextKmer + "G";
-        int g = spectrum.containsKey(tmp)?spectrum.get(tmp).Freq:0;
+            output.add(contig                + "\t" +
+                        Integer.toString(pos) + "\t" +
+                        "."                   + "\t" +
+                        ref                   + "\t" +
+                        var                   + "\t" +
+                        Integer.toString(qual*100)+ "\t" +
+                        "."                   + "\t" +
+                        "Bayesian_Score=" + Integer.toString(qual)+";"+
+                        "Variant-freq=" + Float.toString(varfq)+   ";"+
+                        "Num-spanning-ref-reads=" + Integer.toString(refCounts)+ ";"+
+                        "Num-variant-reads=" + Integer.toString(varCounts)+ ";"+
+                        "Variant-length=" + Integer.toString(varLen) + "\t" +
+                        "GT:AD:DP:FA:GQ:MQ0:PL\t"+
+                        genotype + ":" + Integer.toString(refCounts) + "," + Integer.toString(varCounts) + ":" +
+                        Integer.toString(totCounts) + ":" + Float.toString(varfq) + ":99:0:" + Integer.toString(qual*100));
+        }
 
-        tmp = nextKmer + "T";
-        int t = spectrum.containsKey(tmp)?spectrum.get(tmp).Freq:0;
+        private void getPath(long anchorKMer, int anchorFreq, KmerSpectrum spectrum, int genStart, final String reference)
+        {
+          double cutFreq = 0.2*softCov/softLen;
+          int startPos = spectrum.getPositionInReference(anchorKMer) + KMER_LEN;
+          final String anchorBase = Character.toString((char)KmerSpectrum.decode((int)(anchorKMer & 3)));
+          String varSeq = "";
+          long nextKmer = anchorKMer;
+          int firstKMerFreq = 0;
+          int lastKMerFreq = 0;
+
+          while(varSeq.length()<WINDOW_PREFIX)
+          {
+            int a = spectrum.getFrequency(spectrum.extend(nextKmer, 0));
+            int c = spectrum.getFrequency(spectrum.extend(nextKmer, 1));
+            int g = spectrum.getFrequency(spectrum.extend(nextKmer, 2));
+            int t = spectrum.getFrequency(spectrum.extend(nextKmer, 3));
 
-        int maxFreq = Math.max(a,Math.max(c,Math.max(g,t)));
+            int maxFreq = Math.max(a,Math.max(c,Math.max(g,t)));
 
-        if(maxFreq>cutFreq)
-        {
-            int nCandPath = 0;
-            if(2*a >maxFreq) nCandPath++;
-            if(2*c >maxFreq) nCandPath++;
-            if(2*g >maxFreq) nCandPath++;
-            if(2*t >maxFreq) nCandPath++;
-            
-            if(nCandPath == 1)
+            if(maxFreq>cutFreq)
             {
-                if(varSeq.length()==0) { firstKMerFreq = maxFreq; lastKMerFreq = maxFreq; }
-                if(a==maxFreq) { varSeq+="A"; nextKmer+="A";}
-                else
-                if(c==maxFreq) { varSeq+="C"; nextKmer+="C";}
-                else
-                if(g==maxFreq) { varSeq+="G"; nextKmer+="G";}
+                int nCandPath = 0;
+                if(2*a >maxFreq) nCandPath++;
+                if(2*c >maxFreq) nCandPath++;
+                if(2*g >maxFreq) nCandPath++;
+                if(2*t >maxFreq) nCandPath++;
+            
+                if(nCandPath == 1)
+                {
+                    if(varSeq.length()==0) { firstKMerFreq = maxFreq; lastKMerFreq = maxFreq; }
+                    if(a==maxFreq) { varSeq+="A"; nextKmer=spectrum.extend(nextKmer, 0);}
+                    else
+                    if(c==maxFreq) { varSeq+="C"; nextKmer=spectrum.extend(nextKmer, 1);}
+                    else
+                    if(g==maxFreq) { varSeq+="G"; nextKmer=spectrum.extend(nextKmer, 2);}
+                    else
+                    if(t==maxFreq) { varSeq+="T"; nextKmer=spectrum.extend(nextKmer, 3);}
+
+                  int stopPos = spectrum.getPositionInReference(nextKmer);
+                  if( stopPos >= startPos )
+                  {
+                      int anchor2Freq = spectrum.getFrequency(nextKmer);
+                      int refCov = 0;
+                      if((startPos<=KMER_LEN) && (stopPos>=softLen+KMER_LEN)) refCov = (anchorFreq + anchor2Freq)/2;
+                      if(startPos>KMER_LEN) refCov = anchorFreq;
+                      if(stopPos<softLen+KMER_LEN) refCov += anchor2Freq;
+
+                   if(varSeq.length() - KMER_LEN > stopPos - startPos)
+                       // INSERTION  type 0
+                        PrintVCF(curChrom, genStart + startPos - 1,  anchorBase, anchorBase+varSeq.substring(0,varSeq.length() - KMER_LEN),varSeq.length() - KMER_LEN,0,100,refCov, refCov-Math.max(firstKMerFreq,lastKMerFreq)/2, Math.max(firstKMerFreq,lastKMerFreq)/2);
+                      else
+                      if(varSeq.length() - KMER_LEN <= stopPos - startPos)
+                       // DELETION type 1
+                       PrintVCF(curChrom, genStart + startPos - 1,  reference.substring(startPos - 1, stopPos), reference.substring(startPos - 1, startPos),stopPos - startPos,1,100,refCov, refCov-Math.max(firstKMerFreq,lastKMerFreq)/2, Math.max(firstKMerFreq,lastKMerFreq)/2);
+                  return;
+                  }
+                    lastKMerFreq = maxFreq;
+                }
                 else
-                if(t==maxFreq) { varSeq+="T"; nextKmer+="T";}
-
-              int stopPos = spectrum.get(nextKmer).PosInReference;
-              if( stopPos >= startPos )
-              {
-                  int anchor2Freq = spectrum.get(nextKmer).Freq;
-                  int refCov = 0;
-                  if((startPos<=KMER_LEN) && (stopPos>=softLen+KMER_LEN)) refCov = (anchorFreq + anchor2Freq)/2;
-                  if(startPos>KMER_LEN) refCov = anchorFreq;
-                  if(stopPos<softLen+KMER_LEN) refCov += anchor2Freq;
-
-               if(varSeq.length() - KMER_LEN > stopPos - startPos)
-                   // INSERTION  type 0
-                    PrintVCF(curChrom, genStart + startPos - 1,  anchorKMer.substring(anchorKMer.length()-1), anchorKMer.substring(anchorKMer.length()-1)+varSeq.substring(0,varSeq.length() - KMER_LEN),varSeq.length() - KMER_LEN,0,100,refCov, refCov-Math.max(firstKMerFreq,lastKMerFreq)/2, Math.max(firstKMerFreq,lastKMerFreq)/2);
-                  else
-                  if(varSeq.length() - KMER_LEN <= stopPos - startPos)
-                   // DELETION type 1
-                   PrintVCF(curChrom, genStart + startPos - 1,  reference.substring(startPos - 1, stopPos), reference.substring(startPos - 1, startPos),stopPos - startPos,1,100,refCov, refCov-Math.max(firstKMerFreq,lastKMerFreq)/2, Math.max(firstKMerFreq,lastKMerFreq)/2);
-              return;
-              }
-                lastKMerFreq = maxFreq;
-            }
-            else
-             {
-                 //out.println("MULTI " + Integer.toString(startPos) +  " " + varSeq);
-                 return;
-             }
-        }  else
-        {
-            if(varSeq.length() >= SHORT_SUFFIX_MATCH)
-            {
-            String shortSuffix = varSeq.substring(varSeq.length()-SHORT_SUFFIX_MATCH);
-            String shortRef = reference.substring(startPos,startPos + KMER_LEN>reference.length()?reference.length():startPos + KMER_LEN);
-            if(shortRef.contains(shortSuffix))
+                 {
+                     //out.println("MULTI " + Integer.toString(startPos) +  " " + varSeq);
+                     return;
+                 }
+            }  else
             {
-              int delta = 0; 
-              for(int i=0; i<shortRef.length() - SHORT_SUFFIX_MATCH;i++)
-              {
-                if(shortRef.regionMatches(i,shortSuffix,0,SHORT_SUFFIX_MATCH)) {delta = i; break;}
-              }
-              if(varSeq.length() < delta + SHORT_SUFFIX_MATCH)
-              {
-                  // DELETION type 3
-                  PrintVCF(curChrom, genStart + startPos - 1,  reference.substring(startPos - 1, startPos + delta + SHORT_SUFFIX_MATCH - varSeq.length()),reference.substring(startPos - 1, startPos),delta + SHORT_SUFFIX_MATCH - varSeq.length(),3,30,anchorFreq,anchorFreq-Math.max(firstKMerFreq,lastKMerFreq)/2, Math.max(firstKMerFreq,lastKMerFreq)/2);
-              }
-                else
-              {
-                  // INSERTION  type 2
-                  PrintVCF(curChrom, genStart + startPos - 1,  anchorKMer.substring(anchorKMer.length()-1), anchorKMer.substring(anchorKMer.length()-1)+varSeq.substring(0,varSeq.length() - delta - SHORT_SUFFIX_MATCH),varSeq.length() - delta - SHORT_SUFFIX_MATCH,2,30,anchorFreq, anchorFreq-Math.max(firstKMerFreq,lastKMerFreq)/2, Math.max(firstKMerFreq,lastKMerFreq)/2);
-              }
+                if(varSeq.length() >= SHORT_SUFFIX_MATCH)
+                {
+                String shortSuffix = varSeq.substring(varSeq.length()-SHORT_SUFFIX_MATCH);
+                String shortRef = reference.substring(startPos,startPos + KMER_LEN>reference.length()?reference.length():startPos + KMER_LEN);
+                if(shortRef.contains(shortSuffix))
+                {
+                  int delta = 0; 
+                  for(int i=0; i<shortRef.length() - SHORT_SUFFIX_MATCH;i++)
+                  {
+                    if(shortRef.regionMatches(i,shortSuffix,0,SHORT_SUFFIX_MATCH)) {delta = i; break;}
+                  }
+                  if(varSeq.length() < delta + SHORT_SUFFIX_MATCH)
+                  {
+                      // DELETION type 3
+                      PrintVCF(curChrom, genStart + startPos - 1,  reference.substring(startPos - 1, startPos + delta + SHORT_SUFFIX_MATCH - varSeq.length()),reference.substring(startPos - 1, startPos),delta + SHORT_SUFFIX_MATCH - varSeq.length(),3,30,anchorFreq,anchorFreq-Math.max(firstKMerFreq,lastKMerFreq)/2, Math.max(firstKMerFreq,lastKMerFreq)/2);
+                  }
+                    else
+                  {
+                      // INSERTION  type 2
+                      PrintVCF(curChrom, genStart + startPos - 1,  anchorBase, anchorBase+varSeq.substring(0,varSeq.length() - delta - SHORT_SUFFIX_MATCH),varSeq.length() - delta - SHORT_SUFFIX_MATCH,2,30,anchorFreq, anchorFreq-Math.max(firstKMerFreq,lastKMerFreq)/2, Math.max(firstKMerFreq,lastKMerFreq)/2);
+                  }
+                    return;
+                 }
+                }
+               // out.println("INCOM " + Integer.toString(startPos) +  " " + varSeq);
                 return;
-             }
             }
-           // out.println("INCOM " + Integer.toString(startPos) +  " " + varSeq);
-            return;
+          }
         }
-      }
-    }
     
-    private void DetectIndel(int genStart, int genStop, final String reference, Hashtable<String, TKmer> spectrum)
-    {
-       String anchorKMer = null;
-       int numHits = 0; 
-       int firstAnchor = -1;
-        int anchorFreq = 0;
-       for(int i=0;i<reference.length()-KMER_LEN+1;i++)
-       {
-         final String refKMer= reference.substring(i,i + KMER_LEN);
-         if(spectrum.containsKey(refKMer)) 
-         {
-             final TKmer kmer = spectrum.get(refKMer);
-             //if(kmer.PosInReference!=-1) out.println("WARNING: Assembly is circularized!!!");  else
-             {
-                  kmer.PosInReference = i;
-                  numHits++;
-             }   
-             if(kmer.Freq > 0.2*softCov/softLen && (firstAnchor == -1 || i-firstAnchor == 1))
+        private void DetectIndel(int genStart, int genStop, final String reference, KmerSpectrum spectrum)
+        {
+           long anchorKMer = -1;
+           int numHits = 0; 
+           int firstAnchor = -1;
+            int anchorFreq = 0;
+           long refKMer = 0;
+           int validBases = 0;
+           for(int j=0;j<reference.length();j++)
+           {
+             final int code = KmerSpectrum.encode((byte)reference.charAt(j));
+             if(code < 0) { validBases = 0; continue; }
+             refKMer = spectrum.extend(refKMer, code);
+             if(++validBases < KMER_LEN) continue;
+
+             final int i = j - KMER_LEN + 1;
+             if(spectrum.contains(refKMer)) 
              {
-                 firstAnchor = i;
-                 anchorKMer = refKMer;
-                 anchorFreq = kmer.Freq;
-             }    
-         }
-       }
+                 //if(spectrum.getPositionInReference(refKMer)!=-1) out.println("WARNING: Assembly is circularized!!!");  else
+                 {
+                      spectrum.setPositionInReference(refKMer, i);
+                      numHits++;
+                 }   
+                 final int freq = spectrum.getFrequency(refKMer);
+                 if(freq > 0.2*softCov/softLen && (firstAnchor == -1 || i-firstAnchor == 1))
+                 {
+                     firstAnchor = i;
+                     anchorKMer = refKMer;
+                     anchorFreq = freq;
+                 }    
+             }
+           }
 
-       // out.println(" most left anchor: " + Integer.toString(firstAnchor) + " " + anchorKMer + "  # hits " + Integer.toString(numHits));
-        if(anchorKMer!=null) getPath(anchorKMer, anchorFreq, spectrum, genStart, reference);
+           // out.println(" most left anchor: " + Integer.toString(firstAnchor) + " " + anchorKMer + "  # hits " + Integer.toString(numHits));
+            if(anchorKMer!=-1) getPath(anchorKMer, anchorFreq, spectrum, genStart, reference);
 
+        }
     }
 
     private void SegmentAssembly()
@@ -354,19 +428,53 @@ public class IndelAssembly extends ReadWalker<Integer, Integer> {
 
         String reference = new String(ancestralAlignments.getSubsequenceAt(curChrom, genStart, genStop).getBases());
        // out.println(curChrom + ":" + Integer.toString(softStart) + " " + Integer.toString(softLen) + " " + ReadsBuffer.size() + " " + Double.toString(softCov/softLen) + " " + reference);
-        Hashtable spectrum = new Hashtable<String, TKmer>();
-        
-        BuildKMerSpectrum(spectrum);
-        DetectIndel(genStart, genStop, reference, spectrum);
-        
+        CandidateRegion region = new CandidateRegion(genStart, genStop, reference);
+
+        if(assemblyPool == null)
+        {
+            for(String line : region.call()) out.println(line);
+        }
+        else
+        {
+            pendingRegions.add(assemblyPool.submit(region));
+            EmitPendingRegions(false);
+        }
        // Vector<GATKSAMRecord> AssemblyBuffer = new Vector<GATKSAMRecord>();
     }
 
+    /**
+     * Writes out the regions assembled so far, oldest first, for as long as they are done (or we have too many of them)
+     *
+     * @param all  if true, wait for and write out all of the pending regions
+     */
+    private void EmitPendingRegions(boolean all)
+    {
+        while(!pendingRegions.isEmpty())
+        {
+            final Future<List<String>> region = pendingRegions.getFirst();
+            if(!all && !region.isDone() && pendingRegions.size() <= MAX_PENDING_REGIONS_PER_THREAD * ASSEMBLY_THREADS)
+                return;
+
+            pendingRegions.removeFirst();
+            try {
+                for(String line : region.get()) out.println(line);
+            } catch (InterruptedException e) {
+                assemblyPool.shutdownNow();
+                throw new ReviewedStingException("Interrupted while waiting for a region to be assembled", e);
+            } catch (ExecutionException e) {
+                assemblyPool.shutdownNow();
+                if ( e.getCause() instanceof RuntimeException )
+                    throw (RuntimeException)e.getCause();
+                throw new ReviewedStingException("Assembly failed", e.getCause());
+            }
+        }
+    }
+
     private void FlushBuffer(int LeftMostPos)
     {
-      while(ReadsBuffer.size()>0 && ReadsBuffer.get(0).getSoftEnd()<LeftMostPos){
-          // out.println(ReadsBuffer.get(0).getSAMString());
-          ReadsBuffer.remove(0);
+      while(!ReadsBuffer.isEmpty() && ReadsBuffer.peekFirst().getSoftEnd()<LeftMostPos){
+          // out.println(ReadsBuffer.peekFirst().getSAMString());
+          ReadsBuffer.removeFirst();
       }
     }
 
@@ -384,12 +492,12 @@ public class IndelAssembly extends ReadWalker<Integer, Integer> {
 
           if(cgo == CigarOperator.SOFT_CLIP)
           {
-           for(int j=cgl+offset-1;j>=offset;j--) softwindow[j]++;
+           for(int j=cgl+offset-1;j>=offset;j--) softwindow[WindowSlot(j)]++;
            offset+=cgl;
           }
           else if(cgo != CigarOperator.INSERTION && cgo != CigarOperator.HARD_CLIP)
           {
-          for(int j=cgl+offset-1;j>=offset;j--) covwindow[j]++;
+          for(int j=cgl+offset-1;j>=offset;j--) covwindow[WindowSlot(j)]++;
           offset+=cgl;         
           }
               
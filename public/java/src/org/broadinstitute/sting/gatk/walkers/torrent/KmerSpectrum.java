@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2012, The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.broadinstitute.sting.gatk.walkers.torrent;
+
+import org.broadinstitute.sting.utils.collections.LongIndexMap;
+
+import java.util.Arrays;
+
+/**
+ * The k-mer spectrum of the soft clipped sequence of a candidate region of IndelAssembly.
+ *
+ * Each k-mer is packed two bits per base into a long, and its frequency and position in the reference are kept in
+ * primitive arrays indexed through a LongIndexMap, rather than in a map from k-mer strings.  Only k-mers made up
+ * entirely of A, C, G and T are counted, as anything else can't be packed.  As before, the first occurrence of a k-mer
+ * counts zero and each further occurrence one.
+ */
+final class KmerSpectrum {
+    private static final byte[] BASES = new byte[]{'A', 'C', 'G', 'T'};
+
+    private final int kmerLength;
+    private final long kmerMask;
+
+    private final LongIndexMap kmers = new LongIndexMap(1024);
+    private int[] frequencies = new int[1024];
+    private int[] positionsInReference = new int[1024];
+
+    /**
+     * @param kmerLength the length of the k-mers, at most 31
+     */
+    public KmerSpectrum(final int kmerLength) {
+        this.kmerLength = kmerLength;
+        this.kmerMask = (1L << (2 * kmerLength)) - 1;
+    }
+
+    /**
+     * @param base a base
+     * @return the two bit code of the base, or -1 if it isn't one of A, C, G or T
+     */
+    public static int encode(final byte base) {
+        switch (base) {
+            case 'A': return 0;
+            case 'C': return 1;
+            case 'G': return 2;
+            case 'T': return 3;
+            default: return -1;
+        }
+    }
+
+    /**
+     * @param code the two bit code of a base
+     * @return the base
+     */
+    public static byte decode(final int code) {
+        return BASES[code];
+    }
+
+    /**
+     * @param kmer a packed k-mer
+     * @param code the two bit code of a base
+     * @return the k-mer following kmer: its last k-1 bases and then the base
+     */
+    public long extend(final long kmer, final int code) {
+        return ((kmer << 2) | code) & kmerMask;
+    }
+
+    /**
+     * Counts every k-mer of bases[start, stop)
+     */
+    public void addSequence(final byte[] bases, final int start, final int stop) {
+        long kmer = 0;
+        int validBases = 0;
+        for (int i = start; i < stop; i++) {
+            final int code = encode(bases[i]);
+            if (code < 0) {
+                validBases = 0;
+                continue;
+            }
+            kmer = extend(kmer, code);
+            if (++validBases >= kmerLength)
+                add(kmer);
+        }
+    }
+
+    private void add(final long kmer) {
+        final int size = kmers.size();
+        final int index = kmers.add(kmer);
+        if (index < size) {
+            frequencies[index]++;
+            return;
+        }
+        if (index == frequencies.length) {
+            frequencies = Arrays.copyOf(frequencies, 2 * index);
+            positionsInReference = Arrays.copyOf(positionsInReference, 2 * index);
+        }
+        positionsInReference[index] = -1;
+    }
+
+    /**
+     * @return the number of distinct k-mers counted
+     */
+    public int size() {
+        return kmers.size();
+    }
+
+    public boolean contains(final long kmer) {
+        return kmers.indexOf(kmer) >= 0;
+    }
+
+    /**
+     * @return the frequency of the k-mer, or 0 if it isn't in the spectrum
+     */
+    public int getFrequency(final long kmer) {
+        final int index = kmers.indexOf(kmer);
+        return index < 0 ? 0 : frequencies[index];
+    }
+
+    /**
+     * @return the position of the k-mer in the reference of the region, or -1 if it isn't known
+     */
+    public int getPositionInReference(final long kmer) {
+        final int index = kmers.indexOf(kmer);
+        return index < 0 ? -1 : positionsInReference[index];
+    }
+
+    /**
+     * Sets the position in the reference of a k-mer which is in the spectrum
+     */
+    public void setPositionInReference(final long kmer, final int position) {
+        positionsInReference[kmers.indexOf(kmer)] = position;
+    }
+}
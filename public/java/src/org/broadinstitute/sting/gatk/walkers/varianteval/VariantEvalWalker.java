@@ -37,6 +37,8 @@ import org.broadinstitute.sting.utils.variantcontext.VariantContextUtils;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.PrintStream;
 import java.lang.reflect.Field;
 import java.util.*;
@@ -177,6 +179,13 @@ public class VariantEvalWalker extends RodWalker<Integer, Integer> implements Tr
     @Argument(fullName="mergeEvals", shortName="mergeEvals", doc="If provided, all -eval tracks will be merged into a single eval track", required=false)
     public boolean mergeEvals = false;
 
+    /**
+     * The report is also written to this file in the binary GATKReport format, which is much smaller and faster to load
+     * than the text report.  GATKReport loads either format.
+     */
+    @Argument(fullName="binaryReport", shortName="binaryReport", doc="Also write the report to this file in the binary GATKReport format", required=false)
+    public File binaryReportFile = null;
+
     /**
      * File containing tribble-readable features for the IntervalStratificiation
      */
@@ -200,8 +209,24 @@ public class VariantEvalWalker extends RodWalker<Integer, Integer> implements Tr
     // The list of stratifiers and evaluators to use
     private TreeSet<VariantStratifier> stratificationObjects = null;
 
-    // The set of all possible evaluation contexts
-    private HashMap<StateKey, NewEvaluationContext> evaluationContexts = null;
+    // The evaluations to use
+    private Set<Class<? extends VariantEvaluator>> evaluationObjects = null;
+
+    // The numbering of all possible combinations of stratification states
+    private StateIndex stateIndex = null;
+
+    // The set of all possible evaluation contexts, indexed by stateIndex, that gets reported
+    private NewEvaluationContext[] evaluationContexts = null;
+
+    // The evaluation contexts of each thread, the first of which is evaluationContexts itself; the rest are combined
+    // into it when the traversal is done
+    private final List<NewEvaluationContext[]> threadEvaluationContexts = new ArrayList<NewEvaluationContext[]>();
+    private final ThreadLocal<NewEvaluationContext[]> localEvaluationContexts = new ThreadLocal<NewEvaluationContext[]>() {
+        @Override
+        protected NewEvaluationContext[] initialValue() {
+            return createThreadEvaluationContexts();
+        }
+    };
 
     // important stratifications
     private boolean byFilterIsEnabled = false;
@@ -264,7 +289,7 @@ public class VariantEvalWalker extends RodWalker<Integer, Integer> implements Tr
 
         // Initialize the set of stratifications and evaluations to use
         stratificationObjects = variantEvalUtils.initializeStratificationObjects(this, NO_STANDARD_STRATIFICATIONS, STRATIFICATIONS_TO_USE);
-        Set<Class<? extends VariantEvaluator>> evaluationObjects = variantEvalUtils.initializeEvaluationObjects(NO_STANDARD_MODULES, MODULES_TO_USE);
+        evaluationObjects = variantEvalUtils.initializeEvaluationObjects(NO_STANDARD_MODULES, MODULES_TO_USE);
         for ( VariantStratifier vs : getStratificationObjects() ) {
             if ( vs.getName().equals("Filter") )
                 byFilterIsEnabled = true;
@@ -283,7 +308,8 @@ public class VariantEvalWalker extends RodWalker<Integer, Integer> implements Tr
         }
 
         // Initialize the evaluation contexts
-        evaluationContexts = variantEvalUtils.initializeEvaluationContexts(stratificationObjects, evaluationObjects, null, null);
+        stateIndex = new StateIndex(stratificationObjects);
+        evaluationContexts = variantEvalUtils.initializeEvaluationContexts(stateIndex, evaluationObjects, null);
 
         // Initialize report table
         report = variantEvalUtils.initializeGATKReport(stratificationObjects, evaluationObjects);
@@ -320,15 +346,29 @@ public class VariantEvalWalker extends RodWalker<Integer, Integer> implements Tr
         return byContig;
     }
 
+    /**
+     * Create the evaluation contexts of the calling thread.  Evaluations that support combine() get their own copies,
+     * while the others are shared with evaluationContexts.
+     *
+     * @return the evaluation contexts of the calling thread
+     */
+    private synchronized NewEvaluationContext[] createThreadEvaluationContexts() {
+        final NewEvaluationContext[] contexts = threadEvaluationContexts.isEmpty()
+                ? evaluationContexts
+                : variantEvalUtils.initializeEvaluationContexts(stateIndex, evaluationObjects, evaluationContexts);
+        threadEvaluationContexts.add(contexts);
+        return contexts;
+    }
+
     /**
      * Collect relevant information from each variant in the supplied VCFs
      */
     @Override
     public Integer map(RefMetaDataTracker tracker, ReferenceContext ref, AlignmentContext context) {
-        for ( NewEvaluationContext nec : evaluationContexts.values() ) {
-            synchronized (nec) {
-                nec.update0(tracker, ref, context);
-            }
+        final NewEvaluationContext[] contexts = localEvaluationContexts.get();
+
+        for ( NewEvaluationContext nec : contexts ) {
+            nec.update0(tracker, ref, context);
         }
 
         if (tracker != null) {
@@ -367,31 +407,21 @@ public class VariantEvalWalker extends RodWalker<Integer, Integer> implements Tr
                             // find the comp
                             final VariantContext comp = findMatchingComp(eval, compSet);
 
-                            HashMap<VariantStratifier, List<String>> stateMap = new HashMap<VariantStratifier, List<String>>();
+                            List<List<String>> relevantStates = new ArrayList<List<String>>(stratificationObjects.size());
                             for ( VariantStratifier vs : stratificationObjects ) {
-                                List<String> states = vs.getRelevantStates(ref, tracker, comp, compRod.getName(), eval, evalRod.getName(), sampleName);
-                                stateMap.put(vs, states);
+                                relevantStates.add(vs.getRelevantStates(ref, tracker, comp, compRod.getName(), eval, evalRod.getName(), sampleName));
                             }
 
-                            ArrayList<StateKey> stateKeys = new ArrayList<StateKey>();
-                            variantEvalUtils.initializeStateKeys(stateMap, null, null, stateKeys);
-
-                            HashSet<StateKey> stateKeysHash = new HashSet<StateKey>(stateKeys);
-
-                            for ( StateKey stateKey : stateKeysHash ) {
-                                NewEvaluationContext nec = evaluationContexts.get(stateKey);
+                            for ( int index : stateIndex.getIndices(relevantStates) ) {
+                                NewEvaluationContext nec = contexts[index];
 
                                 // eval against the comp
-                                synchronized (nec) {
-                                    nec.apply(tracker, ref, context, comp, eval);
-                                }
+                                nec.apply(tracker, ref, context, comp, eval);
 
                                 // eval=null against all comps of different type that aren't bound to another eval
                                 for ( VariantContext otherComp : compSet ) {
                                     if ( otherComp != comp && ! compHasMatchingEval(otherComp, evalSetBySample) ) {
-                                        synchronized (nec) {
-                                            nec.apply(tracker, ref, context, otherComp, null);
-                                        }
+                                        nec.apply(tracker, ref, context, otherComp, null);
                                     }
                                 }
                             }
@@ -478,8 +508,17 @@ public class VariantEvalWalker extends RodWalker<Integer, Integer> implements Tr
     public void onTraversalDone(Integer result) {
         logger.info("Finalizing variant report");
 
-        for ( StateKey stateKey : evaluationContexts.keySet() ) {
-            NewEvaluationContext nec = evaluationContexts.get(stateKey);
+        for ( NewEvaluationContext[] contexts : threadEvaluationContexts ) {
+            if ( contexts != evaluationContexts ) {
+                for ( int index = 0; index < contexts.length; index++ ) {
+                    evaluationContexts[index].combine(contexts[index]);
+                }
+            }
+        }
+
+        for ( int index = 0; index < evaluationContexts.length; index++ ) {
+            StateKey stateKey = stateIndex.getStateKey(index);
+            NewEvaluationContext nec = evaluationContexts[index];
 
             for ( VariantEvaluator ve : nec.getEvaluationClassList().values() ) {
                 ve.finalizeEvaluation();
@@ -567,6 +606,16 @@ public class VariantEvalWalker extends RodWalker<Integer, Integer> implements Tr
         }
 
         report.print(out);
+
+        if ( binaryReportFile != null ) {
+            try {
+                FileOutputStream binaryOut = new FileOutputStream(binaryReportFile);
+                report.printBinary(binaryOut);
+                binaryOut.close();
+            } catch (IOException e) {
+                throw new UserException.CouldNotCreateOutputFile(binaryReportFile, e);
+            }
+        }
     }
 
     // Accessors
@@ -55,6 +55,19 @@ public class CompOverlap extends VariantEvaluator implements StandardEval {
         return true;
     }
 
+    @Override
+    public boolean supportsCombine() {
+        return true;
+    }
+
+    @Override
+    public void combine(VariantEvaluator other) {
+        final CompOverlap o = (CompOverlap)other;
+        nEvalVariants += o.nEvalVariants;
+        nVariantsAtComp += o.nVariantsAtComp;
+        nConcordant += o.nConcordant;
+    }
+
     /**
      * Returns true if every allele in eval is also in comp
      *
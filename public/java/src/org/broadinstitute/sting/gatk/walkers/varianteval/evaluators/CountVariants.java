@@ -95,6 +95,33 @@ public class CountVariants extends VariantEvaluator implements StandardEval {
         nProcessedLoci += context.getSkippedBases() + (ref == null ? 0 : 1);
     }
 
+    @Override
+    public boolean supportsCombine() {
+        return true;
+    }
+
+    @Override
+    public void combine(VariantEvaluator other) {
+        final CountVariants o = (CountVariants)other;
+        nProcessedLoci += o.nProcessedLoci;
+        nCalledLoci += o.nCalledLoci;
+        nRefLoci += o.nRefLoci;
+        nVariantLoci += o.nVariantLoci;
+        nSNPs += o.nSNPs;
+        nMNPs += o.nMNPs;
+        nInsertions += o.nInsertions;
+        nDeletions += o.nDeletions;
+        nComplex += o.nComplex;
+        nSymbolic += o.nSymbolic;
+        nMixed += o.nMixed;
+        nNoCalls += o.nNoCalls;
+        nHets += o.nHets;
+        nHomRef += o.nHomRef;
+        nHomVar += o.nHomVar;
+        nSingletons += o.nSingletons;
+        nHomDerived += o.nHomDerived;
+    }
+
     public String update1(VariantContext vc1, RefMetaDataTracker tracker, ReferenceContext ref, AlignmentContext context) {
         nCalledLoci++;
 
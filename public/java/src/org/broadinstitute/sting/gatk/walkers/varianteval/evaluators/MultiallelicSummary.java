@@ -144,6 +144,11 @@ public class MultiallelicSummary extends VariantEvaluator { // implements Standa
             final int bin = (int)(numBins * MathUtils.round(AF, 2));
             AFhistogram[bin]++;
        }
+
+        public void add(final AFHistogram other) {
+            for ( int i = 0; i < AFhistogram.length; i++ )
+                AFhistogram[i] += other.AFhistogram[i];
+        }
     }
 
     public void initialize(VariantEvalWalker walker) {}
@@ -158,6 +163,31 @@ public class MultiallelicSummary extends VariantEvaluator { // implements Standa
         nProcessedLoci += context.getSkippedBases() + (ref == null ? 0 : 1);
     }
 
+    @Override
+    public boolean supportsCombine() {
+        return true;
+    }
+
+    @Override
+    public void combine(VariantEvaluator other) {
+        final MultiallelicSummary o = (MultiallelicSummary)other;
+        nProcessedLoci += o.nProcessedLoci;
+        nSNPs += o.nSNPs;
+        nMultiSNPs += o.nMultiSNPs;
+        nIndels += o.nIndels;
+        nMultiIndels += o.nMultiIndels;
+        nTi += o.nTi;
+        nTv += o.nTv;
+        knownSNPsPartial += o.knownSNPsPartial;
+        knownSNPsComplete += o.knownSNPsComplete;
+        knownIndelsPartial += o.knownIndelsPartial;
+        knownIndelsComplete += o.knownIndelsComplete;
+        AFhistogramMaxSnp.add(o.AFhistogramMaxSnp);
+        AFhistogramMinSnp.add(o.AFhistogramMinSnp);
+        AFhistogramMaxIndel.add(o.AFhistogramMaxIndel);
+        AFhistogramMinIndel.add(o.AFhistogramMinIndel);
+    }
+
     public String update2(VariantContext eval, VariantContext comp, RefMetaDataTracker tracker, ReferenceContext ref, AlignmentContext context) {
         if ( eval == null || eval.isMonomorphicInSamples() )
             return null;
@@ -6,6 +6,7 @@ import org.broadinstitute.sting.gatk.refdata.RefMetaDataTracker;
 import org.broadinstitute.sting.gatk.walkers.varianteval.VariantEvalWalker;
 import org.broadinstitute.sting.gatk.walkers.varianteval.util.NewEvaluationContext;
 import org.broadinstitute.sting.gatk.walkers.varianteval.util.StateKey;
+import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
 import org.broadinstitute.sting.utils.variantcontext.VariantContext;
 
 import java.util.Collection;
@@ -33,6 +34,26 @@ public abstract class VariantEvaluator {
 
     public void finalizeEvaluation() {}
 
+    /**
+     * Can each thread run its own copy of this evaluation, the copies being combined once the traversal is done?
+     * Evaluations that can't are shared by all threads, and updated one thread at a time.
+     *
+     * @return true if this evaluation implements combine()
+     */
+    public boolean supportsCombine() {
+        return false;
+    }
+
+    /**
+     * Adds the counts of other, an evaluation of the same class that saw a different part of the data, to this one.
+     * Called before finalizeEvaluation().
+     *
+     * @param other the evaluation to combine with this one
+     */
+    public void combine(VariantEvaluator other) {
+        throw new ReviewedStingException("BUG: " + getClass().getSimpleName() + " cannot be combined");
+    }
+
     protected double rate(long n, long d) {
         return n / (1.0 * Math.max(d, 1));
     }
@@ -118,6 +118,14 @@ public class VariantSummary extends VariantEvaluator implements StandardEval {
             get(type).put(sample, count + 1);
         }
 
+        public final void add(final TypeSampleMap other) {
+            for ( final Map.Entry<Type, Map<String, Integer>> byType : other.entrySet() ) {
+                final Map<String, Integer> bySample = get(byType.getKey());
+                for ( final Map.Entry<String, Integer> pair : byType.getValue().entrySet() )
+                    bySample.put(pair.getKey(), bySample.get(pair.getKey()) + pair.getValue());
+            }
+        }
+
         public final int all(Type type) {
             return get(type).get(ALL);
         }
@@ -180,6 +188,23 @@ public class VariantSummary extends VariantEvaluator implements StandardEval {
         nProcessedLoci += context.getSkippedBases() + (ref == null ? 0 : 1);
     }
 
+    @Override
+    public boolean supportsCombine() {
+        return true;
+    }
+
+    @Override
+    public void combine(VariantEvaluator other) {
+        final VariantSummary o = (VariantSummary)other;
+        nProcessedLoci += o.nProcessedLoci;
+        allVariantCounts.add(o.allVariantCounts);
+        knownVariantCounts.add(o.knownVariantCounts);
+        countsPerSample.add(o.countsPerSample);
+        transitionsPerSample.add(o.transitionsPerSample);
+        transversionsPerSample.add(o.transversionsPerSample);
+        depthPerSample.add(o.depthPerSample);
+    }
+
     private final Type getType(VariantContext vc) {
         switch (vc.getType()) {
             case SNP:
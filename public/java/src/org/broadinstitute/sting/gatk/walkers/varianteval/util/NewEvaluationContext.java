@@ -11,6 +11,7 @@ import org.broadinstitute.sting.utils.exceptions.StingException;
 import org.broadinstitute.sting.utils.variantcontext.VariantContext;
 
 import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 
@@ -28,11 +29,30 @@ public class NewEvaluationContext extends HashMap<VariantStratifier, String> {
     }
 
     public void addEvaluationClassList(VariantEvalWalker walker, StateKey stateKey, Set<Class<? extends VariantEvaluator>> evaluationClasses) {
+        addEvaluationClassList(walker, stateKey, evaluationClasses, null);
+    }
+
+    /**
+     * Instantiates the evaluators of this context
+     *
+     * @param walker            the walker running the evaluations
+     * @param stateKey          the states of this context
+     * @param evaluationClasses the evaluations to use
+     * @param shared            if not null, a context for the same states whose evaluators are used in place of
+     *                          new ones for the evaluations that don't support combine()
+     */
+    public void addEvaluationClassList(VariantEvalWalker walker, StateKey stateKey, Set<Class<? extends VariantEvaluator>> evaluationClasses, NewEvaluationContext shared) {
         evaluationInstances = new TreeMap<String, VariantEvaluator>();
 
         for ( Class<? extends VariantEvaluator> c : evaluationClasses ) {
             try {
                 VariantEvaluator eval = c.newInstance();
+                if ( shared != null && ! eval.supportsCombine() ) {
+                    if ( shared.evaluationInstances.containsKey(c.getSimpleName()) )
+                        evaluationInstances.put(c.getSimpleName(), shared.evaluationInstances.get(c.getSimpleName()));
+                    continue;
+                }
+
                 eval.initialize(walker);
 
                 if (eval.stateIsApplicable(stateKey)) {
@@ -50,6 +70,8 @@ public class NewEvaluationContext extends HashMap<VariantStratifier, String> {
         return evaluationInstances;
     }
 
+    // evaluators that don't support combine() are shared between the contexts of all threads, so every update
+    // locks the evaluator; the locks of the others are only ever taken by one thread, and cost next to nothing
     public void apply(RefMetaDataTracker tracker, ReferenceContext ref, AlignmentContext context, VariantContext comp, VariantContext eval) {
         for ( VariantEvaluator evaluation : evaluationInstances.values() ) {
             // we always call update0 in case the evaluation tracks things like number of bases covered
@@ -59,28 +81,45 @@ public class NewEvaluationContext extends HashMap<VariantStratifier, String> {
                 continue;
 
             // now call the single or paired update function
-            switch ( evaluation.getComparisonOrder() ) {
-                case 1:
-                    if (eval != null) {
-                        evaluation.update1(eval, tracker, ref, context);
-                    }
-
-                    break;
-                case 2:
-                    //if (eval != null) {
-                        evaluation.update2(eval, comp, tracker, ref, context);
-                    //}
-
-                    break;
-                default:
-                    throw new ReviewedStingException("BUG: Unexpected evaluation order " + evaluation);
+            synchronized (evaluation) {
+                switch ( evaluation.getComparisonOrder() ) {
+                    case 1:
+                        if (eval != null) {
+                            evaluation.update1(eval, tracker, ref, context);
+                        }
+
+                        break;
+                    case 2:
+                        //if (eval != null) {
+                            evaluation.update2(eval, comp, tracker, ref, context);
+                        //}
+
+                        break;
+                    default:
+                        throw new ReviewedStingException("BUG: Unexpected evaluation order " + evaluation);
+                }
             }
         }
     }
 
     public void update0(RefMetaDataTracker tracker, ReferenceContext ref, AlignmentContext context) {
         for ( VariantEvaluator evaluation : evaluationInstances.values() ) {
-            evaluation.update0(tracker, ref, context);
+            synchronized (evaluation) {
+                evaluation.update0(tracker, ref, context);
+            }
+        }
+    }
+
+    /**
+     * Adds the results of other, a context for the same states that saw a different part of the data, to this one
+     *
+     * @param other the context to combine with this one
+     */
+    public void combine(NewEvaluationContext other) {
+        for ( Map.Entry<String, VariantEvaluator> evaluation : evaluationInstances.entrySet() ) {
+            final VariantEvaluator otherEvaluation = other.evaluationInstances.get(evaluation.getKey());
+            if ( otherEvaluation != evaluation.getValue() )
+                evaluation.getValue().combine(otherEvaluation);
         }
     }
 }
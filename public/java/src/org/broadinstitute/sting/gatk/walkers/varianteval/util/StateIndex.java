@@ -0,0 +1,146 @@
+package org.broadinstitute.sting.gatk.walkers.varianteval.util;
+
+import org.broadinstitute.sting.gatk.walkers.varianteval.stratifications.VariantStratifier;
+import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
+import org.broadinstitute.sting.utils.exceptions.UserException;
+
+import java.util.*;
+
+/**
+ * Numbers every combination of stratification states, so that the evaluation contexts can be kept in a flat array
+ * instead of a map keyed by StateKey.
+ *
+ * The states of each stratifier are numbered in the order of getAllStates(), and a combination of states is numbered
+ * as the mixed-radix number whose digits are those state numbers, the first stratifier being the most significant.
+ */
+public class StateIndex {
+    private final VariantStratifier[] stratifiers;
+
+    /** the distinct states of each stratifier, and the number of each of them times the stride of the stratifier */
+    private final List<List<String>> states = new ArrayList<List<String>>();
+    private final List<Map<String, Integer>> stateOffsets = new ArrayList<Map<String, Integer>>();
+
+    private final int[] strides;
+    private final int size;
+
+    /**
+     * @param stratificationObjects the stratifications to use, in the order in which their states are given to getIndices()
+     */
+    public StateIndex(final Collection<VariantStratifier> stratificationObjects) {
+        stratifiers = stratificationObjects.toArray(new VariantStratifier[stratificationObjects.size()]);
+        strides = new int[stratifiers.length];
+
+        for ( final VariantStratifier vs : stratifiers )
+            states.add(new ArrayList<String>(new LinkedHashSet<String>(vs.getAllStates())));
+
+        long stride = 1;
+        for ( int i = stratifiers.length - 1; i >= 0; i-- ) {
+            strides[i] = (int)stride;
+
+            final Map<String, Integer> offsets = new HashMap<String, Integer>();
+            for ( final String state : states.get(i) )
+                offsets.put(state, offsets.size() * strides[i]);
+            stateOffsets.add(0, offsets);
+
+            stride *= states.get(i).size();
+            if ( stride > Integer.MAX_VALUE )
+                throw new UserException.BadArgumentValue("ST", "the requested stratifications have too many combinations of states to evaluate");
+        }
+        size = (int)stride;
+    }
+
+    /**
+     * @return the number of combinations of states
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of stratifiers
+     */
+    public int getNStratifiers() {
+        return stratifiers.length;
+    }
+
+    /**
+     * @param strat the position of the stratifier
+     * @return the stratifier
+     */
+    public VariantStratifier getStratifier(final int strat) {
+        return stratifiers[strat];
+    }
+
+    /**
+     * @param index the number of a combination of states
+     * @param strat the position of the stratifier
+     * @return the state of the stratifier in that combination
+     */
+    public String getState(final int index, final int strat) {
+        return states.get(strat).get((index / strides[strat]) % states.get(strat).size());
+    }
+
+    /**
+     * @param index the number of a combination of states
+     * @return the state key of that combination
+     */
+    public StateKey getStateKey(final int index) {
+        final StateKey stateKey = new StateKey();
+        for ( int i = 0; i < stratifiers.length; i++ )
+            stateKey.put(stratifiers[i].getName(), getState(index, i));
+        return stateKey;
+    }
+
+    /**
+     * Numbers all of the combinations of the given states, each combination only once
+     *
+     * @param relevantStates the relevant states of each stratifier, in the order the stratifiers were given
+     * @return the number of each combination of the relevant states
+     */
+    public int[] getIndices(final List<List<String>> relevantStates) {
+        final int[][] offsets = new int[stratifiers.length][];
+        int nIndices = 1;
+        for ( int i = 0; i < stratifiers.length; i++ ) {
+            offsets[i] = getOffsets(i, relevantStates.get(i));
+            nIndices *= offsets[i].length;
+        }
+
+        final int[] indices = new int[nIndices];
+        final int[] digits = new int[stratifiers.length];
+        for ( int k = 0; k < nIndices; k++ ) {
+            int index = 0;
+            for ( int i = 0; i < stratifiers.length; i++ )
+                index += offsets[i][digits[i]];
+            indices[k] = index;
+
+            // advance to the next combination, the last stratifier changing fastest
+            for ( int i = stratifiers.length - 1; i >= 0 && ++digits[i] == offsets[i].length; i-- )
+                digits[i] = 0;
+        }
+
+        return indices;
+    }
+
+    /**
+     * @return the offsets of the distinct given states of the stratifier at strat
+     */
+    private int[] getOffsets(final int strat, final List<String> relevantStates) {
+        final Map<String, Integer> offsetsByState = stateOffsets.get(strat);
+        final int[] offsets = new int[relevantStates.size()];
+        int n = 0;
+
+        for ( final String state : relevantStates ) {
+            final Integer offset = offsetsByState.get(state);
+            if ( offset == null )
+                throw new ReviewedStingException("BUG: stratification " + stratifiers[strat].getName() + " returned the state " + state + ", which is not one of its states");
+
+            boolean seen = false;
+            for ( int i = 0; i < n && ! seen; i++ )
+                seen = offsets[i] == offset;
+            if ( ! seen )
+                offsets[n++] = offset;
+        }
+
+        return n == offsets.length ? offsets : Arrays.copyOf(offsets, n);
+    }
+}
@@ -158,52 +158,26 @@ public class VariantEvalUtils {
     }
 
     /**
-     * Recursively initialize the evaluation contexts
+     * Initialize an evaluation context for every combination of stratification states
      *
-     * @param stratificationObjects the stratifications to use
-     * @param evaluationObjects     the evaluations to use
-     * @param stratStack            a stack of stratifications to apply
-     * @param ec                    evaluation context
-     * @return a map of all the evaluation contexts
+     * @param stateIndex        the combinations of stratification states
+     * @param evaluationObjects the evaluations to use
+     * @param shared            if not null, the contexts whose evaluators are shared with the new contexts for the
+     *                          evaluations that don't support combine()
+     * @return the evaluation contexts, indexed by the number of their combination of states
      */
-    public HashMap<StateKey, NewEvaluationContext> initializeEvaluationContexts(Set<VariantStratifier> stratificationObjects, Set<Class<? extends VariantEvaluator>> evaluationObjects, Stack<VariantStratifier> stratStack, NewEvaluationContext ec) {
-        HashMap<StateKey, NewEvaluationContext> ecs = new HashMap<StateKey, NewEvaluationContext>();
-
-        if (stratStack == null) {
-            stratStack = new Stack<VariantStratifier>();
-            stratStack.addAll(stratificationObjects);
-        }
-
-        if (!stratStack.isEmpty()) {
-            Stack<VariantStratifier> newStratStack = new Stack<VariantStratifier>();
-            newStratStack.addAll(stratStack);
-
-            VariantStratifier vs = newStratStack.pop();
-
-            for (String state : vs.getAllStates()) {
-                NewEvaluationContext nec = new NewEvaluationContext();
-                if (ec != null) {
-                    nec.putAll(ec);
-                }
-                nec.put(vs, state);
+    public NewEvaluationContext[] initializeEvaluationContexts(StateIndex stateIndex, Set<Class<? extends VariantEvaluator>> evaluationObjects, NewEvaluationContext[] shared) {
+        final NewEvaluationContext[] ecs = new NewEvaluationContext[stateIndex.size()];
 
-                ecs.putAll(initializeEvaluationContexts(stratificationObjects, evaluationObjects, newStratStack, nec));
+        for (int index = 0; index < ecs.length; index++) {
+            NewEvaluationContext nec = new NewEvaluationContext();
+            for (int strat = 0; strat < stateIndex.getNStratifiers(); strat++) {
+                nec.put(stateIndex.getStratifier(strat), stateIndex.getState(index, strat));
             }
-        } else {
-            HashMap<StateKey, NewEvaluationContext> necs = new HashMap<StateKey, NewEvaluationContext>();
 
-            StateKey stateKey = new StateKey();
-            for (VariantStratifier vs : ec.keySet()) {
-                String state = ec.get(vs);
+            nec.addEvaluationClassList(variantEvalWalker, stateIndex.getStateKey(index), evaluationObjects, shared == null ? null : shared[index]);
 
-                stateKey.put(vs.getName(), state);
-            }
-
-            ec.addEvaluationClassList(variantEvalWalker, stateKey, evaluationObjects);
-
-            necs.put(stateKey, ec);
-
-            return necs;
+            ecs[index] = nec;
         }
 
         return ecs;
@@ -375,50 +349,4 @@ public class VariantEvalUtils {
             mappings.put(sample, new ArrayList<VariantContext>(1));
         mappings.get(sample).add(vc);
     }
-
-    /**
-     * Recursively initialize the state keys used to look up the right evaluation context based on the state of the
-     * variant context
-     *
-     * @param stateMap   the map of allowable states
-     * @param stateStack a stack of the states
-     * @param stateKey   a state key object
-     * @param stateKeys  all the state keys
-     * @return a list of state keys
-     */
-    public ArrayList<StateKey> initializeStateKeys(HashMap<VariantStratifier, List<String>> stateMap, Stack<HashMap<VariantStratifier, List<String>>> stateStack, StateKey stateKey, ArrayList<StateKey> stateKeys) {
-        if (stateStack == null) {
-            stateStack = new Stack<HashMap<VariantStratifier, List<String>>>();
-
-            for (VariantStratifier vs : stateMap.keySet()) {
-                HashMap<VariantStratifier, List<String>> oneSetOfStates = new HashMap<VariantStratifier, List<String>>();
-                oneSetOfStates.put(vs, stateMap.get(vs));
-
-                stateStack.add(oneSetOfStates);
-            }
-        }
-
-        if (!stateStack.isEmpty()) {
-            Stack<HashMap<VariantStratifier, List<String>>> newStateStack = new Stack<HashMap<VariantStratifier, List<String>>>();
-            newStateStack.addAll(stateStack);
-
-            HashMap<VariantStratifier, List<String>> oneSetOfStates = newStateStack.pop();
-            VariantStratifier vs = oneSetOfStates.keySet().iterator().next();
-
-            for (String state : oneSetOfStates.get(vs)) {
-                StateKey newStateKey = new StateKey();
-                if (stateKey != null) {
-                    newStateKey.putAll(stateKey);
-                }
-
-                newStateKey.put(vs.getName(), state);
-
-                initializeStateKeys(stateMap, newStateStack, newStateKey, stateKeys);
-            }
-        } else {
-            stateKeys.add(stateKey);
-        }
-
-        return stateKeys;
-    }
-}
\ No newline at end of file
+}
@@ -54,6 +54,9 @@ public class GaussianMixtureModel {
     public boolean isModelReadyForEvaluation;
     public boolean failedToConverge = false;
 
+    // the probability of each datum under each Gaussian, one row of numGaussians values per datum, from the last expectation step
+    private double[] pVarInGaussian = null;
+
     public GaussianMixtureModel( final int numGaussians, final int numAnnotations,
                                  final double shrinkage, final double dirichletParameter, final double priorCounts ) {
 
@@ -133,31 +136,124 @@ public class GaussianMixtureModel {
         }
     }
 
-    public void expectationStep( final List<VariantDatum> data ) {
+    public void expectationStep( final VariantDataMatrix data ) {
 
         for( final MultivariateGaussian gaussian : gaussians ) {
             gaussian.precomputeDenominatorForVariationalBayes( getSumHyperParameterLambda() );
         }
 
-        for( final VariantDatum datum : data ) {
-            final double[] pVarInGaussianLog10 = new double[gaussians.size()];
-            int gaussianIndex = 0;
-            for( final MultivariateGaussian gaussian : gaussians ) {
-                final double pVarLog10 = gaussian.evaluateDatumLog10( datum );
-                pVarInGaussianLog10[gaussianIndex++] = pVarLog10;
-            }
-            final double[] pVarInGaussianNormalized = MathUtils.normalizeFromLog10( pVarInGaussianLog10, false );
-            gaussianIndex = 0;
-            for( final MultivariateGaussian gaussian : gaussians ) {
-                gaussian.assignPVarInGaussian( pVarInGaussianNormalized[gaussianIndex++] );
+        final int numGaussians = gaussians.size();
+        if( pVarInGaussian == null || pVarInGaussian.length != data.numData * numGaussians ) {
+            pVarInGaussian = new double[data.numData * numGaussians];
+        }
+        final double[] pVar = pVarInGaussian;
+
+        data.mapPartitions( new VariantDataMatrix.PartitionFunction<Object>() {
+            public Object apply( final int partition, final int start, final int stop ) {
+                final double[] pVarInGaussianLog10 = new double[numGaussians];
+                for( int datumIndex = start; datumIndex < stop; datumIndex++ ) {
+                    final int offset = datumIndex * data.numAnnotations;
+                    for( int kkk = 0; kkk < numGaussians; kkk++ ) {
+                        pVarInGaussianLog10[kkk] = gaussians.get(kkk).evaluateDatumLog10( data.annotations, offset );
+                    }
+                    final double[] pVarInGaussianNormalized = MathUtils.normalizeFromLog10( pVarInGaussianLog10, false );
+                    System.arraycopy( pVarInGaussianNormalized, 0, pVar, datumIndex * numGaussians, numGaussians );
+                }
+                return null;
             }
+        } );
+    }
+
+    public void maximizationStep( final VariantDataMatrix data ) {
+        final Matrix[] scatter = calculateWeightedMeansAndScatter( data, 1E-10 );
+        for( int kkk = 0; kkk < gaussians.size(); kkk++ ) {
+            gaussians.get(kkk).maximizeGaussian( scatter[kkk], empiricalMu, empiricalSigma, shrinkage, dirichletParameter, priorCounts );
         }
     }
 
-    public void maximizationStep( final List<VariantDatum> data ) {
-        for( final MultivariateGaussian gaussian : gaussians ) {
-            gaussian.maximizeGaussian( data, empiricalMu, empiricalSigma, shrinkage, dirichletParameter, priorCounts);
+    /**
+     * Sets sumProb and mu of each Gaussian to the total and mean of the data weighted by the probabilities from the last
+     * expectation step, and returns the weighted scatter matrix of the data around the new means for each Gaussian.
+     * The sums are accumulated per partition of the data and then added up in partition order.
+     *
+     * @param data            the data being modeled
+     * @param initialSumProb  the value from which to start summing the probabilities
+     * @return the scatter matrices, one per Gaussian
+     */
+    private Matrix[] calculateWeightedMeansAndScatter( final VariantDataMatrix data, final double initialSumProb ) {
+        final int numGaussians = gaussians.size();
+        final int numAnnotations = data.numAnnotations;
+        final double[] pVar = pVarInGaussian;
+
+        // first pass: the sum of the probabilities and the weighted sum of the data
+        final List<double[][]> weightedSums = data.mapPartitions( new VariantDataMatrix.PartitionFunction<double[][]>() {
+            public double[][] apply( final int partition, final int start, final int stop ) {
+                // the last column holds the sum of the probabilities
+                final double[][] sums = new double[numGaussians][numAnnotations + 1];
+                for( int kkk = 0; kkk < numGaussians; kkk++ ) {
+                    sums[kkk][numAnnotations] = ( partition == 0 ? initialSumProb : 0.0 );
+                }
+                for( int datumIndex = start; datumIndex < stop; datumIndex++ ) {
+                    final int offset = datumIndex * numAnnotations;
+                    for( int kkk = 0; kkk < numGaussians; kkk++ ) {
+                        final double prob = pVar[datumIndex * numGaussians + kkk];
+                        final double[] sum = sums[kkk];
+                        sum[numAnnotations] += prob;
+                        for( int jjj = 0; jjj < numAnnotations; jjj++ ) {
+                            sum[jjj] += prob * data.annotations[offset + jjj];
+                        }
+                    }
+                }
+                return sums;
+            }
+        } );
+
+        for( int kkk = 0; kkk < numGaussians; kkk++ ) {
+            final MultivariateGaussian gaussian = gaussians.get(kkk);
+            gaussian.zeroOutMu();
+            gaussian.sumProb = 0.0;
+            for( final double[][] sums : weightedSums ) {
+                gaussian.sumProb += sums[kkk][numAnnotations];
+                for( int jjj = 0; jjj < numAnnotations; jjj++ ) {
+                    gaussian.mu[jjj] += sums[kkk][jjj];
+                }
+            }
+            gaussian.divideEqualsMu( gaussian.sumProb );
+        }
+
+        // second pass: the weighted scatter of the data around the means
+        final List<double[][][]> scatters = data.mapPartitions( new VariantDataMatrix.PartitionFunction<double[][][]>() {
+            public double[][][] apply( final int partition, final int start, final int stop ) {
+                final double[][][] scatter = new double[numGaussians][numAnnotations][numAnnotations];
+                final double[] diff = new double[numAnnotations];
+                for( int datumIndex = start; datumIndex < stop; datumIndex++ ) {
+                    final int offset = datumIndex * numAnnotations;
+                    for( int kkk = 0; kkk < numGaussians; kkk++ ) {
+                        final double prob = pVar[datumIndex * numGaussians + kkk];
+                        final double[] mu = gaussians.get(kkk).mu;
+                        for( int jjj = 0; jjj < numAnnotations; jjj++ ) {
+                            diff[jjj] = data.annotations[offset + jjj] - mu[jjj];
+                        }
+                        for( int iii = 0; iii < numAnnotations; iii++ ) {
+                            final double[] row = scatter[kkk][iii];
+                            for( int jjj = 0; jjj < numAnnotations; jjj++ ) {
+                                row[jjj] += prob * diff[iii] * diff[jjj];
+                            }
+                        }
+                    }
+                }
+                return scatter;
+            }
+        } );
+
+        final Matrix[] result = new Matrix[numGaussians];
+        for( int kkk = 0; kkk < numGaussians; kkk++ ) {
+            result[kkk] = new Matrix( numAnnotations, numAnnotations );
+            for( final double[][][] scatter : scatters ) {
+                result[kkk].plusEquals( new Matrix(scatter[kkk]) );
+            }
         }
+        return result;
     }
 
     private double getSumHyperParameterLambda() {
@@ -168,10 +264,12 @@ public class GaussianMixtureModel {
         return sum;
     }
 
-    public void evaluateFinalModelParameters( final List<VariantDatum> data ) {
-        for( final MultivariateGaussian gaussian : gaussians ) {
-            gaussian.evaluateFinalModelParameters(data);
+    public void evaluateFinalModelParameters( final VariantDataMatrix data ) {
+        final Matrix[] scatter = calculateWeightedMeansAndScatter( data, 0.0 );
+        for( int kkk = 0; kkk < gaussians.size(); kkk++ ) {
+            gaussians.get(kkk).evaluateFinalModelParameters( scatter[kkk] );
         }
+        pVarInGaussian = null; // clean up some memory
         normalizePMixtureLog10();
     }
 
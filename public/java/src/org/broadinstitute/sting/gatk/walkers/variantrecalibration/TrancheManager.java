@@ -139,14 +139,16 @@ public class TrancheManager {
         }
     }
 
-    public static List<Tranche> findTranches( ArrayList<VariantDatum> data, final double[] tranches, SelectionMetric metric ) {
+    public static List<Tranche> findTranches( List<VariantDatum> data, final double[] tranches, SelectionMetric metric ) {
         return findTranches( data, tranches, metric, null );
     }
 
-    public static List<Tranche> findTranches( ArrayList<VariantDatum> data, final double[] trancheThresholds, SelectionMetric metric, File debugFile ) {
+    public static List<Tranche> findTranches( List<VariantDatum> data, final double[] trancheThresholds, SelectionMetric metric, File debugFile ) {
         logger.info(String.format("Finding %d tranches for %d variants", trancheThresholds.length, data.size()));
 
-        Collections.sort(data);
+        // the data may be a read-only view, so only sort them if they aren't already sorted
+        if ( ! isSortedByLod(data) )
+            Collections.sort(data);
         metric.calculateRunningMetric(data);
 
         if ( debugFile != null) { writeTranchesDebuggingInfo(debugFile, data, metric); }
@@ -167,6 +169,16 @@ public class TrancheManager {
         return tranches;
     }
 
+    private static boolean isSortedByLod(final List<VariantDatum> data) {
+        VariantDatum previous = null;
+        for ( final VariantDatum datum : data ) {
+            if ( previous != null && previous.compareTo(datum) > 0 )
+                return false;
+            previous = datum;
+        }
+        return true;
+    }
+
     private static void writeTranchesDebuggingInfo(File f, List<VariantDatum> tranchesData, SelectionMetric metric ) {
         try {
             PrintStream out = new PrintStream(f);
@@ -0,0 +1,354 @@
+/*
+ * Copyright (c) 2011 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.broadinstitute.sting.gatk.walkers.variantrecalibration;
+
+import org.broadinstitute.sting.utils.exceptions.UserException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Columnar storage for the VariantDatum fields of every variant in the callset.
+ *
+ * Each numeric field is kept in its own primitive column and each boolean field in a BitSet, so that a variant costs
+ * a few dozen bytes instead of a VariantDatum object with two arrays. The columns are allocated in chunks of
+ * CHUNK_SIZE rows; once the chunks allocated on the heap exceed the heap budget, further chunks are memory-mapped
+ * from a temporary file.  The heap budget may be shared between several sets of columns, such as the ones reduced
+ * by each thread, and the bytes a set of columns took from it are given back when it is closed.
+ */
+public class VariantDataColumns {
+    private static final int CHUNK_SHIFT = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    // the int columns, which come after the double columns (annotations first, then lod, qual and prior) in each chunk
+    private static final int NUM_DOUBLE_FIELDS = 3;
+    private static final int LOD = 0, ORIGINAL_QUAL = 1, PRIOR = 2;
+    private static final int START = 0, STOP = 1, CONTIG = 2, CONSENSUS_COUNT = 3, WORST_ANNOTATION = 4;
+    private static final int NUM_INT_COLUMNS = 5;
+
+    private final int numAnnotations;
+    private final int numDoubleColumns;
+    private final int chunkBytes;
+    private final AtomicLong heapBudget;
+
+    private final List<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+    private long heapBytesAllocated = 0;
+    private File mappedFile = null;
+    private RandomAccessFile mappedRandomAccessFile = null;
+    private FileChannel mappedChannel = null;
+    private long mappedBytes = 0;
+    private int size = 0;
+
+    private final List<String> contigs = new ArrayList<String>();
+    private final Map<String, Integer> contigIndexes = new HashMap<String, Integer>();
+
+    private final BitSet[] isNull;
+    private final BitSet isKnown = new BitSet();
+    private final BitSet atTruthSite = new BitSet();
+    private final BitSet atTrainingSite = new BitSet();
+    private final BitSet atAntiTrainingSite = new BitSet();
+    private final BitSet isTransition = new BitSet();
+    private final BitSet isSNP = new BitSet();
+    private final BitSet failingSTDThreshold = new BitSet();
+
+    /**
+     * @param numAnnotations  the number of annotations of each variant
+     * @param heapBudget      the number of bytes of column data to keep on the heap before switching to a memory-mapped file
+     */
+    public VariantDataColumns( final int numAnnotations, final long heapBudget ) {
+        this( numAnnotations, new AtomicLong(heapBudget) );
+    }
+
+    /**
+     * @param numAnnotations  the number of annotations of each variant
+     * @param heapBudget      the number of bytes of column data that may still be kept on the heap, shared with other
+     *                        sets of columns; chunks allocated on the heap are taken out of it
+     */
+    public VariantDataColumns( final int numAnnotations, final AtomicLong heapBudget ) {
+        this.numAnnotations = numAnnotations;
+        this.heapBudget = heapBudget;
+        numDoubleColumns = numAnnotations + NUM_DOUBLE_FIELDS;
+        chunkBytes = CHUNK_SIZE * (8 * numDoubleColumns + 4 * NUM_INT_COLUMNS);
+        isNull = new BitSet[numAnnotations];
+        for( int iii = 0; iii < numAnnotations; iii++ ) {
+            isNull[iii] = new BitSet();
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getNumAnnotations() {
+        return numAnnotations;
+    }
+
+    /**
+     * @return true if some of the data are kept in a memory-mapped file
+     */
+    public boolean isMapped() {
+        return mappedFile != null;
+    }
+
+    // ---------------------------------------------------------------------------------------------------------
+    //
+    // adding data
+    //
+    // ---------------------------------------------------------------------------------------------------------
+
+    public void add( final VariantDatum datum ) {
+        if( datum.annotations.length != numAnnotations ) {
+            throw new IllegalArgumentException("Expected " + numAnnotations + " annotations but the datum has " + datum.annotations.length);
+        }
+        if( (size & CHUNK_MASK) == 0 ) {
+            chunks.add( allocateChunk() );
+        }
+        final int row = size++;
+        setDatum( row, datum );
+        setOriginalQual( row, datum.originalQual );
+        setPrior( row, datum.prior );
+        setInt( row, START, datum.start );
+        setInt( row, STOP, datum.stop );
+        setInt( row, CONTIG, contigIndex(datum.contig) );
+        setInt( row, CONSENSUS_COUNT, datum.consensusCount );
+        for( int iii = 0; iii < numAnnotations; iii++ ) {
+            isNull[iii].set( row, datum.isNull[iii] );
+        }
+        isKnown.set( row, datum.isKnown );
+        atTruthSite.set( row, datum.atTruthSite );
+        atTrainingSite.set( row, datum.atTrainingSite );
+        atAntiTrainingSite.set( row, datum.atAntiTrainingSite );
+        isTransition.set( row, datum.isTransition );
+        isSNP.set( row, datum.isSNP );
+        failingSTDThreshold.set( row, datum.failingSTDThreshold );
+    }
+
+    public void addAll( final List<VariantDatum> data ) {
+        for( final VariantDatum datum : data ) {
+            add( datum );
+        }
+    }
+
+    public void addAll( final VariantDataColumns other ) {
+        final VariantDatum datum = new VariantDatum();
+        for( int row = 0; row < other.size(); row++ ) {
+            add( other.getDatum(row, datum) );
+        }
+    }
+
+    private int contigIndex( final String contig ) {
+        Integer index = contigIndexes.get(contig);
+        if( index == null ) {
+            index = contigs.size();
+            contigs.add( contig );
+            contigIndexes.put( contig, index );
+        }
+        return index;
+    }
+
+    private ByteBuffer allocateChunk() {
+        if( takeFromHeapBudget() ) {
+            heapBytesAllocated += chunkBytes;
+            return ByteBuffer.allocate(chunkBytes);
+        }
+
+        try {
+            if( mappedFile == null ) {
+                mappedFile = File.createTempFile("VariantRecalibrator.", ".data");
+                mappedFile.deleteOnExit();
+                mappedRandomAccessFile = new RandomAccessFile(mappedFile, "rw");
+                mappedChannel = mappedRandomAccessFile.getChannel();
+            }
+            final ByteBuffer chunk = mappedChannel.map(FileChannel.MapMode.READ_WRITE, mappedBytes, chunkBytes);
+            mappedBytes += chunkBytes;
+            return chunk;
+        } catch( IOException e ) {
+            throw new UserException.CouldNotCreateOutputFile(mappedFile, "Unable to create the memory-mapped file for the variant data", e);
+        }
+    }
+
+    private boolean takeFromHeapBudget() {
+        while( true ) {
+            final long remaining = heapBudget.get();
+            if( remaining < chunkBytes ) {
+                return false;
+            }
+            if( heapBudget.compareAndSet(remaining, remaining - chunkBytes) ) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Releases the storage of the columns: the heap chunks are given back to the heap budget, and the memory-mapped
+     * file, if any, is closed and deleted.  The columns can't be used afterwards.
+     */
+    public void close() {
+        chunks.clear();
+        heapBudget.addAndGet( heapBytesAllocated );
+        heapBytesAllocated = 0;
+        size = 0;
+
+        if( mappedFile != null ) {
+            try {
+                mappedRandomAccessFile.close();
+            } catch( IOException e ) {
+                throw new UserException.CouldNotCreateOutputFile(mappedFile, "Unable to close the memory-mapped file for the variant data", e);
+            } finally {
+                mappedFile.delete();
+                mappedFile = null;
+                mappedRandomAccessFile = null;
+                mappedChannel = null;
+                mappedBytes = 0;
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------------------
+    //
+    // accessing data
+    //
+    // ---------------------------------------------------------------------------------------------------------
+
+    private int doubleOffset( final int row, final int column ) {
+        return 8 * ((column << CHUNK_SHIFT) + (row & CHUNK_MASK));
+    }
+
+    private int intOffset( final int row, final int column ) {
+        return 8 * (numDoubleColumns << CHUNK_SHIFT) + 4 * ((column << CHUNK_SHIFT) + (row & CHUNK_MASK));
+    }
+
+    private double getDouble( final int row, final int column ) {
+        return chunks.get(row >>> CHUNK_SHIFT).getDouble( doubleOffset(row, column) );
+    }
+
+    private void setDouble( final int row, final int column, final double value ) {
+        chunks.get(row >>> CHUNK_SHIFT).putDouble( doubleOffset(row, column), value );
+    }
+
+    private int getInt( final int row, final int column ) {
+        return chunks.get(row >>> CHUNK_SHIFT).getInt( intOffset(row, column) );
+    }
+
+    private void setInt( final int row, final int column, final int value ) {
+        chunks.get(row >>> CHUNK_SHIFT).putInt( intOffset(row, column), value );
+    }
+
+    public double getAnnotation( final int row, final int annotation ) { return getDouble( row, annotation ); }
+    public void setAnnotation( final int row, final int annotation, final double value ) { setDouble( row, annotation, value ); }
+    public boolean isNull( final int row, final int annotation ) { return isNull[annotation].get(row); }
+
+    public double getLod( final int row ) { return getDouble( row, numAnnotations + LOD ); }
+    public void setLod( final int row, final double lod ) { setDouble( row, numAnnotations + LOD, lod ); }
+    public double getOriginalQual( final int row ) { return getDouble( row, numAnnotations + ORIGINAL_QUAL ); }
+    private void setOriginalQual( final int row, final double qual ) { setDouble( row, numAnnotations + ORIGINAL_QUAL, qual ); }
+    public double getPrior( final int row ) { return getDouble( row, numAnnotations + PRIOR ); }
+    private void setPrior( final int row, final double prior ) { setDouble( row, numAnnotations + PRIOR, prior ); }
+
+    public String getContig( final int row ) { return contigs.get( getInt(row, CONTIG) ); }
+    public int getStart( final int row ) { return getInt( row, START ); }
+    public int getStop( final int row ) { return getInt( row, STOP ); }
+    public int getWorstAnnotation( final int row ) { return getInt( row, WORST_ANNOTATION ); }
+
+    public boolean isKnown( final int row ) { return isKnown.get(row); }
+    public boolean atTruthSite( final int row ) { return atTruthSite.get(row); }
+    public boolean atTrainingSite( final int row ) { return atTrainingSite.get(row); }
+    public boolean atAntiTrainingSite( final int row ) { return atAntiTrainingSite.get(row); }
+    public void setAtAntiTrainingSite( final int row ) { atAntiTrainingSite.set(row); }
+    public boolean failingSTDThreshold( final int row ) { return failingSTDThreshold.get(row); }
+    public void setFailingSTDThreshold( final int row, final boolean failing ) { failingSTDThreshold.set(row, failing); }
+
+    /**
+     * Fills in the datum with all of the fields of the variant
+     *
+     * @param row    the variant
+     * @param datum  the datum to fill in; its annotation arrays are reused if they have the right size
+     * @return the datum
+     */
+    public VariantDatum getDatum( final int row, final VariantDatum datum ) {
+        if( datum.annotations == null || datum.annotations.length != numAnnotations ) {
+            datum.annotations = new double[numAnnotations];
+            datum.isNull = new boolean[numAnnotations];
+        }
+        for( int iii = 0; iii < numAnnotations; iii++ ) {
+            datum.annotations[iii] = getAnnotation( row, iii );
+            datum.isNull[iii] = isNull( row, iii );
+        }
+        getScalarFields( row, datum );
+        return datum;
+    }
+
+    /**
+     * Fills in all of the fields of the datum except for the annotations
+     *
+     * @param row    the variant
+     * @param datum  the datum to fill in
+     * @return the datum
+     */
+    public VariantDatum getScalarFields( final int row, final VariantDatum datum ) {
+        datum.lod = getLod( row );
+        datum.originalQual = getOriginalQual( row );
+        datum.prior = getPrior( row );
+        datum.contig = getContig( row );
+        datum.start = getStart( row );
+        datum.stop = getStop( row );
+        datum.consensusCount = getInt( row, CONSENSUS_COUNT );
+        datum.worstAnnotation = getWorstAnnotation( row );
+        datum.isKnown = isKnown( row );
+        datum.atTruthSite = atTruthSite( row );
+        datum.atTrainingSite = atTrainingSite( row );
+        datum.atAntiTrainingSite = atAntiTrainingSite( row );
+        datum.isTransition = isTransition.get( row );
+        datum.isSNP = isSNP.get( row );
+        datum.failingSTDThreshold = failingSTDThreshold( row );
+        return datum;
+    }
+
+    /**
+     * Stores the fields computed while evaluating the datum: its annotations (missing values are redrawn during
+     * evaluation), lod and worst performing annotation
+     *
+     * @param row    the variant
+     * @param datum  the evaluated datum
+     */
+    public void setDatum( final int row, final VariantDatum datum ) {
+        for( int iii = 0; iii < numAnnotations; iii++ ) {
+            setAnnotation( row, iii, datum.annotations[iii] );
+        }
+        setLod( row, datum.lod );
+        setInt( row, WORST_ANNOTATION, datum.worstAnnotation );
+    }
+}
@@ -35,9 +35,10 @@ import org.broadinstitute.sting.utils.exceptions.UserException;
 import org.broadinstitute.sting.utils.variantcontext.VariantContext;
 
 import java.io.PrintStream;
+import java.util.AbstractList;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created by IntelliJ IDEA.
@@ -46,7 +47,11 @@ import java.util.List;
  */
 
 public class VariantDataManager {
-    private ExpandingArrayList<VariantDatum> data;
+    private VariantDataColumns data;
+    private int[] order; // the rows of the data, in their current order
+    private int[] worstVariants = null; // the rows selected by the last call to selectWorstVariants()
+    private final AtomicLong heapBudget; // shared by the columns reduced by every thread
+    private final List<VariantDatum> dataView;
     private final double[] meanVector;
     private final double[] varianceVector; // this is really the standard deviation
     public final List<String> annotationKeys;
@@ -61,14 +66,69 @@ public class VariantDataManager {
         meanVector = new double[this.annotationKeys.size()];
         varianceVector = new double[this.annotationKeys.size()];
         trainingSets = new ArrayList<TrainingSet>();
+        heapBudget = new AtomicLong( VRAC.MAX_HEAP_FOR_DATA * 1024L * 1024L );
+        dataView = new AbstractList<VariantDatum>() {
+            public VariantDatum get( final int index ) {
+                return data.getScalarFields( order[index], new VariantDatum() );
+            }
+
+            public int size() {
+                return order.length;
+            }
+        };
+    }
+
+    /**
+     * @return a new, empty store for the data of this manager
+     */
+    public VariantDataColumns createDataColumns() {
+        return new VariantDataColumns( annotationKeys.size(), heapBudget );
     }
 
-    public void setData( final ExpandingArrayList<VariantDatum> data ) {
+    public void setData( final VariantDataColumns data ) {
         this.data = data;
+        order = new int[data.size()];
+        for( int iii = 0; iii < order.length; iii++ ) {
+            order[iii] = iii;
+        }
+        if( data.isMapped() ) {
+            logger.info( "Keeping some of the " + data.size() + " variants in a memory-mapped file" );
+        }
     }
 
-    public ExpandingArrayList<VariantDatum> getData() {
-        return data;
+    public int size() {
+        return order.length;
+    }
+
+    /**
+     * Fills in the datum with the index-th variant
+     *
+     * @param index  the position of the variant in the current order of the data
+     * @param datum  the datum to fill in
+     * @return the datum
+     */
+    public VariantDatum getDatum( final int index, final VariantDatum datum ) {
+        return data.getDatum( order[index], datum );
+    }
+
+    /**
+     * Stores the annotations, lod and worst performing annotation of the index-th variant
+     *
+     * @param index  the position of the variant in the current order of the data
+     * @param datum  the evaluated datum
+     */
+    public void setDatum( final int index, final VariantDatum datum ) {
+        data.setDatum( order[index], datum );
+    }
+
+    /**
+     * Returns a read-only view of the data in their current order.  The VariantDatums are created on the fly and
+     * don't have their annotations filled in.  The view follows any later changes to the order of the data.
+     *
+     * @return the data
+     */
+    public List<VariantDatum> getData() {
+        return dataView;
     }
 
     public void normalizeData() {
@@ -84,9 +144,9 @@ public class VariantDataManager {
             foundZeroVarianceAnnotation = foundZeroVarianceAnnotation || (theSTD < 1E-6);
             meanVector[iii] = theMean;
             varianceVector[iii] = theSTD;
-            for( final VariantDatum datum : data ) {
+            for( final int row : order ) {
                 // Transform each data point via: (x - mean) / standard deviation
-                datum.annotations[iii] = ( datum.isNull[iii] ? GenomeAnalysisEngine.getRandomGenerator().nextGaussian() : ( datum.annotations[iii] - theMean ) / theSTD );
+                data.setAnnotation( row, iii, ( data.isNull(row, iii) ? GenomeAnalysisEngine.getRandomGenerator().nextGaussian() : ( data.getAnnotation(row, iii) - theMean ) / theSTD ) );
             }
         }
         if( foundZeroVarianceAnnotation ) {
@@ -94,12 +154,12 @@ public class VariantDataManager {
         }
 
         // trim data by standard deviation threshold and mark failing data for exclusion later
-        for( final VariantDatum datum : data ) {
+        for( final int row : order ) {
             boolean remove = false;
-            for( final double val : datum.annotations ) {
-                remove = remove || (Math.abs(val) > VRAC.STD_THRESHOLD);
+            for( int iii = 0; iii < meanVector.length; iii++ ) {
+                remove = remove || (Math.abs(data.getAnnotation(row, iii)) > VRAC.STD_THRESHOLD);
             }
-            datum.failingSTDThreshold = remove;
+            data.setFailingSTDThreshold( row, remove );
         }
     }
 
@@ -130,9 +190,9 @@ public class VariantDataManager {
 
     public ExpandingArrayList<VariantDatum> getTrainingData() {
         final ExpandingArrayList<VariantDatum> trainingData = new ExpandingArrayList<VariantDatum>();
-        for( final VariantDatum datum : data ) {
-            if( datum.atTrainingSite && !datum.failingSTDThreshold && datum.originalQual > VRAC.QUAL_THRESHOLD ) {
-                trainingData.add( datum );
+        for( final int row : order ) {
+            if( data.atTrainingSite(row) && !data.failingSTDThreshold(row) && data.getOriginalQual(row) > VRAC.QUAL_THRESHOLD ) {
+                trainingData.add( data.getDatum(row, new VariantDatum()) );
             }
         }
         logger.info( "Training with " + trainingData.size() + " variants after standard deviation thresholding." );
@@ -143,54 +203,100 @@ public class VariantDataManager {
     }
 
     public ExpandingArrayList<VariantDatum> selectWorstVariants( double bottomPercentage, final int minimumNumber ) {
-        // The return value is the list of training variants
-        final ExpandingArrayList<VariantDatum> trainingData = new ExpandingArrayList<VariantDatum>();
+        // The rows of the training variants
+        final List<Integer> trainingRows = new ArrayList<Integer>();
 
         // First add to the training list all sites overlapping any bad sites training tracks
-        for( final VariantDatum datum : data ) {
-            if( datum.atAntiTrainingSite && !datum.failingSTDThreshold && !Double.isInfinite(datum.lod) ) {
-                trainingData.add( datum );
+        for( final int row : order ) {
+            if( data.atAntiTrainingSite(row) && !data.failingSTDThreshold(row) && !Double.isInfinite(data.getLod(row)) ) {
+                trainingRows.add( row );
             }
         }
-        final int numBadSitesAdded = trainingData.size();
+        final int numBadSitesAdded = trainingRows.size();
         logger.info( "Found " + numBadSitesAdded + " variants overlapping bad sites training tracks." );
 
         // Next sort the variants by the LOD coming from the positive model and add to the list the bottom X percent of variants
-        Collections.sort( data );
-        final int numToAdd = Math.max( minimumNumber - trainingData.size(), Math.round((float)bottomPercentage * data.size()) );
-        if( numToAdd > data.size() ) {
+        sortDataByLod();
+        final int numToAdd = Math.max( minimumNumber - trainingRows.size(), Math.round((float)bottomPercentage * order.length) );
+        if( numToAdd > order.length ) {
             throw new UserException.BadInput( "Error during negative model training. Minimum number of variants to use in training is larger than the whole call set. One can attempt to lower the --minNumBadVariants arugment but this is unsafe." );
-        } else if( numToAdd == minimumNumber - trainingData.size() ) {
+        } else if( numToAdd == minimumNumber - trainingRows.size() ) {
             logger.warn( "WARNING: Training with very few variant sites! Please check the model reporting PDF to ensure the quality of the model is reliable." );
-            bottomPercentage = ((float) numToAdd) / ((float) data.size());
+            bottomPercentage = ((float) numToAdd) / ((float) order.length);
         }
         int index = 0, numAdded = 0;
-        while( numAdded < numToAdd && index < data.size() ) {
-            final VariantDatum datum = data.get(index++);
-            if( datum != null && !datum.atAntiTrainingSite && !datum.failingSTDThreshold && !Double.isInfinite(datum.lod) ) {
-                datum.atAntiTrainingSite = true;
-                trainingData.add( datum );
+        while( numAdded < numToAdd && index < order.length ) {
+            final int row = order[index++];
+            if( !data.atAntiTrainingSite(row) && !data.failingSTDThreshold(row) && !Double.isInfinite(data.getLod(row)) ) {
+                data.setAtAntiTrainingSite( row );
+                trainingRows.add( row );
                 numAdded++;
             }
         }
-        logger.info( "Additionally training with worst " + String.format("%.3f", (float) bottomPercentage * 100.0f) + "% of passing data --> " + (trainingData.size() - numBadSitesAdded) + " variants with LOD <= " + String.format("%.4f", data.get(index).lod) + "." );
+        logger.info( "Additionally training with worst " + String.format("%.3f", (float) bottomPercentage * 100.0f) + "% of passing data --> " + (trainingRows.size() - numBadSitesAdded) + " variants with LOD <= " + String.format("%.4f", data.getLod(order[index])) + "." );
+
+        worstVariants = new int[trainingRows.size()];
+        for( int iii = 0; iii < worstVariants.length; iii++ ) {
+            worstVariants[iii] = trainingRows.get(iii);
+        }
+        return getWorstVariants();
+    }
+
+    /**
+     * @return the variants selected by the last call to selectWorstVariants(), with their current annotations
+     */
+    public ExpandingArrayList<VariantDatum> getWorstVariants() {
+        final ExpandingArrayList<VariantDatum> trainingData = new ExpandingArrayList<VariantDatum>();
+        for( final int row : worstVariants ) {
+            trainingData.add( data.getDatum(row, new VariantDatum()) );
+        }
         return trainingData;
     }
 
+    /**
+     * Stable sort of the data by increasing lod, equivalent to Collections.sort() on a list of VariantDatums
+     */
+    public void sortDataByLod() {
+        final int[] buffer = new int[order.length];
+        mergeSortByLod( order, buffer, 0, order.length );
+    }
+
+    private void mergeSortByLod( final int[] rows, final int[] buffer, final int start, final int stop ) {
+        if( stop - start < 2 ) {
+            return;
+        }
+        final int middle = (start + stop) >>> 1;
+        mergeSortByLod( rows, buffer, start, middle );
+        mergeSortByLod( rows, buffer, middle, stop );
+        if( Double.compare(data.getLod(rows[middle - 1]), data.getLod(rows[middle])) <= 0 ) {
+            return; // already in order
+        }
+
+        System.arraycopy( rows, start, buffer, start, stop - start );
+        int left = start, right = middle;
+        for( int iii = start; iii < stop; iii++ ) {
+            if( right >= stop || (left < middle && Double.compare(data.getLod(buffer[left]), data.getLod(buffer[right])) <= 0) ) {
+                rows[iii] = buffer[left++];
+            } else {
+                rows[iii] = buffer[right++];
+            }
+        }
+    }
+
     public ExpandingArrayList<VariantDatum> getRandomDataForPlotting( int numToAdd ) {
-        numToAdd = Math.min(numToAdd, data.size());
+        numToAdd = Math.min(numToAdd, order.length);
         final ExpandingArrayList<VariantDatum> returnData = new ExpandingArrayList<VariantDatum>();
         for( int iii = 0; iii < numToAdd; iii++) {
-            final VariantDatum datum = data.get(GenomeAnalysisEngine.getRandomGenerator().nextInt(data.size()));
-            if( !datum.failingSTDThreshold ) {
-                returnData.add(datum);
+            final int row = order[GenomeAnalysisEngine.getRandomGenerator().nextInt(order.length)];
+            if( !data.failingSTDThreshold(row) ) {
+                returnData.add(data.getDatum(row, new VariantDatum()));
             }
         }
 
         // Add an extra 5% of points from bad training set, since that set is small but interesting
         for( int iii = 0; iii < Math.floor(0.05*numToAdd); iii++) {
-            final VariantDatum datum = data.get(GenomeAnalysisEngine.getRandomGenerator().nextInt(data.size()));
-            if( datum.atAntiTrainingSite && !datum.failingSTDThreshold ) { returnData.add(datum); }
+            final int row = order[GenomeAnalysisEngine.getRandomGenerator().nextInt(order.length)];
+            if( data.atAntiTrainingSite(row) && !data.failingSTDThreshold(row) ) { returnData.add(data.getDatum(row, new VariantDatum())); }
             else { iii--; }
         }
 
@@ -200,8 +306,8 @@ public class VariantDataManager {
     private double mean( final int index ) {
         double sum = 0.0;
         int numNonNull = 0;
-        for( final VariantDatum datum : data ) {
-            if( datum.atTrainingSite && !datum.isNull[index] ) { sum += datum.annotations[index]; numNonNull++; }
+        for( final int row : order ) {
+            if( data.atTrainingSite(row) && !data.isNull(row, index) ) { sum += data.getAnnotation(row, index); numNonNull++; }
         }
         return sum / ((double) numNonNull);
     }
@@ -209,8 +315,12 @@ public class VariantDataManager {
     private double standardDeviation( final double mean, final int index ) {
         double sum = 0.0;
         int numNonNull = 0;
-        for( final VariantDatum datum : data ) {
-            if( datum.atTrainingSite && !datum.isNull[index] ) { sum += ((datum.annotations[index] - mean)*(datum.annotations[index] - mean)); numNonNull++; }
+        for( final int row : order ) {
+            if( data.atTrainingSite(row) && !data.isNull(row, index) ) {
+                final double value = data.getAnnotation(row, index);
+                sum += ((value - mean)*(value - mean));
+                numNonNull++;
+            }
         }
         return Math.sqrt( sum / ((double) numNonNull) );
     }
@@ -286,10 +396,11 @@ public class VariantDataManager {
     }
 
     public void writeOutRecalibrationTable( final PrintStream RECAL_FILE ) {
-        for( final VariantDatum datum : data ) {
+        for( final int row : order ) {
+            final int worstAnnotation = data.getWorstAnnotation(row);
             RECAL_FILE.println(String.format("%s,%d,%d,%.4f,%s",
-                    datum.contig, datum.start, datum.stop, datum.lod,
-                    (datum.worstAnnotation != -1 ? annotationKeys.get(datum.worstAnnotation) : "NULL")));
+                    data.getContig(row), data.getStart(row), data.getStop(row), data.getLod(row),
+                    (worstAnnotation != -1 ? annotationKeys.get(worstAnnotation) : "NULL")));
         }
     }
 }
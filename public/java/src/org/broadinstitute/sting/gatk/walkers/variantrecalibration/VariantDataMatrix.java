@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2011 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.broadinstitute.sting.gatk.walkers.variantrecalibration;
+
+import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * The annotations of the variants used to train a Gaussian mixture model, packed into a single flat matrix
+ * (one row of numAnnotations values per variant) and split into contiguous partitions that can be processed concurrently.
+ *
+ * Results computed per partition are always combined in partition order, so for a given number of threads the
+ * model is deterministic; with a single partition the computation is done in exactly the order of the data.
+ */
+public class VariantDataMatrix {
+    public final double[] annotations;
+    public final int numData;
+    public final int numAnnotations;
+
+    private final int[] partitionStarts;
+    private final ExecutorService executor;
+
+    /**
+     * A calculation over the rows [start, stop) of the matrix
+     */
+    public interface PartitionFunction<T> {
+        public T apply( final int partition, final int start, final int stop );
+    }
+
+    public VariantDataMatrix( final List<VariantDatum> data, final int numThreads ) {
+        numData = data.size();
+        numAnnotations = data.get(0).annotations.length;
+        annotations = new double[numData * numAnnotations];
+        int offset = 0;
+        for( final VariantDatum datum : data ) {
+            System.arraycopy(datum.annotations, 0, annotations, offset, numAnnotations);
+            offset += numAnnotations;
+        }
+
+        final int numPartitions = Math.max(1, Math.min(numThreads, numData));
+        partitionStarts = new int[numPartitions + 1];
+        for( int iii = 0; iii <= numPartitions; iii++ ) {
+            partitionStarts[iii] = (int)(((long) numData * iii) / numPartitions);
+        }
+        executor = ( numPartitions > 1 ? Executors.newFixedThreadPool(numPartitions) : null );
+    }
+
+    public int getNumPartitions() {
+        return partitionStarts.length - 1;
+    }
+
+    /**
+     * Applies the function to each of the partitions, concurrently if there is more than one
+     *
+     * @param function the calculation to run
+     * @return the results, in partition order
+     */
+    public <T> List<T> mapPartitions( final PartitionFunction<T> function ) {
+        final int numPartitions = getNumPartitions();
+        final List<T> results = new ArrayList<T>(numPartitions);
+        if( executor == null ) {
+            results.add( function.apply(0, 0, numData) );
+            return results;
+        }
+
+        final List<Future<T>> futures = new ArrayList<Future<T>>(numPartitions);
+        for( int iii = 0; iii < numPartitions; iii++ ) {
+            final int partition = iii;
+            futures.add( executor.submit(new Callable<T>() {
+                public T call() {
+                    return function.apply(partition, partitionStarts[partition], partitionStarts[partition + 1]);
+                }
+            }) );
+        }
+
+        try {
+            for( final Future<T> future : futures ) {
+                results.add( future.get() );
+            }
+        } catch( InterruptedException e ) {
+            throw new ReviewedStingException("Interrupted while waiting for the Gaussian mixture model calculation", e);
+        } catch( ExecutionException e ) {
+            if( e.getCause() instanceof RuntimeException ) { throw (RuntimeException) e.getCause(); }
+            throw new ReviewedStingException("Failed to run the Gaussian mixture model calculation", e.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * Stops the worker threads; the matrix can't be used for calculations afterwards
+     */
+    public void close() {
+        if( executor != null ) {
+            executor.shutdown();
+        }
+    }
+}
@@ -105,7 +105,7 @@ import java.util.*;
  */
 
 @PartitionBy(PartitionType.NONE)
-public class VariantRecalibrator extends RodWalker<ExpandingArrayList<VariantDatum>, ExpandingArrayList<VariantDatum>> implements TreeReducible<ExpandingArrayList<VariantDatum>> {
+public class VariantRecalibrator extends RodWalker<ExpandingArrayList<VariantDatum>, VariantDataColumns> implements TreeReducible<VariantDataColumns> {
 
     public static final String VQS_LOD_KEY = "VQSLOD"; // Log odds ratio of being a true variant versus being false under the trained gaussian mixture model
     public static final String CULPRIT_KEY = "culprit"; // The annotation which was the worst performing in the Gaussian mixture model, likely the reason why the variant was filtered out
@@ -282,17 +282,18 @@ public class VariantRecalibrator extends RodWalker<ExpandingArrayList<VariantDat
     //
     //---------------------------------------------------------------------------------------------------------------
 
-    public ExpandingArrayList<VariantDatum> reduceInit() {
-        return new ExpandingArrayList<VariantDatum>();
+    public VariantDataColumns reduceInit() {
+        return dataManager.createDataColumns();
     }
 
-    public ExpandingArrayList<VariantDatum> reduce( final ExpandingArrayList<VariantDatum> mapValue, final ExpandingArrayList<VariantDatum> reduceSum ) {
+    public VariantDataColumns reduce( final ExpandingArrayList<VariantDatum> mapValue, final VariantDataColumns reduceSum ) {
         reduceSum.addAll( mapValue );
         return reduceSum;
     }
 
-    public ExpandingArrayList<VariantDatum> treeReduce( final ExpandingArrayList<VariantDatum> lhs, final ExpandingArrayList<VariantDatum> rhs ) {
+    public VariantDataColumns treeReduce( final VariantDataColumns lhs, final VariantDataColumns rhs ) {
         rhs.addAll( lhs );
+        lhs.close();
         return rhs;
     }
 
@@ -302,38 +303,56 @@ public class VariantRecalibrator extends RodWalker<ExpandingArrayList<VariantDat
     //
     //---------------------------------------------------------------------------------------------------------------
 
-    public void onTraversalDone( final ExpandingArrayList<VariantDatum> reduceSum ) {
+    public void onTraversalDone( final VariantDataColumns reduceSum ) {
+        try {
+            recalibrate( reduceSum );
+        } finally {
+            reduceSum.close();
+        }
+
+        // Execute the RScript command to plot the table of truth values
+        RScriptExecutor executor = new RScriptExecutor();
+        executor.addScript(new Resource(PLOT_TRANCHES_RSCRIPT, VariantRecalibrator.class));
+        executor.addArgs(TRANCHES_FILE.getAbsoluteFile(), TARGET_TITV);
+        // Print out the command line to make it clear to the user what is being executed and how one might modify it
+        logger.info("Executing: " + executor.getApproximateCommandLine());
+        executor.exec();
+    }
+
+    private void recalibrate( final VariantDataColumns reduceSum ) {
         dataManager.setData( reduceSum );
         dataManager.normalizeData(); // Each data point is now (x - mean) / standard deviation
 
         // Generate the positive model using the training data and evaluate each variant
         final GaussianMixtureModel goodModel = engine.generateModel( dataManager.getTrainingData() );
-        engine.evaluateData( dataManager.getData(), goodModel, false );
+        engine.evaluateData( dataManager, goodModel, false );
 
         // Generate the negative model using the worst performing data and evaluate each variant contrastively
         final ExpandingArrayList<VariantDatum> negativeTrainingData = dataManager.selectWorstVariants( VRAC.PERCENT_BAD_VARIANTS, VRAC.MIN_NUM_BAD_VARIANTS );
         GaussianMixtureModel badModel = engine.generateModel( negativeTrainingData );
-        engine.evaluateData( dataManager.getData(), badModel, true );
+        engine.evaluateData( dataManager, badModel, true );
 
         // Detect if the negative model failed to converge because of too few points and/or too many Gaussians and try again
         while( badModel.failedToConverge && VRAC.MAX_GAUSSIANS > 4 ) {
             logger.info("Negative model failed to converge. Retrying...");
             VRAC.MAX_GAUSSIANS--;
-            badModel = engine.generateModel( negativeTrainingData );
-            engine.evaluateData( dataManager.getData(), goodModel, false );
-            engine.evaluateData( dataManager.getData(), badModel, true );
+            badModel = engine.generateModel( dataManager.getWorstVariants() );
+            engine.evaluateData( dataManager, goodModel, false );
+            engine.evaluateData( dataManager, badModel, true );
         }
 
         if( badModel.failedToConverge || goodModel.failedToConverge ) {
             throw new UserException("NaN LOD value assigned. Clustering with this few variants and these annotations is unsafe. Please consider raising the number of variants used to train the negative model (via --percentBadVariants 0.05, for example) or lowering the maximum number of Gaussians to use in the model (via --maxGaussians 4, for example)");
         }
 
-        engine.calculateWorstPerformingAnnotation( dataManager.getData(), goodModel, badModel );
+        engine.calculateWorstPerformingAnnotation( dataManager, goodModel, badModel );
 
         // Find the VQSLOD cutoff values which correspond to the various tranches of calls requested by the user
-        final int nCallsAtTruth = TrancheManager.countCallsAtTruth( dataManager.getData(), Double.NEGATIVE_INFINITY );
+        dataManager.sortDataByLod();
+        final List<VariantDatum> data = dataManager.getData();
+        final int nCallsAtTruth = TrancheManager.countCallsAtTruth( data, Double.NEGATIVE_INFINITY );
         final TrancheManager.SelectionMetric metric = new TrancheManager.TruthSensitivityMetric( nCallsAtTruth );
-        final List<Tranche> tranches = TrancheManager.findTranches( dataManager.getData(), TS_TRANCHES, metric );
+        final List<Tranche> tranches = TrancheManager.findTranches( data, TS_TRANCHES, metric );
         tranchesStream.print(Tranche.tranchesString( tranches ));
 
         // Find the filtering lodCutoff for display on the model PDFs. Red variants are those which were below the cutoff and filtered out of the final callset.
@@ -350,14 +369,6 @@ public class VariantRecalibrator extends RodWalker<ExpandingArrayList<VariantDat
             logger.info( "Writing out visualization Rscript file...");
             createVisualizationScript( dataManager.getRandomDataForPlotting( 6000 ), goodModel, badModel, lodCutoff );
         }
-
-        // Execute the RScript command to plot the table of truth values
-        RScriptExecutor executor = new RScriptExecutor();
-        executor.addScript(new Resource(PLOT_TRANCHES_RSCRIPT, VariantRecalibrator.class));
-        executor.addArgs(TRANCHES_FILE.getAbsoluteFile(), TARGET_TITV);
-        // Print out the command line to make it clear to the user what is being executed and how one might modify it
-        logger.info("Executing: " + executor.getApproximateCommandLine());
-        executor.exec();
     }
 
     private void createVisualizationScript( final ExpandingArrayList<VariantDatum> randomData, final GaussianMixtureModel goodModel, final GaussianMixtureModel badModel, final double lodCutoff ) {
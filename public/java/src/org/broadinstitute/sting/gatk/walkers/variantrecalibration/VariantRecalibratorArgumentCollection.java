@@ -63,4 +63,8 @@ public class VariantRecalibratorArgumentCollection {
     public double PERCENT_BAD_VARIANTS = 0.03;
     @Argument(fullName="minNumBadVariants", shortName="minNumBad", doc="The minimum amount of worst scoring variants to use when building the Gaussian mixture model of bad variants. Will override -percentBad argument if necessary.", required=false)
     public int MIN_NUM_BAD_VARIANTS = 2500;
+    @Argument(fullName="numThreadsForEM", shortName="emThreads", doc="The number of threads to use for the expectation and maximization steps of the variational Bayes algorithm. The model is deterministic for a given number of threads.", required=false)
+    public int NUM_EM_THREADS = 1;
+    @Argument(fullName="maxHeapForData", shortName="maxHeapForData", doc="The amount of memory, in megabytes, used to keep the annotations of the input variants on the heap. The rest are kept in a memory-mapped temporary file.", required=false)
+    public int MAX_HEAP_FOR_DATA = 2048;
 }
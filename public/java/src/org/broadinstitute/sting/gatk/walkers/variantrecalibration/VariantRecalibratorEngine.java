@@ -65,45 +65,67 @@ public class VariantRecalibratorEngine {
     }
 
     public void evaluateData( final List<VariantDatum> data, final GaussianMixtureModel model, final boolean evaluateContrastively ) {
-        if( !model.isModelReadyForEvaluation ) {
-            try {
-                model.precomputeDenominatorForEvaluation();
-            } catch( Exception e ) {
-                model.failedToConverge = true;
-                return;
-            }
+        if( !prepareModelForEvaluation( model ) ) {
+            return;
         }
-        
+
         logger.info("Evaluating full set of " + data.size() + " variants...");
         for( final VariantDatum datum : data ) {
-            final double thisLod = evaluateDatum( datum, model );
-            if( Double.isNaN(thisLod) ) {
+            if( !evaluateDatum( datum, model, evaluateContrastively ) ) {
                 model.failedToConverge = true;
                 return;
             }
+        }
+    }
 
-            datum.lod = ( evaluateContrastively ?
-                            ( Double.isInfinite(datum.lod) ? // positive model said negative infinity
-                                    ( MIN_ACCEPTABLE_LOD_SCORE + GenomeAnalysisEngine.getRandomGenerator().nextDouble() * MIN_ACCEPTABLE_LOD_SCORE ) // Negative infinity lod values are possible when covariates are extremely far away from their tight Gaussians
-                                    : datum.prior + datum.lod - thisLod) // contrastive evaluation: (prior + positive model - negative model)
-                            : thisLod ); // positive model only so set the lod and return
+    /**
+     * Evaluates all of the variants of the data manager, one at a time, and stores their new lods
+     */
+    public void evaluateData( final VariantDataManager dataManager, final GaussianMixtureModel model, final boolean evaluateContrastively ) {
+        if( !prepareModelForEvaluation( model ) ) {
+            return;
+        }
+
+        logger.info("Evaluating full set of " + dataManager.size() + " variants...");
+        final VariantDatum datum = new VariantDatum();
+        for( int iii = 0; iii < dataManager.size(); iii++ ) {
+            dataManager.getDatum( iii, datum );
+            final boolean evaluated = evaluateDatum( datum, model, evaluateContrastively );
+            dataManager.setDatum( iii, datum ); // evaluation redraws the missing annotations
+            if( !evaluated ) {
+                model.failedToConverge = true;
+                return;
+            }
         }
     }
 
     public void calculateWorstPerformingAnnotation( final List<VariantDatum> data, final GaussianMixtureModel goodModel, final GaussianMixtureModel badModel ) {
         for( final VariantDatum datum : data ) {
-            int worstAnnotation = -1;
-            double minProb = Double.MAX_VALUE;
-            for( int iii = 0; iii < datum.annotations.length; iii++ ) {
-                final Double goodProbLog10 = goodModel.evaluateDatumInOneDimension(datum, iii);
-                final Double badProbLog10 = badModel.evaluateDatumInOneDimension(datum, iii);
-                if( goodProbLog10 != null && badProbLog10 != null ) {
-                    final double prob = goodProbLog10 - badProbLog10;
-                    if(prob < minProb) { minProb = prob; worstAnnotation = iii; }
-                }
+            calculateWorstPerformingAnnotation( datum, goodModel, badModel );
+        }
+    }
+
+    public void calculateWorstPerformingAnnotation( final VariantDataManager dataManager, final GaussianMixtureModel goodModel, final GaussianMixtureModel badModel ) {
+        final VariantDatum datum = new VariantDatum();
+        for( int iii = 0; iii < dataManager.size(); iii++ ) {
+            dataManager.getDatum( iii, datum );
+            calculateWorstPerformingAnnotation( datum, goodModel, badModel );
+            dataManager.setDatum( iii, datum );
+        }
+    }
+
+    private void calculateWorstPerformingAnnotation( final VariantDatum datum, final GaussianMixtureModel goodModel, final GaussianMixtureModel badModel ) {
+        int worstAnnotation = -1;
+        double minProb = Double.MAX_VALUE;
+        for( int iii = 0; iii < datum.annotations.length; iii++ ) {
+            final Double goodProbLog10 = goodModel.evaluateDatumInOneDimension(datum, iii);
+            final Double badProbLog10 = badModel.evaluateDatumInOneDimension(datum, iii);
+            if( goodProbLog10 != null && badProbLog10 != null ) {
+                final double prob = goodProbLog10 - badProbLog10;
+                if(prob < minProb) { minProb = prob; worstAnnotation = iii; }
             }
-            datum.worstAnnotation = worstAnnotation;
         }
+        datum.worstAnnotation = worstAnnotation;
     }
 
 
@@ -115,6 +137,16 @@ public class VariantRecalibratorEngine {
 
         model.initializeRandomModel( data, VRAC.NUM_KMEANS_ITERATIONS );
 
+        final VariantDataMatrix dataMatrix = new VariantDataMatrix( data, VRAC.NUM_EM_THREADS );
+        try {
+            variationalBayesExpectationMaximization( model, dataMatrix );
+        } finally {
+            dataMatrix.close();
+        }
+    }
+
+    private void variationalBayesExpectationMaximization( final GaussianMixtureModel model, final VariantDataMatrix data ) {
+
         // The VBEM loop
         model.normalizePMixtureLog10();
         model.expectationStep( data );
@@ -142,7 +174,34 @@ public class VariantRecalibratorEngine {
     // Private Methods used for evaluating data given a GaussianMixtureModel
     /////////////////////////////
 
-    private double evaluateDatum( final VariantDatum datum, final GaussianMixtureModel model ) {
-        return model.evaluateDatum( datum );
+    private boolean prepareModelForEvaluation( final GaussianMixtureModel model ) {
+        if( !model.isModelReadyForEvaluation ) {
+            try {
+                model.precomputeDenominatorForEvaluation();
+            } catch( Exception e ) {
+                model.failedToConverge = true;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sets the lod of the datum
+     *
+     * @return false if the model gave a NaN lod, in which case the lod of the datum is left unchanged
+     */
+    private boolean evaluateDatum( final VariantDatum datum, final GaussianMixtureModel model, final boolean evaluateContrastively ) {
+        final double thisLod = model.evaluateDatum( datum );
+        if( Double.isNaN(thisLod) ) {
+            return false;
+        }
+
+        datum.lod = ( evaluateContrastively ?
+                        ( Double.isInfinite(datum.lod) ? // positive model said negative infinity
+                                ( MIN_ACCEPTABLE_LOD_SCORE + GenomeAnalysisEngine.getRandomGenerator().nextDouble() * MIN_ACCEPTABLE_LOD_SCORE ) // Negative infinity lod values are possible when covariates are extremely far away from their tight Gaussians
+                                : datum.prior + datum.lod - thisLod) // contrastive evaluation: (prior + positive model - negative model)
+                        : thisLod ); // positive model only so set the lod and return
+        return true;
     }
 }
@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2012, The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.broadinstitute.sting.utils;
+
+import org.broadinstitute.sting.utils.collections.Pair;
+
+import java.util.Arrays;
+
+/**
+ * The Mann-Whitney U test for integer observations, such as base qualities, mapping qualities and read offsets.
+ *
+ * Unlike MannWhitneyU, which keeps its observations in a tree and breaks ties between them at random, the
+ * observations are kept in primitive arrays and ranked with a counting sort (or an ordinary sort, should they span
+ * too wide a range of values).  Tied observations count one half towards U, and the p-values are corrected for the
+ * ties, so the test gives the same answer every time it is run on the same data.
+ */
+public class IntegerMannWhitneyU {
+    // widest range of values which is ranked by counting rather than sorting
+    private static final int MAX_COUNTING_RANGE = 1 << 16;
+
+    private int[] set1 = new int[16];
+    private int[] set2 = new int[16];
+    private int sizeSet1 = 0;
+    private int sizeSet2 = 0;
+    private final MannWhitneyU.ExactMode exactMode;
+
+    // worked out from the observations when the test is first run
+    private boolean ranked = false;
+    private long doubledUSet1;
+    private int[] tieSizes;
+    private int nTieGroups;
+
+    public IntegerMannWhitneyU() {
+        this(MannWhitneyU.ExactMode.POINT);
+    }
+
+    public IntegerMannWhitneyU(MannWhitneyU.ExactMode mode) {
+        exactMode = mode;
+    }
+
+    /**
+     * Add an observation
+     * @param n: the observation
+     * @param set: whether the observation comes from set 1 or set 2
+     */
+    public void add(int n, MannWhitneyU.USet set) {
+        if ( set == MannWhitneyU.USet.SET1 ) {
+            if ( sizeSet1 == set1.length )
+                set1 = Arrays.copyOf(set1, 2*sizeSet1);
+            set1[sizeSet1++] = n;
+        } else {
+            if ( sizeSet2 == set2.length )
+                set2 = Arrays.copyOf(set2, 2*sizeSet2);
+            set2[sizeSet2++] = n;
+        }
+        ranked = false;
+    }
+
+    public int size(MannWhitneyU.USet set) {
+        return set == MannWhitneyU.USet.SET1 ? sizeSet1 : sizeSet2;
+    }
+
+    /**
+     * @param set: set 1 or set 2
+     * @return the observations of the set, in the order they were added
+     */
+    public int[] getObservations(MannWhitneyU.USet set) {
+        return set == MannWhitneyU.USet.SET1 ? Arrays.copyOf(set1, sizeSet1) : Arrays.copyOf(set2, sizeSet2);
+    }
+
+    /**
+     * Calculates twice the U-statistic associated with the one-sided hypothesis that "dominator" stochastically
+     * dominates the other set: the number of pairs in which the observation from the other set comes first, with
+     * tied pairs counting one half.  It is doubled to keep it whole.
+     * @param dominator - the set that is hypothesized to be stochastically dominating
+     * @return twice the u-statistic
+     */
+    public long getDoubledU(MannWhitneyU.USet dominator) {
+        rank();
+        return dominator == MannWhitneyU.USet.SET1 ? doubledUSet1 : 2*((long)sizeSet1)*sizeSet2 - doubledUSet1;
+    }
+
+    /**
+     * Runs the one-sided test under the hypothesis that the data in set "lessThanOther" stochastically
+     * dominates the other set
+     * @param lessThanOther - either Set1 or Set2
+     * @return - u-based z-approximation, and p-value associated with the test (p-value is exact for small n,m)
+     */
+    public Pair<Double,Double> runOneSidedTest(MannWhitneyU.USet lessThanOther) {
+        int n = size(lessThanOther);
+        int m = lessThanOther == MannWhitneyU.USet.SET1 ? sizeSet2 : sizeSet1;
+        if ( n == 0 || m == 0 ) {
+            // test is uninformative as one or both sets have no observations
+            return new Pair<Double,Double>(Double.NaN,Double.NaN);
+        }
+        return MannWhitneyU.calculateTiedP(n, m, getDoubledU(lessThanOther), tieSizes, nTieGroups, false, exactMode);
+    }
+
+    /**
+     * Runs the standard two-sided test,
+     * returns the u-based z-approximate and p values.
+     * @return a pair holding the u and p-value.
+     */
+    public Pair<Double,Double> runTwoSidedTest() {
+        if ( sizeSet1 == 0 || sizeSet2 == 0 ) {
+            // test is uninformative as one or both sets have no observations
+            return new Pair<Double,Double>(Double.NaN,Double.NaN);
+        }
+        long u1 = getDoubledU(MannWhitneyU.USet.SET1);
+        long u2 = getDoubledU(MannWhitneyU.USet.SET2);
+        MannWhitneyU.USet set = u1 < u2 ? MannWhitneyU.USet.SET1 : MannWhitneyU.USet.SET2;
+        int n = size(set);
+        int m = set == MannWhitneyU.USet.SET1 ? sizeSet2 : sizeSet1;
+        return MannWhitneyU.calculateTiedP(n, m, Math.min(u1, u2), tieSizes, nTieGroups, true, exactMode);
+    }
+
+    /**
+     * Works out U for set 1, and the sizes of the groups of tied values, by going through the observations of both
+     * sets in increasing order of value
+     */
+    private void rank() {
+        if ( ranked )
+            return;
+
+        doubledUSet1 = 0l;
+        tieSizes = new int[16];
+        nTieGroups = 0;
+
+        if ( sizeSet1 + sizeSet2 > 0 ) {
+            int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+            for ( int i = 0; i < sizeSet1; i++ ) {
+                min = Math.min(min, set1[i]);
+                max = Math.max(max, set1[i]);
+            }
+            for ( int i = 0; i < sizeSet2; i++ ) {
+                min = Math.min(min, set2[i]);
+                max = Math.max(max, set2[i]);
+            }
+
+            if ( ((long)max) - min < MAX_COUNTING_RANGE )
+                rankByCounting(min, max - min + 1);
+            else
+                rankBySorting();
+        }
+
+        ranked = true;
+    }
+
+    private void rankByCounting(int min, int range) {
+        final int[] counts1 = new int[range];
+        final int[] counts2 = new int[range];
+        for ( int i = 0; i < sizeSet1; i++ )
+            counts1[set1[i] - min]++;
+        for ( int i = 0; i < sizeSet2; i++ )
+            counts2[set2[i] - min]++;
+
+        long set2SeenSoFar = 0l;
+        for ( int v = 0; v < range; v++ ) {
+            if ( counts1[v] != 0 || counts2[v] != 0 )
+                set2SeenSoFar = addTieGroup(counts1[v], counts2[v], set2SeenSoFar);
+        }
+    }
+
+    private void rankBySorting() {
+        final int[] sorted1 = Arrays.copyOf(set1, sizeSet1);
+        final int[] sorted2 = Arrays.copyOf(set2, sizeSet2);
+        Arrays.sort(sorted1);
+        Arrays.sort(sorted2);
+
+        long set2SeenSoFar = 0l;
+        int i = 0, j = 0;
+        while ( i < sizeSet1 || j < sizeSet2 ) {
+            final int v = j == sizeSet2 || (i < sizeSet1 && sorted1[i] < sorted2[j]) ? sorted1[i] : sorted2[j];
+            int count1 = 0, count2 = 0;
+            for ( ; i < sizeSet1 && sorted1[i] == v; i++ )
+                count1++;
+            for ( ; j < sizeSet2 && sorted2[j] == v; j++ )
+                count2++;
+            set2SeenSoFar = addTieGroup(count1, count2, set2SeenSoFar);
+        }
+    }
+
+    /**
+     * Counts a group of observations sharing the same value towards U for set 1
+     * @param count1 - the number of set 1 observations with the value
+     * @param count2 - the number of set 2 observations with the value
+     * @param set2SeenSoFar - the number of set 2 observations with lower values
+     * @return the number of set 2 observations with this value or lower
+     */
+    private long addTieGroup(int count1, int count2, long set2SeenSoFar) {
+        doubledUSet1 += count1*(2*set2SeenSoFar + count2);
+        if ( nTieGroups == tieSizes.length )
+            tieSizes = Arrays.copyOf(tieSizes, 2*nTieGroups);
+        tieSizes[nTieGroups++] = count1 + count2;
+        return set2SeenSoFar + count2;
+    }
+}
@@ -24,6 +24,10 @@ public class MannWhitneyU {
     private static NormalDistribution APACHE_NORMAL = new NormalDistributionImpl(0.0,1.0,1e-2);
     private static double LNSQRT2PI = Math.log(Math.sqrt(2.0*Math.PI));
 
+    // largest n and m for which the exact point probabilities of U are kept in a table rather than recursed for
+    private static final int EXACT_TABLE_SIZE = 8;
+    private static final double[][][] EXACT_POINT_PROBABILITIES = makeExactPointProbabilities();
+
     private TreeSet<Pair<Number,USet>> observations;
     private int sizeSet1;
     private int sizeSet2;
@@ -299,32 +303,153 @@ public class MannWhitneyU {
         if ( m > 8 && n > 5 ) { throw new StingException(String.format("Please use the appropriate (normal or sum of uniform) approximation. Values n: %d, m: %d",n,m)); }
         double p = mode == ExactMode.POINT ? cpr(n,m,u) : cumulativeCPR(n,m,u);
         //p *= twoSided ? 2.0 : 1.0;
-        double z;
-        try {
+        double sd = Math.sqrt((1.0+1.0/(1+n+m))*(n*m)*(1.0+n+m)/12); // biased variance empirically better fit to distribution then asymptotic variance
+        double z = exactZ(p, sd, u >= n*m/2, mode);
 
+        return new Pair<Double,Double>(z,(twoSided ? 2.0*p : p));
+    }
+
+    /**
+     * Converts an exact point or cumulative probability of U into a z-value
+     * @param p - the point or cumulative probability
+     * @param sd - the standard deviation of U, used to place a point probability on the normal density
+     * @param aboveMean - whether U is at or above its mean, which gives the sign of z for point probabilities
+     * @param mode - whether p is a point probability or a cumulative probability
+     * @return the z-value
+     */
+    private static double exactZ(double p, double sd, boolean aboveMean, ExactMode mode) {
+        try {
             if ( mode == ExactMode.CUMULATIVE ) {
-                z = APACHE_NORMAL.inverseCumulativeProbability(p);
-            } else {
-                double sd = Math.sqrt((1.0+1.0/(1+n+m))*(n*m)*(1.0+n+m)/12); // biased variance empirically better fit to distribution then asymptotic variance
-                //System.out.printf("SD is %f and Max is %f and prob is %f%n",sd,1.0/Math.sqrt(sd*sd*2.0*Math.PI),p);
-                if ( p > 1.0/Math.sqrt(sd*sd*2.0*Math.PI) ) { // possible for p-value to be outside the range of the normal. Happens at the mean, so z is 0.
-                    z = 0.0;
-                } else {
-                    if ( u >= n*m/2 ) {
-                        z = Math.sqrt(-2.0*(Math.log(sd)+Math.log(p)+LNSQRT2PI));
-                    } else {
-                        z = -Math.sqrt(-2.0*(Math.log(sd)+Math.log(p)+LNSQRT2PI));
-                    }
-                }
+                return APACHE_NORMAL.inverseCumulativeProbability(p);
             }
-
         } catch (MathException me) {
             throw new StingException("A math exception occurred in inverting the probability",me);
         }
 
+        //System.out.printf("SD is %f and Max is %f and prob is %f%n",sd,1.0/Math.sqrt(sd*sd*2.0*Math.PI),p);
+        if ( sd == 0.0 || p > 1.0/Math.sqrt(sd*sd*2.0*Math.PI) ) { // possible for p-value to be outside the range of the normal. Happens at the mean, so z is 0.
+            return 0.0;
+        }
+        double z = Math.sqrt(-2.0*(Math.log(sd)+Math.log(p)+LNSQRT2PI));
+        return aboveMean ? z : -z;
+    }
+
+    /**
+     * Given twice the U statistic of a set whose observations may be tied with those of the other set (ties counting
+     * one half towards U), calculate the p-value associated with it, dispatching to approximations in the same regimes
+     * as calculateP. The variances of the approximations are corrected for the ties, and the exact distribution is
+     * taken over the arrangements of the two sets which keep the same groups of tied values.
+     * @param n - The number of entries in the stochastically smaller (dominant) set
+     * @param m - The number of entries in the stochastically larger (dominated) set
+     * @param doubledU - twice the Mann-Whitney U value
+     * @param tieSizes - the number of observations from both sets sharing each distinct value, in increasing order of value
+     * @param nTieGroups - the number of distinct values
+     * @param twoSided - is the test twosided
+     * @param exactMode - whether exact p-values are point probabilities or cumulative
+     * @return the (possibly approximate) z-value and p-value associated with the MWU test
+     */
+    @Requires({"m > 0","n > 0","doubledU >= 0","tieSizes != null"})
+    @Ensures({"result != null", "! Double.isInfinite(result.getFirst())", "! Double.isInfinite(result.getSecond())"})
+    public static Pair<Double,Double> calculateTiedP(int n, int m, long doubledU, int[] tieSizes, int nTieGroups, boolean twoSided, ExactMode exactMode) {
+        final long nm = ((long)n)*m;
+        final double var = getTiedVariance(n, m, tieSizes, nTieGroups);
+
+        if ( (n > 8 && m > 8) || (n > 5 && m > 7) || n > 8 || m > 8 ) {
+            // normal approximation, as in calculateP
+            double z = var == 0.0 ? 0.0 : (doubledU/2.0 - (nm+1.0)/2)/Math.sqrt(var);
+            if ( twoSided ) {
+                return new Pair<Double,Double>(z,2.0*(z < 0 ? STANDARD_NORMAL.cdf(z) : 1.0-STANDARD_NORMAL.cdf(z)));
+            } else {
+                return new Pair<Double,Double>(z,STANDARD_NORMAL.cdf(z));
+            }
+        }
+
+        final double[] distribution;
+        if ( nTieGroups == n+m ) {
+            // no ties, so the distribution of U is the tabulated one
+            final double[] points = EXACT_POINT_PROBABILITIES[n][m];
+            distribution = new double[(int)(2*nm)+1];
+            for ( int u = 0; u < points.length; u++ )
+                distribution[2*u] = points[u];
+        } else {
+            distribution = tiedDoubledUDistribution(n, m, tieSizes, nTieGroups);
+        }
+
+        final long half = 2*(nm/2);
+        double p;
+        if ( exactMode == ExactMode.POINT ) {
+            p = distribution[(int)doubledU];
+        } else {
+            // as in cumulativeCPR, summing the smaller tail
+            final long uSym = doubledU <= half ? doubledU : 2*nm - doubledU;
+            p = 0.0;
+            for ( int uu = 0; uu < uSym; uu++ )
+                p += distribution[uu];
+            p = doubledU <= half ? p : 1.0-p;
+        }
+
+        double sd = Math.sqrt((1.0+1.0/(1+n+m))*var); // biased variance, as in calculatePRecursively
+        double z = exactZ(p, sd, doubledU >= half, exactMode);
+
         return new Pair<Double,Double>(z,(twoSided ? 2.0*p : p));
     }
 
+    /**
+     * The variance of U under the null hypothesis, corrected for ties
+     * @param n - the size of one set
+     * @param m - the size of the other set
+     * @param tieSizes - the number of observations sharing each distinct value
+     * @param nTieGroups - the number of distinct values
+     * @return the variance of U
+     */
+    private static double getTiedVariance(int n, int m, int[] tieSizes, int nTieGroups) {
+        final long total = ((long)n)+m;
+        long tieTerm = 0l;
+        for ( int i = 0; i < nTieGroups; i++ ) {
+            final long t = tieSizes[i];
+            tieTerm += t*t*t - t;
+        }
+        return Math.max(0.0, (((long) n)*m/12.0)*((total+1.0) - ((double)tieTerm)/(total*(total-1))));
+    }
+
+    /**
+     * The exact distribution of twice the U statistic of a set of n observations against a set of m, over all the ways
+     * of dividing the observations between the sets while keeping the given groups of tied values. Each group of t
+     * values with k from the first set contributes k times (2 x [second set values below the group] + t - k).
+     * @param n - the size of the first set
+     * @param m - the size of the second set
+     * @param tieSizes - the number of observations sharing each distinct value, in increasing order of value
+     * @param nTieGroups - the number of distinct values
+     * @return the probability of each value of twice U, from 0 to 2nm
+     */
+    protected static double[] tiedDoubledUDistribution(int n, int m, int[] tieSizes, int nTieGroups) {
+        final int maxU = 2*n*m;
+        double[][] ways = new double[n+1][maxU+1];
+        ways[0][0] = 1.0;
+        int seen = 0;
+        for ( int g = 0; g < nTieGroups; g++ ) {
+            final int t = tieSizes[g];
+            final double[][] next = new double[n+1][maxU+1];
+            for ( int d = Math.max(0, seen-m); d <= Math.min(n, seen); d++ ) {
+                final int otherBefore = seen - d;
+                for ( int u = 0; u <= maxU; u++ ) {
+                    if ( ways[d][u] == 0.0 )
+                        continue;
+                    for ( int k = Math.max(0, t - (m - otherBefore)); k <= Math.min(t, n - d); k++ )
+                        next[d+k][u + k*(2*otherBefore + t - k)] += ways[d][u] * Arithmetic.binomial(t, k);
+                }
+            }
+            ways = next;
+            seen += t;
+        }
+
+        final double total = Arithmetic.binomial(n+m, n);
+        final double[] distribution = ways[n];
+        for ( int u = 0; u <= maxU; u++ )
+            distribution[u] /= total;
+        return distribution;
+    }
+
     /**
      * Hook into CPR with sufficient warning (for testing purposes)
      * calls into that recursive calculation.
@@ -362,6 +487,9 @@ public class MannWhitneyU {
         if ( u < 0 ) {
             return 0.0;
         }
+        if ( n <= EXACT_TABLE_SIZE && m <= EXACT_TABLE_SIZE ) {
+            return u <= ((long)n)*m ? EXACT_POINT_PROBABILITIES[n][m][(int)u] : 0.0;
+        }
         if ( m == 0 || n == 0 ) {
             // there are entries in set 1 or set 2, so no set-2 entry can precede a set-1 entry; thus u must be zero.
             // note that this exists only for edification, as when we reach this point, the coefficient on this term is zero anyway
@@ -372,6 +500,30 @@ public class MannWhitneyU {
         return (((double)n)/(n+m))*cpr(n-1,m,u-m) + (((double)m)/(n+m))*cpr(n,m-1,u);
     }
 
+    /**
+     * Tabulates cpr for every n and m up to EXACT_TABLE_SIZE, with the same recursion cpr uses, so that the exact
+     * p-values for small sets are looked up rather than recursed for at every call.
+     * @return the point probabilities of each u, indexed by n, m and u
+     */
+    private static double[][][] makeExactPointProbabilities() {
+        final double[][][] table = new double[EXACT_TABLE_SIZE+1][EXACT_TABLE_SIZE+1][];
+        for ( int n = 0; n <= EXACT_TABLE_SIZE; n++ ) {
+            for ( int m = 0; m <= EXACT_TABLE_SIZE; m++ ) {
+                table[n][m] = new double[n*m+1];
+                if ( m == 0 || n == 0 ) {
+                    table[n][m][0] = 1.0;
+                    continue;
+                }
+                for ( int u = 0; u <= n*m; u++ ) {
+                    final double fewerN = u-m >= 0 && u-m <= (n-1)*m ? table[n-1][m][u-m] : 0.0;
+                    final double fewerM = u <= n*(m-1) ? table[n][m-1][u] : 0.0;
+                    table[n][m][u] = (((double)n)/(n+m))*fewerN + (((double)m)/(n+m))*fewerM;
+                }
+            }
+        }
+        return table;
+    }
+
     private static double cumulativeCPR(int n, int m, long u ) {
         // from above:
         // the null hypothesis is that {N} is stochastically less than {M}, so U has counted
@@ -48,6 +48,16 @@ public class SWPairwiseAlignment {
     private final double w_open;
     private final double w_extend;
 
+    // when all the weights are whole numbers we run the (faster, exactly equivalent) integer version of the matrix,
+    // unless the sequences are long enough for the scores to overflow an int
+    private final boolean integralWeights;
+
+    // the alignment of seq2 is restricted to the cells within bandWidth of the diagonal starting at bandCenter on seq1
+    private final int bandCenter;
+    private final int bandWidth;
+
+    public static final int NO_BAND = -1;
+
     private static final int MSTATE = 0;
     private static final int ISTATE = 1;
     private static final int DSTATE = 2;
@@ -56,26 +66,101 @@ public class SWPairwiseAlignment {
     private static boolean cutoff = false;
     private static boolean DO_SOFTCLIP = true;
 
+    // never hold on to matrices larger than this between alignments (~48Mb for the double version)
+    private static final int MAX_RETAINED_MATRIX_CELLS = 1 << 22;
+
+    private static final double GAP_INIT = -1.0e40;
+    private static final int GAP_INIT_INT = Integer.MIN_VALUE / 4;
+    private static final int MATRIX_MIN_CUTOFF_INT = Integer.MIN_VALUE / 2;
+
     double[] SW;
+    int[] SWint;
 
-//    private double [] best_gap_v ;
-//    private int [] gap_size_v ;
-//    private double [] best_gap_h ;
-//    private int [] gap_size_h ;
+    /**
+     * Per-thread scratch space for the alignment matrices, so that we do not allocate them for every alignment
+     */
+    private static final class AlignmentBuffers {
+        double[] sw = new double[0];
+        int[] swInt = new int[0];
+        int[] btrack = new int[0];
+        double[] best_gap_v = new double[0];
+        double[] best_gap_h = new double[0];
+        int[] best_gap_v_int = new int[0];
+        int[] best_gap_h_int = new int[0];
+        int[] gap_size_v = new int[0];
+        int[] gap_size_h = new int[0];
+
+        /**
+         * Returns buffers large enough to hold the matrices for sequences of length n and m, which are this
+         * object itself unless the matrices would be too large to keep around
+         */
+        AlignmentBuffers forSize(final int n, final int m, final boolean integerScoring) {
+            final int cells = (n+1)*(m+1);
+            final AlignmentBuffers buffers = cells > MAX_RETAINED_MATRIX_CELLS ? new AlignmentBuffers() : this;
+
+            if ( buffers.btrack.length < cells )
+                buffers.btrack = new int[cells];
+            if ( integerScoring ) {
+                if ( buffers.swInt.length < cells )
+                    buffers.swInt = new int[cells];
+                if ( buffers.best_gap_v_int.length < m+2 )
+                    buffers.best_gap_v_int = new int[m+2];
+                if ( buffers.best_gap_h_int.length < n+2 )
+                    buffers.best_gap_h_int = new int[n+2];
+            } else {
+                if ( buffers.sw.length < cells )
+                    buffers.sw = new double[cells];
+                if ( buffers.best_gap_v.length < m+2 )
+                    buffers.best_gap_v = new double[m+2];
+                if ( buffers.best_gap_h.length < n+2 )
+                    buffers.best_gap_h = new double[n+2];
+            }
+            if ( buffers.gap_size_v.length < m+2 )
+                buffers.gap_size_v = new int[m+2];
+            if ( buffers.gap_size_h.length < n+2 )
+                buffers.gap_size_h = new int[n+2];
 
+            return buffers;
+        }
+    }
 
- //   private static double [][] sw = new double[500][500];
- //   private static int [][] btrack = new int[500][500];
+    private static final ThreadLocal<AlignmentBuffers> alignmentBuffers = new ThreadLocal<AlignmentBuffers>() {
+        @Override
+        protected AlignmentBuffers initialValue() {
+            return new AlignmentBuffers();
+        }
+    };
 
     // ************************************************************************
     // ****                    IMPORTANT NOTE:                             ****
     // ****  This class assumes that all bytes come from UPPERCASED chars! ****
     // ************************************************************************
     public SWPairwiseAlignment(byte[] seq1, byte[] seq2, double match, double mismatch, double open, double extend ) {
+        this(seq1, seq2, match, mismatch, open, extend, 0, NO_BAND);
+    }
+
+    /**
+     * Creates a banded alignment: only cells of the matrix within bandWidth of the diagonal on which seq2 starts
+     * at offset bandCenter of seq1 are considered.  Alignments that fall entirely within the band are identical
+     * to the ones found by the full (unbanded) matrix.
+     *
+     * @param seq1       the first (reference) sequence
+     * @param seq2       the second (read) sequence
+     * @param match      match weight
+     * @param mismatch   mismatch weight
+     * @param open       gap open weight
+     * @param extend     gap extension weight
+     * @param bandCenter the expected offset of seq2 with respect to seq1
+     * @param bandWidth  the maximum distance from the expected diagonal, or NO_BAND to compute the full matrix
+     */
+    public SWPairwiseAlignment(byte[] seq1, byte[] seq2, double match, double mismatch, double open, double extend, int bandCenter, int bandWidth ) {
         w_match = match;
         w_mismatch = mismatch;
         w_open = open;
         w_extend = extend;
+        integralWeights = isIntegral(match) && isIntegral(mismatch) && isIntegral(open) && isIntegral(extend);
+        this.bandCenter = bandCenter;
+        this.bandWidth = bandWidth;
         align(seq1,seq2);
     }
 
@@ -92,23 +177,93 @@ public class SWPairwiseAlignment {
     public void align(final byte[] a, final byte[] b) {
         final int n = a.length;
         final int m = b.length;
-        double [] sw = new double[(n+1)*(m+1)];
-        SW = sw;
-        int [] btrack = new int[(n+1)*(m+1)];
+        final boolean useIntegerScoring = integralWeights && fitsInInt(n, m);
+        final AlignmentBuffers buffers = alignmentBuffers.get().forSize(n, m, useIntegerScoring);
+        int [] btrack = buffers.btrack;
+
+        if ( useIntegerScoring ) {
+            int [] sw = buffers.swInt;
+            SW = null;
+            SWint = sw;
+            initializeMatrix(n, m, sw, btrack);
+            calculateMatrix(a, b, sw, btrack, buffers);
+            final int[] end = findAlignmentEnd(n, m, sw);
+            calculateCigar(n, m, end[0], end[1], end[2], btrack); // length of the segment (continuous matches, insertions or deletions)
+        } else {
+            double [] sw = buffers.sw;
+            SW = sw;
+            SWint = null;
+            initializeMatrix(n, m, sw, btrack);
+            calculateMatrix(a, b, sw, btrack, buffers);
+            final int[] end = findAlignmentEnd(n, m, sw);
+            calculateCigar(n, m, end[0], end[1], end[2], btrack); // length of the segment (continuous matches, insertions or deletions)
+        }
+    }
 
-//        best_gap_v = new double[m+1];
-//        Arrays.fill(best_gap_v,-1.0e40);
-//        gap_size_v = new int[m+1];
-//        best_gap_h = new double[n+1];
-//        Arrays.fill(best_gap_h,-1.0e40);
-//        gap_size_h = new int[n+1];
+    private static boolean isIntegral(final double w) {
+        return w == Math.rint(w) && Math.abs(w) <= Integer.MAX_VALUE;
+    }
 
-        calculateMatrix(a, b, sw, btrack);
-        calculateCigar(n, m, sw, btrack); // length of the segment (continuous matches, insertions or deletions)
+    // every score in the matrix is a sum of at most n + m weights, and has to stay clear of GAP_INIT_INT and of
+    // MATRIX_MIN_CUTOFF_INT, so the scores are kept within Integer.MAX_VALUE / 8
+    private boolean fitsInInt(final int n, final int m) {
+        final double maxWeight = Math.max(Math.max(Math.abs(w_match), Math.abs(w_mismatch)), Math.max(Math.abs(w_open), Math.abs(w_extend)));
+        return maxWeight * (n + m + 2) < Integer.MAX_VALUE / 8;
+    }
+
+    private boolean isBanded() {
+        return bandWidth != NO_BAND;
     }
 
+    // first column of the band in row i; past the last column if the band misses the row
+    private int bandStart(final int i) {
+        return isBanded() ? Math.max(1, i - bandCenter - bandWidth) : 1;
+    }
+
+    // last column of the band in row i of a matrix with m columns; before the first column if the band misses the row
+    private int bandEnd(final int i, final int m) {
+        return isBanded() ? Math.min(m-1, i - bandCenter + bandWidth) : m-1;
+    }
 
-    private void calculateMatrix(final byte[] a, final byte[] b, double [] sw, int [] btrack ) {
+    // The matrices are reused, so we need to reset everything that is read before it is written: the first
+    // row and column and, for banded alignments, the last row and column that are scanned for the best score
+    private void initializeMatrix(final int n, final int m, final double[] sw, final int[] btrack) {
+        final double MATRIX_MIN_CUTOFF = cutoff ? 0.0 : -1e100;
+        Arrays.fill(sw, 0, m+1, 0.0);
+        Arrays.fill(btrack, 0, m+1, 0);
+        for ( int i = 1, data_offset = m+1 ; i < n+1 ; i++, data_offset += (m+1) ) {
+            sw[data_offset] = 0.0;
+            btrack[data_offset] = 0;
+            if ( isBanded() ) {
+                sw[data_offset+m] = MATRIX_MIN_CUTOFF;
+                btrack[data_offset+m] = 0;
+            }
+        }
+        if ( isBanded() ) {
+            Arrays.fill(sw, n*(m+1)+1, (n+1)*(m+1), MATRIX_MIN_CUTOFF);
+            Arrays.fill(btrack, n*(m+1)+1, (n+1)*(m+1), 0);
+        }
+    }
+
+    private void initializeMatrix(final int n, final int m, final int[] sw, final int[] btrack) {
+        final int MATRIX_MIN_CUTOFF = cutoff ? 0 : MATRIX_MIN_CUTOFF_INT;
+        Arrays.fill(sw, 0, m+1, 0);
+        Arrays.fill(btrack, 0, m+1, 0);
+        for ( int i = 1, data_offset = m+1 ; i < n+1 ; i++, data_offset += (m+1) ) {
+            sw[data_offset] = 0;
+            btrack[data_offset] = 0;
+            if ( isBanded() ) {
+                sw[data_offset+m] = MATRIX_MIN_CUTOFF;
+                btrack[data_offset+m] = 0;
+            }
+        }
+        if ( isBanded() ) {
+            Arrays.fill(sw, n*(m+1)+1, (n+1)*(m+1), MATRIX_MIN_CUTOFF);
+            Arrays.fill(btrack, n*(m+1)+1, (n+1)*(m+1), 0);
+        }
+    }
+
+    private void calculateMatrix(final byte[] a, final byte[] b, double [] sw, int [] btrack, AlignmentBuffers buffers ) {
         final int n = a.length+1;
         final int m = b.length+1;
 
@@ -117,12 +272,14 @@ public class SWPairwiseAlignment {
         if ( cutoff ) MATRIX_MIN_CUTOFF = 0.0;
         else MATRIX_MIN_CUTOFF = -1e100;
 
-        double [] best_gap_v = new double[m+1];
-        Arrays.fill(best_gap_v,-1.0e40);
-        int [] gap_size_v = new int[m+1];
-        double [] best_gap_h = new double[n+1];
-        Arrays.fill(best_gap_h,-1.0e40);
-        int [] gap_size_h = new int[n+1];
+        double [] best_gap_v = buffers.best_gap_v;
+        Arrays.fill(best_gap_v,0,m+1,GAP_INIT);
+        int [] gap_size_v = buffers.gap_size_v;
+        Arrays.fill(gap_size_v,0,m+1,0);
+        double [] best_gap_h = buffers.best_gap_h;
+        Arrays.fill(best_gap_h,0,n+1,GAP_INIT);
+        int [] gap_size_h = buffers.gap_size_h;
+        Arrays.fill(gap_size_h,0,n+1,0);
 
         // build smith-waterman matrix and keep backtrack info:
         for ( int i = 1, row_offset_1 = 0 ; i < n ; i++ ) { // we do NOT update row_offset_1 here, see comment at the end of this outer loop
@@ -134,7 +291,19 @@ public class SWPairwiseAlignment {
             // of the first element of row (i-1) and row_offset is the linear offset of the
             // start of row i
 
-            for ( int j = 1, data_offset_1 = row_offset_1 ; j < m ; j++, data_offset_1++ ) {
+            // cells just outside of the band are read by their neighbors inside the band, so they must never win
+            final int j_start = bandStart(i);
+            final int j_end = bandEnd(i, m);
+            if ( j_start > 1 && j_start <= j_end ) {
+                sw[row_offset + j_start - 1] = MATRIX_MIN_CUTOFF;
+                btrack[row_offset + j_start - 1] = 0;
+            }
+            if ( j_end + 1 >= 1 && j_end + 1 < m ) {
+                sw[row_offset + j_end + 1] = MATRIX_MIN_CUTOFF;
+                btrack[row_offset + j_end + 1] = 0;
+            }
+
+            for ( int j = j_start, data_offset_1 = row_offset_1 + j_start - 1 ; j <= j_end ; j++, data_offset_1++ ) {
 
                 // data_offset_1 is linearized offset of element [i-1][j-1]
 
@@ -247,10 +416,102 @@ public class SWPairwiseAlignment {
 //            print(sw,a,b);
     }
 
+    /**
+     * Integer version of the matrix calculation above; see the comments there for the details of the algorithm.
+     * The two versions must be kept in sync.
+     */
+    private void calculateMatrix(final byte[] a, final byte[] b, int [] sw, int [] btrack, AlignmentBuffers buffers ) {
+        final int n = a.length+1;
+        final int m = b.length+1;
+
+        final int MATRIX_MIN_CUTOFF = cutoff ? 0 : MATRIX_MIN_CUTOFF_INT;
+        final int i_match = (int)w_match;
+        final int i_mismatch = (int)w_mismatch;
+        final int i_open = (int)w_open;
+        final int i_extend = (int)w_extend;
+
+        int [] best_gap_v = buffers.best_gap_v_int;
+        Arrays.fill(best_gap_v,0,m+1,GAP_INIT_INT);
+        int [] gap_size_v = buffers.gap_size_v;
+        Arrays.fill(gap_size_v,0,m+1,0);
+        int [] best_gap_h = buffers.best_gap_h_int;
+        Arrays.fill(best_gap_h,0,n+1,GAP_INIT_INT);
+        int [] gap_size_h = buffers.gap_size_h;
+        Arrays.fill(gap_size_h,0,n+1,0);
+
+        for ( int i = 1, row_offset_1 = 0 ; i < n ; i++ ) {
+            final byte a_base = a[i-1];
+            final int row_offset = row_offset_1 + m;
+
+            final int j_start = bandStart(i);
+            final int j_end = bandEnd(i, m);
+            if ( j_start > 1 && j_start <= j_end ) {
+                sw[row_offset + j_start - 1] = MATRIX_MIN_CUTOFF;
+                btrack[row_offset + j_start - 1] = 0;
+            }
+            if ( j_end + 1 >= 1 && j_end + 1 < m ) {
+                sw[row_offset + j_end + 1] = MATRIX_MIN_CUTOFF;
+                btrack[row_offset + j_end + 1] = 0;
+            }
+
+            for ( int j = j_start, data_offset_1 = row_offset_1 + j_start - 1 ; j <= j_end ; j++, data_offset_1++ ) {
+                final int step_diag = sw[data_offset_1] + (a_base == b[j-1] ? i_match : i_mismatch);
+
+                int prev_gap = sw[data_offset_1+1]+i_open;
+                best_gap_v[j] += i_extend;
+                if ( prev_gap > best_gap_v[j] ) {
+                    best_gap_v[j] = prev_gap;
+                    gap_size_v[j] = 1;
+                } else {
+                    gap_size_v[j]++;
+                }
 
-    private void calculateCigar(int n, int m, double [] sw, int [] btrack) {
+                final int step_down = best_gap_v[j] ;
+                final int kd = gap_size_v[j];
+
+                final int data_offset = row_offset + j;
+                prev_gap = sw[data_offset-1]+i_open;
+                best_gap_h[i] += i_extend;
+                if ( prev_gap > best_gap_h[i] ) {
+                    best_gap_h[i] = prev_gap;
+                    gap_size_h[i] = 1;
+                } else {
+                    gap_size_h[i]++;
+                }
+
+                final int step_right = best_gap_h[i];
+                final int ki = gap_size_h[i];
+
+                if ( step_down > step_right ) {
+                    if ( step_down > step_diag ) {
+                        sw[data_offset] = Math.max(MATRIX_MIN_CUTOFF,step_down);
+                        btrack[data_offset] = kd ; // positive=vertical
+                    } else {
+                        sw[data_offset] = Math.max(MATRIX_MIN_CUTOFF,step_diag);
+                        btrack[data_offset] = 0; // 0 = diagonal
+                    }
+                } else {
+                    if ( step_right > step_diag ) {
+                        sw[data_offset] = Math.max(MATRIX_MIN_CUTOFF,step_right);
+                        btrack[data_offset] = -ki; // negative = horizontal
+                    } else {
+                        sw[data_offset] = Math.max(MATRIX_MIN_CUTOFF,step_diag);
+                        btrack[data_offset] = 0; // 0 = diagonal
+                    }
+                }
+            }
+
+            row_offset_1 = row_offset;
+        }
+    }
+
+    /**
+     * Finds the cell we start backtracking from
+     *
+     * @return the row, column and the length of the overhanging (to be clipped) end of sequence 2
+     */
+    private int[] findAlignmentEnd(int n, int m, double [] sw) {
         // p holds the position we start backtracking from; we will be assembling a cigar in the backwards order
-        //PrimitivePair.Int p = new PrimitivePair.Int();
         int p1 = 0, p2 = 0;
 
         double maxscore = 0.0;
@@ -270,11 +531,39 @@ public class SWPairwiseAlignment {
             if ( sw[data_offset] > maxscore || sw[data_offset] == maxscore && Math.abs(n-j) < Math.abs(p1 - p2)) {
                 p1 = n;
                 p2 = j ;
-//                maxscore = sw[n][j];
                 maxscore = sw[data_offset];
                 segment_length = m - j ; // end of sequence 2 is overhanging; we will just record it as 'M' segment
             }
         }
+
+        return new int[]{p1, p2, segment_length};
+    }
+
+    private int[] findAlignmentEnd(int n, int m, int [] sw) {
+        int p1 = 0, p2 = 0;
+
+        int maxscore = 0;
+        int segment_length = 0;
+
+        for ( int i = 1, data_offset = m+1+m ; i < n+1 ; i++, data_offset += (m+1) ) {
+            if ( sw[data_offset] >= maxscore ) {
+                p1 = i; p2 = m ; maxscore = sw[data_offset];
+            }
+        }
+
+        for ( int j = 1, data_offset = n*(m+1)+1 ; j < m+1 ; j++, data_offset++ ) {
+            if ( sw[data_offset] > maxscore || sw[data_offset] == maxscore && Math.abs(n-j) < Math.abs(p1 - p2)) {
+                p1 = n;
+                p2 = j ;
+                maxscore = sw[data_offset];
+                segment_length = m - j ;
+            }
+        }
+
+        return new int[]{p1, p2, segment_length};
+    }
+
+    private void calculateCigar(int n, int m, int p1, int p2, int segment_length, int [] btrack) {
 //        System.out.println("  Found max score="+maxscore+" at p1="+p1+ " p2="+p2);
 
         List<CigarElement> lce = new ArrayList<CigarElement>(5);
@@ -430,6 +719,16 @@ public class SWPairwiseAlignment {
         }
     }
 
+    // the matrices are reused by the next alignment on this thread, so this is only valid right after the alignment
+    private double[] getScoreMatrix(int n, int m) {
+        if ( SW != null )
+            return SW;
+        final double[] s = new double[(n+1)*(m+1)];
+        for ( int i = 0; i < s.length; i++ )
+            s[i] = SWint[i];
+        return s;
+    }
+
     private void print(double[] s, byte[] a, byte[] b) {
            int n = a.length+1;
            int m = b.length+1;
@@ -629,7 +928,7 @@ public class SWPairwiseAlignment {
 
         System.out.println();
         if ( print_mat != null && print_mat == true ) {
-            a.print(a.SW,ref.getBytes(),read.getBytes());
+            a.print(a.getScoreMatrix(ref.length(),read.length()),ref.getBytes(),read.getBytes());
         }
     }
 
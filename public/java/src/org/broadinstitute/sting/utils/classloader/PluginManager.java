@@ -35,10 +35,8 @@ import org.reflections.scanners.SubTypesScanner;
 import org.reflections.util.ConfigurationBuilder;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
-import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.*;
@@ -50,35 +48,28 @@ import java.util.*;
  */
 public class PluginManager<PluginType> {
     /**
-     * A reference into our introspection utility.
+     * The subtypes of every type on the classpath, from the build's registry where there is one.
      */
-    private static final Reflections defaultReflections;
+    private static final PluginRegistry defaultRegistry;
 
     static {
         // turn off logging in the reflections library - they talk too much (to the wrong logger factory as well, logback)
         Logger logger = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Reflections.class);
         logger.setLevel(Level.OFF);
 
-        Set<URL> classPathUrls = new LinkedHashSet<URL>();
+        Set<URL> classPathUrls = PluginRegistry.getClasspathURLs();
 
-        URL cwd;
-        try {
-            cwd = new File(".").getAbsoluteFile().toURI().toURL();
-        } catch (MalformedURLException e) {
-            throw new RuntimeException(e);
+        // only scan the parts of the classpath the registry doesn't cover, or all of it if there's no registry
+        PluginRegistry registry = PluginRegistry.load();
+        if (registry == null) {
+            registry = new PluginRegistry();
+        } else {
+            for (Iterator<URL> it = classPathUrls.iterator(); it.hasNext(); )
+                if (registry.covers(it.next()))
+                    it.remove();
         }
-
-        // NOTE: Reflections also scans directories for classes.
-        // Meanwhile some of the jar MANIFEST.MF Bundle-ClassPath properties contain "."
-        // Do NOT let reflections scan the CWD where it often picks up test classes when
-        // they weren't explicitly in the classpath, for example the UninstantiableWalker
-        for (URL url: JVMUtils.getClasspathURLs())
-            if (!url.equals(cwd))
-                classPathUrls.add(url);
-
-        defaultReflections = new Reflections( new ConfigurationBuilder()
-            .setUrls(classPathUrls)
-            .setScanners(new SubTypesScanner()));
+        registry.scan(classPathUrls);
+        defaultRegistry = registry;
     }
 
     /**
@@ -140,18 +131,18 @@ public class PluginManager<PluginType> {
         this.plugins = new ArrayList<Class<? extends PluginType>>();
         this.interfaces = new ArrayList<Class<? extends PluginType>>();
 
-        Reflections reflections;
+        Set<Class<? extends PluginType>> allTypes;
         if (classpath == null) {
-            reflections = defaultReflections;
+            allTypes = defaultRegistry.getSubTypesOf(pluginType);
         } else {
             addClasspath(classpath);
-            reflections = new Reflections( new ConfigurationBuilder()
+            Reflections reflections = new Reflections( new ConfigurationBuilder()
                 .setUrls(classpath)
                 .setScanners(new SubTypesScanner()));
+            allTypes = reflections.getSubTypesOf(pluginType);
         }
 
         // Load all classes types filtering them by concrete.
-        Set<Class<? extends PluginType>> allTypes = reflections.getSubTypesOf(pluginType);
         for( Class<? extends PluginType> type: allTypes ) {
             // The plugin manager does not support anonymous classes; to be a plugin, a class must have a name.
             if(JVMUtils.isAnonymous(type))
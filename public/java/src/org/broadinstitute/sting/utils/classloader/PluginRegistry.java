@@ -0,0 +1,390 @@
+/*
+ * Copyright (c) 2011, The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.broadinstitute.sting.utils.classloader;
+
+import com.google.common.collect.Multimap;
+import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
+import org.reflections.Reflections;
+import org.reflections.scanners.SubTypesScanner;
+import org.reflections.util.ConfigurationBuilder;
+import org.reflections.util.Utils;
+
+import java.io.*;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * The subtypes of every class and interface on the classpath, as the plugin manager needs them.
+ *
+ * The build scans the classpath once and writes the registry into the classes directory, from which it's packaged
+ * into the jars; loading it at startup replaces scanning every jar on the classpath.  The registry records the jars
+ * and directories it covers, and any other classpath entry (a third party plugin jar, or test classes) is scanned as
+ * before and merged in.
+ *
+ * An entry is only covered while it still has the classes it had when the registry was built.  Each scanned jar is
+ * stamped with a checksum of its table of contents, which survives the jar being copied, and each scanned directory
+ * with the number and newest modification time of its class files.  The jars built from the compiled classes don't
+ * exist yet when the registry is built, so they're covered as long as none of their classes is newer than the
+ * registry.  Any entry that has changed since is scanned again.
+ */
+public class PluginRegistry {
+    /**
+     * Where the registry is written by the build, and found on the classpath.
+     */
+    public static final String RESOURCE = "org/broadinstitute/sting/utils/classloader/PluginRegistry.properties";
+
+    /**
+     * Set this system property to scan the whole classpath even if there's a registry, e.g. when the classes have
+     * been rebuilt outside of the build.
+     */
+    public static final String DISABLE_PROPERTY = "sting.plugin.registry.disable";
+
+    private static final String BUILT_KEY = "built";
+    private static final String BUILT_JARS_KEY = "built.jars";
+    private static final String COVERED_JAR_KEY_PREFIX = "covered.jar.";
+    private static final String COVERED_DIR_KEY_PREFIX = "covered.dir.";
+    private static final String SUBTYPES_KEY_PREFIX = "subtypes.";
+    private static final String SEPARATOR = ",";
+
+    /**
+     * The direct subtypes of each type, by name.
+     */
+    private final Map<String, Set<String>> subTypes = new HashMap<String, Set<String>>();
+
+    /**
+     * The stamps of the jars, by file name, and of the directories, by path, whose classes are in the registry.
+     */
+    private final Map<String, String> coveredJars = new HashMap<String, String>();
+    private final Map<String, String> coveredDirs = new HashMap<String, String>();
+
+    /**
+     * The file names of the jars that will be built from the covered directories, and when the registry was built.
+     */
+    private final Set<String> builtJars = new HashSet<String>();
+    private long built;
+
+    /**
+     * Loads the registry packaged with the build.
+     * @return the registry, or null if there isn't one or it's been disabled.
+     */
+    public static PluginRegistry load() {
+        if (Boolean.getBoolean(DISABLE_PROPERTY))
+            return null;
+
+        InputStream stream = PluginRegistry.class.getClassLoader().getResourceAsStream(RESOURCE);
+        if (stream == null)
+            return null;
+
+        try {
+            try {
+                return read(stream);
+            } finally {
+                stream.close();
+            }
+        } catch (IOException e) {
+            throw new ReviewedStingException("Unable to read the plugin registry " + RESOURCE, e);
+        }
+    }
+
+    /**
+     * Reads a registry written by write().
+     * @param stream Stream to read.
+     * @return The registry.
+     * @throws IOException if the stream can't be read.
+     */
+    static PluginRegistry read(InputStream stream) throws IOException {
+        Properties properties = new Properties();
+        properties.load(stream);
+
+        PluginRegistry registry = new PluginRegistry();
+        registry.built = Long.parseLong(properties.getProperty(BUILT_KEY, "0"));
+        registry.builtJars.addAll(split(properties.getProperty(BUILT_JARS_KEY)));
+        for (String key: properties.stringPropertyNames()) {
+            if (key.startsWith(SUBTYPES_KEY_PREFIX))
+                registry.subTypes.put(key.substring(SUBTYPES_KEY_PREFIX.length()), new HashSet<String>(split(properties.getProperty(key))));
+            else if (key.startsWith(COVERED_JAR_KEY_PREFIX))
+                registry.coveredJars.put(key.substring(COVERED_JAR_KEY_PREFIX.length()), properties.getProperty(key));
+            else if (key.startsWith(COVERED_DIR_KEY_PREFIX))
+                registry.coveredDirs.put(key.substring(COVERED_DIR_KEY_PREFIX.length()), properties.getProperty(key));
+        }
+        return registry;
+    }
+
+    /**
+     * Scans the given classpath entries, and adds their classes to the registry.
+     * @param urls Classpath entries to scan.
+     */
+    public void scan(Collection<URL> urls) {
+        if (urls.isEmpty())
+            return;
+
+        Reflections reflections = new Reflections( new ConfigurationBuilder()
+            .setUrls(urls)
+            .setScanners(new SubTypesScanner()));
+        Multimap<String, String> scanned = reflections.getStore().get(SubTypesScanner.class);
+        for (Map.Entry<String, String> entry: scanned.entries()) {
+            Set<String> types = subTypes.get(entry.getKey());
+            if (types == null) {
+                types = new HashSet<String>();
+                subTypes.put(entry.getKey(), types);
+            }
+            types.add(entry.getValue());
+        }
+    }
+
+    /**
+     * Are the classes of this classpath entry already in the registry?
+     * @param url The classpath entry.
+     * @return True if the entry was scanned when the registry was built, and hasn't changed since.
+     */
+    public boolean covers(URL url) {
+        File file = toFile(url);
+        if (file == null)
+            return false;
+        try {
+            if (file.isDirectory()) {
+                String stamp = coveredDirs.get(file.getAbsolutePath());
+                return stamp != null && stamp.equals(getDirectoryStamp(file));
+            }
+            if (!file.isFile())
+                return false;
+            String stamp = coveredJars.get(file.getName());
+            if (stamp != null)
+                return stamp.equals(getJarStamp(file));
+            return builtJars.contains(file.getName()) && !hasClassesNewerThan(file, built);
+        } catch (IOException e) {
+            // scanning it will report the problem, if there really is one
+            return false;
+        }
+    }
+
+    /**
+     * Records that the classes of this classpath entry, as it is now, are in the registry.
+     * @param file The jar or directory.
+     * @throws IOException if the entry can't be read.
+     */
+    void cover(File file) throws IOException {
+        if (file.isDirectory())
+            coveredDirs.put(file.getAbsolutePath(), getDirectoryStamp(file));
+        else if (file.isFile())
+            coveredJars.put(file.getName(), getJarStamp(file));
+    }
+
+    /**
+     * Gets the classes extending or implementing the given type, however indirectly.
+     * @param type The type.
+     * @param <T> The type.
+     * @return The loadable subtypes of the type.
+     */
+    public <T> Set<Class<? extends T>> getSubTypesOf(Class<T> type) {
+        SortedSet<String> names = new TreeSet<String>();
+        LinkedList<String> pending = new LinkedList<String>();
+        pending.add(type.getName());
+        while (!pending.isEmpty()) {
+            Set<String> types = subTypes.get(pending.removeFirst());
+            if (types == null)
+                continue;
+            for (String name: types)
+                if (names.add(name))
+                    pending.add(name);
+        }
+        List<Class<? extends T>> classes = Utils.<T>forNames(names);
+        return new LinkedHashSet<Class<? extends T>>(classes);
+    }
+
+    /**
+     * Writes the registry in the form load() reads.
+     * @param file File to write.
+     * @throws IOException if the file can't be written.
+     */
+    public void write(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.exists() && !parent.mkdirs())
+            throw new IOException("Unable to create directory " + parent);
+        OutputStream stream = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            write(stream);
+        } finally {
+            stream.close();
+        }
+    }
+
+    void write(OutputStream stream) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(BUILT_KEY, Long.toString(built));
+        properties.setProperty(BUILT_JARS_KEY, join(builtJars));
+        for (Map.Entry<String, String> entry: coveredJars.entrySet())
+            properties.setProperty(COVERED_JAR_KEY_PREFIX + entry.getKey(), entry.getValue());
+        for (Map.Entry<String, String> entry: coveredDirs.entrySet())
+            properties.setProperty(COVERED_DIR_KEY_PREFIX + entry.getKey(), entry.getValue());
+        for (Map.Entry<String, Set<String>> entry: subTypes.entrySet())
+            properties.setProperty(SUBTYPES_KEY_PREFIX + entry.getKey(), join(entry.getValue()));
+        properties.store(stream, "Subtypes of the classes on the build classpath; generated by the build");
+    }
+
+    /**
+     * Gets the entries of the classpath to search for plugins.
+     * @return The classpath entries, other than the current directory.
+     */
+    static Set<URL> getClasspathURLs() {
+        Set<URL> classPathUrls = new LinkedHashSet<URL>();
+
+        URL cwd;
+        try {
+            cwd = new File(".").getAbsoluteFile().toURI().toURL();
+        } catch (MalformedURLException e) {
+            throw new RuntimeException(e);
+        }
+
+        // NOTE: Reflections also scans directories for classes.
+        // Meanwhile some of the jar MANIFEST.MF Bundle-ClassPath properties contain "."
+        // Do NOT let reflections scan the CWD where it often picks up test classes when
+        // they weren't explicitly in the classpath, for example the UninstantiableWalker
+        for (URL url: JVMUtils.getClasspathURLs())
+            if (!url.equals(cwd))
+                classPathUrls.add(url);
+        return classPathUrls;
+    }
+
+    private static File toFile(URL url) {
+        if (!"file".equals(url.getProtocol()))
+            return null;
+        try {
+            return new File(url.toURI());
+        } catch (URISyntaxException e) {
+            return new File(url.getPath());
+        }
+    }
+
+    /**
+     * Stamps a jar with the number of its entries and a checksum of their names and CRCs, which are read from the
+     * jar's table of contents without inflating anything.
+     */
+    private static String getJarStamp(File file) throws IOException {
+        ZipFile zip = new ZipFile(file);
+        try {
+            CRC32 checksum = new CRC32();
+            int count = 0;
+            for (Enumeration<? extends ZipEntry> entries = zip.entries(); entries.hasMoreElements(); count++) {
+                ZipEntry entry = entries.nextElement();
+                checksum.update(entry.getName().getBytes("UTF-8"));
+                long crc = entry.getCrc();
+                for (int shift = 0; shift < 32; shift += 8)
+                    checksum.update((int)(crc >>> shift));
+            }
+            return count + ":" + Long.toHexString(checksum.getValue());
+        } finally {
+            zip.close();
+        }
+    }
+
+    /**
+     * Stamps a directory with the number of class files under it and the time the newest of them was modified.
+     */
+    private static String getDirectoryStamp(File dir) {
+        long[] countAndNewest = new long[2];
+        addClassFiles(dir, countAndNewest);
+        return countAndNewest[0] + ":" + countAndNewest[1];
+    }
+
+    private static void addClassFiles(File dir, long[] countAndNewest) {
+        File[] files = dir.listFiles();
+        if (files == null)
+            return;
+        for (File file: files) {
+            if (file.isDirectory()) {
+                addClassFiles(file, countAndNewest);
+            } else if (file.getName().endsWith(".class")) {
+                countAndNewest[0]++;
+                countAndNewest[1] = Math.max(countAndNewest[1], file.lastModified());
+            }
+        }
+    }
+
+    /**
+     * Were any of the classes in this jar modified after the given time?  The jar task keeps the times of the files.
+     */
+    private static boolean hasClassesNewerThan(File file, long time) throws IOException {
+        ZipFile zip = new ZipFile(file);
+        try {
+            for (Enumeration<? extends ZipEntry> entries = zip.entries(); entries.hasMoreElements(); ) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.getName().endsWith(".class") && entry.getTime() > time)
+                    return true;
+            }
+            return false;
+        } finally {
+            zip.close();
+        }
+    }
+
+    private static List<String> split(String value) {
+        if (value == null || value.length() == 0)
+            return Collections.emptyList();
+        return Arrays.asList(value.split(SEPARATOR));
+    }
+
+    private static String join(Collection<String> values) {
+        StringBuilder builder = new StringBuilder();
+        for (String value: new TreeSet<String>(values)) {
+            if (builder.length() > 0)
+                builder.append(SEPARATOR);
+            builder.append(value);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Builds the registry of the classpath this is run with.  Run by the build after compiling.
+     *
+     * @param argv The file to write, followed optionally by a comma separated list of the names of the jars that will
+     *             be built from the directories on the classpath.
+     * @throws IOException if the registry can't be written.
+     */
+    public static void main(String[] argv) throws IOException {
+        if (argv.length < 1 || argv.length > 2)
+            throw new IllegalArgumentException("Usage: PluginRegistry <registry file> [<jars built from the classpath directories>]");
+
+        PluginRegistry registry = new PluginRegistry();
+        // the classes have all been compiled by now, so anything newer than this was compiled after the scan
+        registry.built = System.currentTimeMillis();
+        Set<URL> urls = getClasspathURLs();
+        registry.scan(urls);
+        for (URL url: urls) {
+            File file = toFile(url);
+            if (file != null)
+                registry.cover(file);
+        }
+        if (argv.length > 1)
+            registry.builtJars.addAll(split(argv[1]));
+
+        registry.write(new File(argv[0]));
+    }
+}
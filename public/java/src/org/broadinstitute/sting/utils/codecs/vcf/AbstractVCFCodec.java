@@ -34,8 +34,10 @@ public abstract class AbstractVCFCodec implements FeatureCodec, NameAwareCodec {
     // for ParsingUtils.split
     protected String[] GTValueArray = new String[100];
     protected String[] genotypeKeyArray = new String[100];
-    protected String[] infoFieldArray = new String[1000];
-    protected String[] infoValueArray = new String[1000];
+
+    // the most INFO fields, and values of an INFO field, we split out
+    protected final static int MAX_INFO_FIELDS = 1000;
+    protected final static int MAX_INFO_VALUES = 1000;
 
     // for performance testing purposes
     public static boolean validate = true;
@@ -388,50 +390,23 @@ public abstract class AbstractVCFCodec implements FeatureCodec, NameAwareCodec {
     }
 
     /**
-     * parse out the info fields
+     * parse out the info fields.  The fields themselves are only split out when a
+     * caller asks for them, so we just check that the INFO field is well formed here
+     *
      * @param infoField the fields
      * @return a mapping of keys to objects
      */
     private Map<String, Object> parseInfo(String infoField) {
-        Map<String, Object> attributes = new HashMap<String, Object>();
-
         if ( infoField.length() == 0 )
             generateException("The VCF specification requires a valid info field");
 
-        if ( !infoField.equals(VCFConstants.EMPTY_INFO_FIELD) ) {
-            if ( infoField.indexOf("\t") != -1 || infoField.indexOf(" ") != -1 )
-                generateException("The VCF specification does not allow for whitespace in the INFO field");
-
-            int infoFieldSplitSize = ParsingUtils.split(infoField, infoFieldArray, VCFConstants.INFO_FIELD_SEPARATOR_CHAR, false);
-            for (int i = 0; i < infoFieldSplitSize; i++) {
-                String key;
-                Object value;
-
-                int eqI = infoFieldArray[i].indexOf("=");
-                if ( eqI != -1 ) {
-                    key = infoFieldArray[i].substring(0, eqI);
-                    String str = infoFieldArray[i].substring(eqI+1);
-
-                    // split on the INFO field separator
-                    int infoValueSplitSize = ParsingUtils.split(str, infoValueArray, VCFConstants.INFO_FIELD_ARRAY_SEPARATOR_CHAR, false);
-                    if ( infoValueSplitSize == 1 ) {
-                        value = infoValueArray[0];
-                    } else {
-                        ArrayList<String> valueList = new ArrayList<String>(infoValueSplitSize);
-                        for ( int j = 0; j < infoValueSplitSize; j++ )
-                            valueList.add(infoValueArray[j]);
-                        value = valueList;
-                    }
-                } else {
-                    key = infoFieldArray[i];
-                    value = true;
-                }
+        if ( infoField.equals(VCFConstants.EMPTY_INFO_FIELD) )
+            return new HashMap<String, Object>();
 
-                attributes.put(key, value);
-            }
-        }
+        if ( infoField.indexOf("\t") != -1 || infoField.indexOf(" ") != -1 )
+            generateException("The VCF specification does not allow for whitespace in the INFO field");
 
-        return attributes;
+        return new LazyVCFInfoMap(infoField, MAX_INFO_FIELDS, MAX_INFO_VALUES);
     }
 
     /**
@@ -83,6 +83,16 @@ public abstract class IndexingVCFWriter implements VCFWriter {
         return outputStream;
     }
 
+    /**
+     * Subclasses that encode records into a buffer before writing them to getOutputStream()
+     * report how many bytes are pending here, so on-the-fly indexing sees the true file offset
+     *
+     * @return the number of bytes added to this writer that have not yet reached getOutputStream()
+     */
+    protected long getBufferedByteCount() {
+        return 0;
+    }
+
     @Ensures("result != null")
     public String getStreamName() {
         return name;
@@ -115,7 +125,7 @@ public abstract class IndexingVCFWriter implements VCFWriter {
     public void add(VariantContext vc) {
         // if we are doing on the fly indexing, add the record ***before*** we write any bytes
         if ( indexer != null )
-            indexer.addFeature(vc, positionalStream.getPosition());
+            indexer.addFeature(vc, positionalStream.getPosition() + getBufferedByteCount());
     }
 
     /**
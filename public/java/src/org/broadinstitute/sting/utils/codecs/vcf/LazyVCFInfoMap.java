@@ -0,0 +1,296 @@
+/*
+ * Copyright (c) 2012, The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.broadinstitute.sting.utils.codecs.vcf;
+
+import com.google.java.contract.Requires;
+
+import java.util.*;
+
+/**
+ * The attributes of a VCF record, decoded from its INFO field only as they are needed
+ *
+ * <p>
+ * Most walkers reading VCF files as ROD tracks only look at the position and alleles of
+ * each record, or at one or two of its attributes, so splitting every INFO field into a map
+ * of Strings and Lists is mostly wasted work.  This map keeps the raw INFO field instead.
+ * The first lookup finds where each key and value lies in the field, without copying any of
+ * it, and each value is only split out the first time it is asked for.  Anything that needs
+ * all of the attributes -- iterating over them, or changing them -- decodes the whole field
+ * into a HashMap, exactly as the codec used to, and the map works from that from then on.
+ * </p>
+ *
+ * <p>
+ * Keys and values are split just as ParsingUtils.split splits them, so the decoded attributes
+ * are the same as those of the eager parser, duplicated keys and all.
+ * </p>
+ */
+public class LazyVCFInfoMap extends AbstractMap<String, Object> {
+    /** the raw INFO field; never empty or the missing value */
+    private String infoField;
+
+    /** the most fields, and values of a field, the eager parser would split out */
+    private final int maxFields, maxValues;
+
+    /** the number of fields in infoField, or -1 if we haven't looked for them yet */
+    private int nFields = -1;
+
+    /** the offsets of the key, the value (-1 for flags), and the end of each field */
+    private int[] keyStarts, keyEnds, valueStarts, fieldEnds;
+
+    /** the values we have decoded so far, by field */
+    private Object[] values;
+
+    /** all of the attributes, once something has needed them all */
+    private HashMap<String, Object> decoded = null;
+
+    /**
+     * @param infoField the INFO field of a record, neither empty nor the missing value
+     * @param maxFields the most fields to split the INFO field into
+     * @param maxValues the most values to split a field into
+     */
+    @Requires({"infoField != null", "infoField.length() > 0", "maxFields > 0", "maxValues > 0"})
+    public LazyVCFInfoMap(final String infoField, final int maxFields, final int maxValues) {
+        this.infoField = infoField;
+        this.maxFields = maxFields;
+        this.maxValues = maxValues;
+    }
+
+    /**
+     * @return true if the whole INFO field has been decoded
+     */
+    public synchronized boolean isDecoded() {
+        return decoded != null;
+    }
+
+    // --------------------------------------------------------------------------------
+    //
+    // lookups that only decode the requested values
+    //
+    // --------------------------------------------------------------------------------
+
+    @Override
+    public synchronized Object get(final Object key) {
+        if ( decoded != null )
+            return decoded.get(key);
+        final int field = findField(key);
+        return field == -1 ? null : getValue(field);
+    }
+
+    @Override
+    public synchronized boolean containsKey(final Object key) {
+        return decoded != null ? decoded.containsKey(key) : findField(key) != -1;
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        // a non-empty INFO field always has at least one field
+        return decoded != null ? decoded.isEmpty() : false;
+    }
+
+    @Override
+    public synchronized int size() {
+        if ( decoded != null )
+            return decoded.size();
+
+        // count each key once, as the HashMap would
+        findFields();
+        int size = 0;
+        for ( int i = 0; i < nFields; i++ ) {
+            if ( findLastField(keyStarts[i], keyEnds[i] - keyStarts[i], i + 1) == -1 )
+                size++;
+        }
+        return size;
+    }
+
+    // --------------------------------------------------------------------------------
+    //
+    // everything else works on the decoded attributes
+    //
+    // --------------------------------------------------------------------------------
+
+    @Override
+    public synchronized Set<Entry<String, Object>> entrySet() {
+        return decode().entrySet();
+    }
+
+    @Override
+    public synchronized Object put(final String key, final Object value) {
+        return decode().put(key, value);
+    }
+
+    @Override
+    public synchronized Object remove(final Object key) {
+        return decode().remove(key);
+    }
+
+    @Override
+    public synchronized void clear() {
+        decode().clear();
+    }
+
+    /**
+     * Decodes all of the attributes, if we haven't already
+     *
+     * @return the decoded attributes
+     */
+    private HashMap<String, Object> decode() {
+        if ( decoded == null ) {
+            findFields();
+            final HashMap<String, Object> attributes = new HashMap<String, Object>();
+            for ( int i = 0; i < nFields; i++ )
+                attributes.put(infoField.substring(keyStarts[i], keyEnds[i]), getValue(i));
+
+            decoded = attributes;
+
+            // don't hold the raw data any longer
+            infoField = null;
+            keyStarts = keyEnds = valueStarts = fieldEnds = null;
+            values = null;
+        }
+        return decoded;
+    }
+
+    // --------------------------------------------------------------------------------
+    //
+    // parsing the raw INFO field
+    //
+    // --------------------------------------------------------------------------------
+
+    /**
+     * Finds the offsets of the keys and values of each field, without copying any of them
+     */
+    private void findFields() {
+        if ( nFields != -1 )
+            return;
+
+        int[] bounds = new int[16];
+        final int nBounds = split(0, infoField.length(), VCFConstants.INFO_FIELD_SEPARATOR_CHAR, maxFields, bounds);
+        if ( nBounds > bounds.length ) {
+            bounds = new int[nBounds];
+            split(0, infoField.length(), VCFConstants.INFO_FIELD_SEPARATOR_CHAR, maxFields, bounds);
+        }
+
+        nFields = nBounds / 2;
+        keyStarts = new int[nFields];
+        keyEnds = new int[nFields];
+        valueStarts = new int[nFields];
+        fieldEnds = new int[nFields];
+        values = new Object[nFields];
+        for ( int i = 0; i < nFields; i++ ) {
+            final int start = bounds[2*i], end = bounds[2*i+1];
+            final int eq = indexOf('=', start, end);
+            keyStarts[i] = start;
+            keyEnds[i] = eq == -1 ? end : eq;
+            valueStarts[i] = eq == -1 ? -1 : eq + 1;
+            fieldEnds[i] = end;
+        }
+    }
+
+    /**
+     * @return the field holding key, or -1 if there isn't one.  As with the HashMap, the last field with the key wins.
+     */
+    private int findField(final Object key) {
+        if ( ! (key instanceof String) )
+            return -1;
+        findFields();
+        final String s = (String)key;
+        for ( int i = nFields - 1; i >= 0; i-- ) {
+            if ( keyEnds[i] - keyStarts[i] == s.length() && infoField.regionMatches(keyStarts[i], s, 0, s.length()) )
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the last field from fromField on whose key is the length bytes of infoField at keyStart, or -1 if there isn't one
+     */
+    private int findLastField(final int keyStart, final int length, final int fromField) {
+        for ( int i = nFields - 1; i >= fromField; i-- ) {
+            if ( keyEnds[i] - keyStarts[i] == length && infoField.regionMatches(keyStarts[i], infoField, keyStart, length) )
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the value of field: true for flags, the String value of single values, or an ArrayList of the Strings of multiple values
+     */
+    private Object getValue(final int field) {
+        if ( values[field] == null ) {
+            if ( valueStarts[field] == -1 ) {
+                values[field] = true;
+            } else {
+                final int start = valueStarts[field], end = fieldEnds[field];
+                int[] bounds = new int[2];
+                final int nBounds = split(start, end, VCFConstants.INFO_FIELD_ARRAY_SEPARATOR_CHAR, maxValues, bounds);
+                if ( nBounds == 2 ) {
+                    values[field] = infoField.substring(bounds[0], bounds[1]);
+                } else {
+                    bounds = new int[nBounds];
+                    split(start, end, VCFConstants.INFO_FIELD_ARRAY_SEPARATOR_CHAR, maxValues, bounds);
+                    final ArrayList<String> valueList = new ArrayList<String>(nBounds / 2);
+                    for ( int i = 0; i < nBounds; i += 2 )
+                        valueList.add(infoField.substring(bounds[i], bounds[i+1]));
+                    values[field] = valueList;
+                }
+            }
+        }
+        return values[field];
+    }
+
+    /**
+     * Splits infoField[start, end) at each separator, as ParsingUtils.split(infoField.substring(start, end), tokens, separator, false)
+     * with an array of maxTokens tokens would.  Notably, a separator at the very start of the string doesn't split it at all.
+     *
+     * @param bounds filled with the start and end offset of each token, as far as it has room for them
+     * @return twice the number of tokens, which may be more than the length of bounds
+     */
+    private int split(final int start, final int end, final char separator, final int maxTokens, final int[] bounds) {
+        int nTokens = 0;
+        int tokenStart = start;
+        int next = indexOf(separator, start, end);
+        while ( next > start && nTokens < maxTokens ) {
+            addToken(bounds, nTokens++, tokenStart, next);
+            tokenStart = next + 1;
+            next = indexOf(separator, tokenStart, end);
+        }
+        if ( nTokens < maxTokens )
+            addToken(bounds, nTokens++, tokenStart, end);
+        return 2 * nTokens;
+    }
+
+    private static void addToken(final int[] bounds, final int token, final int start, final int end) {
+        if ( 2 * token + 1 < bounds.length ) {
+            bounds[2*token] = start;
+            bounds[2*token+1] = end;
+        }
+    }
+
+    private int indexOf(final char c, final int start, final int end) {
+        final int i = infoField.indexOf(c, start);
+        return i < end ? i : -1;
+    }
+}
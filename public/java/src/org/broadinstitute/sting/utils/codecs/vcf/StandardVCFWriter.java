@@ -28,18 +28,36 @@ import net.sf.samtools.SAMSequenceDictionary;
 import org.broad.tribble.TribbleException;
 import org.broad.tribble.util.ParsingUtils;
 import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
+import org.broadinstitute.sting.utils.instrumentation.HotPathMetrics;
 import org.broadinstitute.sting.utils.variantcontext.*;
 
 import java.io.*;
 import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.*;
 import java.util.*;
 
 /**
  * this class writes VCF files
+ *
+ * Records are encoded straight into a large reusable byte buffer, which is handed to the output stream
+ * in bulk.  The sorted INFO and FORMAT keys of the last record are remembered, as most records of a file
+ * share the same keys, and numbers are formatted without going through String.format where we can prove
+ * the result is the same.  The bytes written are exactly those of a text writer over the same stream.
  */
 public class StandardVCFWriter extends IndexingVCFWriter {
-    // the print stream we're writing to
-    final protected BufferedWriter mWriter;
+    // records are gathered in a buffer of this size before being written to the output stream
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    // text is encoded as an OutputStreamWriter would, with the ASCII characters of ASCII-compatible charsets copied directly
+    private static final Charset CHARSET = Charset.defaultCharset();
+    private static final boolean ASCII_COMPATIBLE_CHARSET = isAsciiCompatible(CHARSET);
+
+    // doubles are only formatted by hand when String.format would produce plain digits in the default locale
+    private static final boolean FAST_DOUBLE_FORMATTING = String.format(VCFConstants.DOUBLE_PRECISION_FORMAT_STRING, -1234.5678).equals("-1234.57");
+    private static final double MAX_FAST_DOUBLE = 1e7;
+    private static final double ROUNDING_TIE_TOLERANCE = 1e-12;
 
     // should we write genotypes or just sites?
     final protected boolean doNotWriteGenotypes;
@@ -50,6 +68,25 @@ public class StandardVCFWriter extends IndexingVCFWriter {
     // were filters applied?
     protected boolean filtersWereAppliedToContext = false;
 
+    // the encoded bytes that haven't been written to the output stream yet
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private int bufferLength = 0;
+    private final CharsetEncoder encoder = CHARSET.newEncoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    // callers writing to a stream of their own may interleave other output with ours, so we hand each record over as soon as it is done
+    private final boolean flushEveryRecord;
+
+    // the INFO keys of the last record, in iteration order and in the order we write them
+    private String[] infoKeys = null;
+    private String[] sortedInfoKeys = null;
+    private boolean[] sortedInfoKeyIsFlag = null;
+
+    // the FORMAT keys (other than GT) of the last record, and the order we write them in
+    private final Set<String> genotypeKeys = new HashSet<String>();
+    private final Set<String> lastGenotypeKeys = new HashSet<String>();
+    private boolean lastSawGoodGT = false;
+    private String[] sortedGenotypeKeys = null;
+
     /**         
      * create a VCF writer, given a file to write to
      *
@@ -75,8 +112,8 @@ public class StandardVCFWriter extends IndexingVCFWriter {
 
     public StandardVCFWriter(final File location, final OutputStream output, final SAMSequenceDictionary refDict, final boolean enableOnTheFlyIndexing, boolean doNotWriteGenotypes) {
         super(writerName(location, output), location, output, refDict, enableOnTheFlyIndexing);
-        mWriter = new BufferedWriter(new OutputStreamWriter(getOutputStream())); // todo -- fix buffer size
         this.doNotWriteGenotypes = doNotWriteGenotypes;
+        this.flushEveryRecord = location == null;
     }
 
     // --------------------------------------------------------------------------------
@@ -91,7 +128,7 @@ public class StandardVCFWriter extends IndexingVCFWriter {
         
         try {
             // the file format field needs to be written first
-            mWriter.write(VCFHeader.METADATA_INDICATOR + VCFHeaderVersion.VCF4_1.getFormatString() + "=" + VCFHeaderVersion.VCF4_1.getVersionString() + "\n");
+            write(VCFHeader.METADATA_INDICATOR + VCFHeaderVersion.VCF4_1.getFormatString() + "=" + VCFHeaderVersion.VCF4_1.getVersionString() + "\n");
 
             for ( VCFHeaderLine line : mHeader.getMetaData() ) {
                 if ( VCFHeaderVersion.isFormatString(line.getKey()) )
@@ -101,32 +138,36 @@ public class StandardVCFWriter extends IndexingVCFWriter {
                 if ( line instanceof VCFFilterHeaderLine)
                     filtersWereAppliedToContext = true;
 
-                mWriter.write(VCFHeader.METADATA_INDICATOR);
-                mWriter.write(line.toString());
-                mWriter.write("\n");
+                write(VCFHeader.METADATA_INDICATOR);
+                write(line.toString());
+                write('\n');
             }
 
             // write out the column line
-            mWriter.write(VCFHeader.HEADER_INDICATOR);
+            write(VCFHeader.HEADER_INDICATOR);
             for ( VCFHeader.HEADER_FIELDS field : mHeader.getHeaderFields() ) {
-                mWriter.write(field.toString());
-                mWriter.write(VCFConstants.FIELD_SEPARATOR);
+                write(field.toString());
+                write(VCFConstants.FIELD_SEPARATOR_CHAR);
             }
 
             if ( mHeader.hasGenotypingData() ) {
-                mWriter.write("FORMAT");
+                write("FORMAT");
                 for ( String sample : mHeader.getGenotypeSamples() ) {
-                    mWriter.write(VCFConstants.FIELD_SEPARATOR);
-                    mWriter.write(sample);
+                    write(VCFConstants.FIELD_SEPARATOR_CHAR);
+                    write(sample);
                 }
             }
 
-            mWriter.write("\n");
-            mWriter.flush();  // necessary so that writing to an output stream will work
+            write('\n');
+            flushBuffer();  // necessary so that writing to an output stream will work
         }
         catch (IOException e) {
             throw new ReviewedStingException("IOException writing the VCF header to " + getStreamName(), e);
         }
+
+        // the key orders we remember depend on the header
+        infoKeys = null;
+        sortedGenotypeKeys = null;
     }
 
     /**
@@ -136,8 +177,9 @@ public class StandardVCFWriter extends IndexingVCFWriter {
     public void close() {
         // try to close the vcf stream
         try {
-            mWriter.flush();
-            mWriter.close();
+            finishEncoding();
+            flushBuffer();
+            getOutputStream().close();
         } catch (IOException e) {
             throw new ReviewedStingException("Unable to close " + getStreamName(), e);
         }
@@ -145,6 +187,11 @@ public class StandardVCFWriter extends IndexingVCFWriter {
         super.close();
     }
 
+    @Override
+    protected long getBufferedByteCount() {
+        return bufferLength;
+    }
+
     /**
      * add a record to the file
      *
@@ -155,103 +202,94 @@ public class StandardVCFWriter extends IndexingVCFWriter {
         if ( mHeader == null )
             throw new IllegalStateException("The VCF Header must be written before records can be added: " + getStreamName());
 
-        if ( doNotWriteGenotypes )
-            vc = new VariantContextBuilder(vc).noGenotypes().make();
-
+        HotPathMetrics.begin(HotPathMetrics.Stage.VCF_WRITE);
         try {
+            if ( doNotWriteGenotypes )
+                vc = new VariantContextBuilder(vc).noGenotypes().make();
+
             vc = VariantContextUtils.createVariantContextWithPaddedAlleles(vc, false);
             super.add(vc);
 
-            Map<Allele, String> alleleMap = new HashMap<Allele, String>(vc.getAlleles().size());
-            alleleMap.put(Allele.NO_CALL, VCFConstants.EMPTY_ALLELE); // convenience for lookup
-
             // CHROM
-            mWriter.write(vc.getChr());
-            mWriter.write(VCFConstants.FIELD_SEPARATOR);
+            write(vc.getChr());
+            write(VCFConstants.FIELD_SEPARATOR_CHAR);
 
             // POS
-            mWriter.write(String.valueOf(vc.getStart()));
-            mWriter.write(VCFConstants.FIELD_SEPARATOR);
+            write(vc.getStart());
+            write(VCFConstants.FIELD_SEPARATOR_CHAR);
 
             // ID
-            String ID = vc.getID();
-            mWriter.write(ID);
-            mWriter.write(VCFConstants.FIELD_SEPARATOR);
+            write(vc.getID());
+            write(VCFConstants.FIELD_SEPARATOR_CHAR);
 
             // REF
-            alleleMap.put(vc.getReference(), "0");
-            String refString = vc.getReference().getDisplayString();
-            mWriter.write(refString);
-            mWriter.write(VCFConstants.FIELD_SEPARATOR);
+            write(vc.getReference());
+            write(VCFConstants.FIELD_SEPARATOR_CHAR);
 
             // ALT
             if ( vc.isVariant() ) {
-                Allele altAllele = vc.getAlternateAllele(0);
-                alleleMap.put(altAllele, "1");
-                String alt = altAllele.getDisplayString();
-                mWriter.write(alt);
-
-                for (int i = 1; i < vc.getAlternateAlleles().size(); i++) {
-                    altAllele = vc.getAlternateAllele(i);
-                    alleleMap.put(altAllele, String.valueOf(i+1));
-                    alt = altAllele.getDisplayString();
-                    mWriter.write(",");
-                    mWriter.write(alt);
+                final List<Allele> altAlleles = vc.getAlternateAlleles();
+                for (int i = 0; i < altAlleles.size(); i++) {
+                    if ( i > 0 )
+                        write(',');
+                    write(altAlleles.get(i));
                 }
             } else {
-                mWriter.write(VCFConstants.EMPTY_ALTERNATE_ALLELE_FIELD);
+                write(VCFConstants.EMPTY_ALTERNATE_ALLELE_FIELD);
             }
-            mWriter.write(VCFConstants.FIELD_SEPARATOR);
+            write(VCFConstants.FIELD_SEPARATOR_CHAR);
 
             // QUAL
             if ( !vc.hasLog10PError() )
-                mWriter.write(VCFConstants.MISSING_VALUE_v4);
+                write(VCFConstants.MISSING_VALUE_v4);
             else
-                mWriter.write(getQualValue(vc.getPhredScaledQual()));
-            mWriter.write(VCFConstants.FIELD_SEPARATOR);
+                writeQual(vc.getPhredScaledQual());
+            write(VCFConstants.FIELD_SEPARATOR_CHAR);
 
             // FILTER
-            String filters = getFilterString(vc, filtersWereAppliedToContext);
-            mWriter.write(filters);
-            mWriter.write(VCFConstants.FIELD_SEPARATOR);
+            if ( vc.isFiltered() && vc.getFilters().size() == 1 )
+                write(vc.getFilters().iterator().next());
+            else
+                write(getFilterString(vc, filtersWereAppliedToContext));
+            write(VCFConstants.FIELD_SEPARATOR_CHAR);
 
             // INFO
-            Map<String, String> infoFields = new TreeMap<String, String>();
-            for ( Map.Entry<String, Object> field : vc.getAttributes().entrySet() ) {
-                String key = field.getKey();
-                String outputValue = formatVCFField(field.getValue());
-                if ( outputValue != null )
-                    infoFields.put(key, outputValue);
-            }
-            writeInfoString(infoFields);
+            writeInfoString(vc.getAttributes());
 
             // FORMAT
             final GenotypesContext gc = vc.getGenotypes();
-            if ( gc instanceof LazyGenotypesContext && ((LazyGenotypesContext)gc).getUnparsedGenotypeData() != null) {
-                mWriter.write(VCFConstants.FIELD_SEPARATOR);
-                mWriter.write(((LazyGenotypesContext)gc).getUnparsedGenotypeData().toString());
+            // only text genotypes from the VCF codec can be passed through undecoded
+            if ( gc instanceof LazyGenotypesContext && ((LazyGenotypesContext)gc).getUnparsedGenotypeData() instanceof String ) {
+                write(VCFConstants.FIELD_SEPARATOR_CHAR);
+                write(((LazyGenotypesContext)gc).getUnparsedGenotypeData().toString());
             } else {
-                List<String> genotypeAttributeKeys = new ArrayList<String>();
+                String[] genotypeAttributeKeys = null;
                 if ( vc.hasGenotypes() ) {
-                    genotypeAttributeKeys.addAll(calcVCFGenotypeKeys(vc));
+                    genotypeAttributeKeys = calcVCFGenotypeKeys(vc);
                 } else if ( mHeader.hasGenotypingData() ) {
                     // this needs to be done in case all samples are no-calls
-                    genotypeAttributeKeys.add(VCFConstants.GENOTYPE_KEY);
+                    genotypeAttributeKeys = new String[]{ VCFConstants.GENOTYPE_KEY };
                 }
 
-                if ( genotypeAttributeKeys.size() > 0 ) {
-                    String genotypeFormatString = ParsingUtils.join(VCFConstants.GENOTYPE_FIELD_SEPARATOR, genotypeAttributeKeys);
-                    mWriter.write(VCFConstants.FIELD_SEPARATOR);
-                    mWriter.write(genotypeFormatString);
+                if ( genotypeAttributeKeys != null && genotypeAttributeKeys.length > 0 ) {
+                    write(VCFConstants.FIELD_SEPARATOR_CHAR);
+                    for ( int i = 0; i < genotypeAttributeKeys.length; i++ ) {
+                        if ( i > 0 )
+                            write(VCFConstants.GENOTYPE_FIELD_SEPARATOR_CHAR);
+                        write(genotypeAttributeKeys[i]);
+                    }
 
-                    addGenotypeData(vc, alleleMap, genotypeAttributeKeys);
+                    addGenotypeData(vc, genotypeAttributeKeys);
                 }
             }
             
-            mWriter.write("\n");
-            mWriter.flush();  // necessary so that writing to an output stream will work
+            write('\n');
+            if ( flushEveryRecord || bufferLength >= BUFFER_SIZE )
+                flushBuffer();
         } catch (IOException e) {
             throw new RuntimeException("Unable to write the VCF object to " + getStreamName());
+        } finally {
+            HotPathMetrics.end(HotPathMetrics.Stage.VCF_WRITE, 1);
         }
     }
 
@@ -269,42 +307,64 @@ public class StandardVCFWriter extends IndexingVCFWriter {
         return vc.isFiltered() ? ParsingUtils.join(";", ParsingUtils.sortList(vc.getFilters())) : (forcePASS || vc.filtersWereApplied() ? VCFConstants.PASSES_FILTERS_v4 : VCFConstants.UNFILTERED);
     }
 
-    private String getQualValue(double qual) {
-        String s = String.format(VCFConstants.DOUBLE_PRECISION_FORMAT_STRING, qual);
-        if ( s.endsWith(VCFConstants.DOUBLE_PRECISION_INT_SUFFIX) )
-            s = s.substring(0, s.length() - VCFConstants.DOUBLE_PRECISION_INT_SUFFIX.length());
-        return s;
-    }
-
     /**
-     * create the info string; assumes that no values are null
+     * write the info string, in the sorted order of its keys; values formatted as null are skipped
      *
-     * @param infoFields a map of info fields
-     * @throws IOException for writer
+     * @param attributes the attributes of the record
      */
-    private void writeInfoString(Map<String, String> infoFields) throws IOException {
-        if ( infoFields.isEmpty() ) {
-            mWriter.write(VCFConstants.EMPTY_INFO_FIELD);
-            return;
-        }
+    private void writeInfoString(final Map<String, Object> attributes) {
+        updateInfoKeys(attributes);
 
         boolean isFirst = true;
-        for ( Map.Entry<String, String> entry : infoFields.entrySet() ) {
+        for ( int i = 0; i < sortedInfoKeys.length; i++ ) {
+            final Object value = attributes.get(sortedInfoKeys[i]);
+            if ( Boolean.FALSE.equals(value) )
+                continue;
+
             if ( isFirst )
                 isFirst = false;
             else
-                mWriter.write(VCFConstants.INFO_FIELD_SEPARATOR);
+                write(VCFConstants.INFO_FIELD_SEPARATOR_CHAR);
+
+            write(sortedInfoKeys[i]);
 
-            String key = entry.getKey();
-            mWriter.write(key);
+            // the value goes in after the '=', which we take back out for empty values and flags
+            final int valueSeparator = bufferLength;
+            write('=');
+            final int valueStart = bufferLength;
+            writeVCFField(value);
+            if ( bufferLength == valueStart || sortedInfoKeyIsFlag[i] )
+                bufferLength = valueSeparator;
+        }
+
+        if ( isFirst )
+            write(VCFConstants.EMPTY_INFO_FIELD);
+    }
 
-            if ( !entry.getValue().equals("") ) {
-                VCFInfoHeaderLine metaData = mHeader.getInfoHeaderLine(key);
-                if ( metaData == null || metaData.getCountType() != VCFHeaderLineCount.INTEGER || metaData.getCount() != 0 ) {
-                    mWriter.write("=");
-                    mWriter.write(entry.getValue());
+    /**
+     * Makes sortedInfoKeys hold the keys of attributes in sorted order.  We only sort them
+     * again when they differ from those of the last record.
+     */
+    private void updateInfoKeys(final Map<String, Object> attributes) {
+        if ( infoKeys != null && attributes.size() == infoKeys.length ) {
+            int i = 0;
+            for ( final String key : attributes.keySet() ) {
+                if ( ! key.equals(infoKeys[i++]) ) {
+                    i = -1;
+                    break;
                 }
             }
+            if ( i != -1 )
+                return;
+        }
+
+        infoKeys = attributes.keySet().toArray(new String[attributes.size()]);
+        sortedInfoKeys = infoKeys.clone();
+        Arrays.sort(sortedInfoKeys);
+        sortedInfoKeyIsFlag = new boolean[sortedInfoKeys.length];
+        for ( int i = 0; i < sortedInfoKeys.length; i++ ) {
+            final VCFInfoHeaderLine metaData = mHeader.getInfoHeaderLine(sortedInfoKeys[i]);
+            sortedInfoKeyIsFlag[i] = metaData != null && metaData.getCountType() == VCFHeaderLineCount.INTEGER && metaData.getCount() == 0;
         }
     }
 
@@ -313,100 +373,129 @@ public class StandardVCFWriter extends IndexingVCFWriter {
      *
      * @param vc                     the variant context
      * @param genotypeFormatKeys  Genotype formatting string
-     * @param alleleMap              alleles for this context
-     * @throws IOException for writer
      */
-    private void addGenotypeData(VariantContext vc, Map<Allele, String> alleleMap, List<String> genotypeFormatKeys)
-    throws IOException {
+    private void addGenotypeData(VariantContext vc, String[] genotypeFormatKeys) {
+        final boolean hasGT = genotypeFormatKeys[0].equals(VCFConstants.GENOTYPE_KEY);
+
+        // If we have a missing field but multiple values are expected, we need to write all of them.
+        // For example, if Number=2, the value has to be ".,."
+        final String[] missingValues = new String[genotypeFormatKeys.length];
+        for ( int k = 0; k < genotypeFormatKeys.length; k++ ) {
+            final VCFFormatHeaderLine metaData = mHeader.getFormatHeaderLine(genotypeFormatKeys[k]);
+            if ( metaData != null ) {
+                final int numInFormatField = metaData.getCount(vc.getAlternateAlleles().size());
+                if ( numInFormatField > 1 ) {
+                    final StringBuilder sb = new StringBuilder(VCFConstants.MISSING_VALUE_v4);
+                    for ( int i = 1; i < numInFormatField; i++ ) {
+                        sb.append(",");
+                        sb.append(VCFConstants.MISSING_VALUE_v4);
+                    }
+                    missingValues[k] = sb.toString();
+                }
+            }
+        }
 
         for ( String sample : mHeader.getGenotypeSamples() ) {
-            mWriter.write(VCFConstants.FIELD_SEPARATOR);
+            write(VCFConstants.FIELD_SEPARATOR_CHAR);
 
             Genotype g = vc.getGenotype(sample);
             if ( g == null ) {
                 // TODO -- The VariantContext needs to know what the general ploidy is of the samples
                 // TODO -- We shouldn't be assuming diploid genotypes here!
-                mWriter.write(VCFConstants.EMPTY_GENOTYPE);
+                write(VCFConstants.EMPTY_GENOTYPE);
                 continue;
             }
 
-            List<String> attrs = new ArrayList<String>(genotypeFormatKeys.size());
-            for ( String key : genotypeFormatKeys ) {
+            // trailing missing values are stripped off, so we only keep the bytes up to the end of the last real value
+            int end = bufferLength;
+            int nAttributes = 0;
+            for ( int k = 0; k < genotypeFormatKeys.length; k++ ) {
+                final String key = genotypeFormatKeys[k];
 
                 if ( key.equals(VCFConstants.GENOTYPE_KEY) ) {
                     if ( !g.isAvailable() ) {
                         throw new ReviewedStingException("GTs cannot be missing for some samples if they are available for others in the record");
                     }
 
-                    writeAllele(g.getAllele(0), alleleMap);
+                    writeAllele(g.getAllele(0), vc);
                     for (int i = 1; i < g.getPloidy(); i++) {
-                        mWriter.write(g.isPhased() ? VCFConstants.PHASED : VCFConstants.UNPHASED);
-                        writeAllele(g.getAllele(i), alleleMap);
+                        write(g.isPhased() ? VCFConstants.PHASED : VCFConstants.UNPHASED);
+                        writeAllele(g.getAllele(i), vc);
                     }
 
+                    end = bufferLength;
                     continue;
                 }
 
-                Object val = g.hasAttribute(key) ? g.getAttribute(key) : VCFConstants.MISSING_VALUE_v4;
+                final int attributeStart = bufferLength;
+                if ( nAttributes > 0 || hasGT )
+                    write(VCFConstants.GENOTYPE_FIELD_SEPARATOR_CHAR);
+                final int valueStart = bufferLength;
+
+                Object val;
 
                 // some exceptions
                 if ( key.equals(VCFConstants.GENOTYPE_QUALITY_KEY) ) {
-                    if ( ! g.hasLog10PError() )
-                        val = VCFConstants.MISSING_VALUE_v4;
-                    else {
-                        val = getQualValue(Math.min(g.getPhredScaledQual(), VCFConstants.MAX_GENOTYPE_QUAL));
+                    if ( g.hasLog10PError() ) {
+                        writeQual(Math.min(g.getPhredScaledQual(), VCFConstants.MAX_GENOTYPE_QUAL));
+                        nAttributes++;
+                        end = bufferLength;
+                        continue;
                     }
+                    val = VCFConstants.MISSING_VALUE_v4;
                 } else if ( key.equals(VCFConstants.GENOTYPE_FILTER_KEY) ) {
                     val = g.isFiltered() ? ParsingUtils.join(";", ParsingUtils.sortList(g.getFilters())) : (g.filtersWereApplied() ? VCFConstants.PASSES_FILTERS_v4 : VCFConstants.UNFILTERED);
+                } else {
+                    val = g.hasAttribute(key) ? g.getAttribute(key) : VCFConstants.MISSING_VALUE_v4;
                 }
 
-                VCFFormatHeaderLine metaData = mHeader.getFormatHeaderLine(key);
-                if ( metaData != null ) {
-                    int numInFormatField = metaData.getCount(vc.getAlternateAlleles().size());
-                    if ( numInFormatField > 1 && val.equals(VCFConstants.MISSING_VALUE_v4) ) {
-                        // If we have a missing field but multiple values are expected, we need to construct a new string with all fields.
-                        // For example, if Number=2, the string has to be ".,."
-                        StringBuilder sb = new StringBuilder(VCFConstants.MISSING_VALUE_v4);
-                        for ( int i = 1; i < numInFormatField; i++ ) {
-                            sb.append(",");
-                            sb.append(VCFConstants.MISSING_VALUE_v4);
-                        }
-                        val = sb.toString();
-                    }
-                }
+                if ( missingValues[k] != null && val.equals(VCFConstants.MISSING_VALUE_v4) )
+                    val = missingValues[k];
 
                 // assume that if key is absent, then the given string encoding suffices
-                String outputValue = formatVCFField(val);
-                if ( outputValue != null )
-                    attrs.add(outputValue);
-            }
+                if ( ! writeVCFField(val) ) {
+                    bufferLength = attributeStart;
+                    continue;
+                }
 
-            // strip off trailing missing values
-            for (int i = attrs.size()-1; i >= 0; i--) {
-                if ( isMissingValue(attrs.get(i)) )
-                    attrs.remove(i);
-                else
-                    break;
+                nAttributes++;
+                if ( ! isMissingValue(valueStart, bufferLength) )
+                    end = bufferLength;
             }
 
-            for (int i = 0; i < attrs.size(); i++) {
-                if ( i > 0 || genotypeFormatKeys.contains(VCFConstants.GENOTYPE_KEY) )
-                    mWriter.write(VCFConstants.GENOTYPE_FIELD_SEPARATOR);
-                mWriter.write(attrs.get(i));
-            }
+            bufferLength = end;
         }
     }
 
-    private boolean isMissingValue(String s) {
+    private boolean isMissingValue(final int start, final int end) {
         // we need to deal with the case that it's a list of missing values
-        return (countOccurrences(VCFConstants.MISSING_VALUE_v4.charAt(0), s) + countOccurrences(',', s) == s.length());
+        for ( int i = start; i < end; i++ ) {
+            if ( buffer[i] != VCFConstants.MISSING_VALUE_v4.charAt(0) && buffer[i] != ',' )
+                return false;
+        }
+        return true;
     }
 
-    private void writeAllele(Allele allele, Map<Allele, String> alleleMap) throws IOException {
-        String encoding = alleleMap.get(allele);
-        if ( encoding == null )
+    /**
+     * Writes the index of allele in the alleles of vc, or '.' for a no-call
+     */
+    private void writeAllele(final Allele allele, final VariantContext vc) {
+        if ( vc.isVariant() ) {
+            final List<Allele> altAlleles = vc.getAlternateAlleles();
+            for ( int i = altAlleles.size() - 1; i >= 0; i-- ) {
+                if ( altAlleles.get(i).equals(allele) ) {
+                    write(i + 1);
+                    return;
+                }
+            }
+        }
+
+        if ( vc.getReference().equals(allele) )
+            write('0');
+        else if ( Allele.NO_CALL.equals(allele) )
+            write(VCFConstants.EMPTY_ALLELE);
+        else
             throw new TribbleException.InternalCodecException("Allele " + allele + " is not an allele in the variant context");
-        mWriter.write(encoding);
     }
 
     public static String formatVCFField(Object val) {
@@ -435,14 +524,71 @@ public class StandardVCFWriter extends IndexingVCFWriter {
         return result;
     }
 
-    private static List<String> calcVCFGenotypeKeys(VariantContext vc) {
-        Set<String> keys = new HashSet<String>();
+    /**
+     * Writes val into the buffer exactly as formatVCFField would format it
+     *
+     * @return false if formatVCFField would return null for val, in which case nothing was written
+     */
+    private boolean writeVCFField(final Object val) {
+        if ( val instanceof String )
+            write((String)val);
+        else if ( val instanceof Integer )
+            write(((Integer)val).intValue());
+        else if ( val instanceof Double )
+            writeDouble((Double)val);
+        else if ( val instanceof Boolean )
+            return (Boolean)val; // nothing for true, skipped for false
+        else if ( val instanceof List && isSimpleList((List)val) ) {
+            final List list = (List)val;
+            if ( list.isEmpty() )
+                write(VCFConstants.MISSING_VALUE_v4);
+            for ( int i = 0; i < list.size(); i++ ) {
+                if ( i > 0 )
+                    write(',');
+                writeVCFField(list.get(i));
+            }
+        } else if ( val instanceof int[] ) {
+            final int[] values = (int[])val;
+            if ( values.length == 0 )
+                write(VCFConstants.MISSING_VALUE_v4);
+            for ( int i = 0; i < values.length; i++ ) {
+                if ( i > 0 )
+                    write(',');
+                write(values[i]);
+            }
+        } else {
+            final String s = formatVCFField(val);
+            if ( s == null )
+                return false;
+            write(s);
+        }
+
+        return true;
+    }
+
+    /**
+     * @return true if the elements of list are all Strings, Integers, Doubles or null, which writeVCFField formats one by one
+     */
+    private static boolean isSimpleList(final List list) {
+        for ( int i = 0; i < list.size(); i++ ) {
+            final Object o = list.get(i);
+            if ( o != null && !(o instanceof String) && !(o instanceof Integer) && !(o instanceof Double) )
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the FORMAT keys of vc, with GT first, sorting them again only if they differ from those of the last record
+     */
+    private String[] calcVCFGenotypeKeys(VariantContext vc) {
+        genotypeKeys.clear();
 
         boolean sawGoodGT = false;
         boolean sawGoodQual = false;
         boolean sawGenotypeFilter = false;
         for ( final Genotype g : vc.getGenotypes() ) {
-            keys.addAll(g.getAttributes().keySet());
+            genotypeKeys.addAll(g.getAttributes().keySet());
             if ( g.isAvailable() )
                 sawGoodGT = true;
             if ( g.hasLog10PError() )
@@ -452,30 +598,201 @@ public class StandardVCFWriter extends IndexingVCFWriter {
         }
 
         if ( sawGoodQual )
-            keys.add(VCFConstants.GENOTYPE_QUALITY_KEY);
+            genotypeKeys.add(VCFConstants.GENOTYPE_QUALITY_KEY);
 
         if (sawGenotypeFilter)
-            keys.add(VCFConstants.GENOTYPE_FILTER_KEY);
+            genotypeKeys.add(VCFConstants.GENOTYPE_FILTER_KEY);
 
-        List<String> sortedList = ParsingUtils.sortList(new ArrayList<String>(keys));
+        if ( sortedGenotypeKeys != null && sawGoodGT == lastSawGoodGT && genotypeKeys.equals(lastGenotypeKeys) )
+            return sortedGenotypeKeys;
+
+        final String[] sortedKeys = genotypeKeys.toArray(new String[genotypeKeys.size()]);
+        Arrays.sort(sortedKeys);
 
         // make sure the GT is first
         if ( sawGoodGT ) {
-            List<String> newList = new ArrayList<String>(sortedList.size()+1);
-            newList.add(VCFConstants.GENOTYPE_KEY);
-            newList.addAll(sortedList);
-            sortedList = newList;
+            sortedGenotypeKeys = new String[sortedKeys.length + 1];
+            sortedGenotypeKeys[0] = VCFConstants.GENOTYPE_KEY;
+            System.arraycopy(sortedKeys, 0, sortedGenotypeKeys, 1, sortedKeys.length);
+        } else {
+            sortedGenotypeKeys = sortedKeys;
+        }
+
+        lastGenotypeKeys.clear();
+        lastGenotypeKeys.addAll(genotypeKeys);
+        lastSawGoodGT = sawGoodGT;
+        return sortedGenotypeKeys;
+    }
+
+    // --------------------------------------------------------------------------------
+    //
+    // encoding into the buffer
+    //
+    // --------------------------------------------------------------------------------
+
+    private void ensureCapacity(final int capacity) {
+        if ( capacity > buffer.length )
+            buffer = Arrays.copyOf(buffer, Math.max(capacity, 2 * buffer.length));
+    }
+
+    private void flushBuffer() throws IOException {
+        if ( bufferLength > 0 ) {
+            getOutputStream().write(buffer, 0, bufferLength);
+            bufferLength = 0;
+        }
+        getOutputStream().flush();
+    }
+
+    private void write(final char c) {
+        if ( ASCII_COMPATIBLE_CHARSET && c < 0x80 ) {
+            ensureCapacity(bufferLength + 1);
+            buffer[bufferLength++] = (byte)c;
+        } else {
+            encode(String.valueOf(c));
         }
+    }
 
-        return sortedList;
+    private void write(final String s) {
+        final int length = s.length();
+        ensureCapacity(bufferLength + length);
+        if ( ASCII_COMPATIBLE_CHARSET ) {
+            for ( int i = 0; i < length; i++ ) {
+                final char c = s.charAt(i);
+                if ( c >= 0x80 ) {
+                    // leave the rest of the string to the encoder
+                    encode(s.substring(i));
+                    return;
+                }
+                buffer[bufferLength++] = (byte)c;
+            }
+        } else {
+            encode(s);
+        }
     }
 
+    /**
+     * Writes the bases of allele, which are ASCII, as the text of its display string
+     */
+    private void write(final Allele allele) {
+        if ( ! ASCII_COMPATIBLE_CHARSET || allele.isSymbolic() ) {
+            write(allele.getDisplayString());
+        } else {
+            final byte[] bases = allele.getBases();
+            ensureCapacity(bufferLength + bases.length);
+            System.arraycopy(bases, 0, buffer, bufferLength, bases.length);
+            bufferLength += bases.length;
+        }
+    }
 
-    private static int countOccurrences(char c, String s) {
-           int count = 0;
-           for (int i = 0; i < s.length(); i++) {
-               count += s.charAt(i) == c ? 1 : 0;
-           }
-           return count;
+    /**
+     * Encodes s with the charset of the stream.  The encoder keeps its state between calls, as the encoder of
+     * an OutputStreamWriter would, so charsets with byte order marks or shift states come out the same.
+     */
+    private void encode(final String s) {
+        final CharBuffer in = CharBuffer.wrap(s);
+        while ( true ) {
+            ensureCapacity(bufferLength + (int)Math.ceil(in.remaining() * encoder.maxBytesPerChar()) + 16);
+            final ByteBuffer out = ByteBuffer.wrap(buffer, bufferLength, buffer.length - bufferLength);
+            final CoderResult result = encoder.encode(in, out, false);
+            bufferLength = out.position();
+            if ( result.isUnderflow() )
+                return;
+        }
+    }
+
+    private void finishEncoding() {
+        final CharBuffer in = CharBuffer.allocate(0);
+        ensureCapacity(bufferLength + 64);
+        final ByteBuffer out = ByteBuffer.wrap(buffer, bufferLength, buffer.length - bufferLength);
+        encoder.encode(in, out, true);
+        encoder.flush(out);
+        bufferLength = out.position();
+    }
+
+    /**
+     * Writes value as Integer.toString would
+     */
+    private void write(final int value) {
+        if ( value == Integer.MIN_VALUE ) {
+            write(Integer.toString(value));
+            return;
+        }
+
+        ensureCapacity(bufferLength + 11);
+        int remaining = value;
+        if ( remaining < 0 ) {
+            buffer[bufferLength++] = '-';
+            remaining = -remaining;
+        }
+
+        int nDigits = 1;
+        for ( int i = remaining; i >= 10; i /= 10 )
+            nDigits++;
+
+        int position = bufferLength + nDigits;
+        do {
+            buffer[--position] = (byte)('0' + remaining % 10);
+            remaining /= 10;
+        } while ( remaining != 0 );
+        bufferLength += nDigits;
+    }
+
+    /**
+     * Writes value as String.format(VCFConstants.DOUBLE_PRECISION_FORMAT_STRING, value) would.
+     *
+     * We round |value| * 100 half-up ourselves, unless it is so large or so close to a rounding tie that the
+     * decimal digits String.format rounds could come out on the other side of the tie than the scaled double.
+     */
+    private void writeDouble(final double value) {
+        final double scaled = Math.abs(value) * 100.0;
+        final double floor = Math.floor(scaled);
+        final double fraction = scaled - floor;
+        if ( ! FAST_DOUBLE_FORMATTING || Double.isNaN(value) || Math.abs(value) >= MAX_FAST_DOUBLE
+                || Math.abs(fraction - 0.5) <= ROUNDING_TIE_TOLERANCE * Math.max(1.0, scaled) ) {
+            write(String.format(VCFConstants.DOUBLE_PRECISION_FORMAT_STRING, value));
+            return;
+        }
+
+        final int hundredths = (int)floor + (fraction > 0.5 ? 1 : 0);
+        // negative values that round to zero keep their sign, as does -0.0
+        if ( value < 0.0 || (value == 0.0 && 1.0 / value < 0.0) )
+            write('-');
+        write(hundredths / 100);
+        write('.');
+        write((char)('0' + (hundredths / 10) % 10));
+        write((char)('0' + hundredths % 10));
+    }
+
+    /**
+     * Writes qual with two decimal places, dropping them when they are both zero
+     */
+    private void writeQual(final double qual) {
+        writeDouble(qual);
+        final String suffix = VCFConstants.DOUBLE_PRECISION_INT_SUFFIX;
+        if ( bufferLength >= suffix.length() ) {
+            for ( int i = 0; i < suffix.length(); i++ ) {
+                if ( buffer[bufferLength - suffix.length() + i] != suffix.charAt(i) )
+                    return;
+            }
+            bufferLength -= suffix.length();
+        }
+    }
+
+    private static boolean isAsciiCompatible(final Charset charset) {
+        try {
+            final char[] ascii = new char[0x80];
+            for ( int i = 0; i < ascii.length; i++ )
+                ascii[i] = (char)i;
+            final ByteBuffer encoded = charset.newEncoder().encode(CharBuffer.wrap(ascii));
+            if ( encoded.remaining() != ascii.length )
+                return false;
+            for ( int i = 0; i < ascii.length; i++ ) {
+                if ( encoded.get(i) != i )
+                    return false;
+            }
+            return true;
+        } catch ( CharacterCodingException e ) {
+            return false;
+        }
     }
 }
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2012, The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.broadinstitute.sting.utils.collections;
+
+import java.util.Arrays;
+
+/**
+ * Numbers long keys 0, 1, 2, ... in the order they are added, for tables keyed by packed values.
+ *
+ * The keys are found through an open addressing hash table of primitive arrays, so neither the keys nor the lookups
+ * allocate anything.  A user keeps its values in its own primitive arrays, indexed by the numbers handed out here,
+ * and grows them as size() grows; as the numbers never change, the values never need to be rehashed.  Not thread
+ * safe.
+ */
+public final class LongIndexMap {
+    private static final int EMPTY = -1;
+
+    /** the keys, by index */
+    private long[] keys;
+
+    /** the open addressing table: the index of the key hashed to each slot, or EMPTY */
+    private int[] slots;
+
+    private int size = 0;
+
+    /**
+     * @param initialCapacity the number of keys to make room for; the map grows as needed
+     */
+    public LongIndexMap(final int initialCapacity) {
+        keys = new long[Math.max(initialCapacity, 16)];
+        allocateSlots(Integer.highestOneBit(keys.length - 1) << 2);
+    }
+
+    /**
+     * @return the number of keys added
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param key a key
+     * @return the index of the key, or -1 if it hasn't been added
+     */
+    public int indexOf(final long key) {
+        return slots[find(key)];
+    }
+
+    /**
+     * Adds a key, if it hasn't been added already
+     *
+     * @param key a key
+     * @return the index of the key; size() - 1 if the key is new
+     */
+    public int add(final long key) {
+        int slot = find(key);
+        if (slots[slot] != EMPTY)
+            return slots[slot];
+
+        if (size == keys.length)
+            keys = Arrays.copyOf(keys, 2 * keys.length);
+        if (2 * (size + 1) > slots.length) {
+            allocateSlots(2 * slots.length);
+            slot = find(key);
+        }
+        keys[size] = key;
+        slots[slot] = size;
+        return size++;
+    }
+
+    /**
+     * @param index the index of a key, less than size()
+     * @return the key
+     */
+    public long getKey(final int index) {
+        return keys[index];
+    }
+
+    private int find(final long key) {
+        final int mask = slots.length - 1;
+        int slot = hash(key) & mask;
+        while (slots[slot] != EMPTY && keys[slots[slot]] != key)
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private static int hash(final long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private void allocateSlots(final int capacity) {
+        slots = new int[capacity];
+        Arrays.fill(slots, EMPTY);
+        for (int index = 0; index < size; index++)
+            slots[find(keys[index])] = index;
+    }
+}
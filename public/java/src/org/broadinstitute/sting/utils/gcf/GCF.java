@@ -52,6 +52,10 @@ public class GCF {
 
     private List<GCFGenotype> genotypes = Collections.emptyList();
 
+    // the still-encoded genotypes of a record read from disk, decoded on demand by a LazyGenotypesContext
+    private int nGenotypes = 0;
+    private byte[] genotypeData = null;
+
     public GCF(final GCFHeaderBuilder GCFHeaderBuilder, final VariantContext vc, boolean skipGenotypes) {
         chromOffset = GCFHeaderBuilder.encodeString(vc.getChr());
         start = vc.getStart();
@@ -94,15 +98,14 @@ public class GCF {
         info = inputStream.readUTF();
         filterOffset = inputStream.readInt();
 
-        int nGenotypes = inputStream.readInt();
+        nGenotypes = inputStream.readInt();
         int sizeOfGenotypes = inputStream.readInt();
         if ( skipGenotypes ) {
-            genotypes = Collections.emptyList();
+            nGenotypes = 0;
             inputStream.skipBytes(sizeOfGenotypes);
         } else {
-            genotypes = new ArrayList<GCFGenotype>(nGenotypes);
-            for ( int i = 0; i < nGenotypes; i++ )
-                genotypes.add(new GCFGenotype(this, inputStream));
+            genotypeData = new byte[sizeOfGenotypes];
+            inputStream.readFully(genotypeData);
         }
 
         int recordDone = inputStream.readInt();
@@ -141,28 +144,70 @@ public class GCF {
         alleleMap = header.getAlleles(alleleOffsets);
 
         VariantContextBuilder builder = new VariantContextBuilder(source, contig, start, stop, alleleMap);
-        builder.genotypes(decodeGenotypes(header));
+        if ( id.equals(VCFConstants.EMPTY_ID_FIELD) )
+            builder.noID();
+        else
+            builder.id(id);
         builder.log10PError(qual);
         builder.filters(header.getFilters(filterOffset));
-        builder.attribute("INFO", info);
+        builder.attributes(decodeInfo(header));
         builder.referenceBaseForIndel(refPad == 0 ? null : refPad);
+        if ( nGenotypes > 0 )
+            builder.genotypesNoValidation(new LazyGenotypesContext(new LazyGCFGenotypesParser(header, alleleMap), genotypeData, nGenotypes));
         return builder.make();
     }
 
-    private GenotypesContext decodeGenotypes(final GCFHeader header) {
-        if ( genotypes.isEmpty() )
-            return VariantContext.NO_GENOTYPES;
-        else {
-            GenotypesContext map = GenotypesContext.create(genotypes.size());
+    /**
+     * Decodes the genotypes of a record only when the genotypes context is actually used,
+     * so that sites-only processing of a GCF never pays for the per-sample data
+     */
+    private class LazyGCFGenotypesParser implements LazyGenotypesContext.LazyParser {
+        final GCFHeader header;
+        final List<Allele> alleles;
+
+        private LazyGCFGenotypesParser(final GCFHeader header, final List<Allele> alleles) {
+            this.header = header;
+            this.alleles = alleles;
+        }
 
-            for ( int i = 0; i < genotypes.size(); i++ ) {
-                final String sampleName = header.getSample(i);
-                final Genotype g = genotypes.get(i).decode(sampleName, header, this, alleleMap);
-                map.add(g);
+        @Override
+        public LazyGenotypesContext.LazyData parse(final Object data) {
+            final DataInputStream inputStream = new DataInputStream(new ByteArrayInputStream((byte[])data));
+            final ArrayList<Genotype> decoded = new ArrayList<Genotype>(nGenotypes);
+            try {
+                for ( int i = 0; i < nGenotypes; i++ )
+                    decoded.add(new GCFGenotype(GCF.this, inputStream).decode(header.getSample(i), header, GCF.this, alleles));
+            } catch ( IOException e ) {
+                throw new UserException.MalformedFile("Malformed GCF genotypes at " + header.getString(chromOffset) + ":" + start, e);
             }
+            return new LazyGenotypesContext.LazyData(decoded, header.getSampleNamesInOrder(), header.getSampleNameToOffset());
+        }
+    }
 
-            return map;
+    /**
+     * The INFO field is stored as ;-separated key=value pairs, where each key is an offset into
+     * the header's string table.  Values are returned as Strings (or Lists of Strings) and flags
+     * as Boolean.TRUE, exactly as the VCF codec does.
+     */
+    private Map<String, Object> decodeInfo(final GCFHeader header) {
+        final Map<String, Object> attributes = new HashMap<String, Object>();
+        if ( info.length() == 0 )
+            return attributes;
+
+        for ( final String field : info.split(VCFConstants.INFO_FIELD_SEPARATOR) ) {
+            final int eqI = field.indexOf('=');
+            final String key = header.getString(Integer.valueOf(field.substring(0, eqI)));
+            final String value = field.substring(eqI + 1);
+
+            if ( value.length() == 0 )
+                attributes.put(key, true);
+            else if ( value.indexOf(VCFConstants.INFO_FIELD_ARRAY_SEPARATOR_CHAR) == -1 )
+                attributes.put(key, value);
+            else
+                attributes.put(key, new ArrayList<String>(Arrays.asList(value.split(VCFConstants.INFO_FIELD_ARRAY_SEPARATOR))));
         }
+
+        return attributes;
     }
 
     private List<GCFGenotype> encodeGenotypes(final GCFHeaderBuilder GCFHeaderBuilder, final VariantContext vc) {
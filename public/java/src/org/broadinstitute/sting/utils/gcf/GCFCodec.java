@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2011, The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.broadinstitute.sting.utils.gcf;
+
+import org.broad.tribble.Feature;
+import org.broad.tribble.FeatureCodec;
+import org.broad.tribble.NameAwareCodec;
+import org.broad.tribble.index.Index;
+import org.broad.tribble.index.linear.LinearIndexCreator;
+import org.broad.tribble.readers.LineReader;
+import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
+import org.broadinstitute.sting.utils.exceptions.UserException;
+import org.broadinstitute.sting.utils.variantcontext.VariantContext;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * Codec for GCF, the binary encoding of VCF written by the GCFWriter
+ *
+ * <p>
+ * GCF stores each record with its strings and alleles replaced by offsets into tables held
+ * in the footer of the file, so decoding a record needs no text parsing at all.  Genotypes are
+ * kept in their binary form until a walker actually looks at them.  The VCF header of the
+ * original file is stored in the footer too, so walkers see exactly the header they would
+ * see reading the equivalent VCF.
+ * </p>
+ *
+ * <p>
+ * GCF is not a line-oriented format, so the engine reads it through a GCFFeatureSource rather
+ * than the Tribble text readers; the String-based decode methods of FeatureCodec are not supported.
+ * GCF files are detected by their start marker, so they can be given to walkers without a type tag.
+ * </p>
+ *
+ * <h2>Usage</h2>
+ * <pre>
+ *     java -jar GenomeAnalysisTK.jar -T SelectVariants -R ref.fasta --variant calls.gcf -o selected.vcf
+ * </pre>
+ */
+public class GCFCodec implements FeatureCodec<VariantContext>, NameAwareCodec {
+    private String name = "Unknown";
+    private GCFHeader header = null;
+
+    // --------------------------------------------------------------------------------
+    //
+    // Binary decoding
+    //
+    // --------------------------------------------------------------------------------
+
+    /**
+     * Reads the GCF header (stored in the footer) of file, and remembers it for decoding records
+     *
+     * @param file the GCF file
+     * @return the GCFHeader of file
+     */
+    public GCFHeader readHeader(final File file) {
+        try {
+            final FileInputStream stream = GCF.createFileInputStream(file);
+            try {
+                header = new GCFHeader(stream);
+            } finally {
+                stream.close();
+            }
+            return header;
+        } catch ( IOException e ) {
+            throw new UserException.CouldNotReadInputFile(file, "Unable to read the GCF header", e);
+        }
+    }
+
+    public GCFHeader getHeader() {
+        return header;
+    }
+
+    /**
+     * Decodes the next record of inputStream
+     *
+     * @param inputStream a stream positioned at the start of a record
+     * @return the VariantContext of the record, or null if we have reached the footer of the file
+     * @throws IOException if the stream cannot be read
+     */
+    public VariantContext decode(final DataInputStream inputStream) throws IOException {
+        try {
+            return new GCF(inputStream, false).decode(name, header);
+        } catch ( EOFException e ) {
+            return null;
+        }
+    }
+
+    /**
+     * Creates a linear index of a GCF file by scanning its records, without decoding any of the genotypes
+     *
+     * @param file the GCF file to index
+     * @return a Tribble index of file
+     */
+    public static Index createIndex(final File file) {
+        final GCFCodec codec = new GCFCodec();
+        codec.readHeader(file);
+
+        final LinearIndexCreator indexer = new LinearIndexCreator();
+        indexer.initialize(file, indexer.defaultBinSize());
+
+        try {
+            // the position tracker sits above the buffer, so it counts exactly the bytes we have consumed
+            final PositionTrackingInputStream positionTracker = new PositionTrackingInputStream(new BufferedInputStream(new FileInputStream(file), GCF.BUFFER_SIZE));
+            final DataInputStream inputStream = new DataInputStream(positionTracker);
+            try {
+                inputStream.skipBytes(GCFHeader.HEADER_SIZE);
+                while ( true ) {
+                    final long position = positionTracker.getPosition();
+                    final GCF gcf;
+                    try {
+                        gcf = new GCF(inputStream, true);
+                    } catch ( EOFException e ) {
+                        return indexer.finalizeIndex(position);
+                    }
+                    indexer.addFeature(gcf.decode(codec.name, codec.header), position);
+                }
+            } finally {
+                inputStream.close();
+            }
+        } catch ( IOException e ) {
+            throw new UserException.CouldNotReadInputFile(file, "Unable to index the GCF file", e);
+        }
+    }
+
+    private static class PositionTrackingInputStream extends FilterInputStream {
+        private long position = 0;
+
+        private PositionTrackingInputStream(final InputStream in) {
+            super(in);
+        }
+
+        public long getPosition() {
+            return position;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if ( b != -1 ) position++;
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int n = super.read(b, off, len);
+            if ( n > 0 ) position += n;
+            return n;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            final long skipped = super.skip(n);
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
+    // --------------------------------------------------------------------------------
+    //
+    // FeatureCodec and NameAwareCodec
+    //
+    // --------------------------------------------------------------------------------
+
+    public Feature decodeLoc(final String line) {
+        throw new ReviewedStingException("GCF is a binary format and cannot be decoded line by line");
+    }
+
+    public VariantContext decode(final String line) {
+        throw new ReviewedStingException("GCF is a binary format and cannot be decoded line by line");
+    }
+
+    public Object readHeader(final LineReader reader) {
+        throw new ReviewedStingException("GCF is a binary format and cannot be decoded line by line");
+    }
+
+    public Class<VariantContext> getFeatureType() {
+        return VariantContext.class;
+    }
+
+    /**
+     * @param potentialInput the path of a file that may be a GCF file
+     * @return true if potentialInput starts with the GCF start marker
+     */
+    public boolean canDecode(final String potentialInput) {
+        return isGCFFile(new File(potentialInput));
+    }
+
+    public static boolean isGCFFile(final File file) {
+        try {
+            final InputStream stream = new FileInputStream(file);
+            try {
+                final byte[] marker = new byte[GCFHeader.GCF_FILE_START_MARKER.length];
+                return stream.read(marker) == marker.length && Arrays.equals(marker, GCFHeader.GCF_FILE_START_MARKER);
+            } finally {
+                stream.close();
+            }
+        } catch ( IOException e ) {
+            return false;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(final String name) {
+        this.name = name;
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2011, The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.broadinstitute.sting.utils.gcf;
+
+import org.broad.tribble.FeatureSource;
+import org.broad.tribble.index.Block;
+import org.broad.tribble.index.Index;
+import org.broad.tribble.iterators.CloseableTribbleIterator;
+import org.broadinstitute.sting.utils.exceptions.UserException;
+import org.broadinstitute.sting.utils.variantcontext.VariantContext;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * A Tribble FeatureSource over a GCF file
+ *
+ * Queries use a Tribble index of the GCF file to find the span of the file holding the records
+ * of the query interval, and stream through that span alone through a buffer of bounded size.
+ * Iterating over the whole file streams through it from the first record to the footer.
+ */
+public class GCFFeatureSource implements FeatureSource<VariantContext> {
+    private final File file;
+    private final Index index;
+    private final GCFCodec codec;
+
+    /**
+     * @param file the GCF file
+     * @param index the index of file, or null if it isn't indexed, in which case queries scan the whole file
+     * @param codec the codec used to decode the records of file
+     */
+    public GCFFeatureSource(final File file, final Index index, final GCFCodec codec) {
+        this.file = file;
+        this.index = index;
+        this.codec = codec;
+        if ( codec.getHeader() == null )
+            codec.readHeader(file);
+    }
+
+    public CloseableTribbleIterator<VariantContext> query(final String chr, final int start, final int end) throws IOException {
+        if ( index == null )
+            return new GCFIterator(openFile(), chr, start, end);
+
+        if ( ! index.containsChromosome(chr) )
+            return new GCFIterator(null, chr, start, end);
+
+        final List<Block> blocks = index.getBlocks(chr, start, end);
+        if ( blocks == null || blocks.isEmpty() )
+            return new GCFIterator(null, chr, start, end);
+
+        // Tribble indexes the last block of each contig with an inclusive end, so read one byte past it.
+        // Any partial record that leaves us with is dropped, as decode stops at the end of the span.
+        long spanStart = Long.MAX_VALUE, spanEnd = 0;
+        for ( final Block block : blocks ) {
+            spanStart = Math.min(spanStart, block.getStartPosition());
+            spanEnd = Math.max(spanEnd, block.getEndPosition() + 1);
+        }
+        spanEnd = Math.min(spanEnd, codec.getHeader().footerPosition);
+
+        final FileInputStream fileStream = GCF.createFileInputStream(file);
+        try {
+            fileStream.getChannel().position(spanStart);
+        } catch ( IOException e ) {
+            fileStream.close();
+            throw e;
+        }
+        return new GCFIterator(GCF.createDataInputStream(new SpanInputStream(fileStream, spanEnd - spanStart)), chr, start, end);
+    }
+
+    public CloseableTribbleIterator<VariantContext> iterator() throws IOException {
+        return new GCFIterator(openFile(), null, 0, 0);
+    }
+
+    private DataInputStream openFile() throws IOException {
+        final DataInputStream inputStream = GCF.createDataInputStream(GCF.createFileInputStream(file));
+        inputStream.skipBytes(GCFHeader.HEADER_SIZE);
+        return inputStream;
+    }
+
+    public void close() throws IOException {
+        // each iterator opens and closes its own stream
+    }
+
+    public List<String> getSequenceNames() {
+        return index == null ? Collections.<String>emptyList() : new ArrayList<String>(index.getSequenceNames());
+    }
+
+    /**
+     * @return the VCFHeader stored in the GCF file
+     */
+    public Object getHeader() {
+        return codec.getHeader().getVCFHeader();
+    }
+
+    /**
+     * Reads at most length bytes from its underlying stream, and then reports the end of the stream
+     */
+    private static class SpanInputStream extends FilterInputStream {
+        private long remaining;
+
+        private SpanInputStream(final InputStream in, final long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if ( remaining <= 0 )
+                return -1;
+            final int b = super.read();
+            if ( b != -1 ) remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if ( remaining <= 0 )
+                return -1;
+            final int n = super.read(b, off, (int)Math.min(len, remaining));
+            if ( n > 0 ) remaining -= n;
+            return n;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            final long skipped = super.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int)Math.min(super.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
+    /**
+     * Iterates over the records of a GCF stream, optionally restricted to those overlapping
+     * chr:start-end.  Records are sorted, so we stop at the first record past the interval.
+     */
+    private class GCFIterator implements CloseableTribbleIterator<VariantContext> {
+        private final String chr;
+        private final int start, end;
+        private DataInputStream inputStream;
+        private VariantContext next = null;
+        private boolean seenChr = false;
+
+        private GCFIterator(final DataInputStream inputStream, final String chr, final int start, final int end) {
+            this.inputStream = inputStream;
+            this.chr = chr;
+            this.start = start;
+            this.end = end;
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+            try {
+                while ( inputStream != null ) {
+                    // decode returns null at the footer of the file or the end of a queried span
+                    final VariantContext vc = codec.decode(inputStream);
+                    if ( vc == null || (chr != null && pastInterval(vc)) ) {
+                        close();
+                    } else if ( chr == null || (vc.getChr().equals(chr) && vc.getEnd() >= start) ) {
+                        next = vc;
+                        return;
+                    }
+                }
+            } catch ( IOException e ) {
+                close();
+                throw new UserException.CouldNotReadInputFile(file, "Unable to read GCF records", e);
+            }
+        }
+
+        private boolean pastInterval(final VariantContext vc) {
+            if ( vc.getChr().equals(chr) ) {
+                seenChr = true;
+                return vc.getStart() > end;
+            }
+            return seenChr;
+        }
+
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        public VariantContext next() {
+            if ( next == null )
+                throw new NoSuchElementException("No more GCF records in " + file);
+            final VariantContext vc = next;
+            advance();
+            return vc;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("GCF iterators are read only");
+        }
+
+        public Iterator<VariantContext> iterator() {
+            return this;
+        }
+
+        public void close() {
+            if ( inputStream != null ) {
+                try {
+                    inputStream.close();
+                } catch ( IOException e ) {
+                    // nothing more to read from it either way
+                }
+                inputStream = null;
+            }
+        }
+    }
+}
@@ -24,12 +24,15 @@
 
 package org.broadinstitute.sting.utils.gcf;
 
+import org.broadinstitute.sting.utils.MathUtils;
+import org.broadinstitute.sting.utils.codecs.vcf.VCFConstants;
 import org.broadinstitute.sting.utils.variantcontext.Allele;
 import org.broadinstitute.sting.utils.variantcontext.Genotype;
 
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.lang.reflect.Array;
 import java.util.*;
 
 /**
@@ -45,20 +48,27 @@ public class GCFGenotype {
     private int ad[];
     private byte[] pl;
 
+    private final static String ALLELE_DEPTHS_KEY = "AD";
+    private final static int MISSING_VALUE = -1;
+    private final static double MAX_QUAL = 254;
+    private final static byte MISSING_QUAL = (byte)255;
+    private final static int MAX_PL = 254;
+    private final static byte MISSING_PL = (byte)255;
+
     // todo -- what to do about phasing?  Perhaps we shouldn't support it
     // todo -- is the FL field generic or just a flag?  Should we even support per sample filtering?
 
     public GCFGenotype(final GCFHeaderBuilder GCFHeaderBuilder, final List<Allele> allAlleles, Genotype genotype) {
-        gq = GCF.qualToByte(genotype.getPhredScaledQual());
+        gq = genotype.hasLog10PError() ? GCF.qualToByte(Math.min(genotype.getPhredScaledQual(), MAX_QUAL)) : MISSING_QUAL;
         gt = encodeAlleles(genotype.getAlleles(), allAlleles);
 
-        dp = genotype.getAttributeAsInt("DP", 0);
+        dp = genotype.getAttributeAsInt(VCFConstants.DEPTH_KEY, MISSING_VALUE);
 
         int nAlleles = allAlleles.size();
-        ad = new int[nAlleles];
+        ad = encodeAlleleDepths(genotype.getAttribute(ALLELE_DEPTHS_KEY), nAlleles);
 
         int npls = nAllelesToNPls(nAlleles);
-        pl = new byte[npls];
+        pl = encodePLs(genotype, npls);
     }
 
     private int nAllelesToNPls( int nAlleles ) {
@@ -66,8 +76,7 @@ public class GCFGenotype {
     }
 
     public GCFGenotype(GCF GCF, DataInputStream inputStream) throws IOException {
-        int gqInt = inputStream.readUnsignedByte();
-        gq = (byte)gqInt;
+        gq = inputStream.readByte();
         gt = inputStream.readInt();
         dp = inputStream.readInt();
         ad = GCF.readIntArray(inputStream, GCF.getNAlleles());
@@ -84,14 +93,81 @@ public class GCFGenotype {
 
     public Genotype decode(final String sampleName, final GCFHeader header, GCF GCF, List<Allele> alleleIndex) {
         final List<Allele> alleles = decodeAlleles(gt, alleleIndex);
-        final double log10PError = gq / -10.0;
+        final double log10PError = gq == MISSING_QUAL ? Genotype.NO_LOG10_PERROR : (gq & 0xFF) / -10.0;
         final Set<String> filters = Collections.emptySet();
         final Map<String, Object> attributes = new HashMap<String, Object>();
-        attributes.put("DP", dp);
-        attributes.put("AD", ad);
-        attributes.put("PL", pl);
+        if ( dp != MISSING_VALUE )
+            attributes.put(VCFConstants.DEPTH_KEY, dp);
+        if ( ad.length > 0 && ad[0] != MISSING_VALUE )
+            attributes.put(ALLELE_DEPTHS_KEY, ad);
+
+        return new Genotype(sampleName, alleles, log10PError, filters, attributes, false, decodePLs(pl));
+    }
+
+    /**
+     * Encodes the allele depths of a genotype, which may have come from a VCF (a comma separated
+     * string) or from a walker (an int[] or a List), as exactly one int per allele.  Anything we
+     * cannot represent that way is stored as missing.
+     */
+    private static int[] encodeAlleleDepths(final Object value, final int nAlleles) {
+        final int[] ad = new int[nAlleles];
+        Arrays.fill(ad, MISSING_VALUE);
+
+        if ( value == null )
+            return ad;
+
+        final List<Object> values = new ArrayList<Object>(nAlleles);
+        if ( value instanceof String )
+            values.addAll(Arrays.asList(((String)value).split(VCFConstants.INFO_FIELD_ARRAY_SEPARATOR)));
+        else if ( value instanceof List )
+            values.addAll((List)value);
+        else if ( value.getClass().isArray() ) {
+            for ( int i = 0; i < Array.getLength(value); i++ )
+                values.add(Array.get(value, i));
+        }
+
+        if ( values.size() != nAlleles )
+            return ad;
+
+        try {
+            for ( int i = 0; i < nAlleles; i++ )
+                ad[i] = Integer.valueOf(values.get(i).toString());
+        } catch ( NumberFormatException e ) {
+            Arrays.fill(ad, MISSING_VALUE);
+        }
+
+        return ad;
+    }
+
+    /**
+     * PLs are stored as unsigned bytes capped at MAX_PL.  A properly normalized PL vector always
+     * contains a 0, so a vector of MISSING_PL values unambiguously means no likelihoods.
+     */
+    private static byte[] encodePLs(final Genotype genotype, final int npls) {
+        final byte[] pl = new byte[npls];
+        final double[] log10Likelihoods = genotype.hasLikelihoods() ? genotype.getLikelihoods().getAsVector() : null;
+
+        if ( log10Likelihoods == null || log10Likelihoods.length != npls ) {
+            Arrays.fill(pl, MISSING_PL);
+        } else {
+            final double adjust = MathUtils.arrayMax(log10Likelihoods);
+            for ( int i = 0; i < npls; i++ )
+                pl[i] = (byte)Math.min(Math.round(-10 * (log10Likelihoods[i] - adjust)), MAX_PL);
+        }
+
+        return pl;
+    }
+
+    private static double[] decodePLs(final byte[] pl) {
+        boolean missing = true;
+        for ( byte b : pl ) missing = missing && b == MISSING_PL;
+        if ( missing )
+            return null;
 
-        return new Genotype(sampleName, alleles, log10PError, filters, attributes, false);
+        final double[] log10Likelihoods = new double[pl.length];
+        for ( int i = 0; i < pl.length; i++ )
+            log10Likelihoods[i] = (pl[i] & 0xFF) / -10.0;
+        return log10Likelihoods;
     }
 
     private static int encodeAlleles(List<Allele> gtList, List<Allele> allAlleles) {
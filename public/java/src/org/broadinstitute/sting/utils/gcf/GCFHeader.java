@@ -25,8 +25,11 @@
 package org.broadinstitute.sting.utils.gcf;
 
 import org.apache.log4j.Logger;
+import org.broad.tribble.readers.AsciiLineReader;
 import org.broadinstitute.sting.utils.codecs.vcf.VCFCodec;
 import org.broadinstitute.sting.utils.codecs.vcf.VCFConstants;
+import org.broadinstitute.sting.utils.codecs.vcf.VCFHeader;
+import org.broadinstitute.sting.utils.codecs.vcf.VCFHeaderLine;
 import org.broadinstitute.sting.utils.exceptions.UserException;
 import org.broadinstitute.sting.utils.variantcontext.Allele;
 
@@ -63,10 +66,11 @@ import java.util.*;
 public class GCFHeader {
     final protected static Logger logger = Logger.getLogger(GCFHeader.class);
 
-    public final static int GCF_VERSION = 1;
+    public final static int GCF_VERSION = 2;
     public final static byte[] GCF_FILE_START_MARKER = "GCF\1".getBytes();
     public final static int FOOTER_START_MARKER = -1;
     public final static long HEADER_FORWARD_REFERENCE_OFFSET = GCF_FILE_START_MARKER.length + 4; // for the version
+    public final static int HEADER_SIZE = (int)HEADER_FORWARD_REFERENCE_OFFSET + 8; // for the footer position; records start here
 
     final int version;
     long footerPosition;
@@ -74,14 +78,21 @@ public class GCFHeader {
     final List<String> strings;
     final List<String> samples;
     final List<Set<String>> filters;
+    final List<String> vcfHeaderLines;
 
-    public GCFHeader(final Map<Allele, Integer> allelesIn, final Map<String, Integer> stringIn, final Map<String, Integer> samplesIn) {
+    // sample lookups shared by all of the lazily decoded genotypes of this file
+    ArrayList<String> sampleNamesInOrder = null;
+    HashMap<String, Integer> sampleNameToOffset = null;
+    VCFHeader vcfHeader = null;
+
+    public GCFHeader(final Map<Allele, Integer> allelesIn, final Map<String, Integer> stringIn, final Map<String, Integer> samplesIn, final List<String> vcfHeaderLines) {
         version = GCF_VERSION;
         footerPosition = 0;
         this.alleles = linearize(allelesIn);
         this.strings = linearize(stringIn);
         this.samples = linearize(samplesIn);
         this.filters = null; // not used with this constructor
+        this.vcfHeaderLines = vcfHeaderLines;
     }
 
     public GCFHeader(FileInputStream fileInputStream) throws IOException {
@@ -105,6 +116,8 @@ public class GCFHeader {
             alleles = stringsToAlleles(readStrings(inputStream));
             strings = readStrings(inputStream);
             samples = readStrings(inputStream);
+            // version 1 files didn't carry the VCF header lines
+            vcfHeaderLines = version > 1 ? readStrings(inputStream) : Collections.<String>emptyList();
             logger.info(String.format("Allele map of %d elements", alleles.size()));
             logger.info(String.format("String map of %d elements", strings.size()));
             logger.info(String.format("Sample map of %d elements", samples.size()));
@@ -127,6 +140,7 @@ public class GCFHeader {
         write(outputStream, allelesToStrings(alleles));
         write(outputStream, strings);
         write(outputStream, samples);
+        write(outputStream, vcfHeaderLines);
         return outputStream.size() - startBytes;
     }
 
@@ -186,6 +200,54 @@ public class GCFHeader {
         return alleles;
     }
 
+    public int getNSamples() { return samples.size(); }
+
+    /**
+     * @return the sample names, sorted, as expected by LazyGenotypesContext
+     */
+    public synchronized ArrayList<String> getSampleNamesInOrder() {
+        if ( sampleNamesInOrder == null ) {
+            final ArrayList<String> sorted = new ArrayList<String>(samples);
+            Collections.sort(sorted);
+            sampleNamesInOrder = sorted;
+        }
+        return sampleNamesInOrder;
+    }
+
+    /**
+     * @return a map from sample name to the offset of its genotype within each record
+     */
+    public synchronized HashMap<String, Integer> getSampleNameToOffset() {
+        if ( sampleNameToOffset == null ) {
+            final HashMap<String, Integer> offsets = new HashMap<String, Integer>(samples.size());
+            for ( int i = 0; i < samples.size(); i++ )
+                offsets.put(samples.get(i), i);
+            sampleNameToOffset = offsets;
+        }
+        return sampleNameToOffset;
+    }
+
+    /**
+     * Reconstitutes the VCF header of the file from the header lines stored in the footer.  Files
+     * without header lines get a minimal header naming only the samples.
+     *
+     * @return a VCFHeader describing this GCF file
+     */
+    public synchronized VCFHeader getVCFHeader() {
+        if ( vcfHeader == null ) {
+            if ( vcfHeaderLines.isEmpty() ) {
+                vcfHeader = new VCFHeader(new HashSet<VCFHeaderLine>(), new LinkedHashSet<String>(samples));
+            } else {
+                final StringBuilder text = new StringBuilder();
+                for ( final String line : vcfHeaderLines )
+                    text.append(line).append("\n");
+                final AsciiLineReader reader = new AsciiLineReader(new ByteArrayInputStream(text.toString().getBytes()));
+                vcfHeader = (VCFHeader)new VCFCodec().readHeader(reader);
+            }
+        }
+        return vcfHeader;
+    }
+
     public Set<String> getFilters(final int offset) {
         Set<String> cached = filters.get(offset);
 
@@ -27,6 +27,7 @@ package org.broadinstitute.sting.utils.gcf;
 import org.broadinstitute.sting.utils.variantcontext.Allele;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -61,8 +62,8 @@ public class GCFHeaderBuilder {
     Map<String, Integer> strings = new HashMap<String, Integer>();
     Map<String, Integer> samples = new HashMap<String, Integer>();
 
-    public GCFHeader createHeader() {
-        return new GCFHeader(alleles, strings, samples);
+    public GCFHeader createHeader(final List<String> vcfHeaderLines) {
+        return new GCFHeader(alleles, strings, samples, vcfHeaderLines);
     }
 
     public int encodeString(final String chr)    { return encode(strings, chr); }
@@ -26,12 +26,16 @@ package org.broadinstitute.sting.utils.gcf;
 
 import net.sf.samtools.SAMSequenceDictionary;
 import org.broadinstitute.sting.utils.codecs.vcf.IndexingVCFWriter;
+import org.broadinstitute.sting.utils.codecs.vcf.StandardVCFWriter;
 import org.broadinstitute.sting.utils.codecs.vcf.VCFHeader;
 import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
 import org.broadinstitute.sting.utils.exceptions.UserException;
 import org.broadinstitute.sting.utils.variantcontext.VariantContext;
 
 import java.io.*;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * GCFWriter implementing the VCFWriter interface
@@ -40,9 +44,12 @@ import java.io.*;
  */
 public class GCFWriter extends IndexingVCFWriter {
     final boolean skipGenotypes;
-    final FileOutputStream fileOutputStream;
-    final DataOutputStream dataOutputStream;
+    final OutputStream fileOutputStream;
+    final OutputStream outputStream;
+    final ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream();
+    final DataOutputStream recordStream = new DataOutputStream(recordBuffer);
     final GCFHeaderBuilder gcfHeaderBuilder;
+    final SAMSequenceDictionary refDict;
     int nbytes = 0;
     VCFHeader header = null;
     File location;
@@ -54,18 +61,21 @@ public class GCFWriter extends IndexingVCFWriter {
     // --------------------------------------------------------------------------------
 
     public GCFWriter(final File location, final SAMSequenceDictionary refDict, boolean enableOnTheFlyIndexing, boolean doNotWriteGenotypes) {
-        super(writerName(location, null), location, null, refDict, enableOnTheFlyIndexing);
+        this(location, createBufferedOutputStream(openOutputStream(location)), refDict, enableOnTheFlyIndexing, doNotWriteGenotypes);
+    }
+
+    private GCFWriter(final File location, final OutputStream fileOutputStream, final SAMSequenceDictionary refDict, boolean enableOnTheFlyIndexing, boolean doNotWriteGenotypes) {
+        super(writerName(location, null), location, fileOutputStream, refDict, enableOnTheFlyIndexing);
         this.location = location;
+        this.refDict = refDict;
         this.skipGenotypes = doNotWriteGenotypes;
 
-        // write the output
-        try {
-            fileOutputStream = new FileOutputStream(location);
-            dataOutputStream = createDataOutputStream(fileOutputStream);
-            gcfHeaderBuilder = new GCFHeaderBuilder();
-        } catch ( FileNotFoundException e ) {
-            throw new UserException.CouldNotCreateOutputFile(location, e);
-        }
+        // all bytes go through the superclass stream, so that the on-the-fly index sees the true record
+        // offsets.  Each record is encoded into recordBuffer first and handed over in a single write.
+        // The superclass stream doesn't pass close() along, so we keep the file stream to close ourselves.
+        this.fileOutputStream = fileOutputStream;
+        outputStream = getOutputStream();
+        gcfHeaderBuilder = new GCFHeaderBuilder();
     }
 
     // --------------------------------------------------------------------------------
@@ -78,7 +88,9 @@ public class GCFWriter extends IndexingVCFWriter {
     public void writeHeader(VCFHeader header) {
         this.header = header;
         try {
-            nbytes += GCFHeader.writeHeader(dataOutputStream);
+            recordBuffer.reset();
+            nbytes += GCFHeader.writeHeader(recordStream);
+            recordBuffer.writeTo(outputStream);
         } catch ( IOException e ) {
             throw new UserException.CouldNotCreateOutputFile(getStreamName(), "Couldn't write header", e);
         }
@@ -89,7 +101,9 @@ public class GCFWriter extends IndexingVCFWriter {
         super.add(vc);
         GCF gcf = new GCF(gcfHeaderBuilder, vc, skipGenotypes);
         try {
-            nbytes += gcf.write(dataOutputStream);
+            recordBuffer.reset();
+            nbytes += gcf.write(recordStream);
+            recordBuffer.writeTo(outputStream);
         } catch ( IOException e ) {
             throw new UserException.CouldNotCreateOutputFile(getStreamName(), "Failed to add gcf record " + gcf + " to stream " + getStreamName(), e);
         }
@@ -97,12 +111,13 @@ public class GCFWriter extends IndexingVCFWriter {
 
     @Override
     public void close() {
-        // todo -- write out VCF header lines
-        GCFHeader gcfHeader = gcfHeaderBuilder.createHeader();
+        GCFHeader gcfHeader = gcfHeaderBuilder.createHeader(vcfHeaderLines());
         try {
             long headerPosition = nbytes;
-            nbytes += gcfHeader.writeFooter(dataOutputStream);
-            dataOutputStream.close();
+            recordBuffer.reset();
+            nbytes += gcfHeader.writeFooter(recordStream);
+            recordBuffer.writeTo(outputStream);
+            fileOutputStream.close();
             //System.out.println("Writing forward reference to " + headerPosition);
 
             RandomAccessFile raFile = new RandomAccessFile(location, "rw");
@@ -113,11 +128,27 @@ public class GCFWriter extends IndexingVCFWriter {
             throw new ReviewedStingException("Failed to close GCFWriter " + getStreamName(), e);
         }
 
+        // the index is written last, so it is never older than the file it indexes
         super.close();
     }
 
-    private static final DataOutputStream createDataOutputStream(final OutputStream stream) {
-        return new DataOutputStream(new BufferedOutputStream(stream, GCF.BUFFER_SIZE));
+    /**
+     * Renders the VCF header exactly as a StandardVCFWriter would, so that readers of this file
+     * can hand the same VCFHeader to walkers as they would get from the equivalent VCF
+     */
+    private List<String> vcfHeaderLines() {
+        if ( header == null )
+            return Collections.emptyList();
+
+        final ByteArrayOutputStream text = new ByteArrayOutputStream();
+        final StandardVCFWriter vcfWriter = new StandardVCFWriter(text, refDict, skipGenotypes);
+        vcfWriter.writeHeader(header);
+        vcfWriter.close();
+        return Arrays.asList(text.toString().split("\n"));
+    }
+
+    private static final OutputStream createBufferedOutputStream(final OutputStream stream) {
+        return new BufferedOutputStream(stream, GCF.BUFFER_SIZE);
     }
 
 }
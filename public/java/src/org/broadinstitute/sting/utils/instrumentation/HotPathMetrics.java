@@ -0,0 +1,319 @@
+/*
+ * Copyright (c) 2012, The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.broadinstitute.sting.utils.instrumentation;
+
+import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+/**
+ * Times the stages of the engine and the walkers which a run spends most of its time in.
+ *
+ * A stage is timed by calling begin() and then end() on the same thread, which add the time and, where the JVM can
+ * measure it, the memory allocated in between to the stage, along with the number of units (reads, loci, sites...)
+ * it processed.  The counts are striped and the times also go into a log-linear histogram, so that many threads can
+ * time the same stage at once.  Until enabled, by the engine when a hot path metrics log is given or over JMX,
+ * begin() and end() return straight away.
+ */
+public class HotPathMetrics implements HotPathMetricsMBean {
+    public enum Stage {
+        BGZF_INFLATE("blocks"),
+        RECORD_DECODE("reads"),
+        FLOW_ALIGN("reads"),
+        LOCUS_ITERATION("loci"),
+        GENOTYPE_LIKELIHOODS("sites"),
+        ALLELE_FREQUENCY("sites"),
+        BAYESIAN_SCORER("sites"),
+        ANNOTATION("sites"),
+        VCF_WRITE("records");
+
+        private final String unit;
+
+        private Stage(final String unit) {
+            this.unit = unit;
+        }
+
+        public String getUnit() {
+            return unit;
+        }
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+    private static final long NOT_BEGUN = Long.MIN_VALUE;
+
+    private static final HotPathMetrics instance = new HotPathMetrics();
+    private static volatile boolean enabled = false;
+
+    /**
+     * For each stage, the time at which and the bytes allocated by the time this thread began it.
+     */
+    private static final ThreadLocal<long[]> starts = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            final long[] starts = new long[2 * STAGES.length];
+            Arrays.fill(starts, NOT_BEGUN);
+            return starts;
+        }
+    };
+
+    private static final com.sun.management.ThreadMXBean allocationBean = getAllocationBean();
+
+    private final StripedCounter[] calls = createCounters();
+    private final StripedCounter[] units = createCounters();
+    private final StripedCounter[] nanos = createCounters();
+    private final StripedCounter[] allocatedBytes = createCounters();
+    private final LogLinearHistogram[] latencies = new LogLinearHistogram[STAGES.length];
+    private volatile long startTime = System.nanoTime();
+
+    private HotPathMetrics() {
+        for ( int i = 0; i < STAGES.length; i++ )
+            latencies[i] = new LogLinearHistogram();
+    }
+
+    public static HotPathMetrics getInstance() {
+        return instance;
+    }
+
+    /**
+     * Begins timing the given stage on this thread.
+     */
+    public static void begin(final Stage stage) {
+        if ( !enabled )
+            return;
+        final long[] threadStarts = starts.get();
+        threadStarts[2 * stage.ordinal()] = System.nanoTime();
+        threadStarts[2 * stage.ordinal() + 1] = getThreadAllocatedBytes();
+    }
+
+    /**
+     * Ends timing the given stage on this thread, begun by the last call to begin().
+     * @param stage the stage.
+     * @param unitsProcessed the number of units the stage processed since it began.
+     */
+    public static void end(final Stage stage, final long unitsProcessed) {
+        if ( !enabled )
+            return;
+        final long endTime = System.nanoTime();
+        final long[] threadStarts = starts.get();
+        final int i = 2 * stage.ordinal();
+        if ( threadStarts[i] == NOT_BEGUN )
+            return;    // began while disabled
+        final long bytes = threadStarts[i + 1] < 0 ? -1 : getThreadAllocatedBytes() - threadStarts[i + 1];
+        instance.record(stage, endTime - threadStarts[i], unitsProcessed, bytes);
+        threadStarts[i] = NOT_BEGUN;
+    }
+
+    private void record(final Stage stage, final long elapsedNanos, final long unitsProcessed, final long bytes) {
+        final int i = stage.ordinal();
+        calls[i].increment();
+        units[i].add(unitsProcessed);
+        nanos[i].add(elapsedNanos);
+        latencies[i].record(elapsedNanos);
+        if ( bytes >= 0 )
+            allocatedBytes[i].add(bytes);
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server, unless they already are.
+     */
+    public static void registerWithJMX() {
+        final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        try {
+            final ObjectName mBeanName = new ObjectName("org.broadinstitute.sting.utils.instrumentation:type=HotPathMetrics");
+            synchronized ( instance ) {
+                if ( !mBeanServer.isRegistered(mBeanName) )
+                    mBeanServer.registerMBean(instance, mBeanName);
+            }
+        }
+        catch (JMException ex) {
+            throw new ReviewedStingException("Unable to register hot path metrics with JMX", ex);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(final boolean enabled) {
+        if ( enabled && !HotPathMetrics.enabled ) {
+            // counting allocations costs every thread something, so it is only switched on along with the metrics
+            if ( allocationBean != null )
+                allocationBean.setThreadAllocatedMemoryEnabled(true);
+            reset();
+        }
+        HotPathMetrics.enabled = enabled;
+    }
+
+    public void reset() {
+        for ( int i = 0; i < STAGES.length; i++ ) {
+            calls[i].reset();
+            units[i].reset();
+            nanos[i].reset();
+            allocatedBytes[i].reset();
+            latencies[i].reset();
+        }
+        startTime = System.nanoTime();
+    }
+
+    public String[] getStages() {
+        final String[] names = new String[STAGES.length];
+        for ( int i = 0; i < STAGES.length; i++ )
+            names[i] = STAGES[i].name();
+        return names;
+    }
+
+    public String[] getUnits() {
+        final String[] names = new String[STAGES.length];
+        for ( int i = 0; i < STAGES.length; i++ )
+            names[i] = STAGES[i].getUnit();
+        return names;
+    }
+
+    public long[] getCalls() {
+        return sum(calls);
+    }
+
+    public long[] getUnitsProcessed() {
+        return sum(units);
+    }
+
+    public double[] getUnitsPerSecond() {
+        final double elapsedSeconds = Math.max(System.nanoTime() - startTime, 1) / 1e9;
+        final long[] unitsProcessed = getUnitsProcessed();
+        final double[] rates = new double[STAGES.length];
+        for ( int i = 0; i < STAGES.length; i++ )
+            rates[i] = unitsProcessed[i] / elapsedSeconds;
+        return rates;
+    }
+
+    public long[] getTotalMillis() {
+        final long[] millis = sum(nanos);
+        for ( int i = 0; i < STAGES.length; i++ )
+            millis[i] /= 1000000;
+        return millis;
+    }
+
+    public double[] getMeanMicros() {
+        final long[] totalNanos = sum(nanos);
+        final long[] numCalls = getCalls();
+        final double[] means = new double[STAGES.length];
+        for ( int i = 0; i < STAGES.length; i++ )
+            means[i] = numCalls[i] == 0 ? 0.0 : totalNanos[i] / 1e3 / numCalls[i];
+        return means;
+    }
+
+    public double[] getMedianMicros() {
+        return getQuantileMicros(0.5);
+    }
+
+    public double[] getPercentile99Micros() {
+        return getQuantileMicros(0.99);
+    }
+
+    public long[] getAllocatedBytes() {
+        if ( allocationBean == null ) {
+            final long[] unknown = new long[STAGES.length];
+            Arrays.fill(unknown, -1);
+            return unknown;
+        }
+        return sum(allocatedBytes);
+    }
+
+    /**
+     * Writes a row for each stage which has been called to the given stream, tab separated.
+     * @param out the stream.
+     * @param elapsedSeconds the time into the run, for the first column.
+     */
+    public void printRows(final PrintStream out, final double elapsedSeconds) {
+        final long[] numCalls = getCalls();
+        final long[] unitsProcessed = getUnitsProcessed();
+        final double[] rates = getUnitsPerSecond();
+        final long[] totalMillis = getTotalMillis();
+        final double[] means = getMeanMicros();
+        final double[] medians = getMedianMicros();
+        final double[] percentiles = getPercentile99Micros();
+        final long[] bytes = getAllocatedBytes();
+        for ( int i = 0; i < STAGES.length; i++ ) {
+            if ( numCalls[i] == 0 )
+                continue;
+            out.printf("%.2f\t%s\t%d\t%d\t%s\t%.2e\t%.3f\t%.2f\t%.2f\t%.2f\t%.1f%n",
+                    elapsedSeconds, STAGES[i].name(), numCalls[i], unitsProcessed[i], STAGES[i].getUnit(), rates[i],
+                    totalMillis[i] / 1e3, means[i], medians[i], percentiles[i], bytes[i] < 0 ? -1.0 : bytes[i] / 1e6);
+        }
+    }
+
+    /**
+     * @return the names of the columns written by printRows().
+     */
+    public static String[] getColumnNames() {
+        return new String[] { "elapsed.time", "stage", "calls", "units.processed", "unit", "units.per.sec", "total.secs",
+                "mean.usecs", "median.usecs", "p99.usecs", "allocated.mb" };
+    }
+
+    private double[] getQuantileMicros(final double quantile) {
+        final double[] quantiles = new double[STAGES.length];
+        for ( int i = 0; i < STAGES.length; i++ )
+            quantiles[i] = latencies[i].getValueAtQuantile(quantile) / 1e3;
+        return quantiles;
+    }
+
+    private static long[] sum(final StripedCounter[] counters) {
+        final long[] sums = new long[counters.length];
+        for ( int i = 0; i < counters.length; i++ )
+            sums[i] = counters[i].sum();
+        return sums;
+    }
+
+    private static StripedCounter[] createCounters() {
+        final StripedCounter[] counters = new StripedCounter[STAGES.length];
+        for ( int i = 0; i < STAGES.length; i++ )
+            counters[i] = new StripedCounter();
+        return counters;
+    }
+
+    /**
+     * @return the bytes allocated by this thread so far, or -1 if the JVM can't tell.
+     */
+    private static long getThreadAllocatedBytes() {
+        return allocationBean == null ? -1 : allocationBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static com.sun.management.ThreadMXBean getAllocationBean() {
+        final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if ( !(threadBean instanceof com.sun.management.ThreadMXBean) )
+            return null;
+        final com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean)threadBean;
+        if ( !allocationBean.isThreadAllocatedMemorySupported() )
+            return null;
+        return allocationBean;
+    }
+}
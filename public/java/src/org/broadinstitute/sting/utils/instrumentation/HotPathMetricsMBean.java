@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2012, The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.broadinstitute.sting.utils.instrumentation;
+
+/**
+ * The view of the hot path metrics exported over JMX.  Each array holds one entry per stage, in the order of
+ * getStages().
+ */
+public interface HotPathMetricsMBean {
+    /**
+     * Are the hot paths being timed?
+     * @return true if they are.
+     */
+    public boolean isEnabled();
+
+    /**
+     * Starts or stops timing the hot paths.  They are not timed unless asked to be, as timing costs a little on
+     * every call.
+     * @param enabled whether to time them.
+     */
+    public void setEnabled(boolean enabled);
+
+    /**
+     * Forgets everything collected so far.
+     */
+    public void reset();
+
+    public String[] getStages();
+
+    /**
+     * @return the unit in which each stage counts its work, eg reads or loci.
+     */
+    public String[] getUnits();
+
+    public long[] getCalls();
+
+    public long[] getUnitsProcessed();
+
+    /**
+     * @return units processed per second of wall time since the metrics were enabled or reset.
+     */
+    public double[] getUnitsPerSecond();
+
+    public long[] getTotalMillis();
+
+    public double[] getMeanMicros();
+
+    public double[] getMedianMicros();
+
+    public double[] getPercentile99Micros();
+
+    /**
+     * @return bytes allocated by each stage, or -1 where the JVM can't tell.
+     */
+    public long[] getAllocatedBytes();
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2012, The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.broadinstitute.sting.utils.instrumentation;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of non-negative longs, such as durations in nanoseconds, in log-linear buckets.
+ *
+ * Values below 2^SUB_BUCKET_BITS each have a bucket of their own.  Above that, every power of two is divided into
+ * 2^SUB_BUCKET_BITS buckets of equal width, so any value is known to within 1 part in 2^SUB_BUCKET_BITS, whatever
+ * its magnitude, in a fixed thousand or so buckets.  Recording a value is a few shifts and an atomic increment, so it
+ * can be done from many threads on every call of a hot method.
+ *
+ * Like a StripedCounter, each thread records into one of several stripes of buckets, chosen by its id, so that
+ * threads recording similar values don't contend for the same buckets; reading the histogram sums the stripes.
+ */
+public class LogLinearHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int NUM_BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    /**
+     * Longs between stripes, enough to keep the last buckets of one stripe off the cache line of the first of the next.
+     */
+    private static final int STRIPE_PADDING = 8;
+    private static final int STRIPE_LENGTH = NUM_BUCKETS + STRIPE_PADDING;
+
+    private final AtomicLongArray counts;
+    private final int mask;
+
+    public LogLinearHistogram() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param minStripes the least number of stripes; rounded up to a power of two.
+     */
+    public LogLinearHistogram(final int minStripes) {
+        int stripes = 1;
+        while ( stripes < minStripes )
+            stripes <<= 1;
+        counts = new AtomicLongArray(stripes * STRIPE_LENGTH);
+        mask = stripes - 1;
+    }
+
+    /**
+     * @param value the value to record; negative values count as 0.
+     */
+    public void record(final long value) {
+        counts.incrementAndGet(((int)Thread.currentThread().getId() & mask) * STRIPE_LENGTH + getBucket(Math.max(value, 0)));
+    }
+
+    /**
+     * @return the number of values recorded.
+     */
+    public long getCount() {
+        long count = 0;
+        for ( int i = 0; i < NUM_BUCKETS; i++ )
+            count += getBucketCount(i);
+        return count;
+    }
+
+    /**
+     * @param quantile between 0 and 1, eg 0.5 for the median.
+     * @return the greatest value in the bucket holding the given quantile of the values recorded, or 0 if none have been.
+     */
+    public long getValueAtQuantile(final double quantile) {
+        final long[] snapshot = new long[NUM_BUCKETS];
+        long count = 0;
+        for ( int i = 0; i < NUM_BUCKETS; i++ ) {
+            snapshot[i] = getBucketCount(i);
+            count += snapshot[i];
+        }
+        if ( count == 0 )
+            return 0;
+
+        final long rank = Math.max(1, (long)Math.ceil(quantile * count));
+        long seen = 0;
+        for ( int i = 0; i < NUM_BUCKETS; i++ ) {
+            seen += snapshot[i];
+            if ( seen >= rank )
+                return getBucketUpperBound(i);
+        }
+        return getBucketUpperBound(NUM_BUCKETS - 1);
+    }
+
+    public void reset() {
+        for ( int i = 0; i < counts.length(); i++ )
+            counts.set(i, 0);
+    }
+
+    private long getBucketCount(final int bucket) {
+        long count = 0;
+        for ( int i = bucket; i < counts.length(); i += STRIPE_LENGTH )
+            count += counts.get(i);
+        return count;
+    }
+
+    static int getBucket(final long value) {
+        if ( value < SUB_BUCKETS )
+            return (int)value;
+        final int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        final int shift = magnitude - SUB_BUCKET_BITS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + (int)((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    static long getBucketLowerBound(final int bucket) {
+        if ( bucket < SUB_BUCKETS )
+            return bucket;
+        final int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        return ((long)(SUB_BUCKETS + (bucket - SUB_BUCKETS) % SUB_BUCKETS)) << shift;
+    }
+
+    static long getBucketUpperBound(final int bucket) {
+        if ( bucket < SUB_BUCKETS )
+            return bucket;
+        final int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        return getBucketLowerBound(bucket) + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2012, The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.broadinstitute.sting.utils.instrumentation;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter which many threads can add to at once without all of them contending for the same cache line.
+ *
+ * Each thread adds to one of several cells, chosen by its id, and each cell sits on a cache line of its own.  Reading
+ * the counter sums the cells, so it is cheap to add to and comparatively expensive to read, which suits counters bumped
+ * on every read or locus and read every few seconds.
+ */
+public class StripedCounter {
+    /**
+     * Longs per cell, enough to keep neighbouring cells off each other's cache lines.
+     */
+    private static final int CELL_STRIDE = 8;
+
+    private final AtomicLongArray cells;
+    private final int mask;
+
+    public StripedCounter() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param minStripes the least number of cells; rounded up to a power of two.
+     */
+    public StripedCounter(final int minStripes) {
+        int stripes = 1;
+        while ( stripes < minStripes )
+            stripes <<= 1;
+        cells = new AtomicLongArray(stripes * CELL_STRIDE);
+        mask = stripes - 1;
+    }
+
+    public void add(final long x) {
+        cells.addAndGet(((int)Thread.currentThread().getId() & mask) * CELL_STRIDE, x);
+    }
+
+    public void increment() {
+        add(1);
+    }
+
+    /**
+     * @return the sum of everything added so far.  Not a snapshot: additions made while summing may or may not count.
+     */
+    public long sum() {
+        long sum = 0;
+        for ( int i = 0; i < cells.length(); i += CELL_STRIDE )
+            sum += cells.get(i);
+        return sum;
+    }
+
+    public void reset() {
+        for ( int i = 0; i < cells.length(); i += CELL_STRIDE )
+            cells.set(i, 0);
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2012, The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.broadinstitute.sting.utils.pileup;
+
+import org.broadinstitute.sting.utils.sam.GATKSAMRecord;
+
+/**
+ * The bases, qualities, mapping qualities and strands of the elements of a pileup, read out of the pileup in a
+ * single pass into primitive arrays.
+ *
+ * Code that looks at the same pileup many times over, such as the annotations of a variant, can loop over these
+ * arrays rather than iterating the pileup and asking each element and its read again.  Element i of each array is
+ * the i-th element of the pileup, which getElement(i) returns for anything not kept here.  Extended event pileups
+ * have no base or base quality at their elements; these are left zero.
+ */
+public class PileupStatistics {
+    public static final int FORWARD = 0;
+    public static final int REVERSE = 1;
+
+    private final int size;
+    private final int depthOfCoverage;
+    private final PileupElement[] elements;
+    private final byte[] bases;
+    private final byte[] quals;
+    private final int[] mappingQuals;
+    private final boolean[] negativeStrand;
+    private final boolean[] deletion;
+    private final boolean[] insertionAtBeginningOfRead;
+    private final boolean[] reducedRead;
+
+    private int[][] baseCountsByStrand = null;
+    private byte[] distinctBases = null;
+
+    public PileupStatistics(final ReadBackedPileup pileup) {
+        size = pileup.getNumberOfElements();
+        depthOfCoverage = pileup.depthOfCoverage();
+        elements = new PileupElement[size];
+        bases = new byte[size];
+        quals = new byte[size];
+        mappingQuals = new int[size];
+        negativeStrand = new boolean[size];
+        deletion = new boolean[size];
+        insertionAtBeginningOfRead = new boolean[size];
+        reducedRead = new boolean[size];
+
+        final boolean hasBases = !(pileup instanceof ReadBackedExtendedEventPileup);
+        int i = 0;
+        for (final PileupElement p : pileup) {
+            final GATKSAMRecord read = p.getRead();
+            elements[i] = p;
+            mappingQuals[i] = read.getMappingQuality();
+            negativeStrand[i] = read.getReadNegativeStrandFlag();
+            reducedRead[i] = read.isReducedRead();
+            if (hasBases) {
+                deletion[i] = p.isDeletion();
+                insertionAtBeginningOfRead[i] = p.isInsertionAtBeginningOfRead();
+                bases[i] = p.getBase();
+                quals[i] = p.getQual();
+            }
+            i++;
+        }
+    }
+
+    /**
+     * @return the number of elements in the pileup, counting each reduced read once
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the depth of the pileup, counting all the reads each reduced read stands for
+     */
+    public int depthOfCoverage() {
+        return depthOfCoverage;
+    }
+
+    public PileupElement getElement(final int i) {
+        return elements[i];
+    }
+
+    public byte getBase(final int i) {
+        return bases[i];
+    }
+
+    public byte getQual(final int i) {
+        return quals[i];
+    }
+
+    public int getMappingQual(final int i) {
+        return mappingQuals[i];
+    }
+
+    public boolean isNegativeStrand(final int i) {
+        return negativeStrand[i];
+    }
+
+    public boolean isDeletion(final int i) {
+        return deletion[i];
+    }
+
+    public boolean isInsertionAtBeginningOfRead(final int i) {
+        return insertionAtBeginningOfRead[i];
+    }
+
+    public boolean isReducedRead(final int i) {
+        return reducedRead[i];
+    }
+
+    /**
+     * @return the number of elements with each base on each strand, indexed by the base (as an unsigned byte) and
+     *         then FORWARD or REVERSE
+     */
+    public int[][] getBaseCountsByStrand() {
+        if (baseCountsByStrand == null)
+            countBases();
+        return baseCountsByStrand;
+    }
+
+    /**
+     * @return the bases of the elements, each once, in the order they're first seen in the pileup
+     */
+    public byte[] getDistinctBases() {
+        if (distinctBases == null)
+            countBases();
+        return distinctBases;
+    }
+
+    private void countBases() {
+        final int[][] counts = new int[256][2];
+        final byte[] seen = new byte[256];
+        int nSeen = 0;
+        for (int i = 0; i < size; i++) {
+            final int base = bases[i] & 0xff;
+            if (counts[base][FORWARD] == 0 && counts[base][REVERSE] == 0)
+                seen[nSeen++] = bases[i];
+            counts[base][negativeStrand[i] ? REVERSE : FORWARD]++;
+        }
+        distinctBases = new byte[nSeen];
+        System.arraycopy(seen, 0, distinctBases, 0, nSeen);
+        baseCountsByStrand = counts;
+    }
+}
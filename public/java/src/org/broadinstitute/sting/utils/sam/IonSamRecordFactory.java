@@ -6,6 +6,7 @@ import net.sf.samtools.SAMRecord;
 import net.sf.samtools.SAMRecordFactory;
 import net.sf.samtools.BAMRecord;
 
+import org.broadinstitute.sting.utils.instrumentation.HotPathMetrics;
 import org.iontorrent.sam2flowgram.util.FlowAlignRecord;
 import org.iontorrent.sam2flowgram.flowalign.FlowOrder;
 import org.iontorrent.sam2flowgram.util.ReferenceSequence;
@@ -82,6 +83,7 @@ public class IonSamRecordFactory extends GATKSamRecordFactory {
     
     //Perform flow alignment
     public void doFlowAlign(IonSAMRecord read) {
+        HotPathMetrics.begin(HotPathMetrics.Stage.FLOW_ALIGN);
         try {
             read.flowAlign = new FlowAlignRecord((SAMRecord)read,0,flowOrder);
             read.flowAlign.setAlignment(referenceSequence,phase_penalty,refBaseOffset,validateAlignments);
@@ -91,6 +93,8 @@ public class IonSamRecordFactory extends GATKSamRecordFactory {
             System.err.println("Error in read " + read.getSAMString());
             //System.err.println("Please report bugs to eric.tsung@lifetech.com");
             //System.exit(1);
+        } finally {
+            HotPathMetrics.end(HotPathMetrics.Stage.FLOW_ALIGN, 1);
         }
     }
     
@@ -110,21 +114,36 @@ public class IonSamRecordFactory extends GATKSamRecordFactory {
                                      final byte[] variableLengthBlock) {
         //System.out.print("Making new SAMRecord object of IonSamRecordFactory!\n");
         
-        IonSAMRecord newSAMRecord =
-                new IonSAMRecord(header,
-                        referenceSequenceIndex,
-                        alignmentStart,
-                        readNameLength,
-                        mappingQuality,
-                        indexingBin,
-                        cigarLen,
-                        flags,
-                        readLen,
-                        mateReferenceSequenceIndex,
-                        mateAlignmentStart,
-                        insertSize,
-                        variableLengthBlock);
-        checkChangeInContig(newSAMRecord);
+        IonSAMRecord newSAMRecord;
+        HotPathMetrics.begin(HotPathMetrics.Stage.RECORD_DECODE);
+        try {
+            newSAMRecord =
+                    new IonSAMRecord(header,
+                            referenceSequenceIndex,
+                            alignmentStart,
+                            readNameLength,
+                            mappingQuality,
+                            indexingBin,
+                            cigarLen,
+                            flags,
+                            readLen,
+                            mateReferenceSequenceIndex,
+                            mateAlignmentStart,
+                            insertSize,
+                            variableLengthBlock);
+            checkChangeInContig(newSAMRecord);
+            // BAMRecord decodes its variable length fields on first use; when the metrics are on, decode them here, so
+            // that the time is charged to the record rather than to the flow alignment that would be the first to use them
+            if ( HotPathMetrics.getInstance().isEnabled() ) {
+                newSAMRecord.getReadName();
+                newSAMRecord.getCigar();
+                newSAMRecord.getReadBases();
+                newSAMRecord.getBaseQualities();
+                newSAMRecord.getAttributes();
+            }
+        } finally {
+            HotPathMetrics.end(HotPathMetrics.Stage.RECORD_DECODE, 1);
+        }
         doFlowAlign(newSAMRecord);
         return newSAMRecord;
     }
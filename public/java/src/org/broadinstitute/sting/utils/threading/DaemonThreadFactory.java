@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2010, The Broad Institute
+ * Copyright (c) 2012, The Broad Institute
  *
  * Permission is hereby granted, free of charge, to any person
  * obtaining a copy of this software and associated documentation
@@ -12,6 +12,7 @@
  *
  * The above copyright notice and this permission notice shall be
  * included in all copies or substantial portions of the Software.
+ *
  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
  * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
  * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
@@ -21,43 +22,32 @@
  * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
  * OTHER DEALINGS IN THE SOFTWARE.
  */
-package org.broadinstitute.sting.gatk.walkers.phasing;
 
-/*
- Edge class for PhasingGraph
- */
-class PhasingGraphEdge implements Comparable<PhasingGraphEdge> {
-    protected int v1;
-    protected int v2;
+package org.broadinstitute.sting.utils.threading;
 
-    public PhasingGraphEdge(int v1, int v2) {
-        this.v1 = v1;
-        this.v2 = v2;
-    }
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
-    public int getV1() {
-        return v1;
-    }
-
-    public int getV2() {
-        return v2;
-    }
-
-    public int compareTo(PhasingGraphEdge that) {
-        if (this.v1 != that.v1)
-            return (this.v1 - that.v1);
-
-        // this.v1 == that.v1:
-        return (this.v2 - that.v2);
-    }
-
-    public boolean equals(PhasingGraphEdge other) {
-        return (this.compareTo(other) == 0);
+/**
+ * Creates named daemon threads for the worker pools of walkers.
+ *
+ * A walker only gets to shut its pool down in onTraversalDone, which isn't called when the traversal fails, so the
+ * workers mustn't be able to keep the JVM alive on their own.
+ */
+public class DaemonThreadFactory implements ThreadFactory {
+    private final String namePrefix;
+    private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+    /**
+     * @param namePrefix  the threads are named namePrefix-1, namePrefix-2, ...
+     */
+    public DaemonThreadFactory(final String namePrefix) {
+        this.namePrefix = namePrefix;
     }
 
-    public String toString() {
-        StringBuilder sb = new StringBuilder();
-        sb.append("(").append(v1).append(", ").append(v2).append(")");
-        return sb.toString();
+    public Thread newThread(final Runnable runnable) {
+        final Thread thread = new Thread(runnable, namePrefix + "-" + threadNumber.getAndIncrement());
+        thread.setDaemon(true);
+        return thread;
     }
 }
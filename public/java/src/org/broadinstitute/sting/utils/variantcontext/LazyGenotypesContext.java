@@ -53,7 +53,7 @@ public class LazyGenotypesContext extends GenotypesContext {
     /**
      * True if we've already decoded the values in unparsedGenotypeData
      */
-    boolean loaded = false;
+    volatile boolean loaded = false;
 
     private final static ArrayList<Genotype> EMPTY = new ArrayList<Genotype>(0);
 
@@ -126,7 +126,7 @@ public class LazyGenotypesContext extends GenotypesContext {
     /**
      * Force us to decode the genotypes, if not already done
      */
-    public void decode() {
+    public synchronized void decode() {
         if ( ! loaded ) {
             //System.out.printf("Loading genotypes... %s:%d%n", contig, start);
             LazyData parsed = parser.parse(unparsedGenotypeData);
@@ -177,8 +177,8 @@ public class VariantContext implements Feature { // to enable tribble intergrati
     final protected long stop;
     private final String ID;
 
-    /** The type (cached for performance reasons) of this context */
-    protected Type type = null;
+    /** The type (cached for performance reasons) of this context; volatile as contexts may be shared between threads */
+    protected volatile Type type = null;
 
     /** A set of the alleles segregating in this context */
     final protected List<Allele> alleles;
@@ -186,8 +186,8 @@ public class VariantContext implements Feature { // to enable tribble intergrati
     /** A mapping from sampleName -> genotype objects for all genotypes associated with this context */
     protected GenotypesContext genotypes = null;
 
-    /** Counts for each of the possible Genotype types in this context */
-    protected int[] genotypeCounts = null;
+    /** Counts for each of the possible Genotype types in this context; volatile as contexts may be shared between threads */
+    protected volatile int[] genotypeCounts = null;
 
     public final static GenotypesContext NO_GENOTYPES = GenotypesContext.NO_GENOTYPES;
 
@@ -845,11 +845,13 @@ public class VariantContext implements Feature { // to enable tribble intergrati
 
     private void calculateGenotypeCounts() {
         if ( genotypeCounts == null ) {
-            genotypeCounts = new int[Genotype.Type.values().length];
+            // count into a local array, so that other threads sharing this context never see a partial count
+            final int[] counts = new int[Genotype.Type.values().length];
 
             for ( final Genotype g : getGenotypes() ) {
-                genotypeCounts[g.getType().ordinal()]++;
+                counts[g.getType().ordinal()]++;
             }
+            genotypeCounts = counts;
         }
     }
 
@@ -1122,7 +1124,8 @@ public class VariantContext implements Feature { // to enable tribble intergrati
     }
 
     private void determinePolymorphicType() {
-        type = null;
+        // work out the type in a local, so that other threads sharing this context never see a partial answer
+        Type polymorphicType = null;
 
         // do a pairwise comparison of all alleles against the reference allele
         for ( Allele allele : alleles ) {
@@ -1133,15 +1136,17 @@ public class VariantContext implements Feature { // to enable tribble intergrati
             Type biallelicType = typeOfBiallelicVariant(REF, allele);
 
             // for the first alternate allele, set the type to be that one
-            if ( type == null ) {
-                type = biallelicType;
+            if ( polymorphicType == null ) {
+                polymorphicType = biallelicType;
             }
             // if the type of this allele is different from that of a previous one, assign it the MIXED type and quit
-            else if ( biallelicType != type ) {
-                type = Type.MIXED;
-                return;
+            else if ( biallelicType != polymorphicType ) {
+                polymorphicType = Type.MIXED;
+                break;
             }
         }
+
+        type = polymorphicType;
     }
 
     private static Type typeOfBiallelicVariant(Allele ref, Allele allele) {
@@ -3,8 +3,10 @@ package org.iontorrent.vc.locusWalkerAttributes;
 import net.sf.samtools.SAMRecord;
 import org.broadinstitute.sting.gatk.contexts.AlignmentContext;
 import org.broadinstitute.sting.gatk.contexts.ReferenceContext;
+import org.broadinstitute.sting.gatk.walkers.annotator.SitePileupStatistics;
 import org.broadinstitute.sting.gatk.walkers.genotyper.VariantCallContext;
 import org.broadinstitute.sting.utils.collections.Pair;
+import org.broadinstitute.sting.utils.pileup.PileupStatistics;
 import org.broadinstitute.sting.utils.sam.GATKSAMRecord;
 import org.broadinstitute.sting.utils.variantcontext.VariantContext;
 
@@ -22,6 +24,7 @@ import java.util.Map;
  */
 public class IonStrandBias {
     Map<String, AlignmentContext> stratifiedContexts;
+    SitePileupStatistics statistics;
     VariantContext vc;
     VariantCallContext vcc;
     ReferenceContext refContext;
@@ -30,7 +33,12 @@ public class IonStrandBias {
     Map<String,List<Pair<String,Pair<Integer, Integer>>>> stratifiedAllelesStrandReadCounts;
 
     public IonStrandBias(Map<String, AlignmentContext> stratifiedContexts, VariantContext vc, VariantCallContext vcc, ReferenceContext refContext)  {
+        this(stratifiedContexts, new SitePileupStatistics(stratifiedContexts), vc, vcc, refContext);
+    }
+
+    public IonStrandBias(Map<String, AlignmentContext> stratifiedContexts, SitePileupStatistics statistics, VariantContext vc, VariantCallContext vcc, ReferenceContext refContext)  {
         this.stratifiedContexts = stratifiedContexts;
+        this.statistics = statistics;
         this.vc = vc;
         this.vcc = vcc;
         this.refContext = refContext;
@@ -69,6 +77,13 @@ public class IonStrandBias {
         return posNegStrandCounts;
     }
 
+    private Pair<String,Pair<Integer, Integer>> getPosNegStrandCounts(byte base, int[] strandCounts) {
+        // the counts are kept in the same (reverse, forward) order as the read list version above
+        String allele = ""+((char)base);
+        return new Pair<String, Pair<Integer, Integer>>(allele,
+                new Pair<Integer, Integer>(strandCounts[PileupStatistics.REVERSE], strandCounts[PileupStatistics.FORWARD]));
+    }
+
     public void determineStrandReadCounts(String locusContextRefBases)
     throws Exception {
         if (locusContextRefBases=="") {
@@ -80,14 +95,18 @@ public class IonStrandBias {
             List<Pair<String,Pair<Integer, Integer>>> allelesStrandReadCounts;
             allelesStrandReadCounts = new ArrayList<Pair<String,Pair<Integer, Integer>>>();
             if (ac.hasBasePileup()) {
-                List<Pair<Byte,List<GATKSAMRecord>>> basesNReads;
-                basesNReads = ac.getBasePileup().getEventBaseWithReadList(locusContextRefBases.getBytes()[0]);
-                for(Pair<Byte,List<GATKSAMRecord>> baseNReads : basesNReads) {
-                    String allele = ""+((char)((byte)baseNReads.getFirst()));
+                // same bases in the same order as getEventBaseWithReadList, counted from the shared statistics
+                PileupStatistics pileup = statistics.getStatistics(stratifiedContext.getKey());
+                int[][] baseCounts = pileup.getBaseCountsByStrand();
+                byte refBase = locusContextRefBases.getBytes()[0];
+                Map<Byte, int[]> events = new HashMap<Byte, int[]>();
+                for(byte base : pileup.getDistinctBases())
+                    events.put(base, baseCounts[base & 0xff]);
 
-                    Pair<Integer, Integer> posNegStrandCounts;
-                    posNegStrandCounts = getPosNegStrandCounts(baseNReads.getSecond());
-                    allelesStrandReadCounts.add(new Pair<String, Pair<Integer, Integer>>(allele,posNegStrandCounts));
+                allelesStrandReadCounts.add(getPosNegStrandCounts(refBase, baseCounts[refBase & 0xff]));
+                for(Map.Entry<Byte, int[]> event : events.entrySet()) {
+                    if (event.getKey() != refBase)
+                        allelesStrandReadCounts.add(getPosNegStrandCounts(event.getKey(), event.getValue()));
                 }
             } else {
                 List<Pair<String, List<GATKSAMRecord>>> locusSeqNReads;
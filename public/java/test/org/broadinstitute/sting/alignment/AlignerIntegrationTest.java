@@ -1,9 +1,12 @@
 package org.broadinstitute.sting.alignment;
 
+import org.testng.Assert;
 import org.testng.annotations.Test;
 import org.broadinstitute.sting.WalkerTest;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 /**
  * Integration tests for the aligner.
@@ -24,4 +27,23 @@ public class AlignerIntegrationTest extends WalkerTest {
                 Arrays.asList(md5));
         executeTest("testBasicAlignment", spec);
     }
+
+    @Test
+    public void testThreadedAlignmentMatchesSingleThreaded() {
+        // A good share of these reads fall in repeats, where the aligner picks one of several equally good placements
+        final List<String> md5s = new ArrayList<String>();
+        for ( final int threads : Arrays.asList(1, 4) ) {
+            WalkerTest.WalkerTestSpec spec = new WalkerTest.WalkerTestSpec(
+                    "-R " + GATKDataLocation + "bwa/human_b36_both.fasta" +
+                            " -T Align" +
+                            " -I " + validationDataLocation + "NA12878_Pilot1_20.trimmed.unmapped.bam" +
+                            " -alignThreads " + threads +
+                            " -alignBatchSize 100" +
+                            " -o %s",
+                    1, // just one output file
+                    Arrays.asList(""));
+            md5s.add(executeTest("testThreadedAlignment-" + threads, spec).getSecond().get(0));
+        }
+        Assert.assertEquals(md5s.get(1), md5s.get(0), "Aligning on 4 threads placed reads differently than aligning on 1");
+    }
 }
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2012, The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.broadinstitute.sting.alignment.reference.bwt;
+
+import org.broadinstitute.sting.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks the BWT and suffix array mapped from their files against the ones read onto the heap
+ */
+public class MappedBWTUnitTest extends BaseTest {
+    private static final byte[] BASES = new byte[]{'A', 'C', 'G', 'T'};
+
+    @DataProvider(name = "lengths")
+    public Object[][] makeLengths() {
+        // either side of the 128 base blocks, and long enough for several checkpoints
+        return new Object[][]{{1}, {15}, {16}, {17}, {127}, {128}, {129}, {255}, {256}, {257}, {1000}, {5000}};
+    }
+
+    @Test(dataProvider = "lengths")
+    public void testMappedBWTMatchesHeap(final int length) throws IOException {
+        final File file = writeBWT(BWT.createFromReferenceSequence(randomSequence(length)));
+        final BWT heap = readBWT(file, false);
+        final BWT mapped = readBWT(file, true);
+
+        Assert.assertEquals(mapped.length(), heap.length());
+        Assert.assertEquals(mapped.getSequence(), heap.getSequence());
+        for (byte base : BASES) {
+            Assert.assertEquals(mapped.counts(base), heap.counts(base));
+            for (long index = 0; index < heap.length(); index++)
+                Assert.assertEquals(mapped.occurrences(base, index), heap.occurrences(base, index), "Occurrences of " + (char) base + " differ at " + index);
+        }
+        for (long index = 0; index <= heap.length(); index++)
+            if (index != heap.inverseSA0)
+                Assert.assertEquals(mapped.getBase(index), heap.getBase(index), "Base differs at " + index);
+
+        // writing out the mapped BWT gives back the same file
+        Assert.assertEquals(readBytes(writeBWT(mapped)), readBytes(file));
+    }
+
+    @Test(dataProvider = "lengths")
+    public void testMappedSuffixArrayMatchesHeap(final int length) throws IOException {
+        final byte[] sequence = randomSequence(length);
+        final File bwtFile = writeBWT(BWT.createFromReferenceSequence(sequence));
+        final SuffixArray built = SuffixArray.createFromReferenceSequence(sequence);
+        final File file = writeSuffixArray(built);
+
+        final SuffixArray heap = readSuffixArray(file, readBWT(bwtFile, false), false);
+        final SuffixArray mapped = readSuffixArray(file, readBWT(bwtFile, true), true);
+        Assert.assertEquals(mapped.length(), built.length());
+        for (long index = 0; index < built.length(); index++) {
+            Assert.assertEquals(heap.get(index), built.get(index), "Suffix array differs at " + index);
+            Assert.assertEquals(mapped.get(index), built.get(index), "Mapped suffix array differs at " + index);
+        }
+
+        // the mapped suffix array has no entries on the heap to write, but writes the same file from the mapped one
+        Assert.assertEquals(readBytes(writeSuffixArray(mapped)), readBytes(file));
+    }
+
+    private static byte[] randomSequence(final int length) {
+        final Random random = new Random(length);
+        final byte[] sequence = new byte[length];
+        for (int i = 0; i < length; i++)
+            sequence[i] = BASES[random.nextInt(BASES.length)];
+        return sequence;
+    }
+
+    private static File writeBWT(final BWT bwt) {
+        final File file = createTempFile("MappedBWTUnitTest", ".bwt");
+        final BWTWriter writer = new BWTWriter(file);
+        writer.write(bwt);
+        writer.close();
+        return file;
+    }
+
+    private static BWT readBWT(final File file, final boolean map) {
+        final BWTReader reader = new BWTReader(file);
+        // a mapping outlives the channel it was made from
+        final BWT bwt = map ? reader.map() : reader.read();
+        reader.close();
+        return bwt;
+    }
+
+    private static File writeSuffixArray(final SuffixArray suffixArray) {
+        final File file = createTempFile("MappedBWTUnitTest", ".sa");
+        final SuffixArrayWriter writer = new SuffixArrayWriter(file);
+        writer.write(suffixArray);
+        writer.close();
+        return file;
+    }
+
+    private static SuffixArray readSuffixArray(final File file, final BWT bwt, final boolean map) {
+        final SuffixArrayReader reader = new SuffixArrayReader(file, bwt);
+        final SuffixArray suffixArray = map ? reader.map() : reader.read();
+        reader.close();
+        return suffixArray;
+    }
+
+    private static byte[] readBytes(final File file) throws IOException {
+        final byte[] bytes = new byte[(int) file.length()];
+        final DataInputStream stream = new DataInputStream(new FileInputStream(file));
+        try {
+            stream.readFully(bytes);
+        } finally {
+            stream.close();
+        }
+        return bytes;
+    }
+}
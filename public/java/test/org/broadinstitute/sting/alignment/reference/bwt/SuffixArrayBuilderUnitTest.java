@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2012, The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.broadinstitute.sting.alignment.reference.bwt;
+
+import org.broadinstitute.sting.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.*;
+
+/**
+ * Checks the suffix arrays built by induced sorting against a plain sort of the suffixes
+ */
+public class SuffixArrayBuilderUnitTest extends BaseTest {
+    @DataProvider(name = "sequences")
+    public Object[][] makeSequences() {
+        final Random random = new Random(31);
+        final List<Object[]> sequences = new ArrayList<Object[]>();
+
+        sequences.add(new Object[]{""});
+        sequences.add(new Object[]{"A"});
+        sequences.add(new Object[]{"T"});
+        sequences.add(new Object[]{repeat("A", 1000)});
+        sequences.add(new Object[]{repeat("AC", 500)});
+        sequences.add(new Object[]{repeat("ACGTTGCA", 100)});
+        sequences.add(new Object[]{repeat("A", 300) + repeat("C", 300) + repeat("A", 300)});
+        sequences.add(new Object[]{repeat("ACAACAAAC", 50) + "N"});
+
+        for (int i = 0; i < 20; i++) {
+            // random sequences over alphabets of one to four bases, and with stretches repeated
+            final String alphabet = "ACGT".substring(0, 1 + random.nextInt(4));
+            final StringBuilder sequence = new StringBuilder();
+            final int length = random.nextInt(2000);
+            while (sequence.length() < length) {
+                if (random.nextInt(4) == 0 && sequence.length() > 0) {
+                    final int start = random.nextInt(sequence.length());
+                    sequence.append(sequence, start, Math.min(sequence.length(), start + random.nextInt(100)));
+                } else {
+                    sequence.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+            }
+            sequences.add(new Object[]{sequence.toString()});
+        }
+
+        return sequences.toArray(new Object[sequences.size()][]);
+    }
+
+    @Test(dataProvider = "sequences")
+    public void testMatchesSortedSuffixes(final String sequence) {
+        final Integer[] expected = new Integer[sequence.length() + 1];
+        for (int i = 0; i < expected.length; i++)
+            expected[i] = i;
+        Arrays.sort(expected, new Comparator<Integer>() {
+            public int compare(final Integer a, final Integer b) {
+                return sequence.substring(a).compareTo(sequence.substring(b));
+            }
+        });
+
+        final int[] suffixArray = SuffixArrayBuilder.build(sequence.getBytes());
+        Assert.assertEquals(suffixArray.length, expected.length);
+        for (int i = 0; i < expected.length; i++)
+            Assert.assertEquals(suffixArray[i], (int) expected[i], "Suffix array differs at " + i);
+    }
+
+    private static String repeat(final String unit, final int times) {
+        final StringBuilder sequence = new StringBuilder(unit.length() * times);
+        for (int i = 0; i < times; i++)
+            sequence.append(unit);
+        return sequence.toString();
+    }
+}
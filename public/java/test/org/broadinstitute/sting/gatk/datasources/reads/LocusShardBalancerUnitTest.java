@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2011, The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.broadinstitute.sting.gatk.datasources.reads;
+
+import net.sf.samtools.*;
+import org.broadinstitute.sting.BaseTest;
+import org.broadinstitute.sting.commandline.Tags;
+import org.broadinstitute.sting.gatk.arguments.ValidationExclusion;
+import org.broadinstitute.sting.gatk.filters.ReadFilter;
+import org.broadinstitute.sting.gatk.iterators.StingSAMIterator;
+import org.broadinstitute.sting.gatk.resourcemanagement.ThreadAllocation;
+import org.broadinstitute.sting.utils.GenomeLoc;
+import org.broadinstitute.sting.utils.GenomeLocParser;
+import org.broadinstitute.sting.utils.sam.ArtificialSAMUtils;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.*;
+
+public class LocusShardBalancerUnitTest extends BaseTest {
+    private static final long MAX_SHARD_SIZE = 1000;
+
+    private GenomeLocParser genomeLocParser;
+    private SAMReaderID readerID = new SAMReaderID("samFile",new Tags());
+
+    @BeforeMethod
+    public void doForEachTest() {
+        SAMFileHeader header = ArtificialSAMUtils.createArtificialSamHeader(1,1,100000);
+        genomeLocParser = new GenomeLocParser(header.getSequenceDictionary());
+    }
+
+    /**
+     * A file pointer whose span is estimated to be about the given size
+     */
+    private FilePointer createFilePointer(final long size, final GenomeLoc... locations) {
+        return createFilePointer(0,size,locations);
+    }
+
+    /**
+     * A file pointer whose span starts at the given block and is estimated to be about the given size
+     */
+    private FilePointer createFilePointer(final long startBlock, final long size, final GenomeLoc... locations) {
+        FilePointer filePointer = new FilePointer(locations);
+        filePointer.addFileSpans(readerID,new GATKBAMFileSpan(new GATKChunk(startBlock << 16,(startBlock+Math.round(size*0.39)) << 16)));
+        return filePointer;
+    }
+
+    private List<Shard> balance(final FilePointer... filePointers) {
+        return balance(MAX_SHARD_SIZE,filePointers);
+    }
+
+    private List<Shard> balance(final long maxShardSize, final FilePointer... filePointers) {
+        return balance(null,maxShardSize,filePointers);
+    }
+
+    private List<Shard> balance(final SAMDataSource readsDataSource, final long maxShardSize, final FilePointer... filePointers) {
+        LocusShardBalancer balancer = new LocusShardBalancer(maxShardSize);
+        balancer.initialize(readsDataSource,Arrays.asList(filePointers).iterator(),genomeLocParser);
+        List<Shard> shards = new ArrayList<Shard>();
+        for(Shard shard: balancer)
+            shards.add(shard);
+        return shards;
+    }
+
+    @Test
+    public void testSmallShardIsNotSplit() {
+        GenomeLoc location = genomeLocParser.createGenomeLoc("chr1",1,1000);
+        List<Shard> shards = balance(createFilePointer(MAX_SHARD_SIZE/2,location));
+        Assert.assertEquals(shards.size(),1);
+        Assert.assertEquals(shards.get(0).getGenomeLocs(),Arrays.asList(location));
+    }
+
+    @Test
+    public void testHeavyShardIsSplitInOrder() {
+        GenomeLoc first = genomeLocParser.createGenomeLoc("chr1",101,250);
+        GenomeLoc second = genomeLocParser.createGenomeLoc("chr1",301,450);
+        FilePointer light = createFilePointer(10,genomeLocParser.createGenomeLoc("chr1",1,100));
+        FilePointer heavy = createFilePointer(100,5*MAX_SHARD_SIZE/2,first,second);
+        List<Shard> shards = balance(light,heavy);
+
+        Assert.assertEquals(shards.size(),4);
+        Assert.assertEquals(shards.get(1).getGenomeLocs(),Arrays.asList(first.split(201)[0]));
+        Assert.assertEquals(shards.get(2).getGenomeLocs(),Arrays.asList(first.split(201)[1],second.split(351)[0]));
+        Assert.assertEquals(shards.get(3).getGenomeLocs(),Arrays.asList(second.split(351)[1]));
+        for(Shard shard: shards.subList(1,4))
+            Assert.assertEquals(shard.getFileSpans(),heavy.fileSpans);
+    }
+
+    @Test
+    public void testShortIntervalIsNotSplitTooFinely() {
+        GenomeLoc location = genomeLocParser.createGenomeLoc("chr1",1,LocusShardBalancer.MIN_LOCI_PER_SHARD*2);
+        List<Shard> shards = balance(createFilePointer(100*MAX_SHARD_SIZE,location));
+        Assert.assertEquals(shards.size(),2);
+    }
+
+    @Test
+    public void testUnboundedShardIsNeverSplit() {
+        GenomeLoc location = genomeLocParser.createGenomeLoc("chr1",1,100000);
+        List<Shard> shards = balance(Long.MAX_VALUE,createFilePointer(100000*MAX_SHARD_SIZE,location));
+        Assert.assertEquals(shards.size(),1);
+        Assert.assertEquals(shards.get(0).getGenomeLocs(),Arrays.asList(location));
+    }
+
+    /**
+     * The tumor reads of the somatic indel test data are around chr1:5050, in the first 16kb bin of the index, and
+     * around chr1:20050, in the second.
+     */
+    @Test
+    public void testPiecesReadOnlyTheirOwnBins() {
+        SAMReaderID tumorReaderID = new SAMReaderID(new File(testDir + "somaticIndelTumor.bam"),new Tags());
+        SAMDataSource readsDataSource = new SAMDataSource(Arrays.asList(tumorReaderID),
+                new ThreadAllocation(),
+                null,
+                genomeLocParser,
+                false,
+                SAMFileReader.ValidationStringency.SILENT,
+                null,
+                null,
+                new ValidationExclusion(),
+                new ArrayList<ReadFilter>(),
+                false,
+                false);
+
+        FilePointer filePointer = new FilePointer(genomeLocParser.createGenomeLoc("chr1",1,32768));
+        filePointer.addFileSpans(tumorReaderID,new GATKBAMFileSpan(new GATKChunk(0,Long.MAX_VALUE)));
+        List<Shard> shards = balance(readsDataSource,filePointer.size()/2+1,filePointer);
+        Assert.assertEquals(shards.size(),2);
+
+        GATKBAMFileSpan firstSpan = new GATKBAMFileSpan(shards.get(0).getFileSpans().get(tumorReaderID));
+        GATKBAMFileSpan secondSpan = new GATKBAMFileSpan(shards.get(1).getFileSpans().get(tumorReaderID));
+        Assert.assertTrue(firstSpan.intersection(secondSpan).isEmpty(),"pieces over different bins read the same part of the file");
+
+        Assert.assertEquals(readNamePrefixes(readsDataSource,shards.get(0)),Collections.singleton("tumor.0"));
+        Assert.assertEquals(readNamePrefixes(readsDataSource,shards.get(1)),Collections.singleton("tumor.1"));
+    }
+
+    private Set<String> readNamePrefixes(final SAMDataSource readsDataSource, final Shard shard) {
+        Set<String> prefixes = new TreeSet<String>();
+        StingSAMIterator reads = readsDataSource.seek(shard);
+        while(reads.hasNext()) {
+            String readName = reads.next().getReadName();
+            prefixes.add(readName.substring(0,readName.lastIndexOf('.')));
+        }
+        reads.close();
+        return prefixes;
+    }
+}
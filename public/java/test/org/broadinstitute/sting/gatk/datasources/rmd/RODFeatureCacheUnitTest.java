@@ -0,0 +1,117 @@
+package org.broadinstitute.sting.gatk.datasources.rmd;
+
+import net.sf.samtools.SAMSequenceDictionary;
+import net.sf.samtools.util.CloseableIterator;
+import org.broadinstitute.sting.BaseTest;
+import org.broadinstitute.sting.commandline.Tags;
+import org.broadinstitute.sting.gatk.refdata.tracks.RMDTrack;
+import org.broadinstitute.sting.gatk.refdata.tracks.RMDTrackBuilder;
+import org.broadinstitute.sting.gatk.refdata.utils.GATKFeature;
+import org.broadinstitute.sting.gatk.refdata.utils.RMDTriplet;
+import org.broadinstitute.sting.utils.GenomeLoc;
+import org.broadinstitute.sting.utils.GenomeLocParser;
+import org.broadinstitute.sting.utils.sam.ArtificialSAMUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * tests that queries served from the cache give the same features as querying the track itself
+ */
+public class RODFeatureCacheUnitTest extends BaseTest {
+    private final static int CONTIG_LENGTH = 100000;
+
+    private SAMSequenceDictionary dictionary;
+    private GenomeLocParser genomeLocParser;
+    private RMDTrackBuilder builder;
+    private File bedFile;
+
+    @BeforeClass
+    public void init() throws FileNotFoundException {
+        dictionary = ArtificialSAMUtils.createArtificialSamHeader(1, 1, CONTIG_LENGTH).getSequenceDictionary();
+        genomeLocParser = new GenomeLocParser(dictionary);
+        builder = new RMDTrackBuilder(dictionary, genomeLocParser, null);
+
+        // features of all sizes, some of them spanning several blocks
+        bedFile = createTempFile("RODFeatureCacheUnitTest", ".bed");
+        final Random random = new Random(42);
+        final PrintWriter writer = new PrintWriter(bedFile);
+        int start = 0;
+        for ( int i = 0; start < CONTIG_LENGTH - 100; i++ ) {
+            final int length = random.nextInt(10) == 0 ? 1 + random.nextInt(40000) : 1 + random.nextInt(100);
+            writer.printf("chr1\t%d\t%d\tfeature%d%n", start, Math.min(start + length, CONTIG_LENGTH), i);
+            start += random.nextInt(300);
+        }
+        writer.close();
+    }
+
+    @AfterClass
+    public void deleteIndex() {
+        new File(bedFile.getAbsolutePath() + ".idx").delete();
+    }
+
+    @DataProvider(name = "cacheSizes")
+    public Object[][] makeCacheSizes() {
+        return new Object[][] { { 1 }, { 200 }, { 100000 } };
+    }
+
+    @Test(dataProvider = "cacheSizes")
+    public void testQueries(final int maxFeatures) throws IOException {
+        final RMDTrack track = builder.createInstanceOfTrack(new RMDTriplet("bed", "BED", bedFile.getAbsolutePath(), RMDTriplet.RMDStorageType.FILE, new Tags()));
+        final RODFeatureCache cache = new RODFeatureCache(maxFeatures);
+
+        final Random random = new Random(maxFeatures);
+        for ( int i = 0; i < 100; i++ ) {
+            final int start = 1 + random.nextInt(CONTIG_LENGTH);
+            final int stop = Math.min(CONTIG_LENGTH, start + random.nextInt(i % 2 == 0 ? 100 : 50000));
+            final GenomeLoc interval = genomeLocParser.createGenomeLoc("chr1", start, stop);
+
+            Assert.assertEquals(getNames(cache.query(track, dictionary, genomeLocParser, interval)), getNames(track.query(interval)), "Features differ at " + interval);
+            Assert.assertTrue(cache.getNFeatures() <= maxFeatures, "Cache holds more features than it should");
+        }
+        track.close();
+    }
+
+    @Test
+    public void testBlocksAreShared() throws IOException {
+        final RODFeatureCache cache = new RODFeatureCache(100000);
+        final GenomeLoc interval = genomeLocParser.createGenomeLoc("chr1", 1000, 40000);
+
+        final RMDTrack track1 = builder.createInstanceOfTrack(new RMDTriplet("bed", "BED", bedFile.getAbsolutePath(), RMDTriplet.RMDStorageType.FILE, new Tags()));
+        final List<String> names = getNames(cache.query(track1, dictionary, genomeLocParser, interval));
+        final long nDecoded = cache.getNBlocksDecoded();
+        track1.close();
+
+        // a second track on the same file is served from the blocks the first decoded
+        final RMDTrack track2 = builder.createInstanceOfTrack(new RMDTriplet("bed", "BED", bedFile.getAbsolutePath(), RMDTriplet.RMDStorageType.FILE, new Tags()));
+        Assert.assertEquals(getNames(cache.query(track2, dictionary, genomeLocParser, interval)), names);
+        Assert.assertEquals(cache.getNBlocksDecoded(), nDecoded);
+
+        // but a track bound to another name isn't
+        final RMDTrack track3 = builder.createInstanceOfTrack(new RMDTriplet("other", "BED", bedFile.getAbsolutePath(), RMDTriplet.RMDStorageType.FILE, new Tags()));
+        Assert.assertEquals(getNames(cache.query(track3, dictionary, genomeLocParser, interval)), names);
+        Assert.assertEquals(cache.getNBlocksDecoded(), 2 * nDecoded);
+        track2.close();
+        track3.close();
+    }
+
+    private static List<String> getNames(final CloseableIterator<GATKFeature> it) {
+        final List<String> names = new ArrayList<String>();
+        while ( it.hasNext() ) {
+            final GATKFeature feature = it.next();
+            names.add(feature.getLocation() + ":" + feature.getEnd());
+        }
+        it.close();
+        return names;
+    }
+}
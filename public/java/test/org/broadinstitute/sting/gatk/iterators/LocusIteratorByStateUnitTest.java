@@ -11,6 +11,8 @@ import org.broadinstitute.sting.utils.pileup.ReadBackedPileup;
 import org.broadinstitute.sting.utils.sam.GATKSAMRecord;
 import org.testng.Assert;
 import org.broadinstitute.sting.BaseTest;
+import org.broadinstitute.sting.gatk.DownsampleType;
+import org.broadinstitute.sting.gatk.DownsamplingMethod;
 import org.broadinstitute.sting.gatk.ReadProperties;
 import org.broadinstitute.sting.gatk.arguments.ValidationExclusion;
 import org.broadinstitute.sting.gatk.datasources.reads.SAMReaderID;
@@ -344,13 +346,200 @@ public class LocusIteratorByStateUnitTest extends BaseTest {
         Assert.assertFalse(li.hasNext(),"Too many alignment contexts");
     }
 
+    @Test
+    public void testDownsamplingCrowdedAlignmentStarts() {
+        final int targetCoverage = 1000;
+        final int readsPerAlignmentStart = 600;
+
+        List<SAMRecord> reads = new ArrayList<SAMRecord>();
+        for (int start = 1; start <= 2; start++)
+            for (int i = 0; i < readsPerAlignmentStart; i++)
+                reads.add(ArtificialSAMUtils.createArtificialRead(header, "read" + start + "." + i, 0, start, 10));
+
+        li = makeLTBS(reads, createTestReadProperties(new DownsamplingMethod(DownsampleType.BY_SAMPLE, targetCoverage, null)));
+
+        int numAlignmentContextsFound = 0;
+        while (li.hasNext()) {
+            AlignmentContext alignmentContext = li.next();
+            final int locus = alignmentContext.getLocation().getStart();
+            final List<GATKSAMRecord> readsAtLocus = alignmentContext.getBasePileup().getReads();
+            Assert.assertTrue(readsAtLocus.size() <= targetCoverage, "Pileup exceeds the target coverage at locus " + locus);
+
+            if (locus == 1) {
+                Assert.assertEquals(readsAtLocus.size(), readsPerAlignmentStart, "Reads at the first alignment start should not have been downsampled");
+                Assert.assertFalse(alignmentContext.hasPileupBeenDownsampled(), "Pileup at locus 1 should not be downsampled");
+            }
+            else if (locus == 2) {
+                // the first alignment start is purged down to MAX_READS_AT_ALIGNMENT_START, and the second fills up the rest
+                int readsAtFirstStart = 0;
+                for (GATKSAMRecord read : readsAtLocus)
+                    if (read.getAlignmentStart() == 1)
+                        readsAtFirstStart++;
+                Assert.assertEquals(readsAtLocus.size(), targetCoverage, "Pileup at locus 2 should be at the target coverage");
+                Assert.assertEquals(readsAtFirstStart, LocusIteratorByState.MAX_READS_AT_ALIGNMENT_START, "Wrong number of reads left at the first alignment start");
+            }
+
+            // the reads purged from the first alignment start end at 10
+            Assert.assertEquals(alignmentContext.hasPileupBeenDownsampled(), locus >= 2 && locus <= 10, "Wrong downsampling status at locus " + locus);
+            numAlignmentContextsFound++;
+        }
+
+        Assert.assertEquals(numAlignmentContextsFound, 11, "Found incorrect number of alignment contexts");
+    }
+
+    @Test
+    public void testReadStatesGrowAndWrapAround() {
+        final LocusIteratorByState.ReadStateManager readStateManager = makeReadStateManager();
+        final LocusIteratorByState.ReadStateManager.PerSampleReadStateManager readStates = readStateManager.new PerSampleReadStateManager();
+        final LinkedList<SAMRecord> expected = new LinkedList<SAMRecord>();
+
+        // more read states and alignment starts than the arrays are first allocated with
+        for (int start = 1; start <= 100; start++)
+            expected.add(addReadState(readStates, start, true));
+        assertReadStates(readStates, expected);
+
+        // purging the first read state and adding one at the end moves the states around the arrays, several times over
+        int downsamplingExtent = 0;
+        for (int start = 101; start <= 500; start++) {
+            Assert.assertEquals(readStates.purgeToFit(1, expected.size()), expected.size() - 1, "Wrong number of read states left after purging");
+            downsamplingExtent = Math.max(downsamplingExtent, expected.removeFirst().getAlignmentEnd());
+            Assert.assertEquals(readStates.getDownsamplingExtent(), downsamplingExtent, "Downsampling extent should be the furthest end of the purged reads");
+
+            expected.add(addReadState(readStates, start, true));
+            assertReadStates(readStates, expected);
+            Assert.assertEquals(readStateManager.size(), expected.size(), "Total read states out of sync");
+        }
+    }
+
+    @Test
+    public void testReadStatesRemoveAfterPurge() {
+        final LocusIteratorByState.ReadStateManager.PerSampleReadStateManager readStates = makeReadStateManager().new PerSampleReadStateManager();
+        final int[] readsPerAlignmentStart = { 600, 600, 10 };
+        for (int start = 1; start <= readsPerAlignmentStart.length; start++)
+            for (int i = 0; i < readsPerAlignmentStart[start - 1]; i++)
+                addReadState(readStates, start, i == 0);
+
+        // both crowded alignment starts are purged down to MAX_READS_AT_ALIGNMENT_START, the second one leaving empty slots
+        final int max = LocusIteratorByState.MAX_READS_AT_ALIGNMENT_START;
+        Assert.assertEquals(readStates.purgeToFit(0, 1000), 2 * max + 10, "Wrong number of read states left after purging");
+        Assert.assertEquals(readStates.size(), 2 * max + 10, "Wrong number of read states after purging");
+        Assert.assertEquals(readStates.getDownsamplingExtent(), 13, "Downsampling extent should be the end of the reads purged at the second alignment start");
+        Assert.assertEquals(countReadsByAlignmentStart(readStates), Arrays.asList(max, max, 10));
+
+        // remove reads through the iterator, including the last one at each alignment start, after hasNext() has moved past them
+        final List<SAMRecord> kept = new ArrayList<SAMRecord>();
+        final List<Integer> lastAtAlignmentStart = Arrays.asList(max - 1, 2 * max - 1, 2 * max + 9);
+        final Iterator<LocusIteratorByState.SAMRecordState> iterator = readStates.iterator();
+        for (int i = 0; iterator.hasNext(); i++) {
+            final SAMRecord read = iterator.next().getRead();
+            if (i % 3 == 0 || lastAtAlignmentStart.contains(i)) {
+                if (i % 2 == 1)
+                    iterator.hasNext();
+                iterator.remove();
+            }
+            else
+                kept.add(read);
+        }
+
+        Assert.assertEquals(readStates.size(), kept.size(), "Wrong number of read states after removing");
+        assertReadStates(readStates, kept);
+        final List<Integer> counts = countReadsByAlignmentStart(readStates);
+
+        // the alignment starts have been counted right, so purging to fit now takes one read from the first of them
+        Assert.assertEquals(readStates.purgeToFit(0, kept.size()), kept.size() - 1, "Wrong number of read states left after purging");
+        counts.set(0, counts.get(0) - 1);
+        Assert.assertEquals(countReadsByAlignmentStart(readStates), counts);
+        Assert.assertEquals(readStates.size(), kept.size() - 1, "Wrong number of read states after purging");
+    }
+
+    @Test
+    public void testReadStatesRemoveUntilNext() {
+        final LocusIteratorByState.ReadStateManager.PerSampleReadStateManager readStates = makeReadStateManager().new PerSampleReadStateManager();
+        final List<SAMRecord> expected = new ArrayList<SAMRecord>();
+        for (int start = 1; start <= 3; start++)
+            expected.add(addReadState(readStates, start, true));
+
+        Iterator<LocusIteratorByState.SAMRecordState> iterator = readStates.iterator();
+        iterator.next();
+        iterator.hasNext();
+        iterator.remove();
+        expected.remove(0);
+        try {
+            iterator.remove();
+            Assert.fail("remove() should not be allowed twice for one read state");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        // once the pass is over, the last read state may still be removed
+        iterator.next();
+        iterator.next();
+        Assert.assertFalse(iterator.hasNext(), "Too many read states");
+        iterator.remove();
+        expected.remove(1);
+        assertReadStates(readStates, expected);
+
+        // but not once the read states have been iterated over again
+        iterator = readStates.iterator();
+        iterator.next();
+        Assert.assertSame(readStates.peek().getRead(), expected.get(0), "Wrong first read state");
+        try {
+            iterator.remove();
+            Assert.fail("remove() should not be allowed once the read states have been looked at again");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertReadStates(readStates, expected);
+    }
+
+    private LocusIteratorByState.ReadStateManager makeReadStateManager() {
+        li = makeLTBS(Collections.<SAMRecord>emptyList(), createTestReadProperties());
+        return li.new ReadStateManager(Collections.<SAMRecord>emptyList().iterator(), DownsamplingMethod.NONE);
+    }
+
+    private static SAMRecord addReadState(final LocusIteratorByState.ReadStateManager.PerSampleReadStateManager readStates, final int start, final boolean atNextAlignmentStart) {
+        // reads of different lengths, so that the downsampling extent tells which ones were purged
+        final SAMRecord read = ArtificialSAMUtils.createArtificialRead(header, "read" + start + "." + readStates.size(), 0, start, 10 + start % 7);
+        LocusIteratorByState.SAMRecordState state = new LocusIteratorByState.SAMRecordState(read, false);
+        state.stepForwardOnGenome();
+        readStates.add(state, atNextAlignmentStart);
+        return read;
+    }
+
+    private static void assertReadStates(final LocusIteratorByState.ReadStateManager.PerSampleReadStateManager readStates, final List<SAMRecord> expected) {
+        final List<SAMRecord> actual = new ArrayList<SAMRecord>();
+        for (LocusIteratorByState.SAMRecordState state : readStates)
+            actual.add(state.getRead());
+        Assert.assertEquals(actual, expected, "Read states differ");
+        Assert.assertEquals(readStates.size(), expected.size(), "Wrong number of read states");
+        Assert.assertSame(readStates.isEmpty() ? null : readStates.peek().getRead(), expected.isEmpty() ? null : expected.get(0), "Wrong first read state");
+    }
+
+    private static List<Integer> countReadsByAlignmentStart(final LocusIteratorByState.ReadStateManager.PerSampleReadStateManager readStates) {
+        final List<Integer> counts = new ArrayList<Integer>();
+        int lastStart = -1;
+        for (LocusIteratorByState.SAMRecordState state : readStates) {
+            final int start = state.getRead().getAlignmentStart();
+            Assert.assertTrue(start >= lastStart, "Read states out of alignment start order");
+            if (start != lastStart)
+                counts.add(0);
+            counts.set(counts.size() - 1, counts.get(counts.size() - 1) + 1);
+            lastStart = start;
+        }
+        return counts;
+    }
+
     private static ReadProperties createTestReadProperties() {
+        return createTestReadProperties(null);
+    }
+
+    private static ReadProperties createTestReadProperties(final DownsamplingMethod downsamplingMethod) {
         return new ReadProperties(
                 Collections.<SAMReaderID>emptyList(),
                 new SAMFileHeader(),
                 false,
                 SAMFileReader.ValidationStringency.STRICT,
-                null,
+                downsamplingMethod,
                 new ValidationExclusion(),
                 Collections.<ReadFilter>emptyList(),
                 false,
@@ -0,0 +1,70 @@
+package org.broadinstitute.sting.gatk.refdata.tracks;
+
+import org.broad.tribble.FeatureCodec;
+import org.broad.tribble.bed.BEDCodec;
+import org.broad.tribble.index.Index;
+import org.broad.tribble.index.IndexFactory;
+import org.broad.tribble.util.LittleEndianOutputStream;
+import org.broadinstitute.sting.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Random;
+
+/**
+ * tests that indices created in parallel are identical to those created by Tribble itself
+ */
+public class ParallelTribbleIndexerUnitTest extends BaseTest {
+    private static final ParallelTribbleIndexer.CodecFactory BED_CODECS = new ParallelTribbleIndexer.CodecFactory() {
+        public FeatureCodec createCodec() {
+            return new BEDCodec();
+        }
+    };
+
+    @DataProvider(name = "files")
+    public Object[][] makeFiles() {
+        return new Object[][] {
+                // line ending, long features, threads, chunk size
+                { "\n", false, 4, 1024 },
+                { "\r\n", false, 3, 777 },
+                { "\n", true, 4, 4096 },
+                { "\r\n", true, 2, 100 },
+        };
+    }
+
+    @Test(dataProvider = "files")
+    public void testIndexMatchesTribble(final String lineEnd, final boolean longFeatures, final int nThreads, final int chunkSize) throws IOException {
+        final File bedFile = createTempFile("ParallelTribbleIndexerUnitTest", ".bed");
+        final Random random = new Random(nThreads * chunkSize);
+        final PrintWriter writer = new PrintWriter(bedFile);
+        writer.print("track name=test" + lineEnd);
+        for ( int contig = 1; contig <= 3; contig++ ) {
+            int start = 0;
+            for ( int i = 0; i < 2000; i++ ) {
+                if ( random.nextInt(50) == 0 )
+                    writer.print("# a comment between features" + lineEnd);
+                final int length = longFeatures && random.nextInt(20) == 0 ? random.nextInt(100000) : 1 + random.nextInt(50);
+                writer.print(String.format("chr%d\t%d\t%d\tfeature%d%s", contig, start, start + length, i, lineEnd));
+                start += random.nextInt(1000);
+            }
+        }
+        writer.close();
+
+        final Index expected = IndexFactory.createIndex(bedFile, new BEDCodec(), IndexFactory.IndexBalanceApproach.FOR_SEEK_TIME);
+        final Index actual = new ParallelTribbleIndexer(bedFile, BED_CODECS, nThreads, chunkSize).createIndex(IndexFactory.IndexBalanceApproach.FOR_SEEK_TIME);
+        Assert.assertEquals(write(actual), write(expected));
+    }
+
+    private static byte[] write(final Index index) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final LittleEndianOutputStream stream = new LittleEndianOutputStream(bytes);
+        index.write(stream);
+        stream.close();
+        return bytes.toByteArray();
+    }
+}
@@ -29,6 +29,11 @@ import org.testng.Assert;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+
 public class GATKReportUnitTest extends BaseTest {
     @Test(enabled = false)
     public void testParse() throws Exception {
@@ -73,4 +78,108 @@ public class GATKReportUnitTest extends BaseTest {
     public void testIsRightAlign(String value, boolean expected) {
         Assert.assertEquals(GATKReportColumn.isRightAlign(value), expected, "right align of '" + value + "'");
     }
+
+    @Test
+    public void testBinaryRoundTrip() throws Exception {
+        GATKReport report = new GATKReport();
+
+        report.addTable("Typed", "A table with a column of each type");
+        GATKReportTable typed = report.getTable("Typed");
+        typed.addPrimaryKey("key");
+        typed.addColumn("ints", 0);
+        typed.addColumn("longs", 0L);
+        typed.addColumn("doubles", 0.0, "%.2f");
+        typed.addColumn("strings", "NA");
+        typed.addColumn("mixed", 0);
+        typed.addColumn("hidden", 0, false);
+        for (int i = 0; i < 50; i++) {
+            String key = "row" + (50 - i);
+            typed.set(key, "ints", i);
+            typed.set(key, "longs", 1L << i);
+            typed.set(key, "doubles", i / 3.0);
+            if (i % 7 != 0)
+                typed.set(key, "strings", i % 2 == 0 ? "even" : (i % 3 == 0 ? null : "odd"));
+            typed.set(key, "mixed", i % 2 == 0 ? (Object) i : (Object) ("s" + i));
+            typed.increment(key, "hidden");
+        }
+
+        report.addTable("Unsorted", "A table in the order it was filled in", false);
+        GATKReportTable unsorted = report.getTable("Unsorted");
+        unsorted.addPrimaryKey("key", true);
+        unsorted.addColumn("value", 0);
+        unsorted.set("b", "value", 2);
+        unsorted.set("a", "value", 1);
+
+        File file = createTempFile("GATKReportUnitTest", ".bin");
+        FileOutputStream out = new FileOutputStream(file);
+        report.printBinary(out);
+        out.close();
+
+        Assert.assertTrue(GATKReport.isBinaryReport(file));
+        GATKReport loaded = new GATKReport(file);
+        Assert.assertEquals(toText(loaded), toText(report));
+
+        GATKReportTable loadedTyped = loaded.getTable("Typed");
+        Assert.assertEquals(loadedTyped.getNumRows(), 50);
+        Assert.assertEquals(loadedTyped.get("row1", "longs"), 1L << 49);
+        Assert.assertEquals(loadedTyped.get("row50", "strings"), "NA");
+        Assert.assertEquals(loadedTyped.get("row4", "mixed"), "46");
+        Assert.assertEquals(loadedTyped.get("row5", "mixed"), "s45");
+        Assert.assertEquals(loadedTyped.getPrimaryKey("2"), "row49");
+
+        // loaded tables can be changed like any other
+        loadedTyped.increment("row1", "ints");
+        loadedTyped.set("row51", "strings", "new");
+        Assert.assertEquals(loadedTyped.get("row1", "ints"), 50);
+        Assert.assertEquals(loadedTyped.get("row51", "ints"), 0);
+        Assert.assertEquals(loadedTyped.getNumRows(), 51);
+    }
+
+    @Test
+    public void testTextLoadIsNotBinary() throws Exception {
+        File file = createTempFile("GATKReportUnitTest", ".txt");
+        PrintStream out = new PrintStream(file);
+        out.printf("##:GATKReport.v0.2 Table : A table%n");
+        out.printf("a  b%n");
+        out.printf("1  x%n");
+        out.close();
+
+        Assert.assertFalse(GATKReport.isBinaryReport(file));
+        GATKReportTable table = new GATKReport(file).getTable("Table");
+        Assert.assertEquals(table.get(0, "b"), "x");
+    }
+
+    @Test
+    public void testNullFirstValueInNumericColumn() {
+        GATKReportTable table = new GATKReportTable("Table", "A table");
+        table.addPrimaryKey("key");
+        table.addColumn("ints", 0);
+        table.set("row1", "ints", null);
+        table.set("row2", "ints", 5);
+        Assert.assertNull(table.get("row1", "ints"));
+        Assert.assertEquals(table.get("row2", "ints"), 5);
+    }
+
+    @Test
+    public void testLookupDoesNotChangeTheTable() {
+        GATKReportTable table = new GATKReportTable("Table", "A table", false);
+        table.addPrimaryKey("key");
+        table.addColumn("a", 0);
+        table.addColumn("b", "NA");
+        table.set("row1", "a", 1);
+
+        Assert.assertEquals(table.lookup("row1", "a"), 1);
+        Assert.assertEquals(table.lookup("row1", "b"), "NA");
+        Assert.assertNull(table.lookup("row2", "a"));
+        Assert.assertFalse(table.getColumns().get("b").isInitialized(0));
+        Assert.assertEquals(table.getPrimaryKeys().size(), 1);
+    }
+
+    private static String toText(GATKReport report) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes);
+        report.print(out);
+        out.close();
+        return bytes.toString();
+    }
 }
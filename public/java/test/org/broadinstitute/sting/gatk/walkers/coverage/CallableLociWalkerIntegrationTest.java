@@ -28,41 +28,42 @@ import org.broadinstitute.sting.WalkerTest;
 import org.testng.annotations.Test;
 
 import java.util.Arrays;
+import java.util.List;
 
 public class CallableLociWalkerIntegrationTest extends WalkerTest {
-    final static String commonArgs = "-R " + b36KGReference + " -T CallableLoci -I " + validationDataLocation + "/NA12878.1kg.p2.chr1_10mb_11_mb.SLX.bam -o %s";
+    final static String commonArgs = "-R " + b36KGReference + " -I " + validationDataLocation + "/NA12878.1kg.p2.chr1_10mb_11_mb.SLX.bam -o %s";
 
     final static String SUMMARY_MD5 = "ffdbd9cdcb4169ebed5ae4bec797260f";
 
+    // FastCallableLoci must write exactly what CallableLoci writes, so both are held to the same MD5s
+    private void executeBothWalkers(final String name, final String args, final List<String> md5s) {
+        for ( final String walker : Arrays.asList("CallableLoci", "FastCallableLoci") ) {
+            WalkerTestSpec spec = new WalkerTestSpec("-T " + walker + " " + args, 2, md5s);
+            executeTest(name + " " + walker, spec);
+        }
+    }
+
     @Test
     public void testCallableLociWalkerBed() {
         String gatk_args = commonArgs + " -format BED -L 1:10,000,000-11,000,000 -summary %s";
-        WalkerTestSpec spec = new WalkerTestSpec(gatk_args, 2,
-                Arrays.asList("9e4ec9c23f21a8162d27a39ab057398c", SUMMARY_MD5));
-        executeTest("formatBed", spec);
+        executeBothWalkers("formatBed", gatk_args, Arrays.asList("9e4ec9c23f21a8162d27a39ab057398c", SUMMARY_MD5));
     }
 
     @Test
     public void testCallableLociWalkerPerBase() {
         String gatk_args = commonArgs + " -format STATE_PER_BASE -L 1:10,000,000-11,000,000 -summary %s";
-        WalkerTestSpec spec = new WalkerTestSpec(gatk_args, 2,
-                Arrays.asList("e6044b4495ef24f542403e6a94437068", SUMMARY_MD5));
-        executeTest("format_state_per_base", spec);
+        executeBothWalkers("format_state_per_base", gatk_args, Arrays.asList("e6044b4495ef24f542403e6a94437068", SUMMARY_MD5));
     }
     
     @Test
     public void testCallableLociWalker2() {
         String gatk_args = commonArgs + " -format BED -L 1:10,000,000-10,000,100 -L 1:10,000,110-10,000,120 -summary %s";
-        WalkerTestSpec spec = new WalkerTestSpec(gatk_args, 2,
-                Arrays.asList("c671f65712d9575b8b3e1f1dbedc146e", "d287510eac04acf5a56f5cde2cba0e4a"));
-        executeTest("formatBed by interval", spec);
+        executeBothWalkers("formatBed by interval", gatk_args, Arrays.asList("c671f65712d9575b8b3e1f1dbedc146e", "d287510eac04acf5a56f5cde2cba0e4a"));
     }
 
     @Test
     public void testCallableLociWalker3() {
         String gatk_args = commonArgs + " -format BED -L 1:10,000,000-11,000,000 -minDepth 10 -maxDepth 100 --minBaseQuality 10 --minMappingQuality 20 -summary %s";
-        WalkerTestSpec spec = new WalkerTestSpec(gatk_args, 2,
-                Arrays.asList("b7d26a470ef906590249f2fa45fd6bdd", "da431d393f7c2b2b3e27556b86c1dbc7"));
-        executeTest("formatBed lots of arguments", spec);
+        executeBothWalkers("formatBed lots of arguments", gatk_args, Arrays.asList("b7d26a470ef906590249f2fa45fd6bdd", "da431d393f7c2b2b3e27556b86c1dbc7"));
     }
 }
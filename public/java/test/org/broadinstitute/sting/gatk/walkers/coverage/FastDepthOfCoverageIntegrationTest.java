@@ -0,0 +1,81 @@
+package org.broadinstitute.sting.gatk.walkers.coverage;
+
+import org.broadinstitute.sting.MD5DB;
+import org.broadinstitute.sting.WalkerTest;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs DepthOfCoverage and FastDepthOfCoverage on the same inputs and checks that every output file is identical
+ */
+public class FastDepthOfCoverageIntegrationTest extends WalkerTest {
+    private static final String captureArgs = "-R " + hg18Reference +
+            " -I /humgen/gsa-hpprojects/GATK/data/Validation_Data/FHS_indexed_subset.bam" +
+            " -L /humgen/gsa-hpprojects/GATK/data/Validation_Data/fhs_jhs_30_targts.interval_list" +
+            " -pt readgroup -pt sample -pt library --outputFormat csv";
+
+    private static final List<String> PARTITION_SUFFIXES = Arrays.asList(
+            "_cumulative_coverage_counts", "_cumulative_coverage_proportions", "_interval_statistics",
+            "_interval_summary", "_statistics", "_summary");
+
+    private static final List<String> OUTPUT_SUFFIXES = new ArrayList<String>();
+    static {
+        OUTPUT_SUFFIXES.add("");
+        for ( final String partition : Arrays.asList(".library", ".read_group", ".sample") )
+            for ( final String suffix : PARTITION_SUFFIXES )
+                OUTPUT_SUFFIXES.add(partition + suffix);
+    }
+
+    /**
+     * Runs the walker with the given arguments, and returns the MD5s of the files it writes, in the order of the suffixes
+     */
+    private List<String> outputMD5s(final String name, final String walker, final String args, final List<String> suffixes) {
+        final File baseOutputFile = createTempFile(name.replace(' ', '_'), ".tmp");
+        WalkerTestSpec spec = new WalkerTestSpec("-T " + walker + " " + args, 0, new ArrayList<String>());
+        spec.setOutputFileLocation(baseOutputFile);
+        executeTest(name + " " + walker, spec);
+
+        final List<String> md5s = new ArrayList<String>();
+        for ( final String suffix : suffixes ) {
+            final File outputFile = createTempFileFromBase(baseOutputFile.getAbsolutePath() + suffix);
+            md5s.add(MD5DB.testFileMD5(name + " " + walker + suffix, outputFile, "", false));
+        }
+        return md5s;
+    }
+
+    private void assertSameOutput(final String name, final String args, final List<String> suffixes) {
+        final List<String> expected = outputMD5s(name, "DepthOfCoverage", args, suffixes);
+        final List<String> observed = outputMD5s(name, "FastDepthOfCoverage", args, suffixes);
+        for ( int i = 0; i < suffixes.size(); i++ )
+            Assert.assertEquals(observed.get(i), expected.get(i), "FastDepthOfCoverage output " + suffixes.get(i) + " differs from DepthOfCoverage's");
+    }
+
+    @Test
+    public void testMatchesDepthOfCoverageNoFiltering() {
+        assertSameOutput("fast depth of coverage no filtering", captureArgs + " -mmq 0 -mbq 0 -dels -ct 10 -ct 15 -ct 20 -ct 25", OUTPUT_SUFFIXES);
+    }
+
+    @Test
+    public void testMatchesDepthOfCoverageWithFiltering() {
+        assertSameOutput("fast depth of coverage with filtering", captureArgs + " -mmq 20 -mbq 20 --maxBaseQuality 40", OUTPUT_SUFFIXES);
+    }
+
+    @Test
+    public void testMatchesDepthOfCoverageNoCoverageDueToFiltering() {
+        assertSameOutput("fast depth of coverage filtering everything", captureArgs + " -mmq 0 -mbq 5 --maxBaseQuality 4 -dels", OUTPUT_SUFFIXES);
+    }
+
+    private void testRefNHandling(final boolean includeNs) {
+        String args = "-R " + b37KGReference + " -L 20:26,319,565-26,319,575 -I " + validationDataLocation + "NA12878.HiSeq.WGS.bwa.cleaned.recal.hg19.20.bam --omitIntervalStatistics --omitLocusTable --omitPerSampleStats";
+        if ( includeNs ) args += " --includeRefNSites";
+        assertSameOutput("fast depth of coverage " + (includeNs ? "with" : "without") + " reference Ns", args, Arrays.asList(""));
+    }
+
+    @Test public void testMatchesRefNWithNs() { testRefNHandling(true); }
+    @Test public void testMatchesRefNWithoutNs() { testRefNHandling(false); }
+}
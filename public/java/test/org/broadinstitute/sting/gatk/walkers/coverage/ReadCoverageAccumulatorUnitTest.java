@@ -0,0 +1,159 @@
+package org.broadinstitute.sting.gatk.walkers.coverage;
+
+import net.sf.samtools.CigarElement;
+import net.sf.samtools.SAMFileHeader;
+import net.sf.samtools.TextCigarCodec;
+import org.broadinstitute.sting.BaseTest;
+import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
+import org.broadinstitute.sting.utils.sam.ArtificialSAMUtils;
+import org.broadinstitute.sting.utils.sam.GATKSAMRecord;
+import org.broadinstitute.sting.utils.sam.ReadUtils;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * tests that the depths read out of the accumulator are those of counting each base of each read, one by one
+ */
+public class ReadCoverageAccumulatorUnitTest extends BaseTest {
+    private final static int CONTIG_LENGTH = 2000;
+    private final static String[] CIGARS = { "50M", "10S40M", "20M5D30M", "15M3I32M", "10M100N40M", "5S30M2D10M5S", "25M10N5D20M" };
+
+    private SAMFileHeader header;
+
+    @BeforeClass
+    public void makeHeader() {
+        header = ArtificialSAMUtils.createArtificialSamHeader(1, 0, CONTIG_LENGTH);
+    }
+
+    @DataProvider(name = "filters")
+    public Object[][] makeFilters() {
+        return new Object[][] {
+                { 0, (int)Byte.MAX_VALUE, false },
+                { 0, (int)Byte.MAX_VALUE, true },
+                { 20, (int)Byte.MAX_VALUE, true },
+                { 10, 30, false },
+        };
+    }
+
+    @Test(dataProvider = "filters")
+    public void testDepths(final int minBaseQuality, final int maxBaseQuality, final boolean includeDeletions) {
+        final Random random = new Random(42);
+        final List<GATKSAMRecord> reads = new ArrayList<GATKSAMRecord>();
+        int start = 1;
+        for ( int i = 0; i < 200; i++ ) {
+            start += random.nextInt(8);
+            reads.add(makeRead(random, "read" + i, start, CIGARS[random.nextInt(CIGARS.length)]));
+        }
+
+        final int[][] expected = new int[2][CONTIG_LENGTH + 1];
+        final int[][] tracks = { { 0 }, { 1 }, { 0, 1 } };
+        final ReadCoverageAccumulator coverage = new ReadCoverageAccumulator(2, 1);
+        final int[][] actual = new int[2][CONTIG_LENGTH + 1];
+
+        for ( int i = 0; i < reads.size(); i++ ) {
+            final GATKSAMRecord read = reads.get(i);
+            while ( coverage.getPosition() < read.getAlignmentStart() )
+                readOut(coverage, actual);
+
+            final int[] readTracks = tracks[i % tracks.length];
+            coverage.addRead(read, readTracks, minBaseQuality, maxBaseQuality, includeDeletions);
+            for ( final int track : readTracks )
+                countBases(read, expected[track], minBaseQuality, maxBaseQuality, includeDeletions);
+        }
+        while ( coverage.getPosition() <= CONTIG_LENGTH )
+            readOut(coverage, actual);
+
+        Assert.assertEquals(actual[0], expected[0]);
+        Assert.assertEquals(actual[1], expected[1]);
+    }
+
+    @Test
+    public void testSkipTo() {
+        final ReadCoverageAccumulator coverage = new ReadCoverageAccumulator(1, 1);
+        coverage.addRead(makeRead(new Random(1), "a", 10, "20M"), new int[]{0}, 0, Byte.MAX_VALUE, false);
+        coverage.addRead(makeRead(new Random(2), "b", 15, "20M"), new int[]{0}, 0, Byte.MAX_VALUE, false);
+
+        coverage.skipTo(20);
+        Assert.assertEquals(coverage.next()[0], 2);
+        coverage.skipTo(34);
+        Assert.assertEquals(coverage.next()[0], 1);
+        coverage.skipTo(500);
+        Assert.assertEquals(coverage.getPosition(), 500);
+        Assert.assertEquals(coverage.next()[0], 0);
+
+        coverage.addRead(makeRead(new Random(3), "c", 600, "20M"), new int[]{0}, 0, Byte.MAX_VALUE, false);
+        coverage.skipTo(610);
+        Assert.assertEquals(coverage.next()[0], 1);
+    }
+
+    @Test(expectedExceptions = ReviewedStingException.class)
+    public void testReadBeforePosition() {
+        final ReadCoverageAccumulator coverage = new ReadCoverageAccumulator(1, 1);
+        coverage.skipTo(100);
+        coverage.addRead(makeRead(new Random(1), "a", 50, "20M"), new int[]{0}, 0, Byte.MAX_VALUE, false);
+    }
+
+    private GATKSAMRecord makeRead(final Random random, final String name, final int start, final String cigar) {
+        final int length = TextCigarCodec.getSingleton().decode(cigar).getReadLength();
+        final byte[] bases = new byte[length];
+        final byte[] quals = new byte[length];
+        for ( int i = 0; i < length; i++ ) {
+            bases[i] = (byte)"ACGT".charAt(random.nextInt(4));
+            quals[i] = (byte)random.nextInt(40);
+        }
+
+        final GATKSAMRecord read = ArtificialSAMUtils.createArtificialRead(header, name, 0, start, bases, quals, cigar);
+
+        // some of the reads are paired with a short insert, so that they run into the adaptor
+        if ( random.nextInt(4) == 0 ) {
+            read.setReadPairedFlag(true);
+            read.setReadNegativeStrandFlag(random.nextBoolean());
+            read.setMateReferenceIndex(0);
+            read.setMateAlignmentStart(start + random.nextInt(10));
+            read.setInferredInsertSize(20 + random.nextInt(30));
+        }
+        return read;
+    }
+
+    private static void readOut(final ReadCoverageAccumulator coverage, final int[][] actual) {
+        final int position = coverage.getPosition();
+        final int[] depths = coverage.next();
+        for ( int track = 0; track < depths.length; track++ )
+            actual[track][position] = depths[track];
+    }
+
+    private static void countBases(final GATKSAMRecord read, final int[] depths, final int minBaseQuality, final int maxBaseQuality, final boolean includeDeletions) {
+        int readOffset = 0;
+        int refPosition = read.getAlignmentStart();
+        for ( final CigarElement element : read.getCigar().getCigarElements() ) {
+            for ( int i = 0; i < element.getLength(); i++ ) {
+                switch ( element.getOperator() ) {
+                    case M:
+                        final byte qual = read.getBaseQualities()[readOffset];
+                        if ( qual >= minBaseQuality && qual <= maxBaseQuality && ! ReadUtils.isBaseInsideAdaptor(read, refPosition) )
+                            depths[refPosition]++;
+                        readOffset++;
+                        refPosition++;
+                        break;
+                    case D:
+                        if ( includeDeletions )
+                            depths[refPosition]++;
+                        refPosition++;
+                        break;
+                    case N:
+                        refPosition++;
+                        break;
+                    default:
+                        readOffset++;
+                        break;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package org.broadinstitute.sting.gatk.walkers.genotyper;
+
+import org.broadinstitute.sting.BaseTest;
+import org.broadinstitute.sting.utils.BaseUtils;
+import org.broadinstitute.sting.utils.MathUtils;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import static java.lang.Math.log10;
+import static java.lang.Math.pow;
+
+public class DiploidSNPGenotypeLikelihoodsUnitTest extends BaseTest {
+    private final static double DELTA = 1e-12;
+
+    @DataProvider(name = "observations")
+    public Object[][] makeObservations() {
+        return new Object[][]{
+                {(byte)'A', (byte)30, (byte)'A', (byte)0},
+                {(byte)'C', (byte)1, (byte)'A', (byte)0},
+                {(byte)'G', (byte)93, (byte)'A', (byte)0},
+                {(byte)'T', (byte)20, (byte)'T', (byte)20},
+                {(byte)'A', (byte)35, (byte)'C', (byte)10},
+                {(byte)'C', (byte)40, (byte)'G', (byte)93},
+        };
+    }
+
+    @Test(dataProvider = "observations")
+    public void testLikelihoodTableMatchesDirectCalculation(byte base1, byte qual1, byte base2, byte qual2) {
+        for ( double pcrErrorRate : new double[]{DiploidSNPGenotypeLikelihoods.DEFAULT_PCR_ERROR_RATE, 1e-3} ) {
+            final double[] table = DiploidSNPGenotypeLikelihoods.getLikelihoodTable(pcrErrorRate);
+            final int offset = DiploidSNPGenotypeLikelihoods.likelihoodTableOffset(base1, qual1, base2, qual2);
+            final double[] expected = directLikelihoods(base1, qual1, base2, qual2, pcrErrorRate);
+
+            for ( DiploidGenotype g : DiploidGenotype.values() )
+                Assert.assertEquals(table[offset + g.ordinal()], expected[g.ordinal()], DELTA, "Mismatch for genotype " + g);
+        }
+    }
+
+    @Test
+    public void testLikelihoodTableIsShared() {
+        Assert.assertSame(DiploidSNPGenotypeLikelihoods.getLikelihoodTable(1e-3), DiploidSNPGenotypeLikelihoods.getLikelihoodTable(1e-3));
+        Assert.assertNotSame(DiploidSNPGenotypeLikelihoods.getLikelihoodTable(1e-3), DiploidSNPGenotypeLikelihoods.getLikelihoodTable(DiploidSNPGenotypeLikelihoods.DEFAULT_PCR_ERROR_RATE));
+    }
+
+    @Test
+    public void testBadBaseHasNoLikelihoods() {
+        Assert.assertEquals(DiploidSNPGenotypeLikelihoods.likelihoodTableOffset((byte)'N', (byte)30, (byte)0, (byte)0), -1);
+    }
+
+    @Test
+    public void testQualsAboveTheTableAreCapped() {
+        Assert.assertEquals(DiploidSNPGenotypeLikelihoods.likelihoodTableOffset((byte)'A', (byte)120, (byte)0, (byte)0),
+                DiploidSNPGenotypeLikelihoods.likelihoodTableOffset((byte)'A', (byte)93, (byte)0, (byte)0));
+        Assert.assertEquals(DiploidSNPGenotypeLikelihoods.likelihoodTableOffset((byte)'T', (byte)30, (byte)'T', (byte)100),
+                DiploidSNPGenotypeLikelihoods.likelihoodTableOffset((byte)'T', (byte)30, (byte)'T', (byte)93));
+    }
+
+    @Test
+    public void testAddLikelihoods() {
+        final double[] table = DiploidSNPGenotypeLikelihoods.getLikelihoodTable(DiploidSNPGenotypeLikelihoods.DEFAULT_PCR_ERROR_RATE);
+        final int offset = DiploidSNPGenotypeLikelihoods.likelihoodTableOffset((byte)'A', (byte)30, (byte)0, (byte)0);
+        final double[] likelihoods = new double[DiploidGenotype.values().length];
+        final double[] posteriors = new double[DiploidGenotype.values().length];
+
+        DiploidSNPGenotypeLikelihoods.addLikelihoods(table, offset, 3, likelihoods, posteriors);
+        for ( DiploidGenotype g : DiploidGenotype.values() ) {
+            Assert.assertEquals(likelihoods[g.ordinal()], 3 * table[offset + g.ordinal()], DELTA);
+            Assert.assertEquals(posteriors[g.ordinal()], 3 * table[offset + g.ordinal()], DELTA);
+        }
+        Assert.assertEquals(likelihoods[DiploidGenotype.AA.ordinal()], MathUtils.arrayMax(likelihoods), DELTA);
+    }
+
+    // the straightforward, uncached version of the fragment-based likelihood calculation
+    private static double[] directLikelihoods(byte base1, byte qual1, byte base2, byte qual2, double pcrErrorRate) {
+        final double[] fourBase = new double[4];
+        for ( byte trueBase : BaseUtils.BASES ) {
+            double likelihood = 0.0;
+            for ( byte fragmentBase : BaseUtils.BASES ) {
+                double l = trueBase == fragmentBase ? log10(1.0 - pcrErrorRate) : log10(pcrErrorRate) - log10(3.0);
+                l += log10PofObserving(base1, fragmentBase, qual1);
+                if ( qual2 != 0 )
+                    l += log10PofObserving(base2, fragmentBase, qual2);
+                likelihood += pow(10, l);
+            }
+            fourBase[BaseUtils.simpleBaseToBaseIndex(trueBase)] = log10(likelihood);
+        }
+
+        final double[] genotypes = new double[DiploidGenotype.values().length];
+        for ( DiploidGenotype g : DiploidGenotype.values() )
+            genotypes[g.ordinal()] = log10(pow(10, fourBase[BaseUtils.simpleBaseToBaseIndex(g.base1)]) / 2 + pow(10, fourBase[BaseUtils.simpleBaseToBaseIndex(g.base2)]) / 2);
+        return genotypes;
+    }
+
+    private static double log10PofObserving(byte observedBase, byte chromBase, byte qual) {
+        if ( observedBase == chromBase )
+            return log10(1.0 - pow(10, qual / -10.0));
+        return qual / -10.0 - log10(3.0);
+    }
+}
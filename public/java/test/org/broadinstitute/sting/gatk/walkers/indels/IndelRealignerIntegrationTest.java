@@ -51,6 +51,21 @@ public class IndelRealignerIntegrationTest extends WalkerTest {
         executeTest("realigner use SW from VCF", spec1);
     }
 
+    @Test
+    public void testMultipleRealignmentThreads() {
+        WalkerTestSpec spec1 = new WalkerTestSpec(
+                baseCommand + "-realignThreads 4",
+                1,
+                Arrays.asList(base_md5));
+        executeTest("realigner with multiple realignment threads", spec1);
+
+        WalkerTestSpec spec2 = new WalkerTestSpec(
+                baseCommand + "-realignThreads 4 -known " + knownIndels,
+                1,
+                Arrays.asList(base_md5_with_SW_or_VCF));
+        executeTest("realigner with multiple realignment threads and VCF", spec2);
+    }
+
     @Test
     public void testLods() {
         HashMap<String, String> e = new HashMap<String, String>();
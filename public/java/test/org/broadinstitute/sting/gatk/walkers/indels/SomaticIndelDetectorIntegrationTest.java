@@ -0,0 +1,52 @@
+package org.broadinstitute.sting.gatk.walkers.indels;
+
+import org.broadinstitute.sting.WalkerTest;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+
+public class SomaticIndelDetectorIntegrationTest extends WalkerTest {
+
+    private static final String normalBam = validationDataLocation + "NA12878.1kg.p2.chr1_10mb_11_mb.SLX.bam";
+    private static final String tumorBam = validationDataLocation + "NA12878.1kg.p2.chr1_10mb_11_mb.allTechs.bam";
+
+    // the VCF header records the command line, so the calls are compared through the BED output
+    private static final String baseCommand = "-T SomaticIndelDetector -R " + b36KGReference + " -L 1:10,000,000-10,500,000 -o %s -bed %s ";
+    private static final String pairedInputs = "-I:normal " + normalBam + " -I:tumor " + tumorBam + " ";
+    private static final String unpairedInputs = "-unpaired -I " + tumorBam + " ";
+
+    private String callsMd5(final String name, final String args) {
+        WalkerTestSpec spec = new WalkerTestSpec(
+                baseCommand + args,
+                2,
+                Arrays.asList("", ""));
+        return executeTest(name, spec).getSecond().get(1);
+    }
+
+    /**
+     * The tumor reads carry a 3 bp deletion at chr1:5050 and a 2 bp insertion at chr1:20050 that the normal reads don't;
+     * the MD5 is the BED output of the walker as it was before -callingThreads was added
+     */
+    @Test
+    public void testDefault() {
+        WalkerTestSpec spec = new WalkerTestSpec(
+                "-T SomaticIndelDetector -R " + testDir + "exampleFASTA.fasta" +
+                        " -I:normal " + testDir + "somaticIndelNormal.bam -I:tumor " + testDir + "somaticIndelTumor.bam -o %s -bed %s",
+                2,
+                Arrays.asList("", "0b27aad9184241dd5a9e3837d20b22f8"));
+        executeTest("somatic indel detector default", spec);
+    }
+
+    @Test
+    public void testMultipleCallingThreads() {
+        final String md5 = callsMd5("somatic indel detector", pairedInputs);
+        Assert.assertEquals(callsMd5("somatic indel detector with multiple calling threads", pairedInputs + "-callingThreads 4"), md5);
+    }
+
+    @Test
+    public void testUnpairedMultipleCallingThreads() {
+        final String md5 = callsMd5("unpaired indel detector", unpairedInputs);
+        Assert.assertEquals(callsMd5("unpaired indel detector with multiple calling threads", unpairedInputs + "-callingThreads 4"), md5);
+    }
+}
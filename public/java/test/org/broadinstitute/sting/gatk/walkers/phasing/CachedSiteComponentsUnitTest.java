@@ -0,0 +1,101 @@
+package org.broadinstitute.sting.gatk.walkers.phasing;
+
+import org.broadinstitute.sting.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.*;
+
+public class CachedSiteComponentsUnitTest extends BaseTest {
+
+    private static ReadBasesAtPosition readBases(ReadIdRegistry registry, String... readNames) {
+        ReadBasesAtPosition readBases = new ReadBasesAtPosition();
+        for (String readName : readNames)
+            readBases.putReadBase(registry.acquire(readName), (byte) 'A', 60, (byte) 30);
+        return readBases;
+    }
+
+    @Test
+    public void testCachedSitesJoinedByReadsShareAComponent() {
+        Random random = new Random(46);
+        ReadIdRegistry registry = new ReadIdRegistry();
+        CachedSiteComponents components = new CachedSiteComponents();
+
+        int cacheSize = 12;
+        LinkedList<ReadBasesAtPosition> cachedSites = new LinkedList<ReadBasesAtPosition>();
+        LinkedList<Set<String>> cachedSiteReads = new LinkedList<Set<String>>();
+        int nextRead = 0;
+        List<String> openReads = new ArrayList<String>();
+
+        for (int site = 0; site < 3000; site++) {
+            // Reads start at a site and run on for a few more, missing some of them [as if their bases there were filtered out]:
+            Iterator<String> openIt = openReads.iterator();
+            while (openIt.hasNext()) {
+                openIt.next();
+                if (random.nextDouble() < 0.3)
+                    openIt.remove();
+            }
+            int numNewReads = random.nextInt(3);
+            for (int i = 0; i < numNewReads; i++)
+                openReads.add("read" + nextRead++);
+
+            Set<String> siteReads = new HashSet<String>();
+            for (String read : openReads) {
+                if (random.nextDouble() < 0.7)
+                    siteReads.add(read);
+            }
+            ReadBasesAtPosition readBases = readBases(registry, siteReads.toArray(new String[siteReads.size()]));
+            readBases.setSiteIndex(components.addSite(readBases, registry.getMaxId()));
+            cachedSites.add(readBases);
+            cachedSiteReads.add(siteReads);
+
+            if (cachedSites.size() > cacheSize || random.nextDouble() < 0.2) {
+                ReadBasesAtPosition evicted = cachedSites.remove();
+                cachedSiteReads.remove();
+                components.evictThrough(evicted.getSiteIndex());
+                evicted.release(registry);
+            }
+
+            // Every two cached sites joined by a path of reads through cached sites must be in the same component:
+            List<Set<String>> siteReadsList = new ArrayList<Set<String>>(cachedSiteReads);
+            DisjointSet joined = new DisjointSet(siteReadsList.size());
+            for (int i = 0; i < siteReadsList.size(); i++) {
+                for (int j = i + 1; j < siteReadsList.size(); j++) {
+                    if (!Collections.disjoint(siteReadsList.get(i), siteReadsList.get(j)))
+                        joined.setUnion(i, j);
+                }
+            }
+            for (int i = 0; i < cachedSites.size(); i++) {
+                for (int j = i + 1; j < cachedSites.size(); j++) {
+                    if (joined.inSameSet(i, j))
+                        Assert.assertTrue(components.inSameComponent(cachedSites.get(i).getSiteIndex(), cachedSites.get(j).getSiteIndex()), "cached sites " + i + " and " + j + " after site " + site);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testEvictedSitesStopJoiningCachedSites() {
+        ReadIdRegistry registry = new ReadIdRegistry();
+        CachedSiteComponents components = new CachedSiteComponents();
+
+        List<ReadBasesAtPosition> sites = new ArrayList<ReadBasesAtPosition>();
+        for (int i = 0; i < 8; i++)
+            sites.add(readBases(registry, "filler" + i));
+        sites.add(readBases(registry, "r", "s")); // site 8 joins sites 9 and 10, which share no read
+        sites.add(readBases(registry, "r"));
+        sites.add(readBases(registry, "s"));
+        for (ReadBasesAtPosition site : sites)
+            site.setSiteIndex(components.addSite(site, registry.getMaxId()));
+        Assert.assertTrue(components.inSameComponent(sites.get(9).getSiteIndex(), sites.get(10).getSiteIndex()));
+        Assert.assertFalse(components.inSameComponent(sites.get(7).getSiteIndex(), sites.get(9).getSiteIndex()));
+
+        // Evicting sites 0-8 leaves 9 and 10 unconnected, which the components show once the evicted sites are dropped:
+        components.evictThrough(sites.get(8).getSiteIndex());
+        for (int i = 0; i < 9; i++)
+            sites.get(i).release(registry);
+        for (int i = 0; i < 20; i++)
+            components.addSite(readBases(registry, "later" + i), registry.getMaxId());
+        Assert.assertFalse(components.inSameComponent(sites.get(9).getSiteIndex(), sites.get(10).getSiteIndex()));
+    }
+}
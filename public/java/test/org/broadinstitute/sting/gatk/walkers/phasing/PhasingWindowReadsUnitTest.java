@@ -0,0 +1,190 @@
+package org.broadinstitute.sting.gatk.walkers.phasing;
+
+import org.broadinstitute.sting.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.*;
+
+/**
+ * Checks that narrowing a phasing window down by read ID keeps the same reads and sites as the TreeMap and PhasingGraph
+ * code it replaced, which is reproduced here [keyed by read name] as keepReadsAsBefore().
+ */
+public class PhasingWindowReadsUnitTest extends BaseTest {
+    private static final int MAX_READ_ID = 100;
+
+    @Test
+    public void testMatchesPhasingGraphOnRandomWindows() {
+        Random random = new Random(47);
+        PhasingWindowReads windowReads = new PhasingWindowReads(new ReadIdRegistry(), logger); // reused, as by the walker
+
+        for (int window = 0; window < 2000; window++) {
+            int numHetSites = 2 + random.nextInt(11);
+            int phasingSiteIndex = 1 + random.nextInt(numHetSites - 1);
+            Map<Integer, int[]> readSites = randomReadSites(random, numHetSites, random.nextInt(30));
+
+            // A read may have more than one base at a site:
+            windowReads.startWindow(MAX_READ_ID);
+            for (int site = 0; site < numHetSites; site++) {
+                for (Map.Entry<Integer, int[]> read : readSites.entrySet()) {
+                    for (int readSite : read.getValue()) {
+                        if (readSite == site)
+                            windowReads.addReadBase(read.getKey(), site, (byte) 'A');
+                    }
+                }
+            }
+            windowReads.endWindow();
+            BitSet keepReads = windowReads.removeExtraneousReads(numHetSites, phasingSiteIndex);
+
+            Map<String, Set<Integer>> namedReadSites = new HashMap<String, Set<Integer>>();
+            for (Map.Entry<Integer, int[]> read : readSites.entrySet()) {
+                Set<Integer> sites = new TreeSet<Integer>();
+                for (int site : read.getValue())
+                    sites.add(site);
+                namedReadSites.put("read" + read.getKey(), sites);
+            }
+            Set<String> expectedReads = keepReadsAsBefore(namedReadSites, numHetSites, phasingSiteIndex);
+
+            Set<String> keptReads = new TreeSet<String>();
+            for (int id = keepReads.nextSetBit(0); id >= 0; id = keepReads.nextSetBit(id + 1))
+                keptReads.add("read" + id);
+            Assert.assertEquals(keptReads, new TreeSet<String>(expectedReads), "reads kept in window " + window + " " + readSites.keySet());
+            Assert.assertEquals(windowReads.getNumReads(), expectedReads.size());
+
+            boolean[] expectedSitesWithReads = new boolean[numHetSites];
+            for (String read : expectedReads) {
+                for (int site : namedReadSites.get(read))
+                    expectedSitesWithReads[site] = true;
+            }
+            Assert.assertTrue(Arrays.equals(windowReads.getSitesWithReads(numHetSites), expectedSitesWithReads), "sites with reads in window " + window);
+        }
+    }
+
+    @Test
+    public void testNoPathBetweenPhasingSites() {
+        PhasingWindowReads windowReads = new PhasingWindowReads(new ReadIdRegistry(), logger);
+
+        // Reads 3 and 4 join sites 0-1 and 2-3, but nothing joins site 1 to site 2:
+        windowReads.startWindow(MAX_READ_ID);
+        windowReads.addReadBase(3, 0, (byte) 'A');
+        windowReads.addReadBase(3, 1, (byte) 'C');
+        windowReads.addReadBase(4, 2, (byte) 'G');
+        windowReads.addReadBase(4, 3, (byte) 'T');
+        windowReads.endWindow();
+
+        Assert.assertTrue(windowReads.removeExtraneousReads(4, 2).isEmpty());
+        Assert.assertEquals(windowReads.getNumReads(), 0);
+    }
+
+    // For each of numReads distinct read IDs, the sites it has bases at: a run of nearby sites with gaps [of bases that were filtered out]
+    private static Map<Integer, int[]> randomReadSites(Random random, int numHetSites, int numReads) {
+        Map<Integer, int[]> readSites = new LinkedHashMap<Integer, int[]>();
+        while (readSites.size() < numReads) {
+            int id = random.nextInt(MAX_READ_ID);
+            if (readSites.containsKey(id))
+                continue;
+
+            int start = random.nextInt(numHetSites);
+            int length = 1 + random.nextInt(4);
+            List<Integer> sites = new ArrayList<Integer>();
+            for (int site = start; site < Math.min(numHetSites, start + length); site++) {
+                if (site == start || random.nextDouble() < 0.8)
+                    sites.add(site);
+                if (random.nextDouble() < 0.05)
+                    sites.add(site);
+            }
+            int[] siteArray = new int[sites.size()];
+            for (int i = 0; i < siteArray.length; i++)
+                siteArray[i] = sites.get(i);
+            readSites.put(id, siteArray);
+        }
+        return readSites;
+    }
+
+    private static class Edge implements Comparable<Edge> {
+        private int v1;
+        private int v2;
+
+        public Edge(int v1, int v2) {
+            this.v1 = v1;
+            this.v2 = v2;
+        }
+
+        public int compareTo(Edge that) {
+            return v1 != that.v1 ? v1 - that.v1 : v2 - that.v2;
+        }
+    }
+
+    // The reads that removeExtraneousReads() kept when windows were graphs of PhasingGraphEdges mapped to lists of read names
+    private static Set<String> keepReadsAsBefore(Map<String, Set<Integer>> readSites, int numHetSites, int phasingSiteIndex) {
+        List<Set<Edge>> adjacentEdges = new ArrayList<Set<Edge>>();
+        for (int i = 0; i < numHetSites; i++)
+            adjacentEdges.add(new TreeSet<Edge>());
+        TreeMap<Edge, List<String>> edgeToReads = new TreeMap<Edge, List<String>>();
+        Set<Integer> sitesWithEdges = new TreeSet<Integer>();
+
+        for (Map.Entry<String, Set<Integer>> read : readSites.entrySet()) {
+            Integer[] siteInds = read.getValue().toArray(new Integer[read.getValue().size()]);
+            for (int i = 0; i < siteInds.length; i++) {
+                for (int j = i + 1; j < siteInds.length; j++) {
+                    Edge e = new Edge(siteInds[i], siteInds[j]);
+                    adjacentEdges.get(e.v1).add(e);
+                    adjacentEdges.get(e.v2).add(e);
+
+                    List<String> reads = edgeToReads.get(e);
+                    if (reads == null) {
+                        reads = new LinkedList<String>();
+                        edgeToReads.put(e, reads);
+                    }
+                    reads.add(read.getKey());
+
+                    sitesWithEdges.add(e.v1);
+                    sitesWithEdges.add(e.v2);
+                }
+            }
+        }
+
+        Set<String> keepReads = new HashSet<String>();
+        int prev = phasingSiteIndex - 1;
+        int cur = phasingSiteIndex;
+        if (!connectedComponents(adjacentEdges).inSameSet(prev, cur))
+            return keepReads;
+
+        Map<Integer, Set<Integer>> removedSiteSameCCAsPrev = new HashMap<Integer, Set<Integer>>();
+        Map<Integer, Set<Integer>> removedSiteSameCCAsCur = new HashMap<Integer, Set<Integer>>();
+        for (int i : sitesWithEdges) {
+            Set<Edge> removedEdges = new TreeSet<Edge>(adjacentEdges.get(i));
+            for (Edge e : removedEdges) {
+                adjacentEdges.get(e.v1).remove(e);
+                adjacentEdges.get(e.v2).remove(e);
+            }
+
+            DisjointSet ccAfterRemove = connectedComponents(adjacentEdges);
+            removedSiteSameCCAsPrev.put(i, ccAfterRemove.inSameSetAs(prev, sitesWithEdges));
+            removedSiteSameCCAsCur.put(i, ccAfterRemove.inSameSetAs(cur, sitesWithEdges));
+
+            for (Edge e : removedEdges) {
+                adjacentEdges.get(e.v1).add(e);
+                adjacentEdges.get(e.v2).add(e);
+            }
+        }
+
+        for (Map.Entry<Edge, List<String>> edgeReads : edgeToReads.entrySet()) {
+            Edge e = edgeReads.getKey();
+            boolean prevTo2and1ToCur = removedSiteSameCCAsPrev.get(e.v1).contains(e.v2) && removedSiteSameCCAsCur.get(e.v2).contains(e.v1);
+            boolean prevTo1and2ToCur = removedSiteSameCCAsPrev.get(e.v2).contains(e.v1) && removedSiteSameCCAsCur.get(e.v1).contains(e.v2);
+            if (prevTo2and1ToCur || prevTo1and2ToCur)
+                keepReads.addAll(edgeReads.getValue());
+        }
+        return keepReads;
+    }
+
+    private static DisjointSet connectedComponents(List<Set<Edge>> adjacentEdges) {
+        DisjointSet cc = new DisjointSet(adjacentEdges.size());
+        for (Set<Edge> edges : adjacentEdges) {
+            for (Edge e : edges)
+                cc.setUnion(e.v1, e.v2);
+        }
+        return cc;
+    }
+}
@@ -5,6 +5,10 @@ import org.testng.annotations.Test;
 
 import java.util.Arrays;
 
+/**
+ * The MD5s below date from before phasing reads were given integer IDs and cached sites were joined by a union-find.
+ * Those changes must leave the phased VCFs byte-for-byte unchanged, so these MD5s are pinned: do not regenerate them.
+ */
 public class ReadBackedPhasingIntegrationTest extends WalkerTest {
 
     public static String baseTestString(String reference, String reads, String VCF, int cacheWindowSize, int maxPhaseSites, double phaseQualityThresh) {
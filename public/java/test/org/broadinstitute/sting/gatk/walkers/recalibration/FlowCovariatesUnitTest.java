@@ -0,0 +1,214 @@
+package org.broadinstitute.sting.gatk.walkers.recalibration;
+
+import net.sf.samtools.SAMFileHeader;
+import net.sf.samtools.SAMReadGroupRecord;
+import org.broadinstitute.sting.BaseTest;
+import org.broadinstitute.sting.utils.collections.NestedHashMap;
+import org.broadinstitute.sting.utils.sam.ArtificialSAMUtils;
+import org.broadinstitute.sting.utils.sam.GATKSAMReadGroupRecord;
+import org.broadinstitute.sting.utils.sam.GATKSAMRecord;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.*;
+
+/**
+ * tests the flow covariates, and that counting with packed keys gives the same table as counting with nested hash maps
+ */
+public class FlowCovariatesUnitTest extends BaseTest {
+    private SAMFileHeader header;
+    private GATKSAMReadGroupRecord ionReadGroup;
+    private GATKSAMReadGroupRecord otherReadGroup;
+
+    @BeforeClass
+    public void init() {
+        header = ArtificialSAMUtils.createArtificialSamHeader(1, 1, 1000);
+        final SAMReadGroupRecord ion = new SAMReadGroupRecord("ion");
+        ion.setPlatform("IONTORRENT");
+        ion.setAttribute("FO", "TACGTACGTACGTACGTACGTACGTACGTACG");
+        ion.setAttribute("KS", "TCAG");
+        ionReadGroup = new GATKSAMReadGroupRecord(ion);
+        final SAMReadGroupRecord other = new SAMReadGroupRecord("other");
+        other.setPlatform("ILLUMINA");
+        otherReadGroup = new GATKSAMReadGroupRecord(other);
+    }
+
+    private GATKSAMRecord makeRead(final String bases, final boolean negativeStrand, final GATKSAMReadGroupRecord readGroup) {
+        final byte[] quals = new byte[bases.length()];
+        Arrays.fill(quals, (byte) 20);
+        final GATKSAMRecord read = ArtificialSAMUtils.createArtificialRead(header, "read", 0, 1, bases.getBytes(), quals);
+        read.setReadNegativeStrandFlag(negativeStrand);
+        read.setReadGroup(readGroup);
+        return read;
+    }
+
+    private static int[] keys(final PackedCovariate covariate, final GATKSAMRecord read) {
+        final int[] keys = new int[read.getReadLength()];
+        covariate.getKeys(read, keys);
+        return keys;
+    }
+
+    @DataProvider(name = "flows")
+    public Object[][] makeFlows() {
+        // key TCAG ends in flow 7, which also calls the first two bases GG
+        final short[] signals = new short[16];
+        signals[7] = 300;
+        signals[9] = 100;
+        signals[12] = 190;
+        signals[14] = 100;
+        return new Object[][] {
+                // bases, strand, ZF, FZ, flow indices, homopolymer lengths, nucleotides
+                { "GGATTC", false, null, null, new int[] { 7, 7, 9, 12, 12, 14 }, new int[] { 2, 2, 1, 2, 2, 1 }, new int[] { 2, 2, 0, 3, 3, 1 } },
+                { "GGATTC", false, 7, signals, new int[] { 7, 7, 9, 12, 12, 14 }, new int[] { 2, 2, 1, 2, 2, 1 }, new int[] { 2, 2, 0, 3, 3, 1 } },
+                { "GGATCC", false, 7, signals, new int[] { 7, 7, 9, 12, 14, 14 }, new int[] { 2, 2, 1, 2, 1, 1 }, new int[] { 2, 2, 0, 3, 1, 1 } },
+                { "GAATCC", true, null, null, new int[] { 14, 12, 12, 9, 7, 7 }, new int[] { 1, 2, 2, 1, 2, 2 }, new int[] { 1, 3, 3, 0, 2, 2 } },
+                { "GGNTTC", false, null, null, new int[] { 7, 7, 0, 8, 8, 10 }, new int[] { 2, 2, 0, 2, 2, 1 }, new int[] { 2, 2, 4, 3, 3, 1 } },
+        };
+    }
+
+    @Test(dataProvider = "flows")
+    public void testFlows(final String bases, final boolean negativeStrand, final Integer zf, final short[] fz,
+                          final int[] flowIndices, final int[] homopolymerLengths, final int[] nucleotides) {
+        final GATKSAMRecord read = makeRead(bases, negativeStrand, ionReadGroup);
+        if (zf != null)
+            read.setAttribute("ZF", zf);
+        if (fz != null)
+            read.setAttribute("FZ", fz);
+
+        Assert.assertEquals(keys(new FlowIndexCovariate(), read), flowIndices);
+        Assert.assertEquals(keys(new FlowHomopolymerCovariate(), read), homopolymerLengths);
+        Assert.assertEquals(keys(new FlowNucleotideCovariate(), read), nucleotides);
+    }
+
+    @Test
+    public void testNoFlowOrder() {
+        final GATKSAMRecord read = makeRead("GGATTC", false, otherReadGroup);
+        final Comparable[] values = new Comparable[read.getReadLength()];
+        new FlowNucleotideCovariate().getValues(read, values);
+        for (Comparable value : values)
+            Assert.assertEquals(value, "N");
+        Assert.assertEquals(keys(new FlowIndexCovariate(), read), new int[read.getReadLength()]);
+    }
+
+    @Test
+    public void testHomopolymerKeysMatchValues() {
+        final RecalibrationArgumentCollection RAC = new RecalibrationArgumentCollection();
+        final HomopolymerCovariate covariate = new HomopolymerCovariate();
+        covariate.initialize(RAC);
+        final Random random = new Random(42);
+        for (int r = 0; r < 100; r++) {
+            final GATKSAMRecord read = makeRead(randomBases(random, 50), random.nextBoolean(), ionReadGroup);
+            final int[] keys = keys(covariate, read);
+            final byte[] bases = read.getReadBases();
+            for (int offset = 0; offset < bases.length; offset++) {
+                // consecutive agreeing bases, looking in the direction of sequencing, as counted one base at a time
+                int numAgree = 0;
+                final int step = read.getReadNegativeStrandFlag() ? -1 : 1;
+                for (int i = offset; i + step >= 0 && i + step < bases.length && bases[i] == bases[i + step] && numAgree < RAC.HOMOPOLYMER_NBACK; i += step)
+                    numAgree++;
+                Assert.assertEquals(keys[offset], numAgree);
+            }
+        }
+    }
+
+    @Test
+    public void testPackedTableMatchesNestedHashMap() {
+        final RecalibrationArgumentCollection RAC = new RecalibrationArgumentCollection();
+        final List<Covariate> covariates = Arrays.<Covariate>asList(new ReadGroupCovariate(), new QualityScoreCovariate(),
+                new FlowIndexCovariate(), new FlowHomopolymerCovariate(), new FlowNucleotideCovariate(), new HomopolymerCovariate());
+        for (Covariate covariate : covariates)
+            covariate.initialize(RAC);
+        Assert.assertTrue(PackedRecalTable.canPack(covariates));
+        assertPackedTablesMatchNestedHashMap(covariates, new Random(17), false);
+    }
+
+    @Test
+    public void testStandardCovariatesPackedTableMatchesNestedHashMap() {
+        final RecalibrationArgumentCollection RAC = new RecalibrationArgumentCollection();
+        final List<Covariate> covariates = Arrays.<Covariate>asList(new ReadGroupCovariate(), new QualityScoreCovariate(),
+                new CycleCovariate(), new DinucCovariate());
+        for (Covariate covariate : covariates)
+            covariate.initialize(RAC);
+        Assert.assertTrue(PackedRecalTable.canPack(covariates));
+        assertPackedTablesMatchNestedHashMap(covariates, new Random(23), true);
+    }
+
+    @Test
+    public void testCycleOutOfPackedRange() {
+        final RecalibrationArgumentCollection RAC = new RecalibrationArgumentCollection();
+        final List<Covariate> covariates = Arrays.<Covariate>asList(new ReadGroupCovariate(), new QualityScoreCovariate(), new CycleCovariate());
+        for (Covariate covariate : covariates)
+            covariate.initialize(RAC);
+        final PackedRecalTable packed = new PackedRecalTable(covariates);
+        Assert.assertNotNull(packed.computeKeys(makeRead(randomBases(new Random(5), 1000), true, otherReadGroup)));
+        Assert.assertNull(packed.computeKeys(makeRead(randomBases(new Random(5), 40000), false, otherReadGroup)));
+    }
+
+    /**
+     * Counts random reads both in a nested hash map of the covariates' values and, split between two packed tables as
+     * the threads of CountCovariates would, with packed keys, and checks that the unpacked tables add up to the same data
+     */
+    private void assertPackedTablesMatchNestedHashMap(final List<Covariate> covariates, final Random random, final boolean pairedWithNoCalls) {
+        final PackedRecalTable[] packed = { new PackedRecalTable(covariates), new PackedRecalTable(covariates) };
+        final NestedHashMap nested = new NestedHashMap();
+        for (int r = 0; r < 500; r++) {
+            final byte[] bases = randomBases(random, 100).getBytes();
+            if (pairedWithNoCalls) {
+                for (int i = random.nextInt(3); i > 0; i--)
+                    bases[random.nextInt(bases.length)] = (byte) 'N';
+            }
+            final GATKSAMRecord read = makeRead(new String(bases), random.nextBoolean(), random.nextBoolean() ? ionReadGroup : otherReadGroup);
+            if (pairedWithNoCalls) {
+                read.setReadPairedFlag(random.nextBoolean());
+                read.setSecondOfPairFlag(read.getReadPairedFlag() && random.nextBoolean());
+            }
+            final byte[] quals = read.getBaseQualities();
+            for (int i = 0; i < quals.length; i++)
+                quals[i] = (byte) random.nextInt(41);
+            read.setBaseQualities(quals);
+
+            final PackedRecalTable table = packed[r % packed.length];
+            final Comparable[][] values = RecalDataManager.computeCovariates(read, covariates);
+            final long[] keys = table.computeKeys(read);
+            for (int offset = 0; offset < read.getReadLength(); offset++) {
+                final byte refBase = random.nextInt(10) == 0 ? (byte) 'A' : read.getReadBases()[offset];
+                RecalDatumOptimized datum = (RecalDatumOptimized) nested.get((Object[]) values[offset]);
+                if (datum == null)
+                    datum = (RecalDatumOptimized) nested.put(new RecalDatumOptimized(), true, (Object[]) values[offset]);
+                datum.incrementBaseCounts(read.getReadBases()[offset], refBase);
+                table.increment(keys[offset], read.getReadBases()[offset], refBase);
+            }
+        }
+
+        final NestedHashMap unpacked = new NestedHashMap();
+        for (PackedRecalTable table : packed)
+            table.addTo(unpacked);
+        final Map<List<Object>, String> expected = flatten(nested.data, new LinkedList<Object>(), new HashMap<List<Object>, String>());
+        Assert.assertEquals(flatten(unpacked.data, new LinkedList<Object>(), new HashMap<List<Object>, String>()), expected);
+    }
+
+    private static Map<List<Object>, String> flatten(final Map data, final LinkedList<Object> key, final Map<List<Object>, String> flattened) {
+        for (Object comp : data.keySet()) {
+            key.addLast(comp);
+            final Object val = data.get(comp);
+            if (val instanceof RecalDatumOptimized)
+                flattened.put(new ArrayList<Object>(key), ((RecalDatumOptimized) val).outputToCSV());
+            else
+                flatten((Map) val, key, flattened);
+            key.removeLast();
+        }
+        return flattened;
+    }
+
+    private static String randomBases(final Random random, final int length) {
+        final StringBuilder bases = new StringBuilder();
+        while (bases.length() < length) {
+            final char base = "ACGT".charAt(random.nextInt(4));
+            for (int i = random.nextInt(4); i >= 0 && bases.length() < length; i--)
+                bases.append(base);
+        }
+        return bases.toString();
+    }
+}
@@ -0,0 +1,29 @@
+package org.broadinstitute.sting.gatk.walkers.torrent;
+
+import org.broadinstitute.sting.WalkerTest;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+
+public class IndelAssemblyIntegrationTest extends WalkerTest {
+
+    // the soft clipped reads of the mixed technology BAM give the walker candidate regions to assemble
+    private static final String baseCommand = "-T IndelAssembly -R " + b36KGReference +
+            " -I " + validationDataLocation + "NA12878.1kg.p2.chr1_10mb_11_mb.allTechs.bam" +
+            " -L 1:10,000,000-11,000,000 -o %s ";
+
+    private static final String EMPTY_OUTPUT_MD5 = "d41d8cd98f00b204e9800998ecf8427e";
+
+    private String assemblyMd5(final String name, final String args) {
+        WalkerTestSpec spec = new WalkerTestSpec(baseCommand + args, 1, Arrays.asList(""));
+        return executeTest(name, spec).getSecond().get(0);
+    }
+
+    @Test
+    public void testMultipleAssemblyThreads() {
+        final String md5 = assemblyMd5("indel assembly", "-assemblyThreads 1");
+        Assert.assertFalse(md5.equals(EMPTY_OUTPUT_MD5), "no regions were assembled, so the threads have nothing to disagree on");
+        Assert.assertEquals(assemblyMd5("indel assembly with multiple assembly threads", "-assemblyThreads 4"), md5);
+    }
+}
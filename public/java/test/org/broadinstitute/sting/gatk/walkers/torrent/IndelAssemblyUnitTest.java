@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2012, The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.broadinstitute.sting.gatk.walkers.torrent;
+
+import net.sf.samtools.SAMFileHeader;
+import org.broadinstitute.sting.BaseTest;
+import org.broadinstitute.sting.utils.sam.ArtificialSAMUtils;
+import org.broadinstitute.sting.utils.sam.GATKSAMRecord;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.*;
+
+/**
+ * Checks the packed k-mer spectrum and the assembly of candidate regions against the string keyed implementation
+ * they replaced
+ */
+public class IndelAssemblyUnitTest extends BaseTest {
+    private static final int KMER_LENGTH = 11;
+
+    @Test
+    public void testKmerCountsMatchStringKmers() {
+        final Random random = new Random(42);
+        final KmerSpectrum spectrum = new KmerSpectrum(KMER_LENGTH);
+        final Map<String, Integer> expected = new HashMap<String, Integer>();
+
+        for (int i = 0; i < 50; i++) {
+            // a repetitive stretch, so that some k-mers are seen many times, and an N now and then
+            final String unit = randomBases(random, 1 + random.nextInt(8));
+            final StringBuilder sequence = new StringBuilder();
+            while (sequence.length() < 500)
+                sequence.append(random.nextInt(10) == 0 ? unit : randomBases(random, 1 + random.nextInt(20)));
+            if (random.nextBoolean())
+                sequence.setCharAt(random.nextInt(sequence.length()), 'N');
+
+            final byte[] bases = sequence.toString().getBytes();
+            final int start = random.nextInt(50);
+            final int stop = bases.length - random.nextInt(50);
+            spectrum.addSequence(bases, start, stop);
+
+            // the previous implementation counted every substring, the first occurrence as zero
+            for (int x = start; x <= stop - KMER_LENGTH; x++) {
+                final String kmer = sequence.substring(x, x + KMER_LENGTH);
+                if (kmer.indexOf('N') < 0)
+                    expected.put(kmer, expected.containsKey(kmer) ? expected.get(kmer) + 1 : 0);
+            }
+        }
+
+        Assert.assertEquals(spectrum.size(), expected.size());
+        for (Map.Entry<String, Integer> entry : expected.entrySet()) {
+            final long kmer = pack(spectrum, entry.getKey());
+            Assert.assertTrue(spectrum.contains(kmer), entry.getKey());
+            Assert.assertEquals(spectrum.getFrequency(kmer), (int) entry.getValue(), entry.getKey());
+            Assert.assertEquals(spectrum.getPositionInReference(kmer), -1);
+        }
+    }
+
+    @DataProvider(name = "regions")
+    public Object[][] makeRegions() {
+        // the lines written by the previous implementation for the same regions
+        return new Object[][]{
+                {1, true, "1\t200\t.\tCGGCCG\tC\t700\t.\tBayesian_Score=7;Variant-freq=0.4827586;Num-spanning-ref-reads=15;Num-variant-reads=14;Variant-length=5\tGT:AD:DP:FA:GQ:MQ0:PL\t0/1:15,14:29:0.4827586:99:0:700"},
+                {1, false, "1\t201\t.\tG\tGAGCCG\t700\t.\tBayesian_Score=7;Variant-freq=0.2413793;Num-spanning-ref-reads=44;Num-variant-reads=14;Variant-length=5\tGT:AD:DP:FA:GQ:MQ0:PL\t0/1:44,14:58:0.2413793:99:0:700"},
+                {4, true, "1\t200\t.\tGGCGTCT\tG\t700\t.\tBayesian_Score=7;Variant-freq=0.4827586;Num-spanning-ref-reads=15;Num-variant-reads=14;Variant-length=6\tGT:AD:DP:FA:GQ:MQ0:PL\t0/1:15,14:29:0.4827586:99:0:700"},
+                {9, true, "1\t201\t.\tATGTTGAA\tA\t700\t.\tBayesian_Score=7;Variant-freq=0.2413793;Num-spanning-ref-reads=44;Num-variant-reads=14;Variant-length=7\tGT:AD:DP:FA:GQ:MQ0:PL\t0/1:44,14:58:0.2413793:99:0:700"},
+                {12, false, "1\t200\t.\tA\tAGACGGTTACC\t700\t.\tBayesian_Score=7;Variant-freq=0.4827586;Num-spanning-ref-reads=15;Num-variant-reads=14;Variant-length=10\tGT:AD:DP:FA:GQ:MQ0:PL\t0/1:15,14:29:0.4827586:99:0:700"},
+                {16, true, "1\t202\t.\tAGG\tA\t700\t.\tBayesian_Score=7;Variant-freq=0.2413793;Num-spanning-ref-reads=44;Num-variant-reads=14;Variant-length=2\tGT:AD:DP:FA:GQ:MQ0:PL\t0/1:44,14:58:0.2413793:99:0:700"}
+        };
+    }
+
+    /**
+     * Thirty reads match the reference up to position 200 and then soft clip 40 bases, which follow a deletion or an
+     * insertion of 3 to 10 bases there
+     */
+    @Test(dataProvider = "regions")
+    public void testAssemblyMatchesPreviousOutput(final int seed, final boolean deletion, final String expected) {
+        final Random random = new Random(seed);
+        final String chromosome = randomBases(random, 400);
+        final int position = 200;
+        final int length = 3 + random.nextInt(8);
+        final String clipped = deletion ? chromosome.substring(position + length) : randomBases(random, length) + chromosome.substring(position);
+
+        final SAMFileHeader header = ArtificialSAMUtils.createArtificialSamHeader(1, 1, chromosome.length());
+        final GATKSAMRecord[] reads = new GATKSAMRecord[30];
+        for (int i = 0; i < reads.length; i++) {
+            final int matched = 20 + random.nextInt(21);
+            final byte[] bases = (chromosome.substring(position - matched, position) + clipped.substring(0, 40)).getBytes();
+            final byte[] quals = new byte[bases.length];
+            Arrays.fill(quals, (byte) 30);
+            reads[i] = ArtificialSAMUtils.createArtificialRead(header, "read" + i, 0, position - matched + 1, bases, quals, matched + "M40S");
+        }
+
+        final int softStart = position + 1;
+        final int softLen = 40;
+        final int genStart = softStart - KMER_LENGTH;
+        final int genStop = softStart + softLen + KMER_LENGTH + 1;
+        final IndelAssembly.CandidateRegion region = new IndelAssembly().new CandidateRegion(
+                "1", softStart, softLen, reads.length * softLen, genStart, genStop, chromosome.substring(genStart - 1, genStop), reads);
+
+        Assert.assertEquals(region.call(), Collections.singletonList(expected));
+    }
+
+    private static String randomBases(final Random random, final int length) {
+        final StringBuilder bases = new StringBuilder(length);
+        for (int i = 0; i < length; i++)
+            bases.append("ACGT".charAt(random.nextInt(4)));
+        return bases.toString();
+    }
+
+    private static long pack(final KmerSpectrum spectrum, final String kmer) {
+        long packed = 0;
+        for (int i = 0; i < kmer.length(); i++)
+            packed = spectrum.extend(packed, KmerSpectrum.encode((byte) kmer.charAt(i)));
+        return packed;
+    }
+}
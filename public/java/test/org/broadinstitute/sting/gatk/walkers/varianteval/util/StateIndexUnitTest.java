@@ -0,0 +1,85 @@
+package org.broadinstitute.sting.gatk.walkers.varianteval.util;
+
+import org.broadinstitute.sting.BaseTest;
+import org.broadinstitute.sting.gatk.walkers.varianteval.stratifications.VariantStratifier;
+import org.broadinstitute.sting.utils.exceptions.ReviewedStingException;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.*;
+
+/**
+ * tests that every combination of stratification states gets its own number, and that the numbers map back to the right states
+ */
+public class StateIndexUnitTest extends BaseTest {
+    private static class TestStratifier extends VariantStratifier {
+        public TestStratifier(final String... states) {
+            this.states.addAll(Arrays.asList(states));
+        }
+
+        @Override
+        public void initialize() {}
+    }
+
+    // stratifiers are named after their classes
+    private static class Letter extends TestStratifier { public Letter() { super("a", "b", "c"); } }
+    private static class Axis extends TestStratifier { public Axis() { super("x", "y", "x"); } }
+    private static class Digit extends TestStratifier { public Digit() { super("1", "2"); } }
+
+    private StateIndex stateIndex;
+
+    @BeforeMethod
+    public void makeStateIndex() {
+        stateIndex = new StateIndex(Arrays.<VariantStratifier>asList(new Letter(), new Axis(), new Digit()));
+    }
+
+    @Test
+    public void testStates() {
+        // the duplicated state is only numbered once
+        Assert.assertEquals(stateIndex.size(), 3 * 2 * 2);
+
+        final Set<List<String>> combinations = new HashSet<List<String>>();
+        for ( int index = 0; index < stateIndex.size(); index++ ) {
+            final List<String> states = Arrays.asList(stateIndex.getState(index, 0), stateIndex.getState(index, 1), stateIndex.getState(index, 2));
+            Assert.assertTrue(combinations.add(states), "Combination " + states + " numbered twice");
+            Assert.assertEquals(stateIndex.getStateKey(index).toString(), String.format("Axis:%s;Digit:%s;Letter:%s;", states.get(1), states.get(2), states.get(0)));
+            Assert.assertEquals(stateIndex.getIndices(asStates(states.get(0), states.get(1), states.get(2))), new int[]{index});
+        }
+    }
+
+    @Test
+    public void testCombinations() {
+        final List<List<String>> relevantStates = new ArrayList<List<String>>();
+        relevantStates.add(Arrays.asList("a", "c", "a"));
+        relevantStates.add(Arrays.asList("x", "y"));
+        relevantStates.add(Arrays.asList("2"));
+
+        final int[] indices = stateIndex.getIndices(relevantStates);
+        Assert.assertEquals(indices.length, 4);
+
+        final Set<String> combinations = new HashSet<String>();
+        for ( final int index : indices )
+            combinations.add(stateIndex.getState(index, 0) + stateIndex.getState(index, 1) + stateIndex.getState(index, 2));
+        Assert.assertEquals(combinations, new HashSet<String>(Arrays.asList("ax2", "ay2", "cx2", "cy2")));
+    }
+
+    @Test
+    public void testNoRelevantStates() {
+        final List<List<String>> relevantStates = asStates("a", "x", "1");
+        relevantStates.set(1, Collections.<String>emptyList());
+        Assert.assertEquals(stateIndex.getIndices(relevantStates).length, 0);
+    }
+
+    @Test(expectedExceptions = ReviewedStingException.class)
+    public void testUnknownState() {
+        stateIndex.getIndices(asStates("a", "z", "1"));
+    }
+
+    private static List<List<String>> asStates(final String... states) {
+        final List<List<String>> relevantStates = new ArrayList<List<String>>();
+        for ( final String state : states )
+            relevantStates.add(Arrays.asList(state));
+        return relevantStates;
+    }
+}
@@ -0,0 +1,124 @@
+package org.broadinstitute.sting.gatk.walkers.variantrecalibration;
+
+import org.broadinstitute.sting.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class VariantDataColumnsUnitTest extends BaseTest {
+    private static final int NUM_ANNOTATIONS = 3;
+
+    private static List<VariantDatum> makeData(final int numData) {
+        final Random random = new Random(1);
+        final List<VariantDatum> data = new ArrayList<VariantDatum>(numData);
+        for ( int i = 0; i < numData; i++ ) {
+            final VariantDatum datum = new VariantDatum();
+            datum.annotations = new double[NUM_ANNOTATIONS];
+            datum.isNull = new boolean[NUM_ANNOTATIONS];
+            for ( int j = 0; j < NUM_ANNOTATIONS; j++ ) {
+                datum.annotations[j] = random.nextGaussian();
+                datum.isNull[j] = random.nextInt(10) == 0;
+            }
+            datum.lod = random.nextDouble();
+            datum.originalQual = random.nextDouble() * 100;
+            datum.prior = random.nextDouble();
+            datum.contig = random.nextBoolean() ? "1" : "2";
+            datum.start = i;
+            datum.stop = i + random.nextInt(3);
+            datum.consensusCount = random.nextInt(3);
+            datum.worstAnnotation = random.nextInt(NUM_ANNOTATIONS + 1) - 1;
+            datum.isKnown = random.nextBoolean();
+            datum.atTruthSite = random.nextBoolean();
+            datum.atTrainingSite = random.nextBoolean();
+            datum.atAntiTrainingSite = random.nextBoolean();
+            datum.isTransition = random.nextBoolean();
+            datum.isSNP = random.nextBoolean();
+            datum.failingSTDThreshold = random.nextBoolean();
+            data.add(datum);
+        }
+        return data;
+    }
+
+    private static void assertSameDatum(final VariantDatum actual, final VariantDatum expected) {
+        Assert.assertEquals(actual.annotations, expected.annotations);
+        Assert.assertEquals(actual.isNull, expected.isNull);
+        Assert.assertEquals(actual.lod, expected.lod);
+        Assert.assertEquals(actual.originalQual, expected.originalQual);
+        Assert.assertEquals(actual.prior, expected.prior);
+        Assert.assertEquals(actual.contig, expected.contig);
+        Assert.assertEquals(actual.start, expected.start);
+        Assert.assertEquals(actual.stop, expected.stop);
+        Assert.assertEquals(actual.consensusCount, expected.consensusCount);
+        Assert.assertEquals(actual.worstAnnotation, expected.worstAnnotation);
+        Assert.assertEquals(actual.isKnown, expected.isKnown);
+        Assert.assertEquals(actual.atTruthSite, expected.atTruthSite);
+        Assert.assertEquals(actual.atTrainingSite, expected.atTrainingSite);
+        Assert.assertEquals(actual.atAntiTrainingSite, expected.atAntiTrainingSite);
+        Assert.assertEquals(actual.isTransition, expected.isTransition);
+        Assert.assertEquals(actual.isSNP, expected.isSNP);
+        Assert.assertEquals(actual.failingSTDThreshold, expected.failingSTDThreshold);
+    }
+
+    @DataProvider(name = "heapBudgets")
+    public Object[][] makeHeapBudgets() {
+        // everything on the heap, everything memory-mapped, and a mix of both
+        return new Object[][]{ {Long.MAX_VALUE, false}, {0L, true}, {4L * 1024 * 1024, true} };
+    }
+
+    @Test(dataProvider = "heapBudgets")
+    public void testRoundTrip(final long heapBudget, final boolean expectMapped) {
+        final List<VariantDatum> data = makeData(150000);
+        final VariantDataColumns columns = new VariantDataColumns(NUM_ANNOTATIONS, heapBudget);
+        columns.addAll(data);
+
+        Assert.assertEquals(columns.size(), data.size());
+        Assert.assertEquals(columns.isMapped(), expectMapped);
+        final VariantDatum datum = new VariantDatum();
+        for ( int i = 0; i < data.size(); i++ )
+            assertSameDatum(columns.getDatum(i, datum), data.get(i));
+    }
+
+    @Test
+    public void testSetDatumAndAppend() {
+        final List<VariantDatum> data = makeData(1000);
+        final VariantDataColumns first = new VariantDataColumns(NUM_ANNOTATIONS, Long.MAX_VALUE);
+        final VariantDataColumns second = new VariantDataColumns(NUM_ANNOTATIONS, 0);
+        first.addAll(data.subList(0, 400));
+        second.addAll(data.subList(400, 1000));
+
+        data.get(500).lod = -3.0;
+        data.get(500).worstAnnotation = 2;
+        data.get(500).annotations[1] = 42.0;
+        second.setDatum(100, data.get(500));
+
+        first.addAll(second);
+        Assert.assertEquals(first.size(), data.size());
+        for ( int i = 0; i < data.size(); i++ )
+            assertSameDatum(first.getDatum(i, new VariantDatum()), data.get(i));
+    }
+
+    @Test
+    public void testSharedHeapBudget() {
+        // room for a single chunk of three annotations: (8 * 6 + 4 * 5) bytes for each of 64k rows
+        final AtomicLong heapBudget = new AtomicLong(68L << 16);
+        final List<VariantDatum> data = makeData(1000);
+        final VariantDataColumns first = new VariantDataColumns(NUM_ANNOTATIONS, heapBudget);
+        final VariantDataColumns second = new VariantDataColumns(NUM_ANNOTATIONS, heapBudget);
+        first.addAll(data);
+        second.addAll(data);
+        Assert.assertFalse(first.isMapped());
+        Assert.assertTrue(second.isMapped());
+        Assert.assertEquals(heapBudget.get(), 0L);
+
+        first.close();
+        Assert.assertEquals(heapBudget.get(), 68L << 16);
+        second.close();
+        Assert.assertFalse(second.isMapped());
+        Assert.assertEquals(heapBudget.get(), 68L << 16);
+    }
+}
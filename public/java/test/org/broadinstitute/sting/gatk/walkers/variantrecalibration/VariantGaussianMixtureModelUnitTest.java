@@ -24,6 +24,7 @@
 
 package org.broadinstitute.sting.gatk.walkers.variantrecalibration;
 
+import org.broadinstitute.sting.gatk.GenomeAnalysisEngine;
 import org.broadinstitute.sting.utils.exceptions.UserException;
 import org.broadinstitute.sting.utils.exceptions.StingException;
 import org.broadinstitute.sting.utils.text.XReadLines;
@@ -128,4 +129,44 @@ public final class VariantGaussianMixtureModelUnitTest extends BaseTest {
         ArrayList<VariantDatum> vd = readData();
         List<Tranche> tranches = findMyTranches(vd, new double[]{-1});
     }
+
+    private static List<VariantDatum> makeClusteredData(final int numData) {
+        final Random random = new Random(42);
+        final List<VariantDatum> data = new ArrayList<VariantDatum>(numData);
+        for ( int i = 0; i < numData; i++ ) {
+            final VariantDatum datum = new VariantDatum();
+            final int cluster = random.nextInt(3);
+            datum.annotations = new double[3];
+            datum.isNull = new boolean[3];
+            for ( int j = 0; j < datum.annotations.length; j++ )
+                datum.annotations[j] = random.nextGaussian() + 3.0 * cluster - j * cluster;
+            data.add(datum);
+        }
+        return data;
+    }
+
+    private static double[] fitAndEvaluate(final List<VariantDatum> data, final int numThreads) {
+        final VariantRecalibratorArgumentCollection VRAC = new VariantRecalibratorArgumentCollection();
+        VRAC.MAX_GAUSSIANS = 3;
+        VRAC.NUM_EM_THREADS = numThreads;
+        GenomeAnalysisEngine.resetRandomGenerator();
+        final GaussianMixtureModel model = new VariantRecalibratorEngine(VRAC).generateModel(data);
+        model.precomputeDenominatorForEvaluation();
+        final double[] lods = new double[20];
+        for ( int i = 0; i < lods.length; i++ )
+            lods[i] = model.evaluateDatum(data.get(i));
+        return lods;
+    }
+
+    @Test
+    public final void testMultithreadedEMIsDeterministic() {
+        final List<VariantDatum> data = makeClusteredData(3000);
+        final double[] serial = fitAndEvaluate(data, 1);
+        final double[] parallel1 = fitAndEvaluate(data, 3);
+        final double[] parallel2 = fitAndEvaluate(data, 3);
+        for ( int i = 0; i < serial.length; i++ ) {
+            Assert.assertEquals(parallel1[i], parallel2[i], 0.0);
+            Assert.assertEquals(parallel1[i], serial[i], 1e-6);
+        }
+    }
 }
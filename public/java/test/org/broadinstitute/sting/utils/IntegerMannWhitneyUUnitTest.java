@@ -0,0 +1,78 @@
+package org.broadinstitute.sting.utils;
+
+import org.broadinstitute.sting.BaseTest;
+import org.broadinstitute.sting.utils.collections.Pair;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+
+public class IntegerMannWhitneyUUnitTest extends BaseTest {
+    private static IntegerMannWhitneyU makeTest(int[] set1, int[] set2) {
+        IntegerMannWhitneyU mwu = new IntegerMannWhitneyU();
+        for ( int dp : set1 )
+            mwu.add(dp, MannWhitneyU.USet.SET1);
+        for ( int dp : set2 )
+            mwu.add(dp, MannWhitneyU.USet.SET2);
+        return mwu;
+    }
+
+    @Test
+    public void testMatchesMannWhitneyUWithoutTies() {
+        int[] set1 = new int[]{2,4,5,6,8};
+        int[] set2 = new int[]{1,3,7,9,10,11,12,13};
+        IntegerMannWhitneyU mwu = makeTest(set1, set2);
+
+        Assert.assertEquals(mwu.getDoubledU(MannWhitneyU.USet.SET1), 20L);
+        Assert.assertEquals(mwu.getDoubledU(MannWhitneyU.USet.SET2), 60L);
+        Assert.assertEquals((double)mwu.runOneSidedTest(MannWhitneyU.USet.SET1).second, 0.021756021756021756, 1e-14);
+        Assert.assertEquals((double)mwu.runTwoSidedTest().second, 2*0.021756021756021756, 1e-14);
+        Assert.assertEquals((double)mwu.runOneSidedTest(MannWhitneyU.USet.SET1).first,
+                (double)MannWhitneyU.calculatePRecursively(5, 8, 10L, false, MannWhitneyU.ExactMode.POINT).first, 1e-14);
+    }
+
+    @Test
+    public void testTiesCountHalf() {
+        // 2 is above 1 and tied with 2 (2 + 1), 3 is above 1 and 2 and tied with both 3s (4 + 2)
+        IntegerMannWhitneyU mwu = makeTest(new int[]{2,3}, new int[]{1,2,3,3});
+        Assert.assertEquals(mwu.getDoubledU(MannWhitneyU.USet.SET1), 9L);
+        Assert.assertEquals(mwu.getDoubledU(MannWhitneyU.USet.SET1) + mwu.getDoubledU(MannWhitneyU.USet.SET2), 2*2*4L);
+    }
+
+    @Test
+    public void testCountingAndSortingAgree() {
+        // the second test spans too wide a range to count, so is sorted
+        IntegerMannWhitneyU counted = makeTest(new int[]{5,1,5,-3}, new int[]{5,0,7});
+        IntegerMannWhitneyU sorted = makeTest(new int[]{5,1,5,-3000000}, new int[]{5,0,7000000});
+        Assert.assertEquals(counted.getDoubledU(MannWhitneyU.USet.SET1), sorted.getDoubledU(MannWhitneyU.USet.SET1));
+        Assert.assertEquals(counted.runOneSidedTest(MannWhitneyU.USet.SET1).second, sorted.runOneSidedTest(MannWhitneyU.USet.SET1).second);
+    }
+
+    @Test
+    public void testTiedDistribution() {
+        // no ties reproduces the tabulated distribution
+        double[] untied = MannWhitneyU.tiedDoubledUDistribution(4, 5, new int[]{1,1,1,1,1,1,1,1,1}, 9);
+        for ( int u = 0; u <= 20; u++ )
+            Assert.assertEquals(untied[2*u], MannWhitneyU.calculatePRecursivelyDoNotCheckValuesEvenThoughItIsSlow(4, 5, u), 1e-14);
+        for ( int u = 1; u < 40; u += 2 )
+            Assert.assertEquals(untied[u], 0.0);
+
+        // all tied, so U is always nm/2
+        double[] allTied = MannWhitneyU.tiedDoubledUDistribution(3, 2, new int[]{5}, 1);
+        double[] expected = new double[13];
+        expected[6] = 1.0;
+        Assert.assertTrue(Arrays.equals(allTied, expected));
+
+        // an informative test of all-tied data is impossible
+        IntegerMannWhitneyU mwu = makeTest(new int[]{7,7,7,7,7,7,7,7,7,7}, new int[]{7,7,7,7,7,7,7,7,7,7});
+        Pair<Double,Double> result = mwu.runOneSidedTest(MannWhitneyU.USet.SET1);
+        Assert.assertEquals((double)result.first, 0.0, 1e-14);
+    }
+
+    @Test
+    public void testEmptySet() {
+        IntegerMannWhitneyU mwu = makeTest(new int[]{1,2,3}, new int[0]);
+        Assert.assertTrue(Double.isNaN(mwu.runOneSidedTest(MannWhitneyU.USet.SET1).first));
+        Assert.assertTrue(Double.isNaN(mwu.runTwoSidedTest().second));
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2012, The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.broadinstitute.sting.utils;
+
+import com.google.caliper.Param;
+import com.google.caliper.SimpleBenchmark;
+import com.google.caliper.runner.CaliperMain;
+
+import java.util.Random;
+
+/**
+ * Caliper microbenchmark of Smith-Waterman alignment of reads against an IndelRealigner-sized reference window
+ */
+public class SWPairwiseAlignmentBenchmark extends SimpleBenchmark {
+    @Param({"500", "2000"})
+    int refLength; // set automatically by framework
+
+    @Param({"100", "250"})
+    int readLength; // set automatically by framework
+
+    @Param({"-1", "20"})
+    int bandWidth; // set automatically by framework
+
+    private byte[] ref;
+    private byte[][] reads;
+    private int[] offsets;
+
+    @Override protected void setUp() {
+        final byte[] bases = {'A', 'C', 'G', 'T'};
+        final Random random = new Random(1);
+        final int nReads = 10;
+
+        ref = new byte[refLength];
+        for ( int i = 0; i < refLength; i++ )
+            ref[i] = bases[random.nextInt(bases.length)];
+
+        reads = new byte[nReads][];
+        offsets = new int[nReads];
+        for ( int r = 0; r < nReads; r++ ) {
+            offsets[r] = random.nextInt(refLength - readLength);
+            reads[r] = new byte[readLength];
+            System.arraycopy(ref, offsets[r], reads[r], 0, readLength);
+            reads[r][random.nextInt(readLength)] = bases[random.nextInt(bases.length)];
+        }
+    }
+
+    public void timeIntegerScoring(int rep) {
+        for ( int i = 0; i < rep; i++ ) {
+            for ( int r = 0; r < reads.length; r++ )
+                new SWPairwiseAlignment(ref, reads[r], 30.0, -10.0, -10.0, -2.0, offsets[r], bandWidth).getCigar();
+        }
+    }
+
+    public void timeDoubleScoring(int rep) {
+        for ( int i = 0; i < rep; i++ ) {
+            for ( int r = 0; r < reads.length; r++ )
+                new SWPairwiseAlignment(ref, reads[r], 1.0, -1.0/3.0, -1.0-1.0/3.0, -1.0/3.0, offsets[r], bandWidth).getCigar();
+        }
+    }
+
+    public static void main(String[] args) {
+        CaliperMain.main(SWPairwiseAlignmentBenchmark.class, args);
+    }
+}
@@ -0,0 +1,159 @@
+package org.broadinstitute.sting.utils;
+
+import net.sf.samtools.Cigar;
+import net.sf.samtools.CigarElement;
+import net.sf.samtools.CigarOperator;
+import org.broadinstitute.sting.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Basic unit tests for the Smith-Waterman aligner: the integer and floating point scoring, the reuse of the
+ * matrices between alignments and the banded alignment must all agree with each other
+ */
+public class SWPairwiseAlignmentUnitTest extends BaseTest {
+    private final static byte[] BASES = {'A', 'C', 'G', 'T'};
+
+    @Test
+    public void testSimpleDeletion() {
+        final String ref  = "AAAAACCCCCGGGGGTTTTTACGTACGTACGTAAAAACCCCCGGGGGTTTTT";
+        final String read =  "AAAACCCCCGGGGGTTTTTACGTTACGTAAAAACCCCCGGGGG";
+        final SWPairwiseAlignment sw = new SWPairwiseAlignment(ref.getBytes(), read.getBytes(), 30.0, -10.0, -10.0, -2.0);
+        Assert.assertEquals(sw.getAlignmentStart2wrt1(), 1);
+        Assert.assertEquals(sw.getCigar().toString(), "23M3D20M");
+    }
+
+    @DataProvider(name = "pairs")
+    public Object[][] makePairs() {
+        final Random random = new Random(1234);
+        final List<Object[]> tests = new ArrayList<Object[]>();
+        for ( int i = 0; i < 100; i++ ) {
+            final int refLength = 50 + random.nextInt(250);
+            final byte[] ref = randomBases(random, refLength);
+            final int offset = random.nextInt(refLength - 20);
+            final byte[] read = mutate(random, ref, offset, 20 + random.nextInt(80));
+            tests.add(new Object[]{ref, read, offset});
+        }
+        return tests.toArray(new Object[][]{});
+    }
+
+    @Test(dataProvider = "pairs")
+    public void testIntegerScoringMatchesDoubleScoring(final byte[] ref, final byte[] read, final int offset) {
+        // dividing the weights by 4 forces the floating point version without changing any of the decisions
+        final SWPairwiseAlignment integer = new SWPairwiseAlignment(ref, read, 30.0, -10.0, -10.0, -2.0);
+        final SWPairwiseAlignment quartered = new SWPairwiseAlignment(ref, read, 15.0 / 2, -5.0 / 2, -5.0 / 2, -1.0 / 2);
+        Assert.assertEquals(quartered.getCigar(), integer.getCigar());
+        Assert.assertEquals(quartered.getAlignmentStart2wrt1(), integer.getAlignmentStart2wrt1());
+    }
+
+    @Test(dataProvider = "pairs")
+    public void testLargeIntegerWeightsMatchScaledWeights(final byte[] ref, final byte[] read, final int offset) {
+        // weights this large would overflow the integer matrix, so the floating point version has to be used
+        final double scale = 1e5;
+        final SWPairwiseAlignment small = new SWPairwiseAlignment(ref, read, 30.0, -10.0, -10.0, -2.0);
+        final SWPairwiseAlignment large = new SWPairwiseAlignment(ref, read, 30.0 * scale, -10.0 * scale, -10.0 * scale, -2.0 * scale);
+        Assert.assertEquals(large.getCigar(), small.getCigar());
+        Assert.assertEquals(large.getAlignmentStart2wrt1(), small.getAlignmentStart2wrt1());
+    }
+
+    @Test(dataProvider = "pairs")
+    public void testWideBandMatchesFullMatrix(final byte[] ref, final byte[] read, final int offset) {
+        final SWPairwiseAlignment full = new SWPairwiseAlignment(ref, read, 30.0, -10.0, -10.0, -2.0);
+        final SWPairwiseAlignment banded = new SWPairwiseAlignment(ref, read, 30.0, -10.0, -10.0, -2.0, offset, ref.length + read.length);
+        Assert.assertEquals(banded.getCigar(), full.getCigar());
+        Assert.assertEquals(banded.getAlignmentStart2wrt1(), full.getAlignmentStart2wrt1());
+    }
+
+    private final static int BAND_WIDTH = 10;
+
+    @DataProvider(name = "inBandPairs")
+    public Object[][] makeInBandPairs() {
+        final Random random = new Random(4321);
+        final List<Object[]> tests = new ArrayList<Object[]>();
+        for ( int i = 0; i < 100; i++ ) {
+            final int refLength = 50 + random.nextInt(250);
+            final byte[] ref = randomBases(random, refLength);
+            final int offset = random.nextInt(refLength - 40);
+            final byte[] read = mutateWithinBand(random, ref, offset, 40 + random.nextInt(60));
+            tests.add(new Object[]{ref, read, offset});
+        }
+        return tests.toArray(new Object[][]{});
+    }
+
+    @Test(dataProvider = "inBandPairs")
+    public void testBandAroundTrueOffset(final byte[] ref, final byte[] read, final int offset) {
+        final SWPairwiseAlignment full = new SWPairwiseAlignment(ref, read, 30.0, -10.0, -10.0, -2.0);
+        final SWPairwiseAlignment banded = new SWPairwiseAlignment(ref, read, 30.0, -10.0, -10.0, -2.0, offset, BAND_WIDTH);
+        // the reads only carry mismatches and at most one short deletion, so the full alignment stays in the band
+        Assert.assertTrue(Math.abs(full.getAlignmentStart2wrt1() - offset) + indelLength(full.getCigar()) <= BAND_WIDTH);
+        Assert.assertEquals(banded.getCigar(), full.getCigar());
+        Assert.assertEquals(banded.getAlignmentStart2wrt1(), full.getAlignmentStart2wrt1());
+    }
+
+    @Test
+    public void testReusedMatricesDoNotLeak() {
+        // a large alignment followed by smaller ones on the same thread must give the same answers as fresh ones
+        final Random random = new Random(42);
+        final byte[] bigRef = randomBases(random, 1000);
+        final byte[] bigRead = mutate(random, bigRef, 100, 300);
+        final byte[] ref = randomBases(random, 80);
+        final byte[] read = mutate(random, ref, 10, 40);
+
+        final SWPairwiseAlignment first = new SWPairwiseAlignment(ref, read, 30.0, -10.0, -10.0, -2.0);
+        new SWPairwiseAlignment(bigRef, bigRead, 30.0, -10.0, -10.0, -2.0);
+        new SWPairwiseAlignment(bigRef, bigRead, 30.0, -10.0, -10.0, -2.0, 100, 5);
+        final SWPairwiseAlignment second = new SWPairwiseAlignment(ref, read, 30.0, -10.0, -10.0, -2.0);
+        final SWPairwiseAlignment third = new SWPairwiseAlignment(ref, read, 30.0, -10.0, -10.0, -2.0, 10, 3);
+
+        Assert.assertEquals(second.getCigar(), first.getCigar());
+        Assert.assertEquals(second.getAlignmentStart2wrt1(), first.getAlignmentStart2wrt1());
+        Assert.assertEquals(third.getAlignmentStart2wrt1(), first.getAlignmentStart2wrt1());
+    }
+
+    private static int indelLength(final Cigar cigar) {
+        int length = 0;
+        for ( CigarElement ce : cigar.getCigarElements() ) {
+            if ( ce.getOperator() == CigarOperator.I || ce.getOperator() == CigarOperator.D )
+                length += ce.getLength();
+        }
+        return length;
+    }
+
+    private static byte[] randomBases(final Random random, final int length) {
+        final byte[] bases = new byte[length];
+        for ( int i = 0; i < length; i++ )
+            bases[i] = BASES[random.nextInt(BASES.length)];
+        return bases;
+    }
+
+    // copies length bases of ref starting at offset, with ~5% mismatches and an occasional small deletion
+    private static byte[] mutate(final Random random, final byte[] ref, final int offset, final int length) {
+        final StringBuilder read = new StringBuilder();
+        for ( int i = offset; i < Math.min(ref.length, offset + length); i++ ) {
+            if ( random.nextInt(100) == 0 && i + 3 < ref.length )
+                i += 3;
+            read.append((char)(random.nextInt(20) == 0 ? BASES[random.nextInt(BASES.length)] : ref[i]));
+        }
+        return read.toString().getBytes();
+    }
+
+    // copies length bases of ref starting at offset, with ~5% mismatches away from the ends and at most one deletion of
+    // 3 bases in the middle
+    private static byte[] mutateWithinBand(final Random random, final byte[] ref, final int offset, final int length) {
+        final int end = Math.min(ref.length, offset + length);
+        final int deletion = random.nextBoolean() ? offset + 15 + random.nextInt(end - offset - 30) : -1;
+        final StringBuilder read = new StringBuilder();
+        for ( int i = offset; i < end; i++ ) {
+            if ( i == deletion )
+                i += 3;
+            final boolean nearEnd = i < offset + 5 || i >= end - 5;
+            read.append((char)(!nearEnd && random.nextInt(20) == 0 ? BASES[random.nextInt(BASES.length)] : ref[i]));
+        }
+        return read.toString().getBytes();
+    }
+}
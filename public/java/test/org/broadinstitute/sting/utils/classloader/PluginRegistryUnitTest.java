@@ -0,0 +1,149 @@
+package org.broadinstitute.sting.utils.classloader;
+
+import net.sf.picard.filter.SamRecordFilter;
+import org.broad.tribble.FeatureCodec;
+import org.broadinstitute.sting.BaseTest;
+import org.broadinstitute.sting.gatk.walkers.Walker;
+import org.reflections.Reflections;
+import org.reflections.scanners.SubTypesScanner;
+import org.reflections.util.ConfigurationBuilder;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+/**
+ * tests that the registry finds the same plugins as scanning the classpath
+ */
+public class PluginRegistryUnitTest extends BaseTest {
+    private Set<URL> urls;
+    private Reflections reflections;
+    private PluginRegistry registry;
+
+    @BeforeClass
+    public void scan() {
+        urls = PluginRegistry.getClasspathURLs();
+        reflections = new Reflections(new ConfigurationBuilder().setUrls(urls).setScanners(new SubTypesScanner()));
+        registry = new PluginRegistry();
+        registry.scan(urls);
+    }
+
+    @DataProvider(name = "types")
+    public Object[][] makeTypes() {
+        return new Object[][] { { Walker.class }, { SamRecordFilter.class }, { FeatureCodec.class } };
+    }
+
+    @Test(dataProvider = "types")
+    public void testSubTypesMatchScan(final Class<?> type) {
+        Assert.assertFalse(registry.getSubTypesOf(type).isEmpty());
+        Assert.assertEquals(new HashSet<Class<?>>(registry.getSubTypesOf(type)), new HashSet<Class<?>>(reflections.getSubTypesOf(type)));
+    }
+
+    @Test(dataProvider = "types")
+    public void testReadWrite(final Class<?> type) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        registry.write(bytes);
+        final PluginRegistry read = PluginRegistry.read(new ByteArrayInputStream(bytes.toByteArray()));
+        Assert.assertEquals(read.getSubTypesOf(type), registry.getSubTypesOf(type));
+    }
+
+    @Test
+    public void testCoverage() throws IOException {
+        final File file = createTempFile("PluginRegistryUnitTest", ".properties");
+        PluginRegistry.main(new String[] { file.getAbsolutePath(), "GenomeAnalysisTK.jar" });
+        final InputStream stream = new FileInputStream(file);
+        final PluginRegistry built = PluginRegistry.read(stream);
+        stream.close();
+
+        // the build's registry covers its own classpath and the jars built from it, but nothing else
+        for (URL url: urls)
+            Assert.assertTrue(built.covers(url), "Registry doesn't cover " + url);
+        final File dir = createTempDir("PluginRegistryUnitTest");
+        Assert.assertTrue(built.covers(writeJar(new File(dir, "GenomeAnalysisTK.jar"), file.lastModified() - 60000, "A.class").toURI().toURL()));
+        Assert.assertFalse(built.covers(writeJar(new File(dir, "GenomeAnalysisTK.jar"), file.lastModified() + 60000, "A.class").toURI().toURL()));
+        Assert.assertFalse(built.covers(writeJar(new File(dir, "MyWalkers.jar"), file.lastModified() - 60000, "A.class").toURI().toURL()));
+        Assert.assertFalse(registry.covers(urls.iterator().next()));
+        Assert.assertEquals(built.getSubTypesOf(Walker.class), registry.getSubTypesOf(Walker.class));
+    }
+
+    @Test
+    public void testChangedJarIsNotCovered() throws IOException {
+        final File dir = createTempDir("PluginRegistryUnitTest");
+        final File jar = writeJar(new File(dir, "plugins.jar"), System.currentTimeMillis(), "A.class");
+        final PluginRegistry covering = new PluginRegistry();
+        covering.cover(jar);
+        Assert.assertTrue(covering.covers(jar.toURI().toURL()));
+
+        // a copy of the jar is still covered, even though it's been modified since
+        final File copy = writeJar(new File(createTempDir("PluginRegistryUnitTest"), "plugins.jar"), System.currentTimeMillis() + 60000, "A.class");
+        Assert.assertTrue(covering.covers(copy.toURI().toURL()));
+
+        // but not once a class has been added to it
+        writeJar(jar, System.currentTimeMillis(), "A.class", "B.class");
+        Assert.assertFalse(covering.covers(jar.toURI().toURL()));
+    }
+
+    @Test
+    public void testChangedDirectoryIsNotCovered() throws IOException {
+        final File dir = createTempDir("PluginRegistryUnitTest");
+        touch(new File(dir, "A.class"), 1000000L);
+        final PluginRegistry covering = new PluginRegistry();
+        covering.cover(dir);
+        Assert.assertTrue(covering.covers(dir.toURI().toURL()));
+
+        final File pkg = new File(dir, "pkg");
+        Assert.assertTrue(pkg.mkdir());
+        touch(new File(pkg, "B.class"), 1000000L);
+        Assert.assertFalse(covering.covers(dir.toURI().toURL()));
+
+        covering.cover(dir);
+        Assert.assertTrue(covering.covers(dir.toURI().toURL()));
+        touch(new File(pkg, "B.class"), 2000000L);
+        Assert.assertFalse(covering.covers(dir.toURI().toURL()));
+    }
+
+    private static File createTempDir(final String prefix) throws IOException {
+        final File dir = File.createTempFile(prefix, "");
+        if (!dir.delete() || !dir.mkdir())
+            throw new IOException("Unable to create directory " + dir);
+        dir.deleteOnExit();
+        return dir;
+    }
+
+    private static File writeJar(final File jar, final long time, final String... classes) throws IOException {
+        final JarOutputStream stream = new JarOutputStream(new FileOutputStream(jar));
+        try {
+            for (final String name: classes) {
+                final ZipEntry entry = new ZipEntry(name);
+                entry.setTime(time);
+                stream.putNextEntry(entry);
+                stream.write(name.getBytes());
+                stream.closeEntry();
+            }
+        } finally {
+            stream.close();
+        }
+        jar.deleteOnExit();
+        return jar;
+    }
+
+    private static void touch(final File file, final long time) throws IOException {
+        new FileOutputStream(file).close();
+        if (!file.setLastModified(time))
+            throw new IOException("Unable to set the time of " + file);
+        file.deleteOnExit();
+    }
+}
@@ -0,0 +1,97 @@
+package org.broadinstitute.sting.utils.codecs.vcf;
+
+import org.broad.tribble.util.ParsingUtils;
+import org.broadinstitute.sting.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.*;
+
+/**
+ * tests that the lazily decoded INFO attributes are the same as those of the eager INFO parser
+ */
+public class LazyVCFInfoMapUnitTest extends BaseTest {
+    private final static int MAX_FIELDS = 4, MAX_VALUES = 3;
+
+    /**
+     * The eager parser the codec used before it decoded INFO fields lazily
+     */
+    private static Map<String, Object> parseEagerly(final String infoField) {
+        final String[] infoFieldArray = new String[MAX_FIELDS], infoValueArray = new String[MAX_VALUES];
+        final Map<String, Object> attributes = new HashMap<String, Object>();
+        final int infoFieldSplitSize = ParsingUtils.split(infoField, infoFieldArray, VCFConstants.INFO_FIELD_SEPARATOR_CHAR, false);
+        for ( int i = 0; i < infoFieldSplitSize; i++ ) {
+            final int eqI = infoFieldArray[i].indexOf("=");
+            if ( eqI != -1 ) {
+                final String str = infoFieldArray[i].substring(eqI+1);
+                final int infoValueSplitSize = ParsingUtils.split(str, infoValueArray, VCFConstants.INFO_FIELD_ARRAY_SEPARATOR_CHAR, false);
+                if ( infoValueSplitSize == 1 ) {
+                    attributes.put(infoFieldArray[i].substring(0, eqI), infoValueArray[0]);
+                } else {
+                    final ArrayList<String> valueList = new ArrayList<String>(infoValueSplitSize);
+                    for ( int j = 0; j < infoValueSplitSize; j++ )
+                        valueList.add(infoValueArray[j]);
+                    attributes.put(infoFieldArray[i].substring(0, eqI), valueList);
+                }
+            } else {
+                attributes.put(infoFieldArray[i], true);
+            }
+        }
+        return attributes;
+    }
+
+    @DataProvider(name = "infoFields")
+    public Object[][] makeInfoFields() {
+        final List<Object[]> tests = new ArrayList<Object[]>();
+        for ( final String infoField : Arrays.asList("AC=1", "AC=1;AF=0.50;DB", "AC=1,2;AF=0.25,0.75;DP=10", "DB;H2",
+                "AC=1;AC=2", "DB;AC=1;DB", ";AC=1", "AC=1;", "AC=1;;DB", "=1", "AC=", "AC=,1", "AC=1,", "AC=1,,2",
+                "AC=1,2,3,4,5", "A=1;B=2;C=3;D=4;E=5", "A=1=2", "A", "ID=rs1" ) )
+            tests.add(new Object[]{infoField});
+        return tests.toArray(new Object[][]{});
+    }
+
+    @Test(dataProvider = "infoFields")
+    public void testLookups(final String infoField) {
+        final Map<String, Object> expected = parseEagerly(infoField);
+        final LazyVCFInfoMap lazy = new LazyVCFInfoMap(infoField, MAX_FIELDS, MAX_VALUES);
+
+        Assert.assertEquals(lazy.isEmpty(), expected.isEmpty());
+        Assert.assertEquals(lazy.size(), expected.size());
+        for ( final String key : expected.keySet() ) {
+            Assert.assertTrue(lazy.containsKey(key), "Missing key " + key);
+            Assert.assertEquals(lazy.get(key), expected.get(key), "Wrong value for key " + key);
+        }
+        Assert.assertFalse(lazy.containsKey("NOT_A_KEY"));
+        Assert.assertNull(lazy.get("NOT_A_KEY"));
+        Assert.assertNull(lazy.get(1));
+        Assert.assertFalse(lazy.isDecoded());
+    }
+
+    @Test(dataProvider = "infoFields")
+    public void testDecoding(final String infoField) {
+        final Map<String, Object> expected = parseEagerly(infoField);
+        final LazyVCFInfoMap lazy = new LazyVCFInfoMap(infoField, MAX_FIELDS, MAX_VALUES);
+
+        // iteration order matches that of the HashMap the eager parser built
+        Assert.assertEquals(new ArrayList<String>(lazy.keySet()), new ArrayList<String>(expected.keySet()));
+        Assert.assertTrue(lazy.isDecoded());
+        Assert.assertEquals(lazy, expected);
+    }
+
+    @Test
+    public void testModification() {
+        final LazyVCFInfoMap lazy = new LazyVCFInfoMap("AC=1;DB", MAX_FIELDS, MAX_VALUES);
+        Assert.assertEquals(lazy.get("AC"), "1");
+
+        lazy.put("AF", "0.5");
+        Assert.assertEquals(lazy.remove("DB"), true);
+        Assert.assertEquals(lazy.size(), 2);
+        Assert.assertEquals(lazy.get("AC"), "1");
+        Assert.assertEquals(lazy.get("AF"), "0.5");
+        Assert.assertFalse(lazy.containsKey("DB"));
+
+        lazy.clear();
+        Assert.assertTrue(lazy.isEmpty());
+    }
+}
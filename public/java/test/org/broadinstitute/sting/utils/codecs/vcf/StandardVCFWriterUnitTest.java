@@ -0,0 +1,108 @@
+package org.broadinstitute.sting.utils.codecs.vcf;
+
+import net.sf.samtools.SAMSequenceDictionary;
+import org.broadinstitute.sting.BaseTest;
+import org.broadinstitute.sting.utils.variantcontext.*;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.*;
+
+/**
+ * tests that the buffered encoding of StandardVCFWriter formats fields exactly as formatVCFField and String.format do
+ */
+public class StandardVCFWriterUnitTest extends BaseTest {
+    private final Allele A = Allele.create("A", true), C = Allele.create("C");
+
+    private VCFHeader makeHeader() {
+        final Set<VCFHeaderLine> metaData = new HashSet<VCFHeaderLine>();
+        metaData.add(new VCFInfoHeaderLine("DB", 0, VCFHeaderLineType.Flag, "flag"));
+        metaData.add(new VCFFormatHeaderLine("XY", 2, VCFHeaderLineType.Integer, "two values"));
+        return new VCFHeader(metaData, new LinkedHashSet<String>(Arrays.asList("s1", "s2")));
+    }
+
+    private List<String> writeRecords(final List<VariantContext> vcs) {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final StandardVCFWriter writer = new StandardVCFWriter(output, new SAMSequenceDictionary(), false);
+        writer.writeHeader(makeHeader());
+        for ( final VariantContext vc : vcs )
+            writer.add(vc);
+        writer.close();
+
+        final List<String> records = new ArrayList<String>();
+        for ( final String line : output.toString().split("\n") )
+            if ( ! line.startsWith("#") )
+                records.add(line);
+        return records;
+    }
+
+    private String infoField(final String record) {
+        return record.split("\t")[7];
+    }
+
+    @DataProvider(name = "doubles")
+    public Object[][] makeDoubles() {
+        final List<Object[]> tests = new ArrayList<Object[]>();
+        for ( final double d : new double[]{ 0.0, -0.0, 1.0, -1.0, 0.005, 0.015, 0.125, 1.005, 2.675, 99.995, -0.001, -0.005,
+                123456.785, 9999999.995, 1e7, 1e12, 1e-300, Double.MIN_VALUE, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY } )
+            tests.add(new Object[]{d});
+
+        final Random random = new Random(1);
+        for ( int i = 0; i < 100; i++ )
+            tests.add(new Object[]{ random.nextGaussian() * Math.pow(10, random.nextInt(10) - 3) });
+
+        return tests.toArray(new Object[][]{});
+    }
+
+    @Test(dataProvider = "doubles")
+    public void testDoubleFormatting(final double d) {
+        final VariantContext vc = new VariantContextBuilder("test", "1", 1, 1, Arrays.asList(A, C)).attributes(Collections.singletonMap("AF", (Object)d)).make();
+        final String record = writeRecords(Arrays.asList(vc)).get(0);
+
+        Assert.assertEquals(infoField(record), "AF=" + String.format(VCFConstants.DOUBLE_PRECISION_FORMAT_STRING, d));
+    }
+
+    @Test
+    public void testInfoFieldsAcrossRecords() {
+        final Map<String, Object> attributes = new HashMap<String, Object>();
+        attributes.put("DB", true);
+        attributes.put("ZZ", Arrays.asList(1, 2.5, "x"));
+        attributes.put("AC", new int[]{3, 4});
+        attributes.put("NO", false);
+        attributes.put("EMPTY", "");
+
+        final VariantContextBuilder builder = new VariantContextBuilder("test", "1", 1, 1, Arrays.asList(A, C));
+        final List<VariantContext> vcs = new ArrayList<VariantContext>();
+        vcs.add(builder.attributes(attributes).make());
+        vcs.add(builder.attributes(attributes).make());
+        vcs.add(builder.attributes(new HashMap<String, Object>()).make());
+        vcs.add(builder.attributes(Collections.singletonMap("NO", (Object)false)).make());
+
+        final List<String> records = writeRecords(vcs);
+        Assert.assertEquals(infoField(records.get(0)), "AC=3,4;DB;EMPTY;ZZ=1,2.50,x");
+        Assert.assertEquals(infoField(records.get(1)), "AC=3,4;DB;EMPTY;ZZ=1,2.50,x");
+        Assert.assertEquals(infoField(records.get(2)), VCFConstants.EMPTY_INFO_FIELD);
+        Assert.assertEquals(infoField(records.get(3)), VCFConstants.EMPTY_INFO_FIELD);
+    }
+
+    @Test
+    public void testGenotypeFields() {
+        final Map<String, Object> attributes1 = new HashMap<String, Object>();
+        attributes1.put("DP", 10);
+        final Map<String, Object> attributes2 = new HashMap<String, Object>();
+        attributes2.put("DP", ".");
+        attributes2.put("AB", 0.5);
+
+        final Genotype g1 = new Genotype("s1", Arrays.asList(A, C), -2.5, null, attributes1, true);
+        final Genotype g2 = new Genotype("s2", Arrays.asList(Allele.NO_CALL, Allele.NO_CALL), Genotype.NO_LOG10_PERROR, null, attributes2, false);
+        final VariantContext vc = new VariantContextBuilder("test", "1", 1, 1, Arrays.asList(A, C)).genotypes(g1, g2).make();
+
+        final String[] fields = writeRecords(Arrays.asList(vc)).get(0).split("\t");
+        Assert.assertEquals(fields[8], "GT:AB:DP:GQ");
+        // missing values are filled in up to the last real value, and dropped after it
+        Assert.assertEquals(fields[9], "0|1:.:10:25");
+        Assert.assertEquals(fields[10], "./.:0.50");
+    }
+}
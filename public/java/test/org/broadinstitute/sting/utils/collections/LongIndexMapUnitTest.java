@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2012, The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.broadinstitute.sting.utils.collections;
+
+import org.broadinstitute.sting.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class LongIndexMapUnitTest extends BaseTest {
+    @Test
+    public void testIndicesMatchInsertionOrder() {
+        final Random random = new Random(17);
+        final LongIndexMap map = new LongIndexMap(4);
+        final Map<Long, Integer> expected = new HashMap<Long, Integer>();
+
+        // few enough distinct keys that many are added again, and negative ones too
+        for (int i = 0; i < 100000; i++) {
+            final long key = random.nextInt(20000) * 0x100000001L - 10000;
+            final int index = map.add(key);
+            if (!expected.containsKey(key)) {
+                Assert.assertEquals(index, expected.size());
+                expected.put(key, index);
+            }
+            Assert.assertEquals(index, (int) expected.get(key));
+        }
+
+        Assert.assertEquals(map.size(), expected.size());
+        for (Map.Entry<Long, Integer> entry : expected.entrySet()) {
+            Assert.assertEquals(map.indexOf(entry.getKey()), (int) entry.getValue());
+            Assert.assertEquals(map.getKey(entry.getValue()), (long) entry.getKey());
+        }
+        Assert.assertEquals(map.indexOf(1L << 62), -1);
+    }
+}
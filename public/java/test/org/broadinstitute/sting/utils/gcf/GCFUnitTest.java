@@ -0,0 +1,162 @@
+package org.broadinstitute.sting.utils.gcf;
+
+import net.sf.samtools.SAMSequenceDictionary;
+import net.sf.samtools.SAMSequenceRecord;
+import org.broad.tribble.Tribble;
+import org.broad.tribble.index.Index;
+import org.broad.tribble.index.IndexFactory;
+import org.broad.tribble.iterators.CloseableTribbleIterator;
+import org.broadinstitute.sting.BaseTest;
+import org.broadinstitute.sting.utils.codecs.vcf.*;
+import org.broadinstitute.sting.utils.variantcontext.*;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+public class GCFUnitTest extends BaseTest {
+    private final static List<String> SAMPLES = Arrays.asList("NA12878", "NA12891", "NA12892");
+
+    private final Allele A = Allele.create("A", true), C = Allele.create("C"), G = Allele.create("G");
+    private File gcfFile;
+    private List<VariantContext> written;
+
+    @BeforeClass
+    public void writeGCF() {
+        final SAMSequenceDictionary dict = new SAMSequenceDictionary();
+        dict.addSequence(new SAMSequenceRecord("1", 1000000));
+        dict.addSequence(new SAMSequenceRecord("2", 1000000));
+
+        final Set<VCFHeaderLine> metaData = new HashSet<VCFHeaderLine>();
+        metaData.add(new VCFInfoHeaderLine("AC", 1, VCFHeaderLineType.Integer, "allele count"));
+        metaData.add(new VCFInfoHeaderLine("DB", 0, VCFHeaderLineType.Flag, "dbSNP membership"));
+        metaData.add(new VCFFormatHeaderLine("DP", 1, VCFHeaderLineType.Integer, "depth"));
+        final VCFHeader header = new VCFHeader(metaData, new LinkedHashSet<String>(SAMPLES));
+
+        written = new ArrayList<VariantContext>();
+        for ( int i = 0; i < 2000; i++ )
+            written.add(makeSite(i < 1000 ? "1" : "2", 1 + (i % 1000) * 500, i));
+
+        gcfFile = createTempFile("gcfUnitTest", ".gcf");
+        Tribble.indexFile(gcfFile).deleteOnExit();
+        final GCFWriter writer = new GCFWriter(gcfFile, dict, true, false);
+        writer.writeHeader(header);
+        for ( final VariantContext vc : written )
+            writer.add(vc);
+        writer.close();
+    }
+
+    private VariantContext makeSite(final String contig, final int start, final int i) {
+        final List<Allele> alleles = Arrays.asList(A, i % 2 == 0 ? C : G);
+        final List<Genotype> genotypes = new ArrayList<Genotype>();
+        for ( int s = 0; s < SAMPLES.size(); s++ ) {
+            final Map<String, Object> attributes = new HashMap<String, Object>();
+            attributes.put("DP", 10 + s);
+            final List<Allele> gt = s == 0 ? Arrays.asList(A, alleles.get(1)) : Arrays.asList(A, A);
+            genotypes.add(new Genotype(SAMPLES.get(s), gt, -(3 + s), null, attributes, false, new double[]{-1.0, 0.0, -5.0 - s}));
+        }
+
+        final Map<String, Object> attributes = new HashMap<String, Object>();
+        attributes.put("AC", 1);
+        if ( i % 3 == 0 ) attributes.put("DB", true);
+
+        final VariantContextBuilder builder = new VariantContextBuilder("test", contig, start, start, alleles);
+        builder.genotypes(genotypes).log10PError(-5.0).attributes(attributes);
+        if ( i % 5 == 0 ) builder.filters("LowQual"); else builder.passFilters();
+        if ( i % 7 == 0 ) builder.id("rs" + i);
+        return builder.make();
+    }
+
+    private void assertSameSite(final VariantContext actual, final VariantContext expected, final boolean checkGenotypes) {
+        Assert.assertEquals(actual.getChr(), expected.getChr());
+        Assert.assertEquals(actual.getStart(), expected.getStart());
+        Assert.assertEquals(actual.getEnd(), expected.getEnd());
+        Assert.assertEquals(actual.getID(), expected.getID());
+        Assert.assertEquals(actual.getAlleles(), expected.getAlleles());
+        Assert.assertEquals(actual.getLog10PError(), expected.getLog10PError(), 1e-6);
+        Assert.assertEquals(actual.getFilters(), expected.getFilters());
+        Assert.assertEquals(actual.getAttributeAsInt("AC", -1), 1);
+        Assert.assertEquals(actual.hasAttribute("DB"), expected.hasAttribute("DB"));
+
+        if ( checkGenotypes ) {
+            Assert.assertEquals(actual.getSampleNamesOrderedByName(), expected.getSampleNamesOrderedByName());
+            for ( final String sample : SAMPLES ) {
+                final Genotype a = actual.getGenotype(sample), e = expected.getGenotype(sample);
+                Assert.assertEquals(a.getAlleles(), e.getAlleles());
+                Assert.assertEquals(a.getLog10PError(), e.getLog10PError(), 1e-6);
+                Assert.assertEquals(a.getAttributeAsInt("DP", -1), e.getAttributeAsInt("DP", -2));
+                Assert.assertEquals(a.getLikelihoods().getAsString(), e.getLikelihoods().getAsString());
+            }
+        }
+    }
+
+    @Test
+    public void testCanDecode() {
+        Assert.assertTrue(new GCFCodec().canDecode(gcfFile.getAbsolutePath()));
+        Assert.assertFalse(new GCFCodec().canDecode(Tribble.indexFile(gcfFile).getAbsolutePath()));
+    }
+
+    @Test
+    public void testHeader() {
+        final GCFCodec codec = new GCFCodec();
+        final VCFHeader header = codec.readHeader(gcfFile).getVCFHeader();
+        Assert.assertEquals(new ArrayList<String>(header.getGenotypeSamples()), SAMPLES);
+        Assert.assertNotNull(header.getInfoHeaderLine("AC"));
+        Assert.assertNotNull(header.getFormatHeaderLine("DP"));
+    }
+
+    @Test
+    public void testIterateWholeFile() throws IOException {
+        final GCFFeatureSource source = new GCFFeatureSource(gcfFile, null, new GCFCodec());
+        final CloseableTribbleIterator<VariantContext> it = source.iterator();
+        int i = 0;
+        while ( it.hasNext() ) {
+            final VariantContext vc = it.next();
+            Assert.assertTrue(vc.getGenotypes() instanceof LazyGenotypesContext);
+            assertSameSite(vc, written.get(i++), i % 10 == 0);
+        }
+        Assert.assertEquals(i, written.size());
+        source.close();
+    }
+
+    @Test
+    public void testOnTheFlyIndexMatchesScannedIndex() {
+        final Index onTheFly = IndexFactory.loadIndex(Tribble.indexFile(gcfFile).getAbsolutePath());
+        final Index scanned = GCFCodec.createIndex(gcfFile);
+        Assert.assertEquals(new ArrayList<String>(scanned.getSequenceNames()), Arrays.asList("1", "2"));
+        Assert.assertEquals(onTheFly.getSequenceNames(), scanned.getSequenceNames());
+        testQueries(onTheFly);
+        testQueries(scanned);
+    }
+
+    private void testQueries(final Index index) {
+        final GCFFeatureSource source = new GCFFeatureSource(gcfFile, index, new GCFCodec());
+        final int[][] queries = new int[][]{ {1, 1}, {1000, 5000}, {100000, 300000}, {499000, 600000}, {600000, 700000} };
+
+        try {
+            for ( final String contig : Arrays.asList("1", "2", "3") ) {
+                for ( final int[] query : queries ) {
+                    final List<VariantContext> expected = new ArrayList<VariantContext>();
+                    for ( final VariantContext vc : written )
+                        if ( vc.getChr().equals(contig) && vc.getStart() <= query[1] && vc.getEnd() >= query[0] )
+                            expected.add(vc);
+
+                    final List<VariantContext> actual = new ArrayList<VariantContext>();
+                    final CloseableTribbleIterator<VariantContext> it = source.query(contig, query[0], query[1]);
+                    while ( it.hasNext() )
+                        actual.add(it.next());
+
+                    Assert.assertEquals(actual.size(), expected.size(), "Wrong number of records for " + contig + ":" + query[0] + "-" + query[1]);
+                    for ( int i = 0; i < actual.size(); i++ )
+                        assertSameSite(actual.get(i), expected.get(i), true);
+                }
+            }
+            source.close();
+        } catch ( IOException e ) {
+            Assert.fail("Failed to query " + gcfFile, e);
+        }
+    }
+}
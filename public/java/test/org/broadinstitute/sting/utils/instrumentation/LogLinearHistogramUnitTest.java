@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2012, The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.broadinstitute.sting.utils.instrumentation;
+
+import org.broadinstitute.sting.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class LogLinearHistogramUnitTest extends BaseTest {
+    @Test
+    public void testBucketsCoverEveryValueOnce() {
+        long expectedLowerBound = 0;
+        for ( int bucket = 0; expectedLowerBound >= 0; bucket++ ) {
+            Assert.assertEquals(LogLinearHistogram.getBucketLowerBound(bucket), expectedLowerBound);
+            Assert.assertEquals(LogLinearHistogram.getBucket(expectedLowerBound), bucket);
+            final long upperBound = LogLinearHistogram.getBucketUpperBound(bucket);
+            Assert.assertEquals(LogLinearHistogram.getBucket(upperBound), bucket);
+            // buckets are never wider than a sixteenth of their values
+            Assert.assertTrue(upperBound - expectedLowerBound <= Math.max(expectedLowerBound / 16, 0));
+            expectedLowerBound = upperBound + 1;
+        }
+    }
+
+    @Test
+    public void testQuantiles() {
+        LogLinearHistogram histogram = new LogLinearHistogram();
+        Assert.assertEquals(histogram.getValueAtQuantile(0.5), 0L);
+
+        for ( long value = 1; value <= 1000; value++ )
+            histogram.record(value);
+        Assert.assertEquals(histogram.getCount(), 1000L);
+
+        final long median = histogram.getValueAtQuantile(0.5);
+        Assert.assertTrue(median >= 500 && median <= 500 + 500 / 16, "median " + median);
+        final long max = histogram.getValueAtQuantile(1.0);
+        Assert.assertTrue(max >= 1000 && max <= 1000 + 1000 / 16, "max " + max);
+
+        histogram.record(Long.MAX_VALUE);
+        Assert.assertEquals(histogram.getValueAtQuantile(1.0), Long.MAX_VALUE);
+
+        histogram.reset();
+        Assert.assertEquals(histogram.getCount(), 0L);
+    }
+
+    @Test
+    public void testStripedCounterSumsAcrossThreads() throws InterruptedException {
+        final StripedCounter counter = new StripedCounter(4);
+        Thread[] threads = new Thread[8];
+        for ( int i = 0; i < threads.length; i++ ) {
+            threads[i] = new Thread() {
+                public void run() {
+                    for ( int j = 0; j < 10000; j++ )
+                        counter.increment();
+                }
+            };
+            threads[i].start();
+        }
+        for ( Thread thread : threads )
+            thread.join();
+        Assert.assertEquals(counter.sum(), 80000L);
+    }
+
+    @Test
+    public void testHistogramSumsAcrossThreads() throws InterruptedException {
+        final LogLinearHistogram histogram = new LogLinearHistogram(4);
+        Thread[] threads = new Thread[8];
+        for ( int i = 0; i < threads.length; i++ ) {
+            threads[i] = new Thread() {
+                public void run() {
+                    for ( int j = 1; j <= 1000; j++ )
+                        histogram.record(j);
+                }
+            };
+            threads[i].start();
+        }
+        for ( Thread thread : threads )
+            thread.join();
+        Assert.assertEquals(histogram.getCount(), 8000L);
+        final long median = histogram.getValueAtQuantile(0.5);
+        Assert.assertTrue(median >= 500 && median <= 500 + 500 / 16, "median " + median);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2012, The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.broadinstitute.sting.utils.pileup;
+
+import net.sf.samtools.SAMFileHeader;
+import org.broadinstitute.sting.BaseTest;
+import org.broadinstitute.sting.utils.GenomeLoc;
+import org.broadinstitute.sting.utils.GenomeLocParser;
+import org.broadinstitute.sting.utils.sam.ArtificialSAMUtils;
+import org.broadinstitute.sting.utils.sam.GATKSAMRecord;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests that PileupStatistics reads the depth, qualities, mapping qualities and strands of a pileup correctly
+ */
+public class PileupStatisticsUnitTest extends BaseTest {
+    private static final int OFFSET = 2;
+
+    private SAMFileHeader header;
+    private GenomeLoc loc;
+
+    @BeforeClass
+    public void init() {
+        header = ArtificialSAMUtils.createArtificialSamHeader(1, 1, 1000);
+        loc = new GenomeLocParser(header.getSequenceDictionary()).createGenomeLoc("chr1", OFFSET + 1);
+    }
+
+    private GATKSAMRecord makeRead(final String name, final byte base, final byte qual, final int mappingQual, final boolean negativeStrand) {
+        final byte[] bases = "ACGTACGTAC".getBytes();
+        final byte[] quals = new byte[bases.length];
+        for (int i = 0; i < quals.length; i++)
+            quals[i] = (byte) 20;
+        bases[OFFSET] = base;
+        quals[OFFSET] = qual;
+        final GATKSAMRecord read = ArtificialSAMUtils.createArtificialRead(header, name, 0, 1, bases, quals, "10M");
+        read.setMappingQuality(mappingQual);
+        read.setReadNegativeStrandFlag(negativeStrand);
+        return read;
+    }
+
+    private static PileupElement element(final GATKSAMRecord read, final boolean isDeletion) {
+        return new PileupElement(read, OFFSET, isDeletion, false, false, false);
+    }
+
+    @Test
+    public void testStatistics() {
+        final List<PileupElement> elements = new ArrayList<PileupElement>();
+        elements.add(element(makeRead("r1", (byte) 'A', (byte) 30, 0, false), false));
+        elements.add(element(makeRead("r2", (byte) 'A', (byte) 20, 0, true), false));
+        elements.add(element(makeRead("r3", (byte) 'C', (byte) 10, 20, false), false));
+        elements.add(element(makeRead("r4", (byte) 'A', (byte) 40, 30, true), false));
+        elements.add(element(makeRead("r5", (byte) 'G', (byte) 25, 60, true), false));
+        final GATKSAMRecord deleted = makeRead("r6", (byte) 'T', (byte) 35, 60, true);
+        deleted.setCigarString("3M1D7M");
+        elements.add(element(deleted, true));
+        final GATKSAMRecord reduced = makeRead("r7", (byte) 'C', (byte) 35, 0, false);
+        reduced.setAttribute(GATKSAMRecord.REDUCED_READ_CONSENSUS_TAG, new byte[] { 3, 0, 0, 0, 0, 0, 0, 0, 0, 0 });
+        elements.add(element(reduced, false));
+
+        final PileupStatistics stats = new PileupStatistics(new ReadBackedPileupImpl(loc, elements));
+
+        // the reduced read counts once among the elements, but as the three reads it stands for in the depth
+        Assert.assertEquals(stats.size(), 7);
+        Assert.assertEquals(stats.depthOfCoverage(), 9);
+
+        int qualSum = 0;
+        int nQuals = 0;
+        int nMQ0 = 0;
+        for (int i = 0; i < stats.size(); i++) {
+            Assert.assertSame(stats.getElement(i), elements.get(i));
+            if (!stats.isDeletion(i)) {
+                qualSum += stats.getQual(i);
+                nQuals++;
+            }
+            if (stats.getMappingQual(i) == 0)
+                nMQ0++;
+        }
+        Assert.assertEquals((double) qualSum / nQuals, (30 + 20 + 10 + 40 + 25 + 35) / 6.0);
+        Assert.assertEquals(nMQ0, 3);
+
+        Assert.assertTrue(stats.isDeletion(5));
+        Assert.assertEquals(stats.getBase(5), PileupElement.DELETION_BASE);
+        Assert.assertEquals(stats.getQual(5), PileupElement.DELETION_QUAL);
+        Assert.assertTrue(stats.isReducedRead(6));
+        Assert.assertFalse(stats.isReducedRead(0));
+        Assert.assertTrue(stats.isNegativeStrand(1));
+        Assert.assertFalse(stats.isNegativeStrand(0));
+
+        final int[][] counts = stats.getBaseCountsByStrand();
+        assertStrandCounts(counts, 'A', 1, 2);
+        assertStrandCounts(counts, 'C', 2, 0);
+        assertStrandCounts(counts, 'G', 0, 1);
+        assertStrandCounts(counts, 'T', 0, 0);
+        assertStrandCounts(counts, (char) PileupElement.DELETION_BASE, 0, 1);
+        Assert.assertEquals(stats.getDistinctBases(), new byte[] { 'A', 'C', 'G', PileupElement.DELETION_BASE });
+    }
+
+    @Test
+    public void testEmptyPileup() {
+        final PileupStatistics stats = new PileupStatistics(new ReadBackedPileupImpl(loc, new ArrayList<PileupElement>()));
+        Assert.assertEquals(stats.size(), 0);
+        Assert.assertEquals(stats.depthOfCoverage(), 0);
+        Assert.assertEquals(stats.getDistinctBases().length, 0);
+        for (int[] counts : stats.getBaseCountsByStrand())
+            Assert.assertEquals(counts, new int[2]);
+    }
+
+    private static void assertStrandCounts(final int[][] counts, final char base, final int forward, final int reverse) {
+        Assert.assertEquals(counts[base][PileupStatistics.FORWARD], forward, "forward count of " + base);
+        Assert.assertEquals(counts[base][PileupStatistics.REVERSE], reverse, "reverse count of " + base);
+    }
+}